@@ -18,12 +18,26 @@ public class ApplicationPool
     protected static final int DEFAULT_THREAD_POOL_SIZE = 8;
 
     private ExecutorService threadPool = null;
+    private int queueSize = Integer.MAX_VALUE;
 
     public ApplicationPool(int size)
     {
         this.setThreadPoolSize(size);
     }
 
+    /**
+     * Creates a pool that holds at most <code>queueSize</code> connections waiting for a thread. Connections submitted
+     * while the queue is full are rejected by {@link #execute(java.net.Socket, ServerApplication)}.
+     *
+     * @param size      the number of threads.
+     * @param queueSize the maximum number of waiting connections.
+     */
+    public ApplicationPool(int size, int queueSize)
+    {
+        this.queueSize = (queueSize > 0) ? queueSize : Integer.MAX_VALUE;
+        this.setThreadPoolSize(size);
+    }
+
     public void setThreadPoolSize(int size)
     {
         try
@@ -33,7 +47,8 @@ public class ApplicationPool
         }
         finally
         {
-            this.threadPool = new ThreadPoolExecutor( size, size, 0, TimeUnit.SECONDS, new LIFOBlockingDeque<Runnable>());
+            this.threadPool = new ThreadPoolExecutor( size, size, 0, TimeUnit.SECONDS,
+                new LIFOBlockingDeque<Runnable>(this.queueSize));
         }
     }
 
@@ -42,9 +57,23 @@ public class ApplicationPool
         this(DEFAULT_THREAD_POOL_SIZE);
     }
 
+    /**
+     * Services the connection on one of the pool's threads.
+     *
+     * @param socket the client connection.
+     * @param app    the application that services the connection.
+     *
+     * @throws RejectedExecutionException if the pool's queue of waiting connections is full.
+     */
     public void execute(Socket socket, ServerApplication app)
     {
         if (socket != null && socket.isConnected())
             this.threadPool.execute(new ServerWorkerThread(socket, app));
     }
+
+    /** Stops the pool's threads once the connections already submitted have been serviced. */
+    public void shutdown()
+    {
+        this.threadPool.shutdown();
+    }
 }
@@ -11,6 +11,7 @@ import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.avlist.AVList;
 import gov.nasa.worldwind.avlist.AVListImpl;
 import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.servers.http.HTTPResponse;
 import gov.nasa.worldwind.servers.tools.gdal.GDALUtils;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.WWIO;
@@ -33,6 +34,7 @@ import java.net.Socket;
 import java.util.Hashtable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -340,7 +342,7 @@ public class ApplicationServer
 
             if (null == listener)
             {
-                socketlisteners.put(port, SocketListener.listen(port, app.getProtocol()));
+                socketlisteners.put(port, createSocketListener(app));
             }
 
             if (registeredListeners.containsKey(port))
@@ -361,7 +363,8 @@ public class ApplicationServer
                     try
                     {
                         int size = Integer.parseInt("" + app.getValue(AVKey.SERVER_APPLICATION_POOL_SIZE));
-                        pool = new ApplicationPool(size);
+                        int queueSize = AVListImpl.getIntegerValue(app, AVKey.SERVER_APPLICATION_POOL_QUEUE_SIZE, 0);
+                        pool = new ApplicationPool(size, queueSize);
                     }
                     catch (Exception e)
                     {
@@ -411,11 +414,46 @@ public class ApplicationServer
         }
     }
 
+    /**
+     * Creates the listener for the application's port. Applications that set {@link AVKey#SERVER_NON_BLOCKING_IO} to
+     * true are served by a {@link NIOSocketListener} if they use the HTTP protocol. Otherwise the connections are
+     * accepted by a blocking {@link SocketListener}.
+     *
+     * @param app the application to create a listener for.
+     *
+     * @return a new listener bound to the application's port.
+     *
+     * @throws IOException if the port cannot be bound.
+     */
+    protected static SocketListener createSocketListener(ServerApplication app) throws IOException
+    {
+        if (AVListImpl.getBooleanValue(app, AVKey.SERVER_NON_BLOCKING_IO, Boolean.FALSE))
+        {
+            if (AVKey.PROTOCOL_HTTP.equalsIgnoreCase(app.getProtocol()))
+                return NIOSocketListener.listen(app.getPort());
+
+            String message = Logging.getMessage("WMS.Server.NonBlockingIONotSupported", app.getProtocol());
+            Logging.logger().warning(message);
+        }
+
+        return SocketListener.listen(app.getPort(), app.getProtocol());
+    }
+
     public static void dispatch(Socket socket)
     {
         clientSocketPool.execute(new ClientSocketTask(socket));
     }
 
+    static ServerApplication getApplication(int port)
+    {
+        return registeredListeners.get(port);
+    }
+
+    static ApplicationPool getApplicationPool(ServerApplication app)
+    {
+        return (null != app) ? applicationPools.get(app) : null;
+    }
+
 
     protected static void verifyConfigurationParameters() throws IllegalArgumentException, IOException
     {
@@ -495,7 +533,16 @@ public class ApplicationServer
                         throw new RuntimeException(message);
                     }
 
-                    pool.execute(this.socket, app);
+                    try
+                    {
+                        pool.execute(this.socket, app);
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        String message = Logging.getMessage("WMS.Server.RequestRejected", app.getName());
+                        Logging.logger().fine(message);
+                        this.sendServiceUnavailable();
+                    }
                 }
                 else
                 {
@@ -510,5 +557,29 @@ public class ApplicationServer
                 Logging.logger().finest(message);
             }
         }
+
+        protected void sendServiceUnavailable()
+        {
+            try
+            {
+                this.socket.getOutputStream().write(NIOSocketListener.createErrorResponse(
+                    HTTPResponse.SERVER_ERROR_SERVICE_UNAVAILABLE, Logging.getMessage("WMS.Server.Busy")));
+            }
+            catch (IOException e)
+            {
+                Logging.logger().finest(e.getMessage());
+            }
+            finally
+            {
+                try
+                {
+                    this.socket.close();
+                }
+                catch (IOException e)
+                {
+                    Logging.logger().finest(e.getMessage());
+                }
+            }
+        }
     }
 }
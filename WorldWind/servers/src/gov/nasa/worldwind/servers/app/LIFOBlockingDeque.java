@@ -15,6 +15,16 @@ import java.util.concurrent.LinkedBlockingDeque;
 
 public class LIFOBlockingDeque<T> extends LinkedBlockingDeque<T>
 {
+    public LIFOBlockingDeque()
+    {
+        super();
+    }
+
+    public LIFOBlockingDeque(int capacity)
+    {
+        super(capacity);
+    }
+
     @Override
     public boolean offer(T t)
     {
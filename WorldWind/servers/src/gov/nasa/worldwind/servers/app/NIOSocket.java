@@ -0,0 +1,264 @@
+/*
+Copyright (C) 2001, 2011 United States Government as represented by
+the Administrator of the National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.servers.app;
+
+import gov.nasa.worldwind.servers.http.HTTP;
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.*;
+import java.net.*;
+
+/**
+ * A socket that presents one HTTP request received by a {@link NIOSocketListener} to a {@link ServerApplication}. The
+ * socket's input stream contains exactly the bytes of the request, and its output stream collects the application's
+ * response. Closing the socket hands the response back to the listener, which writes it to the client connection in
+ * the order the requests were received. A response larger than {@link NIOSocketListener#MAX_BUFFERED_RESPONSE_SIZE} is
+ * handed to the listener in parts as it is written, and writing waits while the client is slow to receive it. Closing
+ * the socket does not close the client connection.
+ *
+ * @author tag
+ * @version $Id$
+ */
+class NIOSocket extends Socket
+{
+    protected final NIOSocketListener listener;
+    protected final NIOSocketListener.Exchange exchange;
+    protected final ByteArrayOutputStream response = new ByteArrayOutputStream(HTTP.DEFAULT_BUFFER_SIZE);
+    protected final OutputStream outputStream = new ResponseOutputStream();
+    protected int sendBufferSize = HTTP.MAXIMUM_BUF_SIZE;
+    protected boolean inputRead = false;
+    protected boolean inputShutdown = false;
+    protected boolean outputShutdown = false;
+    protected boolean streaming = false;
+    protected boolean closed = false;
+
+    public NIOSocket(NIOSocketListener listener, NIOSocketListener.Exchange exchange) throws SocketException
+    {
+        // The socket has no implementation. Every method the server applications use is overridden.
+        super((SocketImpl) null);
+
+        if (null == listener || null == exchange)
+        {
+            String message = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.listener = listener;
+        this.exchange = exchange;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException
+    {
+        this.checkOpen();
+
+        this.inputRead = true;
+        return new ByteArrayInputStream(this.exchange.request);
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException
+    {
+        this.checkOpen();
+
+        return this.outputStream;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        byte[] bytes;
+        boolean serviced;
+        boolean streamed;
+
+        synchronized (this)
+        {
+            if (this.closed)
+                return;
+
+            this.closed = true;
+            bytes = this.response.toByteArray();
+            serviced = this.inputRead;
+            streamed = this.streaming;
+        }
+
+        if (streamed)
+            this.listener.stream(this.exchange, bytes, true);
+        else
+            this.listener.complete(this.exchange, bytes, serviced);
+    }
+
+    @Override
+    public synchronized boolean isClosed()
+    {
+        return this.closed;
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isBound()
+    {
+        return true;
+    }
+
+    @Override
+    public synchronized void shutdownInput() throws IOException
+    {
+        this.inputShutdown = true;
+    }
+
+    @Override
+    public synchronized void shutdownOutput() throws IOException
+    {
+        this.outputShutdown = true;
+    }
+
+    @Override
+    public synchronized boolean isInputShutdown()
+    {
+        return this.inputShutdown;
+    }
+
+    @Override
+    public synchronized boolean isOutputShutdown()
+    {
+        return this.outputShutdown;
+    }
+
+    @Override
+    public InetAddress getInetAddress()
+    {
+        return this.exchange.connection.remoteAddress.getAddress();
+    }
+
+    @Override
+    public int getPort()
+    {
+        return this.exchange.connection.remoteAddress.getPort();
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress()
+    {
+        return this.exchange.connection.remoteAddress;
+    }
+
+    @Override
+    public InetAddress getLocalAddress()
+    {
+        return this.exchange.connection.localAddress.getAddress();
+    }
+
+    @Override
+    public int getLocalPort()
+    {
+        return this.exchange.connection.localAddress.getPort();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress()
+    {
+        return this.exchange.connection.localAddress;
+    }
+
+    @Override
+    public synchronized void setSendBufferSize(int size) throws SocketException
+    {
+        if (size > 0)
+            this.sendBufferSize = size;
+    }
+
+    @Override
+    public synchronized int getSendBufferSize() throws SocketException
+    {
+        return this.sendBufferSize;
+    }
+
+    @Override
+    public void setSoTimeout(int timeout) throws SocketException
+    {
+    }
+
+    @Override
+    public void setTcpNoDelay(boolean on) throws SocketException
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NIOSocket[addr=" + this.getRemoteSocketAddress() + ",localport=" + this.getLocalPort() + "]";
+    }
+
+    protected void checkOpen() throws SocketException
+    {
+        if (this.closed)
+        {
+            String message = Logging.getMessage("generic.SocketIsClosed");
+            throw new SocketException(message);
+        }
+    }
+
+    /**
+     * Hands the buffered response to the listener once it reaches the size at which it is streamed. Callers synchronize
+     * on the socket.
+     *
+     * @throws IOException if the client connection has closed.
+     */
+    protected void streamIfFull() throws IOException
+    {
+        if (this.response.size() < this.getStreamThreshold())
+            return;
+
+        this.listener.stream(this.exchange, this.response.toByteArray(), false);
+        this.response.reset();
+        this.streaming = true;
+    }
+
+    protected int getStreamThreshold()
+    {
+        return this.streaming ? NIOSocketListener.STREAMED_PART_SIZE : NIOSocketListener.MAX_BUFFERED_RESPONSE_SIZE;
+    }
+
+    protected class ResponseOutputStream extends OutputStream
+    {
+        @Override
+        public void write(int b) throws IOException
+        {
+            synchronized (NIOSocket.this)
+            {
+                checkOpen();
+                response.write(b);
+                streamIfFull();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            synchronized (NIOSocket.this)
+            {
+                checkOpen();
+
+                while (len > 0)
+                {
+                    int n = Math.min(len, getStreamThreshold() - response.size());
+                    response.write(b, off, n);
+                    off += n;
+                    len -= n;
+                    streamIfFull();
+                }
+            }
+        }
+    }
+}
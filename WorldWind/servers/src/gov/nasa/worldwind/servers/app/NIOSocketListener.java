@@ -0,0 +1,1000 @@
+/*
+Copyright (C) 2001, 2011 United States Government as represented by
+the Administrator of the National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.servers.app;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.servers.http.HTTPResponse;
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+
+/**
+ * Accepts HTTP connections on a port with a single selector thread, and keeps the connections open between requests.
+ * <p/>
+ * The listener reads requests from every connection without blocking, and hands each complete request to the port's
+ * {@link ApplicationPool} as a {@link NIOSocket} whose input stream contains only that request. The application thread
+ * therefore never waits on a slow client. A client may send several requests without waiting for the responses (HTTP
+ * pipelining). The responses are written back in the order the requests arrived, and the connection stays open unless
+ * the client asks for it to be closed or the request uses HTTP/1.0 without keep-alive.
+ * <p/>
+ * The listener limits the work it accepts. A connection with {@link #MAX_PIPELINED_REQUESTS} requests in progress is
+ * not read again until one completes, so its client is slowed down by TCP flow control. A request that the application
+ * pool cannot queue receives a 503 (Service Unavailable) response and its connection is closed. Idle connections are
+ * closed after the application's {@link AVKey#SERVER_KEEP_ALIVE_TIMEOUT}.
+ * <p/>
+ * Responses up to {@link #MAX_BUFFERED_RESPONSE_SIZE} bytes are collected in memory before they are written, so that
+ * their Content-Length and Connection headers can be set for persistent connections. Larger responses are streamed as
+ * the application writes them: with chunked transfer encoding if the request used HTTP/1.1, otherwise delimited by
+ * closing the connection. The application thread waits while more than {@link #MAX_BUFFERED_RESPONSE_SIZE} bytes of
+ * its response remain to be written. A connection whose client reads none of a pending response within the keep-alive
+ * timeout is closed, which releases the application thread.
+ * <p/>
+ * A request body is buffered as its bytes arrive, so the memory held for a connection grows with the bytes its client
+ * has actually sent rather than with the Content-Length the client declares.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class NIOSocketListener extends SocketListener
+{
+    /** The maximum number of requests per connection that may be waiting for or receiving service. */
+    protected static final int MAX_PIPELINED_REQUESTS = 16;
+    /** The maximum size of a request line and headers, in bytes. */
+    protected static final int MAX_HEADER_SIZE = 64 * 1024;
+    /** The maximum size of a request body when the application does not limit the size of uploaded files. */
+    protected static final long DEFAULT_MAX_CONTENT_LENGTH = 64L * 1024 * 1024;
+    /** The time an idle connection is kept open when the application does not specify a keep-alive timeout. */
+    protected static final long DEFAULT_KEEP_ALIVE_TIMEOUT = 15000; // 15 seconds
+    protected static final int READ_BUFFER_SIZE = 8192;
+    /** The maximum size of a response held in memory, in bytes. Larger responses are streamed. */
+    protected static final int MAX_BUFFERED_RESPONSE_SIZE = 1024 * 1024;
+    /** The size of each part of a streamed response, in bytes. */
+    protected static final int STREAMED_PART_SIZE = 64 * 1024;
+    protected static final long SELECT_TIMEOUT = 1000;
+
+    protected static final int REQUEST_ENTITY_TOO_LARGE = 413;
+
+    protected static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    // These fields are assigned in connect(), which the superclass constructor calls before it starts this thread.
+    // They therefore have no initializers, which would run after the thread has started.
+    protected ServerSocketChannel serverChannel;
+    protected Selector selector;
+    protected Queue<Exchange> completedExchanges;
+
+    /** The state of one client connection. Accessed only by the listener thread. */
+    protected static class Connection
+    {
+        protected final SocketChannel channel;
+        protected final InetSocketAddress remoteAddress;
+        protected final InetSocketAddress localAddress;
+        /** Bytes read from the client that are not yet part of a dispatched request, in write mode. */
+        protected ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        /** The size of the partially read request at the start of the input buffer, or 0 if it is not yet known. */
+        protected int pendingRequestSize;
+        /** The requests in progress, in the order they were received. */
+        protected final LinkedList<Exchange> exchanges = new LinkedList<Exchange>();
+        /** True once the client has closed its side of the connection. */
+        protected boolean endOfInput;
+        /** True once a request has been read after which the connection is closed. No further requests are read. */
+        protected boolean lastRequestRead;
+        protected long lastActivityTime = System.currentTimeMillis();
+
+        public Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+            this.remoteAddress = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+            this.localAddress = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+        }
+    }
+
+    /**
+     * One request and its response. The response is queued by the application thread and written by the listener
+     * thread, so the response fields are guarded by the exchange.
+     */
+    protected static class Exchange
+    {
+        protected final Connection connection;
+        protected final byte[] request;
+        protected final boolean http11;
+        protected volatile boolean keepAlive;
+        /** The parts of the response not yet written. */
+        protected final LinkedList<ByteBuffer> response = new LinkedList<ByteBuffer>();
+        /** The number of response bytes not yet written. */
+        protected long responseSize;
+        /** True once the whole response has been queued. */
+        protected boolean responseComplete;
+        /** True once the start of a streamed response has been queued. */
+        protected boolean streaming;
+        /** True if the streamed response uses chunked transfer encoding. */
+        protected boolean chunked;
+        /** True once the connection has closed, so the response can no longer be written. */
+        protected boolean aborted;
+        /** The time the pending response bytes were queued, or the time some of them were last written. */
+        protected long lastWriteTime;
+
+        public Exchange(Connection connection, byte[] request, boolean http11, boolean keepAlive)
+        {
+            this.connection = connection;
+            this.request = request;
+            this.http11 = http11;
+            this.keepAlive = keepAlive;
+        }
+
+        protected synchronized void addResponse(ByteBuffer[] parts, boolean complete)
+        {
+            if (this.response.isEmpty())
+                this.lastWriteTime = System.currentTimeMillis();
+
+            for (ByteBuffer part : parts)
+            {
+                this.response.add(part);
+                this.responseSize += part.remaining();
+            }
+
+            this.responseComplete = complete;
+        }
+
+        /** Indicates whether the response has bytes to write, or has been written completely. */
+        protected synchronized boolean hasResponse()
+        {
+            return !this.response.isEmpty() || this.responseComplete;
+        }
+
+        /**
+         * Indicates whether response bytes have been waiting to be written for longer than a specified time, because
+         * the client has stopped reading them.
+         */
+        protected synchronized boolean isStalled(long now, long timeout)
+        {
+            return !this.response.isEmpty() && now - this.lastWriteTime > timeout;
+        }
+
+        protected synchronized void abort()
+        {
+            this.aborted = true;
+            this.notifyAll();
+        }
+    }
+
+    protected NIOSocketListener(int port) throws IOException, IllegalArgumentException
+    {
+        super(port, AVKey.PROTOCOL_HTTP);
+    }
+
+    /**
+     * Returns the application registered for this listener's port.
+     *
+     * @return the application, or null if none is registered.
+     */
+    protected ServerApplication getApplication()
+    {
+        return ApplicationServer.getApplication(this.port);
+    }
+
+    /**
+     * Returns the pool whose threads service an application's requests.
+     *
+     * @param app the application.
+     *
+     * @return the application's pool, or null if the application has no pool.
+     */
+    protected ApplicationPool getApplicationPool(ServerApplication app)
+    {
+        return ApplicationServer.getApplicationPool(app);
+    }
+
+    public static NIOSocketListener listen(int port) throws IOException
+    {
+        return new NIOSocketListener(port);
+    }
+
+    @Override
+    protected void connect() throws IOException, IllegalArgumentException
+    {
+        if (null == this.completedExchanges)
+            this.completedExchanges = new ConcurrentLinkedQueue<Exchange>();
+
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.socket().bind(new InetSocketAddress(this.port));
+        this.serverChannel.configureBlocking(false);
+
+        this.selector = Selector.open();
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+
+        this.socket = this.serverChannel.socket();
+
+        String s = this.socket.getInetAddress() + ":" + this.socket.getLocalPort();
+        String msg = Logging.getMessage("WMS.Server.SocketBound", s);
+        Logging.logger().info(msg);
+    }
+
+    @Override
+    protected void closeSocket()
+    {
+        if (null != this.selector)
+        {
+            for (SelectionKey key : this.selector.keys())
+            {
+                if (key.attachment() instanceof Connection)
+                    this.close((Connection) key.attachment());
+            }
+
+            try
+            {
+                this.selector.close();
+            }
+            catch (IOException e)
+            {
+                Logging.logger().finest(e.getMessage());
+            }
+
+            this.selector = null;
+        }
+
+        super.closeSocket();
+        this.serverChannel = null;
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            long lastIdleCheckTime = System.currentTimeMillis();
+
+            while (!this.isInterrupted())
+            {
+                try
+                {
+                    this.selector.select(SELECT_TIMEOUT);
+
+                    for (Iterator<SelectionKey> iter = this.selector.selectedKeys().iterator(); iter.hasNext(); )
+                    {
+                        SelectionKey key = iter.next();
+                        iter.remove();
+
+                        if (!key.isValid())
+                            continue;
+
+                        if (key.isAcceptable())
+                            this.accept();
+                        else
+                            this.handleConnection((Connection) key.attachment(), key);
+                    }
+
+                    Exchange exchange;
+                    while ((exchange = this.completedExchanges.poll()) != null)
+                    {
+                        if (exchange.connection.channel.isOpen())
+                            this.update(exchange.connection);
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastIdleCheckTime >= SELECT_TIMEOUT)
+                    {
+                        this.closeIdleConnections(now);
+                        lastIdleCheckTime = now;
+                    }
+                }
+                catch (ClosedSelectorException e)
+                {
+                    break;
+                }
+                catch (Exception e)
+                {
+                    String msg = Logging.getMessage("WMS.Server.SocketError", e.toString());
+                    Logging.logger().log(Level.SEVERE, msg, e);
+
+                    this.reconnect();
+                }
+            }
+
+            String msg = Logging.getMessage("WMS.Server.SocketListenerInterrupted", this.port);
+            Logging.logger().info(msg);
+        }
+        finally
+        {
+            this.closeSocket();
+        }
+    }
+
+    protected void accept() throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = this.serverChannel.accept()) != null)
+        {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            Connection connection = new Connection(channel);
+            channel.register(this.selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    protected void handleConnection(Connection connection, SelectionKey key)
+    {
+        try
+        {
+            if (key.isReadable())
+                this.read(connection);
+
+            if (connection.channel.isOpen())
+                this.update(connection);
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("WMS.Server.ClientClosedConnection", e.getMessage());
+            Logging.logger().finest(message);
+            this.close(connection);
+        }
+    }
+
+    protected void read(Connection connection) throws IOException
+    {
+        if (!connection.input.hasRemaining())
+        {
+            // The buffer holds the start of a request larger than the buffer. readRequest limits the request size. The
+            // buffer grows only as the client sends bytes, and not beyond the request's size once that is known.
+            int capacity = 2 * connection.input.capacity();
+            if (connection.pendingRequestSize > connection.input.capacity())
+                capacity = Math.min(capacity, connection.pendingRequestSize);
+
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            connection.input.flip();
+            buffer.put(connection.input);
+            connection.input = buffer;
+        }
+
+        int numRead = connection.channel.read(connection.input);
+        if (numRead < 0)
+            connection.endOfInput = true;
+        else if (numRead > 0)
+            connection.lastActivityTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Dispatches the complete requests buffered for a connection, writes the responses that are ready, and updates the
+     * connection's interest in reading and writing. The connection is closed once its last response is written.
+     *
+     * @param connection the connection to update.
+     *
+     * @throws IOException if writing to the connection fails.
+     */
+    protected void update(Connection connection) throws IOException
+    {
+        boolean progress;
+        do
+        {
+            progress = false;
+            while (!connection.lastRequestRead && connection.exchanges.size() < MAX_PIPELINED_REQUESTS
+                && this.readRequest(connection))
+            {
+                progress = true;
+            }
+
+            while (!connection.exchanges.isEmpty() && this.writeResponse(connection))
+            {
+                progress = true;
+            }
+        }
+        while (progress && connection.channel.isOpen());
+
+        if (!connection.channel.isOpen())
+            return;
+
+        if (connection.exchanges.isEmpty() && (connection.endOfInput || connection.lastRequestRead))
+        {
+            this.close(connection);
+            return;
+        }
+
+        int ops = 0;
+        if (!connection.endOfInput && !connection.lastRequestRead
+            && connection.exchanges.size() < MAX_PIPELINED_REQUESTS)
+            ops |= SelectionKey.OP_READ;
+        if (!connection.exchanges.isEmpty() && connection.exchanges.getFirst().hasResponse())
+            ops |= SelectionKey.OP_WRITE;
+
+        connection.channel.keyFor(this.selector).interestOps(ops);
+    }
+
+    /**
+     * Extracts the next complete request from a connection's input buffer and dispatches it to the application pool.
+     *
+     * @param connection the connection to read from.
+     *
+     * @return true if a request was extracted, otherwise false.
+     */
+    protected boolean readRequest(Connection connection)
+    {
+        byte[] data = connection.input.array();
+        int limit = connection.input.position();
+
+        // Ignore empty lines preceding a request.
+        int start = 0;
+        while (start < limit && (data[start] == '\r' || data[start] == '\n'))
+        {
+            start++;
+        }
+
+        int headerEnd = findHeaderEnd(data, start, limit);
+        if (headerEnd < 0)
+        {
+            if (limit - start >= MAX_HEADER_SIZE)
+            {
+                this.rejectRequest(connection, HTTPResponse.BAD_REQUEST,
+                    Logging.getMessage("WMS.Server.RequestTooLarge", connection.remoteAddress, MAX_HEADER_SIZE));
+            }
+            else
+                this.compactInput(connection, start);
+
+            return false;
+        }
+
+        String version = null;
+        String connectionHeader = null;
+        String transferEncoding = null;
+        long contentLength = 0;
+
+        String[] lines = new String(data, start, headerEnd - start, ISO_8859_1).split("\r?\n");
+        String[] requestLine = lines[0].trim().split("\\s+");
+        if (requestLine.length >= 3)
+            version = requestLine[2];
+
+        for (int i = 1; i < lines.length; i++)
+        {
+            int index = lines[i].indexOf(':');
+            if (index <= 0)
+                continue;
+
+            String name = lines[i].substring(0, index).trim();
+            String value = lines[i].substring(index + 1).trim();
+
+            if (name.equalsIgnoreCase("Connection"))
+                connectionHeader = value;
+            else if (name.equalsIgnoreCase("Transfer-Encoding"))
+                transferEncoding = value;
+            else if (name.equalsIgnoreCase("Content-Length"))
+            {
+                try
+                {
+                    contentLength = Long.parseLong(value);
+                }
+                catch (NumberFormatException e)
+                {
+                    contentLength = -1;
+                }
+            }
+        }
+
+        if (transferEncoding != null && !transferEncoding.equalsIgnoreCase("identity"))
+        {
+            this.rejectRequest(connection, HTTPResponse.SERVER_ERROR_NOT_IMPLEMENTED,
+                Logging.getMessage("generic.FeatureNotImplemented", "Transfer-Encoding: " + transferEncoding));
+            return false;
+        }
+
+        if (contentLength < 0)
+        {
+            this.rejectRequest(connection, HTTPResponse.BAD_REQUEST,
+                Logging.getMessage("WMS.Server.BadRequest", "Content-Length"));
+            return false;
+        }
+
+        long maxContentLength = this.getMaxContentLength();
+        if (contentLength > maxContentLength)
+        {
+            this.rejectRequest(connection, REQUEST_ENTITY_TOO_LARGE,
+                Logging.getMessage("WMS.Server.RequestTooLarge", connection.remoteAddress, maxContentLength));
+            return false;
+        }
+
+        int requestEnd = headerEnd + (int) contentLength;
+        if (requestEnd > limit)
+        {
+            // Wait for the rest of the request body. read() grows the buffer as the body arrives.
+            this.compactInput(connection, start);
+            connection.pendingRequestSize = requestEnd - start;
+            return false;
+        }
+
+        byte[] request = new byte[requestEnd - start];
+        System.arraycopy(data, start, request, 0, request.length);
+        this.compactInput(connection, requestEnd);
+        connection.pendingRequestSize = 0;
+
+        if (connection.input.capacity() > READ_BUFFER_SIZE && connection.input.position() <= READ_BUFFER_SIZE)
+        {
+            // Release the buffer that held a large request.
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            connection.input.flip();
+            buffer.put(connection.input);
+            connection.input = buffer;
+        }
+
+        boolean http11 = "HTTP/1.1".equalsIgnoreCase(version);
+        boolean keepAlive = http11 ? !containsToken(connectionHeader, "close")
+            : containsToken(connectionHeader, "keep-alive");
+        if (!keepAlive)
+            connection.lastRequestRead = true;
+
+        this.dispatch(connection, new Exchange(connection, request, http11, keepAlive));
+        return true;
+    }
+
+    protected void dispatch(Connection connection, Exchange exchange)
+    {
+        connection.exchanges.add(exchange);
+
+        ServerApplication app = this.getApplication();
+        ApplicationPool pool = this.getApplicationPool(app);
+        if (null == pool)
+        {
+            String message = Logging.getMessage("WMS.Server.ApplicationNotFound", this.port);
+            Logging.logger().info(message);
+            this.respond(exchange, HTTPResponse.SERVER_ERROR_SERVICE_UNAVAILABLE, message);
+            return;
+        }
+
+        try
+        {
+            pool.execute(new NIOSocket(this, exchange), app);
+        }
+        catch (RejectedExecutionException e)
+        {
+            String message = Logging.getMessage("WMS.Server.RequestRejected", app.getName());
+            Logging.logger().fine(message);
+            this.respond(exchange, HTTPResponse.SERVER_ERROR_SERVICE_UNAVAILABLE,
+                Logging.getMessage("WMS.Server.Busy"));
+        }
+        catch (SocketException e)
+        {
+            String message = Logging.getMessage("WMS.Server.InternalError", e.getMessage());
+            Logging.logger().finest(message);
+            this.respond(exchange, HTTPResponse.SERVER_ERROR, message);
+        }
+    }
+
+    /**
+     * Responds to a request the listener cannot accept with an error, and stops reading from the connection. The
+     * response follows the responses to any earlier requests on the connection.
+     *
+     * @param connection the connection the request was received on.
+     * @param status     the HTTP status code.
+     * @param message    the reason the request is rejected.
+     */
+    protected void rejectRequest(Connection connection, int status, String message)
+    {
+        Logging.logger().fine(message);
+
+        Exchange exchange = new Exchange(connection, new byte[0], false, false);
+        connection.exchanges.add(exchange);
+        connection.lastRequestRead = true;
+        this.respond(exchange, status, message);
+    }
+
+    /**
+     * Completes an exchange with an error response generated by the listener, and closes the connection after the
+     * response is written.
+     *
+     * @param exchange the exchange to complete.
+     * @param status   the HTTP status code.
+     * @param message  the response body.
+     */
+    protected void respond(Exchange exchange, int status, String message)
+    {
+        exchange.keepAlive = false;
+        exchange.connection.lastRequestRead = true;
+        exchange.addResponse(new ByteBuffer[] {ByteBuffer.wrap(createErrorResponse(status, message))}, true);
+    }
+
+    /**
+     * Called by a {@link NIOSocket} when the application has finished servicing its request, and the response has not
+     * been streamed. This may be called on any thread. The response's headers are rewritten to describe its length and
+     * whether the connection stays open, and the listener thread is woken to write it.
+     *
+     * @param exchange the serviced exchange.
+     * @param output   the bytes the application wrote.
+     * @param serviced true if the application read the request, false if it closed the socket without reading it.
+     */
+    protected void complete(Exchange exchange, byte[] output, boolean serviced)
+    {
+        if (output.length == 0)
+        {
+            // The application either rejected the request before reading it because it waited too long in the
+            // application pool's queue, or could not understand it.
+            exchange.keepAlive = false;
+            exchange.addResponse(new ByteBuffer[] {ByteBuffer.wrap(serviced
+                ? createErrorResponse(HTTPResponse.BAD_REQUEST, "Bad Request")
+                : createErrorResponse(HTTPResponse.SERVER_ERROR_SERVICE_UNAVAILABLE,
+                Logging.getMessage("WMS.Server.Busy")))}, true);
+        }
+        else
+        {
+            exchange.addResponse(this.createResponse(exchange, output), true);
+        }
+
+        this.wakeup(exchange);
+    }
+
+    /**
+     * Called by a {@link NIOSocket} to queue part of a response that is too large to buffer. This may be called on any
+     * thread. The first part's headers are rewritten to use chunked transfer encoding, or to close the connection if
+     * the client doesn't accept chunked responses. Unless the part is the last, the calling thread then waits until
+     * no more than {@link #MAX_BUFFERED_RESPONSE_SIZE} bytes of the response remain to be written.
+     *
+     * @param exchange the exchange being serviced.
+     * @param output   the bytes the application wrote since the previous part.
+     * @param last     true if the application has finished writing the response.
+     *
+     * @throws IOException if the connection has closed, or the thread is interrupted while waiting.
+     */
+    protected void stream(Exchange exchange, byte[] output, boolean last) throws IOException
+    {
+        List<ByteBuffer> parts = new ArrayList<ByteBuffer>();
+        int offset = 0;
+
+        synchronized (exchange)
+        {
+            if (exchange.aborted)
+                throw new SocketException(Logging.getMessage("generic.SocketIsClosed"));
+
+            if (!exchange.streaming)
+            {
+                exchange.streaming = true;
+
+                int headerEnd = findResponseHeaderEnd(output);
+                if (headerEnd < 0)
+                {
+                    exchange.keepAlive = false;
+                }
+                else
+                {
+                    boolean bodyAllowed = isBodyAllowed(output, headerEnd);
+                    exchange.chunked = bodyAllowed && exchange.http11;
+                    if (bodyAllowed && !exchange.chunked)
+                        exchange.keepAlive = false;
+
+                    parts.add(ByteBuffer.wrap(this.createResponseHeader(exchange, output, headerEnd,
+                        exchange.chunked ? "Transfer-Encoding: chunked" : null)));
+                    offset = headerEnd;
+                }
+            }
+        }
+
+        if (exchange.chunked && output.length > offset)
+            parts.add(ByteBuffer.wrap((Integer.toHexString(output.length - offset) + "\r\n").getBytes(ISO_8859_1)));
+        parts.add(ByteBuffer.wrap(output, offset, output.length - offset));
+        if (exchange.chunked && output.length > offset)
+            parts.add(ByteBuffer.wrap("\r\n".getBytes(ISO_8859_1)));
+        if (exchange.chunked && last)
+            parts.add(ByteBuffer.wrap("0\r\n\r\n".getBytes(ISO_8859_1)));
+
+        exchange.addResponse(parts.toArray(new ByteBuffer[parts.size()]), last);
+        this.wakeup(exchange);
+
+        if (last)
+            return;
+
+        synchronized (exchange)
+        {
+            try
+            {
+                while (exchange.responseSize > MAX_BUFFERED_RESPONSE_SIZE && !exchange.aborted)
+                {
+                    exchange.wait();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+
+            if (exchange.aborted)
+                throw new SocketException(Logging.getMessage("generic.SocketIsClosed"));
+        }
+    }
+
+    /** Wakes the listener thread to write an exchange's response. */
+    protected void wakeup(Exchange exchange)
+    {
+        Selector selector = this.selector;
+        if (null != selector)
+        {
+            this.completedExchanges.add(exchange);
+            selector.wakeup();
+        }
+    }
+
+    protected ByteBuffer[] createResponse(Exchange exchange, byte[] output)
+    {
+        int headerEnd = findResponseHeaderEnd(output);
+        if (headerEnd < 0)
+        {
+            // The response cannot be delimited, so the client reads it until the connection is closed.
+            exchange.keepAlive = false;
+            return new ByteBuffer[] {ByteBuffer.wrap(output)};
+        }
+
+        // Responses to which a body is not allowed are delimited by their headers.
+        String framing = isBodyAllowed(output, headerEnd) ? "Content-Length: " + (output.length - headerEnd) : null;
+
+        return new ByteBuffer[] {
+            ByteBuffer.wrap(this.createResponseHeader(exchange, output, headerEnd, framing)),
+            ByteBuffer.wrap(output, headerEnd, output.length - headerEnd)};
+    }
+
+    /**
+     * Rewrites the headers of an application's response to describe how its body is delimited and whether the
+     * connection stays open.
+     *
+     * @param exchange  the exchange being serviced.
+     * @param output    the bytes the application wrote, starting with the response headers.
+     * @param headerEnd the position after the empty line that ends the headers.
+     * @param framing   the header that delimits the body, or null if the body is not delimited by a header.
+     *
+     * @return the rewritten headers.
+     */
+    protected byte[] createResponseHeader(Exchange exchange, byte[] output, int headerEnd, String framing)
+    {
+        StringBuilder sb = new StringBuilder();
+        String[] lines = new String(output, 0, headerEnd, ISO_8859_1).split("\r?\n");
+        for (String line : lines)
+        {
+            int index = line.indexOf(':');
+            String name = (index > 0) ? line.substring(0, index).trim() : null;
+            if (line.length() == 0 || "Content-Length".equalsIgnoreCase(name) || "Connection".equalsIgnoreCase(name)
+                || "Keep-Alive".equalsIgnoreCase(name))
+                continue;
+
+            sb.append(line).append("\r\n");
+        }
+
+        if (null != framing)
+            sb.append(framing).append("\r\n");
+        sb.append("Connection: ").append(exchange.keepAlive ? "keep-alive" : "close").append("\r\n");
+        sb.append("\r\n");
+
+        return sb.toString().getBytes(ISO_8859_1);
+    }
+
+    /**
+     * Finds the end of the headers of an application's response.
+     *
+     * @param output the bytes the application wrote.
+     *
+     * @return the position after the empty line that ends the headers, or -1 if the response does not start with
+     *         complete HTTP headers.
+     */
+    protected static int findResponseHeaderEnd(byte[] output)
+    {
+        if (!new String(output, 0, Math.min(5, output.length), ISO_8859_1).equals("HTTP/"))
+            return -1;
+
+        return findHeaderEnd(output, 0, output.length);
+    }
+
+    /** Indicates whether a response's status allows a body. */
+    protected static boolean isBodyAllowed(byte[] output, int headerEnd)
+    {
+        String[] statusLine = new String(output, 0, headerEnd, ISO_8859_1).split("\r?\n")[0].split(" ");
+        String status = (statusLine.length > 1) ? statusLine[1] : "";
+
+        return !(status.startsWith("1") || status.equals("204") || status.equals("304"));
+    }
+
+    /**
+     * Writes the response of a connection's oldest request, if it is ready.
+     *
+     * @param connection the connection to write to.
+     *
+     * @return true if the response was written completely, otherwise false.
+     *
+     * @throws IOException if writing to the connection fails.
+     */
+    protected boolean writeResponse(Connection connection) throws IOException
+    {
+        Exchange exchange = connection.exchanges.getFirst();
+        synchronized (exchange)
+        {
+            while (!exchange.response.isEmpty())
+            {
+                ByteBuffer buffer = exchange.response.getFirst();
+                int numWritten = connection.channel.write(buffer);
+                exchange.responseSize -= numWritten;
+                if (numWritten > 0)
+                    exchange.lastWriteTime = System.currentTimeMillis();
+                if (buffer.hasRemaining())
+                    break;
+
+                exchange.response.removeFirst();
+            }
+
+            // Wake the application thread if it is waiting for its streamed response to be written.
+            exchange.notifyAll();
+
+            if (!exchange.response.isEmpty() || !exchange.responseComplete)
+                return false;
+        }
+
+        connection.exchanges.removeFirst();
+        connection.lastActivityTime = System.currentTimeMillis();
+
+        if (!exchange.keepAlive)
+        {
+            this.close(connection);
+            connection.exchanges.clear();
+        }
+
+        return true;
+    }
+
+    protected void closeIdleConnections(long now)
+    {
+        long timeout = this.getKeepAliveTimeout();
+
+        for (SelectionKey key : this.selector.keys())
+        {
+            if (!(key.attachment() instanceof Connection))
+                continue;
+
+            Connection connection = (Connection) key.attachment();
+            if (connection.exchanges.isEmpty())
+            {
+                if (now - connection.lastActivityTime > timeout)
+                    this.close(connection);
+            }
+            else if (connection.exchanges.getFirst().isStalled(now, timeout))
+            {
+                // The client has stopped reading its response. Closing the connection releases an application thread
+                // waiting to stream the response.
+                String message = Logging.getMessage("WMS.Server.ResponseStalled", connection.remoteAddress, timeout);
+                Logging.logger().fine(message);
+                this.close(connection);
+            }
+        }
+    }
+
+    protected void close(Connection connection)
+    {
+        // Release application threads waiting to stream responses to this connection.
+        for (Exchange exchange : connection.exchanges)
+        {
+            exchange.abort();
+        }
+
+        try
+        {
+            connection.channel.close();
+        }
+        catch (IOException e)
+        {
+            Logging.logger().finest(e.getMessage());
+        }
+    }
+
+    protected void compactInput(Connection connection, int position)
+    {
+        if (position == 0)
+            return;
+
+        ByteBuffer input = connection.input;
+        input.flip();
+        input.position(position);
+        input.compact();
+    }
+
+    protected long getKeepAliveTimeout()
+    {
+        ServerApplication app = this.getApplication();
+        Long timeout = (null != app) ? AVListImpl.getLongValue(app, AVKey.SERVER_KEEP_ALIVE_TIMEOUT) : null;
+        return (null != timeout && timeout >= 0) ? timeout : DEFAULT_KEEP_ALIVE_TIMEOUT;
+    }
+
+    protected long getMaxContentLength()
+    {
+        ServerApplication app = this.getApplication();
+        Long size = (null != app) ? AVListImpl.getLongValue(app, AVKey.HTTP_SERVER_FILE_UPLOAD_MAX_SIZE) : null;
+        return (null != size && size > 0) ? Math.min(size, Integer.MAX_VALUE - MAX_HEADER_SIZE)
+            : DEFAULT_MAX_CONTENT_LENGTH;
+    }
+
+    /**
+     * Finds the end of an HTTP message's header, which is terminated by an empty line.
+     *
+     * @param data  the message bytes.
+     * @param start the position of the message's first byte.
+     * @param limit the position after the last available byte.
+     *
+     * @return the position after the empty line, or -1 if the header is incomplete.
+     */
+    protected static int findHeaderEnd(byte[] data, int start, int limit)
+    {
+        for (int i = start; i < limit; i++)
+        {
+            if (data[i] != '\n')
+                continue;
+
+            if (i + 1 < limit && data[i + 1] == '\n')
+                return i + 2;
+
+            if (i + 2 < limit && data[i + 1] == '\r' && data[i + 2] == '\n')
+                return i + 3;
+        }
+
+        return -1;
+    }
+
+    protected static boolean containsToken(String value, String token)
+    {
+        if (null == value)
+            return false;
+
+        for (String s : value.split(","))
+        {
+            if (s.trim().equalsIgnoreCase(token))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates a complete HTTP response with a plain text body, after which the connection is closed.
+     *
+     * @param status  the HTTP status code.
+     * @param message the response body.
+     *
+     * @return the response bytes.
+     */
+    public static byte[] createErrorResponse(int status, String message)
+    {
+        byte[] body = (null != message ? message : "").getBytes(ISO_8859_1);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("HTTP/1.1 ").append(status).append(' ').append(getReasonPhrase(status)).append("\r\n");
+        sb.append("Content-Type: text/plain\r\n");
+        sb.append("Content-Length: ").append(body.length).append("\r\n");
+        sb.append("Connection: close\r\n");
+        sb.append("\r\n");
+
+        byte[] head = sb.toString().getBytes(ISO_8859_1);
+        byte[] response = new byte[head.length + body.length];
+        System.arraycopy(head, 0, response, 0, head.length);
+        System.arraycopy(body, 0, response, head.length, body.length);
+
+        return response;
+    }
+
+    protected static String getReasonPhrase(int status)
+    {
+        switch (status)
+        {
+            case HTTPResponse.BAD_REQUEST:
+                return "Bad Request";
+            case REQUEST_ENTITY_TOO_LARGE:
+                return "Request Entity Too Large";
+            case HTTPResponse.SERVER_ERROR:
+                return "Internal Server Error";
+            case HTTPResponse.SERVER_ERROR_NOT_IMPLEMENTED:
+                return "Not Implemented";
+            case HTTPResponse.SERVER_ERROR_SERVICE_UNAVAILABLE:
+                return "Service Unavailable";
+            default:
+                return "Error";
+        }
+    }
+}
@@ -9,6 +9,7 @@ package gov.nasa.worldwind.servers.app;
 import gov.nasa.worldwind.Factory;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.avlist.AVList;
+import gov.nasa.worldwind.avlist.AVListImpl;
 import gov.nasa.worldwind.cache.BasicDataFileStore;
 import gov.nasa.worldwind.cache.FileStore;
 import gov.nasa.worldwind.exception.WWRuntimeException;
@@ -37,6 +38,9 @@ public class WMSServerApplication extends BasicHttpServerApplication
     private gov.nasa.worldwind.servers.wms.Configuration configuration = null;
     private FileStore dataFileStore = null;
     private Factory mapSourceFactory = null;
+    private WMSResponseCache responseCache = null;
+
+    protected static final long DEFAULT_RESPONSE_CACHE_MAX_AGE = 3600; // 1 hour
 
     @SuppressWarnings( {"UnusedDeclaration"})
     public WMSServerApplication()
@@ -71,6 +75,8 @@ public class WMSServerApplication extends BasicHttpServerApplication
 
             this.readMapSources();
 
+            this.responseCache = this.createResponseCache();
+
             if (this.getConfiguration().runAutoDiscoveryTask())
             {
                 // Create the WMS data file store.
@@ -80,6 +86,11 @@ public class WMSServerApplication extends BasicHttpServerApplication
                     new WMSDataDiscoveryThread(this, dataFileStore, configuration.getDataFileStoreFilter());
 
                 discovery.addWMSLayerEventListener((WMSLayerEventListener) mapRegistry);
+                if (null != this.responseCache)
+                {
+                    // Register the cache after the registry, so that it is invalidated after the registry changes.
+                    discovery.addWMSLayerEventListener(this.responseCache);
+                }
                 discovery.start();
             }
         }
@@ -89,6 +100,40 @@ public class WMSServerApplication extends BasicHttpServerApplication
         }
     }
 
+    /**
+     * Creates the cache of GetMap responses, if the application's configuration enables it by specifying a positive
+     * {@link AVKey#SERVER_RESPONSE_CACHE_MEMORY_SIZE} or {@link AVKey#SERVER_RESPONSE_CACHE_DISK_SIZE}. Cached
+     * responses are written to a directory in the server's temporary directory.
+     *
+     * @return the response cache, or null if the configuration does not enable it.
+     */
+    protected WMSResponseCache createResponseCache()
+    {
+        long memorySize = AVListImpl.getLongValue(this, AVKey.SERVER_RESPONSE_CACHE_MEMORY_SIZE, 0L);
+        long diskSize = AVListImpl.getLongValue(this, AVKey.SERVER_RESPONSE_CACHE_DISK_SIZE, 0L);
+        long maxAge = AVListImpl.getLongValue(this, AVKey.SERVER_RESPONSE_CACHE_MAX_AGE,
+            DEFAULT_RESPONSE_CACHE_MAX_AGE);
+
+        if (memorySize <= 0 && diskSize <= 0)
+        {
+            return null;
+        }
+
+        File directory = new File(ApplicationServer.getTempDirectory(), "WMSResponseCache" + File.separator
+            + this.getPort());
+
+        try
+        {
+            return new WMSResponseCache(Math.max(memorySize, 0), Math.max(diskSize, 0), maxAge, directory);
+        }
+        catch (Exception e)
+        {
+            String message = WWUtil.extractExceptionReason(e);
+            Logging.logger().severe(message);
+            return null;
+        }
+    }
+
     protected FileStore locateDataFileStore()
     {
         ArrayList<String> locations = new ArrayList<String>();
@@ -224,6 +269,11 @@ public class WMSServerApplication extends BasicHttpServerApplication
     @Override
     protected void doStop()
     {
+        if (null != this.responseCache)
+        {
+            this.responseCache.logStatistics();
+        }
+
         super.doStop();
     }
 
@@ -283,6 +333,16 @@ public class WMSServerApplication extends BasicHttpServerApplication
         return mapRegistry;
     }
 
+    /**
+     * Returns the cache of GetMap responses.
+     *
+     * @return the response cache, or null if the application does not cache responses.
+     */
+    public WMSResponseCache getResponseCache()
+    {
+        return this.responseCache;
+    }
+
     public FileStore getDataFileStore()
     {
         return dataFileStore;
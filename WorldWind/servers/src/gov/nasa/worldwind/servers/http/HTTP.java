@@ -10,6 +10,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.text.*;
+import java.util.*;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -44,6 +46,11 @@ public class HTTP
     {
         public static final String ACCEPT_ENCODING = "Accept-Encoding";
         public static final String VARY = "Vary";
+        public static final String CACHE_CONTROL = "Cache-Control";
+        public static final String ETAG = "ETag";
+        public static final String LAST_MODIFIED = "Last-Modified";
+        public static final String IF_NONE_MATCH = "If-None-Match";
+        public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
         public static final String CONTENT_ENCODING = "Content-Encoding";
         public static final String COMPRESSED_ENCODING = "compress";
         public static final String GZIPPED_ENCODING = "gzip";
@@ -126,6 +133,50 @@ public class HTTP
         return new ByteArrayInputStream(bytes.toByteArray());
     }
 
+    /**
+     * Formats a time as an HTTP date, such as "Sun, 06 Nov 1994 08:49:37 GMT".
+     *
+     * @param time the time in milliseconds since the epoch.
+     *
+     * @return the formatted date.
+     */
+    public static String formatDate(long time)
+    {
+        return createDateFormat().format(new Date(time));
+    }
+
+    /**
+     * Parses an HTTP date, such as the value of an If-Modified-Since header.
+     *
+     * @param date the date to parse.
+     *
+     * @return the time in milliseconds since the epoch, or -1 if the date is null or cannot be parsed.
+     */
+    public static long parseDate(String date)
+    {
+        if (null == date)
+        {
+            return -1;
+        }
+
+        try
+        {
+            return createDateFormat().parse(date.trim()).getTime();
+        }
+        catch (ParseException e)
+        {
+            return -1;
+        }
+    }
+
+    protected static DateFormat createDateFormat()
+    {
+        // SimpleDateFormat is not thread safe, so each call creates its own.
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
     /**
      * Decodes escape sequences in the query string.  NOTE that although there is a class java.net.URLDecoder that can
      * do this, it appears to adhere to strict rules about what are legal characters in a URL. Evidently our clients may
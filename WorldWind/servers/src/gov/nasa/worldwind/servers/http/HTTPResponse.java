@@ -273,6 +273,7 @@ public class HTTPResponse
 
     static public final int PERM_REDIRECT = 301;
     static public final int TEMP_REDIRECT = 302;
+    static public final int NOT_MODIFIED = 304;
 
     static public final int BAD_REQUEST = 400;
     static public final int NOT_FOUND = 404;
@@ -307,6 +308,7 @@ public class HTTPResponse
 
         statusMsgs.put(PERM_REDIRECT, "Moved Permanently");
         statusMsgs.put(TEMP_REDIRECT, "Found");
+        statusMsgs.put(NOT_MODIFIED, "Not Modified");
 
         statusMsgs.put(UNKNOWN_STATUS, "WMSResponse");   // for unknown status codes...
     }
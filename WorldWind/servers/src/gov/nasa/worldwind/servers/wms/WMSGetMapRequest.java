@@ -15,8 +15,7 @@ import gov.nasa.worldwind.util.WWIO;
 import gov.nasa.worldwind.util.WWUtil;
 
 import java.awt.*;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 
 /**
  * @author brownrigg
@@ -250,6 +249,38 @@ public class WMSGetMapRequest extends WMSRequest implements IMapRequest
         return str.toString();
     }
 
+    /**
+     * Returns a string that is identical for all GetMap requests that produce the same image, regardless of the order,
+     * case and number formatting of their parameters. The string identifies the request's response in a {@link
+     * WMSResponseCache}.
+     *
+     * @return the request's canonical form.
+     */
+    public String getCacheKey()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("LAYERS=");
+        for (int i = 0; i < this.layers.length; i++)
+        {
+            sb.append(i > 0 ? "," : "").append(this.layers[i]);
+        }
+        sb.append("&STYLES=");
+        for (int i = 0; i < this.styles.length; i++)
+        {
+            sb.append(i > 0 ? "," : "").append(null != this.styles[i] ? this.styles[i] : "");
+        }
+        sb.append("&CRS=").append(this.crs.toUpperCase());
+        sb.append("&BBOX=").append(this.getBBoxXMin()).append(",").append(this.getBBoxYMin()).append(",")
+            .append(this.getBBoxXMax()).append(",").append(this.getBBoxYMax());
+        sb.append("&WIDTH=").append(this.width);
+        sb.append("&HEIGHT=").append(this.height);
+        sb.append("&FORMAT=").append(this.format.toLowerCase());
+        sb.append("&TRANSPARENT=").append(this.transparent);
+        sb.append("&BGCOLOR=").append(null != this.bgColor ? this.bgColor.toUpperCase() : "");
+        sb.append("&TIME=").append(null != this.time ? this.time : "");
+        return sb.toString();
+    }
+
     // gettors...
 
     public String getVersion()
@@ -444,6 +475,23 @@ public class WMSGetMapRequest extends WMSRequest implements IMapRequest
             throw new WMSServiceException(message);
         }
 
+        WMSResponseCache cache = this.getApplicationContext().getResponseCache();
+        String cacheKey = null;
+        long cacheGeneration = 0;
+        if (null != cache)
+        {
+            cacheKey = this.getCacheKey();
+            WMSResponseCache.Entry entry = cache.get(cacheKey);
+            if (null != entry)
+            {
+                this.sendCachedResponse(cache, entry, req, resp);
+                req.addStats("cachedResponse", System.currentTimeMillis() - start);
+                return;
+            }
+
+            cacheGeneration = cache.getGeneration();
+        }
+
         // create an instance of the MapGenerator.ServiceInstance and hand request to it...
         ImageFormatter image = null;
 
@@ -476,6 +524,19 @@ public class WMSGetMapRequest extends WMSRequest implements IMapRequest
         try
         {
             InputStream is = image.getStreamFromMimeType(this.getFormat(), map.getProperties());
+
+            if (null != cache)
+            {
+                byte[] content = readContent(is);
+                WWIO.closeStream(is, null);
+                WMSResponseCache.Entry entry = cache.put(cacheKey, cacheGeneration, this.getFormat(), content);
+                if (null != entry)
+                {
+                    addCacheHeaders(cache, entry, resp);
+                }
+                is = new ByteArrayInputStream(content);
+            }
+
             eis = HTTP.encodePayload(is, this.getFormat(), this.getHttpRequest(), resp);
 
             resp.write(eis);
@@ -486,4 +547,52 @@ public class WMSGetMapRequest extends WMSRequest implements IMapRequest
             mapService.freeResources();
         }
     }
+
+    protected void sendCachedResponse(WMSResponseCache cache, WMSResponseCache.Entry entry, HTTPRequest req,
+        HTTPResponse resp) throws IOException
+    {
+        addCacheHeaders(cache, entry, resp);
+
+        if (cache.isNotModified(entry, req.getHeader(HTTP.Header.IF_NONE_MATCH),
+            req.getHeader(HTTP.Header.IF_MODIFIED_SINCE)))
+        {
+            resp.setStatus(HTTPResponse.NOT_MODIFIED);
+            return;
+        }
+
+        resp.setStatus(HTTPResponse.OK);
+        resp.setContentType(entry.getContentType());
+        resp.addHeader(HTTP.Header.VARY, HTTP.Header.ACCEPT_ENCODING);
+
+        InputStream eis = null;
+        try
+        {
+            eis = HTTP.encodePayload(new ByteArrayInputStream(entry.getContent()), entry.getContentType(), req, resp);
+            resp.write(eis);
+        }
+        finally
+        {
+            WWIO.closeStream(eis, null);
+        }
+    }
+
+    protected static void addCacheHeaders(WMSResponseCache cache, WMSResponseCache.Entry entry, HTTPResponse resp)
+    {
+        resp.addHeader(HTTP.Header.ETAG, entry.getETag());
+        resp.addHeader(HTTP.Header.LAST_MODIFIED, HTTP.formatDate(entry.getLastModified()));
+        resp.addHeader(HTTP.Header.CACHE_CONTROL, "max-age=" + cache.getMaxAge());
+    }
+
+    protected static byte[] readContent(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(HTTP.MAXIMUM_BUF_SIZE);
+        byte[] buffer = new byte[HTTP.DEFAULT_BUFFER_SIZE];
+        int numRead;
+        while ((numRead = is.read(buffer)) != -1)
+        {
+            content.write(buffer, 0, numRead);
+        }
+
+        return content.toByteArray();
+    }
 }
@@ -0,0 +1,588 @@
+/*
+Copyright (C) 2001, 2011 United States Government as represented by
+the Administrator of the National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+package gov.nasa.worldwind.servers.wms;
+
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.servers.http.HTTP;
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Caches the encoded images of GetMap responses, so that identical requests are answered without composing and
+ * encoding the image again. Tiled clients request the same tiles repeatedly, so most of their requests are answered
+ * from the cache.
+ * <p/>
+ * Responses are keyed by their canonical request, see {@link WMSGetMapRequest#getCacheKey()}. The most recently used
+ * responses are held in memory, and every response is also written to a directory, up to a limit on the total size of
+ * each tier. The least recently used responses are discarded first. Each response has an entity tag and a last modified
+ * time, so that a client that already holds a response can revalidate it with a conditional request, and receive a 304
+ * (Not Modified) response without the image.
+ * <p/>
+ * The cache listens to the {@link WMSDataDiscoveryThread}. When a layer configuration is added, changed or removed, all
+ * cached responses are discarded, since any of them may be composed from the changed layer.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class WMSResponseCache implements WMSLayerEventListener
+{
+    /** The number of requests between reports of the cache statistics. */
+    protected static final long STATISTICS_LOG_INTERVAL = 1000;
+    protected static final String FILE_SUFFIX = ".response";
+
+    /** A cached response. */
+    public static class Entry
+    {
+        protected final String name;
+        protected final String contentType;
+        protected final long lastModified;
+        protected final byte[] content;
+
+        public Entry(String name, String contentType, long lastModified, byte[] content)
+        {
+            this.name = name;
+            this.contentType = contentType;
+            // HTTP dates have a resolution of one second.
+            this.lastModified = lastModified - lastModified % 1000;
+            this.content = content;
+        }
+
+        public String getContentType()
+        {
+            return this.contentType;
+        }
+
+        public long getLastModified()
+        {
+            return this.lastModified;
+        }
+
+        public byte[] getContent()
+        {
+            return this.content;
+        }
+
+        /**
+         * Returns the response's entity tag. The tag is weak, because the content may be sent with different content
+         * encodings.
+         *
+         * @return the entity tag, including its quotes.
+         */
+        public String getETag()
+        {
+            return "W/\"" + this.name + "\"";
+        }
+    }
+
+    protected final long memoryCapacity;
+    protected final long diskCapacity;
+    protected final long maxAge;
+    protected final File directory;
+    // Both maps are in access order, so their first entries are the least recently used. They are guarded by this.
+    protected final LinkedHashMap<String, Entry> memoryEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    protected final LinkedHashMap<String, Long> diskEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    protected long memorySize;
+    protected long diskSize;
+    protected long generation;
+    /** Distinguishes the responses of this cache from those cached before the server was restarted. */
+    protected final long creationTime = System.currentTimeMillis();
+
+    protected final AtomicLong numRequests = new AtomicLong();
+    protected final AtomicLong numHits = new AtomicLong();
+    protected final AtomicLong numNotModified = new AtomicLong();
+    protected final AtomicLong numBytesServed = new AtomicLong();
+    protected final AtomicLong numBytesNotSent = new AtomicLong();
+
+    /**
+     * Creates a response cache.
+     *
+     * @param memoryCapacity the maximum number of bytes of responses to hold in memory.
+     * @param diskCapacity   the maximum number of bytes of responses to write to <code>directory</code>. Zero disables
+     *                       the disk tier.
+     * @param maxAge         the time in seconds that clients may use a response without revalidating it.
+     * @param directory      the directory to write responses to. Any responses already in the directory were created
+     *                       by an earlier run of the server and are deleted. May be null if <code>diskCapacity</code>
+     *                       is zero.
+     *
+     * @throws IllegalArgumentException if either capacity or the maximum age is negative, or if the directory is null
+     *                                  and the disk capacity is not zero.
+     * @throws WWRuntimeException       if the directory cannot be created.
+     */
+    public WMSResponseCache(long memoryCapacity, long diskCapacity, long maxAge, File directory)
+    {
+        if (memoryCapacity < 0 || diskCapacity < 0)
+        {
+            String message = Logging.getMessage("generic.SizeOutOfRange", memoryCapacity < 0 ? memoryCapacity
+                : diskCapacity);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (maxAge < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", maxAge);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (diskCapacity > 0 && null == directory)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.memoryCapacity = memoryCapacity;
+        this.diskCapacity = diskCapacity;
+        this.maxAge = maxAge;
+        this.directory = (diskCapacity > 0) ? directory : null;
+
+        if (null != this.directory)
+        {
+            this.deleteFiles(this.directory.listFiles());
+
+            if (!this.directory.exists() && !this.directory.mkdirs())
+            {
+                String message = Logging.getMessage("generic.CannotCreateDirectory", this.directory);
+                Logging.logger().severe(message);
+                throw new WWRuntimeException(message);
+            }
+        }
+    }
+
+    /**
+     * Returns the time in seconds that clients may use a cached response without revalidating it.
+     *
+     * @return the maximum age of a response.
+     */
+    public long getMaxAge()
+    {
+        return this.maxAge;
+    }
+
+    /**
+     * Returns the current generation of the cache. The generation changes each time the cache is invalidated. A caller
+     * that composes a response reads the generation before it starts, and passes it to
+     * {@link #put(String, long, String, byte[])}, so that a response composed from data that changed meanwhile is not
+     * cached.
+     *
+     * @return the cache's generation.
+     */
+    public synchronized long getGeneration()
+    {
+        return this.generation;
+    }
+
+    /**
+     * Returns the cached response for a request, from memory or from disk. Each call counts as a request in the cache
+     * statistics.
+     *
+     * @param key the canonical request.
+     *
+     * @return the cached response, or null if the request has no cached response.
+     *
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public Entry get(String key)
+    {
+        if (null == key)
+        {
+            String message = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.numRequests.incrementAndGet() % STATISTICS_LOG_INTERVAL == 0)
+            this.logStatistics();
+
+        Entry entry = this.getEntry(key);
+        if (null != entry)
+        {
+            this.numHits.incrementAndGet();
+            this.numBytesServed.addAndGet(entry.getContent().length);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Adds a response to the cache, unless the cache has been invalidated since the response was started.
+     *
+     * @param key         the canonical request.
+     * @param generation  the generation of the cache when composing the response started.
+     * @param contentType the response's MIME type.
+     * @param content     the response's content.
+     *
+     * @return the cached response, or null if it was not cached.
+     *
+     * @throws IllegalArgumentException if the key, content type or content is null.
+     */
+    public Entry put(String key, long generation, String contentType, byte[] content)
+    {
+        if (null == key || null == contentType || null == content)
+        {
+            String message = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        Entry entry = new Entry(this.createName(key, generation), contentType, System.currentTimeMillis(), content);
+
+        synchronized (this)
+        {
+            if (generation != this.generation)
+                return null;
+
+            this.addToMemory(key, entry);
+        }
+
+        if (null != this.directory && content.length <= this.diskCapacity)
+            this.writeEntry(key, entry);
+
+        return entry;
+    }
+
+    /**
+     * Indicates whether a client already holds a cached response, according to the client's conditional request
+     * headers. The If-None-Match header takes precedence over the If-Modified-Since header, as specified by HTTP/1.1.
+     * If the client holds the response, the bytes it does not need to receive are counted in the cache statistics.
+     *
+     * @param entry           the cached response.
+     * @param ifNoneMatch     the value of the request's If-None-Match header, or null.
+     * @param ifModifiedSince the value of the request's If-Modified-Since header, or null.
+     *
+     * @return true if the client's copy of the response is current, otherwise false.
+     *
+     * @throws IllegalArgumentException if the entry is null.
+     */
+    public boolean isNotModified(Entry entry, String ifNoneMatch, String ifModifiedSince)
+    {
+        if (null == entry)
+        {
+            String message = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        boolean notModified;
+        if (null != ifNoneMatch)
+        {
+            notModified = false;
+            // Compare entity tags weakly, ignoring the weakness indicator.
+            String eTag = entry.getETag().substring(2);
+            for (String tag : ifNoneMatch.split(","))
+            {
+                tag = tag.trim();
+                if (tag.startsWith("W/"))
+                    tag = tag.substring(2);
+
+                if (tag.equals("*") || tag.equals(eTag))
+                {
+                    notModified = true;
+                    break;
+                }
+            }
+        }
+        else
+        {
+            long time = HTTP.parseDate(ifModifiedSince);
+            notModified = time >= 0 && entry.getLastModified() <= time;
+        }
+
+        if (notModified)
+        {
+            this.numNotModified.incrementAndGet();
+            this.numBytesNotSent.addAndGet(entry.getContent().length);
+        }
+
+        return notModified;
+    }
+
+    /** Discards all cached responses. */
+    public void invalidate()
+    {
+        List<File> files = new ArrayList<File>();
+
+        synchronized (this)
+        {
+            this.generation++;
+
+            this.memoryEntries.clear();
+            this.memorySize = 0;
+
+            for (String name : this.diskEntries.keySet())
+            {
+                files.add(this.getFile(name));
+            }
+            this.diskEntries.clear();
+            this.diskSize = 0;
+        }
+
+        this.deleteFiles(files.toArray(new File[files.size()]));
+    }
+
+    public void layerAdded(WMSLayerEvent e)
+    {
+        this.layerChanged(e);
+    }
+
+    public void layerRemoved(WMSLayerEvent e)
+    {
+        this.layerChanged(e);
+    }
+
+    public void layerChanged(WMSLayerEvent e)
+    {
+        this.invalidate();
+
+        String message = Logging.getMessage("WMS.ResponseCache.Invalidated",
+            (null != e) ? e.getConfigurationSource() : null);
+        Logging.logger().fine(message);
+    }
+
+    public long getNumRequests()
+    {
+        return this.numRequests.get();
+    }
+
+    public long getNumHits()
+    {
+        return this.numHits.get();
+    }
+
+    public long getNumNotModified()
+    {
+        return this.numNotModified.get();
+    }
+
+    /**
+     * Returns the number of response bytes that were served from the cache rather than composed and encoded again.
+     *
+     * @return the number of bytes served from the cache.
+     */
+    public long getNumBytesServed()
+    {
+        return this.numBytesServed.get();
+    }
+
+    /**
+     * Returns the number of response bytes that were not sent because the client already held the response.
+     *
+     * @return the number of bytes not sent.
+     */
+    public long getNumBytesNotSent()
+    {
+        return this.numBytesNotSent.get();
+    }
+
+    /** Logs the number of requests, the hit rate and the number of bytes saved. */
+    public void logStatistics()
+    {
+        long requests = this.getNumRequests();
+        long hits = this.getNumHits();
+
+        String message = Logging.getMessage("WMS.ResponseCache.Statistics", requests, hits,
+            String.format("%.1f", (requests > 0) ? 100.0 * hits / requests : 0.0), this.getNumNotModified(),
+            this.getNumBytesServed(), this.getNumBytesNotSent());
+        Logging.logger().info(message);
+    }
+
+    protected Entry getEntry(String key)
+    {
+        String name;
+
+        synchronized (this)
+        {
+            Entry entry = this.memoryEntries.get(key);
+            if (null != entry)
+                return entry;
+
+            // Unlike containsKey, get marks the file as recently used.
+            name = this.createName(key, this.generation);
+            if (null == this.diskEntries.get(name))
+                return null;
+        }
+
+        Entry entry = this.readEntry(name);
+        if (null == entry)
+            return null;
+
+        synchronized (this)
+        {
+            // The cache may have been invalidated while the entry was read.
+            if (!this.diskEntries.containsKey(name))
+                return null;
+
+            this.addToMemory(key, entry);
+        }
+
+        return entry;
+    }
+
+    protected void addToMemory(String key, Entry entry)
+    {
+        long size = entry.getContent().length;
+        if (size > this.memoryCapacity)
+            return;
+
+        Entry previous = this.memoryEntries.put(key, entry);
+        if (null != previous)
+            this.memorySize -= previous.getContent().length;
+        this.memorySize += size;
+
+        Iterator<Entry> iter = this.memoryEntries.values().iterator();
+        while (this.memorySize > this.memoryCapacity && iter.hasNext())
+        {
+            this.memorySize -= iter.next().getContent().length;
+            iter.remove();
+        }
+    }
+
+    protected File getFile(String name)
+    {
+        return new File(this.directory, name + FILE_SUFFIX);
+    }
+
+    protected void writeEntry(String key, Entry entry)
+    {
+        File file = this.getFile(entry.name);
+        File tempFile = new File(this.directory, entry.name + ".tmp");
+
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeUTF(entry.getContentType());
+            out.writeLong(entry.getLastModified());
+            out.writeInt(entry.getContent().length);
+            out.write(entry.getContent());
+            out.close();
+            out = null;
+
+            // Replace any copy of the file an identical concurrent request wrote first.
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file)))
+            {
+                String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", file);
+                throw new IOException(message);
+            }
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", key);
+            Logging.logger().log(Level.WARNING, message, e);
+            WWIO.closeStream(out, tempFile.getPath());
+            this.deleteFiles(new File[] {tempFile});
+            return;
+        }
+
+        List<File> evicted = new ArrayList<File>();
+
+        synchronized (this)
+        {
+            // Unless the cache has been invalidated meanwhile, add the file to the disk tier and evict the least
+            // recently used files. Otherwise the file is stale and is deleted.
+            if (!entry.name.equals(this.createName(key, this.generation)))
+            {
+                evicted.add(file);
+            }
+            else
+            {
+                Long previous = this.diskEntries.put(entry.name, (long) entry.getContent().length);
+                if (null != previous)
+                    this.diskSize -= previous;
+                this.diskSize += entry.getContent().length;
+
+                Iterator<Map.Entry<String, Long>> iter = this.diskEntries.entrySet().iterator();
+                while (this.diskSize > this.diskCapacity && iter.hasNext())
+                {
+                    Map.Entry<String, Long> eldest = iter.next();
+                    this.diskSize -= eldest.getValue();
+                    evicted.add(this.getFile(eldest.getKey()));
+                    iter.remove();
+                }
+            }
+        }
+
+        this.deleteFiles(evicted.toArray(new File[evicted.size()]));
+    }
+
+    protected Entry readEntry(String name)
+    {
+        File file = this.getFile(name);
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            String contentType = in.readUTF();
+            long lastModified = in.readLong();
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+
+            return new Entry(name, contentType, lastModified, content);
+        }
+        catch (IOException e)
+        {
+            // The file may have been evicted by another thread after it was looked up.
+            Logging.logger().fine(Logging.getMessage("generic.ExceptionWhileReading", file));
+            return null;
+        }
+        finally
+        {
+            WWIO.closeStream(in, file.getPath());
+        }
+    }
+
+    @SuppressWarnings( {"ResultOfMethodCallIgnored"})
+    protected void deleteFiles(File[] files)
+    {
+        if (null == files)
+            return;
+
+        for (File file : files)
+        {
+            if (file.isFile() && (file.getName().endsWith(FILE_SUFFIX) || file.getName().endsWith(".tmp")))
+                file.delete();
+        }
+    }
+
+    /**
+     * Creates the name of a cached response, which is both its file name and its entity tag. The name is a digest of
+     * the canonical request, the cache's creation time and the cache generation. Responses cached before the cache was
+     * invalidated or the server restarted therefore have different entity tags than the responses that replace them.
+     *
+     * @param key        the canonical request.
+     * @param generation the cache generation.
+     *
+     * @return the response's name.
+     */
+    protected String createName(String key, long generation)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest((key + "#" + this.creationTime + "#" + generation).getBytes("UTF-8"));
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : bytes)
+            {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+
+            return sb.toString();
+        }
+        catch (Exception e)
+        {
+            // Every Java platform supports SHA-1 and UTF-8.
+            throw new WWRuntimeException(e);
+        }
+    }
+}
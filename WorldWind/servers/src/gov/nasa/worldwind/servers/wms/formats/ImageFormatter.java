@@ -117,6 +117,9 @@ abstract public class ImageFormatter
     {
         TempFile tmpFile = TempFile.getTempFile();
         GeotiffWriter writer = new GeotiffWriter(tmpFile.getAbsoluteFile());
+        writer.setCompression(Tiff.Compression.DEFLATE);
+        writer.setPredictorEnabled(true);
+        writer.setTileSize(256);
         writer.write(image);
         writer.close();
         return new FileInputStream(tmpFile);
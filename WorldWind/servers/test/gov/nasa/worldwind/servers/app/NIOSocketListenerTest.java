@@ -0,0 +1,537 @@
+/*
+Copyright (C) 2001, 2011 United States Government as represented by
+the Administrator of the National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.servers.app;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tests NIOSocketListener, NIOSocket and the ApplicationPool queue bound over loopback connections: pipelined requests,
+ * requests split across reads, rejected requests, keep-alive and close, pool saturation, streamed responses, request
+ * bodies that arrive slowly and clients that stop reading their responses.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class NIOSocketListenerTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final int TIMEOUT = 10000; // milliseconds
+        protected static final String CRLF = "\r\n";
+
+        protected TestApplication app;
+        protected ApplicationPool pool;
+        protected NIOSocketListener listener;
+        protected int port;
+
+        /**
+         * An application that answers with the request body, or with the request path if the request has no body.
+         * Requests for "/sleep/..." are answered after a delay, requests for "/block/..." wait until the application is
+         * released, and requests for "/large/n" are answered with n bytes.
+         */
+        protected static class TestApplication extends BasicServerApplication
+        {
+            protected final CountDownLatch release = new CountDownLatch(1);
+            protected final Semaphore started = new Semaphore(0);
+
+            @Override
+            protected void doService(Socket socket)
+            {
+                try
+                {
+                    ByteArrayOutputStream request = new ByteArrayOutputStream();
+                    InputStream in = socket.getInputStream();
+                    for (int b = in.read(); b >= 0; b = in.read())
+                    {
+                        request.write(b);
+                    }
+
+                    String s = request.toString("ISO-8859-1");
+                    String path = s.split(" ")[1];
+                    String content = s.substring(s.indexOf(CRLF + CRLF) + 4);
+                    this.started.release();
+
+                    if (path.startsWith("/sleep/"))
+                        Thread.sleep(200);
+                    else if (path.startsWith("/block/"))
+                        this.release.await();
+
+                    byte[] body = content.length() > 0 ? content.getBytes("ISO-8859-1") : path.getBytes("ISO-8859-1");
+                    if (path.startsWith("/large/"))
+                        body = createBody(Integer.parseInt(path.substring(7)));
+
+                    OutputStream out = socket.getOutputStream();
+                    out.write(("HTTP/1.1 200 OK" + CRLF + "Content-Type: text/plain" + CRLF + CRLF).getBytes(
+                        "ISO-8859-1"));
+                    out.write(body);
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        protected static class Response
+        {
+            protected int status;
+            protected Map<String, String> headers = new HashMap<String, String>();
+            protected byte[] body;
+
+            public String getHeader(String name)
+            {
+                return this.headers.get(name.toLowerCase());
+            }
+
+            public String getBody() throws UnsupportedEncodingException
+            {
+                return new String(this.body, "ISO-8859-1");
+            }
+        }
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            ServerSocket s = new ServerSocket(0);
+            this.port = s.getLocalPort();
+            s.close();
+
+            this.app = new TestApplication();
+            this.app.setValue(AVKey.HTTP_SERVER_FILE_UPLOAD_MAX_SIZE, 1000L);
+            this.createListener(new ApplicationPool(4));
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            this.app.release.countDown();
+            this.listener.interrupt();
+            this.listener.join(TIMEOUT);
+            this.pool.shutdown();
+        }
+
+        protected void createListener(ApplicationPool applicationPool) throws IOException
+        {
+            this.pool = applicationPool;
+            this.listener = new NIOSocketListener(this.port)
+            {
+                @Override
+                protected ServerApplication getApplication()
+                {
+                    return app;
+                }
+
+                @Override
+                protected ApplicationPool getApplicationPool(ServerApplication app)
+                {
+                    return pool;
+                }
+            };
+        }
+
+        protected static byte[] createBody(int length)
+        {
+            byte[] body = new byte[length];
+            for (int i = 0; i < length; i++)
+            {
+                body[i] = (byte) (i % 251);
+            }
+
+            return body;
+        }
+
+        protected Socket connect() throws IOException
+        {
+            Socket socket = new Socket("127.0.0.1", this.port);
+            socket.setSoTimeout(TIMEOUT);
+            return socket;
+        }
+
+        protected static void send(Socket socket, String request) throws IOException
+        {
+            socket.getOutputStream().write(request.getBytes("ISO-8859-1"));
+            socket.getOutputStream().flush();
+        }
+
+        protected static String get(String path, String version, String connection)
+        {
+            return "GET " + path + " " + version + CRLF + "Host: localhost" + CRLF
+                + (connection != null ? "Connection: " + connection + CRLF : "") + CRLF;
+        }
+
+        protected static String readLine(InputStream in) throws IOException
+        {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = in.read()) >= 0 && b != '\n')
+            {
+                if (b != '\r')
+                    sb.append((char) b);
+            }
+
+            return (b < 0 && sb.length() == 0) ? null : sb.toString();
+        }
+
+        protected static byte[] readFully(InputStream in, int length) throws IOException
+        {
+            byte[] bytes = new byte[length];
+            new DataInputStream(in).readFully(bytes);
+            return bytes;
+        }
+
+        protected static Response readResponse(InputStream in) throws IOException
+        {
+            String statusLine = readLine(in);
+            assertNotNull("No response", statusLine);
+
+            Response response = new Response();
+            response.status = Integer.parseInt(statusLine.split(" ")[1]);
+            for (String line = readLine(in); line != null && line.length() > 0; line = readLine(in))
+            {
+                int index = line.indexOf(':');
+                response.headers.put(line.substring(0, index).trim().toLowerCase(), line.substring(index + 1).trim());
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if ("chunked".equalsIgnoreCase(response.getHeader("Transfer-Encoding")))
+            {
+                for (int size = Integer.parseInt(readLine(in), 16); size > 0; size = Integer.parseInt(readLine(in), 16))
+                {
+                    body.write(readFully(in, size));
+                    assertEquals("Chunk delimiter", "", readLine(in));
+                }
+                assertEquals("Last chunk delimiter", "", readLine(in));
+            }
+            else if (response.getHeader("Content-Length") != null)
+            {
+                body.write(readFully(in, Integer.parseInt(response.getHeader("Content-Length"))));
+            }
+            else
+            {
+                for (int b = in.read(); b >= 0; b = in.read())
+                {
+                    body.write(b);
+                }
+            }
+
+            response.body = body.toByteArray();
+            return response;
+        }
+
+        protected static void assertClosed(Socket socket) throws IOException
+        {
+            assertEquals("Connection not closed", -1, socket.getInputStream().read());
+        }
+
+        /** Test that pipelined requests are answered in order on one connection, even if they complete out of order. */
+        @Test
+        public void testPipelinedRequests() throws Exception
+        {
+            Socket socket = this.connect();
+            try
+            {
+                send(socket, get("/sleep/a", "HTTP/1.1", null) + get("/b", "HTTP/1.1", null)
+                    + get("/c", "HTTP/1.1", null));
+
+                InputStream in = socket.getInputStream();
+                for (String path : Arrays.asList("/sleep/a", "/b", "/c"))
+                {
+                    Response response = readResponse(in);
+                    assertEquals("Status", 200, response.status);
+                    assertEquals("Body", path, response.getBody());
+                    assertEquals("Connection", "keep-alive", response.getHeader("Connection"));
+                }
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+
+        /** Test that a request split across several reads is dispatched once it is complete. */
+        @Test
+        public void testSplitRequest() throws Exception
+        {
+            Socket socket = this.connect();
+            try
+            {
+                String request = "POST /echo HTTP/1.1" + CRLF + "Content-Length: 10" + CRLF + CRLF + "0123456789";
+                for (int i = 0; i < request.length(); i += 7)
+                {
+                    send(socket, request.substring(i, Math.min(i + 7, request.length())));
+                    Thread.sleep(20);
+                }
+
+                Response response = readResponse(socket.getInputStream());
+                assertEquals("Status", 200, response.status);
+                assertEquals("Body", "0123456789", response.getBody());
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+
+        /** Test that a request body larger than the application allows is answered with 413, closing the connection. */
+        @Test
+        public void testRequestTooLarge() throws Exception
+        {
+            Socket socket = this.connect();
+            try
+            {
+                send(socket, "POST /echo HTTP/1.1" + CRLF + "Content-Length: 1001" + CRLF + CRLF);
+
+                Response response = readResponse(socket.getInputStream());
+                assertEquals("Status", 413, response.status);
+                assertEquals("Connection", "close", response.getHeader("Connection"));
+                assertClosed(socket);
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+
+        /** Test that a chunked request body is answered with 501 and the connection closed. */
+        @Test
+        public void testChunkedRequestNotImplemented() throws Exception
+        {
+            Socket socket = this.connect();
+            try
+            {
+                send(socket, "POST /echo HTTP/1.1" + CRLF + "Transfer-Encoding: chunked" + CRLF + CRLF + "0" + CRLF
+                    + CRLF);
+
+                Response response = readResponse(socket.getInputStream());
+                assertEquals("Status", 501, response.status);
+                assertClosed(socket);
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+
+        /** Test that connections close after requests that ask for it, and stay open after those that don't. */
+        @Test
+        public void testKeepAliveAndClose() throws Exception
+        {
+            Socket socket = this.connect();
+            try
+            {
+                send(socket, get("/a", "HTTP/1.0", "keep-alive"));
+                Response response = readResponse(socket.getInputStream());
+                assertEquals("HTTP/1.0 keep-alive", "keep-alive", response.getHeader("Connection"));
+
+                send(socket, get("/b", "HTTP/1.1", "close"));
+                response = readResponse(socket.getInputStream());
+                assertEquals("Body", "/b", response.getBody());
+                assertEquals("HTTP/1.1 close", "close", response.getHeader("Connection"));
+                assertClosed(socket);
+            }
+            finally
+            {
+                socket.close();
+            }
+
+            socket = this.connect();
+            try
+            {
+                send(socket, get("/c", "HTTP/1.0", null));
+                Response response = readResponse(socket.getInputStream());
+                assertEquals("Body", "/c", response.getBody());
+                assertEquals("HTTP/1.0", "close", response.getHeader("Connection"));
+                assertClosed(socket);
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+
+        /** Test that a request the application pool cannot queue is answered with 503, and queued requests complete. */
+        @Test
+        public void testPoolSaturation() throws Exception
+        {
+            this.listener.interrupt();
+            this.listener.join(TIMEOUT);
+            this.pool.shutdown();
+            this.createListener(new ApplicationPool(1, 1));
+
+            List<Socket> sockets = new ArrayList<Socket>();
+            try
+            {
+                for (int i = 0; i < 3; i++)
+                {
+                    Socket socket = this.connect();
+                    sockets.add(socket);
+                    send(socket, get("/block/" + i, "HTTP/1.1", null));
+
+                    // Wait for the first request to occupy the pool's thread, so that the second is queued.
+                    if (i == 0)
+                        assertTrue("Request not started", this.app.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+                }
+
+                Response rejected = readResponse(sockets.get(2).getInputStream());
+                assertEquals("Status", 503, rejected.status);
+                assertClosed(sockets.get(2));
+
+                this.app.release.countDown();
+                for (int i = 0; i < 2; i++)
+                {
+                    Response response = readResponse(sockets.get(i).getInputStream());
+                    assertEquals("Status", 200, response.status);
+                    assertEquals("Body", "/block/" + i, response.getBody());
+                }
+            }
+            finally
+            {
+                for (Socket socket : sockets)
+                {
+                    socket.close();
+                }
+            }
+        }
+
+        /**
+         * Test that a response too large to buffer is streamed, chunked to HTTP/1.1 clients and delimited by closing
+         * the connection to HTTP/1.0 clients.
+         */
+        @Test
+        public void testLargeResponse() throws Exception
+        {
+            int length = 3 * NIOSocketListener.MAX_BUFFERED_RESPONSE_SIZE + 12345;
+            byte[] expected = createBody(length);
+
+            Socket socket = this.connect();
+            try
+            {
+                send(socket, get("/large/" + length, "HTTP/1.1", null) + get("/after", "HTTP/1.1", null));
+
+                Response response = readResponse(socket.getInputStream());
+                assertEquals("Transfer-Encoding", "chunked", response.getHeader("Transfer-Encoding"));
+                assertEquals("Connection", "keep-alive", response.getHeader("Connection"));
+                assertTrue("Body", Arrays.equals(expected, response.body));
+
+                response = readResponse(socket.getInputStream());
+                assertEquals("Pipelined body", "/after", response.getBody());
+            }
+            finally
+            {
+                socket.close();
+            }
+
+            socket = this.connect();
+            try
+            {
+                send(socket, get("/large/" + length, "HTTP/1.0", "keep-alive"));
+
+                Response response = readResponse(socket.getInputStream());
+                assertNull("Content-Length", response.getHeader("Content-Length"));
+                assertEquals("Connection", "close", response.getHeader("Connection"));
+                assertTrue("Body", Arrays.equals(expected, response.body));
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+
+        /** Test that the buffer for a request body grows with the bytes received, not with the declared length. */
+        @Test
+        public void testTrickledRequestBody() throws Exception
+        {
+            int length = 3 * 1024 * 1024;
+            this.app.setValue(AVKey.HTTP_SERVER_FILE_UPLOAD_MAX_SIZE, (long) length);
+            String body = new String(createBody(length), "ISO-8859-1");
+
+            Socket socket = this.connect();
+            try
+            {
+                send(socket, "POST /echo HTTP/1.1" + CRLF + "Content-Length: " + length + CRLF + CRLF
+                    + body.substring(0, 1000));
+                Thread.sleep(200);
+                assertTrue("Body buffered before it arrived",
+                    this.getInputCapacity() < 2 * NIOSocketListener.READ_BUFFER_SIZE);
+
+                for (int i = 1000; i < length; i += 64 * 1024)
+                {
+                    send(socket, body.substring(i, Math.min(i + 64 * 1024, length)));
+                }
+
+                Response response = readResponse(socket.getInputStream());
+                assertEquals("Status", 200, response.status);
+                assertEquals("Body", body, response.getBody());
+                assertEquals("Buffer not released", NIOSocketListener.READ_BUFFER_SIZE, this.getInputCapacity());
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+
+        /** Test that a client that stops reading a streamed response is disconnected, releasing the pool's thread. */
+        @Test
+        public void testStalledResponse() throws Exception
+        {
+            this.listener.interrupt();
+            this.listener.join(TIMEOUT);
+            this.pool.shutdown();
+            this.createListener(new ApplicationPool(1));
+            this.app.setValue(AVKey.SERVER_KEEP_ALIVE_TIMEOUT, 500L);
+
+            Socket stalled = new Socket();
+            Socket socket = null;
+            try
+            {
+                stalled.setReceiveBufferSize(4096);
+                stalled.connect(new InetSocketAddress("127.0.0.1", this.port));
+                send(stalled, get("/large/" + 32 * NIOSocketListener.MAX_BUFFERED_RESPONSE_SIZE, "HTTP/1.1", null));
+                assertTrue("Request not started", this.app.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+
+                // The stalled response occupies the pool's only thread until its connection is closed.
+                socket = this.connect();
+                send(socket, get("/b", "HTTP/1.1", null));
+                Response response = readResponse(socket.getInputStream());
+                assertEquals("Status", 200, response.status);
+                assertEquals("Body", "/b", response.getBody());
+            }
+            finally
+            {
+                stalled.close();
+                if (socket != null)
+                    socket.close();
+            }
+        }
+
+        /** Returns the capacity of the input buffer of the listener's only connection. */
+        protected int getInputCapacity()
+        {
+            for (java.nio.channels.SelectionKey key : this.listener.selector.keys())
+            {
+                if (key.attachment() instanceof NIOSocketListener.Connection)
+                    return ((NIOSocketListener.Connection) key.attachment()).input.capacity();
+            }
+
+            fail("No connection");
+            return 0;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
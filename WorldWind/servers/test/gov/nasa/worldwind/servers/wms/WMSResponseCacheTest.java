@@ -0,0 +1,313 @@
+/*
+Copyright (C) 2001, 2011 United States Government as represented by
+the Administrator of the National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.servers.wms;
+
+import gov.nasa.worldwind.servers.http.*;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+import java.util.Arrays;
+
+/**
+ * Tests WMSResponseCache and the canonical GetMap request it is keyed by: canonicalization of the request, conditional
+ * requests, and invalidation of the cache.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class WMSResponseCacheTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final String CONTENT_TYPE = "image/png";
+
+        protected File directory;
+        protected ServerSocket serverSocket;
+        protected Socket clientSocket;
+        protected Socket socket;
+
+        /** A response that records its status, since HTTPResponse does not expose it. */
+        protected static class TestResponse extends HTTPResponse
+        {
+            protected int status;
+
+            public TestResponse(Socket s) throws IOException
+            {
+                super(s);
+            }
+
+            @Override
+            public void setStatus(int status)
+            {
+                super.setStatus(status);
+                this.status = status;
+            }
+        }
+
+        @Override
+        public void setUp() throws IOException
+        {
+            this.directory = File.createTempFile("WMSResponseCacheTest", "");
+            assertTrue("Temporary file not deleted", this.directory.delete());
+        }
+
+        @Override
+        public void tearDown() throws IOException
+        {
+            if (null != this.socket)
+                this.socket.close();
+            if (null != this.clientSocket)
+                this.clientSocket.close();
+            if (null != this.serverSocket)
+                this.serverSocket.close();
+
+            File[] files = this.directory.listFiles();
+            if (null != files)
+            {
+                for (File file : files)
+                {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            this.directory.delete();
+        }
+
+        @Test
+        public void testCacheKeyIgnoresParameterOrderAndCase() throws WMSServiceException
+        {
+            String key = createRequest("service=WMS&request=GetMap&version=1.3.0&layers=a,b&styles=x,y&crs=EPSG:4326"
+                + "&bbox=-180,-90,180,90&width=256&height=256&format=image/png").getCacheKey();
+
+            assertEquals("Reordered", key, createRequest("format=image/png&height=256&width=256"
+                + "&bbox=-180,-90,180,90&crs=EPSG:4326&styles=x,y&layers=a,b&version=1.3.0&request=GetMap&service=WMS")
+                .getCacheKey());
+            assertEquals("Case", key, createRequest("SERVICE=WMS&REQUEST=GetMap&VERSION=1.3.0&LAYERS=a,b&STYLES=x,y"
+                + "&CRS=epsg:4326&BBOX=-180,-90,180,90&WIDTH=256&HEIGHT=256&FORMAT=IMAGE/PNG").getCacheKey());
+            assertEquals("Numbers", key, createRequest("service=WMS&request=GetMap&version=1.3.0&layers=a,b&styles=x,y"
+                + "&crs=EPSG:4326&bbox=-180.0,-90.00,180,9e1&width=256&height=256&format=image/png").getCacheKey());
+        }
+
+        @Test
+        public void testCacheKeyDistinguishesRequests() throws WMSServiceException
+        {
+            String query = "service=WMS&request=GetMap&version=1.3.0&layers=a,b&styles=x,y&crs=EPSG:4326"
+                + "&bbox=-180,-90,180,90&width=256&height=256&format=image/png";
+            String key = createRequest(query).getCacheKey();
+
+            assertFalse("Layers", key.equals(createRequest(query.replace("layers=a,b", "layers=b,a")).getCacheKey()));
+            assertFalse("BBox", key.equals(createRequest(query.replace("-180,-90", "-180,-45")).getCacheKey()));
+            assertFalse("Size", key.equals(createRequest(query.replace("width=256", "width=512")).getCacheKey()));
+            assertFalse("Format", key.equals(createRequest(query.replace("image/png", "image/jpeg")).getCacheKey()));
+            assertFalse("Transparent", key.equals(createRequest(query + "&transparent=true").getCacheKey()));
+            assertFalse("Time", key.equals(createRequest(query + "&time=2011-01-01").getCacheKey()));
+        }
+
+        @Test
+        public void testMemoryAndDiskTiers()
+        {
+            byte[] content = createContent(100);
+
+            WMSResponseCache memoryCache = new WMSResponseCache(1000, 0, 60, null);
+            memoryCache.put("key", memoryCache.getGeneration(), CONTENT_TYPE, content);
+            assertContent(content, memoryCache.get("key"));
+            assertNull("Unknown key", memoryCache.get("other"));
+
+            // Without a memory tier the response is read back from the directory.
+            WMSResponseCache diskCache = new WMSResponseCache(0, 1000, 60, this.directory);
+            diskCache.put("key", diskCache.getGeneration(), CONTENT_TYPE, content);
+            assertEquals("Files", 1, this.directory.listFiles().length);
+            assertContent(content, diskCache.get("key"));
+
+            assertEquals("Requests", 1, diskCache.getNumRequests());
+            assertEquals("Hits", 1, diskCache.getNumHits());
+            assertEquals("Bytes served", content.length, diskCache.getNumBytesServed());
+        }
+
+        @Test
+        public void testLeastRecentlyUsedEviction()
+        {
+            // Each tier evicts its own least recently used responses.
+            WMSResponseCache memoryCache = new WMSResponseCache(250, 0, 60, null);
+            WMSResponseCache diskCache = new WMSResponseCache(0, 250, 60, this.directory);
+
+            for (WMSResponseCache cache : new WMSResponseCache[] {memoryCache, diskCache})
+            {
+                cache.put("a", cache.getGeneration(), CONTENT_TYPE, createContent(100));
+                cache.put("b", cache.getGeneration(), CONTENT_TYPE, createContent(100));
+                assertNotNull("a", cache.get("a"));
+                cache.put("c", cache.getGeneration(), CONTENT_TYPE, createContent(100));
+
+                assertNotNull("a", cache.get("a"));
+                assertNull("b", cache.get("b"));
+                assertNotNull("c", cache.get("c"));
+            }
+
+            assertEquals("Files", 2, this.directory.listFiles().length);
+        }
+
+        @Test
+        public void testMatchingETagIsNotModified() throws IOException, WMSServiceException
+        {
+            WMSResponseCache cache = new WMSResponseCache(1000, 0, 60, null);
+            WMSResponseCache.Entry entry = cache.put("key", cache.getGeneration(), CONTENT_TYPE, createContent(100));
+
+            String eTag = entry.getETag();
+            assertTrue("Weak tag", eTag.startsWith("W/\""));
+            assertTrue("Same tag", cache.isNotModified(entry, eTag, null));
+            assertTrue("Strong tag", cache.isNotModified(entry, eTag.substring(2), null));
+            assertTrue("Tag list", cache.isNotModified(entry, "\"other\", " + eTag, null));
+            assertTrue("Any tag", cache.isNotModified(entry, "*", null));
+            assertFalse("Other tag", cache.isNotModified(entry, "W/\"other\"", null));
+            assertFalse("No conditions", cache.isNotModified(entry, null, null));
+
+            assertEquals("Matching request", HTTPResponse.NOT_MODIFIED,
+                this.sendCachedResponse(cache, entry, HTTP.Header.IF_NONE_MATCH + ": " + eTag));
+            assertEquals("Other request", HTTPResponse.OK,
+                this.sendCachedResponse(cache, entry, HTTP.Header.IF_NONE_MATCH + ": W/\"other\""));
+
+            assertEquals("Not modified", 5, cache.getNumNotModified());
+            assertEquals("Bytes not sent", 500, cache.getNumBytesNotSent());
+        }
+
+        @Test
+        public void testIfModifiedSince()
+        {
+            WMSResponseCache cache = new WMSResponseCache(1000, 0, 60, null);
+            WMSResponseCache.Entry entry = cache.put("key", cache.getGeneration(), CONTENT_TYPE, createContent(100));
+            long lastModified = entry.getLastModified();
+
+            assertTrue("Same time", cache.isNotModified(entry, null, HTTP.formatDate(lastModified)));
+            assertTrue("Later time", cache.isNotModified(entry, null, HTTP.formatDate(lastModified + 60000)));
+            assertFalse("Earlier time", cache.isNotModified(entry, null, HTTP.formatDate(lastModified - 60000)));
+            assertFalse("Invalid time", cache.isNotModified(entry, null, "yesterday"));
+
+            // If-None-Match takes precedence over If-Modified-Since.
+            assertFalse("Other tag", cache.isNotModified(entry, "W/\"other\"", HTTP.formatDate(lastModified)));
+        }
+
+        @Test
+        public void testLayerChangeInvalidates()
+        {
+            WMSResponseCache cache = new WMSResponseCache(1000, 1000, 60, this.directory);
+            WMSResponseCache.Entry entry = cache.put("key", cache.getGeneration(), CONTENT_TYPE, createContent(100));
+            assertEquals("Files", 1, this.directory.listFiles().length);
+
+            long generation = cache.getGeneration();
+            cache.layerChanged(new WMSLayerEvent(this, "layer.xml", null, null));
+
+            assertTrue("Generation", generation != cache.getGeneration());
+            assertNull("Stale response", cache.get("key"));
+            assertEquals("Stale files", 0, this.directory.listFiles().length);
+
+            // A response cached after the change has a new entity tag, so clients revalidate their stale copies.
+            WMSResponseCache.Entry newEntry = cache.put("key", cache.getGeneration(), CONTENT_TYPE, createContent(100));
+            assertFalse("Stale tag", cache.isNotModified(newEntry, entry.getETag(), null));
+
+            cache.layerAdded(new WMSLayerEvent(this, "layer.xml", null, null));
+            assertNull("Added layer", cache.get("key"));
+
+            cache.put("key", cache.getGeneration(), CONTENT_TYPE, createContent(100));
+            cache.layerRemoved(new WMSLayerEvent(this, "layer.xml", null, null));
+            assertNull("Removed layer", cache.get("key"));
+        }
+
+        @Test
+        public void testStaleGenerationNotCached()
+        {
+            WMSResponseCache cache = new WMSResponseCache(1000, 1000, 60, this.directory);
+
+            // The cache is invalidated while the response is composed.
+            long generation = cache.getGeneration();
+            cache.invalidate();
+
+            assertNull("Stale response", cache.put("key", generation, CONTENT_TYPE, createContent(100)));
+            assertNull("Stale response", cache.get("key"));
+            assertEquals("Stale files", 0, this.directory.listFiles().length);
+        }
+
+        @Test
+        public void testInvalidArguments()
+        {
+            try
+            {
+                new WMSResponseCache(-1, 0, 60, null);
+                fail("Negative capacity");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected.
+            }
+
+            try
+            {
+                new WMSResponseCache(1000, 1000, 60, null);
+                fail("Null directory");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected.
+            }
+        }
+
+        protected static WMSGetMapRequest createRequest(String query) throws WMSServiceException
+        {
+            return new WMSGetMapRequest(new HTTPRequest(query));
+        }
+
+        protected static byte[] createContent(int length)
+        {
+            byte[] content = new byte[length];
+            for (int i = 0; i < length; i++)
+            {
+                content[i] = (byte) i;
+            }
+            return content;
+        }
+
+        protected static void assertContent(byte[] expected, WMSResponseCache.Entry entry)
+        {
+            assertNotNull("Entry", entry);
+            assertEquals("Content type", CONTENT_TYPE, entry.getContentType());
+            assertTrue("Content", Arrays.equals(expected, entry.getContent()));
+        }
+
+        protected int sendCachedResponse(WMSResponseCache cache, WMSResponseCache.Entry entry, final String header)
+            throws IOException, WMSServiceException
+        {
+            if (null == this.serverSocket)
+            {
+                this.serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+                this.clientSocket = new Socket(this.serverSocket.getInetAddress(), this.serverSocket.getLocalPort());
+                this.socket = this.serverSocket.accept();
+            }
+
+            String query = "service=WMS&request=GetMap&version=1.3.0&layers=a&styles=&crs=EPSG:4326"
+                + "&bbox=-180,-90,180,90&width=256&height=256&format=image/png";
+            HTTPRequest req = new HTTPRequest(query)
+            {
+                {
+                    this.extractHeaderKeyValue(header);
+                }
+            };
+
+            TestResponse resp = new TestResponse(this.socket);
+            new WMSGetMapRequest(req).sendCachedResponse(cache, entry, req, resp);
+
+            return resp.status;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -12,6 +12,7 @@ import gov.nasa.worldwind.geom.Position;
 import gov.nasa.worldwind.layers.Layer;
 import gov.nasa.worldwind.pick.*;
 import gov.nasa.worldwind.render.*;
+import gov.nasa.worldwind.retrieve.*;
 import gov.nasa.worldwind.terrain.*;
 import gov.nasa.worldwind.util.*;
 
@@ -297,6 +298,10 @@ public abstract class AbstractSceneController extends WWObjectImpl implements Sc
     {
         this.frameTime = System.currentTimeMillis();
 
+        // Retrievals requested during this frame are marked as still wanted.
+        this.beginGeneration(WorldWind.getRetrievalService());
+        this.beginGeneration(WorldWind.getLocalRetrievalService());
+
         this.perFrameStatistics.clear();
         this.renderingExceptions.clear(); // Clear the rendering exceptions accumulated during the last frame.
         this.surfaceObjectTiles.clear(); // Clear the surface object tiles generated during the last frame.
@@ -348,6 +353,18 @@ public abstract class AbstractSceneController extends WWObjectImpl implements Sc
 
     abstract protected void doRepaint(DrawContext dc);
 
+    /**
+     * Starts a new request generation in a retrieval service that cancels retrievals no longer requested. Other
+     * retrieval services are left alone.
+     *
+     * @param service the retrieval service. May be null.
+     */
+    protected void beginGeneration(RetrievalService service)
+    {
+        if (service instanceof BasicRetrievalService)
+            ((BasicRetrievalService) service).beginGeneration();
+    }
+
     protected void initializeDrawContext(DrawContext dc)
     {
         dc.initialize(GLContext.getCurrent());
@@ -42,6 +42,8 @@ public interface AVKey // TODO: Eliminate unused constants, if any
 
     final String BLACK_GAPS_DETECTION = "gov.nasa.worldwind.avkey.DetectBlackGaps";
     final String BOUNDS = "gov.nasa.worldwind.avkey.Bounds";
+    final String BULK_RETRIEVAL_ACTIVE_LIMIT = "gov.nasa.worldwind.avkey.BulkRetrievalActiveLimit";
+    final String BULK_RETRIEVAL_HOST_LIMIT = "gov.nasa.worldwind.avkey.BulkRetrievalHostLimit";
 
     final String CACHE_CONTENT_TYPES = "gov.nasa.worldwind.avkey.CacheContentTypes";
     final String CENTER = "gov.nasa.worldwind.avkey.Center";
@@ -113,6 +115,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String ELEVATION_MODEL = "gov.nasa.worldwind.avkey.ElevationModel";
     final String ELEVATION_MODEL_FACTORY = "gov.nasa.worldwind.avkey.ElevationModelFactory";
     final String ELEVATION_TILE_CACHE_SIZE = "gov.nasa.worldwind.avkey.ElevationTileCacheSize";
+    final String ELEVATION_TILE_MEMORY_MAPPING = "gov.nasa.worldwind.avkey.ElevationTileMemoryMapping";
     final String ELEVATION_UNIT = "gov.nasa.worldwind.avkey.ElevationUnit";
 
     final String END = "gov.nasa.worldwind.avkey.End";
@@ -128,6 +131,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String FILE_NAME = "gov.nasa.worldwind.avkey.FileName";
     final String FILE_SIZE = "gov.nasa.worldwind.avkey.FileSize";
     final String FILE_STORE = "gov.nasa.worldwind.avkey.FileStore";
+    final String FILE_STORE_INDEX_ENABLED = "gov.nasa.worldwind.avkey.FileStoreIndexEnabled";
     final String FILE_STORE_LOCATION = "gov.nasa.worldwind.avkey.FileStoreLocation";
     final String FLOAT32 = "gov.nasa.worldwind.avkey.Float32";
     final String FLOAT64 = "gov.nasa.worldwind.avkey.Float64";
@@ -225,6 +229,13 @@ public interface AVKey // TODO: Eliminate unused constants, if any
 
     final String MAX_ACTIVE_ALTITUDE = "gov.nasa.worldwind.avkey.MaxActiveAltitude";
     final String MAX_MESSAGE_REPEAT = "gov.nasa.worldwind.avkey.MaxMessageRepeat";
+    /**
+     * Identifies the {@link gov.nasa.worldwind.cache.MemoryCache} implementation used for caches created by {@link
+     * gov.nasa.worldwind.cache.BasicMemoryCacheSet#createCache(String, long, long)}. The value is a comma-separated
+     * list of <code>cacheKey=className</code> pairs. A cache key of <code>*</code> specifies the class used for caches
+     * not otherwise listed.
+     */
+    final String MEMORY_CACHE_CLASS_NAMES = "gov.nasa.worldwind.avkey.MemoryCacheClassNames";
     final String MEMORY_CACHE_SET_CLASS_NAME = "gov.nasa.worldwind.avkey.MemoryCacheSetClassName";
     final String MIME_TYPE = "gov.nasa.worldwind.avkey.MimeType";
 
@@ -335,6 +346,8 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String RASTER_PIXEL = "gov.nasa.worldwind.avkey.RasterPixel";
     final String RASTER_PIXEL_IS_AREA = "gov.nasa.worldwind.avkey.RasterPixelIsArea";
     final String RASTER_PIXEL_IS_POINT = "gov.nasa.worldwind.avkey.RasterPixelIsPoint";
+    final String RECTANGULAR_TESSELLATOR_BUILD_IN_BACKGROUND
+        = "gov.nasa.worldwind.avkey.RectangularTessellatorBuildInBackground";
     final String RECTANGULAR_TESSELLATOR_MAX_LEVEL = "gov.nasa.worldwind.avkey.RectangularTessellatorMaxLevel";
     final String REPAINT = "gov.nasa.worldwind.avkey.Repaint";
     final String REPEAT_NONE = "gov.nasa.worldwind.avkey.RepeatNone";
@@ -353,9 +366,12 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     /** Does not modify the item size when the window changes size. */
     final String RESIZE_KEEP_FIXED_SIZE = "gov.nasa.worldwind.CompassLayer.ResizeKeepFixedSize";
     final String RETAIN_LEVEL_ZERO_TILES = "gov.nasa.worldwind.avkey.RetainLevelZeroTiles";
+    final String RETRIEVAL_ADAPTIVE_TIMEOUTS = "gov.nasa.worldwind.avkey.RetrievalAdaptiveTimeouts";
+    final String RETRIEVAL_HOST_CONNECTION_LIMIT = "gov.nasa.worldwind.avkey.RetrievalHostConnectionLimit";
     final String RETRIEVAL_POOL_SIZE = "gov.nasa.worldwind.avkey.RetrievalPoolSize";
     final String RETRIEVE_PROPERTIES_FROM_SERVICE = "gov.nasa.worldwind.avkey.RetrievePropertiesFromService";
     final String RETRIEVAL_QUEUE_SIZE = "gov.nasa.worldwind.avkey.RetrievalQueueSize";
+    final String RETRIEVAL_QUEUE_STALE_GENERATION_LIMIT = "gov.nasa.worldwind.avkey.RetrievalStaleGenerationLimit";
     final String RETRIEVAL_QUEUE_STALE_REQUEST_LIMIT = "gov.nasa.worldwind.avkey.RetrievalStaleRequestLimit";
     final String RETRIEVAL_SERVICE_CLASS_NAME = "gov.nasa.worldwind.avkey.RetrievalServiceClassName";
     final String RETRIEVER_FACTORY_LOCAL = "gov.nasa.worldwind.avkey.RetrieverFactoryLocal";
@@ -393,12 +409,18 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String SERVER_APP_URL = "gov.nasa.worldwind.avkey.Server.Application.URL";
     final String SERVER_APPLICATION_POOL_CONNECTION_TIMEOUT
         = "gov.nasa.worldwind.avkey.Server.ApplicationPool.ConnectionTimeout";
+    final String SERVER_APPLICATION_POOL_QUEUE_SIZE = "gov.nasa.worldwind.avkey.Server.ApplicationPool.QueueSize";
     final String SERVER_APPLICATION_POOL_SIZE = "gov.nasa.worldwind.avkey.Server.ApplicationPool.Size";
     final String SERVER_APPLICATION_POOL_THREAD_TIMEOUT
         = "gov.nasa.worldwind.avkey.Server.ApplicationPool.ThreadTimeout";
     final String SERVER_CAPABILITIES_ONLINE_RESOURCE = "gov.nasa.worldwind.avkey.Server.Capabilities.OnlineResource";
+    final String SERVER_KEEP_ALIVE_TIMEOUT = "gov.nasa.worldwind.avkey.Server.KeepAliveTimeout";
+    final String SERVER_NON_BLOCKING_IO = "gov.nasa.worldwind.avkey.Server.NonBlockingIO";
     final String SERVER_PORT = "gov.nasa.worldwind.avkey.Server.Port";
     final String SERVER_REDIRECT_TO = "gov.nasa.worldwind.avkey.Server.RedirectTo";
+    final String SERVER_RESPONSE_CACHE_DISK_SIZE = "gov.nasa.worldwind.avkey.Server.ResponseCache.DiskSize";
+    final String SERVER_RESPONSE_CACHE_MAX_AGE = "gov.nasa.worldwind.avkey.Server.ResponseCache.MaxAge";
+    final String SERVER_RESPONSE_CACHE_MEMORY_SIZE = "gov.nasa.worldwind.avkey.Server.ResponseCache.MemorySize";
     final String SERVER_TEMP_DIRECTORY = "gov.nasa.worldwind.avkey.Server.TempDirectory";
     final String SERVICE = "gov.nasa.worldwind.avkey.ServiceURLKey";
     final String SERVICE_CLASS = "gov.nasa.worldwind.avkey.ServiceClass";
@@ -460,10 +482,14 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String TILE_WIDTH = "gov.nasa.worldwind.avkey.TileWidthKey";
     final String TILED_IMAGERY = "gov.nasa.worldwind.avkey.TiledImagery";
     final String TILED_ELEVATIONS = "gov.nasa.worldwind.avkey.TiledElevations";
+    final String TILED_RASTER_PRODUCER_BUILD_THREAD_POOL_SIZE =
+        "gov.nasa.worldwind.avkey.TiledRasterProducerBuildThreadPoolSize";
     final String TILED_RASTER_PRODUCER_CACHE_SIZE = "gov.nasa.worldwind.avkey.TiledRasterProducerCacheSize";
     final String TILED_RASTER_PRODUCER_LARGE_DATASET_THRESHOLD =
         "gov.nasa.worldwind.avkey.TiledRasterProducerLargeDatasetThreshold";
     final String TILED_RASTER_PRODUCER_LIMIT_MAX_LEVEL = "gov.nasa.worldwind.avkey.TiledRasterProducer.LimitMaxLevel";
+    final String TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS =
+        "gov.nasa.worldwind.avkey.TiledRasterProducerMaxInFlightRasters";
     final String TITLE = "gov.nasa.worldwind.avkey.Title";
     final String TOP = "gov.nasa.worldwind.avkey.Top";
     final String TRANSPARENCY_COLORS = "gov.nasa.worldwind.avkey.TransparencyColors";
@@ -507,6 +533,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String VIEW_PITCH_DOWN = "gov.nasa.worldwind.avkey.PitchDown";
     final String VIEW_FOV_NARROW = "gov.nasa.worldwind.avkey.FovNarrow";
     final String VIEW_FOV_WIDE = "gov.nasa.worldwind.avkey.FovWide";
+    final String VIEWSHED_MEMORY_LIMIT = "gov.nasa.worldwind.avkey.ViewshedMemoryLimit";
 
     final String VISIBILITY_ACTION_RELEASE = "gov.nasa.worldwind.avkey.VisibilityActionRelease";
     final String VISIBILITY_ACTION_RETAIN = "gov.nasa.worldwind.avkey.VisibilityActionRetain";
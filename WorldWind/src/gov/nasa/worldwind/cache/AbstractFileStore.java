@@ -71,6 +71,58 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
         new java.util.concurrent.CopyOnWriteArrayList<StoreLocation>();
     protected StoreLocation writeLocation = null;
     private final Object fileLock = new Object();
+    /**
+     * The optional in-memory index of the store's contents. Null when the index is disabled. Initially enabled when the
+     * configuration property {@link AVKey#FILE_STORE_INDEX_ENABLED} is true.
+     */
+    protected volatile FileStoreIndex index =
+        Configuration.getBooleanValue(AVKey.FILE_STORE_INDEX_ENABLED, false) ? new FileStoreIndex() : null;
+
+    /**
+     * Indicates whether lookups use an in-memory index of the store's contents rather than querying the file system.
+     *
+     * @return true if the index is enabled, otherwise false.
+     *
+     * @see #setIndexEnabled(boolean)
+     */
+    public boolean isIndexEnabled()
+    {
+        return this.index != null;
+    }
+
+    /**
+     * Specifies whether lookups use an in-memory index of the store's contents. When enabled, {@link #findFile(String,
+     * boolean)} and {@link #containsFile(String)} list each store directory once and answer from memory thereafter, and
+     * marking files used is batched and performed in the background. Files added to or removed from the store's
+     * directories by other means than this file store are not detected until the index is rebuilt with {@link
+     * #clearIndex()}.
+     *
+     * @param enabled true to enable the index, false to disable it.
+     */
+    public void setIndexEnabled(boolean enabled)
+    {
+        if (enabled == this.isIndexEnabled())
+            return;
+
+        if (enabled)
+        {
+            this.index = new FileStoreIndex();
+        }
+        else
+        {
+            FileStoreIndex oldIndex = this.index;
+            this.index = null;
+            oldIndex.flushUsedFiles();
+        }
+    }
+
+    /** Discards the contents of the store's in-memory index, if enabled, causing it to be rebuilt on demand. */
+    public void clearIndex()
+    {
+        FileStoreIndex index = this.index;
+        if (index != null)
+            index.clear();
+    }
 
     //**************************************************************//
     //********************  File Store Configuration  **************//
@@ -475,7 +527,8 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
             else
                 file = makeAbsoluteFile(dir, fileName);
 
-            if (file.exists())
+            FileStoreIndex index = this.index;
+            if (index != null ? index.containsFile(file) : file.exists())
                 return true;
         }
 
@@ -507,21 +560,24 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
                 return url;
         }
 
+        FileStoreIndex index = this.index;
+
         for (StoreLocation location : this.readLocations)
         {
             java.io.File dir = location.getFile();
-            if (!dir.exists())
+            if (index != null ? !index.directoryExists(dir) : !dir.exists())
                 continue;
 
             java.io.File file = new java.io.File(makeAbsolutePath(dir, fileName));
-            if (file.exists())
+            if (index != null ? index.containsFile(file) : file.exists())
             {
                 try
                 {
-                    if (location.isMarkWhenUsed())
-                        markFileUsed(file);
+                    java.io.File usedFile = location.isMarkWhenUsed() ? file : file.getParentFile();
+                    if (index != null)
+                        index.markFileUsed(usedFile);
                     else
-                        markFileUsed(file.getParentFile());
+                        markFileUsed(usedFile);
 
                     return file.toURI().toURL();
                 }
@@ -590,7 +646,13 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
             }
 
             if (canCreateFile)
+            {
+                FileStoreIndex index = this.index;
+                if (index != null)
+                    index.fileCreated(file);
+
                 return file;
+            }
             else
             {
                 String msg = Logging.getMessage("generic.CannotCreateFile", fullPath);
@@ -628,6 +690,10 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
                 if (file.exists())
                     file.delete();
             }
+
+            FileStoreIndex index = this.index;
+            if (index != null)
+                index.fileRemoved(file);
         }
         catch (java.net.URISyntaxException e)
         {
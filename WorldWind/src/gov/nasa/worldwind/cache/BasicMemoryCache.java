@@ -13,7 +13,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * @author Eric Dalgliesh
  * @version $Id$
  */
-public class BasicMemoryCache implements MemoryCache
+public class BasicMemoryCache implements MemoryCache, MemoryCacheStatistics
 {
     protected static class CacheEntry implements Comparable<CacheEntry>
     {
@@ -54,6 +54,9 @@ public class BasicMemoryCache implements MemoryCache
     protected AtomicLong currentUsedCapacity = new AtomicLong();
     protected Long lowWater;
     protected String name = "";
+    protected AtomicLong hitCount = new AtomicLong();
+    protected AtomicLong missCount = new AtomicLong();
+    protected AtomicLong evictionCount = new AtomicLong();
 
     protected final Object lock = new Object();
 
@@ -322,13 +325,18 @@ public class BasicMemoryCache implements MemoryCache
             entry = this.entries.get(key);
 
             if (entry == null)
+            {
+                this.missCount.incrementAndGet();
                 return null;
+            }
 
             entry.lastUsed = System.nanoTime(); // nanoTime overflows once every 292 years
             // which will result in a slowing of the cache
             // until ww is restarted or the cache is cleared.
         }
 
+        this.hitCount.incrementAndGet();
+
         return entry.clientObject;
     }
 
@@ -378,7 +386,7 @@ public class BasicMemoryCache implements MemoryCache
      *
      * @param spaceRequired the amount of space required.
      */
-    private void makeSpace(long spaceRequired) // MUST BE CALLED WITHIN SYNCHRONIZED
+    protected void makeSpace(long spaceRequired) // MUST BE CALLED WITHIN SYNCHRONIZED
     {
         if (spaceRequired > this.capacity.get() || spaceRequired < 0)
             return;
@@ -392,10 +400,26 @@ public class BasicMemoryCache implements MemoryCache
             if (i < timeOrderedEntries.length)
             {
                 this.removeEntry(timeOrderedEntries[i++]);
+                this.evictionCount.incrementAndGet();
             }
         }
     }
 
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return this.evictionCount.get();
+    }
+
     /**
      * a <code>String</code> representation of this object is returned.&nbsp; This representation consists of maximum
      * size, current used capacity and number of currently cached items.
@@ -5,18 +5,145 @@
  */
 package gov.nasa.worldwind.cache;
 
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.util.*;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * The default {@link MemoryCacheSet}. Caches created by {@link #createCache(String, long, long)} are instances of
+ * {@link BasicMemoryCache} unless another implementation, such as {@link LRUMemoryCache} or {@link
+ * ConcurrentMemoryCache}, is selected for the cache key, either programmatically by
+ * {@link #setCacheClassName(String, String)} or by the configuration property {@link
+ * AVKey#MEMORY_CACHE_CLASS_NAMES}. For example, the following selects {@link LRUMemoryCache} for the texture tile
+ * cache:
+ * <pre>
+ * &lt;Property name="gov.nasa.worldwind.avkey.MemoryCacheClassNames"
+ *     value="gov.nasa.worldwind.layers.TextureTile=gov.nasa.worldwind.cache.LRUMemoryCache"/&gt;
+ * </pre>
+ *
  * @author tag
  * @version $Id$
  */
 public class BasicMemoryCacheSet implements MemoryCacheSet
 {
+    /** The cache key that selects the default cache class in {@link AVKey#MEMORY_CACHE_CLASS_NAMES}. */
+    public static final String DEFAULT_CACHE_KEY = "*";
+
     private ConcurrentHashMap<String, MemoryCache> caches = new ConcurrentHashMap<String, MemoryCache>();
+    protected ConcurrentHashMap<String, String> cacheClassNames = new ConcurrentHashMap<String, String>();
+
+    public BasicMemoryCacheSet()
+    {
+        this.cacheClassNames.put(DEFAULT_CACHE_KEY, BasicMemoryCache.class.getName());
+        this.parseCacheClassNames(Configuration.getStringValue(AVKey.MEMORY_CACHE_CLASS_NAMES));
+    }
+
+    protected void parseCacheClassNames(String classNames)
+    {
+        if (WWUtil.isEmpty(classNames))
+            return;
+
+        for (String pair : classNames.split(","))
+        {
+            int i = pair.lastIndexOf('=');
+            if (i <= 0 || i == pair.length() - 1)
+                continue;
+
+            this.setCacheClassName(pair.substring(0, i).trim(), pair.substring(i + 1).trim());
+        }
+    }
+
+    /**
+     * Returns the name of the {@link MemoryCache} class used by {@link #createCache(String, long, long)} for the
+     * specified cache key.
+     *
+     * @param key the cache key. May be {@link #DEFAULT_CACHE_KEY}.
+     *
+     * @return the name of the cache class used for the key.
+     */
+    public String getCacheClassName(String key)
+    {
+        String className = key != null ? this.cacheClassNames.get(key) : null;
+        return className != null ? className : this.cacheClassNames.get(DEFAULT_CACHE_KEY);
+    }
+
+    /**
+     * Specifies the {@link MemoryCache} class used by {@link #createCache(String, long, long)} for a cache key. The
+     * class must provide a public constructor taking the low water level and the capacity, as {@link
+     * BasicMemoryCache} and {@link LRUMemoryCache} do. Caches already created are not affected.
+     *
+     * @param key       the cache key, or {@link #DEFAULT_CACHE_KEY} to specify the class used for unlisted keys.
+     * @param className the cache class name. If null, the key reverts to the default cache class.
+     *
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public void setCacheClassName(String key, String className)
+    {
+        if (key == null)
+        {
+            String message = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (className != null)
+            this.cacheClassNames.put(key, className);
+        else if (!DEFAULT_CACHE_KEY.equals(key))
+            this.cacheClassNames.remove(key);
+    }
+
+    /**
+     * Creates a memory cache suitable for the specified cache key. The cache class is the one selected for the key by
+     * {@link #setCacheClassName(String, String)} or the configuration. The new cache is not added to this set; call
+     * {@link #addCache(String, MemoryCache)} to do so.
+     *
+     * @param key      the key the cache will be added under.
+     * @param loWater  the cache's low water level.
+     * @param capacity the cache's capacity.
+     *
+     * @return a new memory cache.
+     */
+    public MemoryCache createCache(String key, long loWater, long capacity)
+    {
+        String className = this.getCacheClassName(key);
+
+        try
+        {
+            Class<?> c = Class.forName(className.trim());
+            return (MemoryCache) c.getConstructor(long.class, long.class).newInstance(loWater, capacity);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("MemoryCacheSet.CannotCreateCache", className, key);
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+            return new BasicMemoryCache(loWater, capacity);
+        }
+    }
+
+    /**
+     * Creates a memory cache for a cache key with the cache class World Wind's memory cache set selects for that key.
+     * The cache is a {@link BasicMemoryCache} if the memory cache set is not a <code>BasicMemoryCacheSet</code>. The
+     * new cache is not added to the memory cache set.
+     *
+     * @param key      the cache key.
+     * @param loWater  the cache's low water level.
+     * @param capacity the cache's capacity.
+     *
+     * @return a new memory cache.
+     *
+     * @see #createCache(String, long, long)
+     */
+    public static MemoryCache newMemoryCache(String key, long loWater, long capacity)
+    {
+        MemoryCacheSet cacheSet = WorldWind.getMemoryCacheSet();
+        if (cacheSet instanceof BasicMemoryCacheSet)
+            return ((BasicMemoryCacheSet) cacheSet).createCache(key, loWater, capacity);
+
+        return new BasicMemoryCache(loWater, capacity);
+    }
 
     public synchronized boolean containsCache(String key)
     {
@@ -79,6 +206,17 @@ public class BasicMemoryCacheSet implements MemoryCacheSet
         {
             stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Size (Kb): " + cache.getName(),
                 cache.getUsedCapacity() / 1000));
+
+            if (cache instanceof MemoryCacheStatistics)
+            {
+                MemoryCacheStatistics counts = (MemoryCacheStatistics) cache;
+                stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Hits: " + cache.getName(),
+                    counts.getHitCount()));
+                stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE,
+                    "Cache Misses: " + cache.getName(), counts.getMissCount()));
+                stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE,
+                    "Cache Evictions: " + cache.getName(), counts.getEvictionCount()));
+            }
         }
 
         return stats;
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link BasicMemoryCache} whose read path does not lock. <code>getObject</code> and <code>contains</code> read the
+ * underlying concurrent map directly, so threads probing the same cache do not contend on the cache's monitor. Only
+ * <code>add</code>, <code>remove</code>, <code>clear</code> and eviction are serialized.
+ * <p/>
+ * Access times are recorded with relaxed stamps: a hit updates an entry's last-used time without synchronization, and
+ * only when the stored time is older than {@link #getAccessGranularity()}, which keeps hot entries from repeatedly
+ * invalidating the cache line holding their stamp. Eviction snapshots the stamps before ordering entries, so
+ * concurrent hits during an eviction cannot corrupt the ordering. Hit and miss counts are kept in per-thread stripes
+ * and summed on demand.
+ * <p/>
+ * Select this implementation for a cache through {@link BasicMemoryCacheSet#setCacheClassName(String, String)} or the
+ * {@link gov.nasa.worldwind.avlist.AVKey#MEMORY_CACHE_CLASS_NAMES} configuration property.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class ConcurrentMemoryCache extends BasicMemoryCache
+{
+    /** The number of counter stripes. Must be a power of two. */
+    protected static final int NUM_STRIPES = 16;
+    /** The spacing between stripes in the counter arrays, chosen to place each stripe on its own cache line. */
+    protected static final int STRIPE_PADDING = 8;
+    /** The default access granularity, in nanoseconds. */
+    protected static final long DEFAULT_ACCESS_GRANULARITY = 1000000L; // 1 millisecond
+
+    protected AtomicLongArray hitStripes = new AtomicLongArray(NUM_STRIPES * STRIPE_PADDING);
+    protected AtomicLongArray missStripes = new AtomicLongArray(NUM_STRIPES * STRIPE_PADDING);
+    protected volatile long accessGranularity = DEFAULT_ACCESS_GRANULARITY;
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, and <code>loWater</code> for the low water.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     */
+    public ConcurrentMemoryCache(long loWater, long capacity)
+    {
+        super(loWater, capacity);
+    }
+
+    /**
+     * Returns the minimum interval, in nanoseconds, between updates of an entry's last-used time.
+     *
+     * @return the access granularity in nanoseconds.
+     */
+    public long getAccessGranularity()
+    {
+        return this.accessGranularity;
+    }
+
+    /**
+     * Specifies the minimum interval, in nanoseconds, between updates of an entry's last-used time. Entries accessed
+     * within the same interval are considered equally recent during eviction.
+     *
+     * @param accessGranularity the access granularity in nanoseconds. A value of 0 updates the time on every hit.
+     *
+     * @throws IllegalArgumentException if the granularity is negative.
+     */
+    public void setAccessGranularity(long accessGranularity)
+    {
+        if (accessGranularity < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", accessGranularity);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.accessGranularity = accessGranularity;
+    }
+
+    @Override
+    public boolean contains(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return this.entries.containsKey(key);
+    }
+
+    @Override
+    public Object getObject(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return null;
+        }
+
+        int stripe = this.currentStripe();
+
+        CacheEntry entry = this.entries.get(key);
+        if (entry == null)
+        {
+            this.missStripes.incrementAndGet(stripe);
+            return null;
+        }
+
+        long now = System.nanoTime();
+        if (now - entry.lastUsed > this.accessGranularity)
+            entry.lastUsed = now; // racy by design; a lost update only makes the entry look slightly older
+
+        this.hitStripes.incrementAndGet(stripe);
+
+        return entry.clientObject;
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return sumStripes(this.hitStripes);
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return sumStripes(this.missStripes);
+    }
+
+    @Override
+    protected void removeEntry(CacheEntry entry) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        // Remove only this exact entry; the key may have been re-added with a new entry.
+        if (this.entries.remove(entry.key, entry))
+        {
+            this.currentUsedCapacity.addAndGet(-entry.clientObjectSize);
+
+            for (MemoryCache.CacheListener listener : this.listeners)
+            {
+                try
+                {
+                    listener.entryRemoved(entry.key, entry.clientObject);
+                }
+                catch (Exception e)
+                {
+                    listener.removalException(e, entry.key, entry.clientObject);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes at least <code>spaceRequired</code> space in the cache, removing the least recently used entries until the
+     * used capacity also reaches the low water level. Readers may update access times while this runs, so the times
+     * are copied before the entries are ordered.
+     *
+     * @param spaceRequired the amount of space required.
+     */
+    @Override
+    protected void makeSpace(long spaceRequired) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        if (spaceRequired > this.capacity.get() || spaceRequired < 0)
+            return;
+
+        ArrayList<EvictionCandidate> candidates = new ArrayList<EvictionCandidate>(this.entries.size());
+        for (CacheEntry entry : this.entries.values())
+        {
+            candidates.add(new EvictionCandidate(entry, entry.lastUsed));
+        }
+        Collections.sort(candidates);
+
+        Iterator<EvictionCandidate> iter = candidates.iterator();
+        while (iter.hasNext() && (this.getFreeCapacity() < spaceRequired || this.getUsedCapacity() > this.lowWater))
+        {
+            this.removeEntry(iter.next().entry);
+            this.evictionCount.incrementAndGet();
+        }
+    }
+
+    protected static class EvictionCandidate implements Comparable<EvictionCandidate>
+    {
+        protected final CacheEntry entry;
+        protected final long lastUsed;
+
+        public EvictionCandidate(CacheEntry entry, long lastUsed)
+        {
+            this.entry = entry;
+            this.lastUsed = lastUsed;
+        }
+
+        public int compareTo(EvictionCandidate that)
+        {
+            return this.lastUsed < that.lastUsed ? -1 : this.lastUsed == that.lastUsed ? 0 : 1;
+        }
+    }
+
+    protected int currentStripe()
+    {
+        return ((int) Thread.currentThread().getId() & (NUM_STRIPES - 1)) * STRIPE_PADDING;
+    }
+
+    protected static long sumStripes(AtomicLongArray stripes)
+    {
+        long sum = 0;
+        for (int i = 0; i < stripes.length(); i += STRIPE_PADDING)
+        {
+            sum += stripes.get(i);
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.WorldWind;
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * An in-memory index of the files in a file store, used by {@link AbstractFileStore} to answer file lookups without
+ * touching the file system. The index is built lazily: the first lookup of a file in a directory lists that directory
+ * once, and subsequent lookups of any file in the directory are answered from memory. A bloom filter over the indexed
+ * file paths answers most negative lookups with a few bit probes.
+ * <p/>
+ * The index is kept current by the file store's <code>newFile</code> and <code>removeFile</code> methods. A file handed
+ * out by <code>newFile</code> is not yet written, so its name is held as pending and confirmed on disk by the next
+ * lookup. Changes made to the store's directories by other processes are not seen until {@link #clear()} is called.
+ * <p/>
+ * The index also batches access-time tracking. Files marked used are collected in memory and their modification times
+ * are updated by a single background task, so a file used many times between flushes costs one metadata write.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class FileStoreIndex
+{
+    /** The default delay, in milliseconds, between marking a file used and updating its modification time. */
+    protected static final long DEFAULT_FLUSH_DELAY = 10000;
+    /** The default number of bits in the bloom filter. */
+    protected static final int DEFAULT_BLOOM_FILTER_BITS = 1 << 23; // 1 MB
+    /** The number of bits to allocate in the bloom filter per indexed file before the filter is enlarged. */
+    protected static final int BLOOM_FILTER_BITS_PER_ENTRY = 10;
+
+    protected static class DirectoryEntry
+    {
+        protected final boolean exists;
+        protected final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        protected final Set<String> pendingNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        public DirectoryEntry(boolean exists)
+        {
+            this.exists = exists;
+        }
+    }
+
+    /**
+     * A fixed-size bloom filter using double hashing. Bits are never cleared, so a removed file may still be reported
+     * as possibly present; callers confirm positives against the exact directory index.
+     */
+    protected static class BloomFilter
+    {
+        protected static final int NUM_HASHES = 4;
+
+        protected final AtomicLongArray bits;
+        protected final int numBits;
+
+        public BloomFilter(int numBits)
+        {
+            this.numBits = Math.max(numBits, 64);
+            this.bits = new AtomicLongArray((this.numBits + 63) / 64);
+        }
+
+        public int getNumBits()
+        {
+            return this.numBits;
+        }
+
+        public void add(String path)
+        {
+            int h1 = path.hashCode();
+            int h2 = mix(h1);
+            for (int i = 0; i < NUM_HASHES; i++)
+            {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % this.numBits;
+                int index = bit >>> 6;
+                long mask = 1L << (bit & 63);
+
+                long word;
+                do
+                {
+                    word = this.bits.get(index);
+                }
+                while ((word & mask) == 0 && !this.bits.compareAndSet(index, word, word | mask));
+            }
+        }
+
+        public boolean mightContain(String path)
+        {
+            int h1 = path.hashCode();
+            int h2 = mix(h1);
+            for (int i = 0; i < NUM_HASHES; i++)
+            {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % this.numBits;
+                if ((this.bits.get(bit >>> 6) & (1L << (bit & 63))) == 0)
+                    return false;
+            }
+
+            return true;
+        }
+
+        protected static int mix(int h)
+        {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h | 1; // odd, so successive probes cover the whole filter
+        }
+    }
+
+    protected final ConcurrentHashMap<String, DirectoryEntry> directories =
+        new ConcurrentHashMap<String, DirectoryEntry>();
+    protected volatile BloomFilter bloomFilter;
+    protected final Object bloomLock = new Object();
+    protected int numBloomEntries;
+
+    protected final ConcurrentHashMap<File, Boolean> usedFiles = new ConcurrentHashMap<File, Boolean>();
+    protected final AtomicBoolean flushScheduled = new AtomicBoolean();
+    protected long flushDelay = DEFAULT_FLUSH_DELAY;
+    protected final Runnable flushTask = new Runnable()
+    {
+        public void run()
+        {
+            flushScheduled.set(false);
+            flushUsedFiles();
+        }
+    };
+
+    public FileStoreIndex()
+    {
+        this.bloomFilter = new BloomFilter(DEFAULT_BLOOM_FILTER_BITS);
+    }
+
+    /**
+     * Returns the delay between marking a file used and updating its modification time.
+     *
+     * @return the flush delay in milliseconds.
+     */
+    public long getFlushDelay()
+    {
+        return this.flushDelay;
+    }
+
+    /**
+     * Specifies the delay between marking a file used and updating its modification time.
+     *
+     * @param flushDelay the flush delay in milliseconds.
+     *
+     * @throws IllegalArgumentException if the delay is negative.
+     */
+    public void setFlushDelay(long flushDelay)
+    {
+        if (flushDelay < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", flushDelay);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.flushDelay = flushDelay;
+    }
+
+    /**
+     * Indicates whether a directory exists, listing and indexing the directory if it has not been indexed yet.
+     *
+     * @param dir the directory.
+     *
+     * @return true if the directory exists, otherwise false.
+     */
+    public boolean directoryExists(File dir)
+    {
+        return this.getDirectoryEntry(dir.getPath()).exists;
+    }
+
+    /**
+     * Indicates whether a file exists, indexing its directory if the directory has not been indexed yet. Only files
+     * created through the file store since the index was built cause file system access, and only on their first
+     * lookup.
+     *
+     * @param file the file.
+     *
+     * @return true if the file exists, otherwise false.
+     */
+    public boolean containsFile(File file)
+    {
+        String parent = file.getParent();
+        if (parent == null)
+            return file.exists();
+
+        String path = file.getPath();
+        DirectoryEntry entry = this.directories.get(parent);
+        if (entry != null && entry.pendingNames.isEmpty() && !this.bloomFilter.mightContain(path))
+            return false;
+
+        if (entry == null)
+            entry = this.getDirectoryEntry(parent);
+
+        if (!entry.exists)
+            return false;
+
+        String name = file.getName();
+        if (entry.names.contains(name))
+            return true;
+
+        if (entry.pendingNames.contains(name) && file.exists())
+        {
+            this.addName(entry, path, name);
+            entry.pendingNames.remove(name);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Records that a file is about to be created. Its existence is confirmed on disk the next time it's looked up.
+     *
+     * @param file the new file.
+     */
+    public void fileCreated(File file)
+    {
+        String parent = file.getParent();
+        if (parent == null)
+            return;
+
+        DirectoryEntry entry = this.directories.get(parent);
+        if (entry != null && !entry.exists)
+        {
+            // The directory has just been created. Replace its entry and the entries of any ancestors that were
+            // indexed as missing.
+            this.directories.remove(parent);
+            File ancestor = file.getParentFile().getParentFile();
+            while (ancestor != null)
+            {
+                DirectoryEntry ancestorEntry = this.directories.get(ancestor.getPath());
+                if (ancestorEntry != null && ancestorEntry.exists)
+                    break;
+
+                this.directories.remove(ancestor.getPath());
+                ancestor = ancestor.getParentFile();
+            }
+            entry = null;
+        }
+
+        if (entry == null)
+            entry = this.getDirectoryEntry(parent);
+
+        if (entry.exists && !entry.names.contains(file.getName()))
+            entry.pendingNames.add(file.getName());
+    }
+
+    /**
+     * Records that a file has been removed.
+     *
+     * @param file the removed file.
+     */
+    public void fileRemoved(File file)
+    {
+        this.usedFiles.remove(file);
+
+        String parent = file.getParent();
+        if (parent == null)
+            return;
+
+        DirectoryEntry entry = this.directories.get(parent);
+        if (entry != null)
+        {
+            entry.names.remove(file.getName());
+            entry.pendingNames.remove(file.getName());
+        }
+    }
+
+    /**
+     * Queues a file to have its modification time set to the current time. The update is made by a background task
+     * after the flush delay.
+     *
+     * @param file the file to mark.
+     */
+    public void markFileUsed(File file)
+    {
+        if (file == null)
+            return;
+
+        this.usedFiles.put(file, Boolean.TRUE);
+
+        if (this.flushScheduled.compareAndSet(false, true))
+        {
+            if (WorldWind.getScheduledTaskService().addScheduledTask(this.flushTask, this.flushDelay,
+                TimeUnit.MILLISECONDS) == null)
+            {
+                this.flushScheduled.set(false);
+            }
+        }
+    }
+
+    /** Updates the modification time of all files marked used since the last flush. */
+    public void flushUsedFiles()
+    {
+        Iterator<File> iter = this.usedFiles.keySet().iterator();
+        while (iter.hasNext())
+        {
+            File file = iter.next();
+            iter.remove();
+            AbstractFileStore.markFileUsed(file);
+        }
+    }
+
+    /** Discards the index. Directories are listed again as they are next looked up. */
+    public void clear()
+    {
+        synchronized (this.bloomLock)
+        {
+            this.directories.clear();
+            this.bloomFilter = new BloomFilter(this.bloomFilter.getNumBits());
+            this.numBloomEntries = 0;
+        }
+    }
+
+    protected DirectoryEntry getDirectoryEntry(String dirPath)
+    {
+        DirectoryEntry entry = this.directories.get(dirPath);
+        if (entry != null)
+            return entry;
+
+        String[] names = new File(dirPath).list();
+        entry = new DirectoryEntry(names != null);
+
+        // The directory's names must be in the bloom filter before the directory becomes visible to lookups, and a
+        // filter rebuild must not run between the two, so both happen under the filter's lock.
+        synchronized (this.bloomLock)
+        {
+            DirectoryEntry existing = this.directories.get(dirPath);
+            if (existing != null)
+                return existing;
+
+            if (names != null)
+            {
+                this.ensureBloomCapacity(names.length);
+                for (String name : names)
+                {
+                    this.bloomFilter.add(dirPath + File.separator + name);
+                    entry.names.add(name);
+                }
+            }
+
+            this.directories.put(dirPath, entry);
+        }
+
+        return entry;
+    }
+
+    protected void addName(DirectoryEntry entry, String path, String name)
+    {
+        synchronized (this.bloomLock)
+        {
+            this.ensureBloomCapacity(1);
+            this.bloomFilter.add(path);
+            entry.names.add(name);
+        }
+    }
+
+    protected void ensureBloomCapacity(int numNewEntries) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        this.numBloomEntries += numNewEntries;
+
+        int numBits = this.bloomFilter.getNumBits();
+        while ((long) this.numBloomEntries * BLOOM_FILTER_BITS_PER_ENTRY > numBits && numBits <= Integer.MAX_VALUE / 2)
+        {
+            numBits *= 2;
+        }
+
+        if (numBits != this.bloomFilter.getNumBits())
+            this.rebuildBloomFilter(numBits);
+    }
+
+    protected void rebuildBloomFilter(int numBits) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        BloomFilter filter = new BloomFilter(numBits);
+        for (Map.Entry<String, DirectoryEntry> dir : this.directories.entrySet())
+        {
+            for (String name : dir.getValue().names)
+            {
+                filter.add(dir.getKey() + File.separator + name);
+            }
+        }
+
+        this.bloomFilter = filter;
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MemoryCache} that evicts its least recently used entries in constant time. Entries are kept in an intrusive
+ * doubly-linked list ordered by access, so <code>add</code>, <code>getObject</code>, <code>remove</code> and each
+ * individual eviction run in amortized O(1) time regardless of the number of entries in the cache. {@link
+ * BasicMemoryCache}, in contrast, sorts every entry by access time each time the cache overflows.
+ * <p/>
+ * The cache honors the same capacity, low water and {@link MemoryCache.CacheListener} semantics as
+ * <code>BasicMemoryCache</code>: when an add would exceed the capacity, entries are removed in least recently used
+ * order until the new entry fits and the used capacity is at or below the low water level.
+ *
+ * @author tag
+ * @version $Id$
+ * @see BasicMemoryCacheSet#setCacheClassName(String, String)
+ */
+public class LRUMemoryCache implements MemoryCache, MemoryCacheStatistics
+{
+    protected static class CacheEntry
+    {
+        protected Object key;
+        protected Object clientObject;
+        protected long clientObjectSize;
+        protected CacheEntry prev;
+        protected CacheEntry next;
+
+        protected CacheEntry(Object key, Object clientObject, long clientObjectSize)
+        {
+            this.key = key;
+            this.clientObject = clientObject;
+            this.clientObjectSize = clientObjectSize;
+        }
+
+        public String toString()
+        {
+            return key + " " + clientObject + " " + clientObjectSize;
+        }
+    }
+
+    protected HashMap<Object, CacheEntry> entries = new HashMap<Object, CacheEntry>();
+    /**
+     * Sentinel of the circular access-ordered list. <code>head.next</code> is the most recently used entry and
+     * <code>head.prev</code> the least recently used one.
+     */
+    protected final CacheEntry head = new CacheEntry(null, null, 0);
+    protected java.util.concurrent.CopyOnWriteArrayList<MemoryCache.CacheListener> listeners =
+        new java.util.concurrent.CopyOnWriteArrayList<MemoryCache.CacheListener>();
+    protected AtomicLong capacity = new AtomicLong();
+    protected AtomicLong currentUsedCapacity = new AtomicLong();
+    protected volatile long lowWater;
+    protected volatile int numObjects;
+    protected String name = "";
+    protected AtomicLong hitCount = new AtomicLong();
+    protected AtomicLong missCount = new AtomicLong();
+    protected AtomicLong evictionCount = new AtomicLong();
+
+    protected final Object lock = new Object();
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, and <code>loWater</code> for the low water.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     */
+    public LRUMemoryCache(long loWater, long capacity)
+    {
+        this.head.prev = this.head;
+        this.head.next = this.head;
+        this.capacity.set(capacity);
+        this.lowWater = loWater;
+    }
+
+    /** @return the number of objects currently stored in this cache. */
+    public int getNumObjects()
+    {
+        return this.numObjects;
+    }
+
+    /** @return the capacity of the cache. */
+    public long getCapacity()
+    {
+        return this.capacity.get();
+    }
+
+    /** @return the number of cache units that the cache currently holds. */
+    public long getUsedCapacity()
+    {
+        return this.currentUsedCapacity.get();
+    }
+
+    /** @return the amount of free space left in the cache (in cache units). */
+    public long getFreeCapacity()
+    {
+        return Math.max(this.capacity.get() - this.currentUsedCapacity.get(), 0);
+    }
+
+    public void setName(String name)
+    {
+        this.name = name != null ? name : "";
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Adds a cache listener, which is notified whenever an entry is removed from the cache.
+     *
+     * @param listener The new <code>CacheListener</code>.
+     *
+     * @throws IllegalArgumentException is <code>listener</code> is null.
+     */
+    public void addCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerAdded");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a cache listener, objects using this listener will no longer receive notification of cache events.
+     *
+     * @param listener The <code>CacheListener</code> to remove.
+     *
+     * @throws IllegalArgumentException if <code>listener</code> is null.
+     */
+    public void removeCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerRemoved");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Sets the new capacity for the cache. As with {@link BasicMemoryCache}, entries exceeding a reduced capacity are
+     * not removed until the next add.
+     *
+     * @param newCapacity the new capacity of the cache.
+     */
+    public void setCapacity(long newCapacity)
+    {
+        this.capacity.set(newCapacity);
+    }
+
+    /**
+     * Sets the new low water level in cache units. When the cache fills, it removes items until it reaches the low
+     * water level. The new level is ignored if it is negative or not less than the current capacity.
+     *
+     * @param loWater the new low water level.
+     */
+    public void setLowWater(long loWater)
+    {
+        if (loWater < this.capacity.get() && loWater >= 0)
+        {
+            this.lowWater = loWater;
+        }
+    }
+
+    /**
+     * Returns the low water level in cache units. When the cache fills, it removes items until it reaches the low water
+     * level.
+     *
+     * @return the low water level.
+     */
+    public long getLowWater()
+    {
+        return this.lowWater;
+    }
+
+    /**
+     * Returns true if the cache contains the item referenced by key. This does not mark the item as accessed.
+     *
+     * @param key The key of a specific object.
+     *
+     * @return true if the cache holds the item referenced by key.
+     *
+     * @throws IllegalArgumentException if <code>key</code> is null.
+     */
+    public boolean contains(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        synchronized (this.lock)
+        {
+            return this.entries.containsKey(key);
+        }
+    }
+
+    /**
+     * Adds an object to the cache and marks it as the most recently used. The add fails if the object or key is null,
+     * or if the size is zero, negative or greater than the maximum capacity.
+     *
+     * @param key              The unique reference key that identifies this object.
+     * @param clientObject     The actual object to be cached.
+     * @param clientObjectSize The size of the object in cache units.
+     *
+     * @return returns true if clientObject was added, false otherwise.
+     */
+    public boolean add(Object key, Object clientObject, long clientObjectSize)
+    {
+        long cap = this.capacity.get();
+
+        if (key == null || clientObject == null || clientObjectSize <= 0 || clientObjectSize > cap)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.CacheItemNotAdded");
+
+            if (clientObjectSize > cap)
+            {
+                message += " - " + Logging.getMessage("BasicMemoryCache.ItemTooLargeForCache");
+            }
+
+            Logging.logger().warning(message);
+
+            return false;
+        }
+
+        CacheEntry entry = new CacheEntry(key, clientObject, clientObjectSize);
+
+        synchronized (this.lock)
+        {
+            CacheEntry existing = this.entries.get(key);
+            if (existing != null) // replacing
+            {
+                this.removeEntry(existing);
+            }
+
+            if (this.currentUsedCapacity.get() + clientObjectSize > cap)
+            {
+                this.makeSpace(clientObjectSize);
+            }
+
+            this.entries.put(key, entry);
+            this.linkFirst(entry);
+            this.currentUsedCapacity.addAndGet(clientObjectSize);
+            this.numObjects = this.entries.size();
+        }
+
+        return true;
+    }
+
+    public boolean add(Object key, Cacheable clientObject)
+    {
+        return this.add(key, clientObject, clientObject.getSizeInBytes());
+    }
+
+    /**
+     * Remove the object reference by key from the cache. If no object with the corresponding key is found, this method
+     * returns immediately.
+     *
+     * @param key the key of the object to be removed.
+     */
+    public void remove(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return;
+        }
+
+        synchronized (this.lock)
+        {
+            CacheEntry entry = this.entries.get(key);
+            if (entry != null)
+                this.removeEntry(entry);
+        }
+    }
+
+    /**
+     * Obtain the object referenced by key without removing it, and mark it as the most recently used entry.
+     *
+     * @param key The key for the object to be found.
+     *
+     * @return the object referenced by key if it is present, null otherwise.
+     */
+    public Object getObject(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return null;
+        }
+
+        synchronized (this.lock)
+        {
+            CacheEntry entry = this.entries.get(key);
+            if (entry == null)
+            {
+                this.missCount.incrementAndGet();
+                return null;
+            }
+
+            this.hitCount.incrementAndGet();
+            if (this.head.next != entry)
+            {
+                this.unlink(entry);
+                this.linkFirst(entry);
+            }
+
+            return entry.clientObject;
+        }
+    }
+
+    /** Empties the cache. */
+    public void clear()
+    {
+        synchronized (this.lock)
+        {
+            while (this.head.prev != this.head)
+            {
+                this.removeEntry(this.head.prev);
+            }
+        }
+    }
+
+    /**
+     * Removes <code>entry</code> from the cache and notifies the cache listeners. Must be called while holding the
+     * cache's lock.
+     *
+     * @param entry The entry (as opposed to key) of the item to be removed.
+     */
+    protected void removeEntry(CacheEntry entry) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        if (this.entries.remove(entry.key) == null)
+            return;
+
+        this.unlink(entry);
+        this.currentUsedCapacity.addAndGet(-entry.clientObjectSize);
+        this.numObjects = this.entries.size();
+
+        for (MemoryCache.CacheListener listener : this.listeners)
+        {
+            try
+            {
+                listener.entryRemoved(entry.key, entry.clientObject);
+            }
+            catch (Exception e)
+            {
+                listener.removalException(e, entry.key, entry.clientObject);
+            }
+        }
+    }
+
+    /**
+     * Removes least recently used entries until at least <code>spaceRequired</code> space is free and the used capacity
+     * is at or below the low water level. Does nothing if <code>spaceRequired</code> is negative or exceeds the
+     * capacity.
+     *
+     * @param spaceRequired the amount of space required.
+     */
+    protected void makeSpace(long spaceRequired) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        if (spaceRequired > this.capacity.get() || spaceRequired < 0)
+            return;
+
+        while (this.head.prev != this.head
+            && (this.getFreeCapacity() < spaceRequired || this.getUsedCapacity() > this.lowWater))
+        {
+            this.removeEntry(this.head.prev);
+            this.evictionCount.incrementAndGet();
+        }
+    }
+
+    protected void linkFirst(CacheEntry entry) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        entry.prev = this.head;
+        entry.next = this.head.next;
+        this.head.next.prev = entry;
+        this.head.next = entry;
+    }
+
+    protected void unlink(CacheEntry entry) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * a <code>String</code> representation of this object is returned.&nbsp; This representation consists of maximum
+     * size, current used capacity and number of currently cached items.
+     *
+     * @return a <code>String</code> representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "MemoryCache " + this.name + " max size = " + this.getCapacity() + " current size = "
+            + this.currentUsedCapacity.get() + " number of items: " + this.getNumObjects();
+    }
+}
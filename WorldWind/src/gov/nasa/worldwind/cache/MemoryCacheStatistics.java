@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+/**
+ * Counts the hits, misses and evictions of a {@link MemoryCache}. Caches that count their use implement this interface
+ * in addition to <code>MemoryCache</code>, so that <code>MemoryCache</code> implementations that do not count their
+ * use remain valid.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public interface MemoryCacheStatistics
+{
+    /**
+     * Returns the number of calls to {@link MemoryCache#getObject(Object)} that found the requested item since the
+     * cache was created.
+     *
+     * @return the number of cache hits.
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of calls to {@link MemoryCache#getObject(Object)} that did not find the requested item since
+     * the cache was created.
+     *
+     * @return the number of cache misses.
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of items the cache has removed to make space for new items since the cache was created.
+     * Items removed explicitly, replaced, or removed by {@link MemoryCache#clear()} are not counted.
+     *
+     * @return the number of cache evictions.
+     */
+    long getEvictionCount();
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * A {@link BasicDataFileStore} that keeps tile files in a {@link TilePackArchive} in its write location instead of as
+ * individual files. Storing hundreds of thousands of small tiles as loose files costs a directory entry, an inode and
+ * at least one file system block each, and makes the cache slow to scan and to trim; the archive holds them in a few
+ * large pack files with a memory-mapped index.
+ * <p/>
+ * Tiles are still downloaded to the loose file returned by {@link #newFile(String)}, so retrieval post processors are
+ * unchanged. The first time {@link #findFile(String, boolean)} finds a loose file whose suffix is one of the packed
+ * suffixes, it moves the file into the archive and returns a URL that reads the file from the archive. Such URLs can be
+ * opened and passed to {@link #removeFile(java.net.URL)}, but do not refer to a <code>java.io.File</code>. Layers and
+ * elevation models that read their tiles through <code>findFile</code>, such as <code>BasicTiledImageLayer</code> and
+ * <code>BasicElevationModel</code>, work with this store unchanged. Archived files are not reported by the
+ * <code>listFileNames</code> methods.
+ * <p/>
+ * The archive records when each file was modified, and the archive URLs report that time through
+ * <code>URLConnection.getLastModified</code>, so {@link gov.nasa.worldwind.util.WWIO#isFileOutOfDate(java.net.URL,
+ * long)} expires archived files as it does loose files. A loose file is packed only while holding the file lock that
+ * {@link gov.nasa.worldwind.util.WWIO#saveBuffer(java.nio.ByteBuffer, java.io.File)} holds while writing it.
+ * <p/>
+ * The archive records when each file was last used, so this store does not update file modification times. Use {@link
+ * #trimToSize(long)} to remove the least recently used tiles, and {@link #compact()} to reclaim the space of removed
+ * tiles.
+ * <p/>
+ * Select this file store by setting the configuration property
+ * <code>gov.nasa.worldwind.avkey.DataFileStoreClassName</code> to
+ * <code>gov.nasa.worldwind.cache.PackedDataFileStore</code>.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class PackedDataFileStore extends BasicDataFileStore
+{
+    /** The URL protocol of files in the archive. */
+    public static final String PACK_PROTOCOL = "wwpack";
+    /** The name of the archive directory within the write location. */
+    protected static final String ARCHIVE_DIRECTORY_NAME = "TilePacks";
+    /** The default suffixes of the files moved into the archive. */
+    protected static final List<String> DEFAULT_PACKED_SUFFIXES = Arrays.asList(
+        ".bil", ".dds", ".gif", ".jpeg", ".jpg", ".png", ".tif", ".tiff");
+
+    protected TilePackArchive archive;
+    protected Set<String> packedSuffixes = new HashSet<String>(DEFAULT_PACKED_SUFFIXES);
+    protected final URLStreamHandler packURLHandler = new PackURLStreamHandler();
+    protected final Object packFileLock = new Object();
+
+    /**
+     * Create an instance.
+     *
+     * @throws IllegalStateException if the configuration file name cannot be determined from {@link
+     *                               gov.nasa.worldwind.Configuration} or the configuration file cannot be found.
+     */
+    public PackedDataFileStore()
+    {
+        super();
+        this.openArchive();
+    }
+
+    /**
+     * Create an instance to manage a specified directory.
+     *
+     * @param directoryPath the directory to manage as a file store.
+     */
+    public PackedDataFileStore(File directoryPath)
+    {
+        super(directoryPath);
+        this.openArchive();
+    }
+
+    protected void openArchive()
+    {
+        File writeLocation = this.getWriteLocation();
+        if (writeLocation == null)
+            return;
+
+        File dir = new File(writeLocation, ARCHIVE_DIRECTORY_NAME);
+        try
+        {
+            this.archive = new TilePackArchive(dir);
+        }
+        catch (IOException e)
+        {
+            // Continue as a loose-file store.
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("generic.ExceptionWhileReading", dir), e);
+        }
+    }
+
+    /**
+     * Returns the archive holding this store's packed files.
+     *
+     * @return the archive, or null if the store has no write location or the archive could not be opened.
+     */
+    public TilePackArchive getArchive()
+    {
+        return this.archive;
+    }
+
+    /**
+     * Returns the suffixes of the files moved into the archive.
+     *
+     * @return the packed suffixes, each including the leading period.
+     */
+    public Set<String> getPackedSuffixes()
+    {
+        return Collections.unmodifiableSet(this.packedSuffixes);
+    }
+
+    /**
+     * Specifies the suffixes of the files moved into the archive. Files already in the archive remain there.
+     *
+     * @param suffixes the packed suffixes, each including the leading period.
+     *
+     * @throws IllegalArgumentException if the suffix collection is null.
+     */
+    public void setPackedSuffixes(Collection<String> suffixes)
+    {
+        if (suffixes == null)
+        {
+            String message = Logging.getMessage("nullValue.CollectionIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        Set<String> set = new HashSet<String>();
+        for (String suffix : suffixes)
+        {
+            set.add(suffix.toLowerCase());
+        }
+
+        this.packedSuffixes = set;
+    }
+
+    protected boolean isPacked(String fileName)
+    {
+        if (this.archive == null)
+            return false;
+
+        String suffix = WWIO.getSuffix(fileName);
+        return suffix != null && this.packedSuffixes.contains("." + suffix.toLowerCase());
+    }
+
+    @Override
+    public boolean containsFile(String fileName)
+    {
+        if (fileName == null)
+            return false;
+
+        if (this.isPacked(fileName) && this.archive.contains(normalizeFileStoreName(fileName)))
+            return true;
+
+        return super.containsFile(fileName);
+    }
+
+    @Override
+    public URL findFile(String fileName, boolean checkClassPath)
+    {
+        if (fileName == null)
+        {
+            String message = Logging.getMessage("nullValue.FilePathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!this.isPacked(fileName))
+            return super.findFile(fileName, checkClassPath);
+
+        if (checkClassPath)
+        {
+            URL url = this.getClass().getClassLoader().getResource(fileName);
+            if (url != null)
+                return url;
+        }
+
+        String path = normalizeFileStoreName(fileName);
+        if (this.archive.contains(path))
+            return this.makePackURL(path);
+
+        URL url = super.findFile(fileName, false);
+        if (url == null || !"file".equalsIgnoreCase(url.getProtocol()))
+            return url;
+
+        // Move the file into the archive if it's in the write location. Files in read-only locations are left as is.
+        File file = WWIO.convertURLToFile(url);
+        File writeLocation = this.getWriteLocation();
+        if (file == null || writeLocation == null
+            || !file.getAbsolutePath().startsWith(writeLocation.getAbsolutePath()))
+            return url;
+
+        return this.packFile(path, file) ? this.makePackURL(path) : url;
+    }
+
+    /**
+     * Moves a loose file into the archive.
+     *
+     * @param path the file's store path.
+     * @param file the loose file.
+     *
+     * @return true if the file was moved into the archive, otherwise false.
+     */
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    protected boolean packFile(String path, File file)
+    {
+        synchronized (this.packFileLock)
+        {
+            RandomAccessFile raf = null;
+            try
+            {
+                if (!file.exists())
+                    return false;
+
+                // Hold the lock that WWIO.saveBuffer holds while writing the file, so a file still being written by a
+                // retrieval post processor is packed on a later lookup rather than read partially or deleted.
+                raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel();
+                if (channel.tryLock() == null)
+                    return false;
+
+                // An empty file may be one that a writer has truncated but not yet locked.
+                long length = channel.size();
+                if (length == 0 || length > Integer.MAX_VALUE)
+                    return false;
+
+                ByteBuffer buffer = ByteBuffer.allocate((int) length);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+                {
+                }
+                buffer.flip();
+                if (buffer.remaining() != file.length())
+                    return false;
+
+                this.archive.write(path, buffer, file.lastModified());
+
+                // Some platforms don't delete an open file. Closing the file also releases the lock.
+                WWIO.closeStream(raf, file.getPath());
+                raf = null;
+                file.delete();
+
+                FileStoreIndex index = this.index;
+                if (index != null)
+                    index.fileRemoved(file);
+
+                return true;
+            }
+            catch (OverlappingFileLockException e)
+            {
+                return false; // the file is being written by this process
+            }
+            catch (IOException e)
+            {
+                Logging.logger().log(Level.SEVERE, Logging.getMessage("generic.ExceptionWhileSavingRetreivedData",
+                    file), e);
+                return false;
+            }
+            finally
+            {
+                if (raf != null)
+                    WWIO.closeStream(raf, file.getPath());
+            }
+        }
+    }
+
+    /**
+     * Moves all loose files with a packed suffix in the write location into the archive.
+     *
+     * @return the number of files moved.
+     */
+    public int packLooseFiles()
+    {
+        File writeLocation = this.getWriteLocation();
+        if (this.archive == null || writeLocation == null)
+            return 0;
+
+        return this.packLooseFiles(writeLocation, "");
+    }
+
+    protected int packLooseFiles(File dir, String dirPath)
+    {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return 0;
+
+        int numPacked = 0;
+        for (File child : children)
+        {
+            String path = dirPath.length() > 0 ? dirPath + "/" + child.getName() : child.getName();
+            if (child.isDirectory())
+            {
+                if (!child.equals(this.archive.getDirectory()))
+                    numPacked += this.packLooseFiles(child, path);
+            }
+            else if (this.isPacked(path) && this.packFile(path, child))
+            {
+                numPacked++;
+            }
+        }
+
+        return numPacked;
+    }
+
+    @Override
+    public void removeFile(URL url)
+    {
+        if (url == null)
+        {
+            String msg = Logging.getMessage("nullValue.URLIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!PACK_PROTOCOL.equals(url.getProtocol()))
+        {
+            super.removeFile(url);
+            return;
+        }
+
+        if (this.archive != null)
+            this.archive.remove(getPackPath(url));
+    }
+
+    /**
+     * Reclaims the space held by files removed from or replaced in the archive.
+     *
+     * @throws IOException if an error occurs rewriting the archive.
+     */
+    public void compact() throws IOException
+    {
+        if (this.archive != null)
+            this.archive.compact();
+    }
+
+    /**
+     * Removes the least recently used files from the archive until its contents are no larger than a specified size,
+     * then compacts the archive.
+     *
+     * @param maxSize the maximum size of the archive's contents, in bytes.
+     *
+     * @return the number of files removed.
+     *
+     * @throws IOException if an error occurs rewriting the archive.
+     */
+    public int trimToSize(long maxSize) throws IOException
+    {
+        return this.archive != null ? this.archive.trimToSize(maxSize) : 0;
+    }
+
+    /**
+     * Creates the URL of a file in the archive. The store path is percent-encoded, so that the URL is also a valid URI
+     * when the path contains spaces or other characters not allowed in URIs.
+     *
+     * @param path the file's store path.
+     *
+     * @return the file's URL, or null if the URL cannot be created.
+     */
+    protected URL makePackURL(String path)
+    {
+        try
+        {
+            String encodedPath = new URI(PACK_PROTOCOL, path, null).getRawSchemeSpecificPart();
+            return new URL(null, PACK_PROTOCOL + ":" + encodedPath, this.packURLHandler);
+        }
+        catch (URISyntaxException e)
+        {
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionCreatingURLForFile", path), e);
+            return null;
+        }
+        catch (MalformedURLException e)
+        {
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionCreatingURLForFile", path), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the store path of a file in the archive from the file's URL, decoding the path encoded by {@link
+     * #makePackURL(String)}.
+     *
+     * @param url the file's URL.
+     *
+     * @return the file's store path.
+     */
+    protected static String getPackPath(URL url)
+    {
+        try
+        {
+            return new URI(url.toString()).getSchemeSpecificPart();
+        }
+        catch (URISyntaxException e)
+        {
+            // The URL was not created by makePackURL, so its path is not encoded.
+            return url.getPath();
+        }
+    }
+
+    /** Opens URLs of files in the archive. The URL's path is the file's store path. */
+    protected class PackURLStreamHandler extends URLStreamHandler
+    {
+        protected URLConnection openConnection(URL url) throws IOException
+        {
+            return new PackURLConnection(url);
+        }
+    }
+
+    protected class PackURLConnection extends URLConnection
+    {
+        protected ByteBuffer contents;
+
+        public PackURLConnection(URL url)
+        {
+            super(url);
+        }
+
+        public void connect() throws IOException
+        {
+            if (this.connected)
+                return;
+
+            TilePackArchive archive = getArchive();
+            this.contents = archive != null ? archive.read(getPackPath(this.url)) : null;
+            if (this.contents == null)
+                throw new FileNotFoundException(this.url.toString());
+
+            this.connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            this.connect();
+            // The contents are a slice of the archive record, so stream only the slice's bytes.
+            return new ByteArrayInputStream(this.contents.array(),
+                this.contents.arrayOffset() + this.contents.position(), this.contents.remaining());
+        }
+
+        @Override
+        public int getContentLength()
+        {
+            try
+            {
+                this.connect();
+                return this.contents.remaining();
+            }
+            catch (IOException e)
+            {
+                return -1;
+            }
+        }
+
+        @Override
+        public long getLastModified()
+        {
+            TilePackArchive archive = getArchive();
+
+            return archive != null ? archive.getLastModified(getPackPath(this.url)) : 0;
+        }
+
+        @Override
+        public String getContentType()
+        {
+            return WWIO.makeMimeTypeForSuffix(WWIO.getSuffix(getPackPath(this.url)));
+        }
+    }
+}
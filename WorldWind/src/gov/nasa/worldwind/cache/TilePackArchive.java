@@ -0,0 +1,945 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stores many small files, such as imagery and elevation tiles, in a few large append-only pack files. Files are
+ * identified by their file store path, for example the path returned by {@link gov.nasa.worldwind.util.Tile#getPath()}.
+ * A memory-mapped open-addressing hash table maps a 64-bit hash of each path to the pack, offset and length of the
+ * file's most recent record, and holds the time the file was last used and the time it was last modified. The
+ * modification time lets callers expire archived files the way they expire loose files.
+ * <p/>
+ * Each pack record begins with the file's path, which is checked when the record is read. Replacing or removing a file
+ * leaves its old record in place; {@link #compact()} rewrites the live records into new packs and reclaims the space,
+ * and {@link #trimToSize(long)} removes the least recently used files until the archive fits a size budget. Records
+ * are always appended before the index refers to them, so an interrupted write leaves at worst unreferenced bytes at
+ * the end of a pack.
+ * <p/>
+ * The archive is safe for use by multiple threads. It must not be opened by more than one archive instance at a time.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class TilePackArchive
+{
+    protected static final int INDEX_MAGIC = 0x57575049; // "WWPI"
+    protected static final int RECORD_MAGIC = 0x57575052; // "WWPR"
+    protected static final int VERSION = 1;
+    protected static final String INDEX_PREFIX = "index-";
+    protected static final String INDEX_SUFFIX = ".idx";
+    protected static final String PACK_PREFIX = "pack-";
+    protected static final String PACK_SUFFIX = ".dat";
+
+    protected static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+    protected static final long DEFAULT_MAX_PACK_SIZE = 1L << 30; // 1 GB
+    protected static final double MAX_LOAD_FACTOR = 0.6;
+
+    // Index header layout.
+    protected static final int HEADER_SIZE = 64;
+    protected static final int HEADER_MAGIC = 0;
+    protected static final int HEADER_VERSION = 4;
+    protected static final int HEADER_CAPACITY = 8;
+    protected static final int HEADER_COUNT = 12;
+    protected static final int HEADER_TOMBSTONES = 16;
+    protected static final int HEADER_CURRENT_PACK = 20;
+
+    // Index slot layout. A hash of 0 marks an empty slot, and a negative pack number marks a removed entry.
+    protected static final int SLOT_SIZE = 32;
+    protected static final int SLOT_HASH = 0;
+    protected static final int SLOT_PACK = 8;
+    protected static final int SLOT_LENGTH = 12;
+    protected static final int SLOT_OFFSET = 16;
+    protected static final int SLOT_LAST_USED = 24;
+    protected static final int SLOT_MODIFIED = 28; // seconds since the epoch, unsigned; 0 if unknown
+
+    protected static class Index
+    {
+        protected final File file;
+        protected final int generation;
+        protected final RandomAccessFile raf;
+        protected final MappedByteBuffer buffer;
+        protected final int capacity;
+
+        protected Index(File file, int generation, RandomAccessFile raf, MappedByteBuffer buffer, int capacity)
+        {
+            this.file = file;
+            this.generation = generation;
+            this.raf = raf;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        protected int slotPosition(int slot)
+        {
+            return HEADER_SIZE + slot * SLOT_SIZE;
+        }
+
+        protected long hash(int slot)
+        {
+            return this.buffer.getLong(this.slotPosition(slot) + SLOT_HASH);
+        }
+
+        protected int pack(int slot)
+        {
+            return this.buffer.getInt(this.slotPosition(slot) + SLOT_PACK);
+        }
+
+        protected int length(int slot)
+        {
+            return this.buffer.getInt(this.slotPosition(slot) + SLOT_LENGTH);
+        }
+
+        protected long offset(int slot)
+        {
+            return this.buffer.getLong(this.slotPosition(slot) + SLOT_OFFSET);
+        }
+
+        protected int lastUsed(int slot)
+        {
+            return this.buffer.getInt(this.slotPosition(slot) + SLOT_LAST_USED);
+        }
+
+        protected int modified(int slot)
+        {
+            return this.buffer.getInt(this.slotPosition(slot) + SLOT_MODIFIED);
+        }
+
+        protected boolean isLive(int slot)
+        {
+            return this.hash(slot) != 0 && this.pack(slot) >= 0;
+        }
+
+        protected int homeSlot(long hash)
+        {
+            return (int) (((hash ^ (hash >>> 32)) & Integer.MAX_VALUE) % this.capacity);
+        }
+
+        protected int find(long hash)
+        {
+            for (int i = this.homeSlot(hash), n = 0; n < this.capacity; i = (i + 1) % this.capacity, n++)
+            {
+                long h = this.hash(i);
+                if (h == 0)
+                    return -1;
+                if (h == hash && this.pack(i) >= 0)
+                    return i;
+            }
+
+            return -1;
+        }
+
+        /**
+         * Stores an entry in the first empty or removed slot along the entry's probe sequence. The caller must ensure
+         * the entry is not already present.
+         *
+         * @return true if a removed slot was reused, false if an empty slot was used.
+         */
+        protected boolean insert(long hash, int pack, long offset, int length, int lastUsed, int modified)
+        {
+            int i = this.homeSlot(hash);
+            while (this.hash(i) != 0 && this.pack(i) >= 0)
+            {
+                i = (i + 1) % this.capacity;
+            }
+
+            boolean reused = this.hash(i) != 0;
+            int pos = this.slotPosition(i);
+            this.buffer.putInt(pos + SLOT_PACK, pack);
+            this.buffer.putInt(pos + SLOT_LENGTH, length);
+            this.buffer.putLong(pos + SLOT_OFFSET, offset);
+            this.buffer.putInt(pos + SLOT_LAST_USED, lastUsed);
+            this.buffer.putInt(pos + SLOT_MODIFIED, modified);
+            this.buffer.putLong(pos + SLOT_HASH, hash);
+
+            return reused;
+        }
+
+        protected void markRemoved(int slot)
+        {
+            this.buffer.putInt(this.slotPosition(slot) + SLOT_PACK, -1);
+        }
+
+        protected void setLastUsed(int slot, int lastUsed)
+        {
+            this.buffer.putInt(this.slotPosition(slot) + SLOT_LAST_USED, lastUsed);
+        }
+    }
+
+    protected final File directory;
+    protected long maxPackSize = DEFAULT_MAX_PACK_SIZE;
+    protected Index index;
+    protected int count;
+    protected int tombstones;
+    protected int currentPack;
+    protected final Map<Integer, FileChannel> packChannels = new HashMap<Integer, FileChannel>();
+    /** Guards the index and the pack channel map. */
+    protected final Object lock = new Object();
+    /** Held for reading while pack files are read or appended, and for writing while pack files are replaced. */
+    protected final ReentrantReadWriteLock packLock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the archive in the specified directory, creating the directory and an empty archive if necessary.
+     *
+     * @param directory the archive directory.
+     *
+     * @throws IllegalArgumentException if the directory is null.
+     * @throws IOException              if the archive cannot be opened or created.
+     */
+    public TilePackArchive(File directory) throws IOException
+    {
+        if (directory == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            String message = Logging.getMessage("generic.CannotCreateFile", directory);
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        this.directory = directory;
+        this.open();
+    }
+
+    public File getDirectory()
+    {
+        return this.directory;
+    }
+
+    /**
+     * Returns the size at which a pack file is closed to new records and a new pack is started.
+     *
+     * @return the maximum pack size in bytes.
+     */
+    public long getMaxPackSize()
+    {
+        return this.maxPackSize;
+    }
+
+    /**
+     * Specifies the size at which a pack file is closed to new records and a new pack is started.
+     *
+     * @param maxPackSize the maximum pack size in bytes.
+     *
+     * @throws IllegalArgumentException if the size is not positive.
+     */
+    public void setMaxPackSize(long maxPackSize)
+    {
+        if (maxPackSize <= 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", maxPackSize);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.maxPackSize = maxPackSize;
+    }
+
+    /**
+     * Returns the number of files in the archive.
+     *
+     * @return the number of files.
+     */
+    public int getNumFiles()
+    {
+        synchronized (this.lock)
+        {
+            return this.count;
+        }
+    }
+
+    /**
+     * Indicates whether the archive contains a file.
+     *
+     * @param path the file's store path.
+     *
+     * @return true if the archive contains the file, otherwise false.
+     */
+    public boolean contains(String path)
+    {
+        long hash = hashPath(path);
+
+        synchronized (this.lock)
+        {
+            return this.index.find(hash) >= 0;
+        }
+    }
+
+    /**
+     * Returns the contents of a file and marks the file as used.
+     *
+     * @param path the file's store path.
+     *
+     * @return the file's contents, or null if the archive does not contain the file.
+     *
+     * @throws IOException if an error occurs reading the file.
+     */
+    public ByteBuffer read(String path) throws IOException
+    {
+        long hash = hashPath(path);
+        byte[] pathBytes = path.getBytes("UTF-8");
+
+        this.packLock.readLock().lock();
+        try
+        {
+            FileChannel channel;
+            long offset;
+            int length;
+
+            synchronized (this.lock)
+            {
+                int slot = this.index.find(hash);
+                if (slot < 0)
+                    return null;
+
+                this.index.setLastUsed(slot, currentTime());
+                channel = this.getPackChannel(this.index.pack(slot));
+                offset = this.index.offset(slot);
+                length = this.index.length(slot);
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(recordSize(pathBytes.length, length));
+            readFully(channel, record, offset);
+            record.flip();
+
+            if (!matchesRecord(record, pathBytes, length))
+                return null; // Another path with the same hash; the requested file is not in the archive.
+
+            return record.slice();
+        }
+        finally
+        {
+            this.packLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the time a file was last modified, which is the time it was written to the archive unless a different
+     * time was specified to {@link #write(String, java.nio.ByteBuffer, long)}. The time has a resolution of one second.
+     * Files written by versions of the archive that did not record modification times report 0.
+     *
+     * @param path the file's store path.
+     *
+     * @return the file's modification time in milliseconds since the epoch, or 0 if the archive does not contain the
+     *         file or the time is not known.
+     */
+    public long getLastModified(String path)
+    {
+        long hash = hashPath(path);
+
+        synchronized (this.lock)
+        {
+            int slot = this.index.find(hash);
+
+            return slot >= 0 ? (this.index.modified(slot) & 0xFFFFFFFFL) * 1000L : 0;
+        }
+    }
+
+    /**
+     * Adds a file to the archive, replacing any existing file with the same path. The file's modification time is the
+     * current time.
+     *
+     * @param path the file's store path.
+     * @param data the file's contents, from the buffer's position to its limit. The buffer's position is not changed.
+     *
+     * @throws IllegalArgumentException if the path or the data is null.
+     * @throws IOException              if an error occurs writing the file.
+     */
+    public void write(String path, ByteBuffer data) throws IOException
+    {
+        this.write(path, data, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds a file to the archive with a specified modification time, replacing any existing file with the same path.
+     *
+     * @param path         the file's store path.
+     * @param data         the file's contents, from the buffer's position to its limit. The buffer's position is not
+     *                     changed.
+     * @param lastModified the file's modification time, in milliseconds since the epoch.
+     *
+     * @throws IllegalArgumentException if the path or the data is null.
+     * @throws IOException              if an error occurs writing the file.
+     */
+    public void write(String path, ByteBuffer data, long lastModified) throws IOException
+    {
+        if (path == null)
+        {
+            String message = Logging.getMessage("nullValue.PathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (data == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        long hash = hashPath(path);
+        byte[] pathBytes = path.getBytes("UTF-8");
+        ByteBuffer record = makeRecord(pathBytes, data);
+
+        this.packLock.readLock().lock();
+        try
+        {
+            synchronized (this.lock)
+            {
+                this.append(hash, record, data.remaining(), currentTime(), toSeconds(lastModified));
+            }
+        }
+        finally
+        {
+            this.packLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a file from the archive. The space it occupies is reclaimed by the next {@link #compact()}.
+     *
+     * @param path the file's store path.
+     *
+     * @return true if the file was in the archive, otherwise false.
+     */
+    public boolean remove(String path)
+    {
+        long hash = hashPath(path);
+
+        synchronized (this.lock)
+        {
+            int slot = this.index.find(hash);
+            if (slot < 0)
+                return false;
+
+            this.index.markRemoved(slot);
+            this.count--;
+            this.tombstones++;
+            this.writeHeader(this.index);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the total size of the live records in the archive. Removed and replaced records are not counted.
+     *
+     * @return the size of the archive's live contents in bytes.
+     */
+    public long getLiveSize()
+    {
+        synchronized (this.lock)
+        {
+            long size = 0;
+            for (int i = 0; i < this.index.capacity; i++)
+            {
+                if (this.index.isLive(i))
+                    size += this.index.length(i);
+            }
+
+            return size;
+        }
+    }
+
+    /**
+     * Returns the total size of the archive's pack files, including space held by removed and replaced records.
+     *
+     * @return the size of the pack files in bytes.
+     */
+    public long getPackSize()
+    {
+        long size = 0;
+        for (File file : this.listPackFiles().values())
+        {
+            size += file.length();
+        }
+
+        return size;
+    }
+
+    /**
+     * Rewrites all live records into new pack files and deletes the old packs, reclaiming the space held by removed and
+     * replaced records. Reads and writes wait while the archive is compacted.
+     *
+     * @throws IOException if an error occurs rewriting the archive.
+     */
+    public void compact() throws IOException
+    {
+        this.packLock.writeLock().lock();
+        try
+        {
+            synchronized (this.lock)
+            {
+                this.doCompact();
+            }
+        }
+        finally
+        {
+            this.packLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the least recently used files until the archive's live contents are no larger than a specified size, then
+     * compacts the archive. This replaces the per-file modification time bookkeeping used to age loose files.
+     *
+     * @param maxSize the maximum size of the archive's contents in bytes.
+     *
+     * @return the number of files removed.
+     *
+     * @throws IOException if an error occurs rewriting the archive.
+     */
+    public int trimToSize(long maxSize) throws IOException
+    {
+        this.packLock.writeLock().lock();
+        try
+        {
+            synchronized (this.lock)
+            {
+                ArrayList<long[]> entries = new ArrayList<long[]>(this.count); // {lastUsed, slot, length}
+                long size = 0;
+                for (int i = 0; i < this.index.capacity; i++)
+                {
+                    if (this.index.isLive(i))
+                    {
+                        entries.add(new long[] {this.index.lastUsed(i), i, this.index.length(i)});
+                        size += this.index.length(i);
+                    }
+                }
+
+                Collections.sort(entries, new Comparator<long[]>()
+                {
+                    public int compare(long[] a, long[] b)
+                    {
+                        return a[0] < b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+                    }
+                });
+
+                int numRemoved = 0;
+                for (Iterator<long[]> iter = entries.iterator(); iter.hasNext() && size > maxSize; )
+                {
+                    long[] entry = iter.next();
+                    this.index.markRemoved((int) entry[1]);
+                    this.count--;
+                    this.tombstones++;
+                    size -= entry[2];
+                    numRemoved++;
+                }
+
+                this.doCompact();
+
+                return numRemoved;
+            }
+        }
+        finally
+        {
+            this.packLock.writeLock().unlock();
+        }
+    }
+
+    /** Writes the index to disk. */
+    public void flush()
+    {
+        synchronized (this.lock)
+        {
+            this.index.buffer.force();
+        }
+    }
+
+    /** Writes the index to disk and closes the archive's files. The archive cannot be used after it is closed. */
+    public void close()
+    {
+        this.packLock.writeLock().lock();
+        try
+        {
+            synchronized (this.lock)
+            {
+                this.index.buffer.force();
+                WWIO.closeStream(this.index.raf, this.index.file.getPath());
+                for (Map.Entry<Integer, FileChannel> entry : this.packChannels.entrySet())
+                {
+                    WWIO.closeStream(entry.getValue(), this.packFile(entry.getKey()).getPath());
+                }
+                this.packChannels.clear();
+            }
+        }
+        finally
+        {
+            this.packLock.writeLock().unlock();
+        }
+    }
+
+    //**************************************************************//
+    //********************  Implementation  ************************//
+    //**************************************************************//
+
+    protected void open() throws IOException
+    {
+        // Use the newest valid index. Older generations are left behind when a newer index replaces them while still
+        // mapped, which prevents their deletion on some platforms.
+        TreeMap<Integer, File> indexFiles = this.listFiles(INDEX_PREFIX, INDEX_SUFFIX);
+        for (Integer generation : indexFiles.descendingKeySet())
+        {
+            try
+            {
+                this.index = this.openIndex(indexFiles.get(generation), generation);
+                break;
+            }
+            catch (IOException e)
+            {
+                String message = Logging.getMessage("generic.ExceptionWhileReading", indexFiles.get(generation));
+                Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+            }
+        }
+
+        for (Map.Entry<Integer, File> entry : indexFiles.entrySet())
+        {
+            if (this.index == null || entry.getKey() != this.index.generation)
+                deleteFile(entry.getValue());
+        }
+
+        if (this.index == null)
+        {
+            this.index = this.createIndex(0, DEFAULT_INITIAL_CAPACITY);
+            this.count = 0;
+            this.tombstones = 0;
+            TreeMap<Integer, File> packs = this.listPackFiles();
+            this.currentPack = packs.isEmpty() ? 0 : packs.lastKey() + 1; // don't append to unindexed packs
+            this.writeHeader(this.index);
+        }
+        else
+        {
+            this.count = this.index.buffer.getInt(HEADER_COUNT);
+            this.tombstones = this.index.buffer.getInt(HEADER_TOMBSTONES);
+            this.currentPack = this.index.buffer.getInt(HEADER_CURRENT_PACK);
+        }
+    }
+
+    protected Index openIndex(File file, int generation) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            if (raf.length() < HEADER_SIZE || buffer.getInt(HEADER_MAGIC) != INDEX_MAGIC
+                || buffer.getInt(HEADER_VERSION) != VERSION)
+            {
+                throw new IOException(Logging.getMessage("generic.UnknownFileFormat", file));
+            }
+
+            int capacity = buffer.getInt(HEADER_CAPACITY);
+            if (raf.length() != HEADER_SIZE + (long) capacity * SLOT_SIZE)
+                throw new IOException(Logging.getMessage("generic.UnknownFileFormat", file));
+
+            return new Index(file, generation, raf, buffer, capacity);
+        }
+        catch (IOException e)
+        {
+            WWIO.closeStream(raf, file.getPath());
+            throw e;
+        }
+    }
+
+    protected Index createIndex(int generation, int capacity) throws IOException
+    {
+        File file = new File(this.directory, INDEX_PREFIX + generation + INDEX_SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            long length = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+            raf.setLength(0);
+            raf.setLength(length); // zero filled, so every slot is empty
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putInt(HEADER_MAGIC, INDEX_MAGIC);
+            buffer.putInt(HEADER_VERSION, VERSION);
+            buffer.putInt(HEADER_CAPACITY, capacity);
+
+            return new Index(file, generation, raf, buffer, capacity);
+        }
+        catch (IOException e)
+        {
+            WWIO.closeStream(raf, file.getPath());
+            throw e;
+        }
+    }
+
+    protected void writeHeader(Index index) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        index.buffer.putInt(HEADER_COUNT, this.count);
+        index.buffer.putInt(HEADER_TOMBSTONES, this.tombstones);
+        index.buffer.putInt(HEADER_CURRENT_PACK, this.currentPack);
+    }
+
+    protected void append(long hash, ByteBuffer record, int dataLength, int lastUsed, int modified)
+        throws IOException // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        int slot = this.index.find(hash);
+        if (slot >= 0)
+        {
+            this.index.markRemoved(slot);
+            this.count--;
+            this.tombstones++;
+        }
+
+        if (this.count + this.tombstones + 1 > this.index.capacity * MAX_LOAD_FACTOR)
+            this.rehash();
+
+        FileChannel channel = this.getPackChannel(this.currentPack);
+        if (channel.size() > 0 && channel.size() + record.remaining() > this.maxPackSize)
+        {
+            this.currentPack++;
+            channel = this.getPackChannel(this.currentPack);
+        }
+
+        long offset = channel.size();
+        writeFully(channel, record, offset);
+
+        if (this.index.insert(hash, this.currentPack, offset, dataLength, lastUsed, modified))
+            this.tombstones--;
+        this.count++;
+        this.writeHeader(this.index);
+    }
+
+    protected void rehash() throws IOException // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        int capacity = this.index.capacity;
+        while ((this.count + 1) > capacity * MAX_LOAD_FACTOR / 2)
+        {
+            capacity *= 2;
+        }
+
+        Index newIndex = this.createIndex(this.index.generation + 1, capacity);
+        for (int i = 0; i < this.index.capacity; i++)
+        {
+            if (this.index.isLive(i))
+            {
+                newIndex.insert(this.index.hash(i), this.index.pack(i), this.index.offset(i), this.index.length(i),
+                    this.index.lastUsed(i), this.index.modified(i));
+            }
+        }
+
+        this.replaceIndex(newIndex, 0);
+    }
+
+    protected void replaceIndex(Index newIndex, int newTombstones) // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        this.tombstones = newTombstones;
+        this.writeHeader(newIndex);
+        newIndex.buffer.force();
+
+        Index oldIndex = this.index;
+        this.index = newIndex;
+        WWIO.closeStream(oldIndex.raf, oldIndex.file.getPath());
+        deleteFile(oldIndex.file);
+    }
+
+    protected void doCompact() throws IOException // MUST BE CALLED WITHIN SYNCHRONIZED AND PACK WRITE LOCK
+    {
+        TreeMap<Integer, File> oldPacks = this.listPackFiles();
+        int firstPack = (oldPacks.isEmpty() ? this.currentPack : Math.max(oldPacks.lastKey(), this.currentPack)) + 1;
+
+        int capacity = DEFAULT_INITIAL_CAPACITY;
+        while (this.count + 1 > capacity * MAX_LOAD_FACTOR / 2)
+        {
+            capacity *= 2;
+        }
+
+        Index newIndex = this.createIndex(this.index.generation + 1, capacity);
+        int pack = firstPack;
+        FileChannel out = this.getPackChannel(pack);
+
+        for (int i = 0; i < this.index.capacity; i++)
+        {
+            if (!this.index.isLive(i))
+                continue;
+
+            int length = this.index.length(i);
+            long offset = this.index.offset(i);
+            FileChannel in = this.getPackChannel(this.index.pack(i));
+
+            // The record's path length precedes the path, so read it to find the size of the whole record.
+            ByteBuffer header = ByteBuffer.allocate(8);
+            readFully(in, header, offset);
+            int pathLength = header.getInt(4);
+            ByteBuffer record = ByteBuffer.allocate(recordSize(pathLength, length));
+            readFully(in, record, offset);
+            record.flip();
+
+            if (out.size() > 0 && out.size() + record.remaining() > this.maxPackSize)
+                out = this.getPackChannel(++pack);
+
+            long newOffset = out.size();
+            writeFully(out, record, newOffset);
+            newIndex.insert(this.index.hash(i), pack, newOffset, length, this.index.lastUsed(i),
+                this.index.modified(i));
+        }
+
+        out.force(false);
+        this.currentPack = pack;
+        this.replaceIndex(newIndex, 0);
+
+        for (Map.Entry<Integer, File> entry : oldPacks.entrySet())
+        {
+            FileChannel channel = this.packChannels.remove(entry.getKey());
+            if (channel != null)
+                WWIO.closeStream(channel, entry.getValue().getPath());
+            deleteFile(entry.getValue());
+        }
+    }
+
+    protected FileChannel getPackChannel(int pack) throws IOException // MUST BE CALLED WITHIN SYNCHRONIZED
+    {
+        FileChannel channel = this.packChannels.get(pack);
+        if (channel == null)
+        {
+            channel = new RandomAccessFile(this.packFile(pack), "rw").getChannel();
+            this.packChannels.put(pack, channel);
+        }
+
+        return channel;
+    }
+
+    protected File packFile(int pack)
+    {
+        return new File(this.directory, PACK_PREFIX + pack + PACK_SUFFIX);
+    }
+
+    protected TreeMap<Integer, File> listPackFiles()
+    {
+        return this.listFiles(PACK_PREFIX, PACK_SUFFIX);
+    }
+
+    protected TreeMap<Integer, File> listFiles(String prefix, String suffix)
+    {
+        TreeMap<Integer, File> files = new TreeMap<Integer, File>();
+
+        File[] children = this.directory.listFiles();
+        if (children == null)
+            return files;
+
+        for (File file : children)
+        {
+            String name = file.getName();
+            if (!name.startsWith(prefix) || !name.endsWith(suffix))
+                continue;
+
+            Integer number = WWUtil.convertStringToInteger(
+                name.substring(prefix.length(), name.length() - suffix.length()));
+            if (number != null)
+                files.put(number, file);
+        }
+
+        return files;
+    }
+
+    protected static ByteBuffer makeRecord(byte[] pathBytes, ByteBuffer data)
+    {
+        ByteBuffer record = ByteBuffer.allocate(recordSize(pathBytes.length, data.remaining()));
+        record.putInt(RECORD_MAGIC);
+        record.putInt(pathBytes.length);
+        record.put(pathBytes);
+        record.putInt(data.remaining());
+        record.put(data.duplicate());
+        record.flip();
+
+        return record;
+    }
+
+    protected static boolean matchesRecord(ByteBuffer record, byte[] pathBytes, int length)
+    {
+        if (record.getInt() != RECORD_MAGIC || record.getInt() != pathBytes.length)
+            return false;
+
+        for (byte b : pathBytes)
+        {
+            if (record.get() != b)
+                return false;
+        }
+
+        return record.getInt() == length;
+    }
+
+    protected static int recordSize(int pathLength, int dataLength)
+    {
+        return 12 + pathLength + dataLength;
+    }
+
+    protected static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int n = channel.read(buffer, position);
+            if (n < 0)
+                throw new EOFException();
+            position += n;
+        }
+    }
+
+    protected static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of a path. Zero marks empty index slots, so a zero hash is remapped.
+     *
+     * @param path the path to hash.
+     *
+     * @return the path's hash, never zero.
+     */
+    protected static long hashPath(String path)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++)
+        {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash != 0 ? hash : 1;
+    }
+
+    /** @return the current time in minutes since the epoch, the resolution of last-used times. */
+    protected static int currentTime()
+    {
+        return (int) (System.currentTimeMillis() / 60000L);
+    }
+
+    /**
+     * Converts a time to the resolution of modification times. The time is rounded up, so a file is never considered
+     * older than it is.
+     *
+     * @param time the time in milliseconds since the epoch.
+     *
+     * @return the time in seconds since the epoch, as an unsigned integer.
+     */
+    protected static int toSeconds(long time)
+    {
+        return (int) Math.min((Math.max(time, 0) + 999L) / 1000L, 0xFFFFFFFFL);
+    }
+
+    @SuppressWarnings({"ResultOfMethodCallIgnored"})
+    protected static void deleteFile(File file)
+    {
+        // Deleting a file that's still memory mapped fails on some platforms. It's deleted the next time the archive is
+        // opened.
+        file.delete();
+    }
+}
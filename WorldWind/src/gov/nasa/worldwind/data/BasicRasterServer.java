@@ -11,14 +11,18 @@ import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.formats.dds.DDSCompressor;
+import gov.nasa.worldwind.formats.shapefile.ShapefileSpatialIndex;
 import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.util.*;
 import org.w3c.dom.*;
 
 import javax.xml.xpath.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.*;
 
 /**
  * @author Lado Garakanidze
@@ -36,12 +40,20 @@ public class BasicRasterServer extends WWObjectImpl implements RasterServer
     protected final String XPATH_RASTER_SERVER_SOURCE = XPATH_RASTER_SERVER + "/Sources/Source";
     protected final String XPATH_RASTER_SERVER_SOURCE_SECTOR = XPATH_RASTER_SERVER_SOURCE + "/Sector";
 
+    /** The minimum number of rows of the requested raster drawn by each task during parallel composition. */
+    protected static final int MIN_ROWS_PER_TASK = 32;
+
     protected java.util.List<DataRaster> dataRasterList = new java.util.ArrayList<DataRaster>();
+    /** An R-tree over the sectors of the data rasters, built when first needed. */
+    protected ShapefileSpatialIndex dataRasterIndex;
 
     protected DataRasterReaderFactory readerFactory;
 
     protected static final MemoryCache cache = new BasicRasterServerCache();
 
+    /** The thread pool shared by all BasicRasterServers for parallel composition. Created when first needed. */
+    protected static ExecutorService compositionService;
+
     /**
      * BasicRasterServer constructor reads a list of data raster sources from *.RasterServer.xml (the file that
      * accompanies layer description XML file), reads sector of each source and maintains a list of data sources, their
@@ -510,27 +522,15 @@ public class BasicRasterServer extends WWObjectImpl implements RasterServer
                 throw new WWRuntimeException(msg);
             }
 
-            int numIntersectedRasters = 0;
-            for (DataRaster raster : this.dataRasterList)
-            {
-                Sector rasterSector = raster.getSector();
-                Sector overlap = reqSector.intersection(rasterSector);
-                // SKIP, if not intersection, or intersects only on edges
-                if (null == overlap || overlap.getDeltaLatDegrees() == 0d || overlap.getDeltaLonDegrees() == 0d)
-                {
-                    continue;
-                }
-
-                raster.drawOnTo(reqRaster);
-                numIntersectedRasters++;
-            }
-
-            if (numIntersectedRasters == 0)
+            java.util.List<DataRaster> intersectedRasters = this.selectDataRasters(reqSector);
+            if (intersectedRasters.isEmpty())
             {
                 String message = Logging.getMessage("generic.SectorRequestedOutsideCoverageArea", reqSector, "");
                 Logging.logger().finest(message);
                 throw new WWRuntimeException(message);
             }
+
+            this.drawDataRasters(intersectedRasters, reqRaster);
         }
         catch (WWRuntimeException wwe)
         {
@@ -547,6 +547,199 @@ public class BasicRasterServer extends WWObjectImpl implements RasterServer
         return reqRaster;
     }
 
+    /**
+     * Returns the data rasters that overlap a sector by more than an edge, in the order they were listed in the
+     * RasterServer configuration, which is the order they are drawn in.
+     *
+     * @param sector the sector of interest.
+     *
+     * @return the data rasters overlapping the sector.
+     */
+    protected java.util.List<DataRaster> selectDataRasters(Sector sector)
+    {
+        java.util.List<DataRaster> rasters = new ArrayList<DataRaster>();
+
+        // The index returns the rasters whose sectors, rounded outward to single precision, intersect the sector, in
+        // ascending order.
+        for (int i : this.getDataRasterIndex().select(sector))
+        {
+            DataRaster raster = this.dataRasterList.get(i);
+            Sector overlap = sector.intersection(raster.getSector());
+            // SKIP, if not intersection, or intersects only on edges
+            if (null == overlap || overlap.getDeltaLatDegrees() == 0d || overlap.getDeltaLonDegrees() == 0d)
+            {
+                continue;
+            }
+
+            rasters.add(raster);
+        }
+
+        return rasters;
+    }
+
+    protected synchronized ShapefileSpatialIndex getDataRasterIndex()
+    {
+        if (this.dataRasterIndex == null || this.dataRasterIndex.getNumberOfRecords() != this.dataRasterList.size())
+        {
+            double[] bounds = new double[4 * this.dataRasterList.size()];
+            for (int i = 0; i < this.dataRasterList.size(); i++)
+            {
+                Sector sector = this.dataRasterList.get(i).getSector();
+                bounds[4 * i] = sector.getMinLatitude().degrees;
+                bounds[4 * i + 1] = sector.getMaxLatitude().degrees;
+                bounds[4 * i + 2] = sector.getMinLongitude().degrees;
+                bounds[4 * i + 3] = sector.getMaxLongitude().degrees;
+            }
+
+            this.dataRasterIndex = ShapefileSpatialIndex.build(bounds, 0L, 0L);
+        }
+
+        return this.dataRasterIndex;
+    }
+
+    /**
+     * Draws data rasters onto the requested raster. Large requests are divided into bands of rows that share the
+     * requested raster's storage, and the bands are drawn in parallel, each band drawing every data raster in order.
+     *
+     * @param rasters   the data rasters to draw.
+     * @param reqRaster the requested raster.
+     */
+    protected void drawDataRasters(java.util.List<DataRaster> rasters, DataRaster reqRaster)
+    {
+        int numThreads = getCompositionThreadCount();
+        int numBands = Math.min(numThreads, reqRaster.getHeight() / MIN_ROWS_PER_TASK);
+        if (numBands < 2 || !(reqRaster instanceof BufferedImageRaster || reqRaster instanceof ByteBufferRaster))
+        {
+            for (DataRaster raster : rasters)
+            {
+                raster.drawOnTo(reqRaster);
+            }
+            return;
+        }
+
+        java.util.List<Future<?>> futures = new ArrayList<Future<?>>();
+        try
+        {
+            int height = reqRaster.getHeight();
+            for (int band = 0; band < numBands; band++)
+            {
+                int y0 = band * height / numBands;
+                int y1 = (band + 1) * height / numBands;
+                futures.add(getCompositionService().submit(
+                    this.createDrawTask(rasters, this.createRasterBand(reqRaster, y0, y1 - y0))));
+            }
+
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (Exception e)
+        {
+            for (Future<?> future : futures)
+            {
+                future.cancel(true);
+            }
+
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+
+            String message = Logging.getMessage("generic.CannotCreateRaster", WWUtil.extractExceptionReason(
+                e instanceof ExecutionException ? e.getCause() : e));
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
+        }
+    }
+
+    protected Runnable createDrawTask(final java.util.List<DataRaster> rasters, final DataRaster band)
+    {
+        return new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    for (DataRaster raster : rasters)
+                    {
+                        raster.drawOnTo(band);
+                    }
+                }
+                finally
+                {
+                    // Release the band's graphics context, if any. The band's storage belongs to the requested
+                    // raster, which is not affected.
+                    if (band instanceof BufferedImageRaster)
+                        ((BufferedImageRaster) band).getGraphics().dispose();
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a raster covering a band of rows of the requested raster and sharing its storage, so that drawing onto
+     * the band draws onto the requested raster.
+     *
+     * @param raster the requested raster, either a BufferedImageRaster or a ByteBufferRaster.
+     * @param y      the first row of the band.
+     * @param height the number of rows in the band.
+     *
+     * @return a raster covering the band.
+     */
+    protected DataRaster createRasterBand(DataRaster raster, int y, int height)
+    {
+        Sector sector = raster.getSector();
+        double maxLat = sector.getMaxLatitude().degrees;
+
+        if (raster instanceof BufferedImageRaster)
+        {
+            // Image pixels are areas, so the band covers rows y through y + height.
+            double rowDelta = sector.getDeltaLatDegrees() / raster.getHeight();
+            Sector bandSector = Sector.fromDegrees(maxLat - (y + height) * rowDelta, maxLat - y * rowDelta,
+                sector.getMinLongitude().degrees, sector.getMaxLongitude().degrees);
+            BufferedImage image = ((BufferedImageRaster) raster).getBufferedImage();
+            return new BufferedImageRaster(bandSector, image.getSubimage(0, y, raster.getWidth(), height));
+        }
+        else
+        {
+            // Elevations are samples at points, so the band's first and last rows lie on its edges.
+            double rowDelta = sector.getDeltaLatDegrees() / (raster.getHeight() - 1);
+            Sector bandSector = Sector.fromDegrees(maxLat - (y + height - 1) * rowDelta, maxLat - y * rowDelta,
+                sector.getMinLongitude().degrees, sector.getMaxLongitude().degrees);
+
+            ByteBuffer buffer = ((ByteBufferRaster) raster).getByteBuffer().duplicate();
+            int rowLength = buffer.capacity() / raster.getHeight();
+            buffer.limit((y + height) * rowLength).position(y * rowLength);
+
+            AVList params = raster.copy();
+            params.setValue(AVKey.SECTOR, bandSector);
+            params.setValue(AVKey.HEIGHT, height);
+            return new ByteBufferRaster(raster.getWidth(), height, bandSector, buffer.slice(), params);
+        }
+    }
+
+    protected static int getCompositionThreadCount()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    protected static synchronized ExecutorService getCompositionService()
+    {
+        if (compositionService == null)
+        {
+            compositionService = Executors.newFixedThreadPool(getCompositionThreadCount(), new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "Raster Server Composition");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return compositionService;
+    }
+
     /**
      * Composes a DataRaster of the given width and height for the specific geographic region of interest (ROI), in the
      * requested file format (AVKey.IMAGE_FORMAT) and returns as a ByteBuffer
@@ -14,6 +14,7 @@ import gov.nasa.worldwind.util.*;
 
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 
 /**
@@ -38,8 +39,12 @@ public class CachedDataRaster extends AVListImpl implements DataRaster
     protected MemoryCache rasterCache = null;
     protected MemoryCache.CacheListener cacheListener = null;
 
-    protected final Object rasterUsageLock = new Object();
-    protected final Object rasterRetrievalLock = new Object();
+    /**
+     * The reads in progress, keyed by data source. A thread needing a source that another thread is reading waits for
+     * that read rather than reading the source again, even if the two threads use different CachedDataRasters.
+     */
+    protected static final ConcurrentHashMap<Object, FutureTask<DataRaster[]>> pendingReads
+        = new ConcurrentHashMap<Object, FutureTask<DataRaster[]>>();
 
     protected String[] requiredKeys = new String[] {AVKey.WIDTH, AVKey.HEIGHT, AVKey.SECTOR, AVKey.PIXEL_FORMAT};
 
@@ -212,139 +217,211 @@ public class CachedDataRaster extends AVListImpl implements DataRaster
 
     protected DataRaster[] getDataRasters() throws IOException, WWRuntimeException
     {
-        synchronized (this.rasterRetrievalLock)
-        {
-            DataRaster[] rasters = (this.rasterCache != null)
-                ? (DataRaster[]) this.rasterCache.getObject(this.dataSource) : null;
+        DataRaster[] rasters = (this.rasterCache != null)
+            ? (DataRaster[]) this.rasterCache.getObject(this.dataSource) : null;
 
-            if (null != rasters)
-                return rasters;
+        if (null != rasters)
+            return rasters;
 
-            // prevent an attempt to re-read rasters which failed to load
-            if (this.rasterCache == null || !this.rasterCache.contains(this.dataSource))
+        FutureTask<DataRaster[]> read = new FutureTask<DataRaster[]>(new Callable<DataRaster[]>()
+        {
+            public DataRaster[] call() throws Exception
             {
-                long memoryDelta = 0L;
+                return readDataRasters();
+            }
+        });
 
-                try
-                {
-                    AVList rasterParams = this.copy();
+        FutureTask<DataRaster[]> pendingRead = pendingReads.putIfAbsent(this.dataSource, read);
+        if (null == pendingRead)
+        {
+            pendingRead = read;
+            try
+            {
+                read.run();
+            }
+            finally
+            {
+                pendingReads.remove(this.dataSource, read);
+            }
+        }
 
-                    try
-                    {
-                        long before = getTotalUsedMemory();
-                        rasters = this.dataReader.read(this.getDataSource(), rasterParams);
-                        memoryDelta = getTotalUsedMemory() - before;
-                    }
-                    catch (OutOfMemoryError e)
-                    {
-                        Logging.logger().finest(this.composeExceptionReason(e));
-                        this.releaseMemory();
-                        // let's retry after the finalization and GC
+        try
+        {
+            return pendingRead.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof WWRuntimeException)
+                throw (WWRuntimeException) e.getCause();
 
-                        long before = getTotalUsedMemory();
-                        rasters = this.dataReader.read(this.getDataSource(), rasterParams);
-                        memoryDelta = getTotalUsedMemory() - before;
-                    }
-                }
-                catch (Throwable t)
+            String message = Logging.getMessage("DataRaster.CannotRead", this.composeExceptionReason(e.getCause()));
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            String message = Logging.getMessage("DataRaster.CannotRead", this.composeExceptionReason(e));
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
+        }
+    }
+
+    protected DataRaster[] readDataRasters() throws WWRuntimeException
+    {
+        DataRaster[] rasters = (this.rasterCache != null)
+            ? (DataRaster[]) this.rasterCache.getObject(this.dataSource) : null;
+
+        if (null != rasters)
+            return rasters;
+
+        // prevent an attempt to re-read rasters which failed to load
+        if (this.rasterCache == null || !this.rasterCache.contains(this.dataSource))
+        {
+            long memoryDelta = 0L;
+
+            try
+            {
+                AVList rasterParams = this.copy();
+
+                try
                 {
-                    disposeRasters(rasters); // cleanup in case of exception
-                    rasters = null;
-                    String message = Logging.getMessage("DataRaster.CannotRead", this.composeExceptionReason(t));
-                    Logging.logger().severe(message);
-                    throw new WWRuntimeException(message);
+                    long before = getTotalUsedMemory();
+                    rasters = this.dataReader.read(this.getDataSource(), rasterParams);
+                    memoryDelta = getTotalUsedMemory() - before;
                 }
-                finally
+                catch (OutOfMemoryError e)
                 {
-                    // Add rasters to the cache, even if "rasters" is null to prevent multiple failed reads.
-                    if (this.rasterCache != null)
-                    {
-                        long totalBytes = getSizeInBytes(rasters);
-                        totalBytes = (memoryDelta > totalBytes) ? memoryDelta : totalBytes;
-                        if (totalBytes > 0L)
-                            this.rasterCache.add(this.dataSource, rasters, totalBytes);
-                    }
+                    Logging.logger().finest(this.composeExceptionReason(e));
+                    this.releaseMemory();
+                    // let's retry after the finalization and GC
+
+                    long before = getTotalUsedMemory();
+                    rasters = this.dataReader.read(this.getDataSource(), rasterParams);
+                    memoryDelta = getTotalUsedMemory() - before;
                 }
             }
-
-            if (null == rasters || rasters.length == 0)
+            catch (Throwable t)
             {
-                String message = Logging.getMessage("generic.CannotCreateRaster", this.getDataSource());
+                disposeRasters(rasters); // cleanup in case of exception
+                rasters = null;
+                String message = Logging.getMessage("DataRaster.CannotRead", this.composeExceptionReason(t));
                 Logging.logger().severe(message);
                 throw new WWRuntimeException(message);
             }
+            finally
+            {
+                // Add rasters to the cache, even if "rasters" is null to prevent multiple failed reads.
+                if (this.rasterCache != null)
+                {
+                    long totalBytes = getSizeInBytes(rasters);
+                    totalBytes = (memoryDelta > totalBytes) ? memoryDelta : totalBytes;
+                    if (totalBytes > 0L)
+                        this.rasterCache.add(this.dataSource, rasters, totalBytes);
+                }
+            }
+        }
 
-            return rasters;
+        if (null == rasters || rasters.length == 0)
+        {
+            String message = Logging.getMessage("generic.CannotCreateRaster", this.getDataSource());
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
         }
+
+        return rasters;
     }
 
     public void drawOnTo(DataRaster canvas)
     {
-        synchronized (this.rasterUsageLock)
+        try
         {
+            DataRaster[] rasters;
             try
             {
-                DataRaster[] rasters;
-                try
+                rasters = this.getDataRasters();
+                for (DataRaster raster : rasters)
                 {
-                    rasters = this.getDataRasters();
-                    for (DataRaster raster : rasters)
-                    {
-                        raster.drawOnTo(canvas);
-                    }
+                    this.drawRaster(raster, canvas);
                 }
-                catch (OutOfMemoryError e)
-                {
-                    Logging.logger().finest(this.composeExceptionReason(e));
-                    this.releaseMemory();
+            }
+            catch (OutOfMemoryError e)
+            {
+                Logging.logger().finest(this.composeExceptionReason(e));
+                this.releaseMemory();
 
-                    rasters = this.getDataRasters();
-                    for (DataRaster raster : rasters)
-                    {
-                        raster.drawOnTo(canvas);
-                    }
+                rasters = this.getDataRasters();
+                for (DataRaster raster : rasters)
+                {
+                    this.drawRaster(raster, canvas);
                 }
             }
-            catch (Throwable t)
+        }
+        catch (Throwable t)
+        {
+            String reason = this.composeExceptionReason(t);
+            Logging.logger().log(Level.SEVERE, reason, t);
+        }
+    }
+
+    /**
+     * Draws one of the loaded rasters onto a canvas. Images are only read while drawing, so any number of threads may
+     * draw the same image at once. Other rasters read their data through a buffer position that drawing changes, so
+     * only one thread at a time uses each of them.
+     *
+     * @param raster the loaded raster.
+     * @param canvas the raster to draw onto.
+     */
+    protected void drawRaster(DataRaster raster, DataRaster canvas)
+    {
+        if (raster instanceof BufferedImageRaster)
+        {
+            raster.drawOnTo(canvas);
+        }
+        else
+        {
+            synchronized (raster)
             {
-                String reason = this.composeExceptionReason(t);
-                Logging.logger().log(Level.SEVERE, reason, t);
+                raster.drawOnTo(canvas);
             }
         }
     }
 
     public DataRaster getSubRaster(AVList params)
     {
-        synchronized (this.rasterUsageLock)
+        try
         {
+            DataRaster[] rasters;
             try
             {
-                DataRaster[] rasters;
-                try
+                rasters = this.getDataRasters();
+                synchronized (rasters[0])
                 {
-                    rasters = this.getDataRasters();
                     return rasters[0].getSubRaster(params);
                 }
-                catch (OutOfMemoryError e)
-                {
-                    Logging.logger().finest(this.composeExceptionReason(e));
-                    this.releaseMemory();
+            }
+            catch (OutOfMemoryError e)
+            {
+                Logging.logger().finest(this.composeExceptionReason(e));
+                this.releaseMemory();
 
-                    // let's retry after the finalization and GC
-                    rasters = this.getDataRasters();
+                // let's retry after the finalization and GC
+                rasters = this.getDataRasters();
+                synchronized (rasters[0])
+                {
                     return rasters[0].getSubRaster(params);
                 }
             }
-            catch (Throwable t)
-            {
-                String reason = this.composeExceptionReason(t);
-                Logging.logger().log(Level.SEVERE, reason, t);
-            }
-
-            String message = Logging.getMessage("generic.CannotCreateRaster", this.getDataSource());
-            Logging.logger().severe(message);
-            throw new WWRuntimeException(message);
         }
+        catch (Throwable t)
+        {
+            String reason = this.composeExceptionReason(t);
+            Logging.logger().log(Level.SEVERE, reason, t);
+        }
+
+        String message = Logging.getMessage("generic.CannotCreateRaster", this.getDataSource());
+        Logging.logger().severe(message);
+        throw new WWRuntimeException(message);
     }
 
     public DataRaster getSubRaster(int width, int height, Sector sector, AVList params)
@@ -81,6 +81,17 @@ public class GeotiffRasterReader extends AbstractDataRasterReader
             reader = new GeotiffReader(path);
             reader.copyMetadataTo(metadata);
 
+            // Tiled images in geographic coordinates are read a window at a time, as they are drawn, so that images
+            // larger than memory can be read. The raster owns the reader from here on.
+            if (reader.isTiled(0) && metadata.getValue(AVKey.COORDINATE_SYSTEM) == AVKey.COORDINATE_SYSTEM_GEOGRAPHIC
+                && metadata.getValue(AVKey.SECTOR) instanceof Sector)
+            {
+                DataRaster raster = new WindowedGeotiffRaster(reader.getWidth(0), reader.getHeight(0),
+                    (Sector) metadata.getValue(AVKey.SECTOR), reader, metadata);
+                reader = null;
+                return new DataRaster[] {raster};
+            }
+
             rasters = reader.readDataRaster();
 
             if (null != rasters)
@@ -25,6 +25,8 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     private static final long DEFAULT_TILED_RASTER_PRODUCER_CACHE_SIZE = 300000000L; // ~300 megabytes
     private static final int DEFAULT_TILED_RASTER_PRODUCER_LARGE_DATASET_THRESHOLD = 3000; // 3000 pixels
     private static final int DEFAULT_WRITE_THREAD_POOL_SIZE = 2;
+    private static final int DEFAULT_BUILD_THREAD_POOL_SIZE = 1; // Build tile rasters on the calling thread only.
+    private static final int DEFAULT_MAX_IN_FLIGHT_RASTERS = 256;
     private static final int DEFAULT_TILE_WIDTH_AND_HEIGHT = 512;
     private static final int DEFAULT_SINGLE_LEVEL_TILE_WIDTH_AND_HEIGHT = 512;
     private static final double DEFAULT_LEVEL_ZERO_TILE_DELTA = 36d;
@@ -37,7 +39,12 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     private final java.util.concurrent.ExecutorService tileWriteService;
     private final java.util.concurrent.Semaphore tileWriteSemaphore;
     private final Object fileLock = new Object();
+    // Parallel production helper objects. These are null unless tile rasters are built by more than one thread.
+    private java.util.concurrent.ExecutorService tileBuildService;
+    private java.util.concurrent.Semaphore tileBuildSemaphore;
+    private java.util.concurrent.Semaphore rasterBudgetSemaphore;
     // Progress counters.
+    private final Object progressLock = new Object();
     private int tile;
     private int tileCount;
 
@@ -186,8 +193,16 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         // Initialize the level set parameters, and create the level set.
         this.initLevelSetParameters(this.productionParams);
         LevelSet levelSet = new LevelSet(this.productionParams);
-        // Install the each tiles of the LevelSet.
-        this.installLevelSet(levelSet, this.productionParams);
+        // Install the each tiles of the LevelSet, using the tile build threads if production is parallel.
+        this.startTileBuildService(this.productionParams);
+        try
+        {
+            this.installLevelSet(levelSet, this.productionParams);
+        }
+        finally
+        {
+            this.waitForTileBuildTasks();
+        }
 
         // Wait for concurrent tasks to complete.
         this.waitForInstallTileTasks();
@@ -468,7 +483,8 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     {
         long cacheSize = Configuration.getLongValue(AVKey.TILED_RASTER_PRODUCER_CACHE_SIZE,
             DEFAULT_TILED_RASTER_PRODUCER_CACHE_SIZE);
-        return new BasicMemoryCache((long) (0.8 * cacheSize), cacheSize);
+        return BasicMemoryCacheSet.newMemoryCache(TiledRasterProducer.class.getName(), (long) (0.8 * cacheSize),
+            cacheSize);
     }
 
     //**************************************************************//
@@ -497,6 +513,10 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         int lastRow = Tile.computeRow(dLat, sector.getMaxLatitude(), latOrigin);
         int lastCol = Tile.computeColumn(dLon, sector.getMaxLongitude(), lonOrigin);
 
+        // Top-level tiles handed to the tile build threads.
+        java.util.List<java.util.concurrent.Future<?>> tasks =
+            new java.util.ArrayList<java.util.concurrent.Future<?>>();
+
         buildLoop:
         {
             Angle p1 = Tile.computeRowLatitude(firstRow, dLat, latOrigin);
@@ -514,16 +534,31 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
                     Angle t2 = t1.add(dLon);
 
                     Tile tile = new Tile(new Sector(p1, p2, t1, t2), level, row, col);
-                    DataRaster tileRaster = this.createTileRaster(levelSet, tile, params);
-                    // Write the top-level tile raster to disk.
-                    if (tileRaster != null)
-                        this.installTileRasterLater(levelSet, tile, tileRaster, params);
+                    // Create and write the top-level tile raster on a tile build thread if one is available.
+                    java.util.concurrent.Future<?> task = this.createTileRasterLater(levelSet, tile, params, true);
+                    if (task != null)
+                    {
+                        tasks.add(task);
+                    }
+                    else
+                    {
+                        DataRaster tileRaster = this.createTileRaster(levelSet, tile, params);
+                        // Write the top-level tile raster to disk.
+                        if (tileRaster != null)
+                            this.installTileRasterLater(levelSet, tile, tileRaster, params);
+                    }
 
                     t1 = t2;
                 }
                 p1 = p2;
             }
         }
+
+        // Wait for the top-level tiles built on other threads, and report their failures.
+        for (java.util.concurrent.Future<?> task : tasks)
+        {
+            this.joinTileRaster(task);
+        }
     }
 
     protected DataRaster createTileRaster(LevelSet levelSet, Tile tile, AVList params) throws java.io.IOException
@@ -570,10 +605,15 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
             // Create the tile raster to render into.
             tileRaster = this.createDataRaster(tile.getLevel().getTileWidth(), tile.getLevel().getTileHeight(),
                 tile.getSector(), params);
-            // Render each data source raster into the tile raster.
+            // Render each data source raster into the tile raster. Drawing a raster may change the position of its
+            // buffer, so a data source raster is drawn by one tile build thread at a time.
             for (DataRaster raster : intersectingRasters)
             {
-                raster.drawOnTo(tileRaster);
+                //noinspection SynchronizationOnLocalVariableOrMethodParameter
+                synchronized (raster)
+                {
+                    raster.drawOnTo(tileRaster);
+                }
             }
         }
 
@@ -590,24 +630,29 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         DataRaster tileRaster = null;
         boolean hasDescendants = false;
 
-        // Recursively create sub-tile rasters.
+        // Recursively create sub-tile rasters. Sub-tiles handed to the tile build threads are created concurrently
+        // with the sub-tiles created on this thread.
         Tile[] subTiles = this.createSubTiles(tile, levelSet.getLevel(tile.getLevelNumber() + 1));
+        java.util.concurrent.Future<?>[] subTasks = this.createSubTileRastersLater(levelSet, subTiles, params);
         DataRaster[] subRasters = new DataRaster[subTiles.length];
         for (int index = 0; index < subTiles.length; index++)
         {
             // If the sub-tile does not intersect the level set, then skip that sub-tile.
-            if (subTiles[index].getSector().intersects(levelSet.getSector()))
+            if (subTasks[index] == null && subTiles[index].getSector().intersects(levelSet.getSector()))
             {
                 // Recursively create the sub-tile raster.
-                DataRaster subRaster = this.createTileRaster(levelSet, subTiles[index], params);
-                // If creating the sub-tile raster fails, then skip that sub-tile.
-                if (subRaster != null)
-                {
-                    subRasters[index] = subRaster;
-                    hasDescendants = true;
-                }
+                subRasters[index] = this.createTileRaster(levelSet, subTiles[index], params);
             }
         }
+        for (int index = 0; index < subTiles.length; index++)
+        {
+            if (subTasks[index] != null)
+                subRasters[index] = this.joinTileRaster(subTasks[index]);
+
+            // If creating the sub-tile raster fails, then skip that sub-tile.
+            if (subRasters[index] != null)
+                hasDescendants = true;
+        }
 
         // Exit if the caller has instructed us to stop production.
         if (this.isStopped())
@@ -641,11 +686,14 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         for (int index = 0; index < subTiles.length; index++)
         {
             subTiles[index] = null;
+            subTasks[index] = null;
             subRasters[index] = null;
         }
         //noinspection UnusedAssignment
         subTiles = null;
         //noinspection UnusedAssignment
+        subTasks = null;
+        //noinspection UnusedAssignment
         subRasters = null;
 
         return tileRaster;
@@ -758,6 +806,239 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         return maxNumOfLevels;
     }
 
+    //**************************************************************//
+    //********************  Parallel Production  *******************//
+    //**************************************************************//
+
+    /**
+     * Starts the threads that build tile rasters in parallel, if the production parameters or the World Wind
+     * configuration ask for more than one tile build thread. The thread count is specified by {@link
+     * AVKey#TILED_RASTER_PRODUCER_BUILD_THREAD_POOL_SIZE}, and includes the thread that calls {@link
+     * #startProduction()}. A value of 1, the default, builds the tile rasters on the calling thread only.
+     * <p/>
+     * In parallel production, a tile's subtree is handed to an idle build thread only when the in-flight raster budget,
+     * specified by {@link AVKey#TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS}, can hold every raster the subtree needs
+     * at once. Otherwise the subtree is built depth-first on the current thread, just as in sequential production. The
+     * budget therefore bounds the tile rasters held by the build threads beyond those held by the calling thread and
+     * those waiting to be written. Each tile's raster depends only on the data sources and on its sub-tile rasters,
+     * which are always drawn in the same order, so parallel production writes the same tiles as sequential
+     * production.
+     *
+     * @param params the production parameters.
+     */
+    protected void startTileBuildService(AVList params)
+    {
+        Integer poolSize = AVListImpl.getIntegerValue(params, AVKey.TILED_RASTER_PRODUCER_BUILD_THREAD_POOL_SIZE,
+            Configuration.getIntegerValue(AVKey.TILED_RASTER_PRODUCER_BUILD_THREAD_POOL_SIZE,
+                DEFAULT_BUILD_THREAD_POOL_SIZE));
+        if (poolSize == null || poolSize <= 1)
+            return;
+
+        Integer budget = AVListImpl.getIntegerValue(params, AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS,
+            Configuration.getIntegerValue(AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS,
+                DEFAULT_MAX_IN_FLIGHT_RASTERS));
+
+        // The calling thread is one of the build threads.
+        this.tileBuildService = this.createDefaultTileBuildService(poolSize - 1);
+        this.tileBuildSemaphore = new java.util.concurrent.Semaphore(poolSize - 1);
+        this.rasterBudgetSemaphore = new java.util.concurrent.Semaphore(budget != null ? Math.max(budget, 0) : 0);
+    }
+
+    protected java.util.concurrent.ExecutorService createDefaultTileBuildService(int threadPoolSize)
+    {
+        // Tasks are submitted only while a tile build permit is available, so the unbounded queue holds a task only
+        // until one of the threads finishing a task takes it. A thread waiting for a sub-tile therefore never waits on
+        // a task that cannot run.
+        return new java.util.concurrent.ThreadPoolExecutor(threadPoolSize, threadPoolSize,
+            0L, java.util.concurrent.TimeUnit.MILLISECONDS, new java.util.concurrent.LinkedBlockingQueue<Runnable>(),
+            new java.util.concurrent.ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "World Wind Tile Producer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+    /**
+     * Creates a tile's raster on an idle tile build thread. This returns null if production is sequential, if every
+     * build thread is busy, or if the in-flight raster budget cannot hold the rasters needed to build the tile's
+     * subtree. The caller then creates the raster itself.
+     *
+     * @param levelSet the level set being produced.
+     * @param tile     the tile to create.
+     * @param params   the production parameters.
+     * @param install  true to write the tile's raster to disk on the build thread, false to return the raster as the
+     *                 result of the task.
+     *
+     * @return the task creating the tile's raster, or null if the tile has not been handed to another thread.
+     */
+    protected java.util.concurrent.Future<?> createTileRasterLater(final LevelSet levelSet, final Tile tile,
+        final AVList params, final boolean install)
+    {
+        if (this.tileBuildService == null || !this.tileBuildSemaphore.tryAcquire())
+            return null;
+
+        // The task releases the semaphores it acquired from, even if production has ended and cleared them.
+        final java.util.concurrent.Semaphore buildSemaphore = this.tileBuildSemaphore;
+        final java.util.concurrent.Semaphore budgetSemaphore = this.rasterBudgetSemaphore;
+
+        final int numRasters = this.computeInFlightRasters(levelSet, tile, params);
+        if (!budgetSemaphore.tryAcquire(numRasters))
+        {
+            buildSemaphore.release();
+            return null;
+        }
+
+        return this.tileBuildService.submit(new java.util.concurrent.Callable<DataRaster>()
+        {
+            public DataRaster call() throws Exception
+            {
+                try
+                {
+                    DataRaster tileRaster = createTileRaster(levelSet, tile, params);
+                    if (!install || tileRaster == null)
+                        return tileRaster;
+
+                    installTileRasterLater(levelSet, tile, tileRaster, params);
+                    return null;
+                }
+                finally
+                {
+                    budgetSemaphore.release(numRasters);
+                    buildSemaphore.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Hands the sub-tiles of a tile to idle tile build threads. The last sub-tile intersecting the level set is never
+     * handed off, so the calling thread always has work while it waits for the other threads.
+     *
+     * @param levelSet the level set being produced.
+     * @param subTiles the sub-tiles.
+     * @param params   the production parameters.
+     *
+     * @return the tasks creating each sub-tile's raster. An element is null if its sub-tile has not been handed to
+     *         another thread.
+     */
+    protected java.util.concurrent.Future<?>[] createSubTileRastersLater(LevelSet levelSet, Tile[] subTiles,
+        AVList params)
+    {
+        java.util.concurrent.Future<?>[] subTasks = new java.util.concurrent.Future<?>[subTiles.length];
+        if (this.tileBuildService == null)
+            return subTasks;
+
+        int last = subTiles.length - 1;
+        while (last >= 0 && !subTiles[last].getSector().intersects(levelSet.getSector()))
+        {
+            last--;
+        }
+
+        for (int index = 0; index < last; index++)
+        {
+            if (subTiles[index].getSector().intersects(levelSet.getSector()))
+                subTasks[index] = this.createTileRasterLater(levelSet, subTiles[index], params, false);
+        }
+
+        return subTasks;
+    }
+
+    /**
+     * Computes the number of tile rasters held at once while building a tile's subtree depth-first: up to four sub-tile
+     * rasters for each level below the tile, plus the tile's own raster.
+     *
+     * @param levelSet the level set being produced.
+     * @param tile     the subtree's root tile.
+     * @param params   the production parameters.
+     *
+     * @return the number of tile rasters needed to build the subtree.
+     */
+    protected int computeInFlightRasters(LevelSet levelSet, Tile tile, AVList params)
+    {
+        int numLevels = 0;
+        for (int levelNumber = tile.getLevelNumber(); !this.isFinalLevel(levelSet, levelNumber, params); levelNumber++)
+        {
+            numLevels++;
+        }
+
+        return 4 * numLevels + 1;
+    }
+
+    /**
+     * Waits for a tile build task to complete, and returns its raster. A failure of the task is rethrown on the
+     * calling thread.
+     *
+     * @param task the task to wait for.
+     *
+     * @return the tile's raster, or null if the task created no raster or wrote the raster to disk.
+     *
+     * @throws java.io.IOException if the task failed with an <code>IOException</code>, or the wait was interrupted.
+     */
+    protected DataRaster joinTileRaster(java.util.concurrent.Future<?> task) throws java.io.IOException
+    {
+        try
+        {
+            return (DataRaster) task.get();
+        }
+        catch (InterruptedException e)
+        {
+            String message = Logging.getMessage("generic.interrupted", this.getClass().getName(), "joinTileRaster()");
+            Logging.logger().finest(message);
+            // Don't swallow interrupts; instead, restore the interrupted status
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException(message);
+        }
+        catch (java.util.concurrent.ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof java.io.IOException)
+                throw (java.io.IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new WWRuntimeException(cause);
+        }
+    }
+
+    protected void waitForTileBuildTasks()
+    {
+        java.util.concurrent.ExecutorService service = this.tileBuildService;
+        if (service == null)
+            return;
+
+        // Tasks are still running only if production failed. Let them finish before the tile write service is shut
+        // down, since they may write tiles.
+        try
+        {
+            service.shutdown();
+            while (!service.awaitTermination(1000L, java.util.concurrent.TimeUnit.MILLISECONDS))
+            {
+                Thread.sleep(5L);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            String msg = Logging.getMessage("generic.interrupted", this.getClass().getName(),
+                "waitForTileBuildTasks()");
+            Logging.logger().finest(msg);
+            // Don't swallow interrupts; instead, restore the interrupted status
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            // A later production with a single build thread must not find the service that was shut down.
+            this.tileBuildService = null;
+            this.tileBuildSemaphore = null;
+            this.rasterBudgetSemaphore = null;
+        }
+    }
+
     //**************************************************************//
     //********************  Tile Installation  *********************//
     //**************************************************************//
@@ -1077,14 +1358,23 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
 
     protected void startProgress()
     {
-        this.tile = 0;
+        synchronized (this.progressLock)
+        {
+            this.tile = 0;
+        }
         this.firePropertyChange(AVKey.PROGRESS, null, 0d);
     }
 
     protected void updateProgress()
     {
-        double oldProgress = this.tile / (double) this.tileCount;
-        double newProgress = ++this.tile / (double) this.tileCount;
+        // Tiles complete on the tile build threads in parallel production.
+        double oldProgress;
+        double newProgress;
+        synchronized (this.progressLock)
+        {
+            oldProgress = this.tile / (double) this.tileCount;
+            newProgress = ++this.tile / (double) this.tileCount;
+        }
         this.firePropertyChange(AVKey.PROGRESS, oldProgress, newProgress);
     }
 }
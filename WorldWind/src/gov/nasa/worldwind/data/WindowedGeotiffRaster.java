@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.Cacheable;
+import gov.nasa.worldwind.formats.tiff.GeotiffReader;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.IOException;
+
+/**
+ * A raster backed by a tiled GeoTIFF file that reads only the part of the file it is asked to draw. Each call to {@link
+ * #drawOnTo(DataRaster)} or {@link #getSubRaster(int, int, Sector, AVList)} decodes the tiles intersecting the
+ * requested sector, from the overview whose resolution best matches the request, and discards them afterwards. This
+ * allows rasters far larger than memory to be used as sources for tile production.
+ * <p/>
+ * The raster holds its file open until it is disposed.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class WindowedGeotiffRaster extends AbstractDataRaster implements Cacheable
+{
+    protected GeotiffReader reader;
+
+    /**
+     * Creates a raster reading the first image of a GeoTIFF file. The raster takes ownership of the reader, and closes
+     * it when the raster is disposed.
+     *
+     * @param width    the width of the first image.
+     * @param height   the height of the first image.
+     * @param sector   the sector covered by the first image.
+     * @param reader   the reader of the GeoTIFF file.
+     * @param metadata the raster's metadata. May be null.
+     *
+     * @throws IllegalArgumentException if the reader is null.
+     */
+    public WindowedGeotiffRaster(int width, int height, Sector sector, GeotiffReader reader, AVList metadata)
+    {
+        super(width, height, sector, metadata);
+
+        if (reader == null)
+        {
+            String message = Logging.getMessage("nullValue.ReaderIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.reader = reader;
+    }
+
+    public void drawOnTo(DataRaster canvas)
+    {
+        if (canvas == null)
+        {
+            String message = Logging.getMessage("nullValue.DestinationIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        // Read the source at the canvas' resolution, so that large canvases draw from the full resolution image and
+        // small canvases from an overview.
+        Sector sector = canvas.getSector();
+        DataRaster window = this.readWindow(sector, sector.getDeltaLatRadians() / canvas.getHeight());
+        if (window == null)
+            return;
+
+        try
+        {
+            window.drawOnTo(canvas);
+        }
+        finally
+        {
+            window.dispose();
+        }
+    }
+
+    DataRaster doGetSubRaster(int roiWidth, int roiHeight, Sector roiSector, AVList roiParams)
+    {
+        DataRaster window = this.readWindow(roiSector, roiSector.getDeltaLatRadians() / roiHeight);
+        if (window == null)
+            return null;
+
+        try
+        {
+            return window.getSubRaster(roiWidth, roiHeight, roiSector, roiParams);
+        }
+        finally
+        {
+            window.dispose();
+        }
+    }
+
+    protected DataRaster readWindow(Sector sector, double resolution)
+    {
+        GeotiffReader reader = this.reader;
+        if (reader == null)
+        {
+            String message = Logging.getMessage("DataRaster.CannotRead", this.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        try
+        {
+            return reader.readDataRaster(sector, resolution);
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("DataRaster.CannotRead", sector);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            throw new IllegalStateException(message, e);
+        }
+    }
+
+    public long getSizeInBytes()
+    {
+        // The raster holds no pixels, only the reader and its decoders.
+        return 1024L;
+    }
+
+    public void dispose()
+    {
+        if (this.reader != null)
+        {
+            this.reader.dispose();
+            this.reader = null;
+        }
+    }
+}
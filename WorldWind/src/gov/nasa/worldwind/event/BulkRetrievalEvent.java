@@ -6,7 +6,7 @@
 
 package gov.nasa.worldwind.event;
 
-import gov.nasa.worldwind.retrieve.BulkRetrievable;
+import gov.nasa.worldwind.retrieve.*;
 
 /**
  * Notifies of bulk retrieval events.
@@ -25,6 +25,8 @@ public class BulkRetrievalEvent extends WWEvent
 
     protected String eventType;
     protected String item;
+    protected long numBytes;
+    protected Progress progress;
 
     /**
      * Creates a new event.
@@ -43,6 +45,25 @@ public class BulkRetrievalEvent extends WWEvent
         this.item = item;
     }
 
+    /**
+     * Creates a new event that also reports the number of bytes retrieved for the item and the retrieval's progress.
+     *
+     * @param source    the event source, typically either a tiled image layer, elevation model or placename layer.
+     * @param eventType indicates success or failure. One of {@link #RETRIEVAL_SUCCEEDED} or {@link #RETRIEVAL_FAILED}.
+     * @param item      the cache location of the item whose retrieval succeeded or failed.
+     * @param numBytes  the number of bytes retrieved for the item.
+     * @param progress  the progress of the bulk retrieval the item is part of. May be null.
+     *
+     * @see gov.nasa.worldwind.retrieve.BulkRetrievable
+     */
+    public BulkRetrievalEvent(BulkRetrievable source, String eventType, String item, long numBytes, Progress progress)
+    {
+        this(source, eventType, item);
+
+        this.numBytes = numBytes;
+        this.progress = progress;
+    }
+
     /**
      * Returns the event source.
      *
@@ -74,4 +95,25 @@ public class BulkRetrievalEvent extends WWEvent
     {
         return item;
     }
+
+    /**
+     * Returns the number of bytes retrieved for the item.
+     *
+     * @return the number of bytes retrieved, or 0 if the retrieval failed or the source does not report it.
+     */
+    public long getNumBytes()
+    {
+        return numBytes;
+    }
+
+    /**
+     * Returns the progress of the bulk retrieval when the event occurred. The progress' current size and count are
+     * exact, and {@link Progress#getSizeRate()} and {@link Progress#getCountRate()} give the retrieval's throughput.
+     *
+     * @return the retrieval's progress, or null if the source does not report it.
+     */
+    public Progress getProgress()
+    {
+        return progress;
+    }
 }
@@ -171,6 +171,12 @@ public class BlockDXT1Compressor
             // Default to using euclidean distance to compute the min and max palette colors.
             findMinMaxColorsLuminanceDistance(block, minColor, maxColor);
         }
+        else //noinspection StringEquality
+            if (attributes.getColorBlockCompressionType()
+                == DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT)
+        {
+            findMinMaxColorsRangeFit(block, minColor, maxColor);
+        }
     }
 
     //**************************************************************//
@@ -438,6 +444,129 @@ public class BlockDXT1Compressor
         copyColorComponents(block.color[maxIndex], maxColor);
     }
 
+    //**************************************************************//
+    //********************  Color Block Range Fit  *****************//
+    //**************************************************************//
+
+    protected static void findMinMaxColorsRangeFit(ColorBlock4x4 block, Color32 minColor, Color32 maxColor)
+    {
+        // This implementation is based on the range fit compressor in the nvidia-texture-tools project:
+        // http://code.google.com/p/nvidia-texture-tools/
+        //
+        // We find the principal axis of the block's colors, project each color onto that axis, and use the points on
+        // the axis at the smallest and largest projections as the palette end points. This follows the colors along
+        // their actual direction of greatest variance like the Euclidean distance search, but visits each color once
+        // instead of visiting every pair of colors.
+
+        int sumR = 0, sumG = 0, sumB = 0;
+        for (int i = 0; i < 16; i++)
+        {
+            sumR += block.color[i].r;
+            sumG += block.color[i].g;
+            sumB += block.color[i].b;
+        }
+
+        float meanR = sumR / 16f;
+        float meanG = sumG / 16f;
+        float meanB = sumB / 16f;
+
+        // Accumulate the covariance matrix of the colors about their mean.
+        float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+        for (int i = 0; i < 16; i++)
+        {
+            float r = block.color[i].r - meanR;
+            float g = block.color[i].g - meanG;
+            float b = block.color[i].b - meanB;
+
+            rr += r * r;
+            rg += r * g;
+            rb += r * b;
+            gg += g * g;
+            gb += g * b;
+            bb += b * b;
+        }
+
+        // Estimate the principal axis by power iteration, starting from the covariance matrix row with the greatest
+        // variance. A few iterations are enough to settle on the axis for the purpose of choosing end points.
+        float axisR, axisG, axisB;
+        if (rr >= gg && rr >= bb)
+        {
+            axisR = rr;
+            axisG = rg;
+            axisB = rb;
+        }
+        else if (gg >= bb)
+        {
+            axisR = rg;
+            axisG = gg;
+            axisB = gb;
+        }
+        else
+        {
+            axisR = rb;
+            axisG = gb;
+            axisB = bb;
+        }
+
+        for (int n = 0; n < 4; n++)
+        {
+            float x = rr * axisR + rg * axisG + rb * axisB;
+            float y = rg * axisR + gg * axisG + gb * axisB;
+            float z = rb * axisR + gb * axisG + bb * axisB;
+
+            float max = Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z)));
+            if (max == 0)
+                break;
+
+            axisR = x / max;
+            axisG = y / max;
+            axisB = z / max;
+        }
+
+        float lengthSquared = axisR * axisR + axisG * axisG + axisB * axisB;
+        if (lengthSquared == 0)
+        {
+            // Every color in the block is the same.
+            copyColorComponents(block.color[0], minColor);
+            copyColorComponents(block.color[0], maxColor);
+            return;
+        }
+
+        float minT = Float.MAX_VALUE;
+        float maxT = -Float.MAX_VALUE;
+        for (int i = 0; i < 16; i++)
+        {
+            float t = (block.color[i].r - meanR) * axisR
+                + (block.color[i].g - meanG) * axisG
+                + (block.color[i].b - meanB) * axisB;
+
+            if (t < minT)
+                minT = t;
+            if (t > maxT)
+                maxT = t;
+        }
+
+        // Move the end points toward each other by 1/16 of their separation, as the box fit does, to account for the
+        // palette colors between them.
+        float inset = (maxT - minT) / 16f;
+        minT = (minT + inset) / lengthSquared;
+        maxT = (maxT - inset) / lengthSquared;
+
+        minColor.a = maxColor.a = 255;
+        minColor.r = clampColorComponent(meanR + axisR * minT);
+        minColor.g = clampColorComponent(meanG + axisG * minT);
+        minColor.b = clampColorComponent(meanB + axisB * minT);
+        maxColor.r = clampColorComponent(meanR + axisR * maxT);
+        maxColor.g = clampColorComponent(meanG + axisG * maxT);
+        maxColor.b = clampColorComponent(meanB + axisB * maxT);
+    }
+
+    protected static int clampColorComponent(float value)
+    {
+        int i = Math.round(value);
+        return (i < 0) ? 0 : (i > 255 ? 255 : i);
+    }
+
     //**************************************************************//
     //********************  Color Arithmetic  **********************//
     //**************************************************************//
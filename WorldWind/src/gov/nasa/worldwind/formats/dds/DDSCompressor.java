@@ -5,9 +5,13 @@
  */
 package gov.nasa.worldwind.formats.dds;
 
+import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.util.*;
 
 import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
 
 /**
  * DDSCompressor converts in-memory images into a DDS file encoded with one of the DXT block compression algorithms. If
@@ -17,12 +21,24 @@ import java.awt.image.*;
  * Each compression method accepts a reference to a {@link gov.nasa.worldwind.formats.dds.DXTCompressionAttributes}.
  * This compressor performs the appropriate actions according to the attributes, such as building mip maps and
  * converting the source image to a premultiplied alpha format.
+ * <p/>
+ * If the attributes enable parallel compression, the mip levels and bands of block rows within each level are
+ * compressed concurrently on a thread pool shared by all DDSCompressors, and each band is written directly to its place
+ * in the DDS file. The output is identical to that of serial compression.
  *
  * @author dcollins
  * @version $Id$
  */
 public class DDSCompressor
 {
+    /** The smallest number of block rows compressed by one task during parallel compression. */
+    protected static final int MIN_BLOCK_ROWS_PER_TASK = 4;
+    /** The number of tasks per thread each image is divided into during parallel compression. */
+    protected static final int TASKS_PER_THREAD = 4;
+
+    /** The thread pool shared by all DDSCompressors for parallel compression. Created when first needed. */
+    protected static ExecutorService compressionService;
+
     /** Creates a new DDSCompressor, but otherwise does nothing. */
     public DDSCompressor()
     {
@@ -535,7 +551,12 @@ public class DDSCompressor
         // Write the compressed DXT blocks to the DDS file. If the attributes specify to build mip maps, then we write
         // each mip map level to the DDS file, starting with level 0 and ending with level N. Otherwise, we write a
         // single image to the DDS file.
-        if (mipMapLevels == null)
+        if (attributes.isEnableParallelCompression())
+        {
+            this.compressImagesConcurrently(compressor,
+                mipMapLevels != null ? mipMapLevels : new java.awt.image.BufferedImage[] {image}, attributes, buffer);
+        }
+        else if (mipMapLevels == null)
         {
             compressor.compressImage(image, attributes, buffer);
         }
@@ -551,6 +572,147 @@ public class DDSCompressor
         return buffer;
     }
 
+    /**
+     * Compresses a sequence of images into consecutive regions of a buffer, starting at the buffer's position, and
+     * leaves the buffer positioned after the last image. Each image is divided into horizontal bands whose heights are
+     * a multiple of the 4 pixel block size, and every band is compressed as a separate task on the shared thread pool
+     * into its own region of the buffer. Each task has its own color block and DXT block scratch objects, which it
+     * reuses for every block in its band.
+     * <p/>
+     * The compressor's {@link DXTCompressor#compressImage(java.awt.image.BufferedImage, DXTCompressionAttributes,
+     * java.nio.ByteBuffer)} method must be safe to call from several threads at once. The DXT1 and DXT3 compressors
+     * are.
+     *
+     * @param compressor the compressor to apply to each band.
+     * @param images     the images to compress, in the order they are written to the buffer.
+     * @param attributes attributes that control the compression.
+     * @param buffer     little endian ordered buffer that receives the compressed images.
+     *
+     * @throws WWRuntimeException if compression of any band fails.
+     */
+    protected void compressImagesConcurrently(final DXTCompressor compressor, java.awt.image.BufferedImage[] images,
+        final DXTCompressionAttributes attributes, java.nio.ByteBuffer buffer)
+    {
+        ExecutorService service = getCompressionService();
+        int numThreads = getCompressionThreadCount();
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        int offset = buffer.position();
+
+        for (java.awt.image.BufferedImage image : images)
+        {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int bandHeight = this.computeBandHeight(height, numThreads);
+
+            for (int y = 0; y < height; y += bandHeight)
+            {
+                final java.awt.image.BufferedImage band = (bandHeight < height)
+                    ? image.getSubimage(0, y, width, Math.min(bandHeight, height - y)) : image;
+
+                int size = compressor.getCompressedSize(band, attributes);
+                final java.nio.ByteBuffer bandBuffer = sliceBuffer(buffer, offset, size);
+                offset += size;
+
+                futures.add(service.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        compressor.compressImage(band, attributes, bandBuffer);
+                    }
+                }));
+            }
+        }
+
+        try
+        {
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (Exception e)
+        {
+            for (Future<?> future : futures)
+            {
+                future.cancel(false);
+            }
+
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+
+            String message = Logging.getMessage("DDSCompressor.ExceptionCompressingImage");
+            Logging.logger().log(Level.SEVERE, message, e);
+            throw new WWRuntimeException(message, e);
+        }
+
+        buffer.position(offset);
+    }
+
+    /**
+     * Computes the height of the bands an image is divided into for parallel compression. Images shorter than one
+     * block row are compressed in one band. Otherwise the band height is a multiple of the 4 pixel block size, chosen
+     * to give each thread several bands so that the threads finish at about the same time.
+     *
+     * @param height     the image height, in pixels.
+     * @param numThreads the number of compression threads.
+     *
+     * @return the band height, in pixels.
+     */
+    protected int computeBandHeight(int height, int numThreads)
+    {
+        if (height <= 4)
+            return height;
+
+        int numBlockRows = (height + 3) / 4;
+        int numTasks = numThreads * TASKS_PER_THREAD;
+        int blockRowsPerTask = Math.max((numBlockRows + numTasks - 1) / numTasks, MIN_BLOCK_ROWS_PER_TASK);
+
+        return 4 * blockRowsPerTask;
+    }
+
+    protected static java.nio.ByteBuffer sliceBuffer(java.nio.ByteBuffer buffer, int offset, int size)
+    {
+        // The slice shares the buffer's content, but not its position, limit or byte order.
+        java.nio.ByteBuffer dup = buffer.duplicate();
+        dup.limit(offset + size);
+        dup.position(offset);
+
+        java.nio.ByteBuffer slice = dup.slice();
+        slice.order(buffer.order());
+        return slice;
+    }
+
+    protected static int getCompressionThreadCount()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns the thread pool shared by all DDSCompressors for parallel compression, creating it if necessary. The pool
+     * has one thread per available processor. The threads are daemon threads, so they do not prevent the application
+     * from exiting.
+     *
+     * @return the shared compression thread pool.
+     */
+    protected static synchronized ExecutorService getCompressionService()
+    {
+        if (compressionService == null)
+        {
+            compressionService = Executors.newFixedThreadPool(getCompressionThreadCount(), new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "DDS Compressor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return compressionService;
+    }
+
     protected DXTCompressor getDXTCompressor(java.awt.image.BufferedImage image, DXTCompressionAttributes attributes)
     {
         // If the caller specified a DXT format in the attributes, then we return a compressor matching that format.
@@ -14,6 +14,7 @@ public class DXTCompressionAttributes
     public static final String COLOR_BLOCK_COMPRESSION_BBOX = "ColorBlockCompressionBBox";
     public static final String COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE = "ColorBlockCompressionEuclideanDistance";
     public static final String COLOR_BLOCK_COMPRESSION_LUMINANCE_DISTANCE = "ColorBlockCompressionLuminanceDistance";
+    public static final String COLOR_BLOCK_COMPRESSION_RANGE_FIT = "ColorBlockCompressionRangeFit";
 
     private boolean buildMipmaps;
     private boolean premultiplyAlpha;
@@ -21,6 +22,7 @@ public class DXTCompressionAttributes
     private boolean enableDXT1Alpha;
     private int dxt1AlphaThreshold;
     private String colorBlockCompressionType;
+    private boolean enableParallelCompression;
 
     protected static final int DEFAULT_DXT1_TRANSPARENCY_THRESHOLD = 128;
 
@@ -93,4 +95,27 @@ public class DXTCompressionAttributes
     {
         this.colorBlockCompressionType = compressionType;
     }
+
+    /**
+     * Indicates whether {@link DDSCompressor} compresses the mip levels and the rows of blocks within each level
+     * concurrently on a thread pool shared by all compressors.
+     *
+     * @return true if compression is performed on several threads, otherwise false.
+     */
+    public boolean isEnableParallelCompression()
+    {
+        return this.enableParallelCompression;
+    }
+
+    /**
+     * Specifies whether {@link DDSCompressor} compresses the mip levels and the rows of blocks within each level
+     * concurrently on a thread pool shared by all compressors. The compressed bytes are the same either way. The
+     * default is false.
+     *
+     * @param enable true to compress on several threads, false to compress on the calling thread.
+     */
+    public void setEnableParallelCompression(boolean enable)
+    {
+        this.enableParallelCompression = enable;
+    }
 }
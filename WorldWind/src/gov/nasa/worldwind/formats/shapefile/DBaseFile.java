@@ -42,11 +42,17 @@ public class DBaseFile extends AVListImpl
     // DBase file data.
     protected Header header;
     protected DBaseField[] fields;
+    // Field positions, used to decode a single field of a record without decoding the others.
+    protected Map<String, Integer> fieldIndices;
+    protected int[] fieldOffsets;
     // Source streams and read parameters.
     protected ReadableByteChannel channel;
     protected boolean open;
     protected int numRecordsRead;
     protected ByteBuffer recordBuffer;
+    // Random access to records of file sources. The channel is opened when the first record is requested.
+    protected File file;
+    protected FileChannel randomAccessChannel;
 
     public DBaseFile(Object source)
     {
@@ -143,6 +149,66 @@ public class DBaseFile extends AVListImpl
         return this.open && this.numRecordsRead < this.header.numberOfRecords;
     }
 
+    /**
+     * Indicates whether records can be read in any order with {@link #getRecord(int)}. Random access is supported for
+     * DBase files opened from a local file.
+     *
+     * @return true if records can be read in any order, otherwise false.
+     */
+    public boolean isRandomAccessSupported()
+    {
+        return this.open && this.file != null;
+    }
+
+    /**
+     * Reads the record at a specified position in the file, without reading the records preceding it. This does not
+     * affect the records returned by {@link #nextRecord()}.
+     *
+     * @param recordIndex the zero-based position of the record in the file.
+     *
+     * @return the record at the specified position.
+     *
+     * @throws IllegalArgumentException if the index is negative or not less than the number of records.
+     * @throws IllegalStateException    if the file is closed, or if the file does not support random access.
+     * @throws WWRuntimeException       if an exception occurs while reading the record.
+     * @see #isRandomAccessSupported()
+     */
+    public DBaseRecord getRecord(int recordIndex)
+    {
+        if (!this.open)
+        {
+            String message = Logging.getMessage("SHP.DBaseFileClosed", this.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        if (this.file == null)
+        {
+            String message = Logging.getMessage("SHP.RandomAccessNotSupported", this.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        if (recordIndex < 0 || recordIndex >= this.getNumberOfRecords())
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", recordIndex);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        try
+        {
+            return this.readRecord(recordIndex);
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("SHP.ExceptionAttemptingToReadDBaseRecord",
+                this.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            throw new WWRuntimeException(message, e);
+        }
+    }
+
     public DBaseRecord nextRecord()
     {
         if (!this.open)
@@ -180,6 +246,12 @@ public class DBaseFile extends AVListImpl
             this.channel = null;
         }
 
+        if (this.randomAccessChannel != null)
+        {
+            WWIO.closeStream(this.randomAccessChannel, null);
+            this.randomAccessChannel = null;
+        }
+
         this.open = false;
         this.recordBuffer = null;
     }
@@ -199,6 +271,7 @@ public class DBaseFile extends AVListImpl
 
         // DBase record reading performs about 200% better when the FileInputStream is wrapped in a BufferedInputStream.
         this.channel = Channels.newChannel(WWIO.getBufferedInputStream(new FileInputStream(file)));
+        this.file = file;
         this.initialize();
     }
 
@@ -249,9 +322,28 @@ public class DBaseFile extends AVListImpl
     {
         this.header = this.readHeader();
         this.fields = this.readFields();
+        this.initializeFieldOffsets();
         this.open = true;
     }
 
+    /**
+     * Computes the position of each field's value within a record, following the record's deleted flag, and indexes
+     * the fields by name.
+     */
+    protected void initializeFieldOffsets()
+    {
+        this.fieldIndices = new HashMap<String, Integer>();
+        this.fieldOffsets = new int[this.fields.length];
+
+        int offset = 0;
+        for (int i = 0; i < this.fields.length; i++)
+        {
+            this.fieldOffsets[i] = offset;
+            offset += this.fields[i].getLength();
+            this.fieldIndices.put(this.fields[i].getName(), i);
+        }
+    }
+
     protected String validateURLConnection(URLConnection connection, String[] acceptedContentTypes)
     {
         try
@@ -438,6 +530,76 @@ public class DBaseFile extends AVListImpl
         return this.readRecordFromBuffer(this.recordBuffer, ++this.numRecordsRead);
     }
 
+    /**
+     * Reads the {@link DBaseRecord} at a specified position in this DBaseFile. The record is read with a positional
+     * read from a separate channel to the file, so the records read by {@link #readNextRecord()} are unaffected. Each
+     * call reads into its own buffer, so records may be read by more than one thread at a time.
+     *
+     * @param recordIndex the zero-based position of the record.
+     *
+     * @return a new {@link DBaseRecord} instance.
+     *
+     * @throws IOException if the record cannot be read for any reason.
+     */
+    protected DBaseRecord readRecord(int recordIndex) throws IOException
+    {
+        FileChannel channel = this.getRandomAccessChannel();
+
+        ByteBuffer buffer = ByteBuffer.allocate(this.getRecordLength());
+        long position = this.getHeaderLength() + (long) recordIndex * this.getRecordLength();
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException(this.file.getPath());
+        }
+        buffer.flip();
+
+        return this.readRecordFromBuffer(buffer, recordIndex + 1);
+    }
+
+    /**
+     * Reads a sequence of adjacent records with a single positional read from a separate channel to the file. Each
+     * call reads into its own buffer, so records may be read by more than one thread at a time.
+     *
+     * @param firstIndex the zero-based position of the first record.
+     * @param count      the number of records to read.
+     *
+     * @return the records, in file order.
+     *
+     * @throws IOException if the records cannot be read for any reason.
+     */
+    protected DBaseRecord[] readRecords(int firstIndex, int count) throws IOException
+    {
+        FileChannel channel = this.getRandomAccessChannel();
+
+        ByteBuffer buffer = ByteBuffer.allocate(count * this.getRecordLength());
+        long position = this.getHeaderLength() + (long) firstIndex * this.getRecordLength();
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException(this.file.getPath());
+        }
+        buffer.flip();
+
+        DBaseRecord[] records = new DBaseRecord[count];
+        for (int i = 0; i < count; i++)
+        {
+            buffer.limit((i + 1) * this.getRecordLength());
+            buffer.position(i * this.getRecordLength());
+            records[i] = this.readRecordFromBuffer(buffer, firstIndex + i + 1);
+        }
+
+        return records;
+    }
+
+    protected synchronized FileChannel getRandomAccessChannel() throws IOException
+    {
+        if (this.randomAccessChannel == null)
+            this.randomAccessChannel = new RandomAccessFile(this.file, "r").getChannel();
+
+        return this.randomAccessChannel;
+    }
+
     /**
      * Reads a {@link DBaseRecord} instance from the given {@link java.nio.ByteBuffer};
      * <p/>
@@ -454,6 +616,31 @@ public class DBaseFile extends AVListImpl
         return new DBaseRecord(this, buffer, recordNumber);
     }
 
+    /**
+     * Returns the position of the field with a specified name in this file's fields.
+     *
+     * @param name the field name.
+     *
+     * @return the field's position, or -1 if this file has no field with that name.
+     */
+    protected int getFieldIndex(String name)
+    {
+        Integer index = this.fieldIndices != null ? this.fieldIndices.get(name) : null;
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the position of a field's value within a record, following the record's deleted flag.
+     *
+     * @param index the field's position in this file's fields.
+     *
+     * @return the position of the field's value.
+     */
+    protected int getFieldOffset(int index)
+    {
+        return this.fieldOffsets[index];
+    }
+
     //**************************************************************//
     //********************  String Parsing  ************************//
     //**************************************************************//
@@ -5,14 +5,22 @@
  */
 package gov.nasa.worldwind.formats.shapefile;
 
-import gov.nasa.worldwind.avlist.AVListImpl;
+import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.util.Logging;
 
 import java.nio.*;
 import java.text.*;
+import java.util.*;
 import java.util.logging.Level;
 
 /**
+ * Represents the attributes of a single record of a DBase file. The record's field values are available through the
+ * {@link gov.nasa.worldwind.avlist.AVList} interface, keyed by field name.
+ * <p/>
+ * The record keeps the raw bytes of its fields, and decodes each field the first time its value is requested. Fields
+ * that are never requested are never parsed. Requesting all the values at once, for example with {@link #getEntries()}
+ * or {@link #getValues()}, decodes every remaining field.
+ *
  * @author Patrick Murris
  * @version $Id$
  */
@@ -22,6 +30,14 @@ public class DBaseRecord extends AVListImpl
     private int recordNumber;
     private static final DateFormat dateformat = new SimpleDateFormat("yyyyMMdd");
 
+    /** The DBase file whose fields describe this record's bytes. */
+    private DBaseFile dbaseFile;
+    /** The record's field bytes, following the deleted record flag. Null once every field has been decoded. */
+    private byte[] fieldBytes;
+    /** Indicates which fields have been decoded, in the order of the DBase file's fields. */
+    private boolean[] decodedFields;
+    private int numDecodedFields;
+
     public DBaseRecord(DBaseFile dbaseFile, ByteBuffer buffer, int recordNumber)
     {
         if (dbaseFile == null)
@@ -51,74 +67,187 @@ public class DBaseRecord extends AVListImpl
         return this.recordNumber;
     }
 
-    @SuppressWarnings({"StringEquality"})
+    synchronized public Object getValue(String key)
+    {
+        this.decodeField(key);
+        return super.getValue(key);
+    }
+
+    synchronized public Collection<Object> getValues()
+    {
+        this.decodeAllFields();
+        return super.getValues();
+    }
+
+    synchronized public Set<Map.Entry<String, Object>> getEntries()
+    {
+        this.decodeAllFields();
+        return super.getEntries();
+    }
+
+    synchronized public Object setValue(String key, Object value)
+    {
+        this.decodeField(key);
+        return super.setValue(key, value);
+    }
+
+    synchronized public boolean hasKey(String key)
+    {
+        this.decodeField(key);
+        return super.hasKey(key);
+    }
+
+    synchronized public Object removeKey(String key)
+    {
+        this.decodeField(key);
+        return super.removeKey(key);
+    }
+
+    synchronized public AVList copy()
+    {
+        this.decodeAllFields();
+        return super.copy();
+    }
+
+    synchronized public AVList clearList()
+    {
+        this.decodeAllFields();
+        return super.clearList();
+    }
+
+    /**
+     * Reads the record's deleted flag and keeps a copy of its field bytes. The fields are decoded when their values are
+     * requested. The buffer's position is moved past the record.
+     *
+     * @param dbaseFile    the DBase file containing the record.
+     * @param buffer       the buffer to read from, positioned at the start of the record.
+     * @param recordNumber the record's sequence number.
+     */
     protected void readFromBuffer(DBaseFile dbaseFile, ByteBuffer buffer, int recordNumber)
     {
         buffer.order(ByteOrder.LITTLE_ENDIAN);
 
         // Set parent DBaseFile and record number.
+        this.dbaseFile = dbaseFile;
         this.recordNumber = recordNumber;
 
         // Read deleted record flag.
         byte b = buffer.get();
         this.deleted = (b == 0x2A);
 
-        // Create a buffer to hold the field values.
-        int maxFieldLength = 0;
-        for (DBaseField field : dbaseFile.getFields())
+        // Keep the field bytes. The record buffer may be reused for the next record, so the bytes are copied.
+        DBaseField[] fields = dbaseFile.getFields();
+        this.fieldBytes = new byte[Math.max(dbaseFile.getRecordLength() - 1, 0)];
+        buffer.get(this.fieldBytes);
+        this.decodedFields = new boolean[fields.length];
+        this.numDecodedFields = 0;
+    }
+
+    /**
+     * Decodes the field with a specified name, if the record has such a field and it has not yet been decoded.
+     *
+     * @param key the field name.
+     */
+    protected void decodeField(String key)
+    {
+        if (this.fieldBytes == null || key == null)
+            return;
+
+        int index = this.dbaseFile.getFieldIndex(key);
+        if (index >= 0 && !this.decodedFields[index])
+            this.decodeField(index);
+    }
+
+    /** Decodes every field that has not yet been decoded. */
+    protected void decodeAllFields()
+    {
+        for (int i = 0; this.fieldBytes != null && i < this.decodedFields.length; i++)
         {
-            if (maxFieldLength < field.getLength())
-                maxFieldLength = field.getLength();
+            if (!this.decodedFields[i])
+                this.decodeField(i);
         }
+    }
 
-        // Read field values.
-        DBaseField[] fields = dbaseFile.getFields();
-        byte[] bytes = new byte[maxFieldLength];
+    /**
+     * Decodes the field at a specified position in the DBase file's fields, and sets its value in this record. The
+     * field bytes are released once every field is decoded.
+     *
+     * @param index the field's position.
+     */
+    protected void decodeField(int index)
+    {
+        DBaseField field = this.dbaseFile.getFields()[index];
+        ByteBuffer buffer = ByteBuffer.wrap(this.fieldBytes);
+        buffer.position(this.dbaseFile.getFieldOffset(index));
 
-        for (DBaseField field : fields)
-        {
-            int numRead = dbaseFile.readZeroTerminatedString(buffer, bytes, field.getLength());
+        byte[] bytes = new byte[field.getLength()];
+        int numRead = this.dbaseFile.readZeroTerminatedString(buffer, bytes, field.getLength());
 
-            // Add a null entry for this field if the field's value is null or the empty string. This enables
-            // applications to treat the DBaseRecord a standard AVList without any knowledge of the DBase file's field
-            // keys. Specifically, DBaseRecord.hasKey() returns true for all fields.
-            if (dbaseFile.isStringEmpty(bytes, numRead))
-            {
-                this.setValue(field.getName(), null);
-                continue;
-            }
+        // Mark the field as decoded before setting its value, because setValue decodes fields that are not.
+        this.decodedFields[index] = true;
+        if (++this.numDecodedFields == this.decodedFields.length)
+            this.fieldBytes = null;
+
+        // A field that shares its name with a later field is hidden by that field's value.
+        if (this.dbaseFile.getFieldIndex(field.getName()) == index)
+            super.setValue(field.getName(), this.decodeValue(field, bytes, numRead));
+    }
+
+    /**
+     * Converts a field's bytes to a value of the field's type.
+     * <p/>
+     * This returns null if the field's value is null or the empty string. This enables applications to treat the
+     * DBaseRecord a standard AVList without any knowledge of the DBase file's field keys. Specifically,
+     * DBaseRecord.hasKey() returns true for all fields.
+     *
+     * @param field    the field.
+     * @param bytes    the field's bytes.
+     * @param numBytes the number of bytes preceding the field's zero terminator.
+     *
+     * @return the field's value, or null if the field is empty or cannot be parsed.
+     */
+    @SuppressWarnings({"StringEquality"})
+    protected Object decodeValue(DBaseField field, byte[] bytes, int numBytes)
+    {
+        if (this.dbaseFile.isStringEmpty(bytes, numBytes))
+            return null;
 
-            String value = dbaseFile.decodeString(bytes, numRead).trim();
+        String value = this.dbaseFile.decodeString(bytes, numBytes).trim();
 
-            try
+        try
+        {
+            if (field.getType() == DBaseField.TYPE_BOOLEAN)
             {
-                if (field.getType() == DBaseField.TYPE_BOOLEAN)
-                {
-                    this.setValue(field.getName(), value.equalsIgnoreCase("T") || value.equalsIgnoreCase("Y"));
-                }
-                else if (field.getType() == DBaseField.TYPE_CHAR)
-                {
-                    this.setValue(field.getName(), value);
-                }
-                else if (field.getType() == DBaseField.TYPE_DATE)
-                {
-                    this.setValue(field.getName(), dateformat.parse(value));
-                }
-                else if (field.getType() == DBaseField.TYPE_NUMBER)
+                return value.equalsIgnoreCase("T") || value.equalsIgnoreCase("Y");
+            }
+            else if (field.getType() == DBaseField.TYPE_CHAR)
+            {
+                return value;
+            }
+            else if (field.getType() == DBaseField.TYPE_DATE)
+            {
+                // DateFormat is not thread safe, and records may be decoded on more than one thread.
+                synchronized (dateformat)
                 {
-                    // Parse the field value as a decimal number. Double.parseDouble ignores any leading or trailing
-                    // whitespace.
-                    if (field.getDecimals() > 0)
-                        this.setValue(field.getName(), Double.valueOf(value));
-                    else
-                        this.setValue(field.getName(), Long.valueOf(value));
+                    return dateformat.parse(value);
                 }
             }
-            catch (Exception e)
+            else if (field.getType() == DBaseField.TYPE_NUMBER)
             {
-                // Log warning but keep reading.
-                Logging.logger().log(Level.WARNING, Logging.getMessage("SHP.FieldParsingError", field, value), e);
+                // Parse the field value as a decimal number. Double.parseDouble ignores any leading or trailing
+                // whitespace.
+                if (field.getDecimals() > 0)
+                    return Double.valueOf(value);
+                else
+                    return Long.valueOf(value);
             }
         }
+        catch (Exception e)
+        {
+            // Log warning but keep reading.
+            Logging.logger().log(Level.WARNING, Logging.getMessage("SHP.FieldParsingError", field, value), e);
+        }
+
+        return null;
     }
 }
@@ -21,6 +21,7 @@ import java.net.*;
 import java.nio.*;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 
 /**
@@ -47,6 +48,12 @@ import java.util.logging.Level;
  * </pre>
  * </code>
  * <p/>
+ * Shapefiles opened from a local file that can be memory mapped, and that have an accompanying index file, also
+ * provide random access to their records through {@link #getRecord(int)}, and spatial queries through {@link
+ * #selectRecords(gov.nasa.worldwind.geom.Sector)}. Spatial queries use a {@link ShapefileSpatialIndex}, which is built
+ * the first time it is needed and stored beside the Shapefile for later use. Such Shapefiles can also be read in bulk
+ * by more than one thread with {@link #readRecords(int)}.
+ * <p/>
  * The source Shapefile may be accompanied by an optional index file, attribute file, and projection file. Shapefile
  * constructors that accept a generic source such as {@link #Shapefile(Object) expect accompanying files to be in the
  * same logical folder as the Shapefile, have the same filename as the Shapefile, and have suffixes ".shx", ".dbf", and
@@ -178,6 +185,63 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
     protected ByteBuffer recordHeaderBuffer;
     protected ByteBuffer recordContentBuffer;
     protected MappedByteBuffer mappedShpBuffer;
+    // Random access and spatial query state. Random access requires a memory mapped file and its index.
+    protected File file;
+    protected ShapefileSpatialIndex spatialIndex;
+    /**
+     * The position in the point buffer of the first part of each record read from the memory mapped file, or -1 for
+     * records not yet read. Points are converted in place in the mapped file when they are first read, so a record read
+     * again reuses its converted points.
+     */
+    protected int[] recordParts;
+    /** How the points of the record being read on each thread are added to the point buffer. */
+    protected ThreadLocal<PartAssignment> partAssignment = new ThreadLocal<PartAssignment>();
+
+    /**
+     * Assigns point buffer part numbers to the points of records read from the memory mapped file. Points read again
+     * reuse the part numbers they were assigned when first read. Points read by a bulk read on more than one thread are
+     * collected as blocks, and added to the point buffer in file order once every thread has finished.
+     */
+    protected static class PartAssignment
+    {
+        /** The point buffer position of the next part of a record whose points are reused, or -1. */
+        public int reusedPartNumber = -1;
+        /** Byte ranges of the collected blocks, two values per block, or null if blocks are not collected. */
+        public int[] blocks;
+        public int numBlocks;
+        /** The number of records read, starting with the first record assigned to the thread. */
+        public int numRecordsRead;
+        /** The exception that stopped the thread from reading its remaining records, or null. */
+        public Exception exception;
+
+        /**
+         * Collects a block of points, and returns its part number relative to the first block collected.
+         *
+         * @param beginPos the block's beginning position.
+         * @param endPos   the block's ending position (inclusive).
+         *
+         * @return the block's relative part number.
+         */
+        public int addBlock(int beginPos, int endPos)
+        {
+            if (beginPos < 0 || beginPos > endPos)
+            {
+                String message = Logging.getMessage("generic.indexOutOfRange", beginPos);
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            if (2 * this.numBlocks == this.blocks.length)
+                this.blocks = Arrays.copyOf(this.blocks, 2 * this.blocks.length);
+
+            this.blocks[2 * this.numBlocks] = beginPos;
+            this.blocks[2 * this.numBlocks + 1] = endPos;
+            return this.numBlocks++;
+        }
+    }
+
+    /** The number of ranges of records assigned to each thread of a bulk read, to balance uneven record sizes. */
+    protected static final int RECORD_RANGES_PER_THREAD = 4;
 
     /**
      * Opens an Shapefile from a general source. The source type may be one of the following: <ul> <li>{@link
@@ -510,6 +574,137 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         return record;
     }
 
+    /**
+     * Indicates whether records can be read in any order with {@link #getRecord(int)}, and found with {@link
+     * #selectRecords(gov.nasa.worldwind.geom.Sector)}. Random access is supported when the Shapefile is open, is memory
+     * mapped, and has an accompanying index file.
+     *
+     * @return <code>true</code> if records can be read in any order; <code>false</code> otherwise.
+     */
+    public boolean isRandomAccessSupported()
+    {
+        return this.open && this.mappedShpBuffer != null && this.index != null;
+    }
+
+    /**
+     * Reads the record at a specified position in the Shapefile, without reading the records preceding it. The record's
+     * attributes are read from the same position in the attribute file, if the attribute file supports random access.
+     * This does not affect the records returned by {@link #nextRecord()}.
+     * <p/>
+     * The record's points are read from the memory mapped Shapefile when the record is first read by either this
+     * method or <code>nextRecord</code>. Reading the record again returns a new record sharing those points.
+     *
+     * @param recordIndex the zero-based position of the record in the Shapefile.
+     *
+     * @return the record at the specified position, or <code>null</code> if the record's shape type is not
+     *         recognized.
+     *
+     * @throws IllegalArgumentException if the index is negative or not less than the number of records.
+     * @throws IllegalStateException    if the Shapefile is closed or does not support random access.
+     * @throws WWRuntimeException       if an exception occurs while reading the record.
+     * @see #isRandomAccessSupported()
+     */
+    public ShapefileRecord getRecord(int recordIndex)
+    {
+        this.checkRandomAccess();
+
+        if (recordIndex < 0 || recordIndex >= this.getNumberOfRecords())
+        {
+            String message = Logging.getMessage("generic.indexOutOfRange", recordIndex);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        try
+        {
+            return this.readRecord(recordIndex);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("SHP.ExceptionAttemptingToReadShapefileRecord",
+                this.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().log(Level.SEVERE, message, e);
+            throw new WWRuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Reads every record in the Shapefile, dividing the work among a specified number of threads. Each thread reads a
+     * range of records from the memory mapped Shapefile, using the offsets in the index file to find them, and the
+     * attributes of those records with a single read of the attribute file if it supports random access. This does
+     * not affect the records returned by {@link #nextRecord()}.
+     * <p/>
+     * Record points are views of the memory mapped Shapefile, converted in place according to the Shapefile's
+     * coordinate system, and are added to the Shapefile's point buffer in the same order as they would be by reading
+     * the records sequentially. Records already read by {@link #getRecord(int)} or <code>nextRecord</code> reuse their
+     * points. The calling thread waits for the records to be read, and no other method of this Shapefile may be
+     * called until this method returns.
+     *
+     * @param numThreads the number of threads to read records with.
+     *
+     * @return the Shapefile's records in file order. Records whose shape type is not recognized are <code>null</code>.
+     *
+     * @throws IllegalArgumentException if the number of threads is less than 1.
+     * @throws IllegalStateException    if the Shapefile is closed or does not support random access.
+     * @throws WWRuntimeException       if an exception occurs while reading a record.
+     * @see #isRandomAccessSupported()
+     */
+    public ShapefileRecord[] readRecords(int numThreads)
+    {
+        if (numThreads < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "numThreads < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.checkRandomAccess();
+
+        try
+        {
+            return this.readAllRecords(numThreads);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("SHP.ExceptionAttemptingToReadShapefileRecord",
+                this.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().log(Level.SEVERE, message, e);
+            throw new WWRuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Finds the records whose bounding rectangles intersect a sector. The records are found with the Shapefile's
+     * spatial index, which is read from the file beside the Shapefile with the suffix {@link
+     * ShapefileSpatialIndex#INDEX_FILE_SUFFIX}. If that file does not exist or is older than the Shapefile, the index
+     * is built from the record bounding rectangles and written to that file. The found records may then be read with
+     * {@link #getRecord(int)}.
+     * <p/>
+     * Bounding rectangles are compared in the Shapefile's coordinate system after it has been converted to geographic
+     * coordinates, and are rounded outward to single precision, so a few records whose bounds lie just outside the
+     * sector may be included.
+     *
+     * @param sector the sector to search.
+     *
+     * @return the zero-based positions of the intersecting records, in ascending order.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     * @throws IllegalStateException    if the Shapefile is closed or does not support random access.
+     */
+    public int[] selectRecords(Sector sector)
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.checkRandomAccess();
+
+        return this.getSpatialIndex().select(sector);
+    }
+
     /**
      * Closes the Shapefile, freeing any resources allocated during reading except the buffer containing the Shapefile's
      * points. This closes any {@link java.io.InputStream} passed to the Shapefile during construction. Subsequent calls
@@ -549,6 +744,8 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         this.recordHeaderBuffer = null;
         this.recordContentBuffer = null;
         this.mappedShpBuffer = null;
+        this.recordParts = null;
+        this.spatialIndex = null;
         this.open = false;
     }
 
@@ -626,6 +823,7 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         // Initialize the Shapefile before opening its associated attributes file. This avoids opening the attributes
         // file if an exception is thrown while opening the Shapefile.
         this.setValue(AVKey.DISPLAY_NAME, file.getPath());
+        this.file = file;
         this.initialize(params);
 
         // Open the shapefile attribute source as a DBaseFile. We let the DBaseFile determine how to handle source File.
@@ -827,6 +1025,13 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         this.header = this.readHeader();
         this.open = true;
 
+        // Track the points of each record read from a memory mapped file, so records can be read again in any order.
+        if (this.mappedShpBuffer != null && this.index != null)
+        {
+            this.recordParts = new int[this.getNumberOfRecords()];
+            Arrays.fill(this.recordParts, -1);
+        }
+
         // Specify that the record's points should be normalized if the header is flagged as needing normalized points.
         this.setNormalizePoints(this.header.normalizePoints);
     }
@@ -1061,6 +1266,132 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         return array;
     }
 
+    //**************************************************************//
+    //********************  Random Access  *************************//
+    //**************************************************************//
+
+    protected void checkRandomAccess()
+    {
+        if (!this.open)
+        {
+            String message = Logging.getMessage("SHP.ShapefileClosed", this.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        if (!this.isRandomAccessSupported())
+        {
+            String message = Logging.getMessage("SHP.RandomAccessNotSupported", this.getValue(AVKey.DISPLAY_NAME));
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+    }
+
+    /**
+     * Returns the Shapefile's spatial index, reading or building it the first time it is requested.
+     *
+     * @return the Shapefile's spatial index.
+     */
+    protected synchronized ShapefileSpatialIndex getSpatialIndex()
+    {
+        if (this.spatialIndex == null)
+            this.spatialIndex = this.createSpatialIndex();
+
+        return this.spatialIndex;
+    }
+
+    /**
+     * Reads the spatial index stored beside the Shapefile, or builds the index and stores it there if the stored index
+     * is missing or was built from a different version of the Shapefile. If the index cannot be stored, for example
+     * because the folder is read-only, the index built is used without storing it.
+     *
+     * @return the Shapefile's spatial index.
+     */
+    protected ShapefileSpatialIndex createSpatialIndex()
+    {
+        File indexFile = new File(WWIO.replaceSuffix(this.file.getPath(), ShapefileSpatialIndex.INDEX_FILE_SUFFIX));
+        long length = this.file.length();
+        long lastModified = this.file.lastModified();
+
+        if (indexFile.exists())
+        {
+            try
+            {
+                ShapefileSpatialIndex index = ShapefileSpatialIndex.read(indexFile, length, lastModified);
+                if (index != null && index.getNumberOfRecords() == this.getNumberOfRecords())
+                    return index;
+            }
+            catch (Exception e)
+            {
+                Logging.logger().log(Level.WARNING,
+                    Logging.getMessage("SHP.ExceptionAttemptingToReadSpatialIndex", indexFile.getPath()), e);
+            }
+        }
+
+        ShapefileSpatialIndex index = ShapefileSpatialIndex.build(this.readRecordBounds(), length, lastModified);
+        try
+        {
+            index.write(indexFile);
+        }
+        catch (IOException e)
+        {
+            Logging.logger().log(Level.WARNING,
+                Logging.getMessage("SHP.ExceptionAttemptingToWriteSpatialIndex", indexFile.getPath()), e);
+        }
+
+        return index;
+    }
+
+    /**
+     * Reads the bounding rectangle of every record in the memory mapped Shapefile, without reading the records' points.
+     * Bounding rectangles are converted according to the Shapefile's coordinate system. The bounds of point records are
+     * their point, and the bounds of null records are NaN.
+     *
+     * @return the bounding rectangles, four values per record ordered as follows: (minY, maxY, minX, maxX).
+     */
+    protected double[] readRecordBounds()
+    {
+        int numRecords = this.getNumberOfRecords();
+        double[] bounds = new double[4 * numRecords];
+        ByteBuffer buffer = this.mappedShpBuffer.duplicate();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer pointBuffer = ByteBuffer.allocate(2 * WWBufferUtil.SIZEOF_DOUBLE).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < numRecords; i++)
+        {
+            int pos = this.index[2 * i] + ShapefileRecord.RECORD_HEADER_LENGTH;
+            buffer.clear();
+            buffer.position(pos);
+            String shapeType = this.getShapeType(buffer.getInt());
+
+            if (shapeType == null || isNullType(shapeType))
+            {
+                Arrays.fill(bounds, 4 * i, 4 * i + 4, Double.NaN);
+            }
+            else if (isPointType(shapeType))
+            {
+                // Read the point from a copy, since reading points may convert them in place.
+                buffer.limit(pos + 4 + pointBuffer.capacity());
+                pointBuffer.clear();
+                pointBuffer.put(buffer);
+                pointBuffer.flip();
+                DoubleBuffer point = this.readPoints(null, pointBuffer);
+                bounds[4 * i] = bounds[4 * i + 1] = point.get(1);
+                bounds[4 * i + 2] = bounds[4 * i + 3] = point.get(0);
+            }
+            else if (isMultiPointType(shapeType) || isPolylineType(shapeType) || isPolygonType(shapeType))
+            {
+                System.arraycopy(this.readBoundingRectangle(buffer).coords, 0, bounds, 4 * i, 4);
+            }
+            else
+            {
+                Arrays.fill(bounds, 4 * i, 4 * i + 4, Double.NaN);
+            }
+        }
+
+        return bounds;
+    }
+
     //**************************************************************//
     //********************  Coordinate System  *********************//
     //**************************************************************//
@@ -1257,7 +1588,8 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
      */
     protected ShapefileRecord readRecordFromBuffer(ByteBuffer buffer)
     {
-        ShapefileRecord record = this.createRecord(buffer);
+        ShapefileRecord record = this.mappedShpBuffer != null ? this.createMappedRecord(buffer, this.numRecordsRead)
+            : this.createRecord(buffer);
 
         if (record != null)
         {
@@ -1271,6 +1603,289 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         return record;
     }
 
+    /**
+     * Reads the record at a specified position in the memory mapped Shapefile, and its attributes. This reads from a
+     * duplicate of the mapped buffer, so the position of the next sequential record is unchanged.
+     *
+     * @param recordIndex the zero-based position of the record.
+     *
+     * @return the record, or <code>null</code> if the record's shape type is not recognized.
+     */
+    protected ShapefileRecord readRecord(int recordIndex)
+    {
+        ShapefileRecord record = this.readMappedRecord(this.mappedShpBuffer.duplicate(), recordIndex);
+
+        if (record != null && this.attributeFile != null && this.attributeFile.isRandomAccessSupported()
+            && recordIndex < this.attributeFile.getNumberOfRecords())
+        {
+            record.setAttributes(this.attributeFile.getRecord(recordIndex));
+        }
+
+        return record;
+    }
+
+    /**
+     * Reads the record at a specified position in the memory mapped Shapefile, using the record's offset in the index
+     * file. This does not read the record's attributes.
+     *
+     * @param buffer      a duplicate of the memory mapped Shapefile. Its position and limit are changed.
+     * @param recordIndex the zero-based position of the record.
+     *
+     * @return the record, or <code>null</code> if the record's shape type is not recognized.
+     */
+    protected ShapefileRecord readMappedRecord(ByteBuffer buffer, int recordIndex)
+    {
+        int offset = this.index[2 * recordIndex];
+        int contentLength = this.index[2 * recordIndex + 1];
+
+        buffer.limit(offset + ShapefileRecord.RECORD_HEADER_LENGTH + contentLength);
+        buffer.position(offset);
+
+        return this.createMappedRecord(buffer, recordIndex);
+    }
+
+    /**
+     * Creates a record from the memory mapped Shapefile. If the record has been read before, the new record reuses the
+     * points read then, rather than reading and converting them again.
+     *
+     * @param buffer      the buffer containing the record, positioned at its start.
+     * @param recordIndex the zero-based position of the record.
+     *
+     * @return the record, or <code>null</code> if the record's shape type is not recognized.
+     */
+    protected ShapefileRecord createMappedRecord(ByteBuffer buffer, int recordIndex)
+    {
+        boolean tracked = this.recordParts != null && recordIndex < this.recordParts.length;
+
+        // A thread of a bulk read has its own part assignment, which collects the blocks of points it reads.
+        PartAssignment parts = this.partAssignment.get();
+        boolean bulkRead = parts != null;
+        if (!bulkRead)
+        {
+            parts = new PartAssignment();
+            this.partAssignment.set(parts);
+        }
+
+        ShapefileRecord record;
+        parts.reusedPartNumber = tracked ? this.recordParts[recordIndex] : -1;
+        try
+        {
+            record = this.createRecord(buffer);
+        }
+        finally
+        {
+            parts.reusedPartNumber = -1;
+            if (!bulkRead)
+                this.partAssignment.remove();
+        }
+
+        // The part numbers of records read in bulk are known once their points are added to the point buffer.
+        if (tracked && !bulkRead && hasPoints(record))
+            this.recordParts[recordIndex] = record.getFirstPartNumber();
+
+        return record;
+    }
+
+    /**
+     * Indicates whether a record has points in the point buffer.
+     *
+     * @param record the record, may be null.
+     *
+     * @return <code>true</code> if the record has a first part number; <code>false</code> otherwise.
+     */
+    protected static boolean hasPoints(ShapefileRecord record)
+    {
+        return record != null && record.getNumberOfParts() > 0 && record.getFirstPartNumber() >= 0;
+    }
+
+    /**
+     * Reads every record in the memory mapped Shapefile on a specified number of threads. The records are divided into
+     * ranges of about the same number of bytes, which are read on a pool of threads created for this read. Once every
+     * range is read, the points of each range are added to the point buffer in file order.
+     *
+     * @param numThreads the number of threads to read records with.
+     *
+     * @return the Shapefile's records in file order.
+     *
+     * @throws Exception if any record cannot be read.
+     */
+    protected ShapefileRecord[] readAllRecords(int numThreads) throws Exception
+    {
+        final ShapefileRecord[] records = new ShapefileRecord[this.getNumberOfRecords()];
+        int[] rangeStarts = this.computeRecordRanges(numThreads * RECORD_RANGES_PER_THREAD);
+
+        List<Callable<PartAssignment>> tasks = new ArrayList<Callable<PartAssignment>>();
+        for (int i = 0; i < rangeStarts.length - 1; i++)
+        {
+            final int start = rangeStarts[i];
+            final int end = rangeStarts[i + 1];
+            tasks.add(new Callable<PartAssignment>()
+            {
+                public PartAssignment call() throws Exception
+                {
+                    return readRecordRange(records, start, end);
+                }
+            });
+        }
+
+        List<Future<PartAssignment>> results;
+        ExecutorService service = this.createReadService(numThreads);
+        try
+        {
+            results = service.invokeAll(tasks);
+        }
+        finally
+        {
+            service.shutdown();
+        }
+
+        // Add the points of every range to the point buffer, including those of the records read before another record
+        // in its range failed, so no record's points are converted a second time.
+        Exception exception = null;
+        for (int i = 0; i < results.size(); i++)
+        {
+            PartAssignment parts = results.get(i).get();
+            this.addRecordRangePoints(records, rangeStarts[i], parts);
+
+            if (exception == null)
+                exception = parts.exception;
+        }
+
+        if (exception != null)
+            throw exception;
+
+        return records;
+    }
+
+    /**
+     * Divides the records into ranges of adjacent records, each with about the same number of bytes according to the
+     * record offsets in the index file.
+     *
+     * @param numRanges the maximum number of ranges.
+     *
+     * @return the position of the first record in each range, followed by the number of records.
+     */
+    protected int[] computeRecordRanges(int numRanges)
+    {
+        int numRecords = this.getNumberOfRecords();
+        numRanges = Math.max(1, Math.min(numRanges, numRecords));
+
+        long firstOffset = numRecords > 0 ? this.index[0] : 0;
+        long length = this.header.fileLength - firstOffset;
+
+        int[] starts = new int[numRanges + 1];
+        int numStarts = 1;
+        for (int i = 1; i < numRecords && numStarts < numRanges; i++)
+        {
+            // Start a new range at the first record beyond the range's share of the file.
+            if (this.index[2 * i] - firstOffset >= numStarts * length / numRanges)
+                starts[numStarts++] = i;
+        }
+        starts[numStarts] = numRecords;
+
+        return Arrays.copyOf(starts, numStarts + 1);
+    }
+
+    /**
+     * Creates the thread pool used by {@link #readRecords(int)}. The threads are daemon threads, so they do not prevent
+     * the application from exiting.
+     *
+     * @param numThreads the number of threads.
+     *
+     * @return a new thread pool.
+     */
+    protected ExecutorService createReadService(int numThreads)
+    {
+        return Executors.newFixedThreadPool(numThreads, new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "World Wind Shapefile Reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Reads a range of records from the memory mapped Shapefile, and their attributes. The points of records not read
+     * before are collected as blocks, rather than added to the point buffer, and the records' part numbers are relative
+     * to the first block collected. Reading stops at the first record that cannot be read, and the exception is
+     * returned with the blocks collected.
+     *
+     * @param records the array in which to place the records.
+     * @param start   the position of the first record to read.
+     * @param end     the position following the last record to read.
+     *
+     * @return the blocks collected, the number of records read, and any exception that stopped the read.
+     */
+    protected PartAssignment readRecordRange(ShapefileRecord[] records, int start, int end)
+    {
+        PartAssignment parts = new PartAssignment();
+        parts.blocks = new int[2 * Math.max(end - start, 1)];
+        this.partAssignment.set(parts);
+        try
+        {
+            DBaseRecord[] attributes = null;
+            if (this.attributeFile != null && this.attributeFile.isRandomAccessSupported())
+            {
+                int count = Math.min(end, this.attributeFile.getNumberOfRecords()) - start;
+                if (count > 0)
+                    attributes = this.attributeFile.readRecords(start, count);
+            }
+
+            ByteBuffer buffer = this.mappedShpBuffer.duplicate();
+            for (int i = start; i < end; i++)
+            {
+                records[i] = this.readMappedRecord(buffer, i);
+
+                if (records[i] != null && attributes != null && i - start < attributes.length)
+                    records[i].setAttributes(attributes[i - start]);
+
+                parts.numRecordsRead++;
+            }
+        }
+        catch (Exception e)
+        {
+            parts.exception = e;
+        }
+        finally
+        {
+            this.partAssignment.remove();
+        }
+
+        return parts;
+    }
+
+    /**
+     * Adds the blocks of points collected while reading a range of records to the point buffer, and makes the part
+     * numbers of the records whose points were collected relative to the start of the point buffer.
+     *
+     * @param records the records.
+     * @param start   the position of the first record in the range.
+     * @param parts   the blocks collected while reading the range.
+     */
+    protected void addRecordRangePoints(ShapefileRecord[] records, int start, PartAssignment parts)
+    {
+        VecBufferBlocks pointBuffer = this.getMappedPointBuffer();
+
+        int firstPartNumber = pointBuffer.size();
+        for (int i = 0; i < parts.numBlocks; i++)
+        {
+            pointBuffer.addBlock(parts.blocks[2 * i], parts.blocks[2 * i + 1]);
+        }
+
+        for (int i = start; i < start + parts.numRecordsRead; i++)
+        {
+            // Records read before this bulk read reuse the part numbers they already have.
+            if (this.recordParts[i] < 0 && hasPoints(records[i]))
+            {
+                records[i].firstPartNumber += firstPartNumber;
+                this.recordParts[i] = records[i].firstPartNumber;
+            }
+        }
+    }
+
     /**
      * Returns a new <code>{@link gov.nasa.worldwind.formats.shapefile.ShapefileRecord}</code> from the specified
      * buffer. The buffer's current position is assumed to be set at the start of the record and will be set to the
@@ -1489,6 +2104,15 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
     {
         DoubleBuffer pointBuffer;
 
+        // The points of a record read again from the memory mapped file were read, converted in place, and added to the
+        // point buffer when the record was first read. Reuse them rather than converting them a second time.
+        PartAssignment parts = this.partAssignment.get();
+        if (parts != null && parts.reusedPartNumber >= 0)
+        {
+            buffer.position(buffer.position() + 2 * WWBufferUtil.SIZEOF_DOUBLE * numPoints);
+            return parts.reusedPartNumber++;
+        }
+
         // Read the point data, keeping track of the start and end of the point data.
         int pos = buffer.position();
         int limit = buffer.position() + 2 * WWBufferUtil.SIZEOF_DOUBLE * numPoints;
@@ -1509,18 +2133,12 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         // Add the point data to the Shapefile's internal point buffer.
         if (this.mappedShpBuffer != null)
         {
-            if (this.pointBuffer == null)
-            {
-                // Create a VecBufferBlocks to hold this Shapefile's point data. Shapefile points are 2-tuples stored in
-                // IEEE 64-bit floating point format, in little endian byte order.
-                ByteBuffer buf = this.mappedShpBuffer.duplicate();
-                buf.order(ByteOrder.LITTLE_ENDIAN);
-                buf.clear();
-                this.pointBuffer = new VecBufferBlocks(2, AVKey.FLOAT64, buf);
-            }
+            // Points read by a thread of a bulk read are added to the point buffer once every thread has finished.
+            if (parts != null && parts.blocks != null)
+                return parts.addBlock(pos, limit - 1);
 
             // Add the point's byte range to the VecBufferBlocks.
-            return ((VecBufferBlocks) this.pointBuffer).addBlock(pos, limit - 1);
+            return this.getMappedPointBuffer().addBlock(pos, limit - 1);
         }
         else
         {
@@ -1552,6 +2170,27 @@ public class Shapefile extends AVListImpl implements Closeable, Exportable
         }
     }
 
+    /**
+     * Returns the point buffer of a memory mapped Shapefile, creating it if necessary. The point buffer refers to the
+     * points in the mapped file, rather than holding a copy of them.
+     *
+     * @return the Shapefile's point buffer.
+     */
+    protected VecBufferBlocks getMappedPointBuffer()
+    {
+        if (this.pointBuffer == null)
+        {
+            // Create a VecBufferBlocks to hold this Shapefile's point data. Shapefile points are 2-tuples stored in
+            // IEEE 64-bit floating point format, in little endian byte order.
+            ByteBuffer buf = this.mappedShpBuffer.duplicate();
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.clear();
+            this.pointBuffer = new VecBufferBlocks(2, AVKey.FLOAT64, buf);
+        }
+
+        return (VecBufferBlocks) this.pointBuffer;
+    }
+
     /**
      * Estimate the number of points in a shapefile.
      *
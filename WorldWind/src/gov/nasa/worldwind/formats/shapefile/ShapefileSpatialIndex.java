@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.shapefile;
+
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A packed Hilbert R-tree over the bounding rectangles of a Shapefile's records, used to find the records intersecting
+ * a sector without reading every record. The tree is built once from the record bounding rectangles and may be written
+ * to a file beside the Shapefile, from which it is read by memory mapping rather than loading it into the heap.
+ * <p/>
+ * Records are sorted by the Hilbert curve position of their bounding rectangle centers, then grouped into nodes of
+ * {@link #NODE_SIZE} entries, level by level up to a single root. Bounding rectangles are stored as single precision
+ * values rounded outward, so a query never misses a record, but may return records whose exact bounds just miss the
+ * query sector.
+ * <p/>
+ * The index file is laid out in little endian byte order as follows: a header containing a magic number, version,
+ * source file length and modification time, number of records, number of indexed entries, node size and number of
+ * levels, then the end position of each level, then the four bounds of every node ordered (minY, maxY, minX, maxX),
+ * then the record index of every leaf or first child position of every internal node.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class ShapefileSpatialIndex
+{
+    /** The suffix of spatial index files, which have the same name as their Shapefile. */
+    public static final String INDEX_FILE_SUFFIX = ".wwx";
+    /** The number of entries in each node of the tree. */
+    public static final int NODE_SIZE = 16;
+
+    protected static final int MAGIC = 0x57575358; // "WWSX"
+    protected static final int VERSION = 1;
+    protected static final int HEADER_LENGTH = 40;
+    protected static final int HILBERT_ORDER = 15;
+
+    protected final ByteBuffer buffer;
+    protected final long sourceLength;
+    protected final long sourceModified;
+    protected final int numRecords;
+    protected final int numEntries;
+    protected final int[] levelEnds;
+    protected final int boundsOffset;
+    protected final int indicesOffset;
+
+    /**
+     * Creates an index from a buffer holding the contents of an index file.
+     *
+     * @param buffer the index contents.
+     *
+     * @throws IllegalArgumentException if the buffer is null or does not contain an index.
+     */
+    public ShapefileSpatialIndex(ByteBuffer buffer)
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+            || buffer.getInt(32) != NODE_SIZE)
+        {
+            String message = Logging.getMessage("SHP.UnrecognizedSpatialIndex", buffer);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.buffer = buffer;
+        this.sourceLength = buffer.getLong(8);
+        this.sourceModified = buffer.getLong(16);
+        this.numRecords = buffer.getInt(24);
+        this.numEntries = buffer.getInt(28);
+        this.levelEnds = new int[buffer.getInt(36)];
+        for (int i = 0; i < this.levelEnds.length; i++)
+        {
+            this.levelEnds[i] = buffer.getInt(HEADER_LENGTH + 4 * i);
+        }
+
+        int numNodes = this.levelEnds.length > 0 ? this.levelEnds[this.levelEnds.length - 1] : 0;
+        this.boundsOffset = HEADER_LENGTH + 4 * this.levelEnds.length;
+        this.indicesOffset = this.boundsOffset + 16 * numNodes;
+
+        if (buffer.capacity() < this.indicesOffset + 4 * numNodes)
+        {
+            String message = Logging.getMessage("generic.InvalidFileLength", buffer.capacity());
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Builds an index from the bounding rectangles of a Shapefile's records.
+     *
+     * @param bounds         the bounding rectangle of every record, four values per record ordered (minY, maxY, minX,
+     *                       maxX). Records with no shape, such as null records, have NaN bounds and are not indexed.
+     * @param sourceLength   the length of the Shapefile, recorded so that stale index files can be recognized.
+     * @param sourceModified the modification time of the Shapefile.
+     *
+     * @return the index.
+     *
+     * @throws IllegalArgumentException if the bounds array is null or its length is not a multiple of four.
+     */
+    public static ShapefileSpatialIndex build(double[] bounds, long sourceLength, long sourceModified)
+    {
+        if (bounds == null || bounds.length % 4 != 0)
+        {
+            String message = Logging.getMessage("generic.ArrayInvalidLength", bounds != null ? bounds.length : 0);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int numRecords = bounds.length / 4;
+
+        // Find the extent of the indexed records, which the Hilbert curve covers.
+        double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE, minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+        int numEntries = 0;
+        for (int i = 0; i < numRecords; i++)
+        {
+            if (Double.isNaN(bounds[4 * i]))
+                continue;
+
+            minY = Math.min(minY, bounds[4 * i]);
+            maxY = Math.max(maxY, bounds[4 * i + 1]);
+            minX = Math.min(minX, bounds[4 * i + 2]);
+            maxX = Math.max(maxX, bounds[4 * i + 3]);
+            numEntries++;
+        }
+
+        // Sort the records by the Hilbert value of their centers. The Hilbert value occupies the upper 30 bits of each
+        // key and the record index the lower 32, so sorting the keys sorts the records.
+        long[] keys = new long[numEntries];
+        int hilbertMax = (1 << HILBERT_ORDER) - 1;
+        double scaleX = maxX > minX ? hilbertMax / (maxX - minX) : 0;
+        double scaleY = maxY > minY ? hilbertMax / (maxY - minY) : 0;
+        for (int i = 0, k = 0; i < numRecords; i++)
+        {
+            if (Double.isNaN(bounds[4 * i]))
+                continue;
+
+            int x = (int) (((bounds[4 * i + 2] + bounds[4 * i + 3]) / 2 - minX) * scaleX);
+            int y = (int) (((bounds[4 * i] + bounds[4 * i + 1]) / 2 - minY) * scaleY);
+            keys[k++] = (hilbertValue(x, y) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        // Compute the number of nodes in each level, from the leaves to the root.
+        int[] levelEnds = computeLevelEnds(numEntries);
+        int numNodes = levelEnds.length > 0 ? levelEnds[levelEnds.length - 1] : 0;
+        int boundsOffset = HEADER_LENGTH + 4 * levelEnds.length;
+        int indicesOffset = boundsOffset + 16 * numNodes;
+
+        ByteBuffer buffer = ByteBuffer.allocate(indicesOffset + 4 * numNodes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sourceLength).putLong(sourceModified);
+        buffer.putInt(numRecords).putInt(numEntries).putInt(NODE_SIZE).putInt(levelEnds.length);
+        for (int end : levelEnds)
+        {
+            buffer.putInt(end);
+        }
+
+        // Write the leaves, in Hilbert order.
+        for (int i = 0; i < numEntries; i++)
+        {
+            int record = (int) keys[i];
+            putBounds(buffer, boundsOffset, i, (float) roundDown(bounds[4 * record]),
+                (float) roundUp(bounds[4 * record + 1]), (float) roundDown(bounds[4 * record + 2]),
+                (float) roundUp(bounds[4 * record + 3]));
+            buffer.putInt(indicesOffset + 4 * i, record);
+        }
+
+        // Write each level of internal nodes, each node bounding a group of nodes in the level below.
+        for (int level = 1; level < levelEnds.length; level++)
+        {
+            int childStart = level > 1 ? levelEnds[level - 2] : 0;
+            int childEnd = levelEnds[level - 1];
+            int node = levelEnds[level - 1];
+            for (int child = childStart; child < childEnd; child += NODE_SIZE, node++)
+            {
+                float nMinY = Float.MAX_VALUE, nMaxY = -Float.MAX_VALUE;
+                float nMinX = Float.MAX_VALUE, nMaxX = -Float.MAX_VALUE;
+                for (int c = child; c < Math.min(child + NODE_SIZE, childEnd); c++)
+                {
+                    int pos = boundsOffset + 16 * c;
+                    nMinY = Math.min(nMinY, buffer.getFloat(pos));
+                    nMaxY = Math.max(nMaxY, buffer.getFloat(pos + 4));
+                    nMinX = Math.min(nMinX, buffer.getFloat(pos + 8));
+                    nMaxX = Math.max(nMaxX, buffer.getFloat(pos + 12));
+                }
+
+                putBounds(buffer, boundsOffset, node, nMinY, nMaxY, nMinX, nMaxX);
+                buffer.putInt(indicesOffset + 4 * node, child);
+            }
+        }
+
+        buffer.clear();
+        return new ShapefileSpatialIndex(buffer);
+    }
+
+    /**
+     * Reads an index file by memory mapping it. This returns null if the file was built from a different version of
+     * the Shapefile than the one specified.
+     *
+     * @param file           the index file.
+     * @param sourceLength   the length of the Shapefile.
+     * @param sourceModified the modification time of the Shapefile.
+     *
+     * @return the index, or null if the file is out of date.
+     *
+     * @throws IOException              if the file cannot be read.
+     * @throws IllegalArgumentException if the file does not contain an index.
+     */
+    public static ShapefileSpatialIndex read(File file, long sourceLength, long sourceModified) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        ShapefileSpatialIndex index = new ShapefileSpatialIndex(WWIO.mapFile(file, FileChannel.MapMode.READ_ONLY));
+        if (index.sourceLength != sourceLength || index.sourceModified != sourceModified)
+            return null;
+
+        return index;
+    }
+
+    /**
+     * Writes the index to a file.
+     *
+     * @param file the file to write.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        ByteBuffer contents = this.buffer.duplicate();
+        contents.clear();
+
+        FileOutputStream stream = new FileOutputStream(file);
+        try
+        {
+            FileChannel channel = stream.getChannel();
+            while (contents.hasRemaining())
+            {
+                channel.write(contents);
+            }
+        }
+        finally
+        {
+            WWIO.closeStream(stream, file.getPath());
+        }
+    }
+
+    /**
+     * Returns the number of records in the Shapefile the index was built from, including records that are not
+     * indexed.
+     *
+     * @return the number of records.
+     */
+    public int getNumberOfRecords()
+    {
+        return this.numRecords;
+    }
+
+    /**
+     * Finds the records whose bounding rectangles intersect a sector.
+     *
+     * @param sector the sector to search.
+     *
+     * @return the zero-based positions of the intersecting records, in ascending order.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     */
+    public int[] select(Sector sector)
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.levelEnds.length == 0)
+            return new int[0];
+
+        double minY = sector.getMinLatitude().degrees;
+        double maxY = sector.getMaxLatitude().degrees;
+        double minX = sector.getMinLongitude().degrees;
+        double maxX = sector.getMaxLongitude().degrees;
+
+        int[] results = new int[16];
+        int numResults = 0;
+        // Nodes to visit, as pairs of a node position and its level.
+        int[] stack = new int[2 * NODE_SIZE * this.levelEnds.length];
+        int stackSize = 0;
+
+        int root = this.levelEnds[this.levelEnds.length - 1] - 1;
+        if (this.intersects(root, minY, maxY, minX, maxX))
+        {
+            stack[stackSize++] = root;
+            stack[stackSize++] = this.levelEnds.length - 1;
+        }
+
+        while (stackSize > 0)
+        {
+            int level = stack[--stackSize];
+            int node = stack[--stackSize];
+
+            if (level == 0)
+            {
+                if (numResults == results.length)
+                    results = Arrays.copyOf(results, 2 * numResults);
+                results[numResults++] = this.buffer.getInt(this.indicesOffset + 4 * node);
+                continue;
+            }
+
+            int first = this.buffer.getInt(this.indicesOffset + 4 * node);
+            int last = Math.min(first + NODE_SIZE, this.levelEnds[level - 1]);
+            for (int child = first; child < last; child++)
+            {
+                if (this.intersects(child, minY, maxY, minX, maxX))
+                {
+                    stack[stackSize++] = child;
+                    stack[stackSize++] = level - 1;
+                }
+            }
+        }
+
+        int[] selected = Arrays.copyOf(results, numResults);
+        Arrays.sort(selected);
+        return selected;
+    }
+
+    protected boolean intersects(int node, double minY, double maxY, double minX, double maxX)
+    {
+        int pos = this.boundsOffset + 16 * node;
+        return this.buffer.getFloat(pos) <= maxY && this.buffer.getFloat(pos + 4) >= minY
+            && this.buffer.getFloat(pos + 8) <= maxX && this.buffer.getFloat(pos + 12) >= minX;
+    }
+
+    protected static int[] computeLevelEnds(int numEntries)
+    {
+        if (numEntries == 0)
+            return new int[0];
+
+        int[] levelEnds = new int[32];
+        int numLevels = 0;
+        int count = numEntries;
+        int end = numEntries;
+        levelEnds[numLevels++] = end;
+        while (count > 1)
+        {
+            count = (count + NODE_SIZE - 1) / NODE_SIZE;
+            end += count;
+            levelEnds[numLevels++] = end;
+        }
+
+        return Arrays.copyOf(levelEnds, numLevels);
+    }
+
+    protected static void putBounds(ByteBuffer buffer, int boundsOffset, int node, float minY, float maxY, float minX,
+        float maxX)
+    {
+        int pos = boundsOffset + 16 * node;
+        buffer.putFloat(pos, minY);
+        buffer.putFloat(pos + 4, maxY);
+        buffer.putFloat(pos + 8, minX);
+        buffer.putFloat(pos + 12, maxX);
+    }
+
+    protected static double roundDown(double value)
+    {
+        float f = (float) value;
+        return f > value ? Math.nextAfter(f, Double.NEGATIVE_INFINITY) : f;
+    }
+
+    protected static double roundUp(double value)
+    {
+        float f = (float) value;
+        return f < value ? Math.nextUp(f) : f;
+    }
+
+    /**
+     * Computes the position of a point along a Hilbert curve filling a square of 2^15 by 2^15 cells.
+     *
+     * @param x the point's column, from 0 to 2^15 - 1.
+     * @param y the point's row, from 0 to 2^15 - 1.
+     *
+     * @return the point's position along the curve.
+     */
+    protected static long hilbertValue(int x, int y)
+    {
+        int n = 1 << HILBERT_ORDER;
+        long d = 0;
+        for (int s = n / 2; s > 0; s /= 2)
+        {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+
+            // Rotate the quadrant so the curve continues in the right orientation.
+            if (ry == 0)
+            {
+                if (rx == 1)
+                {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+
+        return d;
+    }
+}
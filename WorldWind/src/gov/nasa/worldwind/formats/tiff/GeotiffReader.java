@@ -22,6 +22,14 @@ import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 
 /**
+ * Reads GeoTIFF and TIFF images. Images may be stored as strips or as tiles, and may be uncompressed or compressed with
+ * LZW, Deflate or PackBits. Reduced resolution images, such as the overviews GDAL writes after the full resolution
+ * image, share the full resolution image's georeferencing; see {@link #isReducedResolution(int)}.
+ * <p/>
+ * Tiled and compressed images are decoded one tile or strip at a time from a memory-mapped view of the file. {@link
+ * #readDataRaster(gov.nasa.worldwind.geom.Sector, double)} uses this to read only the part of an image covering a
+ * sector, from the overview best matching a resolution.
+ *
  * @author brownrigg
  * @version $Id$
  */
@@ -38,6 +46,10 @@ public class GeotiffReader implements Disposable
     private ArrayList<TiffIFDEntry[]> tiffIFDs = null;
     private ArrayList<AVList> metadata = null;
 
+    // Decoders of tiled and compressed images, created on first use. Guarded by this.
+    private TIFFImageDecoder[] decoders;
+    private ByteBuffer fileMap;
+
     public GeotiffReader(String sourceFilename) throws IOException
     {
         this.sourceFilename = sourceFilename;
@@ -123,12 +135,14 @@ public class GeotiffReader implements Disposable
             return null;
         }
 
-        DataRaster[] rasters = new DataRaster[num];
+        // Reduced resolution images duplicate the full resolution images preceding them, so don't read them.
+        ArrayList<DataRaster> rasters = new ArrayList<DataRaster>(num);
         for (int i = 0; i < num; i++)
         {
-            rasters[i] = this.doRead(i);
+            if (!this.isReducedResolution(i))
+                rasters.add(this.doRead(i));
         }
-        return rasters;
+        return rasters.toArray(new DataRaster[rasters.size()]);
     }
 
     public DataRaster readDataRaster(int imageIndex) throws IOException
@@ -137,6 +151,325 @@ public class GeotiffReader implements Disposable
         return this.doRead(imageIndex);
     }
 
+    /**
+     * Indicates whether an image is a reduced resolution version of another image in the file, such as an overview.
+     * Reduced resolution images cover the same sector as the full resolution image preceding them.
+     *
+     * @param imageIndex the image index.
+     *
+     * @return true if the image is a reduced resolution image, otherwise false.
+     *
+     * @throws IOException if the image index is invalid.
+     */
+    public boolean isReducedResolution(int imageIndex) throws IOException
+    {
+        checkImageIndex(imageIndex);
+        TiffIFDEntry entry = getByTag(this.tiffIFDs.get(imageIndex), Tiff.Tag.NEW_SUBFILE_TYPE);
+        return entry != null && (entry.asLong() & Tiff.NewSubfileType.REDUCED_RESOLUTION) != 0;
+    }
+
+    /**
+     * Indicates whether an image is stored as tiles rather than as strips.
+     *
+     * @param imageIndex the image index.
+     *
+     * @return true if the image is tiled, otherwise false.
+     *
+     * @throws IOException if the image index is invalid.
+     */
+    public boolean isTiled(int imageIndex) throws IOException
+    {
+        checkImageIndex(imageIndex);
+        return getByTag(this.tiffIFDs.get(imageIndex), Tiff.Tag.TILE_WIDTH) != null;
+    }
+
+    /**
+     * Reads the part of the first image covering a sector. The image is read from the coarsest of the first image and
+     * its reduced resolution images whose resolution is at least the target resolution, or from the first image if
+     * none is. Only the tiles or strips intersecting the sector are decoded.
+     * <p/>
+     * The returned raster covers whole pixels, so its sector may be slightly larger than the requested sector. It also
+     * includes a border of one pixel where the image has one, so that interpolating the returned raster near the
+     * sector's edges gives the same values as interpolating the whole image.
+     *
+     * @param sector           the sector to read.
+     * @param targetResolution the desired resolution, in radians of latitude per pixel.
+     *
+     * @return the raster covering the sector, or null if the sector does not intersect the image.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     * @throws IOException              if the image is not georeferenced in geographic coordinates, or if an error
+     *                                  occurs reading the image.
+     */
+    public DataRaster readDataRaster(Sector sector, double targetResolution) throws IOException
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int imageIndex = this.selectImage(targetResolution);
+        AVList values = this.metadata.get(imageIndex);
+        if (values.getValue(AVKey.COORDINATE_SYSTEM) != AVKey.COORDINATE_SYSTEM_GEOGRAPHIC
+            || !(values.getValue(AVKey.SECTOR) instanceof Sector))
+        {
+            String message = Logging.getMessage("GeotiffReader.NotGeographic", this.sourceFilename);
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        Sector imageSector = (Sector) values.getValue(AVKey.SECTOR);
+        int width = this.getWidth(imageIndex);
+        int height = this.getHeight(imageIndex);
+
+        Sector overlap = imageSector.intersection(sector);
+        if (overlap == null)
+            return null;
+
+        // Image rasters treat pixels as areas, so their sector spans the outer edges of the edge pixels. Elevation
+        // rasters treat pixels as points, so their sector spans the centers of the edge pixels. The region's sector
+        // must follow the same convention for the region to draw exactly as the whole image does.
+        int points = (values.getValue(AVKey.PIXEL_FORMAT) == AVKey.ELEVATION) ? 1 : 0;
+        if (width <= points || height <= points)
+            return this.readRegion(imageIndex, 0, 0, width, height, imageSector);
+
+        double pixelWidth = imageSector.getDeltaLonDegrees() / (width - points);
+        double pixelHeight = imageSector.getDeltaLatDegrees() / (height - points);
+
+        // Find the pixels covering the sector, plus a one pixel border.
+        double minLon = imageSector.getMinLongitude().degrees;
+        double maxLat = imageSector.getMaxLatitude().degrees;
+        int x0 = Math.max(0, (int) Math.floor((overlap.getMinLongitude().degrees - minLon) / pixelWidth) - 1);
+        int x1 = Math.min(width,
+            (int) Math.ceil((overlap.getMaxLongitude().degrees - minLon) / pixelWidth) + 1 + points);
+        int y0 = Math.max(0, (int) Math.floor((maxLat - overlap.getMaxLatitude().degrees) / pixelHeight) - 1);
+        int y1 = Math.min(height,
+            (int) Math.ceil((maxLat - overlap.getMinLatitude().degrees) / pixelHeight) + 1 + points);
+        if (x1 <= x0 || y1 <= y0)
+            return null;
+
+        // Use the image's own bounds at its edges to avoid accumulating rounding error.
+        Sector regionSector = Sector.fromDegrees(
+            (y1 == height) ? imageSector.getMinLatitude().degrees : maxLat - (y1 - points) * pixelHeight,
+            (y0 == 0) ? maxLat : maxLat - y0 * pixelHeight,
+            (x0 == 0) ? minLon : minLon + x0 * pixelWidth,
+            (x1 == width) ? imageSector.getMaxLongitude().degrees : minLon + (x1 - points) * pixelWidth);
+
+        return this.readRegion(imageIndex, x0, y0, x1 - x0, y1 - y0, regionSector);
+    }
+
+    protected int selectImage(double targetResolution) throws IOException
+    {
+        int selected = 0;
+        double selectedResolution = this.computeResolution(0);
+        for (int i = 1; i < this.getNumImages() && this.isReducedResolution(i); i++)
+        {
+            double resolution = this.computeResolution(i);
+            if (resolution > selectedResolution && resolution <= targetResolution)
+            {
+                selected = i;
+                selectedResolution = resolution;
+            }
+        }
+
+        return selected;
+    }
+
+    protected double computeResolution(int imageIndex) throws IOException
+    {
+        Object o = this.metadata.get(imageIndex).getValue(AVKey.SECTOR);
+        int height = this.getHeight(imageIndex);
+        return (o instanceof Sector && height > 0) ? ((Sector) o).getDeltaLatRadians() / height : 0;
+    }
+
+    /**
+     * Reads a rectangular region of an image that is decoded one tile or strip at a time.
+     *
+     * @param imageIndex the image index.
+     * @param x          the region's left column.
+     * @param y          the region's top row.
+     * @param width      the region's width in pixels.
+     * @param height     the region's height in pixels.
+     * @param sector     the sector covered by the region, or null if the image is not georeferenced.
+     *
+     * @return the region's raster.
+     *
+     * @throws IOException if an error occurs reading the region, or its data type is not supported.
+     */
+    protected DataRaster readRegion(int imageIndex, int x, int y, int width, int height, Sector sector)
+        throws IOException
+    {
+        TIFFImageDecoder decoder = this.getDecoder(imageIndex);
+        ByteBuffer samples = decoder.readRegion(x, y, width, height);
+
+        AVList values = this.metadata.get(imageIndex).copy();
+        values.setValue(AVKey.WIDTH, width);
+        values.setValue(AVKey.HEIGHT, height);
+        if (sector != null)
+            values.setValue(AVKey.SECTOR, sector);
+
+        return this.makeRaster(decoder, samples, width, height, sector, values);
+    }
+
+    protected synchronized TIFFImageDecoder getDecoder(int imageIndex) throws IOException
+    {
+        checkImageIndex(imageIndex);
+
+        if (this.decoders == null)
+            this.decoders = new TIFFImageDecoder[this.getNumImages()];
+
+        if (this.decoders[imageIndex] == null)
+        {
+            // Map the whole file if a buffer can address it. Larger files are mapped one tile or strip at a time.
+            if (this.fileMap == null && this.theChannel.size() <= Integer.MAX_VALUE)
+                this.fileMap = this.theChannel.map(FileChannel.MapMode.READ_ONLY, 0, this.theChannel.size());
+
+            TiffIFDEntry[] ifd = this.tiffIFDs.get(imageIndex);
+            this.decoders[imageIndex] = new TIFFImageDecoder(ifd, BaselineTiff.extract(ifd, this.tiffReader),
+                this.tiffReader, this.theChannel, this.fileMap);
+        }
+
+        return this.decoders[imageIndex];
+    }
+
+    protected DataRaster makeRaster(TIFFImageDecoder decoder, ByteBuffer samples, int width, int height,
+        Sector sector, AVList values) throws IOException
+    {
+        int samplesPerPixel = decoder.getSamplesPerPixel();
+        int numPixels = width * height;
+
+        if (values.getValue(AVKey.PIXEL_FORMAT) == AVKey.ELEVATION)
+        {
+            ByteBufferRaster raster = new ByteBufferRaster(width, height, sector, values);
+            // The raster's byte order is big endian. Copy the first sample of each pixel, converting the byte order.
+            ByteBuffer dest = raster.getByteBuffer().duplicate().order(ByteOrder.BIG_ENDIAN);
+            Object dataType = values.getValue(AVKey.DATA_TYPE);
+            if (dataType == AVKey.INT8 && decoder.getBytesPerSample() == 1)
+            {
+                for (int i = 0; i < numPixels; i++)
+                {
+                    dest.put(i, samples.get(i * samplesPerPixel));
+                }
+            }
+            else if (dataType == AVKey.INT16 && decoder.getBytesPerSample() == 2)
+            {
+                ShortBuffer src = samples.asShortBuffer();
+                ShortBuffer dst = dest.asShortBuffer();
+                for (int i = 0; i < numPixels; i++)
+                {
+                    dst.put(i, src.get(i * samplesPerPixel));
+                }
+            }
+            else if ((dataType == AVKey.INT32 || dataType == AVKey.FLOAT32) && decoder.getBytesPerSample() == 4)
+            {
+                IntBuffer src = samples.asIntBuffer();
+                IntBuffer dst = dest.asIntBuffer();
+                for (int i = 0; i < numPixels; i++)
+                {
+                    dst.put(i, src.get(i * samplesPerPixel));
+                }
+            }
+            else
+            {
+                String message = Logging.getMessage("Geotiff.UnsupportedDataTypeRaster", values.getValue(
+                    AVKey.DATA_TYPE));
+                Logging.logger().severe(message);
+                throw new IOException(message);
+            }
+
+            ElevationsUtil.rectify(raster);
+
+            return raster;
+        }
+        else if (values.getValue(AVKey.PIXEL_FORMAT) == AVKey.IMAGE
+            && values.getValue(AVKey.IMAGE_COLOR_FORMAT) == AVKey.GRAYSCALE)
+        {
+            BufferedImage grayImage;
+            if (decoder.getBytesPerSample() == 1)
+            {
+                grayImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+                byte[] dest = ((DataBufferByte) grayImage.getRaster().getDataBuffer()).getData();
+                for (int i = 0; i < numPixels; i++)
+                {
+                    dest[i] = samples.get(i * samplesPerPixel);
+                }
+            }
+            else if (decoder.getBytesPerSample() == 2)
+            {
+                grayImage = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+                short[] dest = ((DataBufferUShort) grayImage.getRaster().getDataBuffer()).getData();
+                ShortBuffer src = samples.asShortBuffer();
+                for (int i = 0; i < numPixels; i++)
+                {
+                    dest[i] = src.get(i * samplesPerPixel);
+                }
+            }
+            else
+            {
+                String message = Logging.getMessage("Geotiff.UnsupportedDataTypeRaster", values.getValue(
+                    AVKey.DATA_TYPE));
+                Logging.logger().severe(message);
+                throw new IOException(message);
+            }
+
+            grayImage = ImageUtil.toCompatibleImage(grayImage);
+            return BufferedImageRaster.wrap(grayImage, values);
+        }
+        else if (values.getValue(AVKey.PIXEL_FORMAT) == AVKey.IMAGE
+            && values.getValue(AVKey.IMAGE_COLOR_FORMAT) == AVKey.COLOR)
+        {
+            if (decoder.getBytesPerSample() != 1)
+            {
+                String message = Logging.getMessage("GeotiffReader.Not8bit", decoder.getBytesPerSample() * 8);
+                Logging.logger().warning(message);
+                throw new IOException(message);
+            }
+
+            ColorModel colorModel;
+            byte[][] cmap = decoder.getColorMap();
+            if (cmap != null && samplesPerPixel == 1)
+            {
+                colorModel = new IndexColorModel(8, cmap[0].length, cmap[0], cmap[1], cmap[2]);
+            }
+            else if (samplesPerPixel == Tiff.SamplesPerPixel.RGB || samplesPerPixel == Tiff.SamplesPerPixel.RGBA)
+            {
+                boolean hasAlpha = samplesPerPixel == Tiff.SamplesPerPixel.RGBA;
+                int[] bits = new int[samplesPerPixel];
+                java.util.Arrays.fill(bits, 8);
+                colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), bits, hasAlpha,
+                    false, hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            }
+            else
+            {
+                String message = Logging.getMessage("Geotiff.UnsupportedDataTypeRaster", samplesPerPixel);
+                Logging.logger().severe(message);
+                throw new IOException(message);
+            }
+
+            int[] bandOffsets = new int[samplesPerPixel];
+            for (int i = 0; i < samplesPerPixel; i++)
+            {
+                bandOffsets[i] = i;
+            }
+
+            // The decoded samples are pixel interleaved, so the image uses them without copying.
+            SampleModel sampleModel = new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, width, height,
+                samplesPerPixel, width * samplesPerPixel, bandOffsets);
+            DataBufferByte dataBuff = new DataBufferByte(samples.array(), numPixels * samplesPerPixel);
+            WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuff, new Point(0, 0));
+
+            BufferedImage colorImage = new BufferedImage(colorModel, raster, false, null);
+            colorImage = ImageUtil.toCompatibleImage(colorImage);
+            return BufferedImageRaster.wrap(colorImage, values);
+        }
+
+        String message = Logging.getMessage("Geotiff.UnsupportedDataTypeRaster", values.getValue(AVKey.DATA_TYPE));
+        Logging.logger().severe(message);
+        throw new IOException(message);
+    }
+
     public BufferedImage read() throws IOException
     {
         return this.read(0);
@@ -179,8 +512,6 @@ public class GeotiffReader implements Disposable
         byte[][] cmap = null;
         long[] stripCounts = null;
 
-        boolean tiffDifferencing = false;
-
         TiffIFDEntry[] ifd = this.tiffIFDs.get(imageIndex);
 
         BaselineTiff tiff = BaselineTiff.extract(ifd, this.tiffReader);
@@ -224,19 +555,27 @@ public class GeotiffReader implements Disposable
             throw new IOException(msg);
         }
 
-        if (tiff.rowsPerStrip <= Tiff.Undefined)
+        if (tiff.planarConfig != Tiff.PlanarConfiguration.PLANAR
+            && tiff.planarConfig != Tiff.PlanarConfiguration.CHUNKY)
         {
-            String msg = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue", tiff.rowsPerStrip,
-                "RowsPerStrip", Tiff.Tag.ROWS_PER_STRIP);
+            String msg = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue", tiff.planarConfig,
+                "PhotoInterpretation", Tiff.Tag.PHOTO_INTERPRETATION);
             Logging.logger().severe(msg);
             throw new IOException(msg);
         }
 
-        if (tiff.planarConfig != Tiff.PlanarConfiguration.PLANAR
-            && tiff.planarConfig != Tiff.PlanarConfiguration.CHUNKY)
+        // Tiled and compressed images are decoded one tile or strip at a time.
+        TiffIFDEntry compression = getByTag(ifd, Tiff.Tag.COMPRESSION);
+        if (getByTag(ifd, Tiff.Tag.TILE_WIDTH) != null
+            || (compression != null && compression.asLong() != Tiff.Compression.NONE))
         {
-            String msg = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue", tiff.planarConfig,
-                "PhotoInterpretation", Tiff.Tag.PHOTO_INTERPRETATION);
+            return this.readRegion(imageIndex, 0, 0, tiff.width, tiff.height, (Sector) values.getValue(AVKey.SECTOR));
+        }
+
+        if (tiff.rowsPerStrip <= Tiff.Undefined)
+        {
+            String msg = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue", tiff.rowsPerStrip,
+                "RowsPerStrip", Tiff.Tag.ROWS_PER_STRIP);
             Logging.logger().severe(msg);
             throw new IOException(msg);
         }
@@ -280,33 +619,6 @@ public class GeotiffReader implements Disposable
             throw new IOException(message);
         }
 
-        TiffIFDEntry notToday = getByTag(ifd, Tiff.Tag.COMPRESSION);
-        boolean lzwCompressed = false;
-        if (notToday != null && notToday.asLong() == Tiff.Compression.LZW)
-        {
-            lzwCompressed = true;
-            TiffIFDEntry predictorEntry = getByTag(ifd, Tiff.Tag.TIFF_PREDICTOR);
-            if ((predictorEntry != null) && (predictorEntry.asLong() != 0))
-            {
-                tiffDifferencing = true;
-            }
-        }
-        else if (notToday != null && notToday.asLong() != Tiff.Compression.NONE)
-        {
-            String message = Logging.getMessage("GeotiffReader.CompressionFormatNotSupported");
-            Logging.logger().severe(message);
-            throw new IOException(message);
-        }
-
-        notToday = getByTag(ifd, Tiff.Tag.TILE_WIDTH);
-        if (notToday != null)
-        {
-            String message = Logging.getMessage("GeotiffReader.NoTiled");
-            Logging.logger().severe(message);
-            throw new IOException(message);
-        }
-
-        long offset = stripOffsets[0];
 //        int sampleFormat = (null != tiff.sampleFormat) ? tiff.sampleFormat[0] : Tiff.Undefined;
 //        int bitsPerSample = (null != tiff.bitsPerSample) ? tiff.bitsPerSample[0] : Tiff.Undefined;
 
@@ -514,18 +826,8 @@ public class GeotiffReader implements Disposable
             byte[][] imageData;
             if (tiff.planarConfig == Tiff.PlanarConfiguration.CHUNKY)
             {
-                if (lzwCompressed && (tiff.samplesPerPixel > 2))
-                {
-                    imageData = new byte[1][tiff.width * tiff.height * tiff.samplesPerPixel];
-
-                    imageData[0] = this.tiffReader.readLZWCompressed(tiff.width, tiff.height, offset,
-                        tiff.samplesPerPixel, tiffDifferencing, stripOffsets, stripCounts);
-                }
-                else
-                {
-                    imageData = this.tiffReader.readPixelInterleaved8(tiff.width, tiff.height, tiff.samplesPerPixel,
-                        stripOffsets, stripCounts);
-                }
+                imageData = this.tiffReader.readPixelInterleaved8(tiff.width, tiff.height, tiff.samplesPerPixel,
+                    stripOffsets, stripCounts);
             }
             else
             {
@@ -743,6 +1045,48 @@ public class GeotiffReader implements Disposable
             }
 
             this.processGeoKeys(i);
+
+            // Reduced resolution images have no georeferencing of their own, and cover the same area as the full
+            // resolution image preceding them.
+            if (i > 0 && this.isReducedResolution(i))
+                this.copyGeoreferencing(this.metadata.get(i - 1), values);
+        }
+    }
+
+    private void copyGeoreferencing(AVList fullResolution, AVList values)
+    {
+        String[] keys = {AVKey.COORDINATE_SYSTEM, AVKey.SECTOR, AVKey.ORIGIN, AVKey.PROJECTION_EPSG_CODE,
+            AVKey.PROJECTION_HEMISPHERE, AVKey.PROJECTION_ZONE};
+        for (String key : keys)
+        {
+            if (fullResolution.hasKey(key))
+                values.setValue(key, fullResolution.getValue(key));
+            else
+                values.removeKey(key);
+        }
+
+        // Scale the world file pixel size to the reduced resolution, and move the location to the center of the
+        // reduced resolution image's first pixel.
+        Object xSize = fullResolution.getValue(WorldFile.WORLD_FILE_X_PIXEL_SIZE);
+        Object ySize = fullResolution.getValue(WorldFile.WORLD_FILE_Y_PIXEL_SIZE);
+        Object xLocation = fullResolution.getValue(WorldFile.WORLD_FILE_X_LOCATION);
+        Object yLocation = fullResolution.getValue(WorldFile.WORLD_FILE_Y_LOCATION);
+        if (xSize instanceof Double && ySize instanceof Double)
+        {
+            double xScale = (Integer) fullResolution.getValue(AVKey.WIDTH) / (double) (Integer) values.getValue(
+                AVKey.WIDTH);
+            double yScale = (Integer) fullResolution.getValue(AVKey.HEIGHT) / (double) (Integer) values.getValue(
+                AVKey.HEIGHT);
+            double xPixel = (Double) xSize;
+            double yPixel = (Double) ySize;
+            values.setValue(WorldFile.WORLD_FILE_X_PIXEL_SIZE, xPixel * xScale);
+            values.setValue(WorldFile.WORLD_FILE_Y_PIXEL_SIZE, yPixel * yScale);
+
+            if (xLocation instanceof Double && yLocation instanceof Double)
+            {
+                values.setValue(WorldFile.WORLD_FILE_X_LOCATION, (Double) xLocation + xPixel * (xScale - 1) / 2);
+                values.setValue(WorldFile.WORLD_FILE_Y_LOCATION, (Double) yLocation + yPixel * (yScale - 1) / 2);
+            }
         }
     }
 
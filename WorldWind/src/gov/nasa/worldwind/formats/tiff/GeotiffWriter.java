@@ -14,11 +14,17 @@ import gov.nasa.worldwind.util.*;
 import java.awt.color.*;
 import java.awt.image.*;
 import java.io.*;
-import java.nio.ByteBuffer;
+import java.nio.*;
 import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
+ * Writes images and elevations as GeoTIFF files. By default images are written uncompressed, one row per strip. The
+ * writer can instead write tiled images, compress them with LZW, Deflate or PackBits, encode them with a predictor, and
+ * append reduced resolution overviews; see {@link #setTileSize(int)}, {@link #setCompression(int)}, {@link
+ * #setPredictorEnabled(boolean)} and {@link #setOverviewsEnabled(boolean)}. Images written with these options are read
+ * from the source raster one tile or strip at a time, so rasters far larger than memory may be written.
+ *
  * @author Lado Garakanidze
  * @version $Id$
  */
@@ -26,14 +32,27 @@ import java.util.*;
 public class GeotiffWriter
 {
     private RandomAccessFile targetFile;
-    private FileChannel theChannel;
+    protected FileChannel theChannel;
 
     // We need the size in bytes of various primitives...
     private static final int INTEGER_SIZEOF = Integer.SIZE / Byte.SIZE;
+    // The largest file offset a TIFF LONG can hold. BigTIFF, which uses 64-bit offsets, is not written.
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
 
     private static final int BufferedImage_TYPE_ELEVATION_SHORT16 = 9001;
     private static final int BufferedImage_TYPE_ELEVATION_FLOAT32 = 9002;
 
+    // The approximate size of strips, in bytes, when images are not tiled. This is libtiff's default strip size.
+    private static final int STRIP_SIZE = 8192;
+    // Overviews of stripped images are written until they fit in a square of this many pixels.
+    private static final int STRIPPED_OVERVIEW_SIZE = 256;
+
+    // The layout and compression of written images. The defaults write uncompressed strips.
+    private int compression = Tiff.Compression.NONE;
+    private int tileSize = 0;
+    private boolean predictorEnabled = false;
+    private boolean overviewsEnabled = false;
+
     public GeotiffWriter(String filename) throws IOException
     {
         if (null == filename || 0 == filename.trim().length())
@@ -89,6 +108,115 @@ public class GeotiffWriter
         { /* best effort */ }
     }
 
+    /**
+     * Indicates the compression of written images.
+     *
+     * @return the compression, one of the {@link Tiff.Compression} values.
+     */
+    public int getCompression()
+    {
+        return this.compression;
+    }
+
+    /**
+     * Specifies the compression of written images: {@link Tiff.Compression#NONE}, {@link Tiff.Compression#LZW}, {@link
+     * Tiff.Compression#DEFLATE} or {@link Tiff.Compression#PACKBITS}. The default is NONE.
+     *
+     * @param compression the compression.
+     *
+     * @throws IllegalArgumentException if the compression is not supported.
+     */
+    public void setCompression(int compression)
+    {
+        if (!TIFFSegmentEncoder.isSupported(compression))
+        {
+            String msg = Logging.getMessage("GeotiffWriter.UnsupportedCompression", compression);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.compression = compression;
+    }
+
+    /**
+     * Indicates the width and height of the tiles of written images.
+     *
+     * @return the tile size in pixels, or 0 if images are written as strips.
+     */
+    public int getTileSize()
+    {
+        return this.tileSize;
+    }
+
+    /**
+     * Specifies the width and height of the tiles of written images. Readers can decode any region of a tiled image
+     * without decoding whole rows of it. The default is 0, which writes images as strips.
+     *
+     * @param tileSize the tile size in pixels, a positive multiple of 16, or 0 to write strips.
+     *
+     * @throws IllegalArgumentException if the tile size is negative or not a multiple of 16.
+     */
+    public void setTileSize(int tileSize)
+    {
+        if (tileSize < 0 || tileSize % 16 != 0)
+        {
+            String msg = Logging.getMessage("GeotiffWriter.InvalidTileSize", tileSize);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Indicates whether written images are encoded with a predictor.
+     *
+     * @return true if images are encoded with a predictor, otherwise false.
+     */
+    public boolean isPredictorEnabled()
+    {
+        return this.predictorEnabled;
+    }
+
+    /**
+     * Specifies whether written images are encoded with a predictor before they are compressed. Integer samples are
+     * encoded with the horizontal predictor, and floating point samples with the floating point predictor. Predictors
+     * usually make compressed elevations and photographs considerably smaller. The default is false.
+     *
+     * @param predictorEnabled true to encode images with a predictor, otherwise false.
+     */
+    public void setPredictorEnabled(boolean predictorEnabled)
+    {
+        this.predictorEnabled = predictorEnabled;
+    }
+
+    /**
+     * Indicates whether overviews are written after each image.
+     *
+     * @return true if overviews are written, otherwise false.
+     */
+    public boolean isOverviewsEnabled()
+    {
+        return this.overviewsEnabled;
+    }
+
+    /**
+     * Specifies whether reduced resolution overviews are written after each image. Each overview is half the width and
+     * height of the previous one, and overviews are written until one fits in a single tile. Readers use overviews to
+     * show an image at lower resolutions without reading all of it. The default is false.
+     *
+     * @param overviewsEnabled true to write overviews, otherwise false.
+     */
+    public void setOverviewsEnabled(boolean overviewsEnabled)
+    {
+        this.overviewsEnabled = overviewsEnabled;
+    }
+
+    protected boolean isDefaultLayout()
+    {
+        return this.compression == Tiff.Compression.NONE && this.tileSize == 0 && !this.overviewsEnabled;
+    }
+
     public void write(BufferedImage image) throws IOException
     {
         this.write(image, null);
@@ -117,7 +245,13 @@ public class GeotiffWriter
             throw new IllegalArgumentException(msg);
         }
 
-        if (raster instanceof BufferedImageRaster)
+        // Rasters other than in-memory images and buffers are read one tile or strip at a time, whatever the layout.
+        if (!this.isDefaultLayout()
+            || !(raster instanceof BufferedImageRaster || raster instanceof BufferWrapperRaster))
+        {
+            this.writeSegmented(raster);
+        }
+        else if (raster instanceof BufferedImageRaster)
         {
             this.write(((BufferedImageRaster) raster).getBufferedImage(), raster);
         }
@@ -220,6 +354,12 @@ public class GeotiffWriter
             this.validateParameters(params, image.getWidth(), image.getHeight());
         }
 
+        if (!this.isDefaultLayout())
+        {
+            this.writeSegmented(new BufferedImageRaster((Sector) params.getValue(AVKey.SECTOR), image, params));
+            return;
+        }
+
         // how we proceed in part depends upon the image type...
         int type = image.getType();
 
@@ -500,6 +640,491 @@ public class GeotiffWriter
         this.writeIFDs(ifds);
     }
 
+    /**
+     * Writes a raster with the writer's tile size, compression, predictor and overview options. The raster is read one
+     * tile or strip at a time. Full resolution pixels of in-memory images and buffers are copied directly; any other
+     * raster, and every overview, is drawn onto a canvas the size of one tile or strip. Only one segment is resident at
+     * a time, so rasters that read their pixels on demand, such as {@link WindowedGeotiffRaster}, may be written
+     * regardless of their size.
+     *
+     * @param raster the raster to write.
+     *
+     * @throws IOException              if an error occurs writing the file.
+     * @throws IllegalArgumentException if the raster's pixel format or data type is not supported, or if a raster other
+     *                                  than an image has no sector.
+     */
+    protected void writeSegmented(DataRaster raster) throws IOException
+    {
+        if (raster instanceof BufferedImageRaster && raster.getValue(AVKey.PIXEL_FORMAT) == null)
+            raster.setValue(AVKey.PIXEL_FORMAT, AVKey.IMAGE);
+
+        // Images without a sector are written without geokeys. Anything else must be georeferenced to be drawn.
+        DataRaster source = raster;
+        if (raster.getSector() != null)
+        {
+            this.validateParameters(raster, raster.getWidth(), raster.getHeight());
+        }
+        else if (raster instanceof BufferedImageRaster)
+        {
+            source = new BufferedImageRaster(Sector.FULL_SPHERE, ((BufferedImageRaster) raster).getBufferedImage());
+        }
+        else
+        {
+            String msg = Logging.getMessage("GeotiffWriter.NoSectorSpecified");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        SampleLayout layout = this.createSampleLayout(raster);
+
+        int predictor = Tiff.Predictor.NONE;
+        if (this.predictorEnabled)
+        {
+            predictor = layout.sampleFormat == Tiff.SampleFormat.IEEEFLOAT ? Tiff.Predictor.FLOATING_POINT
+                : Tiff.Predictor.HORIZONTAL;
+        }
+
+        TIFFSegmentEncoder encoder = new TIFFSegmentEncoder(this.compression, predictor, layout.samplesPerPixel,
+            layout.bitsPerSample / Byte.SIZE, ByteOrder.BIG_ENDIAN);
+        try
+        {
+            this.writeTiffHeader();
+
+            int overviewSize = this.tileSize > 0 ? this.tileSize : STRIPPED_OVERVIEW_SIZE;
+            int width = raster.getWidth();
+            int height = raster.getHeight();
+            long linkOffset = 4;
+
+            for (int level = 0; ; level++)
+            {
+                linkOffset = this.writeSegmentedImage(source, raster, layout, encoder, predictor, width, height,
+                    level > 0, linkOffset);
+
+                if (!this.overviewsEnabled || Math.max(width, height) <= overviewSize || Math.min(width, height) < 4)
+                    break;
+
+                width = (width + 1) / 2;
+                height = (height + 1) / 2;
+            }
+        }
+        finally
+        {
+            encoder.dispose();
+        }
+    }
+
+    private long writeSegmentedImage(DataRaster source, AVList params, SampleLayout layout,
+        TIFFSegmentEncoder encoder, int predictor, int width, int height, boolean overview, long linkOffset)
+        throws IOException
+    {
+        int bytesPerPixel = layout.samplesPerPixel * layout.bitsPerSample / Byte.SIZE;
+        boolean tiled = this.tileSize > 0;
+        int segmentWidth = tiled ? this.tileSize : width;
+        int segmentHeight = tiled ? this.tileSize
+            : Math.max(1, Math.min(height, STRIP_SIZE / (width * bytesPerPixel)));
+        int numAcross = (width + segmentWidth - 1) / segmentWidth;
+        int numDown = (height + segmentHeight - 1) / segmentHeight;
+
+        long[] offsets = new long[numAcross * numDown];
+        long[] counts = new long[numAcross * numDown];
+        byte[] segment = new byte[segmentWidth * segmentHeight * bytesPerPixel];
+
+        for (int row = 0; row < numDown; row++)
+        {
+            for (int col = 0; col < numAcross; col++)
+            {
+                int x = col * segmentWidth;
+                int y = row * segmentHeight;
+                int w = Math.min(segmentWidth, width - x);
+                int h = Math.min(segmentHeight, height - y);
+
+                // Tiles are always whole, and padded with zeros. The last strip holds only the image's remaining rows.
+                int rows = tiled ? segmentHeight : h;
+                Arrays.fill(segment, 0, segmentWidth * rows * bytesPerPixel, (byte) 0);
+                this.readSegment(source, layout, overview, width, height, x, y, w, h, segment, segmentWidth);
+
+                ByteBuffer encoded = encoder.encode(segment, segmentWidth, rows);
+                int index = row * numAcross + col;
+                offsets[index] = this.theChannel.position();
+                counts[index] = encoded.remaining();
+                this.checkOffset(offsets[index] + counts[index]);
+                while (encoded.hasRemaining())
+                {
+                    this.theChannel.write(encoded);
+                }
+            }
+        }
+
+        ArrayList<TiffIFDEntry> ifds = new ArrayList<TiffIFDEntry>(20);
+
+        if (overview)
+        {
+            ifds.add(new TiffIFDEntry(Tiff.Tag.NEW_SUBFILE_TYPE, Tiff.Type.LONG, 1,
+                Tiff.NewSubfileType.REDUCED_RESOLUTION));
+        }
+
+        ifds.add(new TiffIFDEntry(Tiff.Tag.IMAGE_WIDTH, Tiff.Type.LONG, 1, width));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.IMAGE_LENGTH, Tiff.Type.LONG, 1, height));
+
+        if (layout.samplesPerPixel == 1)
+        {
+            ifds.add(new TiffIFDEntry(Tiff.Tag.BITS_PER_SAMPLE, Tiff.Type.SHORT, 1, layout.bitsPerSample));
+        }
+        else
+        {
+            long offset = this.theChannel.position();
+            short[] bits = new short[layout.samplesPerPixel];
+            Arrays.fill(bits, (short) layout.bitsPerSample);
+            this.theChannel.write(ByteBuffer.wrap(this.getBytes(bits)));
+            ifds.add(new TiffIFDEntry(Tiff.Tag.BITS_PER_SAMPLE, Tiff.Type.SHORT, bits.length, offset));
+        }
+
+        ifds.add(new TiffIFDEntry(Tiff.Tag.COMPRESSION, Tiff.Type.SHORT, 1, this.compression));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.PHOTO_INTERPRETATION, Tiff.Type.SHORT, 1, layout.photometric));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.SAMPLES_PER_PIXEL, Tiff.Type.SHORT, 1, layout.samplesPerPixel));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.PLANAR_CONFIGURATION, Tiff.Type.SHORT, 1, Tiff.PlanarConfiguration.CHUNKY));
+        ifds.add(new TiffIFDEntry(Tiff.Tag.SAMPLE_FORMAT, Tiff.Type.SHORT, 1, layout.sampleFormat));
+
+        if (predictor != Tiff.Predictor.NONE)
+            ifds.add(new TiffIFDEntry(Tiff.Tag.TIFF_PREDICTOR, Tiff.Type.SHORT, 1, predictor));
+
+        if (layout.alpha)
+        {
+            ifds.add(new TiffIFDEntry(Tiff.Tag.EXTRA_SAMPLES, Tiff.Type.SHORT, 1,
+                Tiff.ExtraSamples.UNASSOCIATED_ALPHA));
+        }
+
+        if (tiled)
+        {
+            ifds.add(new TiffIFDEntry(Tiff.Tag.TILE_WIDTH, Tiff.Type.LONG, 1, segmentWidth));
+            ifds.add(new TiffIFDEntry(Tiff.Tag.TILE_LENGTH, Tiff.Type.LONG, 1, segmentHeight));
+            ifds.add(new TiffIFDEntry(Tiff.Tag.TILE_OFFSETS, Tiff.Type.LONG, offsets.length,
+                this.writeValues(offsets)));
+            ifds.add(new TiffIFDEntry(Tiff.Tag.TILE_COUNTS, Tiff.Type.LONG, counts.length, this.writeValues(counts)));
+        }
+        else
+        {
+            ifds.add(new TiffIFDEntry(Tiff.Tag.ROWS_PER_STRIP, Tiff.Type.LONG, 1, segmentHeight));
+            ifds.add(new TiffIFDEntry(Tiff.Tag.STRIP_OFFSETS, Tiff.Type.LONG, offsets.length,
+                this.writeValues(offsets)));
+            ifds.add(new TiffIFDEntry(Tiff.Tag.STRIP_BYTE_COUNTS, Tiff.Type.LONG, counts.length,
+                this.writeValues(counts)));
+        }
+
+        // Overviews share the georeferencing of the full resolution image.
+        if (!overview && params.getValue(AVKey.SECTOR) != null)
+            this.appendGeoTiff(ifds, params);
+
+        return this.writeIFDs(ifds, linkOffset);
+    }
+
+    /**
+     * Writes an array of LONG values, unless it holds only one value, which is stored in its IFD entry instead.
+     *
+     * @param values the values.
+     *
+     * @return the file offset of the values, or the value itself if there is only one.
+     *
+     * @throws IOException if an error occurs writing the values.
+     */
+    private long writeValues(long[] values) throws IOException
+    {
+        if (values.length == 1)
+            return values[0];
+
+        long offset = this.theChannel.position();
+        ByteBuffer dataBuff = ByteBuffer.allocate(values.length * INTEGER_SIZEOF);
+        for (long value : values)
+        {
+            this.putUnsignedInt(dataBuff, value);
+        }
+        dataBuff.flip();
+        while (dataBuff.hasRemaining())
+        {
+            this.theChannel.write(dataBuff);
+        }
+
+        return offset;
+    }
+
+    private void readSegment(DataRaster source, SampleLayout layout, boolean overview, int width, int height, int x,
+        int y, int w, int h, byte[] segment, int segmentWidth)
+    {
+        if (!overview && layout.direct)
+        {
+            this.copySamples(source, layout, x, y, w, h, segment, segmentWidth);
+            return;
+        }
+
+        // Canvases whose sector spans pixel centers must be at least two pixels wide and high, so a segment one pixel
+        // wide or high is drawn with the preceding column or row and copied from the canvas' last column or row.
+        int cx = x, cy = y;
+        if (layout.imageType == 0)
+        {
+            if (w == 1 && x > 0)
+                cx--;
+            if (h == 1 && y > 0)
+                cy--;
+        }
+
+        int cw = x + w - cx;
+        int ch = y + h - cy;
+        DataRaster canvas = this.createCanvas(layout, cw, ch,
+            computeSegmentSector(source.getSector(), layout.imageType == 0, width, height, cx, cy, cw, ch));
+        try
+        {
+            source.drawOnTo(canvas);
+            this.copySamples(canvas, layout, x - cx, y - cy, w, h, segment, segmentWidth);
+        }
+        finally
+        {
+            canvas.dispose();
+        }
+    }
+
+    private void copySamples(DataRaster raster, SampleLayout layout, int x, int y, int w, int h, byte[] segment,
+        int segmentWidth)
+    {
+        ByteBuffer dest = ByteBuffer.wrap(segment);
+        int rowLength = segmentWidth * layout.samplesPerPixel * layout.bitsPerSample / Byte.SIZE;
+
+        if (raster instanceof BufferedImageRaster)
+        {
+            Raster pixels = ((BufferedImageRaster) raster).getBufferedImage().getRaster();
+            int[] rowData = new int[w * layout.samplesPerPixel];
+            for (int j = 0; j < h; j++)
+            {
+                pixels.getPixels(x, y + j, w, 1, rowData);
+                dest.position(j * rowLength);
+                for (int sample : rowData)
+                {
+                    if (layout.bitsPerSample == Byte.SIZE)
+                        dest.put((byte) sample);
+                    else
+                        dest.putShort((short) sample);
+                }
+            }
+        }
+        else
+        {
+            BufferWrapper buffer = ((BufferWrapperRaster) raster).getBuffer();
+            for (int j = 0; j < h; j++)
+            {
+                dest.position(j * rowLength);
+                int index = (y + j) * raster.getWidth() + x;
+                for (int i = index; i < index + w; i++)
+                {
+                    if (AVKey.INT8.equals(layout.dataType))
+                    {
+                        dest.put(buffer.getByte(i));
+                    }
+                    else if (AVKey.INT16.equals(layout.dataType))
+                    {
+                        dest.putShort(buffer.getShort(i));
+                    }
+                    else if (AVKey.FLOAT32.equals(layout.dataType))
+                    {
+                        dest.putFloat(buffer.getFloat(i));
+                    }
+                    else
+                    {
+                        int color = buffer.getInt(i);
+                        dest.put((byte) (color >> 16)).put((byte) (color >> 8)).put((byte) color);
+                    }
+                }
+            }
+        }
+    }
+
+    private DataRaster createCanvas(SampleLayout layout, int width, int height, Sector sector)
+    {
+        if (layout.imageType != 0)
+            return new BufferedImageRaster(sector, new BufferedImage(width, height, layout.imageType));
+
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.PIXEL_FORMAT, layout.pixelFormat);
+        params.setValue(AVKey.DATA_TYPE, layout.dataType);
+        params.setValue(AVKey.BYTE_ORDER, AVKey.BIG_ENDIAN);
+        if (layout.missingDataSignal != null)
+            params.setValue(AVKey.MISSING_DATA_SIGNAL, layout.missingDataSignal);
+
+        ByteBufferRaster canvas = new ByteBufferRaster(width, height, sector, params);
+        if (layout.missingDataSignal != null)
+            canvas.fill(layout.missingDataSignal);
+
+        return canvas;
+    }
+
+    /**
+     * Computes the sector of a segment of an image or overview covering a specified sector. Rasters of elevations and
+     * other buffers place their sector's edges on the centers of their edge pixels, and images place it on the outer
+     * edges of their edge pixels.
+     *
+     * @param sector the sector of the whole image.
+     * @param points true if the sector spans pixel centers, false if it spans pixel edges.
+     * @param width  the width of the image.
+     * @param height the height of the image.
+     * @param x      the segment's first column.
+     * @param y      the segment's first row.
+     * @param w      the segment's width.
+     * @param h      the segment's height.
+     *
+     * @return the segment's sector.
+     */
+    protected static Sector computeSegmentSector(Sector sector, boolean points, int width, int height, int x, int y,
+        int w, int h)
+    {
+        int k = points ? 1 : 0;
+        double dLon = sector.getDeltaLonDegrees() / Math.max(1, width - k);
+        double dLat = sector.getDeltaLatDegrees() / Math.max(1, height - k);
+        double minLon = sector.getMinLongitude().degrees;
+        double maxLat = sector.getMaxLatitude().degrees;
+
+        return Sector.fromDegrees(maxLat - (y + h - k) * dLat, maxLat - y * dLat, minLon + x * dLon,
+            minLon + (x + w - k) * dLon);
+    }
+
+    private SampleLayout createSampleLayout(DataRaster raster)
+    {
+        Object pixelFormat = raster.getValue(AVKey.PIXEL_FORMAT);
+        Object dataType = raster.getValue(AVKey.DATA_TYPE);
+        SampleLayout layout;
+
+        if (raster instanceof BufferedImageRaster)
+        {
+            BufferedImage image = ((BufferedImageRaster) raster).getBufferedImage();
+            int numBands = image.getSampleModel().getNumBands();
+            boolean indexed = image.getColorModel() instanceof IndexColorModel;
+            int sampleSize = image.getSampleModel().getSampleSize(0);
+
+            if (!indexed && numBands == 1 && sampleSize == 16)
+                layout = SampleLayout.gray(Tiff.BitsPerSample.MONOCHROME_UINT16, BufferedImage.TYPE_USHORT_GRAY);
+            else if (!indexed && numBands == 1)
+                layout = SampleLayout.gray(Tiff.BitsPerSample.MONOCHROME_UINT8, BufferedImage.TYPE_BYTE_GRAY);
+            else if (!indexed && numBands == 3)
+                layout = SampleLayout.rgb(false);
+            else
+                layout = SampleLayout.rgb(true);
+
+            // Pixels can be copied only when the image's bands are the samples we write, one band per sample.
+            layout.direct = !indexed && numBands == layout.samplesPerPixel
+                && image.getSampleModel().getSampleSize(numBands - 1) == sampleSize
+                && sampleSize == layout.bitsPerSample;
+        }
+        else if (AVKey.ELEVATION.equals(pixelFormat))
+        {
+            if (AVKey.INT16.equals(dataType))
+            {
+                layout = new SampleLayout(1, Tiff.BitsPerSample.ELEVATIONS_INT16, Tiff.SampleFormat.SIGNED,
+                    Tiff.Photometric.Grayscale_BlackIsZero);
+            }
+            else if (AVKey.FLOAT32.equals(dataType))
+            {
+                layout = new SampleLayout(1, Tiff.BitsPerSample.ELEVATIONS_FLOAT32, Tiff.SampleFormat.IEEEFLOAT,
+                    Tiff.Photometric.Grayscale_BlackIsZero);
+            }
+            else
+            {
+                String msg = Logging.getMessage("GeotiffWriter.UnsupportedType", dataType);
+                Logging.logger().severe(msg);
+                throw new IllegalArgumentException(msg);
+            }
+
+            layout.pixelFormat = AVKey.ELEVATION;
+            layout.dataType = (String) dataType;
+            if (raster.getValue(AVKey.MISSING_DATA_SIGNAL) instanceof Double)
+                layout.missingDataSignal = (Double) raster.getValue(AVKey.MISSING_DATA_SIGNAL);
+            layout.direct = raster instanceof BufferWrapperRaster;
+        }
+        else if (AVKey.IMAGE.equals(pixelFormat) && raster instanceof BufferWrapperRaster)
+        {
+            if (AVKey.INT8.equals(dataType))
+            {
+                layout = new SampleLayout(1, Tiff.BitsPerSample.MONOCHROME_UINT8, Tiff.SampleFormat.UNSIGNED,
+                    Tiff.Photometric.Grayscale_BlackIsZero);
+            }
+            else if (AVKey.INT16.equals(dataType))
+            {
+                layout = new SampleLayout(1, Tiff.BitsPerSample.MONOCHROME_UINT16, Tiff.SampleFormat.UNSIGNED,
+                    Tiff.Photometric.Grayscale_BlackIsZero);
+            }
+            else if (AVKey.INT32.equals(dataType))
+            {
+                layout = new SampleLayout(3, Tiff.BitsPerSample.MONOCHROME_UINT8, Tiff.SampleFormat.UNSIGNED,
+                    Tiff.Photometric.Color_RGB);
+            }
+            else
+            {
+                String msg = Logging.getMessage("GeotiffWriter.UnsupportedType", dataType);
+                Logging.logger().severe(msg);
+                throw new IllegalArgumentException(msg);
+            }
+
+            layout.pixelFormat = AVKey.IMAGE;
+            layout.dataType = (String) dataType;
+            layout.direct = true;
+        }
+        else if (AVKey.IMAGE.equals(pixelFormat))
+        {
+            // Rasters that are drawn, rather than copied, are drawn onto image canvases.
+            layout = AVKey.GRAYSCALE.equals(raster.getValue(AVKey.IMAGE_COLOR_FORMAT))
+                ? SampleLayout.gray(Tiff.BitsPerSample.MONOCHROME_UINT8, BufferedImage.TYPE_BYTE_GRAY)
+                : SampleLayout.rgb(true);
+        }
+        else
+        {
+            String msg = Logging.getMessage("GeotiffWriter.UnsupportedType", pixelFormat);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return layout;
+    }
+
+    /** Describes the samples a raster's pixels are written as, and how they are read from the raster. */
+    private static class SampleLayout
+    {
+        protected final int samplesPerPixel;
+        protected final int bitsPerSample;
+        protected final int sampleFormat;
+        protected final int photometric;
+        // Whether the last sample of each pixel is an unassociated alpha.
+        protected boolean alpha;
+        // Whether full resolution pixels are copied from the raster rather than drawn onto a canvas.
+        protected boolean direct;
+        // The type of image canvases, or 0 if the raster is drawn onto buffer canvases.
+        protected int imageType;
+        // The pixel format, data type and missing data signal of buffer canvases.
+        protected String pixelFormat;
+        protected String dataType;
+        protected Double missingDataSignal;
+
+        public SampleLayout(int samplesPerPixel, int bitsPerSample, int sampleFormat, int photometric)
+        {
+            this.samplesPerPixel = samplesPerPixel;
+            this.bitsPerSample = bitsPerSample;
+            this.sampleFormat = sampleFormat;
+            this.photometric = photometric;
+        }
+
+        public static SampleLayout gray(int bitsPerSample, int imageType)
+        {
+            SampleLayout layout = new SampleLayout(1, bitsPerSample, Tiff.SampleFormat.UNSIGNED,
+                Tiff.Photometric.Grayscale_BlackIsZero);
+            layout.imageType = imageType;
+            return layout;
+        }
+
+        public static SampleLayout rgb(boolean alpha)
+        {
+            SampleLayout layout = new SampleLayout(alpha ? 4 : 3, Tiff.BitsPerSample.MONOCHROME_UINT8,
+                Tiff.SampleFormat.UNSIGNED, Tiff.Photometric.Color_RGB);
+            layout.alpha = alpha;
+            layout.imageType = alpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+            return layout;
+        }
+    }
+
     private void writeTiffHeader() throws IOException
     {
         // A TIFF file begins with an 8-byte image file header, containing the following information:
@@ -970,6 +1595,21 @@ public class GeotiffWriter
     }
 
     private void writeIFDs(List<TiffIFDEntry> ifds) throws IOException
+    {
+        this.writeIFDs(ifds, 4);
+    }
+
+    /**
+     * Writes an IFD at the end of the file, and links it to the previous IFD.
+     *
+     * @param ifds       the IFD's entries.
+     * @param linkOffset the file offset of the previous IFD's next IFD offset, or 4 if this is the first IFD.
+     *
+     * @return the file offset of this IFD's next IFD offset.
+     *
+     * @throws IOException if an error occurs writing the IFD.
+     */
+    private long writeIFDs(List<TiffIFDEntry> ifds, long linkOffset) throws IOException
     {
         long offset = this.theChannel.position();
 
@@ -1007,17 +1647,21 @@ public class GeotiffWriter
         this.theChannel.write(dataBuff);
 
         // The spec requires 4 bytes of zeros at the end...
+        long nextLinkOffset = this.theChannel.position();
         dataBuff.clear();
         dataBuff.putInt(0);
         dataBuff.flip();
         this.theChannel.write(dataBuff);
 
-        // go back and patch up the ifd offset in header...
-        this.theChannel.position(4);
+        // go back and patch up the ifd offset in header, or in the previous ifd...
+        this.theChannel.position(linkOffset);
         dataBuff.clear();
         putUnsignedInt(dataBuff, offset);
         dataBuff.flip();
         this.theChannel.write(dataBuff);
+        this.theChannel.position(this.theChannel.size());
+
+        return nextLinkOffset;
     }
 
     private void putUnsignedByte(ByteBuffer buff, int value)
@@ -1030,11 +1674,30 @@ public class GeotiffWriter
         buff.putShort((short) (value & 0xffff));
     }
 
-    private void putUnsignedInt(ByteBuffer buff, long value)
+    private void putUnsignedInt(ByteBuffer buff, long value) throws IOException
     {
+        this.checkOffset(value);
         buff.putInt((int) (value & 0xffffffffL));
     }
 
+    /**
+     * Verifies that a file offset or size fits in a TIFF LONG, so that the file is not silently corrupted by truncated
+     * offsets.
+     *
+     * @param offset the offset or size.
+     *
+     * @throws IOException if the offset exceeds the largest value a TIFF LONG can hold.
+     */
+    private void checkOffset(long offset) throws IOException
+    {
+        if (offset < 0 || offset > MAX_OFFSET)
+        {
+            String msg = Logging.getMessage("GeotiffWriter.FileTooLarge", offset, MAX_OFFSET);
+            Logging.logger().severe(msg);
+            throw new IOException(msg);
+        }
+    }
+
     private byte[] getBytes(double[] array)
     {
         try
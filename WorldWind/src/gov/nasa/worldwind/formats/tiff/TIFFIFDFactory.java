@@ -61,15 +61,25 @@ class TIFFIFDFactory
             }
             else if( count == 1 && (type == Tiff.Type.LONG || type == Tiff.Type.FLOAT))
             {
-                long value = header.getInt();
+                long value = MASK_UINT & header.getInt();
                 return new TiffIFDEntry(tag, type, value );
             }
             else
             {
                 long offset = getUnsignedInt( header );
-                int size = MASK_USHORT & (int)calcSize( type, count );
+                int size = (int)calcSize( type, count );
 
-                if( size > 0L )
+                if( size > 0L && size <= 4 )
+                {
+                    // The values fit in the Value Offset, so the Value Offset is the data.
+                    header.position( 8 ).limit( 8 + size );
+                    ByteBuffer data = ByteBuffer.allocateDirect( size ).order( tiffFileOrder );
+                    data.put( header );
+                    data.flip();
+
+                    return new TiffIFDEntry(tag, type, count, offset, data );
+                }
+                else if( size > 0L )
                 {
                     ByteBuffer data = ByteBuffer.allocateDirect( size ).order( tiffFileOrder );
                     savedPosition = fc.position();
@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.tiff;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.*;
+
+/**
+ * This is a package private class that decodes rectangular regions of one TIFF image. The image may be stored as strips
+ * or as tiles, which are both called segments here, and each segment may be compressed with LZW, Deflate or PackBits
+ * and encoded with a horizontal or floating point predictor. Only the segments intersecting a region are read and
+ * decoded.
+ * <p/>
+ * Segments are read from a memory-mapped view of the file, so a decoder may be used by several threads at once.
+ *
+ * @author tag
+ * @version $Id$
+ */
+class TIFFImageDecoder
+{
+    protected final FileChannel channel;
+    protected final ByteBuffer fileMap;
+    protected final ByteOrder byteOrder;
+    protected final TIFFReader tiffReader;
+
+    protected final int width;
+    protected final int height;
+    protected final int samplesPerPixel;
+    protected final int bytesPerSample;
+    protected final boolean tiled;
+    protected final boolean planar;
+    protected final int segmentWidth;
+    protected final int segmentHeight;
+    protected final int segmentsAcross;
+    protected final int segmentsDown;
+    protected final long[] offsets;
+    protected final long[] counts;
+    protected final int compression;
+    protected final int predictor;
+    protected final byte[][] colorMap;
+
+    /**
+     * Creates a decoder for one image of a TIFF file.
+     *
+     * @param ifd        the image's IFD entries.
+     * @param tiff       the image's baseline TIFF values.
+     * @param tiffReader the file's TIFF reader.
+     * @param channel    the file's channel.
+     * @param fileMap    a memory-mapped view of the entire file, or null to map each segment as it's read.
+     *
+     * @throws IOException if the image's layout, compression or sample format is not supported.
+     */
+    public TIFFImageDecoder(TiffIFDEntry[] ifd, BaselineTiff tiff, TIFFReader tiffReader, FileChannel channel,
+        ByteBuffer fileMap) throws IOException
+    {
+        this.channel = channel;
+        this.fileMap = fileMap;
+        this.byteOrder = tiffReader.getByteOrder();
+        this.tiffReader = tiffReader;
+
+        this.width = tiff.width;
+        this.height = tiff.height;
+        this.samplesPerPixel = tiff.samplesPerPixel;
+        this.planar = tiff.planarConfig == Tiff.PlanarConfiguration.PLANAR && tiff.samplesPerPixel > 1;
+
+        int bitsPerSample = (null != tiff.bitsPerSample && tiff.bitsPerSample.length > 0) ? tiff.bitsPerSample[0] : 1;
+        for (int bits : tiff.bitsPerSample != null ? tiff.bitsPerSample : new int[0])
+        {
+            if (bits != bitsPerSample || bits % Byte.SIZE != 0)
+            {
+                String message = Logging.getMessage("Geotiff.UnsupportedDataTypeRaster", tiff.toString());
+                Logging.logger().severe(message);
+                throw new IOException(message);
+            }
+        }
+        this.bytesPerSample = bitsPerSample / Byte.SIZE;
+        if (this.bytesPerSample < 1)
+        {
+            String message = Logging.getMessage("Geotiff.UnsupportedDataTypeRaster", tiff.toString());
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        TiffIFDEntry tileWidth = getByTag(ifd, Tiff.Tag.TILE_WIDTH);
+        TiffIFDEntry tileLength = getByTag(ifd, Tiff.Tag.TILE_LENGTH);
+        this.tiled = tileWidth != null;
+        if (this.tiled)
+        {
+            this.segmentWidth = (int) tileWidth.asLong();
+            this.segmentHeight = (tileLength != null) ? (int) tileLength.asLong() : 0;
+            this.offsets = getLongs(ifd, Tiff.Tag.TILE_OFFSETS, "TileOffsets");
+            this.counts = getLongs(ifd, Tiff.Tag.TILE_COUNTS, "TileByteCounts");
+        }
+        else
+        {
+            this.segmentWidth = this.width;
+            // Images without RowsPerStrip are a single strip.
+            this.segmentHeight = (tiff.rowsPerStrip > 0 && tiff.rowsPerStrip < this.height)
+                ? tiff.rowsPerStrip : this.height;
+            this.offsets = getLongs(ifd, Tiff.Tag.STRIP_OFFSETS, "StripOffsets");
+            this.counts = getLongs(ifd, Tiff.Tag.STRIP_BYTE_COUNTS, "StripByteCounts");
+        }
+
+        if (this.segmentWidth <= 0 || this.segmentHeight <= 0)
+        {
+            String msg = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue",
+                this.segmentWidth + "x" + this.segmentHeight, "TileWidth/TileLength", Tiff.Tag.TILE_WIDTH);
+            Logging.logger().severe(msg);
+            throw new IOException(msg);
+        }
+
+        this.segmentsAcross = (this.width + this.segmentWidth - 1) / this.segmentWidth;
+        this.segmentsDown = (this.height + this.segmentHeight - 1) / this.segmentHeight;
+        int numSegments = this.segmentsAcross * this.segmentsDown * (this.planar ? this.samplesPerPixel : 1);
+        if (this.offsets.length < numSegments || this.counts.length < numSegments)
+        {
+            String msg = Logging.getMessage("GeotiffReader.InvalidIFDEntryValue", this.offsets.length,
+                this.tiled ? "TileOffsets" : "StripOffsets",
+                this.tiled ? Tiff.Tag.TILE_OFFSETS : Tiff.Tag.STRIP_OFFSETS);
+            Logging.logger().severe(msg);
+            throw new IOException(msg);
+        }
+
+        TiffIFDEntry entry = getByTag(ifd, Tiff.Tag.COMPRESSION);
+        this.compression = (entry != null) ? (int) entry.asLong() : Tiff.Compression.NONE;
+        if (this.compression != Tiff.Compression.NONE && this.compression != Tiff.Compression.LZW
+            && this.compression != Tiff.Compression.DEFLATE && this.compression != Tiff.Compression.ADOBE_DEFLATE
+            && this.compression != Tiff.Compression.PACKBITS)
+        {
+            String message = Logging.getMessage("GeotiffReader.CompressionFormatNotSupported");
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        entry = getByTag(ifd, Tiff.Tag.TIFF_PREDICTOR);
+        this.predictor = (entry != null) ? (int) entry.asLong() : Tiff.Predictor.NONE;
+
+        entry = getByTag(ifd, Tiff.Tag.COLORMAP);
+        this.colorMap = (entry != null) ? tiffReader.readColorMap(entry) : null;
+    }
+
+    protected static TiffIFDEntry getByTag(TiffIFDEntry[] ifd, int tag)
+    {
+        for (TiffIFDEntry entry : ifd)
+        {
+            if (entry.tag == tag)
+                return entry;
+        }
+
+        return null;
+    }
+
+    protected static long[] getLongs(TiffIFDEntry[] ifd, int tag, String name) throws IOException
+    {
+        TiffIFDEntry entry = getByTag(ifd, tag);
+        long[] values = (entry != null) ? entry.getAsLongs() : null;
+        if (values == null || values.length == 0)
+        {
+            String message = Logging.getMessage("GeotiffReader.MissingRequiredTag", name);
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        return values;
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    public int getSamplesPerPixel()
+    {
+        return this.samplesPerPixel;
+    }
+
+    public int getBytesPerSample()
+    {
+        return this.bytesPerSample;
+    }
+
+    public ByteOrder getByteOrder()
+    {
+        return this.byteOrder;
+    }
+
+    public byte[][] getColorMap()
+    {
+        return this.colorMap;
+    }
+
+    public boolean isTiled()
+    {
+        return this.tiled;
+    }
+
+    /**
+     * Decodes a rectangular region of the image. The region's samples are returned pixel interleaved, with the rows
+     * ordered from top to bottom, in the file's byte order.
+     *
+     * @param x      the region's left column.
+     * @param y      the region's top row.
+     * @param width  the region's width in pixels.
+     * @param height the region's height in pixels.
+     *
+     * @return the region's samples, backed by an array.
+     *
+     * @throws IllegalArgumentException if the region is empty or not within the image.
+     * @throws IOException              if a segment cannot be read or decoded.
+     */
+    public ByteBuffer readRegion(int x, int y, int width, int height) throws IOException
+    {
+        if (width <= 0 || height <= 0 || x < 0 || y < 0 || x + width > this.width || y + height > this.height)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange",
+                x + "," + y + " " + width + "x" + height);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int pixelSize = this.samplesPerPixel * this.bytesPerSample;
+        int segmentPixelSize = this.planar ? this.bytesPerSample : pixelSize;
+        byte[] region = new byte[width * height * pixelSize];
+        byte[] segment = new byte[this.segmentWidth * this.segmentHeight * segmentPixelSize];
+
+        int firstCol = x / this.segmentWidth;
+        int lastCol = (x + width - 1) / this.segmentWidth;
+        int firstRow = y / this.segmentHeight;
+        int lastRow = (y + height - 1) / this.segmentHeight;
+        int numPlanes = this.planar ? this.samplesPerPixel : 1;
+
+        for (int plane = 0; plane < numPlanes; plane++)
+        {
+            for (int row = firstRow; row <= lastRow; row++)
+            {
+                int segmentTop = row * this.segmentHeight;
+                // Tiles are always full size, but the last strip holds only the image's remaining rows.
+                int segmentRows = this.tiled ? this.segmentHeight
+                    : Math.min(this.segmentHeight, this.height - segmentTop);
+
+                for (int col = firstCol; col <= lastCol; col++)
+                {
+                    int segmentLeft = col * this.segmentWidth;
+                    int index = (plane * this.segmentsDown + row) * this.segmentsAcross + col;
+                    this.decodeSegment(index, segment, segmentRows, segmentPixelSize);
+
+                    // Copy the part of the segment within the region.
+                    int x0 = Math.max(x, segmentLeft);
+                    int x1 = Math.min(x + width, segmentLeft + this.segmentWidth);
+                    int y0 = Math.max(y, segmentTop);
+                    int y1 = Math.min(y + height, segmentTop + segmentRows);
+                    for (int yy = y0; yy < y1; yy++)
+                    {
+                        int src = ((yy - segmentTop) * this.segmentWidth + (x0 - segmentLeft)) * segmentPixelSize;
+                        int dest = ((yy - y) * width + (x0 - x)) * pixelSize;
+                        if (!this.planar)
+                        {
+                            System.arraycopy(segment, src, region, dest, (x1 - x0) * pixelSize);
+                            continue;
+                        }
+
+                        dest += plane * this.bytesPerSample;
+                        for (int xx = x0; xx < x1; xx++)
+                        {
+                            System.arraycopy(segment, src, region, dest, this.bytesPerSample);
+                            src += this.bytesPerSample;
+                            dest += pixelSize;
+                        }
+                    }
+                }
+            }
+        }
+
+        return ByteBuffer.wrap(region).order(this.byteOrder);
+    }
+
+    protected void decodeSegment(int index, byte[] segment, int rows, int pixelSize) throws IOException
+    {
+        int length = rows * this.segmentWidth * pixelSize;
+
+        // Sparse files omit segments that hold only zeros.
+        if (this.offsets[index] == 0 || this.counts[index] == 0)
+        {
+            Arrays.fill(segment, 0, length, (byte) 0);
+            return;
+        }
+
+        ByteBuffer data = this.getSegmentData(this.offsets[index], this.counts[index]);
+        int numDecoded;
+        try
+        {
+            switch (this.compression)
+            {
+                case Tiff.Compression.LZW:
+                    byte[] compressed = new byte[data.remaining()];
+                    data.get(compressed);
+                    byte[] decoded = this.tiffReader.lzwUncompress(compressed, length);
+                    numDecoded = Math.min(decoded.length, length);
+                    System.arraycopy(decoded, 0, segment, 0, numDecoded);
+                    break;
+
+                case Tiff.Compression.DEFLATE:
+                case Tiff.Compression.ADOBE_DEFLATE:
+                    numDecoded = inflate(data, segment, length);
+                    break;
+
+                case Tiff.Compression.PACKBITS:
+                    numDecoded = unpackBits(data, segment, length);
+                    break;
+
+                default:
+                    numDecoded = Math.min(data.remaining(), length);
+                    data.get(segment, 0, numDecoded);
+                    break;
+            }
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("GeotiffReader.CannotDecodeSegment", index, e.getMessage());
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        if (numDecoded < length)
+            Arrays.fill(segment, numDecoded, length, (byte) 0);
+
+        int samplesPerSegmentPixel = this.planar ? 1 : this.samplesPerPixel;
+        if (this.predictor == Tiff.Predictor.HORIZONTAL)
+            this.undoHorizontalPredictor(segment, rows, samplesPerSegmentPixel);
+        else if (this.predictor == Tiff.Predictor.FLOATING_POINT)
+            this.undoFloatingPointPredictor(segment, rows, samplesPerSegmentPixel);
+    }
+
+    protected ByteBuffer getSegmentData(long offset, long count) throws IOException
+    {
+        if (this.fileMap != null)
+        {
+            ByteBuffer data = this.fileMap.duplicate();
+            data.limit((int) Math.min(offset + count, data.capacity()));
+            data.position((int) offset);
+            return data;
+        }
+
+        return this.channel.map(FileChannel.MapMode.READ_ONLY, offset,
+            Math.min(count, this.channel.size() - offset));
+    }
+
+    protected static int inflate(ByteBuffer data, byte[] segment, int length) throws DataFormatException
+    {
+        byte[] compressed = new byte[data.remaining()];
+        data.get(compressed);
+
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(compressed);
+            int numDecoded = 0;
+            while (numDecoded < length && !inflater.finished())
+            {
+                int n = inflater.inflate(segment, numDecoded, length - numDecoded);
+                if (n == 0)
+                {
+                    // Inflater makes no further progress without a dictionary or more input, neither of which exists.
+                    if (inflater.needsDictionary())
+                        throw new DataFormatException(Logging.getMessage("GeotiffReader.DeflateNeedsDictionary"));
+                    if (inflater.needsInput())
+                        throw new DataFormatException(Logging.getMessage("GeotiffReader.DeflateTruncated"));
+                }
+                numDecoded += n;
+            }
+            return numDecoded;
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    protected static int unpackBits(ByteBuffer data, byte[] segment, int length)
+    {
+        int numDecoded = 0;
+        while (data.hasRemaining() && numDecoded < length)
+        {
+            int n = data.get();
+            if (n >= 0)
+            {
+                // Copy the next n + 1 bytes literally.
+                int count = Math.min(n + 1, Math.min(length - numDecoded, data.remaining()));
+                data.get(segment, numDecoded, count);
+                numDecoded += count;
+            }
+            else if (n != -128 && data.hasRemaining())
+            {
+                // Repeat the next byte 1 - n times.
+                int count = Math.min(1 - n, length - numDecoded);
+                Arrays.fill(segment, numDecoded, numDecoded + count, data.get());
+                numDecoded += count;
+            }
+        }
+
+        return numDecoded;
+    }
+
+    protected void undoHorizontalPredictor(byte[] segment, int rows, int samples)
+    {
+        int rowLength = this.segmentWidth * samples;
+        boolean bigEndian = this.byteOrder == ByteOrder.BIG_ENDIAN;
+
+        for (int row = 0; row < rows; row++)
+        {
+            int rowStart = row * rowLength;
+            for (int i = samples; i < rowLength; i++)
+            {
+                int index = (rowStart + i) * this.bytesPerSample;
+                int previous = index - samples * this.bytesPerSample;
+                if (this.bytesPerSample == 1)
+                {
+                    segment[index] += segment[previous];
+                }
+                else
+                {
+                    putSample(segment, index, this.bytesPerSample,
+                        getSample(segment, index, this.bytesPerSample, bigEndian)
+                            + getSample(segment, previous, this.bytesPerSample, bigEndian), bigEndian);
+                }
+            }
+        }
+    }
+
+    protected void undoFloatingPointPredictor(byte[] segment, int rows, int samples)
+    {
+        int numValues = this.segmentWidth * samples;
+        int rowLength = numValues * this.bytesPerSample;
+        byte[] row = new byte[rowLength];
+        boolean bigEndian = this.byteOrder == ByteOrder.BIG_ENDIAN;
+
+        for (int r = 0; r < rows; r++)
+        {
+            int rowStart = r * rowLength;
+            System.arraycopy(segment, rowStart, row, 0, rowLength);
+
+            // Undo the byte differencing, which is applied with a stride of one pixel.
+            for (int i = samples; i < rowLength; i++)
+            {
+                row[i] += row[i - samples];
+            }
+
+            // The row holds the most significant byte of every value, then the next byte of every value, and so on.
+            for (int k = 0; k < numValues; k++)
+            {
+                for (int b = 0; b < this.bytesPerSample; b++)
+                {
+                    int dest = rowStart + k * this.bytesPerSample + (bigEndian ? b : this.bytesPerSample - 1 - b);
+                    segment[dest] = row[b * numValues + k];
+                }
+            }
+        }
+    }
+
+    protected static long getSample(byte[] array, int index, int size, boolean bigEndian)
+    {
+        long value = 0;
+        for (int i = 0; i < size; i++)
+        {
+            value = (value << 8) | (0xFF & array[bigEndian ? index + i : index + size - 1 - i]);
+        }
+
+        return value;
+    }
+
+    protected static void putSample(byte[] array, int index, int size, long value, boolean bigEndian)
+    {
+        for (int i = size - 1; i >= 0; i--)
+        {
+            array[bigEndian ? index + i : index + size - 1 - i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.tiff;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.*;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * This is a package private class that encodes the strips or tiles, called segments here, of a TIFF image. Each segment
+ * is optionally encoded with a horizontal or floating point predictor and then compressed with LZW, Deflate or
+ * PackBits. The output is readable by {@link TIFFImageDecoder}.
+ * <p/>
+ * An encoder holds compression state and is not safe for use by more than one thread at a time.
+ *
+ * @author tag
+ * @version $Id$
+ */
+class TIFFSegmentEncoder
+{
+    protected static final int CLEAR_CODE = 256;
+    protected static final int EOI_CODE = 257;
+    protected static final int FIRST_CODE = 258;
+    // Clear the LZW string table before its codes exceed 12 bits.
+    protected static final int MAX_CODE = 4094;
+    protected static final int HASH_SIZE = 9973;
+
+    protected final int compression;
+    protected final int predictor;
+    protected final int samplesPerPixel;
+    protected final int bytesPerSample;
+    protected final boolean bigEndian;
+
+    protected Deflater deflater;
+    protected ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    // The LZW string table, as a hash table mapping a prefix code and a byte to a code.
+    protected int[] lzwKeys;
+    protected short[] lzwCodes;
+
+    /**
+     * Creates an encoder.
+     *
+     * @param compression     the compression, one of the {@link Tiff.Compression} values NONE, LZW, DEFLATE or
+     *                        PACKBITS.
+     * @param predictor       the predictor, one of the {@link Tiff.Predictor} values.
+     * @param samplesPerPixel the number of samples in each pixel.
+     * @param bytesPerSample  the number of bytes in each sample.
+     * @param byteOrder       the file's byte order.
+     *
+     * @throws IllegalArgumentException if the compression or predictor is not supported.
+     */
+    public TIFFSegmentEncoder(int compression, int predictor, int samplesPerPixel, int bytesPerSample,
+        ByteOrder byteOrder)
+    {
+        if (!isSupported(compression))
+        {
+            String message = Logging.getMessage("GeotiffWriter.UnsupportedCompression", compression);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (predictor != Tiff.Predictor.NONE && predictor != Tiff.Predictor.HORIZONTAL
+            && predictor != Tiff.Predictor.FLOATING_POINT)
+        {
+            String message = Logging.getMessage("Geotiff.UnknownKeyValue", predictor, "Predictor");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.compression = compression;
+        this.predictor = predictor;
+        this.samplesPerPixel = samplesPerPixel;
+        this.bytesPerSample = bytesPerSample;
+        this.bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * Indicates whether a compression is supported.
+     *
+     * @param compression the compression.
+     *
+     * @return true if segments can be compressed with the specified compression, otherwise false.
+     */
+    public static boolean isSupported(int compression)
+    {
+        return compression == Tiff.Compression.NONE || compression == Tiff.Compression.LZW
+            || compression == Tiff.Compression.DEFLATE || compression == Tiff.Compression.PACKBITS;
+    }
+
+    /**
+     * Encodes a segment. The predictor is applied to the segment in place, so its contents are modified.
+     *
+     * @param segment the segment's samples, in the file's byte order.
+     * @param width   the segment's width in pixels.
+     * @param rows    the segment's number of rows.
+     *
+     * @return a buffer containing the encoded segment, positioned at its start and limited to its end.
+     */
+    public ByteBuffer encode(byte[] segment, int width, int rows)
+    {
+        int length = width * rows * this.samplesPerPixel * this.bytesPerSample;
+
+        if (this.predictor == Tiff.Predictor.HORIZONTAL)
+            this.applyHorizontalPredictor(segment, width, rows);
+        else if (this.predictor == Tiff.Predictor.FLOATING_POINT)
+            this.applyFloatingPointPredictor(segment, width, rows);
+
+        if (this.compression == Tiff.Compression.NONE)
+            return ByteBuffer.wrap(segment, 0, length);
+
+        this.encoded.reset();
+        if (this.compression == Tiff.Compression.DEFLATE)
+            this.deflate(segment, length);
+        else if (this.compression == Tiff.Compression.LZW)
+            this.lzwCompress(segment, length);
+        else
+            this.packBits(segment, length);
+
+        return ByteBuffer.wrap(this.encoded.toByteArray());
+    }
+
+    /** Releases the encoder's compression resources. */
+    public void dispose()
+    {
+        if (this.deflater != null)
+        {
+            this.deflater.end();
+            this.deflater = null;
+        }
+    }
+
+    protected void applyHorizontalPredictor(byte[] segment, int width, int rows)
+    {
+        int rowLength = width * this.samplesPerPixel;
+
+        for (int row = 0; row < rows; row++)
+        {
+            int rowStart = row * rowLength;
+            // Work from the end of the row, so each difference is taken against an original sample.
+            for (int i = rowLength - 1; i >= this.samplesPerPixel; i--)
+            {
+                int index = (rowStart + i) * this.bytesPerSample;
+                int previous = index - this.samplesPerPixel * this.bytesPerSample;
+                if (this.bytesPerSample == 1)
+                {
+                    segment[index] -= segment[previous];
+                }
+                else
+                {
+                    TIFFImageDecoder.putSample(segment, index, this.bytesPerSample,
+                        TIFFImageDecoder.getSample(segment, index, this.bytesPerSample, this.bigEndian)
+                            - TIFFImageDecoder.getSample(segment, previous, this.bytesPerSample, this.bigEndian),
+                        this.bigEndian);
+                }
+            }
+        }
+    }
+
+    protected void applyFloatingPointPredictor(byte[] segment, int width, int rows)
+    {
+        int numValues = width * this.samplesPerPixel;
+        int rowLength = numValues * this.bytesPerSample;
+        byte[] row = new byte[rowLength];
+
+        for (int r = 0; r < rows; r++)
+        {
+            int rowStart = r * rowLength;
+
+            // Arrange the row as the most significant byte of every value, then the next byte of every value, and so
+            // on, then difference the bytes with a stride of one pixel.
+            for (int k = 0; k < numValues; k++)
+            {
+                for (int b = 0; b < this.bytesPerSample; b++)
+                {
+                    int src = rowStart + k * this.bytesPerSample + (this.bigEndian ? b : this.bytesPerSample - 1 - b);
+                    row[b * numValues + k] = segment[src];
+                }
+            }
+
+            for (int i = rowLength - 1; i >= this.samplesPerPixel; i--)
+            {
+                row[i] -= row[i - this.samplesPerPixel];
+            }
+
+            System.arraycopy(row, 0, segment, rowStart, rowLength);
+        }
+    }
+
+    protected void deflate(byte[] segment, int length)
+    {
+        if (this.deflater == null)
+            this.deflater = new Deflater();
+
+        this.deflater.reset();
+        this.deflater.setInput(segment, 0, length);
+        this.deflater.finish();
+
+        byte[] buffer = new byte[Math.max(1024, length / 4)];
+        while (!this.deflater.finished())
+        {
+            this.encoded.write(buffer, 0, this.deflater.deflate(buffer));
+        }
+    }
+
+    protected void packBits(byte[] segment, int length)
+    {
+        int i = 0;
+        while (i < length)
+        {
+            // Encode runs of three or more equal bytes as a repeat, and everything else as literals.
+            int run = 1;
+            while (i + run < length && run < 128 && segment[i + run] == segment[i])
+            {
+                run++;
+            }
+
+            if (run >= 3)
+            {
+                this.encoded.write(1 - run);
+                this.encoded.write(segment[i]);
+                i += run;
+                continue;
+            }
+
+            int start = i;
+            while (i < length && i - start < 128
+                && !(i + 2 < length && segment[i] == segment[i + 1] && segment[i] == segment[i + 2]))
+            {
+                i++;
+            }
+
+            this.encoded.write(i - start - 1);
+            this.encoded.write(segment, start, i - start);
+        }
+    }
+
+    protected void lzwCompress(byte[] segment, int length)
+    {
+        if (this.lzwKeys == null)
+        {
+            this.lzwKeys = new int[HASH_SIZE];
+            this.lzwCodes = new short[HASH_SIZE];
+        }
+
+        CodeWriter writer = new CodeWriter(this.encoded);
+        Arrays.fill(this.lzwKeys, -1);
+        int nextCode = FIRST_CODE;
+        writer.write(CLEAR_CODE, codeWidth(nextCode));
+
+        if (length == 0)
+        {
+            writer.write(EOI_CODE, codeWidth(nextCode));
+            writer.flush();
+            return;
+        }
+
+        int prefix = 0xFF & segment[0];
+        for (int i = 1; i < length; i++)
+        {
+            int c = 0xFF & segment[i];
+            int key = (prefix << 8) | c;
+            int slot = key % HASH_SIZE;
+            while (this.lzwKeys[slot] != -1 && this.lzwKeys[slot] != key)
+            {
+                slot = (slot + 1) % HASH_SIZE;
+            }
+
+            if (this.lzwKeys[slot] == key)
+            {
+                prefix = this.lzwCodes[slot];
+                continue;
+            }
+
+            writer.write(prefix, codeWidth(nextCode));
+            this.lzwKeys[slot] = key;
+            this.lzwCodes[slot] = (short) nextCode++;
+
+            if (nextCode == MAX_CODE)
+            {
+                writer.write(CLEAR_CODE, codeWidth(nextCode));
+                Arrays.fill(this.lzwKeys, -1);
+                nextCode = FIRST_CODE;
+            }
+
+            prefix = c;
+        }
+
+        writer.write(prefix, codeWidth(nextCode));
+        // The decoder adds a string for the last code before reading the end of information code.
+        writer.write(EOI_CODE, codeWidth(nextCode + 1));
+        writer.flush();
+    }
+
+    protected static int codeWidth(int nextCode)
+    {
+        // The code width grows one code early, matching the TIFF LZW decoder.
+        return nextCode >= 2048 ? 12 : nextCode >= 1024 ? 11 : nextCode >= 512 ? 10 : 9;
+    }
+
+    /** Writes variable width codes, most significant bit first. */
+    protected static class CodeWriter
+    {
+        protected final ByteArrayOutputStream out;
+        protected int bits;
+        protected int numBits;
+
+        public CodeWriter(ByteArrayOutputStream out)
+        {
+            this.out = out;
+        }
+
+        public void write(int code, int width)
+        {
+            this.bits = (this.bits << width) | code;
+            this.numBits += width;
+            while (this.numBits >= 8)
+            {
+                this.numBits -= 8;
+                this.out.write(this.bits >>> this.numBits);
+            }
+            this.bits &= (1 << this.numBits) - 1;
+        }
+
+        public void flush()
+        {
+            if (this.numBits > 0)
+                this.out.write(this.bits << (8 - this.numBits));
+            this.bits = 0;
+            this.numBits = 0;
+        }
+    }
+}
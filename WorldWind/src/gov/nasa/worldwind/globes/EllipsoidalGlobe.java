@@ -12,7 +12,9 @@ import gov.nasa.worldwind.render.DrawContext;
 import gov.nasa.worldwind.terrain.*;
 import gov.nasa.worldwind.util.*;
 
+import java.nio.FloatBuffer;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Tom Gaskins
@@ -27,6 +29,10 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
     private ElevationModel elevationModel;
     private Tessellator tessellator;
 
+    /** Whether each globe class overrides the single point conversions, keyed by class. */
+    protected static final ConcurrentHashMap<Class<?>, Boolean> conversionOverrides =
+        new ConcurrentHashMap<Class<?>, Boolean>();
+
     public EllipsoidalGlobe(double equatorialRadius, double polarRadius, double es, ElevationModel em)
     {
         this.equatorialRadius = equatorialRadius;
@@ -408,6 +414,29 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
             this.elevationModel.getElevations(sector, latlons, targetResolution, elevations) : 0;
     }
 
+    /**
+     * Returns the elevations of locations specified as parallel arrays of latitudes and longitudes. Behaves as {@link
+     * #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}, but does not allocate per
+     * location if the elevation model is an {@link AbstractElevationModel}.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired horizontal resolution, in radians.
+     * @param elevations       an array in which to place the returned elevations.
+     *
+     * @return the resolution achieved, in radians, or 0 if the globe has no elevation model.
+     *
+     * @see AbstractElevationModel#getElevations(gov.nasa.worldwind.globes.ElevationModel,
+     *      gov.nasa.worldwind.geom.Sector, double[], double[], double, double[], boolean)
+     */
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] elevations)
+    {
+        return this.elevationModel != null ? AbstractElevationModel.getElevations(this.elevationModel, sector,
+            latitudes, longitudes, targetResolution, elevations, true) : 0;
+    }
+
     public double getElevation(Angle latitude, Angle longitude)
     {
         if (latitude == null || longitude == null)
@@ -480,6 +509,412 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
         return this.cartesianToGeodetic(point);
     }
 
+    /**
+     * Computes the Cartesian points of many geographic positions. This produces the same points as {@link
+     * #computePointFromPosition(Angle, Angle, double)} without creating objects for each position.
+     *
+     * @param positions      the positions' latitudes and longitudes in degrees and elevations in meters, three values
+     *                       per position.
+     * @param numPositions   the number of positions to convert.
+     * @param referencePoint a point to subtract from each computed point. May be null, in which case the points are
+     *                       the model-coordinate points.
+     * @param points         the array to receive each point's x, y and z coordinates, three values per position. May
+     *                       be the positions array, in which case the points replace the positions.
+     *
+     * @throws IllegalArgumentException if either array is null or too short for the number of positions.
+     */
+    public void computePointsFromPositions(double[] positions, int numPositions, Vec4 referencePoint,
+        double[] points)
+    {
+        validatePointArrays(positions, numPositions, points != null ? points.length : -1);
+
+        this.doComputePointsFromPositions(positions, numPositions, referencePoint, points, null);
+    }
+
+    /**
+     * Computes the Cartesian points of many geographic positions and places them in a buffer. The points are put
+     * starting at the buffer's position, which is advanced past them.
+     *
+     * @param positions      the positions' latitudes and longitudes in degrees and elevations in meters, three values
+     *                       per position.
+     * @param numPositions   the number of positions to convert.
+     * @param referencePoint a point to subtract from each computed point. May be null, in which case the points are
+     *                       the model-coordinate points.
+     * @param points         the buffer to receive each point's x, y and z coordinates, three values per position.
+     *
+     * @throws IllegalArgumentException if the array or buffer is null or too short for the number of positions.
+     * @see #computePointsFromPositions(double[], int, Vec4, double[])
+     */
+    public void computePointsFromPositions(double[] positions, int numPositions, Vec4 referencePoint,
+        FloatBuffer points)
+    {
+        validatePointArrays(positions, numPositions, points != null ? points.remaining() : -1);
+
+        this.doComputePointsFromPositions(positions, numPositions, referencePoint, null, points);
+    }
+
+    /**
+     * Computes the Cartesian points of a grid of geographic positions and places them in a buffer. Each grid row has
+     * one latitude and each column one longitude, so conversion work that depends on only one of them is done once
+     * per row or column rather than once per point. The points are put in row-major order starting at the buffer's
+     * position, which is advanced past them.
+     *
+     * @param latitudes      the latitude of each row, in radians.
+     * @param longitudes     the longitude of each column, in radians.
+     * @param numLat         the number of rows.
+     * @param numLon         the number of columns.
+     * @param elevations     the elevation of each grid point in meters, in row-major order.
+     * @param referencePoint a point to subtract from each computed point. May be null, in which case the points are
+     *                       the model-coordinate points.
+     * @param points         the buffer to receive each point's x, y and z coordinates.
+     *
+     * @throws IllegalArgumentException if an array or the buffer is null or too short for the grid.
+     */
+    public void computePointsFromGrid(double[] latitudes, double[] longitudes, int numLat, int numLon,
+        double[] elevations, Vec4 referencePoint, FloatBuffer points)
+    {
+        if (latitudes == null || longitudes == null || elevations == null)
+        {
+            String message = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (points == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (numLat < 0 || numLon < 0 || latitudes.length < numLat || longitudes.length < numLon
+            || elevations.length < numLat * numLon)
+        {
+            String message = Logging.getMessage("generic.ArrayInvalidLength", elevations.length);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (points.remaining() < 3 * numLat * numLon)
+        {
+            String message = Logging.getMessage("generic.BufferSize", points.remaining());
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.doComputePointsFromGrid(latitudes, longitudes, numLat, numLon, elevations, referencePoint, points);
+    }
+
+    /**
+     * Computes the geographic positions of many Cartesian points. This produces the same positions as {@link
+     * #computePositionFromPoint(Vec4)} without creating objects for each point.
+     *
+     * @param points         the points' x, y and z coordinates, three values per point.
+     * @param numPoints      the number of points to convert.
+     * @param referencePoint a point to add to each point before conversion. May be null, in which case the points are
+     *                       taken to be model-coordinate points.
+     * @param positions      the array to receive each position's latitude and longitude in degrees and elevation in
+     *                       meters, three values per point. May be the points array, in which case the positions
+     *                       replace the points.
+     *
+     * @throws IllegalArgumentException if either array is null or too short for the number of points.
+     */
+    public void computePositionsFromPoints(double[] points, int numPoints, Vec4 referencePoint, double[] positions)
+    {
+        validatePointArrays(points, numPoints, positions != null ? positions.length : -1);
+
+        this.doComputePositionsFromPoints(points, numPoints, referencePoint, positions);
+    }
+
+    /**
+     * Validates the arguments of the bulk conversions, which convert one array of three values per element to
+     * another.
+     *
+     * @param input          the array to convert.
+     * @param count          the number of elements to convert.
+     * @param outputCapacity the number of values the output can hold, or -1 if the output is null.
+     *
+     * @throws IllegalArgumentException if the input or output is null or too short.
+     */
+    protected static void validatePointArrays(double[] input, int count, int outputCapacity)
+    {
+        if (input == null || outputCapacity < 0)
+        {
+            String message = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (count < 0 || input.length < 3 * count || outputCapacity < 3 * count)
+        {
+            String message = Logging.getMessage("generic.ArrayInvalidLength", Math.min(input.length, outputCapacity));
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Indicates whether this globe's class overrides the single point conversions of the class that implements its
+     * bulk conversions. The bulk conversions of such a globe convert each point with the overriding methods, so that
+     * both produce the same points.
+     *
+     * @return true if a subclass overrides the single point conversions, otherwise false.
+     *
+     * @see #getConversionClass()
+     */
+    protected boolean isConversionOverridden()
+    {
+        Boolean overridden = conversionOverrides.get(this.getClass());
+        if (overridden == null)
+        {
+            overridden = Boolean.FALSE;
+            for (Class<?> c = this.getClass(); c != this.getConversionClass(); c = c.getSuperclass())
+            {
+                if (declaresMethod(c, "geodeticToCartesian", Angle.class, Angle.class, double.class)
+                    || declaresMethod(c, "computePointFromPosition", Angle.class, Angle.class, double.class)
+                    || declaresMethod(c, "cartesianToGeodetic", Vec4.class)
+                    || declaresMethod(c, "computePositionFromPoint", Vec4.class))
+                {
+                    overridden = Boolean.TRUE;
+                    break;
+                }
+            }
+            conversionOverrides.put(this.getClass(), overridden);
+        }
+
+        return overridden;
+    }
+
+    /**
+     * Returns the class whose bulk conversions this globe uses. Subclasses that implement their own bulk conversions
+     * override this method to return their own class.
+     *
+     * @return the class implementing this globe's bulk conversions.
+     */
+    protected Class<?> getConversionClass()
+    {
+        return EllipsoidalGlobe.class;
+    }
+
+    protected static boolean declaresMethod(Class<?> c, String name, Class<?>... parameterTypes)
+    {
+        try
+        {
+            c.getDeclaredMethod(name, parameterTypes);
+            return true;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Computes the Cartesian points of many geographic positions, placing them either in an array or in a buffer.
+     *
+     * @param positions      the positions, three values per position.
+     * @param numPositions   the number of positions.
+     * @param referencePoint the point to subtract from each computed point. May be null.
+     * @param points         the array to receive the points, or null to place them in the buffer.
+     * @param buffer         the buffer to receive the points if the array is null.
+     */
+    protected void doComputePointsFromPositions(double[] positions, int numPositions, Vec4 referencePoint,
+        double[] points, FloatBuffer buffer)
+    {
+        if (this.isConversionOverridden())
+        {
+            this.computePointsFromPositionsIndividually(positions, numPositions, referencePoint, points, buffer);
+            return;
+        }
+
+        double rx = referencePoint != null ? referencePoint.x : 0;
+        double ry = referencePoint != null ? referencePoint.y : 0;
+        double rz = referencePoint != null ? referencePoint.z : 0;
+
+        for (int i = 0; i < 3 * numPositions; i += 3)
+        {
+            // Convert as Angle.fromDegrees does, so that the points match the single point conversion exactly.
+            double latitude = Angle.DEGREES_TO_RADIANS * positions[i];
+            double longitude = Angle.DEGREES_TO_RADIANS * positions[i + 1];
+            double elevation = positions[i + 2];
+
+            double cosLat = Math.cos(latitude);
+            double sinLat = Math.sin(latitude);
+            double rpm = this.equatorialRadius / Math.sqrt(1.0 - this.es * sinLat * sinLat);
+
+            double x = (rpm + elevation) * cosLat * Math.sin(longitude);
+            double y = (rpm * (1.0 - this.es) + elevation) * sinLat;
+            double z = (rpm + elevation) * cosLat * Math.cos(longitude);
+
+            putPoint(points, buffer, i, x - rx, y - ry, z - rz);
+        }
+    }
+
+    /**
+     * Computes the Cartesian points of many geographic positions by converting each with {@link
+     * #geodeticToCartesian(Angle, Angle, double)}.
+     *
+     * @param positions      the positions, three values per position.
+     * @param numPositions   the number of positions.
+     * @param referencePoint the point to subtract from each computed point. May be null.
+     * @param points         the array to receive the points, or null to place them in the buffer.
+     * @param buffer         the buffer to receive the points if the array is null.
+     */
+    protected void computePointsFromPositionsIndividually(double[] positions, int numPositions, Vec4 referencePoint,
+        double[] points, FloatBuffer buffer)
+    {
+        Vec4 offset = referencePoint != null ? referencePoint : Vec4.ZERO;
+
+        for (int i = 0; i < 3 * numPositions; i += 3)
+        {
+            Vec4 point = this.geodeticToCartesian(Angle.fromDegrees(positions[i]), Angle.fromDegrees(positions[i + 1]),
+                positions[i + 2]);
+
+            putPoint(points, buffer, i, point.x - offset.x, point.y - offset.y, point.z - offset.z);
+        }
+    }
+
+    /**
+     * Computes the Cartesian points of a grid of geographic positions. The trigonometric functions of each row's
+     * latitude and each column's longitude are evaluated once, rather than once per point.
+     *
+     * @param latitudes      the latitude of each row, in radians.
+     * @param longitudes     the longitude of each column, in radians.
+     * @param numLat         the number of rows.
+     * @param numLon         the number of columns.
+     * @param elevations     the elevation of each grid point, in row-major order.
+     * @param referencePoint the point to subtract from each computed point. May be null.
+     * @param points         the buffer to receive the points.
+     */
+    protected void doComputePointsFromGrid(double[] latitudes, double[] longitudes, int numLat, int numLon,
+        double[] elevations, Vec4 referencePoint, FloatBuffer points)
+    {
+        if (this.isConversionOverridden())
+        {
+            this.computePointsFromGridIndividually(latitudes, longitudes, numLat, numLon, elevations, referencePoint,
+                points);
+            return;
+        }
+
+        double rx = referencePoint != null ? referencePoint.x : 0;
+        double ry = referencePoint != null ? referencePoint.y : 0;
+        double rz = referencePoint != null ? referencePoint.z : 0;
+
+        double[] cosLon = new double[numLon];
+        double[] sinLon = new double[numLon];
+        for (int i = 0; i < numLon; i++)
+        {
+            cosLon[i] = Math.cos(longitudes[i]);
+            sinLon[i] = Math.sin(longitudes[i]);
+        }
+
+        int k = 0;
+        for (int j = 0; j < numLat; j++)
+        {
+            double cosLat = Math.cos(latitudes[j]);
+            double sinLat = Math.sin(latitudes[j]);
+            double rpm = this.equatorialRadius / Math.sqrt(1.0 - this.es * sinLat * sinLat);
+
+            for (int i = 0; i < numLon; i++)
+            {
+                double elevation = elevations[k++];
+                double x = (rpm + elevation) * cosLat * sinLon[i];
+                double y = (rpm * (1.0 - this.es) + elevation) * sinLat;
+                double z = (rpm + elevation) * cosLat * cosLon[i];
+
+                points.put((float) (x - rx));
+                points.put((float) (y - ry));
+                points.put((float) (z - rz));
+            }
+        }
+    }
+
+    /**
+     * Computes the Cartesian points of a grid of geographic positions by converting each with {@link
+     * #geodeticToCartesian(Angle, Angle, double)}.
+     *
+     * @param latitudes      the latitude of each row, in radians.
+     * @param longitudes     the longitude of each column, in radians.
+     * @param numLat         the number of rows.
+     * @param numLon         the number of columns.
+     * @param elevations     the elevation of each grid point, in row-major order.
+     * @param referencePoint the point to subtract from each computed point. May be null.
+     * @param points         the buffer to receive the points.
+     */
+    protected void computePointsFromGridIndividually(double[] latitudes, double[] longitudes, int numLat, int numLon,
+        double[] elevations, Vec4 referencePoint, FloatBuffer points)
+    {
+        Vec4 offset = referencePoint != null ? referencePoint : Vec4.ZERO;
+
+        int k = 0;
+        for (int j = 0; j < numLat; j++)
+        {
+            Angle latitude = Angle.fromRadians(latitudes[j]);
+            for (int i = 0; i < numLon; i++)
+            {
+                Vec4 point = this.geodeticToCartesian(latitude, Angle.fromRadians(longitudes[i]), elevations[k++]);
+                points.put((float) (point.x - offset.x));
+                points.put((float) (point.y - offset.y));
+                points.put((float) (point.z - offset.z));
+            }
+        }
+    }
+
+    /**
+     * Computes the geographic positions of many Cartesian points.
+     *
+     * @param points         the points, three values per point.
+     * @param numPoints      the number of points.
+     * @param referencePoint the point to add to each point before conversion. May be null.
+     * @param positions      the array to receive the positions, three values per point.
+     */
+    protected void doComputePositionsFromPoints(double[] points, int numPoints, Vec4 referencePoint,
+        double[] positions)
+    {
+        double rx = referencePoint != null ? referencePoint.x : 0;
+        double ry = referencePoint != null ? referencePoint.y : 0;
+        double rz = referencePoint != null ? referencePoint.z : 0;
+
+        boolean individually = this.isConversionOverridden();
+
+        for (int i = 0; i < 3 * numPoints; i += 3)
+        {
+            double x = points[i] + rx;
+            double y = points[i + 1] + ry;
+            double z = points[i + 2] + rz;
+
+            if (individually)
+            {
+                Position position = this.cartesianToGeodetic(new Vec4(x, y, z));
+                positions[i] = position.getLatitude().degrees;
+                positions[i + 1] = position.getLongitude().degrees;
+                positions[i + 2] = position.getElevation();
+            }
+            else
+            {
+                this.cartesianToGeodetic(x, y, z, positions, i);
+                positions[i] = Angle.RADIANS_TO_DEGREES * positions[i];
+                positions[i + 1] = Angle.RADIANS_TO_DEGREES * positions[i + 1];
+            }
+        }
+    }
+
+    protected static void putPoint(double[] points, FloatBuffer buffer, int index, double x, double y, double z)
+    {
+        if (points != null)
+        {
+            points[index] = x;
+            points[index + 1] = y;
+            points[index + 2] = z;
+        }
+        else
+        {
+            buffer.put((float) x);
+            buffer.put((float) y);
+            buffer.put((float) z);
+        }
+    }
+
     /**
      * Returns the normal to the Globe at the specified position.
      *
@@ -714,7 +1149,6 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
 //        return Position.fromRadians(lat, lon, elevation);
 //    }
 
-    @SuppressWarnings( {"SuspiciousNameCombination"})
     protected Position cartesianToGeodetic(Vec4 cart)
     {
         // Contributed by Nathan Kronenfeld. Integrated 1/24/2011. Brings this calculation in line with Vermeille's
@@ -726,14 +1160,33 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
             throw new IllegalArgumentException(message);
         }
 
+        double[] result = new double[3];
+        this.cartesianToGeodetic(cart.x, cart.y, cart.z, result, 0);
+
+        return Position.fromRadians(result[0], result[1], result[2]);
+    }
+
+    /**
+     * Computes the geographic position of a Cartesian point, without creating objects.
+     *
+     * @param x      the point's x coordinate.
+     * @param y      the point's y coordinate.
+     * @param z      the point's z coordinate.
+     * @param result the array to receive the position's latitude and longitude in radians and its elevation in
+     *               meters.
+     * @param offset the index in the array of the latitude.
+     */
+    @SuppressWarnings( {"SuspiciousNameCombination"})
+    protected void cartesianToGeodetic(double x, double y, double z, double[] result, int offset)
+    {
         // According to
         // H. Vermeille,
         // "An analytical method to transform geocentric into geodetic coordinates"
         // http://www.springerlink.com/content/3t6837t27t351227/fulltext.pdf
         // Journal of Geodesy, accepted 10/2010, not yet published
-        double X = cart.z;
-        double Y = cart.x;
-        double Z = cart.y;
+        double X = z;
+        double Y = x;
+        double Z = y;
         double XXpYY = X * X + Y * Y;
         double sqrtXXpYY = Math.sqrt(XXpYY);
 
@@ -824,7 +1277,9 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
             lambda = Math.PI * 0.5 - 2 * Math.atan2(X, sqrtXXpYY + Y);
         }
 
-        return Position.fromRadians(phi, lambda, h);
+        result[offset] = phi;
+        result[offset + 1] = lambda;
+        result[offset + 2] = h;
     }
 //
 //    /**
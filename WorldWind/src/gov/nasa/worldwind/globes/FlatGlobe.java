@@ -9,6 +9,8 @@ import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.util.*;
 import gov.nasa.worldwind.render.DrawContext;
 
+import java.nio.FloatBuffer;
+
 /**
  * Defines a Globe represented as a projection onto a plane. The projection type is modifiable.
  *
@@ -402,6 +404,152 @@ public class FlatGlobe extends EllipsoidalGlobe
         return pos;
     }
 
+    @Override
+    protected Class<?> getConversionClass()
+    {
+        return FlatGlobe.class;
+    }
+
+    @Override
+    protected void doComputePointsFromPositions(double[] positions, int numPositions, Vec4 referencePoint,
+        double[] points, FloatBuffer buffer)
+    {
+        if (this.isConversionOverridden())
+        {
+            this.computePointsFromPositionsIndividually(positions, numPositions, referencePoint, points, buffer);
+            return;
+        }
+
+        double rx = referencePoint != null ? referencePoint.x : 0;
+        double ry = referencePoint != null ? referencePoint.y : 0;
+        double rz = referencePoint != null ? referencePoint.z : 0;
+
+        for (int i = 0; i < 3 * numPositions; i += 3)
+        {
+            double latitude = Angle.DEGREES_TO_RADIANS * positions[i];
+            double x = this.equatorialRadius * (Angle.DEGREES_TO_RADIANS * positions[i + 1])
+                * this.computeLongitudeScale(latitude);
+            double y = this.computeProjectedY(latitude);
+
+            putPoint(points, buffer, i, x - rx, y - ry, positions[i + 2] - rz);
+        }
+    }
+
+    @Override
+    protected void doComputePointsFromGrid(double[] latitudes, double[] longitudes, int numLat, int numLon,
+        double[] elevations, Vec4 referencePoint, FloatBuffer points)
+    {
+        if (this.isConversionOverridden())
+        {
+            this.computePointsFromGridIndividually(latitudes, longitudes, numLat, numLon, elevations, referencePoint,
+                points);
+            return;
+        }
+
+        double rx = referencePoint != null ? referencePoint.x : 0;
+        double ry = referencePoint != null ? referencePoint.y : 0;
+        double rz = referencePoint != null ? referencePoint.z : 0;
+
+        int k = 0;
+        for (int j = 0; j < numLat; j++)
+        {
+            double scale = this.equatorialRadius * this.computeLongitudeScale(latitudes[j]);
+            double y = this.computeProjectedY(latitudes[j]);
+
+            for (int i = 0; i < numLon; i++)
+            {
+                points.put((float) (scale * longitudes[i] - rx));
+                points.put((float) (y - ry));
+                points.put((float) (elevations[k++] - rz));
+            }
+        }
+    }
+
+    @Override
+    protected void doComputePositionsFromPoints(double[] points, int numPoints, Vec4 referencePoint,
+        double[] positions)
+    {
+        if (this.isConversionOverridden())
+        {
+            super.doComputePositionsFromPoints(points, numPoints, referencePoint, positions);
+            return;
+        }
+
+        double rx = referencePoint != null ? referencePoint.x : 0;
+        double ry = referencePoint != null ? referencePoint.y : 0;
+        double rz = referencePoint != null ? referencePoint.z : 0;
+
+        boolean mercator = this.projection.equals(PROJECTION_MERCATOR);
+
+        for (int i = 0; i < 3 * numPoints; i += 3)
+        {
+            double x = (points[i] + rx) / this.equatorialRadius;
+            double y = (points[i + 1] + ry) / this.equatorialRadius;
+            double z = points[i + 2] + rz;
+
+            double latitude = mercator ? Math.atan(Math.sinh(y)) : y;
+            double scale = this.computeLongitudeScale(latitude);
+
+            positions[i] = Angle.RADIANS_TO_DEGREES * latitude;
+            positions[i + 1] = scale > 0 ? Angle.RADIANS_TO_DEGREES * (x / scale) : 0;
+            positions[i + 2] = z;
+        }
+    }
+
+    /**
+     * Computes the projected y coordinate of a latitude, as computed by {@link #geodeticToCartesian(Angle, Angle,
+     * double)}.
+     *
+     * @param latitude the latitude, in radians.
+     *
+     * @return the projected y coordinate.
+     */
+    protected double computeProjectedY(double latitude)
+    {
+        if (this.projection.equals(PROJECTION_MERCATOR))
+        {
+            double limit = Math.toRadians(75);
+            latitude = Math.max(-limit, Math.min(limit, latitude));
+            return this.equatorialRadius * Math.log(Math.tan(Math.PI / 4 + latitude / 2));
+        }
+
+        return this.equatorialRadius * latitude;
+    }
+
+    /**
+     * Computes the ratio of the projected x coordinate at a latitude to the x coordinate at the equator, as computed
+     * by {@link #geodeticToCartesian(Angle, Angle, double)}.
+     *
+     * @param latitude the latitude, in radians.
+     *
+     * @return the ratio of x coordinates.
+     *
+     * @throws IllegalArgumentException if this globe's projection is not recognized.
+     */
+    protected double computeLongitudeScale(double latitude)
+    {
+        if (this.projection.equals(PROJECTION_LAT_LON) || this.projection.equals(PROJECTION_MERCATOR))
+        {
+            return 1;
+        }
+        else if (this.projection.equals(PROJECTION_SINUSOIDAL))
+        {
+            double latCos = Math.cos(latitude);
+            return latCos > 0 ? latCos : 0;
+        }
+        else if (this.projection.equals(PROJECTION_MODIFIED_SINUSOIDAL))
+        {
+            double latCos = Math.cos(latitude);
+            return latCos > 0 ? Math.pow(latCos, .3) : 0;
+        }
+        else
+        {
+            String message = Logging.getMessage("generic.UnknownProjection", this.projection);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
 //
 //    /**
 //     * Returns a cylinder that minimally surrounds the specified minimum and maximum elevations in the sector at a
@@ -510,8 +510,8 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
         if (targetSector == null)
             return 0;
 
-        BasicTiledImageLayerBulkDownloader downloader = new BasicTiledImageLayerBulkDownloader(this, sector, resolution,
-            fileStore != null ? fileStore : this.getDataFileStore(), null);
+        BasicTiledImageLayerBulkDownloader downloader = new BasicTiledImageLayerBulkDownloader(this, targetSector,
+            resolution, fileStore != null ? fileStore : this.getDataFileStore(), null);
 
         return downloader.getEstimatedMissingDataSize();
     }
@@ -530,13 +530,29 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
     }
 
     protected void retrieveLocalTexture(TextureTile tile, DownloadPostProcessor postProcessor)
+    {
+        Retriever retriever = this.createLocalTextureRetriever(tile, postProcessor);
+        if (retriever != null)
+            WorldWind.getLocalRetrievalService().runRetriever(retriever, tile.getPriority());
+    }
+
+    /**
+     * Creates a retriever for a tile from the layer's local retriever factory.
+     *
+     * @param tile          the tile to retrieve.
+     * @param postProcessor the retrieval's post-processor.
+     *
+     * @return the retriever, or null if the local retrieval service is not available or the layer has no local
+     *         retriever factory.
+     */
+    protected Retriever createLocalTextureRetriever(TextureTile tile, DownloadPostProcessor postProcessor)
     {
         if (!WorldWind.getLocalRetrievalService().isAvailable())
-            return;
+            return null;
 
         RetrieverFactory retrieverFactory = (RetrieverFactory) this.getValue(AVKey.RETRIEVER_FACTORY_LOCAL);
         if (retrieverFactory == null)
-            return;
+            return null;
 
         AVListImpl avList = new AVListImpl();
         avList.setValue(AVKey.SECTOR, tile.getSector());
@@ -544,40 +560,54 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
         avList.setValue(AVKey.HEIGHT, tile.getHeight());
         avList.setValue(AVKey.FILE_NAME, tile.getPath());
 
-        Retriever retriever = retrieverFactory.createRetriever(avList, postProcessor);
-
-        WorldWind.getLocalRetrievalService().runRetriever(retriever, tile.getPriority());
+        return retrieverFactory.createRetriever(avList, postProcessor);
     }
 
     protected void retrieveRemoteTexture(TextureTile tile, DownloadPostProcessor postProcessor)
+    {
+        Retriever retriever = this.createRemoteTextureRetriever(tile, postProcessor);
+        if (retriever != null)
+            WorldWind.getRetrievalService().runRetriever(retriever, tile.getPriority());
+    }
+
+    /**
+     * Creates a retriever for a tile from the tile's resource URL, and applies the layer's timeouts and stale request
+     * limit to it. Marks the tile absent if network retrieval is disabled or the tile's host is unavailable.
+     *
+     * @param tile          the tile to retrieve.
+     * @param postProcessor the retrieval's post-processor. If null, the layer's default post-processor is used.
+     *
+     * @return the retriever, or null if the tile cannot be retrieved now.
+     */
+    protected Retriever createRemoteTextureRetriever(TextureTile tile, DownloadPostProcessor postProcessor)
     {
         if (!this.isNetworkRetrievalEnabled())
         {
             this.getLevels().markResourceAbsent(tile);
-            return;
+            return null;
         }
 
         if (!WorldWind.getRetrievalService().isAvailable())
-            return;
+            return null;
 
         java.net.URL url;
         try
         {
             url = tile.getResourceURL();
             if (url == null)
-                return;
+                return null;
 
             if (WorldWind.getNetworkStatus().isHostUnavailable(url))
             {
                 this.getLevels().markResourceAbsent(tile);
-                return;
+                return null;
             }
         }
         catch (java.net.MalformedURLException e)
         {
             Logging.logger().log(java.util.logging.Level.SEVERE,
                 Logging.getMessage("layers.TextureLayer.ExceptionCreatingTextureUrl", tile), e);
-            return;
+            return null;
         }
 
         Retriever retriever;
@@ -589,7 +619,7 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
         {
             Logging.logger().severe(
                 Logging.getMessage("layers.TextureLayer.UnknownRetrievalProtocol", url.toString()));
-            return;
+            return null;
         }
         retriever.setValue(URLRetriever.EXTRACT_ZIP_ENTRY, "true"); // supports legacy layers
 
@@ -604,7 +634,7 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
         if (srl != null && srl > 0)
             retriever.setStaleRequestLimit(srl);
 
-        WorldWind.getRetrievalService().runRetriever(retriever, tile.getPriority());
+        return retriever;
     }
 
     protected DownloadPostProcessor createDownloadPostProcessor(TextureTile tile)
@@ -17,25 +17,25 @@ import gov.nasa.worldwind.util.*;
 import java.io.*;
 import java.net.URL;
 import java.nio.ByteBuffer;
-import java.util.*;
 
 /**
  * Downloads imagery not currently available in the World Wind file cache or a specified file store. The class derives
  * from {@link Thread} and is meant to operate in its own thread.
  * <p/>
+ * The tiles to download are listed in a manifest kept in the file store, so a download that's interrupted resumes
+ * where it stopped. See {@link TiledBulkRetrievalThread}.
+ * <p/>
  * The sector and resolution associated with the downloader are specified during construction and are final.
  *
  * @author tag
  * @version $Id$
  */
-public class BasicTiledImageLayerBulkDownloader extends BulkRetrievalThread
+public class BasicTiledImageLayerBulkDownloader extends TiledBulkRetrievalThread
 {
-    protected final static int MAX_TILE_COUNT_PER_REGION = 200;
     protected final static long DEFAULT_AVERAGE_FILE_SIZE = 350000L;
 
     protected final BasicTiledImageLayer layer;
     protected final int level;
-    protected ArrayList<TextureTile> missingTiles;
 
     /**
      * Constructs a downloader to retrieve imagery not currently available in the World Wind file cache.
@@ -83,97 +83,33 @@ public class BasicTiledImageLayerBulkDownloader extends BulkRetrievalThread
         this.level = this.layer.computeLevelForResolution(sector, resolution);
     }
 
-    public void run()
+    protected LevelSet getLevels()
     {
-        try
-        {
-            // Init progress with missing tile count estimate
-            this.progress.setTotalCount(this.estimateMissingTilesCount(20));
-            this.progress.setTotalSize(this.progress.getTotalCount() * estimateAverageTileSize());
-
-            // Determine and request missing tiles by level/region
-            for (int levelNumber = 0; levelNumber <= this.level; levelNumber++)
-            {
-                if (this.layer.getLevels().isLevelEmpty(levelNumber))
-                    continue;
-
-                int div = this.computeRegionDivisions(this.sector, levelNumber, MAX_TILE_COUNT_PER_REGION);
-                Iterator<Sector> regionsIterator = this.getRegionIterator(this.sector, div);
-                
-                Sector region;
-                while (regionsIterator.hasNext())
-                {
-                    region = regionsIterator.next();
-                    // Determine missing tiles
-                    this.missingTiles = getMissingTilesInSector(region, levelNumber);
-
-                    // Submit missing tiles requests at intervals
-                    while (this.missingTiles.size() > 0)
-                    {
-                        submitMissingTilesRequests();
-                        if (this.missingTiles.size() > 0)
-                            Thread.sleep(RETRIEVAL_SERVICE_POLL_DELAY);
-                    }
-                }
-            }
-            // Set progress to 100%
-            this.progress.setTotalCount(this.progress.getCurrentCount());
-            this.progress.setTotalSize(this.progress.getCurrentSize());
-        }
-        catch (InterruptedException e)
-        {
-            String message = Logging.getMessage("generic.BulkRetrievalInterrupted", this.layer.getName());
-            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
-        }
-        catch (Exception e)
-        {
-            String message = Logging.getMessage("generic.ExceptionDuringBulkRetrieval", this.layer.getName());
-            Logging.logger().severe(message);
-            throw new RuntimeException(message);
-        }
+        return this.layer.getLevels();
     }
 
-//    protected int countMissingTiles() throws InterruptedException
-//    {
-//        int count = 0;
-//        for (int levelNumber = 0; levelNumber <= this.level; levelNumber++)
-//        {
-//            if (this.layer.getLevels().isLevelEmpty(levelNumber))
-//                continue;
-//
-//            count += getMissingTilesInSector(this.sector, levelNumber).size();
-//        }
-//
-//        return count;
-//    }
-
-    protected synchronized void submitMissingTilesRequests() throws InterruptedException
+    protected int getTargetLevelNumber()
     {
-        RetrievalService rs = WorldWind.getRetrievalService();
-        int i = 0;
-        while (this.missingTiles.size() > i && rs.isAvailable())
-        {
-            Thread.sleep(1); // generates InterruptedException if thread has been interrupted
+        return this.level;
+    }
 
-            TextureTile tile = this.missingTiles.get(i);
+    protected Tile createTile(Sector sector, Level level, int row, int column)
+    {
+        return new TextureTile(sector, level, row, column);
+    }
 
-            if (this.layer.getLevels().isResourceAbsent(tile))
-            {
-                removeAbsentTile(tile);  // tile is absent, count it off.
-                continue;
-            }
+    protected boolean isTileLocal(Tile tile)
+    {
+        URL url = this.fileStore.findFile(tile.getPath(), false);
 
-            URL url = this.fileStore.findFile(tile.getPath(), false);
-            if (url != null)
-            {
-                // tile has been retrieved and is local now, count it as retrieved.
-                removeRetrievedTile(tile);
-                continue;
-            }
+        return url != null && !this.layer.isTextureFileExpired((TextureTile) tile, url, this.fileStore);
+    }
 
-            this.layer.retrieveRemoteTexture(tile, createBulkDownloadPostProcessor(tile));
-            i++;
-        }
+    protected void retrieveTile(Tile tile)
+    {
+        Retriever retriever = this.layer.createRemoteTextureRetriever((TextureTile) tile,
+            this.createBulkDownloadPostProcessor((TextureTile) tile));
+        this.runRetriever(WorldWind.getRetrievalService(), retriever, tile);
     }
 
     protected BasicTiledImageLayer.DownloadPostProcessor createBulkDownloadPostProcessor(TextureTile tile)
@@ -192,225 +128,12 @@ public class BasicTiledImageLayerBulkDownloader extends BulkRetrievalThread
         {
             ByteBuffer buffer = super.run(retriever);
 
-            if (retriever.getState().equals(Retriever.RETRIEVER_STATE_SUCCESSFUL))
-                removeRetrievedTile(this.tile);
-
-            if (hasRetrievalListeners())
-                callRetrievalListeners(retriever, this.tile);
+            tileRetrieved(this.tile, retriever, buffer != null);
 
             return buffer;
         }
     }
 
-    protected void callRetrievalListeners(Retriever retriever, TextureTile tile)
-    {
-        String eventType = (retriever.getState().equals(Retriever.RETRIEVER_STATE_SUCCESSFUL))
-            ? BulkRetrievalEvent.RETRIEVAL_SUCCEEDED : BulkRetrievalEvent.RETRIEVAL_FAILED;
-        super.callRetrievalListeners(new BulkRetrievalEvent(this.layer, eventType, tile.getPath()));
-    }
-
-    protected synchronized void removeRetrievedTile(TextureTile tile)
-    {
-        this.missingTiles.remove(tile);
-        // Update progress
-        this.progress.setCurrentCount(this.progress.getCurrentCount() + 1);
-        this.progress.setCurrentSize(this.progress.getCurrentSize() + estimateAverageTileSize());
-        this.progress.setLastUpdateTime(System.currentTimeMillis());
-        this.normalizeProgress();
-    }
-
-    protected synchronized void removeAbsentTile(TextureTile tile)
-    {
-        this.missingTiles.remove(tile);
-        // Decrease progress expected total count and size
-        this.progress.setTotalCount(this.progress.getTotalCount() - 1);
-        this.progress.setTotalSize(this.progress.getTotalSize() - estimateAverageTileSize());
-        this.progress.setLastUpdateTime(System.currentTimeMillis());
-        this.normalizeProgress();
-    }
-
-    protected void normalizeProgress()
-    {
-        if (this.progress.getTotalCount() < this.progress.getCurrentCount())
-        {
-            this.progress.setTotalCount(this.progress.getCurrentCount());
-            this.progress.setTotalSize(this.progress.getCurrentSize());
-        }
-    }
-
-    /**
-     * Get the estimated size in byte of the missing imagery for the object's {@link Sector}, resolution and file store.
-     * Note that the target resolution must be provided in radian latitude per texel - which is the resolution in meter
-     * divided by the globe radius.
-     *
-     * @return the estimated size in byte of the missing imagery.
-     */
-    protected long getEstimatedMissingDataSize()
-    {
-        // Get missing tiles count estimate
-        long totMissing = estimateMissingTilesCount(6);
-        // Get average tile size estimate
-        long averageTileSize = estimateAverageTileSize();
-
-        return totMissing * averageTileSize;
-    }
-
-    protected long estimateMissingTilesCount(int numSamples)
-    {
-        int maxLevel = this.layer.computeLevelForResolution(this.sector, this.resolution);
-        // Total expected tiles
-        long totCount = 0;
-        for (int levelNumber = 0; levelNumber <= maxLevel; levelNumber++)
-        {
-            if (!this.layer.getLevels().isLevelEmpty(levelNumber))
-                totCount += this.layer.countImagesInSector(sector, levelNumber);
-        }
-        // Sample random small sized sectors at finest level
-        int div = this.computeRegionDivisions(this.sector, maxLevel, 36); // max 6x6 tiles per region
-        Sector[] regions = computeRandomRegions(this.sector, div, numSamples);
-        long regionMissing = 0;
-        long regionCount = 0;
-        try
-        {
-            if (regions.length < numSamples)
-            {
-                regionCount = this.layer.countImagesInSector(this.sector, maxLevel);
-                regionMissing = getMissingTilesInSector(this.sector, maxLevel).size();
-            }
-            else
-            {
-                for (Sector region : regions)
-                {
-                    // Count how many tiles are missing in each sample region
-                    regionCount += this.layer.countImagesInSector(region, maxLevel);
-                    regionMissing += getMissingTilesInSector(region, maxLevel).size();
-                }
-            }
-        }
-        catch (InterruptedException e)
-        {
-            return 0;
-        }
-        catch (Exception e)
-        {
-            String message = Logging.getMessage("generic.ExceptionDuringDataSizeEstimate", this.layer.getName());
-            Logging.logger().severe(message);
-            throw new RuntimeException(message);
-        }
-
-        // Extrapolate total missing count
-        return (long)(totCount * ((double)regionMissing / regionCount));
-    }
-
-    protected int computeRegionDivisions(Sector sector, int levelNumber, int maxCount)
-    {
-        long tileCount = this.layer.countImagesInSector(sector, levelNumber);
-
-        if (tileCount <= maxCount)
-            return 1;
-
-        // Divide sector in regions that will contain no more tiles then maxCount
-        return (int) Math.ceil(Math.sqrt((double) tileCount / maxCount));
-    }
-
-    protected Sector[] computeRandomRegions(Sector sector, int div, int numRegions)
-    {
-        if (numRegions > div * div)
-            return sector.subdivide(div);
-
-        final double dLat = sector.getDeltaLat().degrees / div;
-        final double dLon = sector.getDeltaLon().degrees / div;
-        ArrayList<Sector> regions = new ArrayList<Sector>(numRegions);
-        Random rand = new Random();
-        while (regions.size() < numRegions)
-        {
-            int row = rand.nextInt(div);
-            int col = rand.nextInt(div);
-            Sector s = Sector.fromDegrees(
-                sector.getMinLatitude().degrees + dLat * row,
-                sector.getMinLatitude().degrees + dLat * row + dLat,
-                sector.getMinLongitude().degrees + dLon * col,
-                sector.getMinLongitude().degrees + dLon * col + dLon);
-            if (!regions.contains(s))
-                regions.add(s);
-        }
-
-        return regions.toArray(new Sector[numRegions]);
-    }
-
-    protected Iterator<Sector> getRegionIterator(final Sector sector, final int div)
-    {
-        final double dLat = sector.getDeltaLat().degrees / div;
-        final double dLon = sector.getDeltaLon().degrees / div;
-
-        return new Iterator<Sector>()
-        {
-            int row = 0;
-            int col = 0;
-
-            public boolean hasNext()
-            {
-                return row < div;
-            }
-
-            public Sector next()
-            {
-                Sector s = Sector.fromDegrees(
-                    sector.getMinLatitude().degrees + dLat * row,
-                    sector.getMinLatitude().degrees + dLat * row + dLat,
-                    sector.getMinLongitude().degrees + dLon * col,
-                    sector.getMinLongitude().degrees + dLon * col + dLon);
-
-                col++;
-                if (col >= div)
-                {
-                    col = 0;
-                    row++;
-                }
-                return s;
-            }
-
-            public void remove()
-            {
-
-            }
-        };
-    }
-
-    protected ArrayList<TextureTile> getMissingTilesInSector(Sector sector, int levelNumber)
-        throws InterruptedException
-    {
-        ArrayList<TextureTile> tiles = new ArrayList<TextureTile>();
-
-        TextureTile[][] tileArray = this.layer.getTilesInSector(sector, levelNumber);
-        for (TextureTile[] row : tileArray)
-        {
-            for (TextureTile tile : row)
-            {
-                Thread.sleep(1); // generates InterruptedException if thread has been interrupted
-
-                if (tile == null)
-                    continue;
-
-                if (isTileLocalOrAbsent(tile))
-                    continue;  // tile is local or absent
-
-                tiles.add(tile);
-            }
-        }
-        return tiles;
-    }
-
-    protected boolean isTileLocalOrAbsent(TextureTile tile)
-    {
-        if (this.layer.getLevels().isResourceAbsent(tile))
-            return true;  // tile is absent
-
-        URL url = this.fileStore.findFile(tile.getPath(), false);
-
-        return url != null && !this.layer.isTextureFileExpired(tile, url, fileStore);
-    }
-
     protected long estimateAverageTileSize()
     {
         Long previouslyComputedSize = (Long) this.layer.getValue(AVKey.AVERAGE_TILE_SIZE);
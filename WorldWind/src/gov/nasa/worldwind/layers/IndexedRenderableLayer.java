@@ -0,0 +1,709 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.layers;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.render.*;
+import gov.nasa.worldwind.util.*;
+
+import java.beans.PropertyChangeEvent;
+import java.util.*;
+
+/**
+ * A {@link RenderableLayer} that indexes its renderables by location, and each frame renders only the renderables
+ * whose region of the globe intersects the view frustum.
+ * <p/>
+ * The layer keeps its renderables in a quadtree over latitude and longitude. Each renderable is placed in the smallest
+ * cell that contains its centroid and is at least as large as the renderable. A cell is subdivided once it holds more
+ * than a specified number of renderables. Each frame the layer visits the tree from its root, and skips every cell
+ * whose renderables lie entirely outside the view frustum. A layer of many renderables viewed at close range therefore
+ * visits only the few cells near the view, rather than every renderable.
+ * <p/>
+ * A renderable's location is taken from {@link GeographicExtent#getSector()}, {@link Locatable#getPosition()} or {@link
+ * Movable#getReferencePosition()}, in that order. Renderables providing none of these, such as screen annotations, are
+ * not indexed and are rendered every frame. The altitude above the terrain that a renderable may reach is taken from
+ * the positions of {@link Path} and {@link Polygon}, and from the position or reference position of other renderables.
+ * Applications with renderables that extend further above their positions override {@link
+ * #computeAltitude(gov.nasa.worldwind.render.Renderable)}.
+ * <p/>
+ * The layer re-indexes a renderable when the renderable notifies the layer that it has moved, by firing an {@link
+ * AVKey#POSITION} property change. {@link PointPlacemark}, {@link Path}, {@link Polygon}, {@link ExtrudedPolygon} and
+ * surface shapes do so when they are moved by {@link Movable#move(gov.nasa.worldwind.geom.Position)} or {@link
+ * Movable#moveTo(gov.nasa.worldwind.geom.Position)}. Applications that change a renderable's location in any other way
+ * call {@link #updateRenderable(gov.nasa.worldwind.render.Renderable)}.
+ * <p/>
+ * The number of cells and renderables visited each frame are reported as the per-frame statistics {@link
+ * PerformanceStatistic#RENDERABLE_NODE_COUNT} and {@link PerformanceStatistic#RENDERABLE_COUNT}.
+ * <p/>
+ * Renderables are drawn in the order they are found in the tree, rather than the order they were added to the layer. A
+ * custom Iterable specified by {@link #setRenderables(Iterable)} is not indexed, and is rendered as it is by
+ * <code>RenderableLayer</code>.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class IndexedRenderableLayer extends RenderableLayer
+{
+    /** The default number of renderables a cell holds before it is subdivided. */
+    protected static final int DEFAULT_NODE_CAPACITY = 32;
+    /** The default number of levels in the tree. */
+    protected static final int DEFAULT_NUM_LEVELS = 16;
+    /**
+     * The largest span, in degrees, of a cell that is tested against the view frustum. A box bounding a larger region
+     * of the globe may not enclose the region, so larger cells are always visited.
+     */
+    protected static final double MAX_CULLED_SPAN = 90;
+
+    /** An indexed renderable, and the region and tree cell it occupies. */
+    protected static class Entry
+    {
+        protected final Renderable renderable;
+        protected Sector sector;
+        protected double altitude;
+        protected Node node;
+
+        public Entry(Renderable renderable)
+        {
+            this.renderable = renderable;
+        }
+    }
+
+    /** A cell of the tree. */
+    protected static class Node
+    {
+        protected final Node parent;
+        protected final int level;
+        protected final double minLat;
+        protected final double maxLat;
+        protected final double minLon;
+        protected final double maxLon;
+        /** The entries placed in this cell, but not in any of its children. */
+        protected final List<Entry> entries = new ArrayList<Entry>();
+        /** The cell's four children, or null if the cell has not been subdivided. */
+        protected Node[] children;
+        /** The number of entries in this cell and its descendants. */
+        protected int count;
+
+        /** The region containing the entries of this cell and its descendants. Null when invalid. */
+        protected Sector bounds;
+        /** The greatest altitude of the entries of this cell and its descendants. */
+        protected double maxAltitude;
+        /** The box bounding this cell's entries on the globe identified by <code>extentKey</code>. */
+        protected Extent extent;
+        protected Object extentKey;
+
+        public Node(Node parent, int level, double minLat, double maxLat, double minLon, double maxLon)
+        {
+            this.parent = parent;
+            this.level = level;
+            this.minLat = minLat;
+            this.maxLat = maxLat;
+            this.minLon = minLon;
+            this.maxLon = maxLon;
+        }
+    }
+
+    protected final int nodeCapacity;
+    protected final int numLevels;
+    protected Node root = new Node(null, 0, -90, 90, -180, 180);
+    /** The index entries, keyed by renderable. */
+    protected Map<Renderable, Entry> entries = new IdentityHashMap<Renderable, Entry>();
+    /** The renderables that have no location, and are rendered every frame. */
+    protected Set<Renderable> unindexedRenderables = new LinkedHashSet<Renderable>();
+    /** Guards the index, which may be modified on threads other than the rendering thread. */
+    protected final Object indexLock = new Object();
+
+    /** The renderables found to be visible in the frame identified by <code>visibleTimeStamp</code>. */
+    protected List<Renderable> visibleRenderables = new ArrayList<Renderable>();
+    protected long visibleTimeStamp = -1;
+    protected int numNodesVisited;
+    protected boolean usingCustomIterable;
+
+    /** Creates a new layer with the default cell capacity and number of levels. */
+    public IndexedRenderableLayer()
+    {
+        this(DEFAULT_NODE_CAPACITY, DEFAULT_NUM_LEVELS);
+    }
+
+    /**
+     * Creates a new layer with a specified cell capacity and number of levels.
+     *
+     * @param nodeCapacity the number of renderables a cell holds before it is subdivided.
+     * @param numLevels    the number of levels in the tree. The cells of the last level are not subdivided.
+     *
+     * @throws IllegalArgumentException if either argument is less than 1.
+     */
+    public IndexedRenderableLayer(int nodeCapacity, int numLevels)
+    {
+        if (nodeCapacity < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", "nodeCapacity < 1");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (numLevels < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", "numLevels < 1");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.nodeCapacity = nodeCapacity;
+        this.numLevels = numLevels;
+    }
+
+    public int getNodeCapacity()
+    {
+        return this.nodeCapacity;
+    }
+
+    public int getNumLevels()
+    {
+        return this.numLevels;
+    }
+
+    @Override
+    public void addRenderable(Renderable renderable)
+    {
+        super.addRenderable(renderable); // Superclass checks args and state.
+
+        synchronized (this.indexLock)
+        {
+            this.addToIndex(renderable);
+        }
+    }
+
+    @Override
+    public void addRenderables(Iterable<? extends Renderable> renderables)
+    {
+        super.addRenderables(renderables); // Superclass checks args and state.
+
+        synchronized (this.indexLock)
+        {
+            for (Renderable renderable : renderables)
+            {
+                if (renderable != null)
+                    this.addToIndex(renderable);
+            }
+        }
+    }
+
+    @Override
+    public void removeRenderable(Renderable renderable)
+    {
+        super.removeRenderable(renderable); // Superclass checks args and state.
+
+        synchronized (this.indexLock)
+        {
+            this.removeFromIndex(renderable);
+        }
+    }
+
+    @Override
+    public void setRenderables(Iterable<Renderable> renderableIterable)
+    {
+        super.setRenderables(renderableIterable);
+        this.usingCustomIterable = renderableIterable != null;
+    }
+
+    @Override
+    protected void clearRenderables()
+    {
+        super.clearRenderables();
+        this.clearIndex();
+    }
+
+    @Override
+    protected void disposeRenderables()
+    {
+        super.disposeRenderables();
+        this.clearIndex();
+    }
+
+    /**
+     * Updates the location of a renderable in the index. Call this method after changing a renderable's location by
+     * means other than {@link Movable#move(gov.nasa.worldwind.geom.Position)} or {@link
+     * Movable#moveTo(gov.nasa.worldwind.geom.Position)}. This does nothing if the renderable is not in this layer.
+     *
+     * @param renderable the renderable whose location changed.
+     *
+     * @throws IllegalArgumentException if the renderable is null.
+     */
+    public void updateRenderable(Renderable renderable)
+    {
+        if (renderable == null)
+        {
+            String msg = Logging.getMessage("nullValue.RenderableIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        synchronized (this.indexLock)
+        {
+            Entry entry = this.entries.get(renderable);
+            if (entry == null)
+            {
+                // A renderable without a location may have acquired one.
+                if (!this.unindexedRenderables.remove(renderable))
+                    return;
+            }
+            else
+            {
+                this.removeEntry(entry);
+                this.entries.remove(renderable);
+            }
+
+            this.addToIndex(renderable);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * This re-indexes a renderable of this layer that fires an {@link AVKey#POSITION} property change.
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent propertyChangeEvent)
+    {
+        if (propertyChangeEvent != null && AVKey.POSITION.equals(propertyChangeEvent.getPropertyName())
+            && propertyChangeEvent.getSource() instanceof Renderable)
+        {
+            this.updateRenderable((Renderable) propertyChangeEvent.getSource());
+        }
+
+        super.propertyChange(propertyChangeEvent);
+    }
+
+    protected void clearIndex()
+    {
+        synchronized (this.indexLock)
+        {
+            this.root = new Node(null, 0, -90, 90, -180, 180);
+            this.entries.clear();
+            this.unindexedRenderables.clear();
+            this.visibleTimeStamp = -1;
+        }
+    }
+
+    protected void addToIndex(Renderable renderable)
+    {
+        // The layer's collection accepts duplicates, but each renderable is indexed and drawn once.
+        if (this.entries.containsKey(renderable) || this.unindexedRenderables.contains(renderable))
+            return;
+
+        Sector sector = this.computeSector(renderable);
+        if (sector == null)
+        {
+            this.unindexedRenderables.add(renderable);
+            return;
+        }
+
+        Entry entry = new Entry(renderable);
+        entry.sector = sector;
+        entry.altitude = this.computeAltitude(renderable);
+        this.entries.put(renderable, entry);
+        this.addEntry(entry);
+    }
+
+    protected void removeFromIndex(Renderable renderable)
+    {
+        Entry entry = this.entries.remove(renderable);
+        if (entry != null)
+            this.removeEntry(entry);
+        else
+            this.unindexedRenderables.remove(renderable);
+    }
+
+    /**
+     * Returns the region of the globe a renderable occupies.
+     *
+     * @param renderable the renderable.
+     *
+     * @return the renderable's region, or null if the renderable has no location.
+     */
+    protected Sector computeSector(Renderable renderable)
+    {
+        Position position = null;
+
+        if (renderable instanceof GeographicExtent)
+        {
+            Sector sector = ((GeographicExtent) renderable).getSector();
+            if (sector != null)
+                return sector;
+        }
+
+        if (renderable instanceof Locatable)
+            position = ((Locatable) renderable).getPosition();
+
+        if (position == null && renderable instanceof Movable)
+            position = ((Movable) renderable).getReferencePosition();
+
+        return position != null ? new Sector(position.getLatitude(), position.getLatitude(), position.getLongitude(),
+            position.getLongitude()) : null;
+    }
+
+    /**
+     * Returns the greatest altitude a renderable reaches above the terrain or above sea level. The layer assumes that
+     * no part of the renderable is higher than this altitude above the highest terrain in the renderable's region.
+     *
+     * @param renderable the renderable.
+     *
+     * @return the renderable's greatest altitude, in meters. Zero if the renderable lies on the terrain.
+     */
+    protected double computeAltitude(Renderable renderable)
+    {
+        Iterable<? extends LatLon> locations = null;
+
+        if (renderable instanceof Path)
+            locations = ((Path) renderable).getPositions();
+        else if (renderable instanceof Polygon)
+            locations = ((Polygon) renderable).getOuterBoundary();
+
+        double altitude = 0;
+
+        if (locations != null)
+        {
+            for (LatLon location : locations)
+            {
+                if (location instanceof Position)
+                    altitude = Math.max(altitude, ((Position) location).getElevation());
+            }
+        }
+        else if (renderable instanceof Locatable && ((Locatable) renderable).getPosition() != null)
+        {
+            altitude = ((Locatable) renderable).getPosition().getElevation();
+        }
+        else if (renderable instanceof Movable && ((Movable) renderable).getReferencePosition() != null)
+        {
+            altitude = ((Movable) renderable).getReferencePosition().getElevation();
+        }
+
+        return Math.max(altitude, 0);
+    }
+
+    protected void addEntry(Entry entry)
+    {
+        Node node = this.root;
+
+        while (true)
+        {
+            node.count++;
+            node.bounds = null;
+
+            Node child = node.children != null ? this.findChild(node, entry.sector) : null;
+            if (child == null)
+            {
+                node.entries.add(entry);
+                entry.node = node;
+
+                if (node.children == null && node.entries.size() > this.nodeCapacity)
+                    this.subdivide(node);
+
+                return;
+            }
+
+            node = child;
+        }
+    }
+
+    protected void removeEntry(Entry entry)
+    {
+        entry.node.entries.remove(entry);
+
+        for (Node node = entry.node; node != null; node = node.parent)
+        {
+            node.count--;
+            node.bounds = null;
+
+            // Gather the entries of sparsely populated cells back into their parent.
+            if (node.children != null && node.count <= this.nodeCapacity / 2)
+                this.collapse(node);
+        }
+
+        entry.node = null;
+    }
+
+    /**
+     * Returns the child of a cell that an entry's region fits in. The region fits in the child containing its
+     * centroid, provided that the region is no larger than the child.
+     *
+     * @param node   the cell, which must have children.
+     * @param sector the entry's region.
+     *
+     * @return the child that the region fits in, or null if the region fits in none of the children.
+     */
+    protected Node findChild(Node node, Sector sector)
+    {
+        double midLat = 0.5 * (node.minLat + node.maxLat);
+        double midLon = 0.5 * (node.minLon + node.maxLon);
+
+        if (sector.getDeltaLatDegrees() > node.maxLat - midLat || sector.getDeltaLonDegrees() > node.maxLon - midLon)
+            return null;
+
+        LatLon centroid = sector.getCentroid();
+        int index = (centroid.getLatitude().degrees >= midLat ? 2 : 0)
+            + (centroid.getLongitude().degrees >= midLon ? 1 : 0);
+
+        return node.children[index];
+    }
+
+    protected void subdivide(Node node)
+    {
+        if (node.level >= this.numLevels - 1)
+            return;
+
+        double midLat = 0.5 * (node.minLat + node.maxLat);
+        double midLon = 0.5 * (node.minLon + node.maxLon);
+        int level = node.level + 1;
+
+        node.children = new Node[] {
+            new Node(node, level, node.minLat, midLat, node.minLon, midLon),
+            new Node(node, level, node.minLat, midLat, midLon, node.maxLon),
+            new Node(node, level, midLat, node.maxLat, node.minLon, midLon),
+            new Node(node, level, midLat, node.maxLat, midLon, node.maxLon)};
+
+        List<Entry> nodeEntries = new ArrayList<Entry>(node.entries);
+        node.entries.clear();
+
+        for (Entry entry : nodeEntries)
+        {
+            Node child = this.findChild(node, entry.sector);
+            if (child == null)
+                child = node;
+
+            child.entries.add(entry);
+            entry.node = child;
+            if (child != node)
+                child.count++;
+        }
+
+        for (Node child : node.children)
+        {
+            if (child.entries.size() > this.nodeCapacity)
+                this.subdivide(child);
+        }
+    }
+
+    protected void collapse(Node node)
+    {
+        List<Entry> subtreeEntries = new ArrayList<Entry>(node.count);
+        this.collectEntries(node, subtreeEntries);
+
+        node.children = null;
+        node.entries.clear();
+        node.entries.addAll(subtreeEntries);
+
+        for (Entry entry : subtreeEntries)
+        {
+            entry.node = node;
+        }
+    }
+
+    protected void collectEntries(Node node, List<Entry> entries)
+    {
+        entries.addAll(node.entries);
+
+        if (node.children != null)
+        {
+            for (Node child : node.children)
+            {
+                this.collectEntries(child, entries);
+            }
+        }
+    }
+
+    /**
+     * Computes the region and greatest altitude of a cell's entries, if they are not current. The cell's extent is
+     * released when its region changes.
+     *
+     * @param node the cell.
+     */
+    protected void updateBounds(Node node)
+    {
+        if (node.bounds != null)
+            return;
+
+        double minLat = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        double maxAltitude = 0;
+
+        for (Entry entry : node.entries)
+        {
+            minLat = Math.min(minLat, entry.sector.getMinLatitude().degrees);
+            maxLat = Math.max(maxLat, entry.sector.getMaxLatitude().degrees);
+            minLon = Math.min(minLon, entry.sector.getMinLongitude().degrees);
+            maxLon = Math.max(maxLon, entry.sector.getMaxLongitude().degrees);
+            maxAltitude = Math.max(maxAltitude, entry.altitude);
+        }
+
+        if (node.children != null)
+        {
+            for (Node child : node.children)
+            {
+                if (child.count == 0)
+                    continue;
+
+                this.updateBounds(child);
+                minLat = Math.min(minLat, child.bounds.getMinLatitude().degrees);
+                maxLat = Math.max(maxLat, child.bounds.getMaxLatitude().degrees);
+                minLon = Math.min(minLon, child.bounds.getMinLongitude().degrees);
+                maxLon = Math.max(maxLon, child.bounds.getMaxLongitude().degrees);
+                maxAltitude = Math.max(maxAltitude, child.maxAltitude);
+            }
+        }
+
+        node.bounds = Sector.fromDegrees(minLat, maxLat, minLon, maxLon);
+        node.maxAltitude = maxAltitude;
+        node.extent = null;
+    }
+
+    /**
+     * Returns a box enclosing a cell's entries on a globe. The box spans the region of the cell's entries from the
+     * globe's lowest elevation to the globe's highest elevation plus the entries' greatest altitude.
+     *
+     * @param globe                the globe.
+     * @param verticalExaggeration the vertical exaggeration of the globe's surface.
+     * @param globeKey             the globe's state key. The box is recomputed when the key changes.
+     * @param node                 the cell, whose bounds must be current.
+     *
+     * @return the cell's extent.
+     */
+    protected Extent getExtent(Globe globe, double verticalExaggeration, Object globeKey, Node node)
+    {
+        if (node.extent == null || !globeKey.equals(node.extentKey))
+        {
+            node.extent = Sector.computeBoundingBox(globe, verticalExaggeration, node.bounds,
+                globe.getMinElevation(), globe.getMaxElevation() + node.maxAltitude);
+            node.extentKey = globeKey;
+        }
+
+        return node.extent;
+    }
+
+    /**
+     * Returns the renderables that may be visible in the current frame: the renderables in the cells intersecting the
+     * view frustum, followed by the renderables without a location. The tree is visited once per frame, and the result
+     * is reused by the frame's pre-render, pick and render passes.
+     *
+     * @param dc the current draw context.
+     *
+     * @return the potentially visible renderables.
+     */
+    protected Iterable<Renderable> getVisibleRenderables(DrawContext dc)
+    {
+        synchronized (this.indexLock)
+        {
+            if (this.visibleTimeStamp != dc.getFrameTimeStamp())
+            {
+                // Start a new list, because the previous frame's list may still be in use on another thread.
+                this.visibleRenderables = new ArrayList<Renderable>(this.visibleRenderables.size());
+                this.numNodesVisited = 0;
+
+                this.addVisibleRenderables(dc.getGlobe(), dc.getVerticalExaggeration(),
+                    dc.getGlobe().getGlobeStateKey(dc), dc.getView().getFrustumInModelCoordinates(), this.root);
+                this.visibleRenderables.addAll(this.unindexedRenderables);
+
+                this.visibleTimeStamp = dc.getFrameTimeStamp();
+            }
+
+            dc.setPerFrameStatistic(PerformanceStatistic.RENDERABLE_NODE_COUNT, this.getName() + " Cells",
+                this.numNodesVisited);
+            dc.setPerFrameStatistic(PerformanceStatistic.RENDERABLE_COUNT, this.getName() + " Renderables",
+                this.visibleRenderables.size());
+
+            return this.visibleRenderables;
+        }
+    }
+
+    /**
+     * Adds the renderables of a cell and its descendants to the visible renderables, skipping the cells whose extents
+     * do not intersect a frustum.
+     *
+     * @param globe                the globe.
+     * @param verticalExaggeration the vertical exaggeration of the globe's surface.
+     * @param globeKey             the globe's state key.
+     * @param frustum              the view frustum in model coordinates.
+     * @param node                 the cell to visit.
+     */
+    protected void addVisibleRenderables(Globe globe, double verticalExaggeration, Object globeKey, Frustum frustum,
+        Node node)
+    {
+        if (node.count == 0)
+            return;
+
+        this.numNodesVisited++;
+        this.updateBounds(node);
+
+        if (node.bounds.getDeltaLatDegrees() <= MAX_CULLED_SPAN && node.bounds.getDeltaLonDegrees() <= MAX_CULLED_SPAN
+            && !frustum.intersects(this.getExtent(globe, verticalExaggeration, globeKey, node)))
+        {
+            return;
+        }
+
+        for (Entry entry : node.entries)
+        {
+            this.visibleRenderables.add(entry.renderable);
+        }
+
+        if (node.children != null)
+        {
+            for (Node child : node.children)
+            {
+                this.addVisibleRenderables(globe, verticalExaggeration, globeKey, frustum, child);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the layer renders a custom Iterable specified by {@link #setRenderables(Iterable)} rather than
+     * its indexed renderables.
+     *
+     * @return true if the layer renders a custom Iterable, otherwise false.
+     */
+    protected boolean isUsingCustomIterable()
+    {
+        return this.usingCustomIterable;
+    }
+
+    @Override
+    protected void doPreRender(DrawContext dc)
+    {
+        if (this.isUsingCustomIterable())
+            super.doPreRender(dc);
+        else
+            this.doPreRender(dc, this.getVisibleRenderables(dc));
+    }
+
+    @Override
+    protected void doPick(DrawContext dc, java.awt.Point pickPoint)
+    {
+        if (this.isUsingCustomIterable())
+            super.doPick(dc, pickPoint);
+        else
+            this.doPick(dc, this.getVisibleRenderables(dc), pickPoint);
+    }
+
+    @Override
+    protected void doRender(DrawContext dc)
+    {
+        if (this.isUsingCustomIterable())
+            super.doRender(dc);
+        else
+            this.doRender(dc, this.getVisibleRenderables(dc));
+    }
+
+    @Override
+    public String toString()
+    {
+        return Logging.getMessage("layers.IndexedRenderableLayer.Name");
+    }
+}
@@ -39,13 +39,24 @@ import java.util.*;
  */
 public class KMLCoordinateTokenizer
 {
+    /** The largest integer that a double represents exactly, 2^53. */
+    protected static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** Powers of ten that a double represents exactly. */
+    protected static final double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22};
+
     protected int i;
     protected char[] buffer;
 
-    protected List<String> words = new ArrayList<String>(3);
-
-    protected StringBuilder nextWord = new StringBuilder();
+    /** The values of the coordinate being read, in the order longitude, latitude, altitude. */
+    protected double[] values = new double[3];
+    protected int numValues;
+    /** The first word of the current coordinate that could not be parsed, or null if every word was parsed. */
+    protected String invalidWord;
 
+    /** The index of the first character of the word being read. */
+    protected int wordStart;
     protected boolean inWord;
     protected boolean afterComma = false;
 
@@ -78,7 +89,42 @@ public class KMLCoordinateTokenizer
      */
     public Position nextPosition() throws NumberFormatException
     {
-        this.words.clear();
+        this.readCoordinate();
+
+        return this.makePosition();
+    }
+
+    /**
+     * Reads the next coordinate from the coordinate string without creating a {@link Position}. The coordinate's
+     * values are stored in a caller specified array in the order longitude, latitude, altitude.
+     *
+     * @param coords the array in which to store the coordinate's values. Must have at least three elements.
+     * @param offset the index in the array at which to store the first value.
+     *
+     * @return the number of values read. Returns 3 if the coordinate has an altitude, 2 if it does not, and 0 or 1 if
+     *         the coordinate is incomplete. A coordinate without an altitude stores 0 as its altitude.
+     *
+     * @throws NumberFormatException if the coordinates cannot be parsed to a number.
+     */
+    public int nextCoordinate(double[] coords, int offset) throws NumberFormatException
+    {
+        this.readCoordinate();
+
+        if (this.invalidWord != null)
+            throw new NumberFormatException(this.invalidWord);
+
+        coords[offset] = this.values[0];
+        coords[offset + 1] = this.values[1];
+        coords[offset + 2] = this.numValues > 2 ? this.values[2] : 0;
+
+        return this.numValues;
+    }
+
+    /** Scans the characters of the next coordinate, parsing each of its words as it ends. */
+    protected void readCoordinate()
+    {
+        this.numValues = 0;
+        this.invalidWord = null;
 
         while (this.i < this.buffer.length)
         {
@@ -87,51 +133,127 @@ public class KMLCoordinateTokenizer
             if (Character.isWhitespace(ch))
             {
                 if (this.inWord)
-                    wordBoundary();
+                    wordBoundary(this.i - 1);
 
                 // If the last separator was a comma, don't break. Wait for another word.
-                if (!this.afterComma && this.words.size() >= 2)
+                if (!this.afterComma && this.numValues >= 2)
                     break;
             }
             else if (ch == ',')
             {
                 if (this.inWord)
-                    wordBoundary();
+                    wordBoundary(this.i - 1);
 
                 this.afterComma = true;
 
                 // Three words make a complete coordinate. Break out of the loop and return the coordinate.
-                if (this.words.size() >= 3)
+                if (this.numValues >= 3)
                     break;
             }
-            else
+            else if (!this.inWord)
             {
                 this.inWord = true;
                 this.afterComma = false;
-                this.nextWord.append(ch);
+                this.wordStart = this.i - 1;
             }
         }
 
         if (this.inWord)
-            this.wordBoundary();
-
-        return this.makePosition();
+            this.wordBoundary(this.i);
     }
 
     protected Position makePosition()
     {
-        if (this.words.size() > 2)
-            return Position.fromDegrees(Double.valueOf(this.words.get(1)), Double.valueOf(this.words.get(0)),
-                Double.valueOf(this.words.get(2)));
-        else if (this.words.size() == 2)
-            return Position.fromDegrees(Double.valueOf(this.words.get(1)), Double.valueOf(this.words.get(0)));
+        if (this.invalidWord != null)
+            throw new NumberFormatException(this.invalidWord);
+
+        if (this.numValues > 2)
+            return Position.fromDegrees(this.values[1], this.values[0], this.values[2]);
+        else if (this.numValues == 2)
+            return Position.fromDegrees(this.values[1], this.values[0]);
         return null;
     }
 
-    protected void wordBoundary()
+    /**
+     * Parses the word that ends at a specified index and adds its value to the current coordinate.
+     *
+     * @param end the index following the word's last character.
+     */
+    protected void wordBoundary(int end)
     {
         this.inWord = false;
-        this.words.add(this.nextWord.toString());
-        this.nextWord = new StringBuilder();
+
+        double value;
+        try
+        {
+            value = this.parseDouble(this.buffer, this.wordStart, end - this.wordStart);
+        }
+        catch (NumberFormatException e)
+        {
+            // Continue reading the coordinate so that the next one starts in the right place.
+            if (this.invalidWord == null)
+                this.invalidWord = new String(this.buffer, this.wordStart, end - this.wordStart);
+            value = 0;
+        }
+
+        // Words beyond the third are read but ignored, as they are when a coordinate has no separating white space.
+        if (this.numValues < this.values.length)
+            this.values[this.numValues] = value;
+        this.numValues++;
+    }
+
+    /**
+     * Parses a decimal number from a range of characters. Numbers of the form [+-]digits[.digits] whose digits form an
+     * integer less than 2^53, with at most 22 fraction digits, are computed directly from their digits, which gives the
+     * same result as {@link Double#parseDouble(String)}. Any other number is parsed by Double.parseDouble.
+     *
+     * @param chars  the characters to parse.
+     * @param offset the index of the number's first character.
+     * @param length the number of characters in the number.
+     *
+     * @return the number.
+     *
+     * @throws NumberFormatException if the characters do not describe a number.
+     */
+    protected double parseDouble(char[] chars, int offset, int length)
+    {
+        int end = offset + length;
+        int pos = offset;
+
+        boolean negative = false;
+        if (pos < end && (chars[pos] == '-' || chars[pos] == '+'))
+            negative = chars[pos++] == '-';
+
+        long mantissa = 0;
+        int numDigits = 0;
+        int numFractionDigits = -1; // Negative until a decimal point is read.
+        for (; pos < end; pos++)
+        {
+            char ch = chars[pos];
+            if (ch >= '0' && ch <= '9')
+            {
+                mantissa = 10 * mantissa + (ch - '0');
+                numDigits++;
+                if (numFractionDigits >= 0)
+                    numFractionDigits++;
+                if (mantissa >= MAX_EXACT_MANTISSA)
+                    break;
+            }
+            else if (ch == '.' && numFractionDigits < 0)
+            {
+                numFractionDigits = 0;
+            }
+            else
+            {
+                break;
+            }
+        }
+
+        if (pos < end || numDigits == 0 || numFractionDigits >= EXACT_POWERS_OF_TEN.length)
+            return Double.parseDouble(new String(chars, offset, length));
+
+        // The mantissa and the power of ten are both exact, so their quotient is correctly rounded.
+        double value = numFractionDigits > 0 ? mantissa / EXACT_POWERS_OF_TEN[numFractionDigits] : mantissa;
+        return negative ? -value : value;
     }
 }
@@ -11,7 +11,7 @@ import gov.nasa.worldwind.util.xml.*;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.XMLEvent;
-import java.util.ArrayList;
+import java.util.*;
 
 /**
  * Parses KML <i>coordinates</i> elements.
@@ -38,15 +38,22 @@ public class KMLCoordinatesParser extends AbstractXMLEventParser
         if (s == null || s.length() < 3) // "a,b" is the smallest possible coordinate string
             return null;
 
-        ArrayList<Position> positions = new ArrayList<Position>();
-
+        // Read the coordinates into a primitive array, then create their positions at once. The shortest coordinate has
+        // three characters, so the string's length bounds the number of coordinates.
         KMLCoordinateTokenizer tokenizer = new KMLCoordinateTokenizer(s);
+        double[] coords = new double[3 * Math.min(s.length() / 3 + 1, 1024)];
+        int numCoords = 0;
 
         while (tokenizer.hasMoreTokens())
         {
             try
             {
-                positions.add(tokenizer.nextPosition());
+                if (coords.length - numCoords < 3)
+                    coords = Arrays.copyOf(coords, 2 * coords.length);
+
+                // Incomplete coordinates are skipped.
+                if (tokenizer.nextCoordinate(coords, numCoords) >= 2)
+                    numCoords += 3;
             }
             catch (NumberFormatException e)
             {
@@ -62,6 +69,12 @@ public class KMLCoordinatesParser extends AbstractXMLEventParser
             }
         }
 
+        ArrayList<Position> positions = new ArrayList<Position>(numCoords / 3);
+        for (int i = 0; i < numCoords; i += 3)
+        {
+            positions.add(Position.fromDegrees(coords[i + 1], coords[i], coords[i + 2]));
+        }
+
         return new Position.PositionList(positions);
     }
 }
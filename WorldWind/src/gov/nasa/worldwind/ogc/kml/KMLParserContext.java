@@ -257,6 +257,193 @@ public class KMLParserContext extends BasicXMLEventParserContext
         this.addDoubleParsers(ns, DoubleFields);
         this.addIntegerParsers(ns, IntegerFields);
         this.addBooleanParsers(ns, BooleanFields);
+
+        this.initializeParserFactories(ns);
+    }
+
+    /**
+     * Registers factories for the elements that occur once or more per feature, which are most of the elements in a
+     * large document. Parsers for the other elements are created from their entries in the parser map.
+     *
+     * @param ns the namespace URI of the elements.
+     */
+    protected void initializeParserFactories(final String ns)
+    {
+        this.registerParserFactory(new QName(ns, "coordinates"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLCoordinatesParser();
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Placemark"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLPlacemark(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Folder"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLFolder(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Point"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLPoint(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "LineString"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLLineString(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "LinearRing"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLLinearRing(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Polygon"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLPolygon(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "outerBoundaryIs"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLBoundary(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "innerBoundaryIs"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLBoundary(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "MultiGeometry"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLMultiGeometry(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Style"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLStyle(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "StyleMap"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLStyleMap(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Pair"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLPair(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "styleUrl"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLStyleUrl(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "IconStyle"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLIconStyle(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Icon"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLIcon(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "LabelStyle"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLLabelStyle(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "LineStyle"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLLineStyle(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "PolyStyle"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLPolyStyle(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Snippet"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLSnippet(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "ExtendedData"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLExtendedData(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "Data"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLData(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "SchemaData"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLSchemaData(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "SimpleData"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLSimpleData(ns);
+            }
+        });
+        this.registerParserFactory(new QName(ns, "TimeStamp"), new XMLEventParserFactory()
+        {
+            public XMLEventParser create()
+            {
+                return new KMLTimeStamp(ns);
+            }
+        });
     }
 
     protected void initializeVersion2dot1Parsers()
@@ -272,7 +459,15 @@ public class KMLParserContext extends BasicXMLEventParserContext
         // Just add all the default parsers. // TODO: Check for differences between 2.0 and 2.1
         for (Map.Entry<QName, XMLEventParser> entry : this.parsers.entrySet())
         {
-            this.parsers.put(new QName(ns, entry.getKey().getLocalPart()), entry.getValue());
+            QName name = new QName(ns, entry.getKey().getLocalPart());
+            this.parsers.put(name, entry.getValue());
+
+            // Keep the factory paired with the parser copied, which may come from any of the other KML namespaces.
+            XMLEventParserFactory factory = this.parserFactories.get(entry.getKey());
+            if (factory != null)
+                this.parserFactories.put(name, factory);
+            else
+                this.parserFactories.remove(name);
         }
     }
 
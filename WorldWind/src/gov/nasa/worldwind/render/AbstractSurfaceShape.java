@@ -478,6 +478,7 @@ public abstract class AbstractSurfaceShape extends AbstractSurfaceObject impleme
             return;
 
         this.doMoveTo(oldReferencePosition, position);
+        this.firePropertyChange(AVKey.POSITION, oldReferencePosition, position);
     }
 
     public abstract Position getReferencePosition();
@@ -2395,6 +2395,7 @@ public class ExtrudedPolygon extends AbstractShape
         this.boundaries = newLocations;
         this.setReferencePosition(position);
         this.reset();
+        this.firePropertyChange(AVKey.POSITION, oldPosition, position);
     }
 
     protected void doExportAsKML(XMLStreamWriter xmlWriter) throws IOException, XMLStreamException
@@ -13,7 +13,7 @@ import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.geom.Box;
 import gov.nasa.worldwind.geom.Cylinder;
-import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.globes.*;
 import gov.nasa.worldwind.layers.Layer;
 import gov.nasa.worldwind.ogc.kml.impl.KMLExportUtil;
 import gov.nasa.worldwind.pick.*;
@@ -1645,48 +1645,50 @@ public class Path extends AbstractShape
 
         path.clear();
 
+        // Convert all the positions at once, then interleave the points with their colors and extrusion points.
+        double ve = dc.getVerticalExaggeration();
+        double[] coords = new double[3 * positions.size()];
+        int k = 0;
+        for (Position pos : positions)
+        {
+            coords[k++] = pos.getLatitude().degrees;
+            coords[k++] = pos.getLongitude().degrees;
+            coords[k++] = ve * pos.getAltitude();
+        }
+
         Globe globe = dc.getGlobe();
         Vec4 referencePoint = pathData.getReferencePoint();
-
-        if (dc.getVerticalExaggeration() != 1)
+        if (globe instanceof EllipsoidalGlobe)
         {
-            double ve = dc.getVerticalExaggeration();
-            for (Position pos : positions)
-            {
-                Vec4 pt = globe.computePointFromPosition(pos.getLatitude(), pos.getLongitude(),
-                    ve * (pos.getAltitude()));
-                path.put((float) (pt.x - referencePoint.x));
-                path.put((float) (pt.y - referencePoint.y));
-                path.put((float) (pt.z - referencePoint.z));
-
-                if (colorIter != null && colorIter.hasNext())
-                {
-                    colorIter.next().getRGBComponents(color);
-                    path.put(color);
-                }
-
-                if (this.isExtrude())
-                    this.appendTerrainPoint(dc, pos, color, path, pathData);
-            }
+            ((EllipsoidalGlobe) globe).computePointsFromPositions(coords, positions.size(), referencePoint, coords);
         }
         else
         {
-            for (Position pos : positions)
+            for (int i = 0; i < coords.length; i += 3)
             {
-                Vec4 pt = globe.computePointFromPosition(pos);
-                path.put((float) (pt.x - referencePoint.x));
-                path.put((float) (pt.y - referencePoint.y));
-                path.put((float) (pt.z - referencePoint.z));
+                Vec4 pt = globe.computePointFromPosition(Angle.fromDegrees(coords[i]), Angle.fromDegrees(coords[i + 1]),
+                    coords[i + 2]);
+                coords[i] = pt.x - referencePoint.x;
+                coords[i + 1] = pt.y - referencePoint.y;
+                coords[i + 2] = pt.z - referencePoint.z;
+            }
+        }
 
-                if (colorIter != null && colorIter.hasNext())
-                {
-                    colorIter.next().getRGBComponents(color);
-                    path.put(color);
-                }
+        k = 0;
+        for (Position pos : positions)
+        {
+            path.put((float) coords[k++]);
+            path.put((float) coords[k++]);
+            path.put((float) coords[k++]);
 
-                if (this.isExtrude())
-                    this.appendTerrainPoint(dc, pos, color, path, pathData);
+            if (colorIter != null && colorIter.hasNext())
+            {
+                colorIter.next().getRGBComponents(color);
+                path.put(color);
             }
+
+            if (this.isExtrude())
+                this.appendTerrainPoint(dc, pos, color, path, pathData);
         }
 
         pathData.colorOffset = (pathData.tessellatedColors != null ? 3 : 0);
@@ -2340,7 +2342,10 @@ public class Path extends AbstractShape
         List<Position> newPositions = Position.computeShiftedPositions(oldPosition, position, this.positions);
 
         if (newPositions != null)
+        {
             this.setPositions(newPositions);
+            this.firePropertyChange(AVKey.POSITION, oldPosition, position);
+        }
     }
 
     protected boolean isSmall(DrawContext dc, Vec4 ptA, Vec4 ptB, int numPixels)
@@ -1300,7 +1300,11 @@ public class PointPlacemark extends WWObjectImpl
             throw new IllegalArgumentException(msg);
         }
 
+        Position oldPosition = this.getReferencePosition();
         this.setPosition(position);
+
+        // Notify listeners, such as a layer that indexes its renderables by location, that the placemark moved.
+        this.firePropertyChange(AVKey.POSITION, oldPosition, position);
     }
 
     /**
@@ -13,7 +13,7 @@ import gov.nasa.worldwind.cache.GpuResourceCache;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.geom.Box;
-import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.globes.*;
 import gov.nasa.worldwind.ogc.kml.impl.KMLExportUtil;
 import gov.nasa.worldwind.terrain.Terrain;
 import gov.nasa.worldwind.util.*;
@@ -933,13 +933,43 @@ public class Polygon extends AbstractShape
         int n = boundary.positions.size();
         Vec4[] boundaryVertices = new Vec4[n];
 
-        for (int i = 0; i < n; i++)
+        if (this.getAltitudeMode() != WorldWind.CLAMP_TO_GROUND
+            && this.getAltitudeMode() != WorldWind.RELATIVE_TO_GROUND
+            && terrain.getGlobe() instanceof EllipsoidalGlobe)
         {
-            if (rotationMatrix == null)
-                boundaryVertices[i] = this.computePoint(terrain, boundary.positions.get(i)).subtract3(refPoint);
-            else
-                boundaryVertices[i] = this.computePoint(terrain, boundary.positions.get(i)).transformBy4(
-                    rotationMatrix).subtract3(refPoint);
+            // Absolute positions do not depend on the terrain, so the globe converts them all at once.
+            double ve = terrain.getVerticalExaggeration();
+            double[] coords = new double[3 * n];
+            for (int i = 0; i < n; i++)
+            {
+                Position position = boundary.positions.get(i);
+                coords[3 * i] = position.getLatitude().degrees;
+                coords[3 * i + 1] = position.getLongitude().degrees;
+                coords[3 * i + 2] = ve * position.getElevation();
+            }
+
+            ((EllipsoidalGlobe) terrain.getGlobe()).computePointsFromPositions(coords, n,
+                rotationMatrix == null ? refPoint : null, coords);
+
+            for (int i = 0; i < n; i++)
+            {
+                Vec4 point = new Vec4(coords[3 * i], coords[3 * i + 1], coords[3 * i + 2]);
+                if (rotationMatrix == null)
+                    boundaryVertices[i] = point;
+                else
+                    boundaryVertices[i] = point.transformBy4(rotationMatrix).subtract3(refPoint);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < n; i++)
+            {
+                if (rotationMatrix == null)
+                    boundaryVertices[i] = this.computePoint(terrain, boundary.positions.get(i)).subtract3(refPoint);
+                else
+                    boundaryVertices[i] = this.computePoint(terrain, boundary.positions.get(i)).transformBy4(
+                        rotationMatrix).subtract3(refPoint);
+            }
         }
 
         boundary.vertices = boundaryVertices;
@@ -1400,6 +1430,7 @@ public class Polygon extends AbstractShape
         this.boundaries = newBoundaries;
         this.setReferencePosition(position);
         this.reset();
+        this.firePropertyChange(AVKey.POSITION, oldPosition, position);
     }
 
     /** {@inheritDoc} */
@@ -10,11 +10,32 @@ import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.util.Logging;
 
 import java.net.*;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.*;
 import java.util.logging.Level;
 
 /**
  * Performs threaded retrieval of data.
+ * <p/>
+ * Pending and running retrievals are indexed by retriever name, so a request for a resource that is already pending
+ * is coalesced onto the existing {@link RetrievalFuture} rather than queued again. Each request, including a coalesced
+ * one, marks its retrieval as still wanted in the current request generation. The scene controller starts a new
+ * generation each frame through {@link #beginGeneration()}. When a stale generation limit is specified, pending
+ * retrievals requested with a priority that have not been requested in the last {@link #getStaleGenerationLimit()}
+ * generations are cancelled, since the tiles they were queued for are no longer in view. The limit is 0 unless
+ * configured, which disables this cancellation. When the queue is full, a new request displaces the lowest priority
+ * pending retrieval, or is rejected if it has the lowest priority itself.
+ * <p/>
+ * Retrievals requested by {@link #runBulkRetriever(Retriever, double)} are for callers that request a resource once and
+ * wait for its post-processor, such as bulk downloads. They're never cancelled as stale, and when one is coalesced
+ * with a pending or running retrieval its post-processor is chained onto that retrieval and run when it completes.
+ * <p/>
+ * Retrievals from each host are counted, and when a host connection limit is specified a pending retrieval is started
+ * only while fewer than that many retrievals from its host are running, so a slow host cannot occupy every retrieval
+ * thread. The service keeps per-host statistics, see {@link #getHostStatistics()}, and can derive each retrieval's
+ * connect and read timeouts from its host's observed latency instead of using the configured timeouts.
  *
  * @author Tom Gaskins
  * @version $Id$
@@ -27,30 +48,82 @@ public final class BasicRetrievalService extends WWObjectImpl
     private static final int DEFAULT_POOL_SIZE = 5;
     private static final long DEFAULT_STALE_REQUEST_LIMIT = 30000; // milliseconds
     private static final int DEFAULT_TIME_PRIORITY_GRANULARITY = 500; // milliseconds
+    private static final int DEFAULT_STALE_GENERATION_LIMIT = 0; // generations; 0 disables generation cancellation
+    private static final int DEFAULT_HOST_CONNECTION_LIMIT = 0; // 0 places no limit on connections per host
 
     private static final String RUNNING_THREAD_NAME_PREFIX = Logging.getMessage(
         "BasicRetrievalService.RunningThreadNamePrefix");
     private static final String IDLE_THREAD_NAME_PREFIX = Logging.getMessage(
         "BasicRetrievalService.IdleThreadNamePrefix");
 
+    private static final AtomicLong nextSequenceNumber = new AtomicLong();
+
     private RetrievalExecutor executor; // thread pool for running retrievers
     private ConcurrentLinkedQueue<RetrievalTask> activeTasks; // tasks currently allocated a thread
+    private ConcurrentHashMap<String, RetrievalTask> tasksByName; // pending and running tasks, keyed by retriever name
     private int queueSize; // maximum queue size
+    private final AtomicLong generation = new AtomicLong(); // the current request generation
+    private volatile int staleGenerationLimit; // cancel pending tasks not requested in this many generations
+    private ConcurrentHashMap<String, HostStatistics> hostStatistics; // statistics for each host retrieved from
+    private volatile int hostConnectionLimit; // maximum number of concurrent retrievals per host
+    private volatile boolean adaptiveTimeouts; // true if timeouts are derived from host latency
 
     /**
      * Encapsulates a single threaded retrieval as a {@link java.util.concurrent.FutureTask}.
      */
-    private static class RetrievalTask extends FutureTask<Retriever>
+    private class RetrievalTask extends FutureTask<Retriever>
         implements RetrievalFuture, Comparable<RetrievalTask>
     {
         private Retriever retriever;
         private double priority; // retrieval secondary priority (primary priority is submit time)
-
-        private RetrievalTask(Retriever retriever, double priority)
+        private long sequenceNumber; // orders tasks that are otherwise equal in priority
+        private volatile boolean cancelWhenStale; // true if the task is cancelled when it's no longer requested
+        private final boolean bulk; // true if the requester waits for the retriever's post-processor
+        private List<RetrievalPostProcessor> chainedPostProcessors; // post-processors of coalesced bulk requests
+        private boolean chainClosed; // true once the chained post-processors have been run
+        private volatile long generation; // the most recent generation in which the task was requested
+        private HostStatistics host; // statistics of the retriever's host, or null if the retriever has no host
+        private boolean counted; // true if the task is counted as active for its host
+
+        private RetrievalTask(Retriever retriever, double priority, boolean cancelWhenStale, boolean bulk)
         {
             super(retriever);
             this.retriever = retriever;
             this.priority = priority;
+            this.cancelWhenStale = cancelWhenStale;
+            this.bulk = bulk;
+            this.sequenceNumber = nextSequenceNumber.getAndIncrement();
+            this.generation = BasicRetrievalService.this.generation.get();
+
+            if (retriever instanceof URLRetriever)
+            {
+                String hostName = ((URLRetriever) retriever).getUrl().getHost();
+                if (hostName != null && hostName.length() > 0)
+                    this.host = BasicRetrievalService.this.getHostStatistics(hostName);
+            }
+        }
+
+        private boolean isStale(long minGeneration)
+        {
+            return this.cancelWhenStale && this.generation < minGeneration;
+        }
+
+        /**
+         * Adds a post-processor to run with this task's retriever when the task completes.
+         *
+         * @param postProcessor the post-processor.
+         * @return true if the post-processor was added, false if the task has already run its chained post-processors.
+         */
+        private synchronized boolean chain(RetrievalPostProcessor postProcessor)
+        {
+            if (this.chainClosed)
+                return false;
+
+            if (this.chainedPostProcessors == null)
+                this.chainedPostProcessors = new ArrayList<RetrievalPostProcessor>(1);
+            this.chainedPostProcessors.add(postProcessor);
+
+            return true;
         }
 
         public double getPriority()
@@ -72,9 +145,58 @@ public final class BasicRetrievalService extends WWObjectImpl
             super.run();
         }
 
+        @Override
+        protected void done()
+        {
+            // Remove this task from the index whether it completed, failed or was cancelled. A newer task for the same
+            // resource may have replaced it, so remove only this task.
+            BasicRetrievalService.this.tasksByName.remove(this.retriever.getName(), this);
+
+            List<RetrievalPostProcessor> postProcessors;
+            synchronized (this)
+            {
+                this.chainClosed = true;
+                postProcessors = this.chainedPostProcessors;
+                this.chainedPostProcessors = null;
+            }
+
+            // A bulk retrieval cancelled before it started would otherwise never run its post-processor, and its
+            // requester would wait for it indefinitely. Run it so the requester sees the retrieval failed.
+            if (this.bulk && Retriever.RETRIEVER_STATE_NOT_STARTED.equals(this.retriever.getState()))
+            {
+                RetrievalPostProcessor postProcessor = getPostProcessor(this.retriever);
+                if (postProcessor != null)
+                {
+                    if (postProcessors == null)
+                        postProcessors = new ArrayList<RetrievalPostProcessor>(1);
+                    postProcessors.add(0, postProcessor);
+                }
+            }
+
+            if (postProcessors == null)
+                return;
+
+            for (RetrievalPostProcessor postProcessor : postProcessors)
+            {
+                try
+                {
+                    postProcessor.run(this.retriever);
+                }
+                catch (Exception e)
+                {
+                    Logging.logger().log(Level.FINE,
+                        Logging.getMessage("Retriever.ErrorPostProcessing", this.retriever.getName()), e);
+                }
+            }
+        }
+
         /**
+         * Orders tasks by priority, lowest value first. Tasks with positive priorities are first ordered by the
+         * time-granularity period in which they were submitted, most recent first. Tasks that are otherwise equal are
+         * ordered by submission, so distinct tasks never compare as equal.
+         *
          * @param that the task to compare with this one
-         * @return 0 if task priorities are equal, -1 if priority of this is less than that, 1 otherwise
+         * @return 0 if the tasks are the same, -1 if this task runs before that, 1 otherwise
          * @throws IllegalArgumentException if <code>that</code> is null
          */
         public int compareTo(RetrievalTask that)
@@ -86,19 +208,25 @@ public final class BasicRetrievalService extends WWObjectImpl
                 throw new IllegalArgumentException(msg);
             }
 
+            if (this == that)
+                return 0;
+
             if (this.priority > 0 && that.priority > 0) // only secondary priority used if either is negative
             {
                 // Requests submitted within different time-granularity periods are ordered exclusive of their
-                // client-specified priority.
-                long now = System.currentTimeMillis();
-                long thisElapsedTime = now - this.retriever.getSubmitTime();
-                long thatElapsedTime = now - that.retriever.getSubmitTime();
-                if (((thisElapsedTime - thatElapsedTime) / DEFAULT_TIME_PRIORITY_GRANULARITY) != 0)
-                    return thisElapsedTime < thatElapsedTime ? -1 : 1;
+                // client-specified priority. The periods are fixed so that the ordering is stable while the tasks
+                // are queued.
+                long thisPeriod = this.retriever.getSubmitTime() / DEFAULT_TIME_PRIORITY_GRANULARITY;
+                long thatPeriod = that.retriever.getSubmitTime() / DEFAULT_TIME_PRIORITY_GRANULARITY;
+                if (thisPeriod != thatPeriod)
+                    return thisPeriod > thatPeriod ? -1 : 1;
             }
 
             // The client-specified priority is compared for requests submitted within the same granularity period.
-            return this.priority == that.priority ? 0 : this.priority < that.priority ? -1 : 1;
+            if (this.priority != that.priority)
+                return this.priority < that.priority ? -1 : 1;
+
+            return this.sequenceNumber < that.sequenceNumber ? -1 : 1;
         }
 
         public boolean equals(Object o)
@@ -121,6 +249,348 @@ public final class BasicRetrievalService extends WWObjectImpl
         }
     }
 
+    /**
+     * A bounded blocking queue of retrieval tasks ordered by priority. When the queue is full, offering a task
+     * displaces the lowest priority queued task, or fails if the offered task has the lowest priority. Unlike a {@link
+     * PriorityBlockingQueue}, tasks are kept in a sorted set, so both the highest and lowest priority tasks can be
+     * removed in logarithmic time. Threads taking from the queue receive the highest priority task whose host is
+     * within the host connection limit.
+     */
+    private class RetrievalQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable>
+    {
+        private final TreeSet<RetrievalTask> tasks = new TreeSet<RetrievalTask>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = this.lock.newCondition();
+        private final int capacity;
+
+        private RetrievalQueue(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        public boolean offer(Runnable runnable)
+        {
+            RetrievalTask task = (RetrievalTask) runnable;
+            RetrievalTask displaced = null;
+
+            this.lock.lock();
+            try
+            {
+                if (this.tasks.size() >= this.capacity)
+                {
+                    if (this.tasks.isEmpty() || task.compareTo(this.tasks.last()) >= 0)
+                        return false;
+
+                    displaced = this.tasks.pollLast();
+                }
+
+                this.tasks.add(task);
+                this.notEmpty.signal();
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+
+            if (displaced != null)
+            {
+                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.CancellingLowPriorityRetrieval",
+                    displaced.getRetriever().getName()));
+                displaced.cancel(false);
+            }
+
+            return true;
+        }
+
+        public void put(Runnable runnable)
+        {
+            this.offer(runnable); // never blocks; a full queue displaces or rejects
+        }
+
+        public boolean offer(Runnable runnable, long timeout, TimeUnit unit)
+        {
+            return this.offer(runnable);
+        }
+
+        public Runnable take() throws InterruptedException
+        {
+            this.lock.lockInterruptibly();
+            try
+            {
+                RetrievalTask task;
+                while ((task = this.pollAdmissible()) == null)
+                {
+                    this.notEmpty.await();
+                }
+
+                return task;
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            long nanos = unit.toNanos(timeout);
+
+            this.lock.lockInterruptibly();
+            try
+            {
+                RetrievalTask task;
+                while ((task = this.pollAdmissible()) == null)
+                {
+                    if (nanos <= 0)
+                        return null;
+
+                    nanos = this.notEmpty.awaitNanos(nanos);
+                }
+
+                return task;
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Removes the highest priority task whose host is within the host connection limit, and counts it as active
+         * for its host.
+         *
+         * @return the task, or null if the queue holds no task that may start.
+         */
+        private RetrievalTask pollAdmissible() // MUST BE CALLED WHILE HOLDING THE LOCK
+        {
+            int limit = BasicRetrievalService.this.hostConnectionLimit;
+
+            for (Iterator<RetrievalTask> iter = this.tasks.iterator(); iter.hasNext(); )
+            {
+                RetrievalTask task = iter.next();
+                if (limit > 0 && task.host != null && task.host.activeCount.get() >= limit)
+                    continue;
+
+                iter.remove();
+                if (task.host != null)
+                {
+                    task.host.activeCount.incrementAndGet();
+                    task.counted = true;
+                }
+
+                return task;
+            }
+
+            return null;
+        }
+
+        /** Wakes threads waiting for a task, after a host's active count drops or the host limit changes. */
+        private void signalWaiters()
+        {
+            this.lock.lock();
+            try
+            {
+                this.notEmpty.signalAll();
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        public Runnable poll()
+        {
+            this.lock.lock();
+            try
+            {
+                return this.tasks.pollFirst();
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        public Runnable peek()
+        {
+            this.lock.lock();
+            try
+            {
+                return this.tasks.isEmpty() ? null : this.tasks.first();
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        public int size()
+        {
+            this.lock.lock();
+            try
+            {
+                return this.tasks.size();
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        public int remainingCapacity()
+        {
+            return Math.max(0, this.capacity - this.size());
+        }
+
+        public boolean contains(Object o)
+        {
+            if (!(o instanceof RetrievalTask))
+                return false;
+
+            this.lock.lock();
+            try
+            {
+                return this.tasks.contains(o);
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        public boolean remove(Object o)
+        {
+            if (!(o instanceof RetrievalTask))
+                return false;
+
+            this.lock.lock();
+            try
+            {
+                return this.tasks.remove(o);
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Returns an iterator over a snapshot of the queue. The iterator's <code>remove</code> removes the task from
+         * the queue.
+         *
+         * @return an iterator over the queued tasks in priority order.
+         */
+        public Iterator<Runnable> iterator()
+        {
+            final Iterator<Runnable> iter;
+            this.lock.lock();
+            try
+            {
+                iter = new ArrayList<Runnable>(this.tasks).iterator();
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+
+            return new Iterator<Runnable>()
+            {
+                private Runnable last;
+
+                public boolean hasNext()
+                {
+                    return iter.hasNext();
+                }
+
+                public Runnable next()
+                {
+                    return this.last = iter.next();
+                }
+
+                public void remove()
+                {
+                    if (this.last == null)
+                        throw new IllegalStateException();
+
+                    RetrievalQueue.this.remove(this.last);
+                    this.last = null;
+                }
+            };
+        }
+
+        public int drainTo(Collection<? super Runnable> c)
+        {
+            return this.drainTo(c, Integer.MAX_VALUE);
+        }
+
+        public int drainTo(Collection<? super Runnable> c, int maxElements)
+        {
+            if (c == null)
+            {
+                String msg = Logging.getMessage("nullValue.CollectionIsNull");
+                Logging.logger().fine(msg);
+                throw new IllegalArgumentException(msg);
+            }
+
+            this.lock.lock();
+            try
+            {
+                int n = 0;
+                while (n < maxElements && !this.tasks.isEmpty())
+                {
+                    c.add(this.tasks.pollFirst());
+                    n++;
+                }
+
+                return n;
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Removes and cancels the queued tasks that have not been requested since a specified generation.
+         *
+         * @param minGeneration the oldest generation in which a task must have been requested to remain queued.
+         */
+        private void cancelStaleTasks(long minGeneration)
+        {
+            ArrayList<RetrievalTask> staleTasks = null;
+
+            this.lock.lock();
+            try
+            {
+                for (Iterator<RetrievalTask> iter = this.tasks.iterator(); iter.hasNext(); )
+                {
+                    RetrievalTask task = iter.next();
+                    if (task.isStale(minGeneration))
+                    {
+                        if (staleTasks == null)
+                            staleTasks = new ArrayList<RetrievalTask>();
+                        staleTasks.add(task);
+                        iter.remove();
+                    }
+                }
+            }
+            finally
+            {
+                this.lock.unlock();
+            }
+
+            if (staleTasks == null)
+                return;
+
+            for (RetrievalTask task : staleTasks)
+            {
+                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.CancellingStaleRetrieval",
+                    task.getRetriever().getName()));
+                task.cancel(false);
+            }
+        }
+    }
+
     public void uncaughtException(Thread thread, Throwable throwable)
     {
         Logging.logger().fine(Logging.getMessage("BasicRetrievalService.UncaughtExceptionDuringRetrieval",
@@ -134,7 +604,7 @@ public final class BasicRetrievalService extends WWObjectImpl
 
         private RetrievalExecutor(int poolSize, int queueSize)
         {
-            super(poolSize, poolSize, THREAD_TIMEOUT, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(queueSize),
+            super(poolSize, poolSize, THREAD_TIMEOUT, TimeUnit.SECONDS, new RetrievalQueue(queueSize),
                 new ThreadFactory()
                 {
                     public Thread newThread(Runnable runnable)
@@ -147,14 +617,16 @@ public final class BasicRetrievalService extends WWObjectImpl
                     }
                 }, new ThreadPoolExecutor.DiscardPolicy() // abandon task when queue is full
             {
-                // This listener is invoked only when the executor queue is a bounded queue and runs out of room.
-                // If the queue is a java.util.concurrent.PriorityBlockingQueue, this listener is never invoked.
+                // This listener is invoked when the queue is full and the rejected task has a lower priority than
+                // every queued task, or when the executor has been shut down.
                 public void rejectedExecution(Runnable runnable, ThreadPoolExecutor threadPoolExecutor)
                 {
                     // Interposes logging for rejected execution
                     Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejected",
                         ((RetrievalTask) runnable).getRetriever().getName()));
 
+                    // Cancel the task so that its future reports the rejection and it leaves the request index.
+                    ((RetrievalTask) runnable).cancel(false);
                     super.rejectedExecution(runnable, threadPoolExecutor);
                 }
             });
@@ -195,15 +667,33 @@ public final class BasicRetrievalService extends WWObjectImpl
                     task.getRetriever().getName()));
                 task.cancel(true);
             }
-
-            if (BasicRetrievalService.this.activeTasks.contains(task))
+            else if (BasicRetrievalService.this.isStale(task))
             {
-                // Task is a duplicate
-                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.CancellingDuplicateRetrieval",
+                // Task has not been requested recently enough
+                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.CancellingStaleRetrieval",
                     task.getRetriever().getName()));
                 task.cancel(true);
             }
 
+            // Tasks started without passing through the queue, while the pool is growing, are counted here.
+            if (task.host != null && !task.counted)
+            {
+                task.host.activeCount.incrementAndGet();
+                task.counted = true;
+            }
+
+            if (task.host != null)
+            {
+                URLRetriever retriever = (URLRetriever) task.retriever;
+                retriever.setHostStatistics(task.host);
+
+                if (BasicRetrievalService.this.adaptiveTimeouts)
+                {
+                    retriever.setConnectTimeout(task.host.computeTimeout(retriever.getConnectTimeout()));
+                    retriever.setReadTimeout(task.host.computeTimeout(retriever.getReadTimeout()));
+                }
+            }
+
             BasicRetrievalService.this.activeTasks.add(task);
 
             thread.setName(RUNNING_THREAD_NAME_PREFIX + task.getRetriever().getName());
@@ -233,6 +723,13 @@ public final class BasicRetrievalService extends WWObjectImpl
             BasicRetrievalService.this.activeTasks.remove(task);
             task.retriever.setEndTime(System.currentTimeMillis());
 
+            if (task.counted)
+            {
+                task.host.activeCount.decrementAndGet();
+                task.counted = false;
+                ((RetrievalQueue) this.getQueue()).signalWaiters();
+            }
+
             try
             {
                 if (throwable != null)
@@ -279,11 +776,26 @@ public final class BasicRetrievalService extends WWObjectImpl
         Integer poolSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_POOL_SIZE, DEFAULT_POOL_SIZE);
         this.queueSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
 
+        // this.hostStatistics holds the per-host retrieval statistics, and must exist before any task is created
+        this.hostStatistics = new ConcurrentHashMap<String, HostStatistics>();
+        this.hostConnectionLimit = Configuration.getIntegerValue(AVKey.RETRIEVAL_HOST_CONNECTION_LIMIT,
+            DEFAULT_HOST_CONNECTION_LIMIT);
+        this.adaptiveTimeouts = Configuration.getBooleanValue(AVKey.RETRIEVAL_ADAPTIVE_TIMEOUTS, false);
+        this.configureKeepAlive();
+
         // this.executor runs the retrievers, each in their own thread
         this.executor = new RetrievalExecutor(poolSize, this.queueSize);
+        // Start the pool's threads now, so that every task passes through the queue and its host limit
+        this.executor.prestartAllCoreThreads();
 
         // this.activeTasks holds the list of currently executing tasks (*not* those pending on the queue)
         this.activeTasks = new ConcurrentLinkedQueue<RetrievalTask>();
+
+        // this.tasksByName indexes both pending and executing tasks, and is used to coalesce duplicate requests
+        this.tasksByName = new ConcurrentHashMap<String, RetrievalTask>();
+
+        this.staleGenerationLimit = Configuration.getIntegerValue(AVKey.RETRIEVAL_QUEUE_STALE_GENERATION_LIMIT,
+            DEFAULT_STALE_GENERATION_LIMIT);
     }
 
     public void shutdown(boolean immediately)
@@ -294,6 +806,7 @@ public final class BasicRetrievalService extends WWObjectImpl
             this.executor.shutdown();
 
         this.activeTasks.clear();
+        this.tasksByName.clear();
     }
 
     /**
@@ -316,17 +829,23 @@ public final class BasicRetrievalService extends WWObjectImpl
             throw new IllegalArgumentException(message);
         }
 
-        // Add with secondary priority that removes most recently added requests first.
-        return this.runRetriever(retriever, (double) (Long.MAX_VALUE - System.currentTimeMillis()));
+        // Add with secondary priority that removes most recently added requests first. Requests without an explicit
+        // priority are typically made once, so they're not cancelled when they're not requested again.
+        return this.submit(retriever, (double) (Long.MAX_VALUE - System.currentTimeMillis()), false, false);
     }
 
     /**
+     * Runs a retriever at a specified priority. If a retriever with the same name is pending or running, the request is
+     * coalesced onto it and its future is returned, and the new retriever's post-processor is not run. Retrievals
+     * requested with an explicit priority are assumed to be requested again each frame they're still needed, and when
+     * a stale generation limit is specified are cancelled once they go unrequested for more than that limit.
+     *
      * @param retriever the retriever to run
      * @param priority  the secondary priority of the retriever, or negative if it is to be the primary priority
      * @return a future object that can be used to query the request status of cancel the request.
      * @throws IllegalArgumentException if <code>retriever</code> is null or has no name
      */
-    public synchronized RetrievalFuture runRetriever(Retriever retriever, double priority)
+    public RetrievalFuture runRetriever(Retriever retriever, double priority)
     {
         if (retriever == null)
         {
@@ -342,23 +861,258 @@ public final class BasicRetrievalService extends WWObjectImpl
             throw new IllegalArgumentException(message);
         }
 
+        return this.submit(retriever, priority, true, false);
+    }
+
+    /**
+     * Runs a retriever whose requester waits for its post-processor, such as a bulk download. The retrieval is never
+     * cancelled as stale. If a retriever with the same name is pending or running, the request is coalesced onto it:
+     * the pending retrieval is no longer cancelled as stale, and this retriever's post-processor is run with the
+     * pending retriever when it completes. If the retrieval is cancelled before it starts, its post-processor is run
+     * with the retriever in its initial state so the requester learns that it failed.
+     * <p/>
+     * Post-processors are chained only for {@link URLRetriever} and {@link LocalRasterServerRetriever}. Other
+     * retrievers are coalesced as by {@link #runRetriever(Retriever, double)}.
+     *
+     * @param retriever the retriever to run
+     * @param priority  the secondary priority of the retriever, or negative if it is to be the primary priority
+     * @return a future object that can be used to query the request status of cancel the request.
+     * @throws IllegalArgumentException if <code>retriever</code> is null or has no name
+     */
+    public RetrievalFuture runBulkRetriever(Retriever retriever, double priority)
+    {
+        if (retriever == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (retriever.getName() == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverNameIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return this.submit(retriever, priority, false, true);
+    }
+
+    private synchronized RetrievalFuture submit(Retriever retriever, double priority, boolean cancelWhenStale,
+        boolean bulk)
+    {
         if (!this.isAvailable())
         {
             Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejected", retriever.getName()));
         }
 
-        RetrievalTask task = new RetrievalTask(retriever, priority);
-        retriever.setSubmitTime(System.currentTimeMillis());
+        // Coalesce duplicates onto the pending or running task, and mark it as still wanted.
+        RetrievalTask existing = this.tasksByName.get(retriever.getName());
+        if (existing != null && !existing.isDone())
+        {
+            existing.generation = this.generation.get();
+            if (!bulk || retriever == existing.retriever)
+                return existing;
 
-        // Do not queue duplicates.
-        if (this.activeTasks.contains(task) || this.executor.getQueue().contains(task))
-            return null;
+            // The bulk requester waits for its post-processor, so chain it onto the existing retrieval and keep that
+            // retrieval from being cancelled as stale.
+            RetrievalPostProcessor postProcessor = getPostProcessor(retriever);
+            if (postProcessor == null)
+                return existing;
+
+            existing.cancelWhenStale = false;
+            if (existing.chain(postProcessor))
+                return existing;
+
+            // The existing retrieval completed while the post-processor was chained, so run this one by itself.
+        }
 
+        RetrievalTask task = new RetrievalTask(retriever, priority, cancelWhenStale, bulk);
+        retriever.setSubmitTime(System.currentTimeMillis());
+
+        this.tasksByName.put(retriever.getName(), task);
         this.executor.execute(task);
 
         return task;
     }
 
+    /**
+     * Starts a new request generation. Called by the scene controller once per frame. Pending retrievals requested
+     * with an explicit priority that have not been requested within the last {@link #getStaleGenerationLimit()}
+     * generations are cancelled.
+     */
+    public void beginGeneration()
+    {
+        long generation = this.generation.incrementAndGet();
+
+        int limit = this.staleGenerationLimit;
+        if (limit > 0 && generation > limit)
+            ((RetrievalQueue) this.executor.getQueue()).cancelStaleTasks(generation - limit);
+    }
+
+    /**
+     * Returns the current request generation.
+     *
+     * @return the current generation.
+     */
+    public long getGeneration()
+    {
+        return this.generation.get();
+    }
+
+    /**
+     * Returns the number of generations a pending retrieval may go unrequested before it's cancelled.
+     *
+     * @return the stale generation limit, or 0 if retrievals are not cancelled by generation.
+     */
+    public int getStaleGenerationLimit()
+    {
+        return this.staleGenerationLimit;
+    }
+
+    /**
+     * Specifies the number of generations a pending retrieval may go unrequested before it's cancelled.
+     *
+     * @param limit the stale generation limit, or 0 to disable cancellation by generation.
+     * @throws IllegalArgumentException if <code>limit</code> is negative
+     */
+    public void setStaleGenerationLimit(int limit)
+    {
+        if (limit < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", limit);
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.staleGenerationLimit = limit;
+    }
+
+    /**
+     * Returns the statistics of a host, creating them if the host has not been retrieved from.
+     *
+     * @param host the host name.
+     * @return the host's statistics.
+     * @throws IllegalArgumentException if <code>host</code> is null
+     */
+    public HostStatistics getHostStatistics(String host)
+    {
+        if (host == null)
+        {
+            String message = Logging.getMessage("nullValue.StringIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        String key = host.toLowerCase();
+        HostStatistics stats = this.hostStatistics.get(key);
+        if (stats == null)
+        {
+            HostStatistics existing = this.hostStatistics.putIfAbsent(key, stats = new HostStatistics(key));
+            if (existing != null)
+                stats = existing;
+        }
+
+        return stats;
+    }
+
+    /**
+     * Returns the retrieval statistics of each host the service has retrieved from.
+     *
+     * @return the host statistics.
+     */
+    public Collection<HostStatistics> getHostStatistics()
+    {
+        return Collections.unmodifiableCollection(this.hostStatistics.values());
+    }
+
+    /**
+     * Returns the maximum number of concurrent retrievals from a single host.
+     *
+     * @return the host connection limit, or 0 if the number of retrievals per host is not limited.
+     */
+    public int getHostConnectionLimit()
+    {
+        return this.hostConnectionLimit;
+    }
+
+    /**
+     * Specifies the maximum number of concurrent retrievals from a single host. Pending retrievals from a host at its
+     * limit wait while retrievals from other hosts proceed. The limit is effective only when it's smaller than the
+     * retriever pool size.
+     *
+     * @param limit the host connection limit, or 0 to not limit the number of retrievals per host.
+     * @throws IllegalArgumentException if <code>limit</code> is negative
+     */
+    public void setHostConnectionLimit(int limit)
+    {
+        if (limit < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", limit);
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.hostConnectionLimit = limit;
+        ((RetrievalQueue) this.executor.getQueue()).signalWaiters();
+    }
+
+    /**
+     * Indicates whether retrieval timeouts are derived from the observed latency of each host.
+     *
+     * @return true if adaptive timeouts are enabled, otherwise false.
+     */
+    public boolean isAdaptiveTimeouts()
+    {
+        return this.adaptiveTimeouts;
+    }
+
+    /**
+     * Specifies whether retrieval timeouts are derived from the observed latency of each host. When enabled, the
+     * connect and read timeouts of an HTTP retriever are replaced when it starts by a timeout computed by {@link
+     * HostStatistics#computeTimeout(int)} from its configured timeouts.
+     *
+     * @param adaptiveTimeouts true to enable adaptive timeouts, otherwise false.
+     */
+    public void setAdaptiveTimeouts(boolean adaptiveTimeouts)
+    {
+        this.adaptiveTimeouts = adaptiveTimeouts;
+    }
+
+    /**
+     * Sizes the JDK's HTTP keep-alive cache so that each host can keep as many idle persistent connections as it may
+     * have concurrent retrievals. The cache is sized when the JDK's HTTP client first initializes, so this has no
+     * effect if HTTP connections were made earlier, and the property is not changed if the application set it.
+     */
+    private void configureKeepAlive()
+    {
+        try
+        {
+            if (this.hostConnectionLimit > 0 && System.getProperty("http.maxConnections") == null)
+                System.setProperty("http.maxConnections", Integer.toString(this.hostConnectionLimit));
+        }
+        catch (SecurityException e)
+        {
+            Logging.logger().log(Level.FINE, e.getMessage(), e);
+        }
+    }
+
+    private static RetrievalPostProcessor getPostProcessor(Retriever retriever)
+    {
+        if (retriever instanceof URLRetriever)
+            return ((URLRetriever) retriever).getPostProcessor();
+        else if (retriever instanceof LocalRasterServerRetriever)
+            return ((LocalRasterServerRetriever) retriever).getPostProcessor();
+
+        return null;
+    }
+
+    private boolean isStale(RetrievalTask task)
+    {
+        int limit = this.staleGenerationLimit;
+        return limit > 0 && task.isStale(this.generation.get() - limit);
+    }
+
     /**
      * @param poolSize the number of threads in the thread pool
      * @throws IllegalArgumentException if <code>poolSize</code> is non-positive
@@ -374,6 +1128,7 @@ public final class BasicRetrievalService extends WWObjectImpl
 
         this.executor.setCorePoolSize(poolSize);
         this.executor.setMaximumPoolSize(poolSize);
+        this.executor.prestartAllCoreThreads();
     }
 
     public int getRetrieverPoolSize()
@@ -423,8 +1178,8 @@ public final class BasicRetrievalService extends WWObjectImpl
             Logging.logger().fine(msg);
             throw new IllegalArgumentException(msg);
         }
-        RetrievalTask task = new RetrievalTask(retriever, 0d);
-        return (this.activeTasks.contains(task) || this.executor.getQueue().contains(task));
+        RetrievalTask task = this.tasksByName.get(retriever.getName());
+        return task != null && !task.isDone();
     }
 
     public double getProgress()
@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.*;
+
+/**
+ * Persists a {@link BulkRetrievalManifest} so that a bulk retrieval can resume where it stopped. Completed tiles are
+ * appended to a journal file as they complete. Once the journal holds at least <code>checkpointInterval</code>
+ * completions and has grown to a tenth of the manifest file's size, {@link #checkpointIfDue()} rewrites the manifest
+ * file and empties the journal. The cost of a checkpoint is therefore spread over a number of completions proportional
+ * to the manifest's size. When the journal is opened after a crash, the completions recorded since the last checkpoint
+ * are replayed onto the manifest read from disk.
+ * <p/>
+ * A checkpoint writes a copy of the manifest without holding the journal's lock, so completions continue to be
+ * recorded while it runs. They are appended to a new journal file, and the journal file of the completions before the
+ * checkpoint is kept, with the suffix <code>.previous</code>, until the manifest is written.
+ * <p/>
+ * The journal is kept in a file next to the manifest file, with the manifest file's name and the suffix
+ * <code>.journal</code>.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class BulkRetrievalJournal
+{
+    /** The number of bytes in a journal record: the level number, row and column of a completed tile. */
+    protected static final int RECORD_SIZE = 12;
+    /** The size of the journal relative to the manifest file at which a checkpoint is due. */
+    protected static final double CHECKPOINT_RATIO = 0.1;
+
+    protected final File manifestFile;
+    protected final File journalFile;
+    protected final File previousJournalFile;
+    protected final int checkpointInterval;
+    /** Serializes writes of the manifest file. Acquired before the journal's own lock, never while holding it. */
+    protected final Object checkpointLock = new Object();
+    protected BulkRetrievalManifest manifest;
+    protected DataOutputStream journal;
+    protected int numRecords;
+    protected long manifestSize;
+    protected boolean checkpointing;
+
+    /**
+     * Constructs a journal for a manifest file. The journal does not read or write either file until {@link
+     * #open(String)} or {@link #create(BulkRetrievalManifest)} is called.
+     *
+     * @param manifestFile       the manifest file.
+     * @param checkpointInterval the minimum number of completions between checkpoints.
+     *
+     * @throws IllegalArgumentException if the file is null or the checkpoint interval is less than one.
+     */
+    public BulkRetrievalJournal(File manifestFile, int checkpointInterval)
+    {
+        if (manifestFile == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (checkpointInterval < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", checkpointInterval);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.manifestFile = manifestFile;
+        this.journalFile = new File(manifestFile.getPath() + ".journal");
+        this.previousJournalFile = new File(this.journalFile.getPath() + ".previous");
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public File getManifestFile()
+    {
+        return this.manifestFile;
+    }
+
+    public File getJournalFile()
+    {
+        return this.journalFile;
+    }
+
+    /**
+     * Returns the manifest the journal records completions for.
+     *
+     * @return the journal's manifest, or null if the journal has not been opened or created.
+     */
+    public synchronized BulkRetrievalManifest getManifest()
+    {
+        return this.manifest;
+    }
+
+    /**
+     * Reads the manifest and applies the completions in the journal to it, without modifying either file.
+     *
+     * @param key the key of the expected manifest.
+     *
+     * @return the manifest, or null if there's no manifest file, a file cannot be read, or the manifest in it has a
+     *         different key.
+     */
+    public BulkRetrievalManifest read(String key)
+    {
+        if (!BulkRetrievalManifest.exists(this.manifestFile))
+            return null;
+
+        try
+        {
+            BulkRetrievalManifest manifest = BulkRetrievalManifest.read(this.manifestFile);
+            if (!manifest.getKey().equals(key))
+                return null;
+
+            // Completions in the previous journal may already be in the manifest. Replaying them again is harmless.
+            if (this.previousJournalFile.exists())
+                replay(this.previousJournalFile, manifest);
+            if (this.journalFile.exists())
+                replay(this.journalFile, manifest);
+
+            return manifest;
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("generic.ExceptionAttemptingToReadFile", this.manifestFile);
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+            return null;
+        }
+    }
+
+    /**
+     * Opens an existing manifest and journal. The completions in the journal are applied to the manifest, which is
+     * then checkpointed.
+     *
+     * @param key the key of the expected manifest.
+     *
+     * @return the manifest, or null if there's no manifest file, a file cannot be read, or the manifest in it has a
+     *         different key.
+     *
+     * @throws IOException if the manifest was read but cannot be checkpointed.
+     */
+    public BulkRetrievalManifest open(String key) throws IOException
+    {
+        BulkRetrievalManifest manifest = this.read(key);
+        if (manifest == null)
+            return null;
+
+        synchronized (this)
+        {
+            this.manifest = manifest;
+        }
+        this.checkpoint();
+
+        return manifest;
+    }
+
+    /**
+     * Writes a new manifest and starts an empty journal for it, replacing any existing manifest and journal.
+     *
+     * @param manifest the manifest.
+     *
+     * @throws IOException              if the manifest cannot be written.
+     * @throws IllegalArgumentException if the manifest is null.
+     */
+    public void create(BulkRetrievalManifest manifest) throws IOException
+    {
+        if (manifest == null)
+        {
+            String message = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        synchronized (this)
+        {
+            this.manifest = manifest;
+            this.closeJournal();
+            this.previousJournalFile.delete();
+            this.journalFile.delete();
+        }
+        this.checkpoint();
+    }
+
+    /**
+     * Marks a tile complete in the manifest and appends the completion to the journal. The record is flushed to the
+     * file before this method returns, so it survives a crash of the application. The caller should call {@link
+     * #checkpointIfDue()} afterwards, while not holding any lock that other recorders of completions need.
+     *
+     * @param levelNumber the tile's level number.
+     * @param row         the tile's row.
+     * @param column      the tile's column.
+     *
+     * @return true if the tile was pending, otherwise false.
+     *
+     * @throws IOException           if the completion cannot be written.
+     * @throws IllegalStateException if the journal is not open.
+     */
+    public synchronized boolean recordCompleted(int levelNumber, int row, int column) throws IOException
+    {
+        if (this.journal == null)
+        {
+            String message = Logging.getMessage("generic.JournalNotOpen", this.journalFile);
+            Logging.logger().severe(message);
+            throw new IllegalStateException(message);
+        }
+
+        if (!this.manifest.isPending(levelNumber, row, column))
+            return false;
+
+        this.manifest.setPending(levelNumber, row, column, false);
+
+        this.journal.writeInt(levelNumber);
+        this.journal.writeInt(row);
+        this.journal.writeInt(column);
+        this.journal.flush();
+        this.numRecords++;
+
+        return true;
+    }
+
+    /**
+     * Indicates whether the journal has grown enough to be checkpointed.
+     *
+     * @return true if a checkpoint is due, otherwise false.
+     */
+    public synchronized boolean isCheckpointDue()
+    {
+        return this.journal != null && !this.checkpointing && this.numRecords >= this.checkpointInterval
+            && (long) this.numRecords * RECORD_SIZE >= this.manifestSize * CHECKPOINT_RATIO;
+    }
+
+    /**
+     * Checkpoints the manifest if the journal has grown enough, unless another thread is already checkpointing it.
+     * Completions may be recorded by other threads while the manifest is written.
+     *
+     * @return true if the manifest was checkpointed, otherwise false.
+     *
+     * @throws IOException if the manifest or journal cannot be written.
+     */
+    public boolean checkpointIfDue() throws IOException
+    {
+        synchronized (this)
+        {
+            if (!this.isCheckpointDue())
+                return false;
+
+            this.checkpointing = true;
+        }
+
+        try
+        {
+            this.checkpoint();
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                this.checkpointing = false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes the manifest to its file and empties the journal. The journal's lock is held only while a copy of the
+     * manifest is made and the journal file is replaced, not while the manifest is written.
+     *
+     * @throws IOException if the manifest or journal cannot be written.
+     */
+    public void checkpoint() throws IOException
+    {
+        synchronized (this.checkpointLock)
+        {
+            BulkRetrievalManifest snapshot;
+            synchronized (this)
+            {
+                if (this.manifest == null)
+                    return;
+
+                this.closeJournal();
+                this.retireJournal();
+                snapshot = this.manifest.copy();
+                this.journal = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(this.journalFile, false), RECORD_SIZE * 64));
+                this.numRecords = 0;
+            }
+
+            snapshot.write(this.manifestFile);
+            this.previousJournalFile.delete();
+
+            synchronized (this)
+            {
+                this.manifestSize = this.manifestFile.length();
+            }
+        }
+    }
+
+    /**
+     * Moves the journal file's completions to the previous journal file, where they remain until the manifest that
+     * includes them is written. The previous journal file exists already only if a checkpoint failed or the
+     * application crashed during one, in which case the completions are appended to it.
+     *
+     * @throws IOException if the journal file cannot be moved or appended.
+     */
+    protected void retireJournal() throws IOException
+    {
+        if (!this.journalFile.exists())
+            return;
+
+        if (!this.previousJournalFile.exists())
+        {
+            if (!this.journalFile.renameTo(this.previousJournalFile))
+            {
+                throw new IOException(
+                    Logging.getMessage("generic.CannotMoveFile", this.journalFile, this.previousJournalFile));
+            }
+
+            return;
+        }
+
+        // Append only whole records, so the records appended after a partial one are not misaligned.
+        long length = this.previousJournalFile.length() / RECORD_SIZE * RECORD_SIZE;
+        RandomAccessFile out = new RandomAccessFile(this.previousJournalFile, "rw");
+        try
+        {
+            out.setLength(length);
+            out.seek(length);
+
+            InputStream in = new FileInputStream(this.journalFile);
+            try
+            {
+                byte[] buffer = new byte[RECORD_SIZE * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0)
+                {
+                    out.write(buffer, 0, n);
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Checkpoints the manifest and closes the journal. The files remain so the retrieval can resume later.
+     *
+     * @throws IOException if the manifest cannot be written.
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            this.checkpoint();
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                this.closeJournal();
+            }
+        }
+    }
+
+    /** Closes the journal and deletes the manifest and journal files. Called when the retrieval is complete. */
+    public void delete()
+    {
+        synchronized (this.checkpointLock)
+        {
+            synchronized (this)
+            {
+                this.closeJournal();
+                this.manifest = null;
+                this.journalFile.delete();
+                this.previousJournalFile.delete();
+                BulkRetrievalManifest.delete(this.manifestFile);
+            }
+        }
+    }
+
+    protected void closeJournal()
+    {
+        if (this.journal == null)
+            return;
+
+        try
+        {
+            this.journal.close();
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", this.journalFile);
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+        }
+
+        this.journal = null;
+    }
+
+    /**
+     * Applies the completions in a journal file to a manifest. A partial record at the end of the file, left by a
+     * crash while the record was written, is ignored.
+     *
+     * @param file     the journal file.
+     * @param manifest the manifest to mark completions in.
+     *
+     * @return the number of records replayed.
+     *
+     * @throws IOException if the file cannot be read.
+     */
+    protected static int replay(File file, BulkRetrievalManifest manifest) throws IOException
+    {
+        int numRecords = (int) (file.length() / RECORD_SIZE);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            for (int i = 0; i < numRecords; i++)
+            {
+                manifest.setPending(in.readInt(), in.readInt(), in.readInt(), false);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return numRecords;
+    }
+}
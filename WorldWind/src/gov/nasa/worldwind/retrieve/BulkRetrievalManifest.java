@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Lists the tiles a bulk retrieval must still download. The manifest holds one bitmap per level. Each bitmap covers the
+ * rectangle of tile rows and columns that the retrieval's sector spans in that level, and a set bit marks a tile that
+ * is pending. Bits are numbered in row major order starting at the rectangle's lowest row and column.
+ * <p/>
+ * A manifest is identified by a key that names the retrievable, sector and resolution it was computed for. {@link
+ * #read(File)} returns the manifest with its key so a caller can determine whether a manifest on disk matches the
+ * retrieval it's about to perform.
+ *
+ * @author tag
+ * @version $Id$
+ * @see BulkRetrievalJournal
+ */
+public class BulkRetrievalManifest
+{
+    protected static final int MAGIC = 0x57574253; // "WWBS"
+    protected static final int VERSION = 1;
+
+    protected static class LevelEntry
+    {
+        protected final int levelNumber;
+        protected final int minRow;
+        protected final int minColumn;
+        protected final int numRows;
+        protected final int numColumns;
+        protected final BitSet pending;
+
+        public LevelEntry(int levelNumber, int minRow, int minColumn, int numRows, int numColumns)
+        {
+            this.levelNumber = levelNumber;
+            this.minRow = minRow;
+            this.minColumn = minColumn;
+            this.numRows = numRows;
+            this.numColumns = numColumns;
+            this.pending = new BitSet(numRows * numColumns);
+        }
+
+        protected int indexOf(int row, int column)
+        {
+            int r = row - this.minRow;
+            int c = column - this.minColumn;
+            if (r < 0 || r >= this.numRows || c < 0 || c >= this.numColumns)
+                return -1;
+
+            return r * this.numColumns + c;
+        }
+    }
+
+    protected final String key;
+    protected final List<LevelEntry> levels = new ArrayList<LevelEntry>();
+
+    /**
+     * Constructs an empty manifest.
+     *
+     * @param key the key identifying the retrieval the manifest is for.
+     *
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public BulkRetrievalManifest(String key)
+    {
+        if (key == null)
+        {
+            String message = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.key = key;
+    }
+
+    /**
+     * Returns the key identifying the retrieval the manifest is for.
+     *
+     * @return the manifest's key.
+     */
+    public String getKey()
+    {
+        return this.key;
+    }
+
+    /**
+     * Adds a level to the manifest. None of the level's tiles are initially pending. Levels are kept in the order
+     * added, which is the order a retrieval should download them in.
+     *
+     * @param levelNumber the level number.
+     * @param minRow      the lowest tile row the retrieval spans in the level.
+     * @param minColumn   the lowest tile column the retrieval spans in the level.
+     * @param numRows     the number of tile rows the retrieval spans in the level.
+     * @param numColumns  the number of tile columns the retrieval spans in the level.
+     *
+     * @throws IllegalArgumentException if the level is already in the manifest, or the number of rows or columns is
+     *                                  less than one.
+     */
+    public void addLevel(int levelNumber, int minRow, int minColumn, int numRows, int numColumns)
+    {
+        if (numRows < 1 || numColumns < 1 || (long) numRows * numColumns > Integer.MAX_VALUE)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", numRows + "x" + numColumns);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.getLevelEntry(levelNumber) != null)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", levelNumber);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.levels.add(new LevelEntry(levelNumber, minRow, minColumn, numRows, numColumns));
+    }
+
+    /**
+     * Returns a copy of the manifest, whose pending tiles do not change as this manifest's do.
+     *
+     * @return a copy of the manifest.
+     */
+    public synchronized BulkRetrievalManifest copy()
+    {
+        BulkRetrievalManifest copy = new BulkRetrievalManifest(this.key);
+        for (LevelEntry entry : this.levels)
+        {
+            copy.addLevel(entry.levelNumber, entry.minRow, entry.minColumn, entry.numRows, entry.numColumns);
+            copy.levels.get(copy.levels.size() - 1).pending.or(entry.pending);
+        }
+
+        return copy;
+    }
+
+    /**
+     * Returns the number of levels in the manifest.
+     *
+     * @return the number of levels.
+     */
+    public int getNumLevels()
+    {
+        return this.levels.size();
+    }
+
+    /**
+     * Returns the level number of a level in the manifest.
+     *
+     * @param index the level's position in the manifest, counted from zero in the order the levels were added.
+     *
+     * @return the level number.
+     */
+    public int getLevelNumber(int index)
+    {
+        return this.levels.get(index).levelNumber;
+    }
+
+    /**
+     * Indicates whether a tile is pending.
+     *
+     * @param levelNumber the tile's level number.
+     * @param row         the tile's row.
+     * @param column      the tile's column.
+     *
+     * @return true if the tile is pending, false if it's not or if it's not in the manifest.
+     */
+    public synchronized boolean isPending(int levelNumber, int row, int column)
+    {
+        LevelEntry entry = this.getLevelEntry(levelNumber);
+        int index = entry != null ? entry.indexOf(row, column) : -1;
+
+        return index >= 0 && entry.pending.get(index);
+    }
+
+    /**
+     * Specifies whether a tile is pending.
+     *
+     * @param levelNumber the tile's level number.
+     * @param row         the tile's row.
+     * @param column      the tile's column.
+     * @param pending     true if the tile is pending, false if it's complete.
+     *
+     * @return true if the tile is in the manifest, otherwise false.
+     */
+    public synchronized boolean setPending(int levelNumber, int row, int column, boolean pending)
+    {
+        LevelEntry entry = this.getLevelEntry(levelNumber);
+        int index = entry != null ? entry.indexOf(row, column) : -1;
+        if (index < 0)
+            return false;
+
+        entry.pending.set(index, pending);
+        return true;
+    }
+
+    /**
+     * Returns the number of pending tiles in all levels.
+     *
+     * @return the number of pending tiles.
+     */
+    public synchronized long getPendingCount()
+    {
+        long count = 0;
+        for (LevelEntry entry : this.levels)
+        {
+            count += entry.pending.cardinality();
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the first pending tile of a level at or after a specified position. Call with a position of zero to find
+     * the level's first pending tile, and with one more than the previous position to find the next. Use {@link
+     * #getRow(int, int)} and {@link #getColumn(int, int)} to convert the position to the tile's row and column.
+     *
+     * @param levelNumber the level number.
+     * @param position    the position at which to start searching.
+     *
+     * @return the position of the next pending tile, or -1 if there are no more pending tiles in the level.
+     */
+    public synchronized int nextPending(int levelNumber, int position)
+    {
+        LevelEntry entry = this.getLevelEntry(levelNumber);
+
+        return entry != null ? entry.pending.nextSetBit(position) : -1;
+    }
+
+    /**
+     * Returns the row of the tile at a position in a level.
+     *
+     * @param levelNumber the level number.
+     * @param position    the tile's position, as returned by {@link #nextPending(int, int)}.
+     *
+     * @return the tile's row.
+     *
+     * @throws IllegalArgumentException if the level is not in the manifest.
+     */
+    public int getRow(int levelNumber, int position)
+    {
+        LevelEntry entry = this.getLevelEntryChecked(levelNumber);
+
+        return entry.minRow + position / entry.numColumns;
+    }
+
+    /**
+     * Returns the column of the tile at a position in a level.
+     *
+     * @param levelNumber the level number.
+     * @param position    the tile's position, as returned by {@link #nextPending(int, int)}.
+     *
+     * @return the tile's column.
+     *
+     * @throws IllegalArgumentException if the level is not in the manifest.
+     */
+    public int getColumn(int levelNumber, int position)
+    {
+        LevelEntry entry = this.getLevelEntryChecked(levelNumber);
+
+        return entry.minColumn + position % entry.numColumns;
+    }
+
+    protected LevelEntry getLevelEntry(int levelNumber)
+    {
+        for (LevelEntry entry : this.levels)
+        {
+            if (entry.levelNumber == levelNumber)
+                return entry;
+        }
+
+        return null;
+    }
+
+    protected LevelEntry getLevelEntryChecked(int levelNumber)
+    {
+        LevelEntry entry = this.getLevelEntry(levelNumber);
+        if (entry == null)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", levelNumber);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Writes the manifest to a file. The manifest is first written to a temporary file in the same directory, which
+     * then replaces the specified file, so a failure while writing leaves any previous manifest intact.
+     *
+     * @param file the file to write to.
+     *
+     * @throws IOException              if the manifest cannot be written.
+     * @throws IllegalArgumentException if the file is null.
+     */
+    public synchronized void write(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException(Logging.getMessage("generic.CannotCreateFile", parent));
+
+        File tmpFile = getTempFile(file);
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(this.key);
+            out.writeInt(this.levels.size());
+
+            for (LevelEntry entry : this.levels)
+            {
+                out.writeInt(entry.levelNumber);
+                out.writeInt(entry.minRow);
+                out.writeInt(entry.minColumn);
+                out.writeInt(entry.numRows);
+                out.writeInt(entry.numColumns);
+
+                long[] words = toWords(entry.pending, entry.numRows * entry.numColumns);
+                for (long word : words)
+                {
+                    out.writeLong(word);
+                }
+            }
+
+            out.flush();
+            fos.getFD().sync();
+        }
+        finally
+        {
+            fos.close();
+        }
+
+        // File.renameTo does not replace an existing file on all platforms.
+        if (file.exists() && !file.delete())
+            throw new IOException(Logging.getMessage("generic.CannotDeleteFile", file));
+
+        if (!tmpFile.renameTo(file))
+            throw new IOException(Logging.getMessage("generic.CannotMoveFile", tmpFile, file));
+    }
+
+    /**
+     * Indicates whether a manifest has been written to a file. This is also true if the application stopped while
+     * {@link #write(File)} was replacing the file, after the new manifest was complete.
+     *
+     * @param file the file.
+     *
+     * @return true if {@link #read(File)} can find a manifest for the file, otherwise false.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     */
+    public static boolean exists(File file)
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return file.exists() || getTempFile(file).exists();
+    }
+
+    /**
+     * Deletes a manifest file and any temporary file left by {@link #write(File)}.
+     *
+     * @param file the manifest file.
+     *
+     * @throws IllegalArgumentException if the file is null.
+     */
+    public static void delete(File file)
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        file.delete();
+        getTempFile(file).delete();
+    }
+
+    protected static File getTempFile(File file)
+    {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Reads a manifest previously written by {@link #write(File)}. If the file is missing because the application
+     * stopped after <code>write</code> deleted it but before the new manifest took its place, the new manifest is
+     * moved into place and read.
+     *
+     * @param file the file to read.
+     *
+     * @return the manifest read.
+     *
+     * @throws IOException              if the file cannot be read or does not contain a manifest.
+     * @throws IllegalArgumentException if the file is null.
+     */
+    public static BulkRetrievalManifest read(File file) throws IOException
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        // The temporary file is complete once write has deleted the previous manifest, which it does after syncing.
+        File tmpFile = getTempFile(file);
+        if (!file.exists() && tmpFile.exists() && !tmpFile.renameTo(file))
+            throw new IOException(Logging.getMessage("generic.CannotMoveFile", tmpFile, file));
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(Logging.getMessage("generic.UnknownFileFormat", file));
+
+            BulkRetrievalManifest manifest = new BulkRetrievalManifest(in.readUTF());
+            int numLevels = in.readInt();
+            for (int i = 0; i < numLevels; i++)
+            {
+                int levelNumber = in.readInt();
+                int minRow = in.readInt();
+                int minColumn = in.readInt();
+                int numRows = in.readInt();
+                int numColumns = in.readInt();
+
+                if (numRows < 1 || numColumns < 1 || (long) numRows * numColumns > Integer.MAX_VALUE)
+                    throw new IOException(Logging.getMessage("generic.UnknownFileFormat", file));
+
+                manifest.addLevel(levelNumber, minRow, minColumn, numRows, numColumns);
+
+                BitSet pending = manifest.levels.get(i).pending;
+                int numWords = (numRows * numColumns + 63) / 64;
+                for (int w = 0; w < numWords; w++)
+                {
+                    long word = in.readLong();
+                    while (word != 0)
+                    {
+                        int bit = Long.numberOfTrailingZeros(word);
+                        pending.set(w * 64 + bit);
+                        word &= word - 1;
+                    }
+                }
+            }
+
+            return manifest;
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException(Logging.getMessage("generic.UnknownFileFormat", file));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    protected static long[] toWords(BitSet bits, int numBits)
+    {
+        long[] words = new long[(numBits + 63) / 64];
+        for (int i = bits.nextSetBit(0); i >= 0 && i < numBits; i = bits.nextSetBit(i + 1))
+        {
+            words[i / 64] |= 1L << (i % 64);
+        }
+
+        return words;
+    }
+}
@@ -5,8 +5,9 @@
  */
 package gov.nasa.worldwind.retrieve;
 
-import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.*;
 
+import java.io.InputStream;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.logging.Level;
@@ -45,8 +46,13 @@ public class HTTPRetriever extends URLRetriever
         }
 
         HttpURLConnection htpc = (HttpURLConnection) connection;
+        long requestTime = System.currentTimeMillis();
         this.responseCode = htpc.getResponseCode();
         this.responseMessage = htpc.getResponseMessage();
+
+        HostStatistics stats = this.getHostStatistics();
+        if (stats != null)
+            stats.addLatency(System.currentTimeMillis() - requestTime);
         String contentType = connection.getContentType();
 
         Logging.logger().log(Level.FINE, "HTTPRetriever.ResponseInfo", new Object[] {this.responseCode,
@@ -56,6 +62,38 @@ public class HTTPRetriever extends URLRetriever
         if (this.responseCode == HttpURLConnection.HTTP_OK)
             return super.doRead(connection);
 
+        this.discardErrorStream(htpc);
+
         return null;
     }
+
+    /**
+     * Reads and discards the body of an error response, so that the JDK can return the connection to its keep-alive
+     * cache rather than closing it.
+     *
+     * @param connection the connection that returned an error response.
+     */
+    protected void discardErrorStream(HttpURLConnection connection)
+    {
+        InputStream stream = connection.getErrorStream();
+        if (stream == null)
+            return;
+
+        try
+        {
+            byte[] buffer = new byte[4096];
+            while (stream.read(buffer) >= 0)
+            {
+                // Discard the error content.
+            }
+        }
+        catch (java.io.IOException e)
+        {
+            Logging.logger().log(Level.FINE, e.getMessage(), e);
+        }
+        finally
+        {
+            WWIO.closeStream(stream, connection.getURL().toString());
+        }
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.retrieve;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Accumulates retrieval statistics for a single host: the number of retrievals in progress, the number of requests
+ * and failures, the bytes transferred and the time spent transferring them, and a smoothed estimate of the host's
+ * response latency. The latency estimate uses the same smoothing as TCP's round-trip time estimator, and is used to
+ * compute adaptive connect and read timeouts for the host. As with TCP's retransmission timer, each timeout doubles the
+ * adaptive timeout until a response is received again, so that a host that slows down is not locked out by a timeout
+ * computed from its earlier, faster responses.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class HostStatistics
+{
+    /** The number of latency samples required before adaptive timeouts replace the configured timeouts. */
+    protected static final int MIN_LATENCY_SAMPLES = 8;
+    /** The smallest adaptive timeout, in milliseconds. */
+    protected static final int MIN_ADAPTIVE_TIMEOUT = 1000;
+    /** The factor applied to the latency bound when computing an adaptive timeout. */
+    protected static final double TIMEOUT_FACTOR = 2;
+    /** The limit of an adaptive timeout, as a multiple of the configured timeout. */
+    protected static final double MAX_TIMEOUT_FACTOR = 2;
+    /** The limit of the backoff factor, well beyond the factor needed to reach any timeout limit. */
+    protected static final int MAX_BACKOFF = 1 << 16;
+
+    protected final String host;
+    protected final AtomicInteger activeCount = new AtomicInteger();
+    protected final AtomicLong requestCount = new AtomicLong();
+    protected final AtomicLong failureCount = new AtomicLong();
+    protected final AtomicLong bytesRead = new AtomicLong();
+    protected final AtomicLong transferTime = new AtomicLong();
+    // The latency estimator. Guarded by this.
+    protected int numLatencySamples;
+    protected double smoothedLatency;
+    protected double latencyVariation;
+    protected int backoff = 1; // doubled by each timeout, reset by each response
+
+    public HostStatistics(String host)
+    {
+        this.host = host;
+    }
+
+    /**
+     * Returns the name of the host these statistics describe.
+     *
+     * @return the host name.
+     */
+    public String getHost()
+    {
+        return this.host;
+    }
+
+    /**
+     * Returns the number of retrievals from the host currently in progress.
+     *
+     * @return the number of active retrievals.
+     */
+    public int getActiveCount()
+    {
+        return this.activeCount.get();
+    }
+
+    /**
+     * Returns the number of retrievals attempted from the host.
+     *
+     * @return the number of requests.
+     */
+    public long getRequestCount()
+    {
+        return this.requestCount.get();
+    }
+
+    /**
+     * Returns the number of retrievals from the host that failed.
+     *
+     * @return the number of failed requests.
+     */
+    public long getFailureCount()
+    {
+        return this.failureCount.get();
+    }
+
+    /**
+     * Returns the number of bytes retrieved from the host.
+     *
+     * @return the number of bytes read.
+     */
+    public long getBytesRead()
+    {
+        return this.bytesRead.get();
+    }
+
+    /**
+     * Returns the host's average throughput: the bytes retrieved divided by the time spent retrieving them.
+     *
+     * @return the throughput in bytes per second, or 0 if nothing has been retrieved.
+     */
+    public double getThroughput()
+    {
+        long time = this.transferTime.get();
+        return time > 0 ? this.bytesRead.get() * 1000d / time : 0;
+    }
+
+    /**
+     * Returns the smoothed time between sending a request to the host and receiving its response.
+     *
+     * @return the smoothed latency in milliseconds, or 0 if no latency has been observed.
+     */
+    public synchronized double getLatency()
+    {
+        return this.smoothedLatency;
+    }
+
+    /**
+     * Returns the smoothed mean deviation of the host's latency.
+     *
+     * @return the latency variation in milliseconds.
+     */
+    public synchronized double getLatencyVariation()
+    {
+        return this.latencyVariation;
+    }
+
+    /**
+     * Adds an observed response latency to the host's latency estimate.
+     *
+     * @param latency the time between sending a request and receiving the response headers, in milliseconds.
+     */
+    public synchronized void addLatency(long latency)
+    {
+        this.backoff = 1;
+
+        if (this.numLatencySamples++ == 0)
+        {
+            this.smoothedLatency = latency;
+            this.latencyVariation = latency / 2d;
+        }
+        else
+        {
+            this.latencyVariation = 0.75 * this.latencyVariation + 0.25 * Math.abs(this.smoothedLatency - latency);
+            this.smoothedLatency = 0.875 * this.smoothedLatency + 0.125 * latency;
+        }
+    }
+
+    /**
+     * Records that a retrieval from the host timed out. Each timeout doubles the adaptive timeout, up to its limit,
+     * until the host's next response is observed by {@link #addLatency(long)}.
+     */
+    public synchronized void addTimeout()
+    {
+        this.backoff = Math.min(2 * this.backoff, MAX_BACKOFF);
+    }
+
+    /**
+     * Records the result of a retrieval from the host.
+     *
+     * @param numBytes the number of bytes retrieved.
+     * @param time     the time the retrieval took, in milliseconds.
+     * @param success  true if the retrieval succeeded, false if it failed.
+     */
+    public void addTransfer(long numBytes, long time, boolean success)
+    {
+        this.requestCount.incrementAndGet();
+        if (!success)
+            this.failureCount.incrementAndGet();
+
+        this.bytesRead.addAndGet(numBytes);
+        this.transferTime.addAndGet(time);
+    }
+
+    /**
+     * Computes a timeout for the host from its observed latency. Until enough latency has been observed, the configured
+     * timeout is returned. Otherwise the timeout is a multiple of the latency bound used by TCP's retransmission timer,
+     * the smoothed latency plus four times its variation, doubled for each timeout since the host last responded, and
+     * limited to between one second and twice the configured timeout.
+     *
+     * @param configuredTimeout the configured timeout, in milliseconds.
+     *
+     * @return the adaptive timeout, in milliseconds.
+     */
+    public synchronized int computeTimeout(int configuredTimeout)
+    {
+        if (this.numLatencySamples < MIN_LATENCY_SAMPLES || configuredTimeout <= 0)
+            return configuredTimeout;
+
+        double timeout = TIMEOUT_FACTOR * (this.smoothedLatency + 4 * this.latencyVariation);
+        timeout = Math.max(timeout, MIN_ADAPTIVE_TIMEOUT) * this.backoff;
+        timeout = Math.min(timeout, MAX_TIMEOUT_FACTOR * configuredTimeout);
+
+        return (int) Math.max(timeout, MIN_ADAPTIVE_TIMEOUT);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: active %d, requests %d, failures %d, %.1f KB/s, latency %.0f ms", this.host,
+            this.getActiveCount(), this.getRequestCount(), this.getFailureCount(), this.getThroughput() / 1024,
+            this.getLatency());
+    }
+}
@@ -43,6 +43,11 @@ public class LocalRasterServerRetriever extends WWObjectImpl implements Retrieve
         this.postProcessor = postProcessor;
     }
 
+    public RetrievalPostProcessor getPostProcessor()
+    {
+        return this.postProcessor;
+    }
+
     public RasterServer getServer()
     {
         return this.server;
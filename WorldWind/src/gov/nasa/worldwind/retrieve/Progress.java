@@ -84,5 +84,27 @@ public class Progress
     {
         this.currentCount = count;
     }
+
+    /**
+     * Returns the number of bytes retrieved per second between the start time and the last update time.
+     *
+     * @return the byte throughput, or 0 if no time has elapsed.
+     */
+    public double getSizeRate()
+    {
+        long elapsed = this.lastUpdateTime - this.startTime;
+        return elapsed > 0 ? this.currentSize * 1000d / elapsed : 0;
+    }
+
+    /**
+     * Returns the number of items retrieved per second between the start time and the last update time.
+     *
+     * @return the item throughput, or 0 if no time has elapsed.
+     */
+    public double getCountRate()
+    {
+        long elapsed = this.lastUpdateTime - this.startTime;
+        return elapsed > 0 ? this.currentCount * 1000d / elapsed : 0;
+    }
 }
 
@@ -0,0 +1,880 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.cache.FileStore;
+import gov.nasa.worldwind.event.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A bulk retrieval thread for data organized in the tiles of a {@link LevelSet}. The thread first computes a {@link
+ * BulkRetrievalManifest} of the tiles missing from the file store in each level up to the target level, and then
+ * retrieves the tiles the manifest lists. Completions are recorded in a {@link BulkRetrievalJournal} kept in the file
+ * store, so a retrieval of the same sector and resolution that's interrupted or crashes resumes with the tiles that
+ * remain rather than rediscovering them.
+ * <p/>
+ * At most {@link #getActiveLimit()} tiles are requested at once, and at most {@link #getHostLimit()} of those from any
+ * one host. The progress counts the exact number of tiles and bytes retrieved, and listeners receive each tile's size
+ * and the retrieval's progress in their {@link BulkRetrievalEvent}.
+ * <p/>
+ * Subclasses create the tiles, determine whether a tile is in the file store and request a tile's retrieval, typically
+ * by passing a retriever to {@link #runRetriever(RetrievalService, Retriever, Tile)}. The post-processor of a
+ * retrieval must call {@link #tileRetrieved(Tile, Retriever, boolean)}.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public abstract class TiledBulkRetrievalThread extends BulkRetrievalThread
+{
+    protected static final int DEFAULT_ACTIVE_LIMIT = 8;
+    protected static final int DEFAULT_HOST_LIMIT = 4;
+    protected static final int DEFAULT_CHECKPOINT_INTERVAL = 64;
+    protected static final long DEFAULT_REQUEST_TIMEOUT = 60000;
+    protected static final int MAX_PASSES = 3;
+    protected static final int DEFAULT_ESTIMATE_SAMPLES = 216;
+
+    protected static class ActiveRequest
+    {
+        protected final Tile tile;
+        protected final String host;
+        protected final long startTime;
+
+        public ActiveRequest(Tile tile, String host, long startTime)
+        {
+            this.tile = tile;
+            this.host = host;
+            this.startTime = startTime;
+        }
+    }
+
+    protected int activeLimit;
+    protected int hostLimit;
+    protected int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    protected long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+    protected BulkRetrievalJournal journal;
+    protected BulkRetrievalManifest manifest;
+    protected boolean resumed;
+    protected Map<String, ActiveRequest> activeRequests = new HashMap<String, ActiveRequest>();
+    protected Map<String, Integer> hostCounts = new HashMap<String, Integer>();
+
+    /**
+     * Constructs a thread to retrieve the tiles of a retrievable. The active and host limits are initialized from the
+     * configuration values {@link AVKey#BULK_RETRIEVAL_ACTIVE_LIMIT} and {@link AVKey#BULK_RETRIEVAL_HOST_LIMIT}.
+     * <p/>
+     * The thread returned is not started during construction, the caller must start the thread.
+     *
+     * @param retrievable the retrievable for which to retrieve data.
+     * @param sector      the sector to retrieve data for. This value is final.
+     * @param resolution  the target resolution, provided in radians of latitude per texel. This value is final.
+     * @param fileStore   the file store in which to place the retrieved data.
+     * @param listener    an optional retrieval listener. May be null.
+     *
+     * @throws IllegalArgumentException if either the retrievable, the sector or file store are null.
+     */
+    public TiledBulkRetrievalThread(BulkRetrievable retrievable, Sector sector, double resolution,
+        FileStore fileStore, BulkRetrievalListener listener)
+    {
+        // Arguments checked in parent constructor
+        super(retrievable, sector, resolution, fileStore, listener);
+
+        this.activeLimit = Configuration.getIntegerValue(AVKey.BULK_RETRIEVAL_ACTIVE_LIMIT, DEFAULT_ACTIVE_LIMIT);
+        this.hostLimit = Configuration.getIntegerValue(AVKey.BULK_RETRIEVAL_HOST_LIMIT, DEFAULT_HOST_LIMIT);
+    }
+
+    /**
+     * Returns the level set whose tiles are retrieved.
+     *
+     * @return the level set.
+     */
+    protected abstract LevelSet getLevels();
+
+    /**
+     * Returns the number of the highest resolution level to retrieve.
+     *
+     * @return the target level number.
+     */
+    protected abstract int getTargetLevelNumber();
+
+    /**
+     * Creates a tile of the type the retrievable uses.
+     *
+     * @param sector the tile's sector.
+     * @param level  the tile's level.
+     * @param row    the tile's row.
+     * @param column the tile's column.
+     *
+     * @return the new tile.
+     */
+    protected abstract Tile createTile(Sector sector, Level level, int row, int column);
+
+    /**
+     * Indicates whether a tile is in the file store and has not expired.
+     *
+     * @param tile the tile.
+     *
+     * @return true if the tile does not need to be retrieved, otherwise false.
+     */
+    protected abstract boolean isTileLocal(Tile tile);
+
+    /**
+     * Requests a tile's retrieval. The retrieval's post-processor must call {@link #tileRetrieved(Tile, Retriever,
+     * boolean)} when it completes.
+     *
+     * @param tile the tile to retrieve.
+     */
+    protected abstract void retrieveTile(Tile tile);
+
+    /**
+     * Returns an estimate of the size of a tile, used to estimate the size of the tiles not yet retrieved.
+     *
+     * @return the estimated tile size, in bytes.
+     */
+    protected abstract long estimateAverageTileSize();
+
+    /**
+     * Returns the maximum number of tiles requested at once.
+     *
+     * @return the active limit.
+     */
+    public int getActiveLimit()
+    {
+        return this.activeLimit;
+    }
+
+    /**
+     * Specifies the maximum number of tiles requested at once. Must be called before the thread is started.
+     *
+     * @param limit the active limit.
+     *
+     * @throws IllegalArgumentException if the limit is less than one.
+     */
+    public void setActiveLimit(int limit)
+    {
+        if (limit < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", limit);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.activeLimit = limit;
+    }
+
+    /**
+     * Returns the maximum number of tiles requested at once from a single host.
+     *
+     * @return the host limit, or 0 if the number of requests per host is limited only by the active limit.
+     */
+    public int getHostLimit()
+    {
+        return this.hostLimit;
+    }
+
+    /**
+     * Specifies the maximum number of tiles requested at once from a single host. Must be called before the thread is
+     * started.
+     *
+     * @param limit the host limit, or 0 to limit the number of requests per host only by the active limit.
+     *
+     * @throws IllegalArgumentException if the limit is negative.
+     */
+    public void setHostLimit(int limit)
+    {
+        if (limit < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", limit);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.hostLimit = limit;
+    }
+
+    /**
+     * Returns the minimum number of tile completions between checkpoints of the manifest.
+     *
+     * @return the checkpoint interval.
+     */
+    public int getCheckpointInterval()
+    {
+        return this.checkpointInterval;
+    }
+
+    /**
+     * Specifies the minimum number of tile completions between checkpoints of the manifest. A checkpoint also waits
+     * until the journal has grown to a tenth of the manifest's size, so large manifests are rewritten less often.
+     * Must be called before the thread is started.
+     *
+     * @param interval the checkpoint interval.
+     *
+     * @throws IllegalArgumentException if the interval is less than one.
+     */
+    public void setCheckpointInterval(int interval)
+    {
+        if (interval < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", interval);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Returns the time after which a tile request that has not completed is considered lost.
+     *
+     * @return the request timeout, in milliseconds.
+     */
+    public long getRequestTimeout()
+    {
+        return this.requestTimeout;
+    }
+
+    /**
+     * Specifies the time after which a tile request that has not completed is considered lost. A request is lost when
+     * the retrieval service drops it or fails it without running its post-processor. When a lost request's tile is in
+     * the file store it's counted as retrieved, otherwise it's requested again by a later pass over the manifest.
+     *
+     * @param timeout the request timeout, in milliseconds.
+     *
+     * @throws IllegalArgumentException if the timeout is less than one.
+     */
+    public void setRequestTimeout(long timeout)
+    {
+        if (timeout < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", timeout);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.requestTimeout = timeout;
+    }
+
+    public void run()
+    {
+        try
+        {
+            this.openManifest();
+
+            // Init progress with the exact missing tile count. Throughput is measured from the start of retrieval.
+            this.progress.setStartTime(System.currentTimeMillis());
+            this.progress.setTotalCount(this.manifest.getPendingCount());
+            this.progress.setTotalSize(this.progress.getTotalCount() * this.estimateAverageTileSize());
+
+            this.retrievePendingTiles();
+
+            // The manifest is no longer needed once every tile has been retrieved. Tiles that are absent from the
+            // server remain, so a later retrieval of the same sector and resolution attempts them again.
+            synchronized (this)
+            {
+                if (this.manifest.getPendingCount() == 0)
+                {
+                    this.journal.delete();
+                    this.journal = null;
+                }
+            }
+
+            // Set progress to 100%
+            this.progress.setTotalCount(this.progress.getCurrentCount());
+            this.progress.setTotalSize(this.progress.getCurrentSize());
+        }
+        catch (InterruptedException e)
+        {
+            String message = Logging.getMessage("generic.BulkRetrievalInterrupted", this.retrievable.getName());
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("generic.ExceptionDuringBulkRetrieval", this.retrievable.getName());
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            throw new RuntimeException(message, e);
+        }
+        finally
+        {
+            this.closeJournal();
+        }
+    }
+
+    /**
+     * Returns an estimate of the size in bytes of the missing data for the thread's sector and resolution. When a
+     * manifest exists for the sector and resolution, the number of missing tiles is read from it. Otherwise the number
+     * is estimated by {@link #estimateMissingTileCount(int)}, which examines a bounded number of tiles so the estimate
+     * is quick enough to compute each time a user changes the sector. The size is the number of missing tiles times
+     * the estimated average tile size.
+     *
+     * @return the estimated size in bytes of the missing data.
+     */
+    public long getEstimatedMissingDataSize()
+    {
+        try
+        {
+            String key = this.getManifestKey();
+            BulkRetrievalManifest manifest = new BulkRetrievalJournal(this.getManifestFile(key),
+                this.checkpointInterval).read(key);
+            long numMissing = manifest != null ? manifest.getPendingCount()
+                : this.estimateMissingTileCount(DEFAULT_ESTIMATE_SAMPLES);
+
+            return numMissing * this.estimateAverageTileSize();
+        }
+        catch (InterruptedException e)
+        {
+            return 0;
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("generic.ExceptionDuringDataSizeEstimate",
+                this.retrievable.getName());
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            throw new RuntimeException(message, e);
+        }
+    }
+
+    /**
+     * Estimates the number of tiles missing from the file store in each non-empty level up to the target level. The
+     * number of tiles in each level is computed from the level's tile delta. The fraction missing is measured on at
+     * most a specified number of randomly chosen tiles of the target level, which holds most of the tiles, and applied
+     * to the tiles of every level.
+     *
+     * @param numSamples the maximum number of tiles to examine.
+     *
+     * @return the estimated number of missing tiles.
+     *
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    protected long estimateMissingTileCount(int numSamples) throws InterruptedException
+    {
+        LevelSet levels = this.getLevels();
+        long numTiles = 0;
+        int[] targetRange = null;
+
+        for (int levelNumber = 0; levelNumber <= this.getTargetLevelNumber(); levelNumber++)
+        {
+            if (levels.isLevelEmpty(levelNumber))
+                continue;
+
+            int[] range = this.computeTileRange(levels.getLevel(levelNumber));
+            numTiles += (long) range[2] * range[3];
+            targetRange = range;
+        }
+
+        if (targetRange == null)
+            return 0;
+
+        Level level = levels.getLevel(this.getTargetLevelNumber());
+        long numLevelTiles = (long) targetRange[2] * targetRange[3];
+        if (numLevelTiles <= numSamples)
+        {
+            // Few enough tiles to examine each of them.
+            int numMissing = 0;
+            for (int row = 0; row < targetRange[2]; row++)
+            {
+                for (int col = 0; col < targetRange[3]; col++)
+                {
+                    if (Thread.interrupted())
+                        throw new InterruptedException();
+
+                    if (!this.isTileLocal(this.createTile(level, targetRange[0] + row, targetRange[1] + col)))
+                        numMissing++;
+                }
+            }
+
+            return Math.round((double) numTiles * numMissing / numLevelTiles);
+        }
+
+        Random random = new Random();
+        int numMissing = 0;
+        for (int i = 0; i < numSamples; i++)
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            int row = targetRange[0] + random.nextInt(targetRange[2]);
+            int col = targetRange[1] + random.nextInt(targetRange[3]);
+            if (!this.isTileLocal(this.createTile(level, row, col)))
+                numMissing++;
+        }
+
+        return Math.round((double) numTiles * numMissing / numSamples);
+    }
+
+    /**
+     * Computes the range of a level's tiles that intersect the thread's sector.
+     *
+     * @param level the level.
+     *
+     * @return the first row, the first column, the number of rows and the number of columns of the range, in that
+     *         order.
+     */
+    protected int[] computeTileRange(Level level)
+    {
+        LatLon origin = this.getLevels().getTileOrigin();
+        LatLon delta = level.getTileDelta();
+        int minRow = Tile.computeRow(delta.getLatitude(), this.sector.getMinLatitude(), origin.getLatitude());
+        int maxRow = Tile.computeRow(delta.getLatitude(), this.sector.getMaxLatitude(), origin.getLatitude());
+        int minCol = Tile.computeColumn(delta.getLongitude(), this.sector.getMinLongitude(), origin.getLongitude());
+        int maxCol = Tile.computeColumn(delta.getLongitude(), this.sector.getMaxLongitude(), origin.getLongitude());
+
+        return new int[] {minRow, minCol, maxRow - minRow + 1, maxCol - minCol + 1};
+    }
+
+    /**
+     * Returns the key identifying the thread's manifest. The key names the level set, the sector and the target
+     * level.
+     *
+     * @return the manifest key.
+     */
+    protected String getManifestKey()
+    {
+        StringBuilder sb = new StringBuilder(this.getLevels().getFirstLevel().getCacheName());
+        sb.append('|').append(this.sector.getMinLatitude().degrees);
+        sb.append('|').append(this.sector.getMaxLatitude().degrees);
+        sb.append('|').append(this.sector.getMinLongitude().degrees);
+        sb.append('|').append(this.sector.getMaxLongitude().degrees);
+        sb.append('|').append(this.getTargetLevelNumber());
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the file holding the manifest with a specified key. The file is in the level set's directory in the
+     * file store's write location.
+     *
+     * @param key the manifest key.
+     *
+     * @return the manifest file.
+     */
+    protected File getManifestFile(String key)
+    {
+        String name = "BulkRetrieval_" + Integer.toHexString(key.hashCode()) + ".manifest";
+
+        return new File(this.fileStore.getWriteLocation(),
+            this.getLevels().getFirstLevel().getCacheName() + File.separator + name);
+    }
+
+    protected void openManifest() throws IOException, InterruptedException
+    {
+        String key = this.getManifestKey();
+        this.journal = new BulkRetrievalJournal(this.getManifestFile(key), this.checkpointInterval);
+
+        this.manifest = this.journal.open(key);
+        this.resumed = this.manifest != null;
+
+        if (this.manifest == null)
+        {
+            this.manifest = this.createManifest(key);
+            this.journal.create(this.manifest);
+        }
+    }
+
+    protected void closeJournal()
+    {
+        BulkRetrievalJournal journal;
+
+        synchronized (this)
+        {
+            journal = this.journal;
+            if (journal == null)
+                return;
+
+            this.journal = null;
+        }
+
+        try
+        {
+            journal.close();
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", journal.getManifestFile());
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+        }
+    }
+
+    /**
+     * Computes a manifest of the tiles missing from the file store in each non-empty level up to the target level.
+     *
+     * @param key the manifest key.
+     *
+     * @return the new manifest.
+     *
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    protected BulkRetrievalManifest createManifest(String key) throws InterruptedException
+    {
+        BulkRetrievalManifest manifest = new BulkRetrievalManifest(key);
+        LevelSet levels = this.getLevels();
+
+        for (int levelNumber = 0; levelNumber <= this.getTargetLevelNumber(); levelNumber++)
+        {
+            if (levels.isLevelEmpty(levelNumber))
+                continue;
+
+            Level level = levels.getLevel(levelNumber);
+            int[] range = this.computeTileRange(level);
+            int minRow = range[0];
+            int minCol = range[1];
+            int maxRow = minRow + range[2] - 1;
+            int maxCol = minCol + range[3] - 1;
+
+            manifest.addLevel(levelNumber, minRow, minCol, range[2], range[3]);
+
+            for (int row = minRow; row <= maxRow; row++)
+            {
+                for (int col = minCol; col <= maxCol; col++)
+                {
+                    if (Thread.interrupted())
+                        throw new InterruptedException();
+
+                    if (!this.isTileLocal(this.createTile(level, row, col)))
+                        manifest.setPending(levelNumber, row, col, true);
+                }
+            }
+        }
+
+        return manifest;
+    }
+
+    protected Tile createTile(Level level, int row, int column)
+    {
+        TileKey key = new TileKey(level.getLevelNumber(), row, column, level.getCacheName());
+
+        return this.createTile(this.getLevels().computeSectorForKey(key), level, row, column);
+    }
+
+    /**
+     * Requests the manifest's pending tiles, lowest resolution level first. Tiles whose retrieval fails remain pending
+     * and are requested again in a later pass, up to {@link #MAX_PASSES} passes. Tiles the level set has marked
+     * absent are skipped.
+     *
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    protected void retrievePendingTiles() throws InterruptedException
+    {
+        for (int pass = 0; pass < MAX_PASSES && this.manifest.getPendingCount() > 0; pass++)
+        {
+            int numRequested = 0;
+
+            for (int i = 0; i < this.manifest.getNumLevels(); i++)
+            {
+                int levelNumber = this.manifest.getLevelNumber(i);
+                Level level = this.getLevels().getLevel(levelNumber);
+
+                int position = this.manifest.nextPending(levelNumber, 0);
+                while (position >= 0)
+                {
+                    Tile tile = this.createTile(level, this.manifest.getRow(levelNumber, position),
+                        this.manifest.getColumn(levelNumber, position));
+
+                    if (this.requestTile(tile))
+                        numRequested++;
+
+                    position = this.manifest.nextPending(levelNumber, position + 1);
+                }
+            }
+
+            this.waitForActiveRequests();
+
+            if (numRequested == 0)
+                break;
+        }
+    }
+
+    /**
+     * Requests a tile once the active and host limits allow it.
+     *
+     * @param tile the tile to request.
+     *
+     * @return true if the tile was requested, false if it was skipped.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    protected boolean requestTile(Tile tile) throws InterruptedException
+    {
+        if (this.getLevels().isResourceAbsent(tile))
+            return false;
+
+        // Tiles of a resumed manifest may have been retrieved since the manifest was computed, for example by the
+        // retrievable while displaying them.
+        if (this.resumed && this.isTileLocal(tile))
+        {
+            this.tileCompleted(tile, 0, false);
+            return false;
+        }
+
+        String host = this.getHost(tile);
+
+        // Timed out requests are ended outside the monitor, since ending them examines the file store and notifies
+        // listeners.
+        while (true)
+        {
+            this.updateActiveRequests();
+
+            synchronized (this)
+            {
+                if (this.hasCapacity(host))
+                {
+                    this.activeRequests.put(tile.getPath(), new ActiveRequest(tile, host, System.currentTimeMillis()));
+                    this.hostCounts.put(host, this.getHostCount(host) + 1);
+                    break;
+                }
+
+                this.wait(RETRIEVAL_SERVICE_POLL_DELAY);
+            }
+        }
+
+        this.retrieveTile(tile);
+        return true;
+    }
+
+    /**
+     * Submits a tile's retriever to a retrieval service. When the service is a {@link BasicRetrievalService} the
+     * retriever is submitted as a bulk retrieval, which is neither cancelled as stale nor coalesced without running
+     * its post-processor. A null retriever ends the tile's request as failed, so the tile remains pending.
+     *
+     * @param service   the retrieval service.
+     * @param retriever the tile's retriever. May be null.
+     * @param tile      the tile to retrieve.
+     */
+    protected void runRetriever(RetrievalService service, Retriever retriever, Tile tile)
+    {
+        if (retriever == null)
+        {
+            this.tileRetrieved(tile, null, false);
+            return;
+        }
+
+        if (service instanceof BasicRetrievalService)
+            ((BasicRetrievalService) service).runBulkRetriever(retriever, tile.getPriority());
+        else
+            service.runRetriever(retriever, tile.getPriority());
+    }
+
+    protected void waitForActiveRequests() throws InterruptedException
+    {
+        while (true)
+        {
+            this.updateActiveRequests();
+
+            synchronized (this)
+            {
+                if (this.activeRequests.isEmpty())
+                    return;
+
+                this.wait(RETRIEVAL_SERVICE_POLL_DELAY);
+            }
+        }
+    }
+
+    protected synchronized boolean hasCapacity(String host)
+    {
+        if (this.activeRequests.size() >= this.activeLimit)
+            return false;
+
+        if (this.hostLimit > 0 && this.getHostCount(host) >= this.hostLimit)
+            return false;
+
+        // Tile retrieval requests are dropped rather than queued when the retrieval service is not available.
+        return WorldWind.getRetrievalService().isAvailable();
+    }
+
+    protected int getHostCount(String host)
+    {
+        Integer count = this.hostCounts.get(host);
+
+        return count != null ? count : 0;
+    }
+
+    protected ActiveRequest removeActiveRequest(Tile tile)
+    {
+        ActiveRequest request = this.activeRequests.remove(tile.getPath());
+        if (request != null)
+        {
+            int count = this.getHostCount(request.host) - 1;
+            if (count > 0)
+                this.hostCounts.put(request.host, count);
+            else
+                this.hostCounts.remove(request.host);
+        }
+
+        return request;
+    }
+
+    /**
+     * Ends the requests that have not completed within the request timeout. A tile whose request timed out is counted
+     * as retrieved if it's in the file store, otherwise it remains pending.
+     */
+    protected void updateActiveRequests()
+    {
+        long now = System.currentTimeMillis();
+        List<ActiveRequest> expired = new ArrayList<ActiveRequest>();
+
+        synchronized (this)
+        {
+            for (ActiveRequest request : new ArrayList<ActiveRequest>(this.activeRequests.values()))
+            {
+                if (now - request.startTime < this.requestTimeout)
+                    continue;
+
+                this.removeActiveRequest(request.tile);
+                expired.add(request);
+            }
+        }
+
+        for (ActiveRequest request : expired)
+        {
+            if (this.isTileLocal(request.tile))
+                this.tileCompleted(request.tile, this.getLocalSize(request.tile), true);
+            else
+                this.callRetrievalListeners(request.tile, false, 0);
+        }
+    }
+
+    /**
+     * Called by a tile retrieval's post-processor when the retrieval completes.
+     *
+     * @param tile      the tile retrieved.
+     * @param retriever the tile's retriever, or null if no retriever could be created for the tile.
+     * @param success   true if the tile was retrieved and placed in the file store, otherwise false.
+     */
+    protected void tileRetrieved(Tile tile, Retriever retriever, boolean success)
+    {
+        ByteBuffer buffer = retriever != null ? retriever.getBuffer() : null;
+        long numBytes = success && buffer != null ? buffer.limit() : 0;
+
+        // The tile is recorded before its request ends, since the thread closes the journal once no requests remain.
+        if (success)
+            this.tileCompleted(tile, numBytes, true);
+        else
+            this.callRetrievalListeners(tile, false, 0);
+
+        synchronized (this)
+        {
+            this.removeActiveRequest(tile);
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Marks a tile complete in the manifest and updates the progress. A tile already marked complete, for example
+     * because its request timed out before it completed, is not counted again.
+     *
+     * @param tile      the completed tile.
+     * @param numBytes  the size of the tile's data, in bytes.
+     * @param retrieved true if the tile was retrieved by this thread, false if it was found in the file store.
+     */
+    protected void tileCompleted(Tile tile, long numBytes, boolean retrieved)
+    {
+        BulkRetrievalJournal journal;
+
+        synchronized (this)
+        {
+            journal = this.journal;
+            if (journal == null) // the thread has ended
+                return;
+
+            try
+            {
+                if (!this.journal.recordCompleted(tile.getLevelNumber(), tile.getRow(), tile.getColumn()))
+                    return;
+            }
+            catch (IOException e)
+            {
+                String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo",
+                    this.journal.getJournalFile());
+                Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+            }
+
+            if (retrieved)
+            {
+                this.progress.setCurrentCount(this.progress.getCurrentCount() + 1);
+                this.progress.setCurrentSize(this.progress.getCurrentSize() + numBytes);
+            }
+
+            // Once tiles have been retrieved, the size of the remaining tiles is estimated from their average size.
+            long numPending = this.manifest.getPendingCount();
+            long averageSize = this.progress.getCurrentCount() > 0
+                ? this.progress.getCurrentSize() / this.progress.getCurrentCount() : this.estimateAverageTileSize();
+            this.progress.setTotalCount(this.progress.getCurrentCount() + numPending);
+            this.progress.setTotalSize(this.progress.getCurrentSize() + numPending * averageSize);
+            this.progress.setLastUpdateTime(System.currentTimeMillis());
+        }
+
+        // The manifest is written outside this thread's lock, so requests and other completions are not held up.
+        try
+        {
+            journal.checkpointIfDue();
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", journal.getManifestFile());
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+        }
+
+        if (retrieved)
+            this.callRetrievalListeners(tile, true, numBytes);
+    }
+
+    /**
+     * Notifies the listeners of a tile's retrieval. Listeners are called without holding the thread's monitor, and
+     * their event carries a copy of the progress at the time of the call, which later retrievals don't change.
+     *
+     * @param tile     the tile.
+     * @param success  true if the tile was retrieved, false if its retrieval failed.
+     * @param numBytes the size of the tile's data, in bytes.
+     */
+    protected void callRetrievalListeners(Tile tile, boolean success, long numBytes)
+    {
+        if (!this.hasRetrievalListeners())
+            return;
+
+        Progress snapshot = new Progress();
+        synchronized (this)
+        {
+            snapshot.setStartTime(this.progress.getStartTime());
+            snapshot.setLastUpdateTime(this.progress.getLastUpdateTime());
+            snapshot.setTotalCount(this.progress.getTotalCount());
+            snapshot.setTotalSize(this.progress.getTotalSize());
+            snapshot.setCurrentCount(this.progress.getCurrentCount());
+            snapshot.setCurrentSize(this.progress.getCurrentSize());
+        }
+
+        String eventType = success ? BulkRetrievalEvent.RETRIEVAL_SUCCEEDED : BulkRetrievalEvent.RETRIEVAL_FAILED;
+        this.callRetrievalListeners(new BulkRetrievalEvent(this.retrievable, eventType, tile.getPath(), numBytes,
+            snapshot));
+    }
+
+    protected String getHost(Tile tile)
+    {
+        try
+        {
+            URL url = tile.getResourceURL();
+            return url != null ? url.getHost() : null;
+        }
+        catch (java.net.MalformedURLException e)
+        {
+            return null;
+        }
+    }
+
+    protected long getLocalSize(Tile tile)
+    {
+        URL url = this.fileStore.findFile(tile.getPath(), false);
+        File file = url != null ? WWIO.convertURLToFile(url) : null;
+
+        return file != null ? file.length() : 0;
+    }
+}
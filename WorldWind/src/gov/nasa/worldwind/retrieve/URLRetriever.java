@@ -46,6 +46,7 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
     protected long submitTime;
     protected long beginTime;
     protected long endTime;
+    protected volatile HostStatistics hostStatistics;
 
     /**
      * Create the appropriate retriever for a URL's protocol.
@@ -210,11 +211,35 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
         this.endTime = endTime;
     }
 
+    /**
+     * Returns the statistics this retriever reports its transfer and its host's latency to.
+     *
+     * @return the host statistics, or null if the retriever does not report statistics.
+     */
+    public HostStatistics getHostStatistics()
+    {
+        return this.hostStatistics;
+    }
+
+    /**
+     * Specifies the statistics this retriever reports its transfer and its host's latency to. The retrieval service
+     * running the retriever sets this before the retriever starts.
+     *
+     * @param hostStatistics the host statistics. May be null.
+     */
+    public void setHostStatistics(HostStatistics hostStatistics)
+    {
+        this.hostStatistics = hostStatistics;
+    }
+
     public final Retriever call() throws Exception
     {
         if (this.interrupted())
             return this;
 
+        long startTime = System.currentTimeMillis();
+        boolean success = false;
+
         try
         {
             this.setState(RETRIEVER_STATE_STARTED);
@@ -232,7 +257,10 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
             }
 
             if (!this.interrupted())
+            {
                 this.setState(RETRIEVER_STATE_SUCCESSFUL);
+                success = true;
+            }
 
             WorldWind.getNetworkStatus().logAvailableHost(this.url);
         }
@@ -260,10 +288,22 @@ public abstract class URLRetriever extends WWObjectImpl implements Retriever
                 Logging.logger().log(Level.SEVERE,
                     Logging.getMessage("URLRetriever.ErrorAttemptingToRetrieve", this.url.toString()), e);
             }
+            else if (this.hostStatistics != null)
+            {
+                // Lengthen the host's adaptive timeout, since a timed out retrieval gives no latency sample.
+                this.hostStatistics.addTimeout();
+            }
             throw e;
         }
         finally
         {
+            HostStatistics stats = this.hostStatistics;
+            if (stats != null)
+            {
+                stats.addTransfer(this.byteBuffer != null ? this.byteBuffer.limit() : 0,
+                    System.currentTimeMillis() - startTime, success);
+            }
+
             this.end();
         }
 
@@ -15,7 +15,7 @@ import gov.nasa.worldwind.util.*;
 import org.w3c.dom.Element;
 
 import javax.xml.xpath.XPath;
-import java.util.List;
+import java.util.*;
 
 /**
  * @author tag
@@ -198,6 +198,176 @@ abstract public class AbstractElevationModel extends WWObjectImpl implements Ele
         }
     }
 
+    /**
+     * Returns the elevations of locations specified as parallel arrays of latitudes and longitudes. Behaves as {@link
+     * #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}, but is intended for large
+     * numbers of locations.
+     * <p/>
+     * This implementation creates a list of the locations and calls {@link
+     * #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}. Subclasses should override it
+     * to avoid allocating per location.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations to return elevations for, in degrees.
+     * @param longitudes       the longitudes of the locations to return elevations for, in degrees. Must be the same
+     *                         length as the latitudes.
+     * @param targetResolution the desired horizontal resolution, in radians, of the raster or other elevation sample
+     *                         from which elevations are drawn.
+     * @param buffer           an array in which to place the returned elevations. The array must be pre-allocated and
+     *                         contain at least as many elements as there are locations.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     *
+     * @throws IllegalArgumentException if any argument is null, the latitude and longitude arrays differ in length, or
+     *                                  the buffer is too small.
+     */
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        return this.getElevations(sector, makeLocations(latitudes, longitudes), targetResolution, buffer);
+    }
+
+    /**
+     * Returns the elevations of locations specified as parallel arrays of latitudes and longitudes, without replacing
+     * values corresponding to the missing data signal. Behaves as {@link
+     * #getUnmappedElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}, but is intended for
+     * large numbers of locations.
+     * <p/>
+     * This implementation creates a list of the locations and calls {@link
+     * #getUnmappedElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}. Subclasses should
+     * override it to avoid allocating per location.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations to return elevations for, in degrees.
+     * @param longitudes       the longitudes of the locations to return elevations for, in degrees. Must be the same
+     *                         length as the latitudes.
+     * @param targetResolution the desired horizontal resolution, in radians, of the raster or other elevation sample
+     *                         from which elevations are drawn.
+     * @param buffer           an array in which to place the returned elevations. The array must be pre-allocated and
+     *                         contain at least as many elements as there are locations.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     *
+     * @throws IllegalArgumentException if any argument is null, the latitude and longitude arrays differ in length, or
+     *                                  the buffer is too small.
+     */
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        return this.getUnmappedElevations(sector, makeLocations(latitudes, longitudes), targetResolution, buffer);
+    }
+
+    /**
+     * Returns the elevations of locations specified as parallel arrays from any elevation model. The array form of
+     * <code>getElevations</code> is used if the model is an <code>AbstractElevationModel</code>. Otherwise the
+     * locations are passed to the model as a list.
+     *
+     * @param model            the elevation model.
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired horizontal resolution, in radians.
+     * @param buffer           an array in which to place the returned elevations.
+     * @param mapMissingData   true to replace values corresponding to the missing data signal, false to return them
+     *                         unmapped.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     *
+     * @throws IllegalArgumentException if any argument is null, the latitude and longitude arrays differ in length, or
+     *                                  the buffer is too small.
+     */
+    public static double getElevations(ElevationModel model, Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer, boolean mapMissingData)
+    {
+        if (model == null)
+        {
+            String msg = Logging.getMessage("nullValue.ElevationModelIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (model instanceof AbstractElevationModel)
+        {
+            AbstractElevationModel em = (AbstractElevationModel) model;
+            return mapMissingData ? em.getElevations(sector, latitudes, longitudes, targetResolution, buffer)
+                : em.getUnmappedElevations(sector, latitudes, longitudes, targetResolution, buffer);
+        }
+
+        List<LatLon> latlons = makeLocations(latitudes, longitudes);
+        return mapMissingData ? model.getElevations(sector, latlons, targetResolution, buffer)
+            : model.getUnmappedElevations(sector, latlons, targetResolution, buffer);
+    }
+
+    protected static List<LatLon> makeLocations(double[] latitudes, double[] longitudes)
+    {
+        validateLocations(latitudes, longitudes);
+
+        List<LatLon> latlons = new ArrayList<LatLon>(latitudes.length);
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            latlons.add(LatLon.fromDegrees(latitudes[i], longitudes[i]));
+        }
+
+        return latlons;
+    }
+
+    /**
+     * Validates the arguments of the array forms of <code>getElevations</code>.
+     *
+     * @param sector     the sector in question.
+     * @param latitudes  the location latitudes.
+     * @param longitudes the location longitudes.
+     * @param buffer     the elevation buffer.
+     *
+     * @throws IllegalArgumentException if any argument is null, the latitude and longitude arrays differ in length, or
+     *                                  the buffer is too small.
+     */
+    protected static void validateLocations(Sector sector, double[] latitudes, double[] longitudes, double[] buffer)
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        validateLocations(latitudes, longitudes);
+
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.ElevationsBufferIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (buffer.length < latitudes.length)
+        {
+            String msg = Logging.getMessage("ElevationModel.ElevationsBufferTooSmall", latitudes.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    protected static void validateLocations(double[] latitudes, double[] longitudes)
+    {
+        if (latitudes == null || longitudes == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (longitudes.length != latitudes.length)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", longitudes.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
     protected boolean isTransparentValue(Double value)
     {
         return ((value == null || value.equals(this.getMissingDataSignal()))
@@ -59,6 +59,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     protected String elevationDataType = AVKey.INT16;
     protected String elevationDataByteOrder = AVKey.LITTLE_ENDIAN;
     protected double detailHint = 0.0;
+    protected boolean memoryMapping;
     protected final Object fileLock = new Object();
     protected java.util.concurrent.ConcurrentHashMap<TileKey, ElevationTile> levelZeroTiles =
         new java.util.concurrent.ConcurrentHashMap<TileKey, ElevationTile>();
@@ -72,6 +73,9 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     protected static final int RESOURCE_ID_OGC_CAPABILITIES = 1;
     protected static final int DEFAULT_MAX_RESOURCE_ATTEMPTS = 3;
     protected static final int DEFAULT_MIN_RESOURCE_CHECK_INTERVAL = (int) 6e5; // 10 minutes
+    protected static final String EXTREMES_LOOKUP_CACHE_KEY = BasicElevationModel.class.getName() + ".ExtremesLookup";
+    /** The fraction of their size that memory mapped elevations are charged in the memory cache. */
+    protected static final int MAPPED_ELEVATIONS_COST_DIVISOR = 16;
 
     public BasicElevationModel(AVList params)
     {
@@ -120,6 +124,11 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         if (s != null)
             this.setElevationDataType(s);
 
+        // Elevation files are memory mapped if either the parameters or the configuration say so.
+        b = (Boolean) params.getValue(AVKey.ELEVATION_TILE_MEMORY_MAPPING);
+        this.setMemoryMapping(b != null ? b
+            : Configuration.getBooleanValue(AVKey.ELEVATION_TILE_MEMORY_MAPPING, false));
+
         s = params.getStringValue(AVKey.ELEVATION_EXTREMES_FILE);
         if (s != null)
             this.loadExtremeElevations(s);
@@ -239,7 +248,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         else
         {
             long size = Configuration.getLongValue(AVKey.ELEVATION_TILE_CACHE_SIZE, 5000000L);
-            MemoryCache mc = new BasicMemoryCache((long) (0.85 * size), size);
+            MemoryCache mc = BasicMemoryCacheSet.newMemoryCache(cacheName, (long) (0.85 * size), size);
             mc.setName("Elevation Tiles");
             WorldWind.getMemoryCacheSet().addCache(cacheName, mc);
             return mc;
@@ -350,6 +359,38 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         this.elevationDataByteOrder = byteOrder;
     }
 
+    /**
+     * Indicates whether elevation files in the local file system are memory mapped rather than read.
+     *
+     * @return true if elevation files are memory mapped, otherwise false.
+     *
+     * @see #setMemoryMapping(boolean)
+     */
+    public boolean isMemoryMapping()
+    {
+        return this.memoryMapping;
+    }
+
+    /**
+     * Specifies whether elevation files in the local file system are memory mapped rather than read. A mapped tile's
+     * elevations are a read-only view of the file's bytes in the model's data type and byte order, and are paged in
+     * by the operating system as they're accessed. Mapped tiles are charged a small fraction of their size in the
+     * memory cache, so the cache holds many more of them. Elevations that are not in a local file, such as those in a
+     * jar, are read regardless of this setting.
+     * <p/>
+     * Tiles of levels with an expiry time are read rather than mapped, since their files are replaced when they
+     * expire. Downloaded files are written to a temporary file that's renamed over the previous file, so the
+     * elevations of a mapped tile don't change under its readers. Some operating systems do not allow a mapped file
+     * to be deleted or replaced until the mapping is garbage collected, so a previous file may remain in the file
+     * store until then.
+     *
+     * @param memoryMapping true to memory map elevation files, false to read them.
+     */
+    public void setMemoryMapping(boolean memoryMapping)
+    {
+        this.memoryMapping = memoryMapping;
+    }
+
     public int intersects(Sector sector)
     {
         if (this.levels.getSector().contains(sector))
@@ -505,11 +546,16 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 
     protected boolean loadElevations(ElevationTile tile, java.net.URL url) throws IOException
     {
-        BufferWrapper elevations = this.readElevations(url);
+        BufferWrapper elevations = this.isMemoryMapping() && tile.getLevel().getExpiryTime() <= 0
+            ? this.mapElevations(url) : null;
+        boolean mapped = elevations != null;
+        if (!mapped)
+            elevations = this.readElevations(url);
+
         if (elevations == null || elevations.length() == 0)
             return false;
 
-        tile.setElevations(elevations);
+        tile.setElevations(elevations, mapped);
         this.addTileToCache(tile, elevations);
 
         return true;
@@ -521,7 +567,17 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         if (tile.getLevelNumber() == 0)
             this.levelZeroTiles.put(tile.getTileKey(), tile);
         else
-            this.getMemoryCache().add(tile.getTileKey(), tile, elevations.getSizeInBytes());
+            this.getMemoryCache().add(tile.getTileKey(), tile, this.computeCacheSize(tile, elevations));
+    }
+
+    protected long computeCacheSize(ElevationTile tile, BufferWrapper elevations)
+    {
+        // Mapped elevations occupy the operating system's page cache rather than the heap. Charging them a fraction of
+        // their size rather than nothing still bounds the number of files the cache keeps mapped.
+        if (tile.isElevationsMapped())
+            return Math.max(1, elevations.getSizeInBytes() / MAPPED_ELEVATIONS_COST_DIVISOR);
+
+        return elevations.getSizeInBytes();
     }
 
     protected boolean areElevationsInMemory(TileKey key)
@@ -569,6 +625,49 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         }
     }
 
+    /**
+     * Memory maps an elevation file read-only, and wraps the mapped bytes in a view that interprets them in the model's
+     * data type and byte order. The elevations are not copied.
+     *
+     * @param url the elevation file's URL.
+     *
+     * @return the mapped elevations, or null if the URL does not name a file in the local file system or the file's
+     *         length is not a whole number of elevations.
+     *
+     * @throws IOException if the file cannot be mapped.
+     */
+    protected BufferWrapper mapElevations(URL url) throws IOException
+    {
+        File file = WWIO.convertURLToFile(url);
+        if (file == null || !file.isFile())
+            return null;
+
+        long length = file.length();
+        if (length == 0 || length % WWBufferUtil.sizeOfPrimitiveType(this.elevationDataType) != 0)
+            return null;
+
+        try
+        {
+            ByteBuffer byteBuffer;
+            synchronized (this.fileLock)
+            {
+                byteBuffer = WWIO.mapFile(file);
+            }
+
+            // Setup parameters to instruct BufferWrapper on how to interpret the ByteBuffer.
+            AVList bufferParams = new AVListImpl();
+            bufferParams.setValue(AVKey.DATA_TYPE, this.elevationDataType);
+            bufferParams.setValue(AVKey.BYTE_ORDER, this.elevationDataByteOrder);
+            return BufferWrapper.wrap(byteBuffer, bufferParams);
+        }
+        catch (java.io.IOException e)
+        {
+            Logging.logger().log(java.util.logging.Level.SEVERE,
+                "ElevationModel.ExceptionReadingElevationFile", url.toString());
+            throw e;
+        }
+    }
+
     protected static ByteBuffer convertImageToElevations(ByteBuffer buffer, String contentType) throws IOException
     {
         File tempFile = File.createTempFile("wwj-", WWIO.makeSuffixForMimeType(contentType));
@@ -737,13 +836,29 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     }
 
     protected void retrieveLocalElevations(Tile tile, DownloadPostProcessor postProcessor)
+    {
+        Retriever retriever = this.createLocalElevationsRetriever(tile, postProcessor);
+        if (retriever != null)
+            WorldWind.getLocalRetrievalService().runRetriever(retriever, tile.getPriority());
+    }
+
+    /**
+     * Creates a retriever for a tile from the model's local retriever factory.
+     *
+     * @param tile          the tile to retrieve.
+     * @param postProcessor the retrieval's post-processor.
+     *
+     * @return the retriever, or null if the local retrieval service is not available or the model has no local
+     *         retriever factory.
+     */
+    protected Retriever createLocalElevationsRetriever(Tile tile, DownloadPostProcessor postProcessor)
     {
         if (!WorldWind.getLocalRetrievalService().isAvailable())
-            return;
+            return null;
 
         RetrieverFactory retrieverFactory = (RetrieverFactory) this.getValue(AVKey.RETRIEVER_FACTORY_LOCAL);
         if (retrieverFactory == null)
-            return;
+            return null;
 
         AVListImpl avList = new AVListImpl();
         avList.setValue(AVKey.SECTOR, tile.getSector());
@@ -751,21 +866,36 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         avList.setValue(AVKey.HEIGHT, tile.getHeight());
         avList.setValue(AVKey.FILE_NAME, tile.getPath());
 
-        Retriever retriever = retrieverFactory.createRetriever(avList, postProcessor);
-
-        WorldWind.getLocalRetrievalService().runRetriever(retriever, tile.getPriority());
+        return retrieverFactory.createRetriever(avList, postProcessor);
     }
 
     protected void retrieveRemoteElevations(final Tile tile, DownloadPostProcessor postProcessor)
+    {
+        Retriever retriever = this.createRemoteElevationsRetriever(tile, postProcessor);
+        // The retrieval service coalesces a duplicate request onto the pending retrieval and marks it still wanted.
+        if (retriever != null)
+            WorldWind.getRetrievalService().runRetriever(retriever, 0d);
+    }
+
+    /**
+     * Creates a retriever for a tile from the tile's resource URL. Marks the tile absent if network retrieval is
+     * disabled or the tile's host is unavailable.
+     *
+     * @param tile          the tile to retrieve.
+     * @param postProcessor the retrieval's post-processor. If null, the model's default post-processor is used.
+     *
+     * @return the retriever, or null if the tile cannot be retrieved now.
+     */
+    protected Retriever createRemoteElevationsRetriever(Tile tile, DownloadPostProcessor postProcessor)
     {
         if (!this.isNetworkRetrievalEnabled())
         {
             this.getLevels().markResourceAbsent(tile);
-            return;
+            return null;
         }
 
         if (!WorldWind.getRetrievalService().isAvailable())
-            return;
+            return null;
 
         java.net.URL url = null;
         try
@@ -774,24 +904,22 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             if (WorldWind.getNetworkStatus().isHostUnavailable(url))
             {
                 this.getLevels().markResourceAbsent(tile);
-                return;
+                return null;
             }
         }
         catch (java.net.MalformedURLException e)
         {
             Logging.logger().log(java.util.logging.Level.SEVERE,
                 Logging.getMessage("TiledElevationModel.ExceptionCreatingElevationsUrl", url), e);
-            return;
+            return null;
         }
 
         if (postProcessor == null)
             postProcessor = new DownloadPostProcessor(tile, this);
         URLRetriever retriever = new HTTPRetriever(url, postProcessor);
         retriever.setValue(URLRetriever.EXTRACT_ZIP_ENTRY, "true"); // supports legacy elevation models
-        if (WorldWind.getRetrievalService().contains(retriever))
-            return;
 
-        WorldWind.getRetrievalService().runRetriever(retriever, 0d);
+        return retriever;
     }
 
     protected static class DownloadPostProcessor extends AbstractRetrievalPostProcessor
@@ -826,6 +954,65 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             return true;
         }
 
+        @Override
+        protected boolean saveBuffer(ByteBuffer buffer) throws IOException
+        {
+            if (!this.elevationModel.isMemoryMapping())
+                return super.saveBuffer(buffer);
+
+            File outFile = this.getOutputFile();
+            if (outFile == null)
+                return false;
+
+            if (outFile.exists() && !this.overwriteExistingFile())
+                return false;
+
+            synchronized (this.getFileLock()) // synchronize with read of file in another class
+            {
+                return this.replaceFile(buffer != null ? buffer : this.getRetriever().getBuffer(), outFile);
+            }
+        }
+
+        /**
+         * Writes a buffer to a temporary file in the output file's directory and renames it over the output file.
+         * Truncating and rewriting a file that's memory mapped would change the elevations of the tile mapping it, or
+         * fault the tile's readers, whereas a rename leaves the previous file's mapping intact.
+         *
+         * @param buffer  the buffer to write.
+         * @param outFile the file to replace.
+         *
+         * @return true if the output file was replaced, false if the previous file could not be replaced.
+         *
+         * @throws IOException if the temporary file cannot be written.
+         */
+        protected boolean replaceFile(ByteBuffer buffer, File outFile) throws IOException
+        {
+            File dir = outFile.getParentFile();
+            if (dir != null && !dir.exists())
+                //noinspection ResultOfMethodCallIgnored
+                dir.mkdirs();
+
+            File tempFile = File.createTempFile("wwj-", ".tmp", dir);
+            try
+            {
+                WWIO.saveBuffer(buffer, tempFile);
+
+                // Some platforms don't rename over an existing file. Deleting the previous file fails there while it's
+                // mapped, in which case the previous file is kept until a later retrieval.
+                if (tempFile.renameTo(outFile) || (outFile.delete() && tempFile.renameTo(outFile)))
+                    return true;
+
+                Logging.logger().warning(Logging.getMessage("generic.ExceptionAttemptingToWriteTo", outFile));
+                return false;
+            }
+            finally
+            {
+                if (tempFile.exists())
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.delete();
+            }
+        }
+
         @Override
         protected void markResourceAbsent()
         {
@@ -874,10 +1061,14 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     /** Internal class to hold collections of elevation tiles that provide elevations for a specific sector. */
     protected static class Elevations
     {
+        /** Converts degrees to radians exactly as {@link Angle#fromDegrees(double)} does. */
+        protected static final double DEGREES_TO_RADIANS = Math.PI / 180d;
+
         protected final BasicElevationModel elevationModel;
         protected java.util.Set<ElevationTile> tiles;
         protected double extremes[] = null;
         protected final double achievedResolution;
+        protected TileGrid[] tileGrids;
 
         protected Elevations(BasicElevationModel elevationModel, double achievedResolution)
         {
@@ -919,6 +1110,48 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             }
         }
 
+        /**
+         * Returns the elevation at a location, locating the tile that contains the location by row and column
+         * arithmetic rather than by searching the tiles. Tiles are searched from the finest level to the coarsest, as
+         * in {@link #getElevation(gov.nasa.worldwind.geom.Angle, gov.nasa.worldwind.geom.Angle)}.
+         *
+         * @param latitude  the location's latitude, in degrees.
+         * @param longitude the location's longitude, in degrees.
+         *
+         * @return the elevation, or NaN if the location is not within this group of tiles.
+         */
+        protected double getElevation(double latitude, double longitude)
+        {
+            if (this.tiles == null)
+                return Double.NaN;
+
+            if (this.tileGrids == null)
+                this.tileGrids = TileGrid.createTileGrids(this.elevationModel.levels, this.tiles);
+
+            try
+            {
+                for (TileGrid grid : this.tileGrids)
+                {
+                    ElevationTile tile = grid.getTile(latitude, longitude);
+                    if (tile != null)
+                    {
+                        return this.elevationModel.lookupElevation(DEGREES_TO_RADIANS * latitude,
+                            DEGREES_TO_RADIANS * longitude, tile);
+                    }
+                }
+
+                // Location is not within this group of tiles, so is outside the coverage of this elevation model.
+                return Double.NaN;
+            }
+            catch (Exception e)
+            {
+                Logging.logger().log(java.util.logging.Level.SEVERE,
+                    Logging.getMessage("BasicElevationModel.ExceptionComputingElevation", latitude, longitude), e);
+
+                return Double.NaN;
+            }
+        }
+
         protected double[] getExtremes(Angle latitude, Angle longitude)
         {
             if (latitude == null || longitude == null)
@@ -991,6 +1224,169 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         }
     }
 
+    /**
+     * The tiles of one level of an {@link Elevations}, arranged by row and column so that the tile containing a
+     * location is found by arithmetic on the location's coordinates.
+     */
+    protected static class TileGrid
+    {
+        protected final double deltaLat;
+        protected final double deltaLon;
+        protected final double originLat;
+        protected final double originLon;
+        protected final int minRow;
+        protected final int minCol;
+        protected final int numRows;
+        protected final int numCols;
+        protected final ElevationTile[] tiles;
+        protected final int[] ordinals; // the position of each tile in the search order of Elevations.getElevation
+
+        /**
+         * Creates a grid for each level of a set of tiles.
+         *
+         * @param levels the level set the tiles belong to.
+         * @param tiles  the tiles.
+         *
+         * @return the grids, ordered from the finest level to the coarsest.
+         */
+        public static TileGrid[] createTileGrids(LevelSet levels, Collection<ElevationTile> tiles)
+        {
+            TreeMap<Integer, List<ElevationTile>> tilesByLevel = new TreeMap<Integer, List<ElevationTile>>(
+                Collections.reverseOrder());
+            Map<ElevationTile, Integer> ordinals = new HashMap<ElevationTile, Integer>();
+            int ordinal = 0;
+            for (ElevationTile tile : tiles)
+            {
+                // The tile set's comparator can admit a tile more than once. Only the first occurrence is ever found.
+                if (ordinals.containsKey(tile))
+                    continue;
+                ordinals.put(tile, ordinal++);
+
+                List<ElevationTile> levelTiles = tilesByLevel.get(tile.getLevelNumber());
+                if (levelTiles == null)
+                {
+                    levelTiles = new ArrayList<ElevationTile>();
+                    tilesByLevel.put(tile.getLevelNumber(), levelTiles);
+                }
+                levelTiles.add(tile);
+            }
+
+            TileGrid[] grids = new TileGrid[tilesByLevel.size()];
+            int i = 0;
+            for (Map.Entry<Integer, List<ElevationTile>> entry : tilesByLevel.entrySet())
+            {
+                grids[i++] = new TileGrid(levels.getLevel(entry.getKey()).getTileDelta(), levels.getTileOrigin(),
+                    entry.getValue(), ordinals);
+            }
+
+            return grids;
+        }
+
+        /**
+         * Creates a grid of tiles of one level.
+         *
+         * @param delta    the level's tile delta.
+         * @param origin   the level set's tile origin.
+         * @param tiles    the tiles.
+         * @param ordinals the position of each tile in the order tiles are searched for a location.
+         */
+        public TileGrid(LatLon delta, LatLon origin, List<ElevationTile> tiles, Map<ElevationTile, Integer> ordinals)
+        {
+            this.deltaLat = delta.getLatitude().degrees;
+            this.deltaLon = delta.getLongitude().degrees;
+            this.originLat = origin.getLatitude().degrees;
+            this.originLon = origin.getLongitude().degrees;
+
+            int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+            int minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+            for (ElevationTile tile : tiles)
+            {
+                minRow = Math.min(minRow, tile.getRow());
+                maxRow = Math.max(maxRow, tile.getRow());
+                minCol = Math.min(minCol, tile.getColumn());
+                maxCol = Math.max(maxCol, tile.getColumn());
+            }
+
+            this.minRow = minRow;
+            this.minCol = minCol;
+            this.numRows = maxRow - minRow + 1;
+            this.numCols = maxCol - minCol + 1;
+            this.tiles = new ElevationTile[this.numRows * this.numCols];
+            this.ordinals = new int[this.numRows * this.numCols];
+
+            for (ElevationTile tile : tiles)
+            {
+                int index = (tile.getRow() - minRow) * this.numCols + tile.getColumn() - minCol;
+                this.tiles[index] = tile;
+                this.ordinals[index] = ordinals.get(tile);
+            }
+        }
+
+        /**
+         * Returns the tile containing a location. The row and column are computed as {@link Tile#computeRow} and {@link
+         * Tile#computeColumn} compute them. A location on the edge between tiles is contained by each of them, so when
+         * the location is not strictly inside the computed tile, the neighboring tiles are also tried and the one
+         * searched first by {@link Elevations#getElevation(gov.nasa.worldwind.geom.Angle,
+         * gov.nasa.worldwind.geom.Angle)} is returned.
+         *
+         * @param latitude  the location's latitude, in degrees.
+         * @param longitude the location's longitude, in degrees.
+         *
+         * @return the tile containing the location, or null if no tile in this grid contains it.
+         */
+        public ElevationTile getTile(double latitude, double longitude)
+        {
+            int row = (int) ((latitude - this.originLat) / this.deltaLat);
+            if ((latitude - this.originLat) == 180d)
+                row = row - 1;
+
+            double gridLongitude = longitude - this.originLon;
+            if (gridLongitude < 0.0)
+                gridLongitude = 360d + gridLongitude;
+
+            int col = (int) (gridLongitude / this.deltaLon);
+            if ((longitude - this.originLon) == 360d)
+                col = col - 1;
+
+            int index = this.getIndex(row, col);
+            if (index >= 0 && this.tiles[index] != null)
+            {
+                Sector s = this.tiles[index].getSector();
+                if (latitude > s.getMinLatitude().degrees && latitude < s.getMaxLatitude().degrees
+                    && longitude > s.getMinLongitude().degrees && longitude < s.getMaxLongitude().degrees)
+                    return this.tiles[index];
+            }
+
+            ElevationTile tile = null;
+            int ordinal = Integer.MAX_VALUE;
+            for (int r = row - 1; r <= row + 1; r++)
+            {
+                for (int c = col - 1; c <= col + 1; c++)
+                {
+                    index = this.getIndex(r, c);
+                    if (index >= 0 && this.tiles[index] != null && this.ordinals[index] < ordinal
+                        && this.tiles[index].getSector().containsDegrees(latitude, longitude))
+                    {
+                        tile = this.tiles[index];
+                        ordinal = this.ordinals[index];
+                    }
+                }
+            }
+
+            return tile;
+        }
+
+        protected int getIndex(int row, int col)
+        {
+            int r = row - this.minRow;
+            int c = col - this.minCol;
+            if (r < 0 || r >= this.numRows || c < 0 || c >= this.numCols)
+                return -1;
+
+            return r * this.numCols + c;
+        }
+    }
+
     protected void determineExtremes(double value, double extremes[])
     {
         if (value == this.getMissingDataSignal())
@@ -1150,6 +1546,81 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         return elevations.achievedResolution;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Tiles are located by row and column arithmetic, and no objects are allocated per location.
+     */
+    @Override
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        return this.getElevations(sector, latitudes, longitudes, targetResolution, buffer, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Tiles are located by row and column arithmetic, and no objects are allocated per location.
+     */
+    @Override
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        return this.getElevations(sector, latitudes, longitudes, targetResolution, buffer, false);
+    }
+
+    protected double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer, boolean mapMissingData)
+    {
+        validateLocations(sector, latitudes, longitudes, buffer);
+
+        Level targetLevel = this.getTargetLevel(sector, targetResolution);
+        if (targetLevel == null)
+            return Double.MAX_VALUE;
+
+        Elevations elevations = this.getElevations(sector, this.levels, targetLevel.getLevelNumber());
+        if (elevations == null)
+            return Double.MAX_VALUE;
+
+        if (this.intersects(sector) == -1)
+            return Double.MAX_VALUE;
+
+        Sector coverage = this.levels.getSector();
+        double missingDataSignal = this.getMissingDataSignal();
+        boolean missingDataTransparent = this.getMissingDataReplacement() == missingDataSignal;
+        double[] extremes = null;
+
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            double value = elevations.getElevation(latitudes[i], longitudes[i]);
+            boolean found = !Double.isNaN(value);
+
+            if (missingDataTransparent && (!found || value == missingDataSignal))
+                continue;
+
+            // Write the elevation if available, otherwise the model's minimum elevation or missing data replacement if
+            // the location is within the model's coverage, as the list form of this method does.
+            if (found && value != missingDataSignal)
+                buffer[i] = value;
+            else if (coverage.containsDegrees(latitudes[i], longitudes[i]))
+            {
+                if (!found)
+                {
+                    if (extremes == null)
+                        extremes = this.getExtremeElevations(sector);
+                    buffer[i] = extremes[0];
+                }
+                else if (mapMissingData)
+                {
+                    buffer[i] = this.getMissingDataReplacement();
+                }
+            }
+        }
+
+        return elevations.achievedResolution;
+    }
+
     protected Level getTargetLevel(Sector sector, double targetSize)
     {
         Level lastLevel = this.levels.getLastLevel(sector); // finest resolution available
@@ -1172,6 +1643,11 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     }
 
     protected double lookupElevation(Angle latitude, Angle longitude, final ElevationTile tile)
+    {
+        return this.lookupElevation(latitude.radians, longitude.radians, tile);
+    }
+
+    protected double lookupElevation(double latRadians, double lonRadians, final ElevationTile tile)
     {
         BufferWrapper elevations = tile.getElevations();
         Sector sector = tile.getSector();
@@ -1179,8 +1655,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         final int tileWidth = tile.getWidth();
         final double sectorDeltaLat = sector.getDeltaLat().radians;
         final double sectorDeltaLon = sector.getDeltaLon().radians;
-        final double dLat = sector.getMaxLatitude().radians - latitude.radians;
-        final double dLon = longitude.radians - sector.getMinLongitude().radians;
+        final double dLat = sector.getMaxLatitude().radians - latRadians;
+        final double dLon = lonRadians - sector.getMinLongitude().radians;
         final double sLat = dLat / sectorDeltaLat;
         final double sLon = dLon / sectorDeltaLon;
 
@@ -1433,7 +1909,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             // Default cache size holds 1250 min/max pairs. This size was experimentally determined to hold enough
             // value lookups to prevent cache thrashing.
             long size = Configuration.getLongValue(AVKey.ELEVATION_EXTREMES_LOOKUP_CACHE_SIZE, 20000L);
-            this.extremesLookupCache = new BasicMemoryCache((long) (0.85 * size), size);
+            this.extremesLookupCache = BasicMemoryCacheSet.newMemoryCache(EXTREMES_LOOKUP_CACHE_KEY,
+                (long) (0.85 * size), size);
         }
 
         return this.extremesLookupCache;
@@ -1442,6 +1919,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     protected static class ElevationTile extends gov.nasa.worldwind.util.Tile implements Cacheable
     {
         protected BufferWrapper elevations; // the elevations themselves
+        protected boolean elevationsMapped; // true if the elevations are a view of a memory mapped file
         protected long updateTime = 0;
 
         protected ElevationTile(Sector sector, Level level, int row, int col)
@@ -1455,11 +1933,22 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         }
 
         public void setElevations(BufferWrapper elevations)
+        {
+            this.setElevations(elevations, false);
+        }
+
+        public void setElevations(BufferWrapper elevations, boolean mapped)
         {
             this.elevations = elevations;
+            this.elevationsMapped = mapped;
             this.updateTime = System.currentTimeMillis();
         }
 
+        public boolean isElevationsMapped()
+        {
+            return this.elevationsMapped;
+        }
+
         public boolean isElevationsExpired()
         {
             return this.isElevationsExpired(this.getLevel().getExpiryTime());
@@ -2249,6 +2738,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             xpath);
         WWXML.checkAndSetDoubleParam(domElement, params, AVKey.ELEVATION_MAX, "ExtremeElevations/@max", xpath);
         WWXML.checkAndSetDoubleParam(domElement, params, AVKey.ELEVATION_MIN, "ExtremeElevations/@min", xpath);
+        WWXML.checkAndSetBooleanParam(domElement, params, AVKey.ELEVATION_TILE_MEMORY_MAPPING, "MemoryMapping",
+            xpath);
 
         return params;
     }
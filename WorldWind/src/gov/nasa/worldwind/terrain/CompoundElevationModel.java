@@ -503,6 +503,58 @@ public class CompoundElevationModel extends AbstractElevationModel
         return resolutionAchieved;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * NOTE: This method returns only unmapped elevations if the compound model contains more than one elevation model,
+     * as does {@link #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}.
+     */
+    @Override
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        return this.doGetElevations(sector, latitudes, longitudes, targetResolution, buffer, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * NOTE: This method returns only unmapped elevations if the compound model contains more than one elevation model,
+     * as does {@link #getUnmappedElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])}.
+     */
+    @Override
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        return this.doGetElevations(sector, latitudes, longitudes, targetResolution, buffer, false);
+    }
+
+    protected double doGetElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer, boolean mapMissingData)
+    {
+        validateLocations(sector, latitudes, longitudes, buffer);
+
+        // Fill the buffer from lowest resolution to highest, as the list form of this method does.
+        double resolutionAchieved = 0;
+        for (ElevationModel em : this.elevationModels)
+        {
+            if (!em.isEnabled())
+                continue;
+
+            int c = em.intersects(sector);
+            if (c < 0) // no intersection
+                continue;
+
+            double r = getElevations(em, sector, latitudes, longitudes, targetResolution, buffer,
+                mapMissingData || this.elevationModels.size() == 1);
+
+            if (r < resolutionAchieved || resolutionAchieved == 0)
+                resolutionAchieved = r;
+        }
+
+        return resolutionAchieved;
+    }
+
     public void composeElevations(Sector sector, List<? extends LatLon> latlons, int tileWidth,
         double[] buffer) throws Exception
     {
@@ -6,16 +6,20 @@
 
 package gov.nasa.worldwind.terrain;
 
+import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.WWObjectImpl;
+import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.geom.*;
-import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.globes.*;
 import gov.nasa.worldwind.util.*;
 
 import java.awt.*;
+import java.nio.FloatBuffer;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
 
 /**
  * Provides operations on the best available terrain. Operations such as line/terrain intersection and surface point
@@ -29,25 +33,157 @@ import java.util.List;
  */
 public class HighResolutionTerrain extends WWObjectImpl implements Terrain
 {
-    /** Holds a tile's geometry. It's heavyweight so cached when created to enable re-use. */
+    /**
+     * Holds a tile's geometry. It's heavyweight so cached when created to enable re-use.
+     * <p/>
+     * The geometry includes a bounding volume hierarchy over the tile's cells, so that line intersection tests only the
+     * triangles of cells the line passes near. The hierarchy's nodes are stored in depth-first order. Each node holds
+     * its bounds, relative to the reference center, the cell it contains if it is a leaf or -1 otherwise, and the
+     * index of the node following its subtree, which is the next node to visit when the line misses the node.
+     */
     protected static class RenderInfo
     {
+        /** The distance, in meters, by which cell bounds are expanded to cover rounding error. */
+        protected static final float BOUNDS_PADDING = 0.01f;
+
         protected final int density;
         protected final Vec4 referenceCenter; // all vertices are relative to this point
         protected final float[] vertices;
+        protected final float[] nodeBounds; // minX, maxX, minY, maxY, minZ, maxZ of each node
+        protected final int[] nodes; // the cell and the next node after the subtree of each node
 
         protected RenderInfo(int density, float[] vertices, Vec4 refCenter)
         {
             this.density = density;
             this.referenceCenter = refCenter;
             this.vertices = vertices;
+
+            int numNodes = 2 * density * density - 1;
+            this.nodeBounds = new float[6 * numNodes];
+            this.nodes = new int[2 * numNodes];
+            this.buildNode(0, 0, 0, density, density);
+        }
+
+        /**
+         * Builds the subtree of the bounding volume hierarchy covering a range of cells. The range is split in half
+         * across its longer dimension until each node contains one cell.
+         *
+         * @param node the index of the subtree's root node.
+         * @param i0   the range's first column.
+         * @param j0   the range's first row.
+         * @param i1   the column following the range.
+         * @param j1   the row following the range.
+         *
+         * @return the index of the node following the subtree.
+         */
+        protected int buildNode(int node, int i0, int j0, int i1, int j1)
+        {
+            float[] b = this.nodeBounds;
+            int next;
+
+            if (i1 - i0 == 1 && j1 - j0 == 1)
+            {
+                b[6 * node] = b[6 * node + 2] = b[6 * node + 4] = Float.MAX_VALUE;
+                b[6 * node + 1] = b[6 * node + 3] = b[6 * node + 5] = -Float.MAX_VALUE;
+
+                // Bound the cell's four corners.
+                int n = this.density + 1;
+                for (int j = j0; j <= j1; j++)
+                {
+                    for (int i = i0; i <= i1; i++)
+                    {
+                        int k = 3 * (j * n + i);
+                        for (int c = 0; c < 3; c++)
+                        {
+                            b[6 * node + 2 * c] = Math.min(b[6 * node + 2 * c], this.vertices[k + c] - BOUNDS_PADDING);
+                            b[6 * node + 2 * c + 1] = Math.max(b[6 * node + 2 * c + 1],
+                                this.vertices[k + c] + BOUNDS_PADDING);
+                        }
+                    }
+                }
+
+                this.nodes[2 * node] = j0 * this.density + i0;
+                next = node + 1;
+            }
+            else
+            {
+                int second;
+                if (i1 - i0 >= j1 - j0)
+                {
+                    second = this.buildNode(node + 1, i0, j0, (i0 + i1) / 2, j1);
+                    next = this.buildNode(second, (i0 + i1) / 2, j0, i1, j1);
+                }
+                else
+                {
+                    second = this.buildNode(node + 1, i0, j0, i1, (j0 + j1) / 2);
+                    next = this.buildNode(second, i0, (j0 + j1) / 2, i1, j1);
+                }
+
+                for (int c = 0; c < 6; c += 2)
+                {
+                    b[6 * node + c] = Math.min(b[6 * (node + 1) + c], b[6 * second + c]);
+                    b[6 * node + c + 1] = Math.max(b[6 * (node + 1) + c + 1], b[6 * second + c + 1]);
+                }
+
+                this.nodes[2 * node] = -1;
+            }
+
+            this.nodes[2 * node + 1] = next;
+            return next;
         }
 
         protected long getSizeInBytes()
         {
-            // 2 references, an int, and vertices. (indices are shared among all tiles)
-//            System.out.println(2 * 4 + 4 + this.vertices.length * 3 * 4);
-            return 2 * 4 + 4 + this.vertices.length * 3 * 4; // 588 bytes at a density of 3
+            // 4 references, an int, vertices and the bounding hierarchy. (indices are shared among all tiles)
+            return 4 * 4 + 4 + (this.vertices.length + this.nodeBounds.length + this.nodes.length) * 4;
+        }
+    }
+
+    /**
+     * Holds the intersections found while intersecting a line with terrain tiles, and the range of distances along the
+     * line within which intersections are sought. Depending on its mode, the state keeps every intersection, only the
+     * nearest, or only whether there is any. A state may be reset and reused for many lines.
+     */
+    protected static class IntersectionState
+    {
+        protected static final int FIND_ALL = 0;
+        protected static final int FIND_NEAREST = 1;
+        protected static final int FIND_ANY = 2;
+
+        protected int mode;
+        protected double minDistance;
+        protected double maxDistance;
+        protected double[] distances = new double[16];
+        protected int numDistances;
+
+        protected void reset(int mode, double minDistance, double maxDistance)
+        {
+            this.mode = mode;
+            this.minDistance = minDistance;
+            this.maxDistance = maxDistance;
+            this.numDistances = 0;
+        }
+
+        protected void add(double distance)
+        {
+            if (this.mode == FIND_ALL)
+            {
+                if (this.numDistances == this.distances.length)
+                    this.distances = Arrays.copyOf(this.distances, 2 * this.numDistances);
+                this.distances[this.numDistances++] = distance;
+            }
+            else
+            {
+                // Only nearer intersections are of interest from now on.
+                this.distances[0] = distance;
+                this.numDistances = 1;
+                this.maxDistance = distance;
+            }
+        }
+
+        protected boolean isDone()
+        {
+            return this.mode == FIND_ANY && this.numDistances > 0;
         }
     }
 
@@ -72,14 +208,119 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         }
     }
 
+    /**
+     * Holds the elevations of a viewshed's grid, and the number of observers seeing each grid point. Grid rows run from
+     * north to south and columns from west to east. The grid is divided into square tiles of {@link
+     * #VIEWSHED_TILE_SIZE} rows and columns, in row major order. Only the tiles within some observer's radius hold
+     * elevations, and only the tiles some observer sees hold counts, so observers far apart don't allocate the grid
+     * points between them. Each tile holding elevations has a lock guarding its counts, so that sweeps counting
+     * different tiles do not wait for one another.
+     */
+    protected static class ViewshedGrid
+    {
+        protected final int width;
+        protected final int height;
+        protected final double maxLatitude; // degrees
+        protected final double minLongitude; // degrees
+        protected final double deltaLatitude; // degrees between rows
+        protected final double deltaLongitude; // degrees between columns
+        protected final int tilesWide;
+        protected final int tilesHigh;
+        protected final float[][] elevations; // null for tiles outside every observer's radius
+        protected final int[][] counts; // null for tiles no observer sees
+        protected final Object[] locks; // null for tiles outside every observer's radius
+
+        protected ViewshedGrid(int width, int height, double maxLatitude, double minLongitude, double deltaLatitude,
+            double deltaLongitude)
+        {
+            this.width = width;
+            this.height = height;
+            this.maxLatitude = maxLatitude;
+            this.minLongitude = minLongitude;
+            this.deltaLatitude = deltaLatitude;
+            this.deltaLongitude = deltaLongitude;
+            this.tilesWide = (width + VIEWSHED_TILE_SIZE - 1) / VIEWSHED_TILE_SIZE;
+            this.tilesHigh = (height + VIEWSHED_TILE_SIZE - 1) / VIEWSHED_TILE_SIZE;
+            this.elevations = new float[this.tilesWide * this.tilesHigh][];
+            this.counts = new int[this.tilesWide * this.tilesHigh][];
+            this.locks = new Object[this.tilesWide * this.tilesHigh];
+        }
+
+        protected int getTileIndex(int row, int col)
+        {
+            return (row / VIEWSHED_TILE_SIZE) * this.tilesWide + col / VIEWSHED_TILE_SIZE;
+        }
+
+        protected static int getPointIndex(int row, int col)
+        {
+            return (row % VIEWSHED_TILE_SIZE) * VIEWSHED_TILE_SIZE + col % VIEWSHED_TILE_SIZE;
+        }
+
+        protected double getLatitude(int row)
+        {
+            return this.maxLatitude - row * this.deltaLatitude;
+        }
+
+        protected double getLongitude(int col)
+        {
+            return this.minLongitude + col * this.deltaLongitude;
+        }
+
+        /** Indicates whether a grid point is within the grid and its elevation is sampled. */
+        protected boolean contains(int row, int col)
+        {
+            return row >= 0 && row < this.height && col >= 0 && col < this.width
+                && this.elevations[this.getTileIndex(row, col)] != null;
+        }
+
+        protected float getElevation(int row, int col)
+        {
+            return this.elevations[this.getTileIndex(row, col)][getPointIndex(row, col)];
+        }
+
+        /** Adds one to the count of a grid point. Callers synchronize on the lock of the point's tile. */
+        protected void incrementCount(int row, int col)
+        {
+            int tile = this.getTileIndex(row, col);
+            if (this.counts[tile] == null)
+                this.counts[tile] = new int[VIEWSHED_TILE_SIZE * VIEWSHED_TILE_SIZE];
+
+            this.counts[tile][getPointIndex(row, col)]++;
+        }
+
+        protected Sector getSector()
+        {
+            return Sector.fromDegrees(this.getLatitude(this.height - 1), this.maxLatitude, this.minLongitude,
+                this.getLongitude(this.width - 1));
+        }
+    }
+
     protected static final int DEFAULT_DENSITY = 3;
     protected static final long DEFAULT_CACHE_CAPACITY = (long) 20e6; // about 34,000 RenderInfos at a density of 20
+    protected static final String GEOMETRY_CACHE_KEY = HighResolutionTerrain.class.getName() + ".Geometry";
+    protected static final String TILE_CACHE_KEY = HighResolutionTerrain.class.getName() + ".Tiles";
+    /** Intersections nearer than this distance, in meters, to either end of a line of sight do not block it. */
+    protected static final double VISIBILITY_TOLERANCE = 1e-3;
+    protected static final double TRIANGLE_EPSILON = 0.0000001; // the same tolerance as Triangle.intersect
+    /** The number of rows and columns of a viewshed grid tile. Each tile's elevations are sampled by one task. */
+    protected static final int VIEWSHED_TILE_SIZE = 256;
+    /**
+     * The directions of the rays swept in each quadrant of a viewshed. A ray advances one grid step in its major
+     * direction, u, and a fraction of a step in its minor direction, v, expressed as column and row increments: {u
+     * column, u row, v column, v row}. The quadrants face east, north, west and south.
+     */
+    protected static final int[][] VIEWSHED_QUADRANTS = new int[][] {{1, 0, 0, -1}, {0, -1, -1, 0}, {-1, 0, 0, 1},
+        {0, 1, 1, 0}};
+
+    /** The thread pool shared by all terrain instances for viewshed computation. Created when first needed. */
+    protected static ExecutorService viewshedService;
 
     // User-specified fields.
     protected Globe globe;
     protected Sector sector;
     protected double verticalExaggeration = 1;
     protected Long timeout;
+    protected long viewshedMemoryLimit;
 
     // Internal fields.
     protected int density = DEFAULT_DENSITY;
@@ -137,12 +378,15 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
             this.targetResolution = this.globe.getElevationModel().getBestResolution(null);
 
         this.verticalExaggeration = verticalExaggeration != null ? verticalExaggeration : 1;
+        this.viewshedMemoryLimit = Configuration.getLongValue(AVKey.VIEWSHED_MEMORY_LIMIT,
+            Runtime.getRuntime().maxMemory() / 2);
 
         this.indices = this.getIndices(this.density);
 
         this.computeDimensions();
 
-        this.geometryCache = new BasicMemoryCache((long) (0.85 * DEFAULT_CACHE_CAPACITY), DEFAULT_CACHE_CAPACITY);
+        this.geometryCache = BasicMemoryCacheSet.newMemoryCache(GEOMETRY_CACHE_KEY,
+            (long) (0.85 * DEFAULT_CACHE_CAPACITY), DEFAULT_CACHE_CAPACITY);
 //        this.geometryCache.addCacheListener(new MemoryCache.CacheListener()
 //        {
 //            public void entryRemoved(Object key, Object clientObject)
@@ -153,7 +397,7 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
 //                System.out.printf("CACHE CLEAN capacity %d, used %d, num entries %d\n", cap, cs, no);
 //            }
 //        });
-        this.tileCache = new BasicMemoryCache((long) (0.85 * 20e6), (long) 20e6);
+        this.tileCache = BasicMemoryCacheSet.newMemoryCache(TILE_CACHE_KEY, (long) (0.85 * 20e6), (long) 20e6);
     }
 
     /**
@@ -237,6 +481,31 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         this.timeout = timeout;
     }
 
+    /**
+     * Indicates the maximum amount of memory a viewshed computation may allocate.
+     *
+     * @return the viewshed memory limit, in bytes.
+     *
+     * @see #setViewshedMemoryLimit(long)
+     */
+    public synchronized long getViewshedMemoryLimit()
+    {
+        return this.viewshedMemoryLimit;
+    }
+
+    /**
+     * Specifies the maximum amount of memory a viewshed computation may allocate for its grid and ray sweeps. {@link
+     * #computeViewshed(Iterable, double, double)} estimates the memory it needs before allocating any, and fails if the
+     * estimate exceeds this limit. The initial limit is the value of the configuration property {@link
+     * AVKey#VIEWSHED_MEMORY_LIMIT}, or half the JVM's maximum memory if the property is not specified.
+     *
+     * @param limit the viewshed memory limit, in bytes.
+     */
+    public synchronized void setViewshedMemoryLimit(long limit)
+    {
+        this.viewshedMemoryLimit = limit;
+    }
+
     /**
      * Indicates the current cache capacity.
      *
@@ -391,6 +660,215 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         }
     }
 
+    /**
+     * Computes the nearest intersection with the terrain of each of many lines. Each line is specified by two positions
+     * given as six consecutive values: the first position's latitude and longitude in degrees and altitude in meters,
+     * followed by the second position's. The intersection nearest each line's first position is returned. This is
+     * faster than calling {@link #intersect(gov.nasa.worldwind.geom.Position, gov.nasa.worldwind.geom.Position)} for
+     * each line, because only the nearest intersection is sought and the working storage is shared by all the lines.
+     * <p/>
+     * This operation fails with a {@link gov.nasa.worldwind.exception.WWTimeoutException} if a timeout has been
+     * specified and it is exceeded during the operation.
+     *
+     * @param segments the lines' positions, six values per line.
+     *
+     * @return the Cartesian model-coordinate point of each line's nearest intersection, three values per line. The
+     *         values for a line are NaN if the line does not intersect the terrain.
+     *
+     * @throws IllegalArgumentException if the segments array is null or its length is not a multiple of six.
+     * @throws gov.nasa.worldwind.exception.WWTimeoutException
+     *                                  if the current timeout is exceeded while retrieving terrain data.
+     * @throws WWRuntimeException       if the operation is interrupted.
+     * @see #setTimeout(Long)
+     */
+    public double[] intersect(double[] segments)
+    {
+        if (segments == null || segments.length % 6 != 0)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", segments != null ? segments.length : 0);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        try
+        {
+            this.startTime.set(System.currentTimeMillis());
+
+            double[] points = new double[segments.length / 2];
+            IntersectionState state = new IntersectionState();
+
+            for (int i = 0; i < segments.length; i += 6)
+            {
+                Position pA = Position.fromDegrees(segments[i], segments[i + 1], segments[i + 2]);
+                Position pB = Position.fromDegrees(segments[i + 3], segments[i + 4], segments[i + 5]);
+
+                state.reset(IntersectionState.FIND_NEAREST, 0, Double.MAX_VALUE);
+                Line line = this.doIntersect(pA, pB, state);
+
+                if (line != null && state.numDistances > 0)
+                {
+                    Vec4 point = line.getPointAt(state.distances[0]);
+                    points[i / 2] = point.x;
+                    points[i / 2 + 1] = point.y;
+                    points[i / 2 + 2] = point.z;
+                }
+                else
+                {
+                    points[i / 2] = points[i / 2 + 1] = points[i / 2 + 2] = Double.NaN;
+                }
+            }
+
+            return points;
+        }
+        catch (InterruptedException e)
+        {
+            throw new WWRuntimeException(e);
+        }
+        finally
+        {
+            this.startTime.set(null); // signals that no operation is active
+        }
+    }
+
+    /**
+     * Indicates whether the terrain lies between two positions. The search stops at the first intersection found, so
+     * this is faster than {@link #intersect(gov.nasa.worldwind.geom.Position, gov.nasa.worldwind.geom.Position)} when
+     * only visibility is of interest. Intersections within a millimeter of either position are ignored, so positions
+     * on the terrain do not hide themselves. Where the terrain is nearly level with the line between the positions,
+     * give positions on the terrain a small altitude.
+     * <p/>
+     * This operation fails with a {@link gov.nasa.worldwind.exception.WWTimeoutException} if a timeout has been
+     * specified and it is exceeded during the operation.
+     *
+     * @param pA the first position.
+     * @param pB the second position.
+     *
+     * @return true if no terrain lies between the two positions, otherwise false.
+     *
+     * @throws IllegalArgumentException if either position is null.
+     * @throws gov.nasa.worldwind.exception.WWTimeoutException
+     *                                  if the current timeout is exceeded while retrieving terrain data.
+     * @throws WWRuntimeException       if the operation is interrupted.
+     * @see #setTimeout(Long)
+     */
+    public boolean isVisible(Position pA, Position pB)
+    {
+        if (pA == null || pB == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        try
+        {
+            this.startTime.set(System.currentTimeMillis());
+
+            // The line's length is not known until its end points are computed, so the state's maximum distance is
+            // set by doIntersect.
+            IntersectionState state = new IntersectionState();
+            state.reset(IntersectionState.FIND_ANY, VISIBILITY_TOLERANCE, -VISIBILITY_TOLERANCE);
+            this.doIntersect(pA, pB, state);
+
+            return state.numDistances == 0;
+        }
+        catch (InterruptedException e)
+        {
+            throw new WWRuntimeException(e);
+        }
+        finally
+        {
+            this.startTime.set(null); // signals that no operation is active
+        }
+    }
+
+    /**
+     * Computes the terrain visible from one or more observers within a specified distance of each. The result is a
+     * raster counting the observers that can see each point of a regular grid of terrain locations. The grid covers
+     * every observer's radius, limited to this instance's sector. Memory is allocated only for the parts of the grid
+     * within some observer's radius, and the operation fails before allocating any if the memory it needs exceeds the
+     * {@link #setViewshedMemoryLimit(long) viewshed memory limit}.
+     * <p/>
+     * Visibility is determined by sweeping rays from each observer's grid point to the edge of the square enclosing
+     * its radius (the R2 algorithm), tracking the steepest terrain seen so far along each ray. The terrain is lowered
+     * by the curvature of the globe. Atmospheric refraction is ignored. The elevations of the grid are sampled once
+     * from the globe's elevation model and shared by all observers. The sampling and the sweep of each quadrant of
+     * each observer's rays run in parallel.
+     * <p/>
+     * This operation fails with a {@link gov.nasa.worldwind.exception.WWTimeoutException} if a timeout has been
+     * specified and it is exceeded during the operation.
+     *
+     * @param observers  the observer positions. Observer altitudes are heights above the terrain. Observers outside
+     *                   this instance's sector are ignored.
+     * @param radius     the distance from each observer, in meters, within which to determine visibility.
+     * @param resolution the distance between grid points, in meters.
+     *
+     * @return the viewshed, or null if no observer is within this instance's sector.
+     *
+     * @throws IllegalArgumentException if the observers or any observer is null, the radius or resolution are not
+     *                                  positive, the grid would have more than 2^31 - 1 rows or columns, or the
+     *                                  computation would exceed the viewshed memory limit.
+     * @throws gov.nasa.worldwind.exception.WWTimeoutException
+     *                                  if the current timeout is exceeded while retrieving terrain data.
+     * @throws WWRuntimeException       if the operation is interrupted.
+     * @see #setTimeout(Long)
+     */
+    public Viewshed computeViewshed(Iterable<? extends Position> observers, double radius, double resolution)
+    {
+        if (observers == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionsListIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (radius <= 0)
+        {
+            String msg = Logging.getMessage("Geom.RadiusInvalid", radius);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (resolution <= 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", resolution);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        List<Position> positions = new ArrayList<Position>();
+        for (Position observer : observers)
+        {
+            if (observer == null)
+            {
+                String msg = Logging.getMessage("nullValue.PositionIsNull");
+                Logging.logger().severe(msg);
+                throw new IllegalArgumentException(msg);
+            }
+
+            if (this.sector.contains(observer))
+                positions.add(observer);
+        }
+
+        if (positions.size() == 0)
+            return null;
+
+        try
+        {
+            this.startTime.set(System.currentTimeMillis());
+
+            return this.doComputeViewshed(positions, radius, resolution);
+        }
+        catch (InterruptedException e)
+        {
+            throw new WWRuntimeException(e);
+        }
+        finally
+        {
+            this.startTime.set(null); // signals that no operation is active
+        }
+    }
+
     /**
      * Cause the tiles used by subsequent intersection calculations to be cached so that they are available immediately
      * to those subsequent calculations.
@@ -630,51 +1108,580 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
 
         Line line = new Line(ptA, ptB.subtract3(ptA).normalize3());
 
-        Intersection[] hits;
-        ArrayList<Intersection> list = new ArrayList<Intersection>();
+        IntersectionState state = new IntersectionState();
+        state.reset(IntersectionState.FIND_ALL, 0, Double.MAX_VALUE);
         for (RectTile tile : tiles)
         {
-            if (tile.extent.intersects(line))
-            {
-                if ((hits = this.intersect(tile, line)) != null)
-                    list.addAll(Arrays.asList(hits));
-            }
+            this.intersect(tile, line, state);
         }
 
-        if (list.size() == 0)
+        if (state.numDistances == 0)
             return null;
 
-        hits = new Intersection[list.size()];
-        list.toArray(hits);
-
-        if (list.size() == 1)
-            return hits;
+        // Sort the intersections by distance from line origin, nearer are first in the sorted list.
+        Arrays.sort(state.distances, 0, state.numDistances);
 
-        final Vec4 origin = line.getOrigin();
-        Arrays.sort(hits, new Comparator<Intersection>()
+        Intersection[] hits = new Intersection[state.numDistances];
+        for (int i = 0; i < hits.length; i++)
         {
-            public int compare(Intersection i1, Intersection i2)
-            {
-                if (i1 == null && i2 == null)
-                    return 0;
-                if (i2 == null)
-                    return -1;
-                if (i1 == null)
-                    return 1;
-
-                Vec4 v1 = i1.getIntersectionPoint();
-                Vec4 v2 = i2.getIntersectionPoint();
-                double d1 = origin.distanceTo3(v1);
-                double d2 = origin.distanceTo3(v2);
-                return Double.compare(d1, d2);
-            }
-        });
+            hits[i] = new Intersection(line.getPointAt(state.distances[i]), false);
+        }
 
         return hits;
     }
 
     /**
-     * Determines and creates the terrain tiles intersected by a specified line.
+     * Intersects the line between two positions with the terrain, keeping the intersections sought by a specified
+     * state. Tiles are visited in order from the first position to the second, and the search stops when the state
+     * needs no further intersections. A negative maximum distance in the state is taken relative to the distance
+     * between the two positions.
+     *
+     * @param pA    the line's first position.
+     * @param pB    the line's second position.
+     * @param state the intersection state, which receives the distances of intersections from the first position.
+     *
+     * @return the line intersected, or null if either position is outside this instance's sector or the positions
+     *         have the same location.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected Line doIntersect(Position pA, Position pB, IntersectionState state) throws InterruptedException
+    {
+        List<RectTile> tiles = this.getIntersectingTiles(pA, pB);
+        if (tiles == null)
+            return null;
+
+        RectTile tileA = this.getContainingTile(pA.getLatitude(), pA.getLongitude());
+        RectTile tileB = this.getContainingTile(pB.getLatitude(), pB.getLongitude());
+        if (tileA == null || tileB == null)
+            return null;
+
+        Vec4 ptA = this.getSurfacePoint(tileA, pA.getLatitude(), pA.getLongitude(), pA.getAltitude());
+        Vec4 ptB = this.getSurfacePoint(tileB, pB.getLatitude(), pB.getLongitude(), pB.getAltitude());
+        if (ptA == null || ptB == null)
+            return null;
+
+        if (pA.getLatitude().equals(pB.getLatitude()) && pA.getLongitude().equals(pB.getLongitude()))
+            return null;
+
+        if (state.maxDistance < 0)
+            state.maxDistance += ptA.distanceTo3(ptB);
+
+        Line line = new Line(ptA, ptB.subtract3(ptA).normalize3());
+        for (RectTile tile : tiles)
+        {
+            this.intersect(tile, line, state);
+            if (state.isDone())
+                break;
+        }
+
+        return line;
+    }
+
+    /**
+     * Computes a viewshed for observers within this instance's sector.
+     *
+     * @param observers  the observer positions.
+     * @param radius     the distance from each observer, in meters, within which to determine visibility.
+     * @param resolution the distance between grid points, in meters.
+     *
+     * @return the viewshed.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected Viewshed doComputeViewshed(List<Position> observers, double radius, double resolution)
+        throws InterruptedException
+    {
+        ViewshedGrid grid = this.createViewshedGrid(observers, radius, resolution);
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int tile = 0; tile < grid.elevations.length; tile++)
+        {
+            if (grid.elevations[tile] != null)
+                tasks.add(this.createViewshedSamplingTask(grid, tile / grid.tilesWide, tile % grid.tilesWide));
+        }
+        this.invokeViewshedTasks(tasks);
+
+        tasks.clear();
+        for (Position observer : observers)
+        {
+            for (int quadrant = 0; quadrant < VIEWSHED_QUADRANTS.length; quadrant++)
+            {
+                tasks.add(this.createViewshedSweepTask(grid, observer, quadrant, radius));
+            }
+        }
+        this.invokeViewshedTasks(tasks);
+
+        return new Viewshed(grid.getSector(), grid.width, grid.height, observers.size(), VIEWSHED_TILE_SIZE,
+            grid.counts);
+    }
+
+    /**
+     * Creates the grid of a viewshed. The grid covers the sector within the radius of every observer, limited to this
+     * instance's sector. Its points are approximately the specified resolution apart. Elevations are allocated for the
+     * grid tiles within each observer's radius. The memory needed by the computation is estimated and compared with
+     * the viewshed memory limit before any is allocated.
+     *
+     * @param observers  the observer positions.
+     * @param radius     the distance from each observer, in meters, within which to determine visibility.
+     * @param resolution the distance between grid points, in meters.
+     *
+     * @return the grid, with its elevations zero.
+     *
+     * @throws IllegalArgumentException if the grid would have more than 2^31 - 1 rows or columns, or the computation
+     *                                  would exceed the viewshed memory limit.
+     */
+    protected ViewshedGrid createViewshedGrid(List<Position> observers, double radius, double resolution)
+    {
+        double radiusDegrees = Math.toDegrees(radius / this.globe.getRadius());
+
+        Sector coverage = null;
+        for (Position observer : observers)
+        {
+            double lat = observer.getLatitude().degrees;
+            double lon = observer.getLongitude().degrees;
+            double lonRadius = radiusDegrees / Math.max(observer.getLatitude().cos(), 1e-6);
+
+            Sector observerSector = Sector.fromDegrees(Math.max(lat - radiusDegrees, -90),
+                Math.min(lat + radiusDegrees, 90), Math.max(lon - lonRadius, -180), Math.min(lon + lonRadius, 180));
+            coverage = coverage != null ? coverage.union(observerSector) : observerSector;
+        }
+        //noinspection ConstantConditions
+        coverage = coverage.intersection(this.sector);
+
+        double deltaLat = Math.toDegrees(resolution / this.globe.getRadius());
+        double deltaLon = deltaLat / Math.max(coverage.getCentroid().getLatitude().cos(), 1e-6);
+        long width = (long) Math.floor(coverage.getDeltaLonDegrees() / deltaLon) + 1;
+        long height = (long) Math.floor(coverage.getDeltaLatDegrees() / deltaLat) + 1;
+        if (width > Integer.MAX_VALUE - VIEWSHED_TILE_SIZE || height > Integer.MAX_VALUE - VIEWSHED_TILE_SIZE)
+        {
+            String msg = Logging.getMessage("generic.SizeOutOfRange", Math.max(width, height));
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // The tile arrays hold a reference to each tile's elevations, counts and lock.
+        long tilesWide = (width + VIEWSHED_TILE_SIZE - 1) / VIEWSHED_TILE_SIZE;
+        long tilesHigh = (height + VIEWSHED_TILE_SIZE - 1) / VIEWSHED_TILE_SIZE;
+        long bytes = tilesWide * tilesHigh * 24;
+        this.checkViewshedMemory(bytes);
+
+        ViewshedGrid grid = new ViewshedGrid((int) width, (int) height, coverage.getMaxLatitude().degrees,
+            coverage.getMinLongitude().degrees, deltaLat, deltaLon);
+
+        // Mark the tiles within each observer's radius. The margin covers the grid point beyond the radius that the
+        // sweep interpolates toward.
+        boolean[] sampled = new boolean[grid.elevations.length];
+        int numSampled = 0;
+        long maxSweepBytes = 0;
+        double globeRadius = this.globe.getRadius();
+        for (Position observer : observers)
+        {
+            double rowMeters = Math.toRadians(deltaLat) * globeRadius;
+            double colMeters = Math.toRadians(deltaLon) * globeRadius * Math.max(observer.getLatitude().cos(), 1e-6);
+            long numRows = (long) Math.ceil(radius / rowMeters) + 1;
+            long numCols = (long) Math.ceil(radius / colMeters) + 1;
+
+            int row = this.getViewshedRow(grid, observer);
+            int col = this.getViewshedColumn(grid, observer);
+            int minTileRow = (int) (Math.max(row - numRows, 0) / VIEWSHED_TILE_SIZE);
+            int maxTileRow = (int) (Math.min(row + numRows, grid.height - 1) / VIEWSHED_TILE_SIZE);
+            int minTileCol = (int) (Math.max(col - numCols, 0) / VIEWSHED_TILE_SIZE);
+            int maxTileCol = (int) (Math.min(col + numCols, grid.width - 1) / VIEWSHED_TILE_SIZE);
+            for (int tileRow = minTileRow; tileRow <= maxTileRow; tileRow++)
+            {
+                for (int tileCol = minTileCol; tileCol <= maxTileCol; tileCol++)
+                {
+                    if (!sampled[tileRow * grid.tilesWide + tileCol])
+                    {
+                        sampled[tileRow * grid.tilesWide + tileCol] = true;
+                        numSampled++;
+                    }
+                }
+            }
+
+            // Each sweep task marks the grid points its rays see. See sweepViewshed.
+            long n = this.getViewshedSweepSize(grid, observer, radius);
+            maxSweepBytes = Math.max(maxSweepBytes, n * (2 * n + 1));
+        }
+
+        // Each sampled tile holds elevations and, at most, counts, four bytes each per grid point. The sweeps run
+        // concurrently on each of the viewshed service's threads.
+        bytes += (long) numSampled * VIEWSHED_TILE_SIZE * VIEWSHED_TILE_SIZE * 8;
+        bytes += maxSweepBytes * Runtime.getRuntime().availableProcessors();
+        this.checkViewshedMemory(bytes);
+
+        for (int tile = 0; tile < sampled.length; tile++)
+        {
+            if (sampled[tile])
+            {
+                grid.elevations[tile] = new float[VIEWSHED_TILE_SIZE * VIEWSHED_TILE_SIZE];
+                grid.locks[tile] = new Object();
+            }
+        }
+
+        return grid;
+    }
+
+    /**
+     * Determines whether a viewshed computation's memory fits within the viewshed memory limit.
+     *
+     * @param bytes the number of bytes the computation needs.
+     *
+     * @throws IllegalArgumentException if the number of bytes exceeds the viewshed memory limit.
+     */
+    protected void checkViewshedMemory(long bytes)
+    {
+        long limit = this.getViewshedMemoryLimit();
+        if (bytes > limit)
+        {
+            String msg = Logging.getMessage("HighResolutionTerrain.ViewshedMemoryLimitExceeded", bytes, limit);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /** Returns the grid row nearest an observer. */
+    protected int getViewshedRow(ViewshedGrid grid, Position observer)
+    {
+        int row = (int) Math.round((grid.maxLatitude - observer.getLatitude().degrees) / grid.deltaLatitude);
+        return Math.max(0, Math.min(row, grid.height - 1));
+    }
+
+    /** Returns the grid column nearest an observer. */
+    protected int getViewshedColumn(ViewshedGrid grid, Position observer)
+    {
+        int col = (int) Math.round((observer.getLongitude().degrees - grid.minLongitude) / grid.deltaLongitude);
+        return Math.max(0, Math.min(col, grid.width - 1));
+    }
+
+    /** Returns the number of grid steps swept by each of an observer's rays. */
+    protected int getViewshedSweepSize(ViewshedGrid grid, Position observer, double radius)
+    {
+        double globeRadius = this.globe.getRadius();
+        double rowMeters = Math.toRadians(grid.deltaLatitude) * globeRadius;
+        double colMeters = Math.toRadians(grid.deltaLongitude) * globeRadius
+            * Math.max(observer.getLatitude().cos(), 1e-6);
+
+        return (int) Math.min(Math.ceil(radius / Math.min(rowMeters, colMeters)), Math.max(grid.width, grid.height));
+    }
+
+    protected Callable<Void> createViewshedSamplingTask(final ViewshedGrid grid, final int tileRow,
+        final int tileCol)
+    {
+        return new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                sampleViewshedElevations(grid, tileRow, tileCol);
+                return null;
+            }
+        };
+    }
+
+    protected Callable<Void> createViewshedSweepTask(final ViewshedGrid grid, final Position observer,
+        final int quadrant, final double radius)
+    {
+        return new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                sweepViewshed(grid, observer, quadrant, radius);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Runs viewshed tasks in parallel and waits for them to finish. Each task applies the timeout of the calling
+     * thread's operation.
+     *
+     * @param tasks the tasks to run.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected void invokeViewshedTasks(List<Callable<Void>> tasks) throws InterruptedException
+    {
+        final Long operationStartTime = this.startTime.get();
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+        try
+        {
+            for (final Callable<Void> task : tasks)
+            {
+                futures.add(getViewshedService().submit(new Callable<Void>()
+                {
+                    public Void call() throws Exception
+                    {
+                        startTime.set(operationStartTime);
+                        try
+                        {
+                            return task.call();
+                        }
+                        finally
+                        {
+                            startTime.set(null);
+                        }
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+
+            throw new WWRuntimeException(e.getCause());
+        }
+        finally
+        {
+            // Cancel the remaining tasks if one failed or the operation was interrupted.
+            for (Future<Void> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Samples the elevations of one tile of a viewshed's grid.
+     *
+     * @param grid    the viewshed grid.
+     * @param tileRow the row of the tile to sample.
+     * @param tileCol the column of the tile to sample.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     * @throws gov.nasa.worldwind.exception.WWTimeoutException
+     *                              if terrain data retrieval exceeds the current timeout.
+     */
+    protected void sampleViewshedElevations(ViewshedGrid grid, int tileRow, int tileCol) throws InterruptedException
+    {
+        int firstRow = tileRow * VIEWSHED_TILE_SIZE;
+        int lastRow = Math.min(firstRow + VIEWSHED_TILE_SIZE, grid.height);
+        int firstCol = tileCol * VIEWSHED_TILE_SIZE;
+        int lastCol = Math.min(firstCol + VIEWSHED_TILE_SIZE, grid.width);
+
+        int numSamples = (lastRow - firstRow) * (lastCol - firstCol);
+        double[] latitudes = new double[numSamples];
+        double[] longitudes = new double[numSamples];
+        double[] elevations = new double[numSamples];
+
+        for (int row = firstRow, i = 0; row < lastRow; row++)
+        {
+            for (int col = firstCol; col < lastCol; col++, i++)
+            {
+                latitudes[i] = grid.getLatitude(row);
+                longitudes[i] = grid.getLongitude(col);
+            }
+        }
+
+        // The tile's sector extends to the next row and column so that it has some size even when the tile is a
+        // single row or column.
+        Sector tileSector = Sector.fromDegrees(grid.getLatitude(Math.min(lastRow, grid.height - 1)),
+            grid.getLatitude(firstRow), grid.getLongitude(firstCol), grid.getLongitude(Math.min(lastCol,
+            grid.width - 1)));
+
+        double gridResolution = Math.toRadians(grid.deltaLatitude);
+        double localTargetResolution = Math.max(gridResolution,
+            Math.max(this.globe.getElevationModel().getBestResolution(tileSector), this.targetResolution));
+        this.getElevations(tileSector, latitudes, longitudes, localTargetResolution, elevations);
+
+        float[] tile = grid.elevations[tileRow * grid.tilesWide + tileCol];
+        for (int row = firstRow, i = 0; row < lastRow; row++)
+        {
+            for (int col = firstCol; col < lastCol; col++, i++)
+            {
+                tile[ViewshedGrid.getPointIndex(row, col)] = (float) (this.verticalExaggeration * elevations[i]);
+            }
+        }
+    }
+
+    /**
+     * Sweeps the rays of one quadrant of an observer's viewshed, and adds the observer to the count of each grid point
+     * the quadrant's rays see. Each quadrant counts only the grid points in a wedge that no other quadrant counts, so
+     * that each observer is counted at most once per grid point.
+     *
+     * @param grid     the viewshed grid, with its elevations sampled.
+     * @param observer the observer position.
+     * @param quadrant the quadrant to sweep, an index into {@link #VIEWSHED_QUADRANTS}.
+     * @param radius   the distance from the observer, in meters, within which to determine visibility.
+     */
+    protected void sweepViewshed(ViewshedGrid grid, Position observer, int quadrant, double radius)
+    {
+        // The observer is placed at the nearest grid point.
+        int observerRow = this.getViewshedRow(grid, observer);
+        int observerCol = this.getViewshedColumn(grid, observer);
+
+        double globeRadius = this.globe.getRadius();
+        double rowMeters = Math.toRadians(grid.deltaLatitude) * globeRadius;
+        double colMeters = Math.toRadians(grid.deltaLongitude) * globeRadius
+            * Math.max(observer.getLatitude().cos(), 1e-6);
+        double observerHeight = grid.getElevation(observerRow, observerCol) + observer.getAltitude();
+
+        int uCol = VIEWSHED_QUADRANTS[quadrant][0];
+        int uRow = VIEWSHED_QUADRANTS[quadrant][1];
+        int vCol = VIEWSHED_QUADRANTS[quadrant][2];
+        int vRow = VIEWSHED_QUADRANTS[quadrant][3];
+
+        // The quadrant's rays end at the grid points of one side of the square enclosing the radius. A ray's grid
+        // point u steps from the observer and v steps across is marked visible at index (u - 1) * size + v + n.
+        int n = this.getViewshedSweepSize(grid, observer, radius);
+        int size = 2 * n + 1;
+        boolean[] visible = new boolean[n * size];
+
+        for (int end = -n; end <= n; end++)
+        {
+            double maxSlope = -Double.MAX_VALUE;
+
+            for (int u = 1; u <= n; u++)
+            {
+                // Interpolate the terrain between the two grid points the ray passes between.
+                double v = (double) end * u / n;
+                int v0 = (int) Math.floor(v);
+                double t = v - v0;
+
+                int row = observerRow + u * uRow + v0 * vRow;
+                int col = observerCol + u * uCol + v0 * vCol;
+                if (!grid.contains(row, col) || (t > 0 && !grid.contains(row + vRow, col + vCol)))
+                    break;
+
+                double z = grid.getElevation(row, col);
+                if (t > 0)
+                    z += t * (grid.getElevation(row + vRow, col + vCol) - z);
+
+                double dx = (u * uCol + v * vCol) * colMeters;
+                double dy = (u * uRow + v * vRow) * rowMeters;
+                double distanceSquared = dx * dx + dy * dy;
+                if (distanceSquared > radius * radius)
+                    break;
+
+                // Lower the terrain by the distance the globe's surface falls below the observer's horizon plane.
+                double slope = (z - distanceSquared / (2 * globeRadius) - observerHeight) / Math.sqrt(distanceSquared);
+                if (slope >= maxSlope)
+                {
+                    maxSlope = slope;
+
+                    // This quadrant counts the grid points with -u < v <= u. The neighboring quadrant counts v = -u.
+                    int nearestV = (int) Math.round(v);
+                    if (nearestV > -u)
+                        visible[(u - 1) * size + nearestV + n] = true;
+                }
+            }
+        }
+
+        this.countViewshedPoints(grid, observerRow, observerCol, quadrant, visible, n, rowMeters, colMeters, radius);
+    }
+
+    /**
+     * Adds an observer to the count of each grid point that a sweep of one quadrant marked visible. The points are
+     * counted one grid tile at a time while holding only that tile's lock, so sweeps of other quadrants and observers
+     * count other tiles at the same time.
+     *
+     * @param grid        the viewshed grid.
+     * @param observerRow the grid row of the observer.
+     * @param observerCol the grid column of the observer.
+     * @param quadrant    the quadrant swept, an index into {@link #VIEWSHED_QUADRANTS}.
+     * @param visible     the visible flags of the quadrant's grid points, indexed as in {@link #sweepViewshed}.
+     * @param n           the number of grid points from the observer to the side of the quadrant's square.
+     * @param rowMeters   the distance between grid rows at the observer, in meters.
+     * @param colMeters   the distance between grid columns at the observer, in meters.
+     * @param radius      the distance from the observer, in meters, within which to count grid points.
+     */
+    protected void countViewshedPoints(ViewshedGrid grid, int observerRow, int observerCol, int quadrant,
+        boolean[] visible, int n, double rowMeters, double colMeters, double radius)
+    {
+        int uCol = VIEWSHED_QUADRANTS[quadrant][0];
+        int uRow = VIEWSHED_QUADRANTS[quadrant][1];
+        int vCol = VIEWSHED_QUADRANTS[quadrant][2];
+        int vRow = VIEWSHED_QUADRANTS[quadrant][3];
+        int size = 2 * n + 1;
+
+        if (quadrant == 0)
+        {
+            synchronized (grid.locks[grid.getTileIndex(observerRow, observerCol)])
+            {
+                grid.incrementCount(observerRow, observerCol);
+            }
+        }
+
+        // The quadrant's grid points lie within the rectangle of u from 1 to n and v from -n to n. One of u and v
+        // steps across rows and the other across columns.
+        int rowA = observerRow + uRow + n * vRow;
+        int rowB = observerRow + n * uRow - n * vRow;
+        int colA = observerCol + uCol + n * vCol;
+        int colB = observerCol + n * uCol - n * vCol;
+        int minRow = Math.max(Math.min(rowA, rowB), 0);
+        int maxRow = Math.min(Math.max(rowA, rowB), grid.height - 1);
+        int minCol = Math.max(Math.min(colA, colB), 0);
+        int maxCol = Math.min(Math.max(colA, colB), grid.width - 1);
+
+        for (int tileRow = minRow / VIEWSHED_TILE_SIZE; tileRow <= maxRow / VIEWSHED_TILE_SIZE; tileRow++)
+        {
+            for (int tileCol = minCol / VIEWSHED_TILE_SIZE; tileCol <= maxCol / VIEWSHED_TILE_SIZE; tileCol++)
+            {
+                // The sweep sees no grid points in tiles without elevations.
+                Object lock = grid.locks[tileRow * grid.tilesWide + tileCol];
+                if (lock == null)
+                    continue;
+
+                int firstRow = Math.max(minRow, tileRow * VIEWSHED_TILE_SIZE);
+                int lastRow = Math.min(maxRow, tileRow * VIEWSHED_TILE_SIZE + VIEWSHED_TILE_SIZE - 1);
+                int firstCol = Math.max(minCol, tileCol * VIEWSHED_TILE_SIZE);
+                int lastCol = Math.min(maxCol, tileCol * VIEWSHED_TILE_SIZE + VIEWSHED_TILE_SIZE - 1);
+
+                synchronized (lock)
+                {
+                    for (int row = firstRow; row <= lastRow; row++)
+                    {
+                        for (int col = firstCol; col <= lastCol; col++)
+                        {
+                            // This quadrant counts the grid points with -u < v <= u.
+                            int u = (row - observerRow) * uRow + (col - observerCol) * uCol;
+                            int v = (row - observerRow) * vRow + (col - observerCol) * vCol;
+                            if (u < 1 || u > n || v <= -u || v > u || !visible[(u - 1) * size + v + n])
+                                continue;
+
+                            double dx = (u * uCol + v * vCol) * colMeters;
+                            double dy = (u * uRow + v * vRow) * rowMeters;
+                            if (dx * dx + dy * dy > radius * radius)
+                                continue;
+
+                            grid.incrementCount(row, col);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    protected static synchronized ExecutorService getViewshedService()
+    {
+        if (viewshedService == null)
+        {
+            viewshedService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                new ThreadFactory()
+                {
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable, "Viewshed");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+
+        return viewshedService;
+    }
+
+    /**
+     * Determines and creates the terrain tiles intersected by a specified line.
      *
      * @param pA the line's first position.
      * @param pB the line's second position.
@@ -693,7 +1700,8 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         if (cells == null || cells.size() == 0)
             return null;
 
-        List<RectTile> tiles = new ArrayList<RectTile>(3 * cells.size());
+        // Neighboring cells share neighbors, so keep only the first occurrence of each tile, in order along the line.
+        Set<RectTile> tiles = new LinkedHashSet<RectTile>(3 * cells.size());
         for (Point cell : cells)
         {
             RectTile centerCell = this.createTile(cell.y, cell.x);
@@ -715,7 +1723,7 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
                 tiles.add(rightCell);
         }
 
-        return tiles.size() > 0 ? tiles : null;
+        return tiles.size() > 0 ? new ArrayList<RectTile>(tiles) : null;
     }
 
     /**
@@ -784,17 +1792,34 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         LatLon centroid = tile.sector.getCentroid();
         Vec4 refCenter = globe.computePointFromPosition(centroid.getLatitude(), centroid.getLongitude(), 0d);
 
-        int ie = 0;
-        int iv = 0;
-        Iterator<LatLon> latLonIter = latlons.iterator();
-        for (int j = 0; j <= density; j++)
+        for (int i = 0; i < elevations.length; i++)
         {
-            for (int i = 0; i <= density; i++)
+            elevations[i] *= this.verticalExaggeration;
+        }
+
+        if (this.globe instanceof EllipsoidalGlobe)
+        {
+            // The locations form a grid, so the globe converts them a row and a column at a time.
+            int n = density + 1;
+            double[] latitudes = new double[n];
+            double[] longitudes = new double[n];
+            for (int i = 0; i < n; i++)
             {
-                LatLon latlon = latLonIter.next();
-                double elevation = this.verticalExaggeration * elevations[ie++];
+                latitudes[i] = latlons.get(i * n).getLatitude().radians;
+                longitudes[i] = latlons.get(i).getLongitude().radians;
+            }
 
-                Vec4 p = this.globe.computePointFromPosition(latlon.getLatitude(), latlon.getLongitude(), elevation);
+            ((EllipsoidalGlobe) this.globe).computePointsFromGrid(latitudes, longitudes, n, n, elevations, refCenter,
+                FloatBuffer.wrap(verts));
+        }
+        else
+        {
+            int iv = 0;
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                LatLon latlon = latlons.get(i);
+                Vec4 p = this.globe.computePointFromPosition(latlon.getLatitude(), latlon.getLongitude(),
+                    elevations[i]);
                 verts[iv++] = (float) (p.x - refCenter.x);
                 verts[iv++] = (float) (p.y - refCenter.y);
                 verts[iv++] = (float) (p.z - refCenter.z);
@@ -833,6 +1858,44 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         return actualResolution;
     }
 
+    protected double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] elevations) throws InterruptedException
+    {
+        // Globes other than ellipsoidal globes accept only a list of locations.
+        if (!(this.globe instanceof EllipsoidalGlobe))
+        {
+            List<LatLon> latlons = new ArrayList<LatLon>(latitudes.length);
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                latlons.add(LatLon.fromDegrees(latitudes[i], longitudes[i]));
+            }
+
+            return this.getElevations(sector, latlons, targetResolution, elevations);
+        }
+
+        EllipsoidalGlobe globe = (EllipsoidalGlobe) this.globe;
+        double actualResolution = Double.MAX_VALUE;
+        while (actualResolution > targetResolution)
+        {
+            actualResolution = globe.getElevations(sector, latitudes, longitudes, targetResolution, elevations);
+            if (actualResolution <= targetResolution)
+                break;
+
+            // Give the system a chance to retrieve data from the disk cache or the server. Also catches interrupts
+            // and throws interrupt exceptions.
+            Thread.sleep(5);
+
+            Long timeout = this.getTimeout();
+            if (this.startTime.get() != null && timeout != null)
+            {
+                if (System.currentTimeMillis() - this.startTime.get() > timeout)
+                    throw new WWRuntimeException("Terrain convergence timed out");
+            }
+        }
+
+        return actualResolution;
+    }
+
     /**
      * Computes the tile's cell locations, determined by the tile's density and sector.
      *
@@ -1065,6 +2128,9 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
      */
     protected Intersection[] intersect(RectTile tile, Line line) throws InterruptedException
     {
+        if (!tile.extent.intersects(line))
+            return null;
+
         if (tile.ri == null)
             this.makeVerts(tile);
 
@@ -1140,6 +2206,212 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         return hits;
     }
 
+    /**
+     * Intersects a line with a tile, adding the distances of intersections within the state's range to the state. Only
+     * the triangles of cells whose bounds the line passes through are tested.
+     *
+     * @param tile  the tile.
+     * @param line  the line, whose direction must be a unit vector.
+     * @param state the intersection state.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected void intersect(RectTile tile, Line line, IntersectionState state) throws InterruptedException
+    {
+        if (!tile.extent.intersects(line))
+            return;
+
+        if (tile.ri == null)
+            this.makeVerts(tile);
+
+        RenderInfo ri = tile.ri;
+        if (ri == null)
+            return;
+
+        Vec4 origin = line.getOrigin();
+        Vec4 dir = line.getDirection();
+
+        double cx = ri.referenceCenter.x;
+        double cy = ri.referenceCenter.y;
+        double cz = ri.referenceCenter.z;
+
+        // The bounds are relative to the reference center.
+        double ox = origin.x - cx;
+        double oy = origin.y - cy;
+        double oz = origin.z - cz;
+        double ix = 1 / dir.x;
+        double iy = 1 / dir.y;
+        double iz = 1 / dir.z;
+
+        int n = ri.density + 1;
+        float[] coords = ri.vertices;
+        int numNodes = ri.nodes.length / 2;
+
+        for (int node = 0; node < numNodes; )
+        {
+            if (!intersectsBounds(ri.nodeBounds, node, ox, oy, oz, ix, iy, iz, state.minDistance, state.maxDistance))
+            {
+                node = ri.nodes[2 * node + 1]; // skip the subtree
+                continue;
+            }
+
+            int cell = ri.nodes[2 * node];
+            if (cell >= 0)
+            {
+                // Test the cell's two triangles, the same ones tested by intersect(RectTile, Line).
+                int k = ((cell / ri.density) * n + cell % ri.density) * 3;
+                int kb = k + 3;
+                int kc = kb + n * 3;
+                int kd = kc - 3;
+
+                double t = intersectTriangle(origin, dir, coords, k, kb, kc, cx, cy, cz);
+                if (t >= state.minDistance && t <= state.maxDistance)
+                {
+                    state.add(t);
+                    if (state.isDone())
+                        return;
+                }
+
+                t = intersectTriangle(origin, dir, coords, k, kc, kd, cx, cy, cz);
+                if (t >= state.minDistance && t <= state.maxDistance)
+                {
+                    state.add(t);
+                    if (state.isDone())
+                        return;
+                }
+            }
+
+            node++;
+        }
+    }
+
+    /**
+     * Determines whether a line passes through a node's bounds within a range of distances along the line.
+     *
+     * @param bounds      the bounds of every node.
+     * @param node        the node.
+     * @param ox          the x coordinate of the line's origin, relative to the bounds' reference center.
+     * @param oy          the y coordinate of the line's origin.
+     * @param oz          the z coordinate of the line's origin.
+     * @param ix          the reciprocal of the x component of the line's direction.
+     * @param iy          the reciprocal of the y component of the line's direction.
+     * @param iz          the reciprocal of the z component of the line's direction.
+     * @param minDistance the minimum distance along the line.
+     * @param maxDistance the maximum distance along the line.
+     *
+     * @return true if the line passes through the bounds within the range, otherwise false.
+     */
+    protected static boolean intersectsBounds(float[] bounds, int node, double ox, double oy, double oz, double ix,
+        double iy, double iz, double minDistance, double maxDistance)
+    {
+        // Clip the range to each pair of planes bounding the node. A zero direction component gives infinite
+        // distances, or NaN when the origin is on a plane; comparisons with NaN are false so NaN leaves the range
+        // unchanged.
+        int b = 6 * node;
+        double t0 = (bounds[b] - ox) * ix;
+        double t1 = (bounds[b + 1] - ox) * ix;
+        if (t0 > t1)
+        {
+            double t = t0;
+            t0 = t1;
+            t1 = t;
+        }
+        if (t0 > minDistance)
+            minDistance = t0;
+        if (t1 < maxDistance)
+            maxDistance = t1;
+
+        t0 = (bounds[b + 2] - oy) * iy;
+        t1 = (bounds[b + 3] - oy) * iy;
+        if (t0 > t1)
+        {
+            double t = t0;
+            t0 = t1;
+            t1 = t;
+        }
+        if (t0 > minDistance)
+            minDistance = t0;
+        if (t1 < maxDistance)
+            maxDistance = t1;
+
+        t0 = (bounds[b + 4] - oz) * iz;
+        t1 = (bounds[b + 5] - oz) * iz;
+        if (t0 > t1)
+        {
+            double t = t0;
+            t0 = t1;
+            t1 = t;
+        }
+        if (t0 > minDistance)
+            minDistance = t0;
+        if (t1 < maxDistance)
+            maxDistance = t1;
+
+        return minDistance <= maxDistance;
+    }
+
+    /**
+     * Intersects a line with a triangle of a tile, using the computation of {@link Triangle#intersect(Line, double,
+     * double, double, double, double, double, double, double, double)} without creating objects.
+     *
+     * @param origin the line's origin.
+     * @param dir    the line's direction.
+     * @param coords the tile's vertices, relative to the reference center.
+     * @param ka     the index of the triangle's first vertex in the vertex array.
+     * @param kb     the index of the triangle's second vertex.
+     * @param kc     the index of the triangle's third vertex.
+     * @param cx     the x coordinate of the reference center.
+     * @param cy     the y coordinate of the reference center.
+     * @param cz     the z coordinate of the reference center.
+     *
+     * @return the distance along the line to the intersection, or -1 if the line does not intersect the triangle in
+     *         the direction of the line.
+     */
+    protected static double intersectTriangle(Vec4 origin, Vec4 dir, float[] coords, int ka, int kb, int kc,
+        double cx, double cy, double cz)
+    {
+        double vax = coords[ka] + cx;
+        double vay = coords[ka + 1] + cy;
+        double vaz = coords[ka + 2] + cz;
+
+        double edge1x = coords[kb] + cx - vax;
+        double edge1y = coords[kb + 1] + cy - vay;
+        double edge1z = coords[kb + 2] + cz - vaz;
+
+        double edge2x = coords[kc] + cx - vax;
+        double edge2y = coords[kc + 1] + cy - vay;
+        double edge2z = coords[kc + 2] + cz - vaz;
+
+        double pvecx = (dir.y * edge2z) - (dir.z * edge2y);
+        double pvecy = (dir.z * edge2x) - (dir.x * edge2z);
+        double pvecz = (dir.x * edge2y) - (dir.y * edge2x);
+
+        double det = edge1x * pvecx + edge1y * pvecy + edge1z * pvecz;
+        if (det > -TRIANGLE_EPSILON && det < TRIANGLE_EPSILON) // the line lies in the plane of the triangle
+            return -1;
+
+        double detInv = 1d / det;
+
+        double tvecx = origin.x - vax;
+        double tvecy = origin.y - vay;
+        double tvecz = origin.z - vaz;
+
+        double u = detInv * (tvecx * pvecx + tvecy * pvecy + tvecz * pvecz);
+        if (u < 0 || u > 1)
+            return -1;
+
+        double qvecx = (tvecy * edge1z) - (tvecz * edge1y);
+        double qvecy = (tvecz * edge1x) - (tvecx * edge1z);
+        double qvecz = (tvecx * edge1y) - (tvecy * edge1x);
+
+        double v = detInv * (dir.x * qvecx + dir.y * qvecy + dir.z * qvecz);
+        if (v < 0 || u + v > 1)
+            return -1;
+
+        double t = detInv * (edge2x * qvecx + edge2y * qvecy + edge2z * qvecz);
+        return t >= 0 ? t : -1;
+    }
+
     /**
      * Computes the buffer of indices forming a tile.
      *
@@ -12,7 +12,7 @@ import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.geom.Cylinder;
-import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.globes.*;
 import gov.nasa.worldwind.pick.*;
 import gov.nasa.worldwind.render.*;
 import gov.nasa.worldwind.util.*;
@@ -22,8 +22,19 @@ import java.awt.*;
 import java.nio.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.logging.Level;
 
 /**
+ * Tessellates a globe into a quadtree of rectangular tiles of constant vertex density.
+ * <p/>
+ * By default a tile's vertices are computed on the render thread the first frame the tile is needed. When background
+ * building is enabled, see {@link #setBuildInBackground(boolean)}, a tile whose vertices are not cached is instead
+ * queued for a pool of worker threads, and its nearest ancestor with cached vertices is drawn in its place until the
+ * tile's vertices are ready. Vertices completed by the workers are installed at the start of a frame, within a
+ * per-frame time budget. Expired vertices are likewise rebuilt in the background while the expired vertices continue
+ * to be drawn. The build latency and the number of pending builds are reported as per-frame performance statistics.
+ *
  * @author tag
  * @version $Id$
  */
@@ -155,6 +166,7 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         protected final double log10CellSize;
         protected Extent extent; // extent of sector in object coordinates
         protected RenderInfo ri;
+        protected RectTile parent; // the tile this tile was split from during the current frame
 
         protected int minColorCode = 0;
         protected int maxColorCode = 0;
@@ -375,6 +387,10 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
     protected static final int DEFAULT_DENSITY = 20;
     protected static final String CACHE_NAME = "Terrain";
     protected static final String CACHE_ID = RectangularTessellator.class.getName();
+    /** The default time, in milliseconds, the render thread may spend on vertices each frame in background mode. */
+    protected static final long DEFAULT_FRAME_BUILD_BUDGET = 4;
+    /** The time, in milliseconds, after which a background build that has not been requested again is abandoned. */
+    protected static final long STALE_BUILD_LIMIT = 1000;
 
     // Tri-strip indices and texture coordinates. These depend only on density and can therefore be statically cached.
     protected static final HashMap<Integer, FloatBuffer> textureCoords = new HashMap<Integer, FloatBuffer>();
@@ -398,6 +414,114 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
     protected Globe globe;
     protected int density = DEFAULT_DENSITY;
     protected long updateFrequency = 2000; // milliseconds
+    protected boolean buildInBackground = Configuration.getBooleanValue(
+        AVKey.RECTANGULAR_TESSELLATOR_BUILD_IN_BACKGROUND, false);
+    protected long frameBuildBudget = DEFAULT_FRAME_BUILD_BUDGET;
+    protected final ConcurrentHashMap<CacheKey, BuildTask> pendingBuilds = new ConcurrentHashMap<CacheKey, BuildTask>();
+    protected final Queue<BuildTask> completedBuilds = new ConcurrentLinkedQueue<BuildTask>();
+    protected double buildLatency; // smoothed background build latency, in milliseconds
+
+    /** The worker threads shared by all tessellators building vertices in the background. */
+    protected static ExecutorService buildService;
+    /** Scratch buffers for vertex computation, reused by each thread for every tile it builds. */
+    protected static final ThreadLocal<VertexBuffers> vertexBuffers = new ThreadLocal<VertexBuffers>()
+    {
+        @Override
+        protected VertexBuffers initialValue()
+        {
+            return new VertexBuffers();
+        }
+    };
+
+    /** Holds the per-thread scratch buffers used to compute a tile's vertices without allocating per vertex. */
+    protected static class VertexBuffers
+    {
+        protected double[] rowLatitudes = new double[0];
+        protected double[] columnLongitudes = new double[0];
+        protected double[] rowLatitudeRadians = new double[0];
+        protected double[] columnLongitudeRadians = new double[0];
+        protected double[] elevations = new double[0];
+        protected double[] vertexLatitudes = new double[0];
+        protected double[] vertexLongitudes = new double[0];
+
+        /**
+         * Ensures the buffers can hold a grid with a specified number of rows and columns.
+         *
+         * @param numLocations the number of rows and columns.
+         */
+        public void ensureCapacity(int numLocations)
+        {
+            if (this.rowLatitudes.length < numLocations)
+            {
+                this.rowLatitudes = new double[numLocations];
+                this.columnLongitudes = new double[numLocations];
+                this.rowLatitudeRadians = new double[numLocations];
+                this.columnLongitudeRadians = new double[numLocations];
+            }
+
+            // The elevation query takes one location per array element, so the location arrays must be exactly
+            // the size of the grid.
+            int numVertices = numLocations * numLocations;
+            if (this.vertexLatitudes.length != numVertices)
+            {
+                this.vertexLatitudes = new double[numVertices];
+                this.vertexLongitudes = new double[numVertices];
+                this.elevations = new double[numVertices];
+            }
+        }
+    }
+
+    /** Computes a tile's vertices on a worker thread, to be installed by the render thread when complete. */
+    protected static class BuildTask implements Runnable
+    {
+        protected final RectangularTessellator tessellator;
+        protected final RectTile tile;
+        protected final CacheKey cacheKey;
+        protected final Globe globe;
+        protected final double verticalExaggeration;
+        protected final boolean makeSkirts;
+        protected final long submitTime;
+        protected volatile long requestTime;
+        protected FloatBuffer vertices;
+        protected Vec4 referenceCenter;
+
+        public BuildTask(DrawContext dc, RectangularTessellator tessellator, RectTile tile, CacheKey cacheKey)
+        {
+            this.tessellator = tessellator;
+            this.tile = tile;
+            this.cacheKey = cacheKey;
+            this.globe = dc.getGlobe();
+            this.verticalExaggeration = dc.getVerticalExaggeration();
+            this.makeSkirts = tessellator.isMakeTileSkirts();
+            this.submitTime = System.currentTimeMillis();
+            this.requestTime = this.submitTime;
+        }
+
+        public void run()
+        {
+            // Abandon the build if the tile has left the view since it was queued.
+            if (System.currentTimeMillis() - this.requestTime > STALE_BUILD_LIMIT)
+            {
+                this.tessellator.pendingBuilds.remove(this.cacheKey, this);
+                return;
+            }
+
+            try
+            {
+                int numVertices = (this.tile.density + 3) * (this.tile.density + 3);
+                this.vertices = BufferUtil.newFloatBuffer(numVertices * 3);
+                this.referenceCenter = this.tessellator.computeVertices(this.globe, this.tile,
+                    this.verticalExaggeration, this.makeSkirts, this.vertices);
+                this.tessellator.completedBuilds.add(this);
+            }
+            catch (Throwable t)
+            {
+                this.tessellator.pendingBuilds.remove(this.cacheKey, this);
+                Logging.logger().log(Level.SEVERE, Logging.getMessage("generic.ExceptionWhileTessellating",
+                    this.tile.getSector()), t);
+            }
+        }
+    }
 
     public SectorGeometryList tessellate(DrawContext dc)
     {
@@ -418,7 +542,7 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         if (!WorldWind.getMemoryCacheSet().containsCache(CACHE_ID))
         {
             long size = Configuration.getLongValue(AVKey.SECTOR_GEOMETRY_CACHE_SIZE, 10000000L);
-            MemoryCache cache = new BasicMemoryCache((long) (0.85 * size), size);
+            MemoryCache cache = BasicMemoryCacheSet.newMemoryCache(CACHE_ID, (long) (0.85 * size), size);
             cache.setName(CACHE_NAME);
             WorldWind.getMemoryCacheSet().addCache(CACHE_ID, cache);
         }
@@ -440,9 +564,20 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
 
         this.currentTiles.setSector(this.currentCoverage);
 
-        for (SectorGeometry tile : this.currentTiles)
+        if (this.isBuildInBackground())
+        {
+            this.makeVertsInBackground(dc);
+        }
+        else
         {
-            this.makeVerts(dc, (RectTile) tile);
+            // Discard any builds left over from when background building was last enabled.
+            this.pendingBuilds.clear();
+            this.completedBuilds.clear();
+
+            for (SectorGeometry tile : this.currentTiles)
+            {
+                this.makeVerts(dc, (RectTile) tile);
+            }
         }
 
         return this.currentTiles;
@@ -500,6 +635,60 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         this.makeTileSkirts = makeTileSkirts;
     }
 
+    /**
+     * Indicates whether tile vertices are computed on worker threads rather than on the render thread.
+     *
+     * @return true if vertices are built in the background, otherwise false.
+     */
+    public boolean isBuildInBackground()
+    {
+        return this.buildInBackground;
+    }
+
+    /**
+     * Specifies whether tile vertices are computed on worker threads rather than on the render thread. When building
+     * in the background, a tile whose vertices are not ready is drawn using the vertices of its nearest ancestor that
+     * has them. The initial value is taken from the configuration property
+     * <code>gov.nasa.worldwind.avkey.RectangularTessellatorBuildInBackground</code>, and is false if not specified.
+     *
+     * @param buildInBackground true to build vertices in the background, otherwise false.
+     */
+    public void setBuildInBackground(boolean buildInBackground)
+    {
+        this.buildInBackground = buildInBackground;
+    }
+
+    /**
+     * Returns the time the render thread may spend each frame installing vertices built in the background.
+     *
+     * @return the per-frame build budget, in milliseconds.
+     */
+    public long getFrameBuildBudget()
+    {
+        return this.frameBuildBudget;
+    }
+
+    /**
+     * Specifies the time the render thread may spend each frame installing vertices built in the background. At least
+     * one completed tile is installed each frame regardless of the budget. Tiles with no ancestor to draw in their
+     * place are built on the render thread within the same budget, see {@link #makeVertsInBackground(DrawContext)}.
+     *
+     * @param frameBuildBudget the per-frame build budget, in milliseconds.
+     *
+     * @throws IllegalArgumentException if the budget is negative.
+     */
+    public void setFrameBuildBudget(long frameBuildBudget)
+    {
+        if (frameBuildBudget < 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", frameBuildBudget);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.frameBuildBudget = frameBuildBudget;
+    }
+
     public long getUpdateFrequency()
     {
         return this.updateFrequency;
@@ -586,6 +775,11 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         subTiles[2] = this.createTile(dc, sectors[2], tile.level + 1);
         subTiles[3] = this.createTile(dc, sectors[3], tile.level + 1);
 
+        for (RectTile subTile : subTiles)
+        {
+            subTile.parent = tile;
+        }
+
         return subTiles;
     }
 
@@ -609,6 +803,230 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
             cache.add(cacheKey, tile.ri, tile.ri.getSizeInBytes());
     }
 
+    /**
+     * Makes the vertices of the current tiles when building in the background. Builds completed since the last frame
+     * are installed first, within the frame build budget. Tiles whose vertices are cached are drawn with those
+     * vertices, and expired vertices are rebuilt in the background. A tile whose vertices are not cached is queued for
+     * building and replaced in the current tiles by its nearest ancestor that has cached vertices.
+     * <p/>
+     * A tile with no such ancestor is built on the render thread while the frame build budget lasts. Once the budget is
+     * spent, the tile's top-level ancestor is built instead and drawn in place of all its descendants, so that at most
+     * one tile per top-level tile is built on the render thread after the budget is spent.
+     *
+     * @param dc the current draw context.
+     */
+    protected void makeVertsInBackground(DrawContext dc)
+    {
+        MemoryCache cache = WorldWind.getMemoryCache(CACHE_ID);
+        long deadline = System.nanoTime() + this.getFrameBuildBudget() * 1000000L;
+        this.installCompletedBuilds(dc, cache, deadline);
+
+        Set<RectTile> substitutes = null;
+        long expiryTime = System.currentTimeMillis() - this.getUpdateFrequency();
+
+        for (SectorGeometry sg : this.currentTiles)
+        {
+            RectTile tile = (RectTile) sg;
+            CacheKey cacheKey = this.createCacheKey(dc, tile);
+            tile.ri = (RenderInfo) cache.getObject(cacheKey);
+            if (tile.ri != null)
+            {
+                if (tile.ri.time < expiryTime)
+                    this.requestBuild(dc, tile, cacheKey);
+                continue;
+            }
+
+            RectTile ancestor = this.findAncestorWithVertices(dc, tile, cache);
+            if (ancestor == null)
+            {
+                // Nothing can be drawn in the tile's place, so build either the tile or, once the budget is spent, its
+                // top-level ancestor. The ancestor then stands in for the tile and its other visible descendants.
+                RectTile buildTile = System.nanoTime() < deadline ? tile : getTopLevelAncestor(tile);
+                if (this.buildVerts(dc, buildTile, this.makeTileSkirts))
+                    cache.add(this.createCacheKey(dc, buildTile), buildTile.ri, buildTile.ri.getSizeInBytes());
+
+                if (buildTile == tile)
+                    continue;
+
+                ancestor = buildTile;
+            }
+
+            this.requestBuild(dc, tile, cacheKey);
+
+            if (substitutes == null)
+                substitutes = new HashSet<RectTile>();
+            substitutes.add(ancestor);
+        }
+
+        if (substitutes != null)
+            this.substituteAncestors(substitutes);
+
+        dc.setPerFrameStatistic(PerformanceStatistic.TERRAIN_BUILD_LATENCY, "Terrain Build Latency (ms)",
+            (long) this.buildLatency);
+        dc.setPerFrameStatistic(PerformanceStatistic.TERRAIN_BUILD_QUEUE, "Terrain Build Queue",
+            this.pendingBuilds.size());
+    }
+
+    /**
+     * Installs vertices built in the background into the sector geometry cache, stopping when the deadline passes. At
+     * least one build is installed if any are complete.
+     *
+     * @param dc       the current draw context.
+     * @param cache    the sector geometry cache.
+     * @param deadline the time, in terms of {@link System#nanoTime()}, after which to stop installing.
+     */
+    protected void installCompletedBuilds(DrawContext dc, MemoryCache cache, long deadline)
+    {
+        BuildTask task;
+        while ((task = this.completedBuilds.poll()) != null)
+        {
+            this.pendingBuilds.remove(task.cacheKey, task);
+
+            RenderInfo ri = (RenderInfo) cache.getObject(task.cacheKey);
+            if (ri != null && ri.density == task.tile.density)
+            {
+                // Refresh the cached vertices in place, so tiles holding them this frame see the new vertices.
+                ri.vertices.rewind();
+                ri.vertices.put(task.vertices);
+                ri.vertices.rewind();
+                ri.update(dc);
+            }
+            else
+            {
+                ri = new RenderInfo(dc, task.tile.density, task.vertices, task.referenceCenter);
+                cache.add(task.cacheKey, ri, ri.getSizeInBytes());
+            }
+
+            long latency = System.currentTimeMillis() - task.submitTime;
+            this.buildLatency = this.buildLatency > 0 ? 0.9 * this.buildLatency + 0.1 * latency : latency;
+
+            if (System.nanoTime() >= deadline)
+                break;
+        }
+    }
+
+    /**
+     * Queues a tile's vertices to be built in the background, or marks an already queued build as still wanted.
+     *
+     * @param dc       the current draw context.
+     * @param tile     the tile to build.
+     * @param cacheKey the tile's cache key.
+     */
+    protected void requestBuild(DrawContext dc, RectTile tile, CacheKey cacheKey)
+    {
+        BuildTask task = this.pendingBuilds.get(cacheKey);
+        if (task != null)
+        {
+            task.requestTime = System.currentTimeMillis();
+            return;
+        }
+
+        task = new BuildTask(dc, this, tile, cacheKey);
+        if (this.pendingBuilds.putIfAbsent(cacheKey, task) == null)
+            getBuildService().execute(task);
+    }
+
+    /**
+     * Finds the nearest ancestor of a tile whose vertices are cached, and assigns the ancestor those vertices.
+     *
+     * @param dc    the current draw context.
+     * @param tile  the tile whose ancestors to search.
+     * @param cache the sector geometry cache.
+     *
+     * @return the nearest ancestor with cached vertices, or null if no ancestor has cached vertices.
+     */
+    protected RectTile findAncestorWithVertices(DrawContext dc, RectTile tile, MemoryCache cache)
+    {
+        for (RectTile ancestor = tile.parent; ancestor != null; ancestor = ancestor.parent)
+        {
+            if (ancestor.ri == null)
+                ancestor.ri = (RenderInfo) cache.getObject(this.createCacheKey(dc, ancestor));
+
+            if (ancestor.ri != null)
+                return ancestor;
+        }
+
+        return null;
+    }
+
+    /**
+     * Replaces the current tiles covered by substitute ancestors with those ancestors. A substitute that is itself
+     * covered by another substitute is dropped.
+     *
+     * @param substitutes the ancestors to draw in place of their descendants.
+     */
+    protected void substituteAncestors(Set<RectTile> substitutes)
+    {
+        ArrayList<SectorGeometry> tiles = new ArrayList<SectorGeometry>(this.currentTiles.size());
+
+        for (RectTile substitute : substitutes)
+        {
+            if (!hasAncestorIn(substitute, substitutes))
+            {
+                tiles.add(substitute);
+                this.currentCoverage = this.currentCoverage.union(substitute.sector);
+            }
+        }
+
+        for (SectorGeometry tile : this.currentTiles)
+        {
+            if (!hasAncestorIn((RectTile) tile, substitutes))
+                tiles.add(tile);
+        }
+
+        this.currentTiles.clear();
+        this.currentTiles.addAll(tiles);
+        this.currentTiles.setSector(this.currentCoverage);
+    }
+
+    protected static RectTile getTopLevelAncestor(RectTile tile)
+    {
+        while (tile.parent != null)
+        {
+            tile = tile.parent;
+        }
+
+        return tile;
+    }
+
+    protected static boolean hasAncestorIn(RectTile tile, Set<RectTile> tiles)
+    {
+        for (RectTile ancestor = tile.parent; ancestor != null; ancestor = ancestor.parent)
+        {
+            if (tiles.contains(ancestor))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the executor that builds tile vertices in the background, creating it if necessary. The executor's
+     * threads are low-priority daemon threads, leaving at least one processor for the render thread.
+     *
+     * @return the background build executor.
+     */
+    protected static synchronized ExecutorService getBuildService()
+    {
+        if (buildService == null)
+        {
+            int numThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+            buildService = Executors.newFixedThreadPool(numThreads, new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable);
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    thread.setName("World Wind Tessellator");
+                    return thread;
+                }
+            });
+        }
+
+        return buildService;
+    }
+
     public boolean buildVerts(DrawContext dc, RectTile tile, boolean makeSkirts)
     {
         int density = tile.density;
@@ -627,11 +1045,56 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
             verts.rewind();
         }
 
-        ArrayList<LatLon> latlons = this.computeLocations(tile);
-        double[] elevations = new double[latlons.size()];
-        dc.getGlobe().getElevations(tile.sector, latlons, tile.getResolution(), elevations);
+        Vec4 refCenter = this.computeVertices(dc.getGlobe(), tile, dc.getVerticalExaggeration(), makeSkirts, verts);
 
-        double verticalExaggeration = dc.getVerticalExaggeration();
+        if (tile.ri != null)
+        {
+            tile.ri.update(dc);
+            return false;
+        }
+
+        tile.ri = new RenderInfo(dc, density, verts, refCenter);
+        return true;
+    }
+
+    /**
+     * Computes a tile's vertices relative to the tile's reference center. This method makes no OpenGL calls and does
+     * not modify the tile, so may be called from a thread other than the render thread.
+     *
+     * @param globe                the globe to compute vertices for.
+     * @param tile                 the tile whose vertices to compute.
+     * @param verticalExaggeration the vertical exaggeration to apply to elevations.
+     * @param makeSkirts           true to make the tile's skirt vertices, otherwise false.
+     * @param verts                the buffer to receive the vertices. Must hold at least three floats for each of the
+     *                             tile's vertices.
+     *
+     * @return the tile's reference center.
+     */
+    protected Vec4 computeVertices(Globe globe, RectTile tile, double verticalExaggeration, boolean makeSkirts,
+        FloatBuffer verts)
+    {
+        int density = tile.density;
+        int numLocations = density + 3;
+
+        // The tile's vertices form a grid, so only one latitude per row and one longitude per column is computed.
+        VertexBuffers buffers = vertexBuffers.get();
+        buffers.ensureCapacity(numLocations);
+        this.computeGridLocations(tile, buffers);
+
+        // Globes other than ellipsoidal globes have only the per-location conversions.
+        EllipsoidalGlobe bulkGlobe = globe instanceof EllipsoidalGlobe ? (EllipsoidalGlobe) globe : null;
+        List<LatLon> latlons = bulkGlobe == null ? this.computeLocations(tile) : null;
+
+        double[] elevations = buffers.elevations;
+        if (bulkGlobe != null)
+        {
+            bulkGlobe.getElevations(tile.sector, buffers.vertexLatitudes, buffers.vertexLongitudes,
+                tile.getResolution(), elevations);
+        }
+        else
+        {
+            globe.getElevations(tile.sector, latlons, tile.getResolution(), elevations);
+        }
 
         // When making skirts, apply vertical exaggeration to the skirt depth only if the exaggeration is 0 or less. If
         // applied to positive exaggerations, the skirt base might rise above the terrain at positive elevations if the
@@ -649,37 +1112,97 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         Vec4 refCenter = globe.computePointFromPosition(centroid.getLatitude(), centroid.getLongitude(), 0d);
 
         int ie = 0;
-        int iv = 0;
-        Iterator<LatLon> latLonIter = latlons.iterator();
         for (int j = 0; j <= density + 2; j++)
         {
-            for (int i = 0; i <= density + 2; i++)
+            for (int i = 0; i <= density + 2; i++, ie++)
             {
-                LatLon latlon = latLonIter.next();
-                double elevation = verticalExaggeration * elevations[ie++];
-
                 // Tile edges use min elevation to draw the skirts
                 if (exaggeratedMinElevation != null &&
                     (j == 0 || j >= tile.density + 2 || i == 0 || i >= tile.density + 2))
-                    elevation = exaggeratedMinElevation;
-
-                Vec4 p = globe.computePointFromPosition(latlon.getLatitude(), latlon.getLongitude(), elevation);
-                verts.put(iv++, (float) (p.x - refCenter.x));
-                verts.put(iv++, (float) (p.y - refCenter.y));
-                verts.put(iv++, (float) (p.z - refCenter.z));
+                    elevations[ie] = exaggeratedMinElevation;
+                else
+                    elevations[ie] = verticalExaggeration * elevations[ie];
             }
         }
 
+        verts.rewind();
+        if (bulkGlobe != null)
+        {
+            bulkGlobe.computePointsFromGrid(buffers.rowLatitudeRadians, buffers.columnLongitudeRadians, numLocations,
+                numLocations, elevations, refCenter, verts);
+        }
+        else
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                LatLon latlon = latlons.get(i);
+                Vec4 p = globe.computePointFromPosition(latlon.getLatitude(), latlon.getLongitude(), elevations[i]);
+                verts.put((float) (p.x - refCenter.x));
+                verts.put((float) (p.y - refCenter.y));
+                verts.put((float) (p.z - refCenter.z));
+            }
+        }
         verts.rewind();
 
-        if (tile.ri != null)
+        return refCenter;
+    }
+
+    /**
+     * Computes the latitudes of a tile's vertex rows and the longitudes of its vertex columns, in degrees and in
+     * radians, and the latitude and longitude of each vertex in degrees. The locations are identical to those of
+     * {@link #computeLocations(RectTile)}.
+     *
+     * @param tile    the tile whose locations to compute.
+     * @param buffers the buffers to receive the locations.
+     */
+    protected void computeGridLocations(RectTile tile, VertexBuffers buffers)
+    {
+        int density = tile.density;
+
+        Angle latMax = tile.sector.getMaxLatitude();
+        Angle dLat = tile.sector.getDeltaLat().divide(density);
+        Angle lat = tile.sector.getMinLatitude();
+
+        for (int j = 0; j <= density + 2; j++)
         {
-            tile.ri.update(dc);
-            return false;
+            buffers.rowLatitudes[j] = lat.degrees;
+            buffers.rowLatitudeRadians[j] = lat.radians;
+
+            if (j > density)
+                lat = latMax;
+            else if (j != 0)
+                lat = lat.add(dLat);
         }
 
-        tile.ri = new RenderInfo(dc, density, verts, refCenter);
-        return true;
+        Angle lonMax = tile.sector.getMaxLongitude();
+        Angle dLon = tile.sector.getDeltaLon().divide(density);
+        Angle lon = tile.sector.getMinLongitude();
+
+        for (int i = 0; i <= density + 2; i++)
+        {
+            buffers.columnLongitudes[i] = lon.degrees;
+            buffers.columnLongitudeRadians[i] = lon.radians;
+
+            if (i > density)
+                lon = lonMax;
+            else if (i != 0)
+                lon = lon.add(dLon);
+
+            if (lon.degrees < -180)
+                lon = Angle.NEG180;
+            else if (lon.degrees > 180)
+                lon = Angle.POS180;
+        }
+
+        int k = 0;
+        for (int j = 0; j <= density + 2; j++)
+        {
+            for (int i = 0; i <= density + 2; i++, k++)
+            {
+                buffers.vertexLatitudes[k] = buffers.rowLatitudes[j];
+                buffers.vertexLongitudes[k] = buffers.columnLongitudes[i];
+            }
+        }
     }
 
     protected ArrayList<LatLon> computeLocations(RectTile tile)
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.Logging;
+
+/**
+ * A visibility raster computed by {@link HighResolutionTerrain#computeViewshed(Iterable, double, double)}. The raster
+ * is a regular grid of terrain locations covering a sector. Each grid point holds the number of observers that can see
+ * the terrain at that location. Grid rows run from the sector's northern edge to its southern edge. Grid columns run
+ * from its western edge to its eastern edge. The first and last rows and columns lie on the sector's edges.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class Viewshed
+{
+    protected final Sector sector;
+    protected final int width;
+    protected final int height;
+    protected final int numObservers;
+    protected final int[] counts;
+    protected final int tileSize;
+    protected final int[][] tiles;
+
+    /**
+     * Constructs a viewshed from the number of observers seeing each grid point.
+     *
+     * @param sector       the sector covered by the grid.
+     * @param width        the number of grid columns.
+     * @param height       the number of grid rows.
+     * @param numObservers the number of observers contributing to the viewshed.
+     * @param counts       the number of observers seeing each grid point, in row major order starting at the northwest
+     *                     corner. The array is used by reference.
+     *
+     * @throws IllegalArgumentException if the sector or counts are null, or the counts do not match the dimensions.
+     */
+    public Viewshed(Sector sector, int width, int height, int numObservers, int[] counts)
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (counts == null || width < 1 || height < 1 || counts.length != width * height)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", counts != null ? counts.length : 0);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.sector = sector;
+        this.width = width;
+        this.height = height;
+        this.numObservers = numObservers;
+        this.counts = counts;
+        this.tileSize = 0;
+        this.tiles = null;
+    }
+
+    /**
+     * Constructs a viewshed from the number of observers seeing each grid point, held in square tiles of grid points.
+     * Tiles that no observer sees may be null, so that a viewshed of observers far apart need not hold the grid points
+     * between them.
+     *
+     * @param sector       the sector covered by the grid.
+     * @param width        the number of grid columns.
+     * @param height       the number of grid rows.
+     * @param numObservers the number of observers contributing to the viewshed.
+     * @param tileSize     the number of rows and columns of each tile.
+     * @param tiles        the tiles, in row major order starting at the northwest corner. Each tile holds the number
+     *                     of observers seeing its grid points, in row major order. A null tile indicates that no
+     *                     observer sees its grid points. The array and its tiles are used by reference.
+     *
+     * @throws IllegalArgumentException if the sector or tiles are null, the tile size is less than 1, or the tiles do
+     *                                  not match the dimensions.
+     */
+    public Viewshed(Sector sector, int width, int height, int numObservers, int tileSize, int[][] tiles)
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (tileSize < 1)
+        {
+            String msg = Logging.getMessage("generic.SizeOutOfRange", tileSize);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int numTiles = ((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize);
+        if (tiles == null || width < 1 || height < 1 || tiles.length != numTiles)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", tiles != null ? tiles.length : 0);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        for (int[] tile : tiles)
+        {
+            if (tile != null && tile.length != tileSize * tileSize)
+            {
+                String msg = Logging.getMessage("generic.ArrayInvalidLength", tile.length);
+                Logging.logger().severe(msg);
+                throw new IllegalArgumentException(msg);
+            }
+        }
+
+        this.sector = sector;
+        this.width = width;
+        this.height = height;
+        this.numObservers = numObservers;
+        this.counts = null;
+        this.tileSize = tileSize;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Returns the sector covered by the viewshed's grid.
+     *
+     * @return the viewshed's sector.
+     */
+    public Sector getSector()
+    {
+        return this.sector;
+    }
+
+    /**
+     * Returns the number of grid columns.
+     *
+     * @return the viewshed's width.
+     */
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    /**
+     * Returns the number of grid rows.
+     *
+     * @return the viewshed's height.
+     */
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    /**
+     * Returns the number of observers that contributed to the viewshed. Observers outside the terrain's sector do not
+     * contribute.
+     *
+     * @return the number of observers.
+     */
+    public int getNumObservers()
+    {
+        return this.numObservers;
+    }
+
+    /**
+     * Returns the location of a grid point.
+     *
+     * @param row the grid row, counted from the north.
+     * @param col the grid column, counted from the west.
+     *
+     * @return the grid point's location.
+     */
+    public LatLon getLocation(int row, int col)
+    {
+        double dLat = this.height > 1 ? this.sector.getDeltaLatDegrees() / (this.height - 1) : 0;
+        double dLon = this.width > 1 ? this.sector.getDeltaLonDegrees() / (this.width - 1) : 0;
+
+        return LatLon.fromDegrees(this.sector.getMaxLatitude().degrees - row * dLat,
+            this.sector.getMinLongitude().degrees + col * dLon);
+    }
+
+    /**
+     * Returns the number of observers that can see the terrain at a grid point.
+     *
+     * @param row the grid row, counted from the north.
+     * @param col the grid column, counted from the west.
+     *
+     * @return the number of observers that see the grid point.
+     *
+     * @throws IllegalArgumentException if the row or column is outside the grid.
+     */
+    public int getVisibilityCount(int row, int col)
+    {
+        if (row < 0 || row >= this.height)
+        {
+            String msg = Logging.getMessage("generic.RowIndexOutOfRange", row);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (col < 0 || col >= this.width)
+        {
+            String msg = Logging.getMessage("generic.ColumnIndexOutOfRange", col);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (this.tiles == null)
+            return this.counts[row * this.width + col];
+
+        int[] tile = this.tiles[(row / this.tileSize) * ((this.width + this.tileSize - 1) / this.tileSize)
+            + col / this.tileSize];
+
+        return tile != null ? tile[(row % this.tileSize) * this.tileSize + col % this.tileSize] : 0;
+    }
+
+    /**
+     * Indicates whether any observer can see the terrain at a grid point.
+     *
+     * @param row the grid row, counted from the north.
+     * @param col the grid column, counted from the west.
+     *
+     * @return true if at least one observer sees the grid point, otherwise false.
+     *
+     * @throws IllegalArgumentException if the row or column is outside the grid.
+     */
+    public boolean isVisible(int row, int col)
+    {
+        return this.getVisibilityCount(row, col) > 0;
+    }
+}
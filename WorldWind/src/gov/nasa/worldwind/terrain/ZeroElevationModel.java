@@ -54,6 +54,25 @@ public class ZeroElevationModel extends AbstractElevationModel
         return this.getElevations(sector, latlons, targetResolution, buffer);
     }
 
+    @Override
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            buffer[i] = 0;
+        }
+
+        return 0;
+    }
+
+    @Override
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        return this.getElevations(sector, latitudes, longitudes, targetResolution, buffer);
+    }
+
     public int intersects(Sector sector)
     {
         return 0;
@@ -16,8 +16,12 @@ public class PerformanceStatistic implements Comparable<PerformanceStatistic>
     public static final String FRAME_TIME = "gov.nasa.worldwind.perfstat.FrameTime";
     public static final String IMAGE_TILE_COUNT = "gov.nasa.worldwind.perfstat.ImageTileCount";
     public static final String TERRAIN_TILE_COUNT = "gov.nasa.worldwind.perfstat.TerrainTileCount";
+    public static final String TERRAIN_BUILD_LATENCY = "gov.nasa.worldwind.perfstat.TerrainBuildLatency";
+    public static final String TERRAIN_BUILD_QUEUE = "gov.nasa.worldwind.perfstat.TerrainBuildQueue";
     public static final String MEMORY_CACHE = "gov.nasa.worldwind.perfstat.MemoryCache";
     public static final String PICK_TIME = "gov.nasa.worldwind.perfstat.PickTime";
+    public static final String RENDERABLE_COUNT = "gov.nasa.worldwind.perfstat.RenderableCount";
+    public static final String RENDERABLE_NODE_COUNT = "gov.nasa.worldwind.perfstat.RenderableNodeCount";
     public static final String JVM_HEAP = "gov.nasa.worldwind.perfstat.JvmHeap";
     public static final String JVM_HEAP_USED = "gov.nasa.worldwind.perfstat.JvmHeapUsed";
     public static final String TEXTURE_CACHE = "gov.nasa.worldwind.perfstat.TextureCache";
@@ -1215,7 +1215,15 @@ public class WWIO
             // Determine whether the file can be treated like a File, e.g., a jar entry.
             URI uri = url.toURI();
             if (uri.isOpaque())
-                return false; // TODO: Determine how to check the date of non-Files
+            {
+                // The entries of a jar are not checked. Other opaque URLs, such as those of the files in a
+                // PackedDataFileStore archive, report their file's modification time through their connection, which
+                // is 0 if the time is unknown.
+                if ("jar".equalsIgnoreCase(url.getProtocol()))
+                    return false;
+
+                return url.openConnection().getLastModified() < expiryTime;
+            }
 
             File file = new File(uri);
 
@@ -1226,6 +1234,11 @@ public class WWIO
             Logging.logger().log(Level.SEVERE, "WWIO.ExceptionValidatingFileExpiration", url);
             return false;
         }
+        catch (IOException e)
+        {
+            Logging.logger().log(Level.SEVERE, "WWIO.ExceptionValidatingFileExpiration", url);
+            return false;
+        }
     }
 
     public static Proxy configureProxy()
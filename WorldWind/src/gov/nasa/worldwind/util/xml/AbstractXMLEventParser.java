@@ -70,15 +70,44 @@ abstract public class AbstractXMLEventParser implements XMLEventParser
 
     public XMLEventParser newInstance() throws Exception
     {
-        Constructor<? extends AbstractXMLEventParser> constructor = this.getAConstructor(String.class);
+        Constructor<? extends AbstractXMLEventParser> constructor = this.getParserConstructor();
         if (constructor != null)
-            return constructor.newInstance(this.getNamespaceURI());
+            return this.newInstance(constructor);
+
+        return null;
+    }
+
+    /**
+     * Creates a new parser of this parser's namespace with a constructor returned by {@link #getParserConstructor()}.
+     * {@link BasicXMLEventParserContext} uses this method to create parsers with constructors it has already found.
+     *
+     * @param constructor the constructor of this parser's class.
+     *
+     * @return the new parser.
+     *
+     * @throws Exception if the constructor fails.
+     */
+    protected XMLEventParser newInstance(Constructor<?> constructor) throws Exception
+    {
+        if (constructor.getParameterTypes().length > 0)
+            return (XMLEventParser) constructor.newInstance(this.getNamespaceURI());
+        else
+            return (XMLEventParser) constructor.newInstance();
+    }
 
-        constructor = this.getAConstructor();
+    /**
+     * Returns the constructor {@link #newInstance()} uses: the constructor taking a namespace URI if this parser's
+     * class has one, otherwise the default constructor.
+     *
+     * @return the constructor, or null if this parser's class has neither constructor.
+     */
+    protected Constructor<? extends AbstractXMLEventParser> getParserConstructor()
+    {
+        Constructor<? extends AbstractXMLEventParser> constructor = this.getAConstructor(String.class);
         if (constructor != null)
-            return constructor.newInstance();
+            return constructor;
 
-        return null;
+        return this.getAConstructor();
     }
 
     public void setField(QName keyName, Object value)
@@ -14,6 +14,7 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.*;
 import javax.xml.stream.events.XMLEvent;
 import java.beans.*;
+import java.lang.reflect.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -40,6 +41,47 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
     /** The parser name of the unrecognized-element parser. */
     public static QName UNRECOGNIZED = new QName(UNRECOGNIZED_ELEMENT_PARSER);
 
+    /** Creates the default string parser. */
+    protected static final XMLEventParserFactory STRING_PARSER_FACTORY = new XMLEventParserFactory()
+    {
+        public XMLEventParser create()
+        {
+            return new StringXMLEventParser();
+        }
+    };
+    /** Creates the default double parser. */
+    protected static final XMLEventParserFactory DOUBLE_PARSER_FACTORY = new XMLEventParserFactory()
+    {
+        public XMLEventParser create()
+        {
+            return new DoubleXMLEventParser();
+        }
+    };
+    /** Creates the default integer parser. */
+    protected static final XMLEventParserFactory INTEGER_PARSER_FACTORY = new XMLEventParserFactory()
+    {
+        public XMLEventParser create()
+        {
+            return new IntegerXMLEventParser();
+        }
+    };
+    /** Creates the default boolean parser. */
+    protected static final XMLEventParserFactory BOOLEAN_PARSER_FACTORY = new XMLEventParserFactory()
+    {
+        public XMLEventParser create()
+        {
+            return new BooleanXMLEventParser();
+        }
+    };
+    /** Creates the default boolean integer parser. */
+    protected static final XMLEventParserFactory BOOLEAN_INTEGER_PARSER_FACTORY = new XMLEventParserFactory()
+    {
+        public XMLEventParser create()
+        {
+            return new BooleanIntegerXMLEventParser();
+        }
+    };
+
     protected XMLEventReader reader;
     protected StringXMLEventParser stringParser;
     protected DoubleXMLEventParser doubleParser;
@@ -51,6 +93,25 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
     protected ConcurrentHashMap<String, Object> idTable = new ConcurrentHashMap<String, Object>();
 
     protected ConcurrentHashMap<QName, XMLEventParser> parsers = new ConcurrentHashMap<QName, XMLEventParser>();
+    /**
+     * The factories registered by {@link #registerParserFactory(QName, XMLEventParserFactory)}. {@link
+     * #getParser(QName)} creates an element's parser with its factory when it has one, and otherwise from the parser in
+     * {@link #parsers}. Shared with copies of this context.
+     */
+    protected ConcurrentHashMap<QName, XMLEventParserFactory> parserFactories =
+        new ConcurrentHashMap<QName, XMLEventParserFactory>();
+    /**
+     * The constructors of the parsers created from {@link #parsers}, keyed by parser class, so that each is found by
+     * reflection only once per document rather than once per element. Shared with copies of this context.
+     */
+    protected ConcurrentHashMap<Class<?>, Constructor<?>> parserConstructors =
+        new ConcurrentHashMap<Class<?>, Constructor<?>>();
+    /**
+     * The classes in {@link #parsers} that override {@link XMLEventParser#newInstance()}, so that each is checked only
+     * once. Shared with copies of this context.
+     */
+    protected Set<Class<?>> selfCreatingParsers =
+        Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
 
     /** Construct an instance. Invokes {@link #initializeParsers()} and {@link #initialize()}. */
     public BasicXMLEventParserContext()
@@ -92,6 +153,9 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
     public BasicXMLEventParserContext(BasicXMLEventParserContext ctx)
     {
         this.parsers = ctx.parsers;
+        this.parserFactories = ctx.parserFactories;
+        this.parserConstructors = ctx.parserConstructors;
+        this.selfCreatingParsers = ctx.selfCreatingParsers;
         this.setDefaultNamespaceURI(ctx.getDefaultNamespaceURI());
         this.initialize();
     }
@@ -148,6 +212,33 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
         this.parsers.put(BOOLEAN, new BooleanXMLEventParser());
         this.parsers.put(BOOLEAN_INTEGER, new BooleanIntegerXMLEventParser());
         this.parsers.put(UNRECOGNIZED, new UnrecognizedXMLEventParser(null));
+
+        this.parserFactories.put(STRING, STRING_PARSER_FACTORY);
+        this.parserFactories.put(DOUBLE, DOUBLE_PARSER_FACTORY);
+        this.parserFactories.put(INTEGER, INTEGER_PARSER_FACTORY);
+        this.parserFactories.put(BOOLEAN, BOOLEAN_PARSER_FACTORY);
+        this.parserFactories.put(BOOLEAN_INTEGER, BOOLEAN_INTEGER_PARSER_FACTORY);
+    }
+
+    /**
+     * Adds the parser and the factory, if any, registered for a field type to a list of element types qualified for a
+     * specified namespace.
+     *
+     * @param namespace the namespace URI.
+     * @param fields    the element types.
+     * @param fieldType the name the field type's parser is registered with, such as {@link #STRING}.
+     * @param parser    the field type's parser.
+     */
+    protected void addFieldParsers(String namespace, String[] fields, QName fieldType, XMLEventParser parser)
+    {
+        XMLEventParserFactory factory = this.parserFactories.get(fieldType);
+        for (String s : fields)
+        {
+            QName name = new QName(namespace, s);
+            this.parsers.put(name, parser);
+            if (factory != null)
+                this.parserFactories.put(name, factory);
+        }
     }
 
     /**
@@ -158,11 +249,7 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
      */
     protected void addStringParsers(String namespace, String[] stringFields)
     {
-        StringXMLEventParser stringParser = this.getStringParser();
-        for (String s : stringFields)
-        {
-            this.parsers.put(new QName(namespace, s), stringParser);
-        }
+        this.addFieldParsers(namespace, stringFields, STRING, this.getStringParser());
     }
 
     /**
@@ -173,11 +260,7 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
      */
     protected void addDoubleParsers(String namespace, String[] doubleFields)
     {
-        DoubleXMLEventParser doubleParser = this.getDoubleParser();
-        for (String s : doubleFields)
-        {
-            this.parsers.put(new QName(namespace, s), doubleParser);
-        }
+        this.addFieldParsers(namespace, doubleFields, DOUBLE, this.getDoubleParser());
     }
 
     /**
@@ -188,11 +271,7 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
      */
     protected void addIntegerParsers(String namespace, String[] integerFields)
     {
-        IntegerXMLEventParser integerParser = this.getIntegerParser();
-        for (String s : integerFields)
-        {
-            this.parsers.put(new QName(namespace, s), integerParser);
-        }
+        this.addFieldParsers(namespace, integerFields, INTEGER, this.getIntegerParser());
     }
 
     /**
@@ -203,11 +282,7 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
      */
     protected void addBooleanParsers(String namespace, String[] booleanFields)
     {
-        BooleanXMLEventParser booleanParser = this.getBooleanParser();
-        for (String s : booleanFields)
-        {
-            this.parsers.put(new QName(namespace, s), booleanParser);
-        }
+        this.addFieldParsers(namespace, booleanFields, BOOLEAN, this.getBooleanParser());
     }
 
     /**
@@ -218,11 +293,7 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
      */
     protected void addBooleanIntegerParsers(String namespace, String[] booleanIntegerFields)
     {
-        BooleanIntegerXMLEventParser booleanIntegerParser = this.getBooleanIntegerParser();
-        for (String s : booleanIntegerFields)
-        {
-            this.parsers.put(new QName(namespace, s), booleanIntegerParser);
-        }
+        this.addFieldParsers(namespace, booleanIntegerFields, BOOLEAN_INTEGER, this.getBooleanIntegerParser());
     }
 
     /**
@@ -481,6 +552,36 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
         }
 
         this.parsers.put(elementName, parser);
+        this.parserFactories.remove(elementName);
+    }
+
+    /**
+     * Registers a factory that creates the parsers for an element type. {@link #getParser(QName)} uses the factory in
+     * preference to the parser registered for the element type, until {@link #registerParser(QName, XMLEventParser)}
+     * replaces that parser.
+     *
+     * @param elementName the element type's qualified name.
+     * @param factory     the factory.
+     *
+     * @throws IllegalArgumentException if either argument is null.
+     */
+    public void registerParserFactory(QName elementName, XMLEventParserFactory factory)
+    {
+        if (factory == null)
+        {
+            String message = Logging.getMessage("nullValue.FactoryIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (elementName == null)
+        {
+            String message = Logging.getMessage("nullValue.ElementNameIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.parserFactories.put(elementName, factory);
     }
 
     public XMLEventParser getParser(QName name)
@@ -492,37 +593,97 @@ public class BasicXMLEventParserContext extends AVListImpl implements XMLEventPa
             throw new IllegalArgumentException(message);
         }
 
-        XMLEventParser factoryParser = this.parsers.get(name);
-        if (factoryParser == null)
+        try
+        {
+            XMLEventParserFactory factory = this.findEntry(this.parserFactories, name);
+            if (factory != null)
+                return factory.create();
+
+            XMLEventParser factoryParser = this.findEntry(this.parsers, name);
+            if (factoryParser == null)
+                return null;
+
+            return this.newParser(factoryParser);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("XML.ParserCreationException", name);
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the entry for an element name in a parser table.
+     *
+     * @param table the parser table.
+     * @param name  the element name.
+     *
+     * @return the element name's entry, or null if the table has none.
+     */
+    protected <T> T findEntry(Map<QName, T> table, QName name)
+    {
+        T entry = table.get(name);
+        if (entry == null)
         {
             // Try alternate forms that assume a default namespace in either the input name or the table key.
             if (isNullNamespace(name.getNamespaceURI()))
             {
                 // input name has no namespace but table key has the default namespace
                 QName altName = new QName(this.getDefaultNamespaceURI(), name.getLocalPart());
-                factoryParser = this.parsers.get(altName);
+                entry = table.get(altName);
             }
             else if (this.isDefaultNamespace(name.getNamespaceURI()))
             {
                 // input name has the default namespace but table name has no namespace
                 QName altName = new QName(name.getLocalPart());
-                factoryParser = this.parsers.get(altName);
+                entry = table.get(altName);
             }
         }
 
-        try
-        {
-            if (factoryParser == null)
-                return null;
+        return entry;
+    }
 
+    /**
+     * Creates a new parser of the same class and namespace as a parser in the parser table, for element types that
+     * have no registered factory. Parsers derived from {@link AbstractXMLEventParser} that do not override {@link
+     * XMLEventParser#newInstance()} are created with the constructor this context cached for their class. Other parsers
+     * create their own instances.
+     *
+     * @param factoryParser the parser in the parser table.
+     *
+     * @return the new parser, or null if the parser's class has no suitable constructor.
+     *
+     * @throws Exception if the parser cannot be created.
+     */
+    protected XMLEventParser newParser(XMLEventParser factoryParser) throws Exception
+    {
+        if (!(factoryParser instanceof AbstractXMLEventParser))
             return factoryParser.newInstance();
-        }
-        catch (Exception e)
+
+        AbstractXMLEventParser parser = (AbstractXMLEventParser) factoryParser;
+        Class<?> parserClass = parser.getClass();
+        Constructor<?> constructor = this.parserConstructors.get(parserClass);
+        if (constructor == null)
         {
-            String message = Logging.getMessage("XML.ParserCreationException", name);
-            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
-            return null;
+            if (this.selfCreatingParsers.contains(parserClass))
+                return parser.newInstance();
+
+            Method method = parserClass.getMethod("newInstance");
+            if (method.getDeclaringClass() != AbstractXMLEventParser.class)
+            {
+                this.selfCreatingParsers.add(parserClass);
+                return parser.newInstance();
+            }
+
+            constructor = parser.getParserConstructor();
+            if (constructor == null)
+                return null;
+
+            this.parserConstructors.put(parserClass, constructor);
         }
+
+        return parser.newInstance(constructor);
     }
 
     protected static boolean isNullNamespace(String namespaceURI)
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.util.xml;
+
+/**
+ * Creates the parsers for one element type. Factories are registered with a {@link BasicXMLEventParserContext} by
+ * element name, and create parsers by calling a constructor directly rather than by reflection.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public interface XMLEventParserFactory
+{
+    /**
+     * Creates a new empty parser.
+     *
+     * @return a new parser instance.
+     *
+     * @throws Exception if an error or exception occurs while attempting to create the parser.
+     */
+    XMLEventParser create() throws Exception;
+}
@@ -11,7 +11,7 @@ import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.data.*;
 import gov.nasa.worldwindx.examples.util.SectorSelector;
-import gov.nasa.worldwind.formats.tiff.GeotiffWriter;
+import gov.nasa.worldwind.formats.tiff.*;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.globes.*;
 import gov.nasa.worldwind.layers.*;
@@ -464,6 +464,17 @@ public class ExportImageOrElevations extends ApplicationTemplate
             return elevations;
         }
 
+        private GeotiffWriter createGeotiffWriter(File gtFile) throws IOException
+        {
+            // Write compressed 256x256 tiles, which are far smaller than uncompressed strips and can be read a region
+            // at a time.
+            GeotiffWriter writer = new GeotiffWriter(gtFile);
+            writer.setCompression(Tiff.Compression.DEFLATE);
+            writer.setPredictorEnabled(true);
+            writer.setTileSize(256);
+            return writer;
+        }
+
         private void writeImageToFile(Sector sector, BufferedImage image, File gtFile)
             throws IOException
         {
@@ -474,7 +485,7 @@ public class ExportImageOrElevations extends ApplicationTemplate
             params.setValue(AVKey.PIXEL_FORMAT, AVKey.IMAGE);
             params.setValue(AVKey.BYTE_ORDER, AVKey.BIG_ENDIAN);
 
-            GeotiffWriter writer = new GeotiffWriter(gtFile);
+            GeotiffWriter writer = this.createGeotiffWriter(gtFile);
             try
             {
                 writer.write(BufferedImageRaster.wrapAsGeoreferencedRaster(image, params));
@@ -512,7 +523,7 @@ public class ExportImageOrElevations extends ApplicationTemplate
                 }
             }
 
-            GeotiffWriter writer = new GeotiffWriter(gtFile);
+            GeotiffWriter writer = this.createGeotiffWriter(gtFile);
             try
             {
                 writer.write(raster);
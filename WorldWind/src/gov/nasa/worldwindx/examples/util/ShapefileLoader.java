@@ -28,6 +28,10 @@ import java.util.*;
  * methods: <ul> <li>{@link #createPointIconSource(gov.nasa.worldwind.formats.shapefile.ShapefileRecord)}</li>
  * <li>{@link #createPolylineAttributes(gov.nasa.worldwind.formats.shapefile.ShapefileRecord)}</li> <li>{@link
  * #createPolygonAttributes(gov.nasa.worldwind.formats.shapefile.ShapefileRecord)}</li></ul>.
+ * <p/>
+ * By default ShapefileLoader reads Shapefile records one at a time on the calling thread. Specifying more than one read
+ * thread with {@link #setNumReadThreads(int)} reads the records of memory mapped Shapefiles that have an index file in
+ * bulk on that many threads, using {@link gov.nasa.worldwind.formats.shapefile.Shapefile#readRecords(int)}.
  *
  * @author dcollins
  * @version $Id$
@@ -38,6 +42,8 @@ public class ShapefileLoader
 
     /** Indicates the maximum number of polygons to place in a layer before creating an additional layer. */
     protected int numPolygonsPerLayer = 5000;
+    /** Indicates the number of threads used to read Shapefile records. */
+    protected int numReadThreads = 1;
 
     /** Constructs a ShapefileLoader, but otherwise does nothing. */
     public ShapefileLoader()
@@ -258,17 +264,86 @@ public class ShapefileLoader
 
         this.numPolygonsPerLayer = numPolygonsPerLayer;
     }
+
+    /**
+     * Indicates the number of threads used to read Shapefile records.
+     *
+     * @return the number of threads used to read records.
+     */
+    public int getNumReadThreads()
+    {
+        return this.numReadThreads;
+    }
+
+    /**
+     * Specifies the number of threads used to read Shapefile records. When more than one thread is specified, the
+     * records of Shapefiles that support random access are all read in bulk before they are converted. Other Shapefiles
+     * are read one record at a time on the calling thread. The default is 1.
+     *
+     * @param numReadThreads the number of threads used to read records.
+     *
+     * @throws IllegalArgumentException if the number is less than 1.
+     * @see gov.nasa.worldwind.formats.shapefile.Shapefile#isRandomAccessSupported()
+     */
+    public void setNumReadThreads(int numReadThreads)
+    {
+        if (numReadThreads < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "numReadThreads < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.numReadThreads = numReadThreads;
+    }
+
+    /**
+     * Returns the records of a Shapefile. If this loader has more than one read thread and the Shapefile supports
+     * random access, every record is read in bulk on those threads. Otherwise the records remaining in the Shapefile
+     * are read one at a time as they are iterated.
+     *
+     * @param shp the Shapefile to read.
+     *
+     * @return the Shapefile's records. Records whose shape type is not recognized are null.
+     */
+    protected Iterable<ShapefileRecord> readRecords(final Shapefile shp)
+    {
+        if (this.numReadThreads > 1 && shp.isRandomAccessSupported())
+            return Arrays.asList(shp.readRecords(this.numReadThreads));
+
+        return new Iterable<ShapefileRecord>()
+        {
+            public Iterator<ShapefileRecord> iterator()
+            {
+                return new Iterator<ShapefileRecord>()
+                {
+                    public boolean hasNext()
+                    {
+                        return shp.hasNext();
+                    }
+
+                    public ShapefileRecord next()
+                    {
+                        return shp.nextRecord();
+                    }
+
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
     //**************************************************************//
     //********************  Geometry Conversion  *******************//
     //**************************************************************//
 
     protected void addIconsForPoints(Shapefile shp, IconLayer layer)
     {
-        while (shp.hasNext())
+        for (ShapefileRecord record : this.readRecords(shp))
         {
-            ShapefileRecord record = shp.nextRecord();
-
-            if (!Shapefile.isPointType(record.getShapeType()))
+            if (record == null || !Shapefile.isPointType(record.getShapeType()))
                 continue;
 
             double[] point = ((ShapefileRecordPoint) record).getPoint();
@@ -279,11 +354,9 @@ public class ShapefileLoader
 
     protected void addIconsForMultiPoints(Shapefile shp, IconLayer layer)
     {
-        while (shp.hasNext())
+        for (ShapefileRecord record : this.readRecords(shp))
         {
-            ShapefileRecord record = shp.nextRecord();
-
-            if (!Shapefile.isMultiPointType(record.getShapeType()))
+            if (record == null || !Shapefile.isMultiPointType(record.getShapeType()))
                 continue;
 
             Iterable<double[]> iterable = ((ShapefileRecordMultiPoint) record).getPoints(0);
@@ -314,9 +387,9 @@ public class ShapefileLoader
         //    layer.addRenderable(this.createPolyline(record, attrs));
         //}
 
-        while (shp.hasNext())
+        for (ShapefileRecord ignored : this.readRecords(shp))
         {
-            shp.nextRecord();
+            // Reading each record adds its points to the Shapefile's point buffer.
         }
 
         ShapeAttributes attrs = this.createPolylineAttributes(null);
@@ -336,11 +409,15 @@ public class ShapefileLoader
         layers.add(layer);
 
         int recordNumber = 0;
-        while (shp.hasNext())
+        Iterator<ShapefileRecord> iterator = this.readRecords(shp).iterator();
+        while (iterator.hasNext())
         {
             try
             {
-                ShapefileRecord record = shp.nextRecord();
+                ShapefileRecord record = iterator.next();
+                if (record == null)
+                    continue;
+
                 recordNumber = record.getRecordNumber();
 
                 if (!Shapefile.isPolygonType(record.getShapeType()))
@@ -0,0 +1,190 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package performance;
+
+import gov.nasa.worldwind.formats.dds.*;
+import gov.nasa.worldwind.util.WWMath;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.*;
+import java.io.File;
+import java.nio.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Measures the throughput of DXT1 compression with mipmaps, serially and in parallel, for each color block compression
+ * type, and reports the root mean square error of the decompressed full resolution image. The images are those in the
+ * test data directory, or in a directory specified as the first argument, that ImageIO can read. Images without power
+ * of two dimensions are scaled to the nearest power of two dimensions before compression.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class DDSCompressorBenchmark
+{
+    protected static final int NUM_ITERATIONS = 5;
+
+    protected static final String[] COMPRESSION_TYPES = new String[] {
+        DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE,
+        DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_LUMINANCE_DISTANCE,
+        DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_BBOX,
+        DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT};
+
+    protected final List<String> names = new ArrayList<String>();
+    protected final List<BufferedImage> images = new ArrayList<BufferedImage>();
+    protected long numPixels;
+
+    public DDSCompressorBenchmark(File directory) throws Exception
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            Arrays.sort(files);
+            for (File file : files)
+            {
+                String name = file.getName().toLowerCase();
+                if (!file.isFile() || !(name.endsWith(".jpg") || name.endsWith(".png") || name.endsWith(".bmp")))
+                    continue;
+
+                BufferedImage image = ImageIO.read(file);
+                if (image == null)
+                    continue;
+
+                image = toPowerOfTwo(image);
+                this.names.add(file.getName());
+                this.images.add(image);
+                this.numPixels += (long) image.getWidth() * image.getHeight();
+            }
+        }
+    }
+
+    protected static BufferedImage toPowerOfTwo(BufferedImage image)
+    {
+        int width = WWMath.powerOfTwoFloor(image.getWidth());
+        int height = WWMath.powerOfTwoFloor(image.getHeight());
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        try
+        {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        }
+        finally
+        {
+            g.dispose();
+        }
+
+        return result;
+    }
+
+    protected static DXTCompressionAttributes createAttributes(String compressionType, boolean parallel)
+    {
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        attributes.setDXTFormat(DDSConstants.D3DFMT_DXT1);
+        attributes.setColorBlockCompressionType(compressionType);
+        attributes.setEnableParallelCompression(parallel);
+        return attributes;
+    }
+
+    protected static double computeError(BufferedImage image, ByteBuffer dds) throws Exception
+    {
+        // The first mip level follows the 4 byte magic number and the 124 byte header.
+        ByteBuffer level = dds.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        level.position(128);
+        BufferedImage decoded = new DXT1Decompressor().decompress(level.slice(), image.getWidth(), image.getHeight());
+
+        double sum = 0;
+        for (int y = 0; y < image.getHeight(); y++)
+        {
+            for (int x = 0; x < image.getWidth(); x++)
+            {
+                int a = image.getRGB(x, y);
+                int d = decoded.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8)
+                {
+                    int diff = ((a >> shift) & 0xFF) - ((d >> shift) & 0xFF);
+                    sum += diff * diff;
+                }
+            }
+        }
+
+        return Math.sqrt(sum / (3.0 * image.getWidth() * image.getHeight()));
+    }
+
+    protected void checkOutput() throws Exception
+    {
+        for (int i = 0; i < this.images.size(); i++)
+        {
+            for (String compressionType : COMPRESSION_TYPES)
+            {
+                ByteBuffer serial = new DDSCompressor().compressImage(this.images.get(i),
+                    createAttributes(compressionType, false));
+                ByteBuffer parallel = new DDSCompressor().compressImage(this.images.get(i),
+                    createAttributes(compressionType, true));
+
+                if (!serial.equals(parallel))
+                    throw new IllegalStateException("Parallel output differs for " + this.names.get(i));
+            }
+        }
+    }
+
+    protected void run(String compressionType, boolean parallel) throws Exception
+    {
+        DXTCompressionAttributes attributes = createAttributes(compressionType, parallel);
+
+        long start = System.nanoTime();
+
+        for (int n = 0; n < NUM_ITERATIONS; n++)
+        {
+            for (BufferedImage image : this.images)
+            {
+                new DDSCompressor().compressImage(image, attributes);
+            }
+        }
+
+        long time = System.nanoTime() - start;
+
+        double error = 0;
+        for (BufferedImage image : this.images)
+        {
+            error += computeError(image, new DDSCompressor().compressImage(image, attributes)) / this.images.size();
+        }
+
+        String name = compressionType.replace("ColorBlockCompression", "");
+        System.out.printf("%-18s %-8s %10.2f Mpixel/s %8.3f rms error%n", name, parallel ? "parallel" : "serial",
+            this.numPixels * NUM_ITERATIONS / (time / 1e9) / 1e6, error);
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        DDSCompressorBenchmark benchmark = new DDSCompressorBenchmark(
+            new File(args.length > 0 ? args[0] : "testData"));
+        benchmark.checkOutput();
+        System.out.printf("%d images, %d processors, parallel output identical to serial%n", benchmark.images.size(),
+            Runtime.getRuntime().availableProcessors());
+
+        for (int warmup = 0; warmup < 3; warmup++)
+        {
+            for (String compressionType : COMPRESSION_TYPES)
+            {
+                benchmark.run(compressionType, false);
+                benchmark.run(compressionType, true);
+            }
+        }
+
+        System.out.println("Measured:");
+        for (String compressionType : COMPRESSION_TYPES)
+        {
+            benchmark.run(compressionType, false);
+            benchmark.run(compressionType, true);
+        }
+    }
+}
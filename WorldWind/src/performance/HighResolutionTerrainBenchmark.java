@@ -0,0 +1,319 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package performance;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.terrain.*;
+
+import java.util.*;
+
+/**
+ * Measures the throughput of HighResolutionTerrain's line intersection queries over synthetic hilly terrain. The
+ * legacy measurement tests every triangle of every tile the line crosses, as HighResolutionTerrain did before its
+ * tiles carried bounding volume hierarchies. The other measurements find all intersections, find only the nearest
+ * intersection of a batch of lines, and determine only visibility. All tiles are cached before measuring.
+ * <p/>
+ * The viewshed measurements compute the viewshed of many observers. The global-lock measurement counts each sweep's
+ * visible grid points while holding a lock on the whole grid, as HighResolutionTerrain did before it locked each grid
+ * tile separately. Both produce identical counts.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class HighResolutionTerrainBenchmark
+{
+    protected static final int NUM_SEGMENTS = 500;
+    protected static final int NUM_ITERATIONS = 5;
+    protected static final Sector SECTOR = Sector.fromDegrees(0, 0.2, 0, 0.2);
+    protected static final double TARGET_RESOLUTION = 30; // meters
+    protected static final int NUM_OBSERVERS = 64;
+    protected static final double VIEWSHED_RADIUS = 3000; // meters
+    protected static final double VIEWSHED_RESOLUTION = 10; // meters
+
+    /** An elevation model of rolling hills up to 500 meters high. */
+    protected static class HillElevationModel extends ZeroElevationModel
+    {
+        @Override
+        public double getMaxElevation()
+        {
+            return 500;
+        }
+
+        @Override
+        public double[] getExtremeElevations(Angle latitude, Angle longitude)
+        {
+            return new double[] {0, 500};
+        }
+
+        @Override
+        public double[] getExtremeElevations(Sector sector)
+        {
+            return new double[] {0, 500};
+        }
+
+        @Override
+        public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                LatLon ll = latlons.get(i);
+                buffer[i] = computeElevation(ll.getLatitude().degrees, ll.getLongitude().degrees);
+            }
+
+            return 0;
+        }
+
+        @Override
+        public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                buffer[i] = computeElevation(latitudes[i], longitudes[i]);
+            }
+
+            return 0;
+        }
+
+        protected static double computeElevation(double latitude, double longitude)
+        {
+            return 250 + 250 * Math.sin(latitude * 300) * Math.cos(longitude * 250);
+        }
+    }
+
+    /**
+     * Computes intersections by testing every triangle of every tile a line crosses, and optionally counts viewshed
+     * grid points while holding a lock on the whole grid.
+     */
+    protected static class LegacyTerrain extends HighResolutionTerrain
+    {
+        protected boolean globalViewshedLock;
+
+        public LegacyTerrain(Globe globe, Sector sector)
+        {
+            super(globe, sector, TARGET_RESOLUTION, null);
+        }
+
+        @Override
+        protected void countViewshedPoints(ViewshedGrid grid, int observerRow, int observerCol, int quadrant,
+            boolean[] visible, int n, double rowMeters, double colMeters, double radius)
+        {
+            if (!this.globalViewshedLock)
+            {
+                super.countViewshedPoints(grid, observerRow, observerCol, quadrant, visible, n, rowMeters, colMeters,
+                    radius);
+                return;
+            }
+
+            synchronized (grid)
+            {
+                super.countViewshedPoints(grid, observerRow, observerCol, quadrant, visible, n, rowMeters, colMeters,
+                    radius);
+            }
+        }
+
+        public Vec4 intersectNearest(Position pA, Position pB) throws InterruptedException
+        {
+            List<RectTile> tiles = this.getIntersectingTiles(pA, pB);
+            if (tiles == null)
+                return null;
+
+            Vec4 ptA = this.getSurfacePoint(pA.getLatitude(), pA.getLongitude(), pA.getAltitude());
+            Vec4 ptB = this.getSurfacePoint(pB.getLatitude(), pB.getLongitude(), pB.getAltitude());
+            Line line = new Line(ptA, ptB.subtract3(ptA).normalize3());
+
+            final Vec4 origin = line.getOrigin();
+            List<Intersection> list = new ArrayList<Intersection>();
+            for (RectTile tile : tiles)
+            {
+                Intersection[] hits = this.intersect(tile, line);
+                if (hits != null)
+                    list.addAll(Arrays.asList(hits));
+            }
+
+            if (list.size() == 0)
+                return null;
+
+            Collections.sort(list, new Comparator<Intersection>()
+            {
+                public int compare(Intersection i1, Intersection i2)
+                {
+                    double d1 = origin.distanceTo3(i1.getIntersectionPoint());
+                    double d2 = origin.distanceTo3(i2.getIntersectionPoint());
+                    return Double.compare(d1, d2);
+                }
+            });
+
+            return list.get(0).getIntersectionPoint();
+        }
+    }
+
+    protected final LegacyTerrain terrain;
+    protected final double[] segments = new double[6 * NUM_SEGMENTS];
+    protected final List<Position> positions = new ArrayList<Position>();
+    protected final List<Position> observers = new ArrayList<Position>();
+
+    public HighResolutionTerrainBenchmark()
+    {
+        Globe globe = new EllipsoidalGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS, Earth.WGS84_ES,
+            new HillElevationModel());
+        this.terrain = new LegacyTerrain(globe, SECTOR);
+        this.terrain.setCacheCapacity((long) 200e6);
+
+        // Lines of sight between points up to 600 meters above the terrain, up to about 2 kilometers apart.
+        Random random = new Random(11);
+        for (int i = 0; i < this.segments.length; i += 6)
+        {
+            double lat = 0.02 + 0.16 * random.nextDouble();
+            double lon = 0.02 + 0.16 * random.nextDouble();
+            this.segments[i] = lat;
+            this.segments[i + 1] = lon;
+            this.segments[i + 2] = 600 * random.nextDouble();
+            this.segments[i + 3] = lat + 0.02 * random.nextDouble() - 0.01;
+            this.segments[i + 4] = lon + 0.02 * random.nextDouble() - 0.01;
+            this.segments[i + 5] = 600 * random.nextDouble();
+
+            this.positions.add(Position.fromDegrees(this.segments[i], this.segments[i + 1], this.segments[i + 2]));
+            this.positions.add(Position.fromDegrees(this.segments[i + 3], this.segments[i + 4], this.segments[i + 5]));
+        }
+
+        // Observers 10 meters above the terrain, with overlapping viewsheds.
+        for (int i = 0; i < NUM_OBSERVERS; i++)
+        {
+            this.observers.add(Position.fromDegrees(0.08 + 0.04 * random.nextDouble(),
+                0.08 + 0.04 * random.nextDouble(), 10));
+        }
+    }
+
+    protected void checkViewshedOutput() throws Exception
+    {
+        this.terrain.globalViewshedLock = true;
+        Viewshed expected = this.terrain.computeViewshed(this.observers, VIEWSHED_RADIUS, VIEWSHED_RESOLUTION);
+        this.terrain.globalViewshedLock = false;
+        Viewshed viewshed = this.terrain.computeViewshed(this.observers, VIEWSHED_RADIUS, VIEWSHED_RESOLUTION);
+
+        for (int row = 0; row < expected.getHeight(); row++)
+        {
+            for (int col = 0; col < expected.getWidth(); col++)
+            {
+                if (viewshed.getVisibilityCount(row, col) != expected.getVisibilityCount(row, col))
+                    throw new IllegalStateException("Viewshed count differs at " + row + ", " + col);
+            }
+        }
+    }
+
+    protected void runViewshed(String name) throws Exception
+    {
+        this.terrain.globalViewshedLock = name.equals("vs-global");
+        long start = System.nanoTime();
+        this.terrain.computeViewshed(this.observers, VIEWSHED_RADIUS, VIEWSHED_RESOLUTION);
+        long time = System.nanoTime() - start;
+
+        System.out.printf("%-10s %12.0f observers/s%n", name, NUM_OBSERVERS / (time / 1e9));
+    }
+
+    protected int checkOutput() throws Exception
+    {
+        int numHits = 0;
+        double[] points = this.terrain.intersect(this.segments);
+
+        for (int i = 0; i < NUM_SEGMENTS; i++)
+        {
+            Position pA = this.positions.get(2 * i);
+            Position pB = this.positions.get(2 * i + 1);
+
+            Vec4 expected = this.terrain.intersectNearest(pA, pB);
+            Intersection[] hits = this.terrain.intersect(pA, pB);
+            Vec4 nearest = new Vec4(points[3 * i], points[3 * i + 1], points[3 * i + 2]);
+
+            if (expected == null)
+            {
+                if (hits != null || !Double.isNaN(nearest.x))
+                    throw new IllegalStateException("Unexpected intersection for segment " + i);
+            }
+            else
+            {
+                if (hits == null || expected.distanceTo3(hits[0].getIntersectionPoint()) > 1e-3
+                    || expected.distanceTo3(nearest) > 1e-3)
+                    throw new IllegalStateException("Intersection differs for segment " + i);
+                numHits++;
+            }
+        }
+
+        return numHits;
+    }
+
+    protected void run(String name) throws Exception
+    {
+        long start = System.nanoTime();
+
+        for (int n = 0; n < NUM_ITERATIONS; n++)
+        {
+            if (name.equals("batched"))
+            {
+                this.terrain.intersect(this.segments);
+                continue;
+            }
+
+            for (int i = 0; i < NUM_SEGMENTS; i++)
+            {
+                Position pA = this.positions.get(2 * i);
+                Position pB = this.positions.get(2 * i + 1);
+
+                if (name.equals("legacy"))
+                    this.terrain.intersectNearest(pA, pB);
+                else if (name.equals("all"))
+                    this.terrain.intersect(pA, pB);
+                else
+                    this.terrain.isVisible(pA, pB);
+            }
+        }
+
+        long time = System.nanoTime() - start;
+
+        System.out.printf("%-10s %12.0f segments/s%n", name, NUM_SEGMENTS * NUM_ITERATIONS / (time / 1e9));
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        HighResolutionTerrainBenchmark benchmark = new HighResolutionTerrainBenchmark();
+        int numHits = benchmark.checkOutput();
+        System.out.printf("%d segments, %d intersecting the terrain, nearest intersections identical to legacy%n",
+            NUM_SEGMENTS, numHits);
+        benchmark.checkViewshedOutput();
+        System.out.printf("%d observers on %d processors, viewshed counts identical with a global lock%n",
+            NUM_OBSERVERS, Runtime.getRuntime().availableProcessors());
+
+        String[] viewshedNames = new String[] {"vs-global", "vs-tiled"};
+
+        String[] names = new String[] {"legacy", "all", "batched", "visible"};
+        for (int warmup = 0; warmup < 3; warmup++)
+        {
+            for (String name : names)
+            {
+                benchmark.run(name);
+            }
+            for (String name : viewshedNames)
+            {
+                benchmark.runViewshed(name);
+            }
+        }
+
+        System.out.println("Measured:");
+        for (String name : names)
+        {
+            benchmark.run(name);
+        }
+        for (String name : viewshedNames)
+        {
+            benchmark.runViewshed(name);
+        }
+    }
+}
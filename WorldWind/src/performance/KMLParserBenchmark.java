@@ -0,0 +1,374 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package performance;
+
+import gov.nasa.worldwind.geom.Position;
+import gov.nasa.worldwind.ogc.kml.*;
+import gov.nasa.worldwind.util.xml.*;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+import javax.xml.stream.events.XMLEvent;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * Measures the time and memory allocated to parse KML documents, and compares the parsed coordinates against a
+ * reference parser. The reference parser creates every element parser with an uncached reflective constructor lookup,
+ * and tokenizes coordinates into strings before converting them to numbers, as KML parsing did before parser
+ * allocation and coordinate parsing were optimized.
+ * <p/>
+ * The documents are the KML files in the test data directory, or in a directory specified as the first argument, and
+ * a synthetic document of many placemarks with line strings. Allocation is measured with the Sun JVM's per-thread
+ * allocation counter, and is not reported on other JVMs.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class KMLParserBenchmark
+{
+    protected static final int NUM_PLACEMARKS = 10000;
+    protected static final int NUM_COORDINATES = 20;
+    protected static final int NUM_ITERATIONS = 5;
+
+    /** A KML root that parses with the reference parser context. */
+    protected static class ReferenceRoot extends KMLRoot
+    {
+        public ReferenceRoot(InputStream docSource) throws IOException
+        {
+            super(docSource, KMLConstants.KML_MIME_TYPE);
+        }
+
+        @Override
+        protected KMLParserContext createParserContext(XMLEventReader reader)
+        {
+            return new ReferenceParserContext(reader, this.getNamespaceURI());
+        }
+    }
+
+    /** A parser context that creates parsers by reflection on every allocation, without caching the constructors. */
+    protected static class ReferenceParserContext extends KMLParserContext
+    {
+        public ReferenceParserContext(XMLEventReader eventReader, String defaultNamespace)
+        {
+            super(eventReader, defaultNamespace);
+        }
+
+        @Override
+        protected void initializeParsers()
+        {
+            super.initializeParsers();
+
+            for (Map.Entry<QName, XMLEventParser> entry : new ArrayList<Map.Entry<QName, XMLEventParser>>(
+                this.parsers.entrySet()))
+            {
+                if (entry.getValue().getClass() == KMLCoordinatesParser.class)
+                    this.parsers.put(entry.getKey(), new ReferenceCoordinatesParser(entry.getKey().getNamespaceURI()));
+            }
+        }
+
+        @Override
+        public XMLEventParser getParser(QName name)
+        {
+            XMLEventParser factoryParser = this.parsers.get(name);
+            if (factoryParser == null)
+                factoryParser = this.parsers.get(new QName(this.getDefaultNamespaceURI(), name.getLocalPart()));
+            if (factoryParser == null)
+                factoryParser = this.parsers.get(new QName(name.getLocalPart()));
+            if (factoryParser == null)
+                return null;
+
+            try
+            {
+                // AbstractXMLEventParser.newInstance finds the constructor by reflection on every call.
+                return factoryParser.newInstance();
+            }
+            catch (Exception e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /** A coordinates parser that tokenizes each coordinate into strings and converts them to numbers. */
+    protected static class ReferenceCoordinatesParser extends KMLCoordinatesParser
+    {
+        public ReferenceCoordinatesParser(String namespaceURI)
+        {
+            super(namespaceURI);
+        }
+
+        @Override
+        public Position.PositionList parse(XMLEventParserContext ctx, XMLEvent doubleEvent, Object... args)
+            throws XMLStreamException
+        {
+            String s = ctx.getStringParser().parseString(ctx, doubleEvent);
+            if (s == null || s.length() < 3)
+                return null;
+
+            ArrayList<Position> positions = new ArrayList<Position>();
+            char[] buffer = s.trim().toCharArray();
+            List<String> words = new ArrayList<String>(3);
+            StringBuilder nextWord = new StringBuilder();
+            boolean afterComma = false;
+
+            int i = 0;
+            while (i < buffer.length)
+            {
+                words.clear();
+                while (i < buffer.length)
+                {
+                    char ch = buffer[i++];
+                    if (Character.isWhitespace(ch) || ch == ',')
+                    {
+                        if (nextWord.length() > 0)
+                        {
+                            words.add(nextWord.toString());
+                            nextWord = new StringBuilder();
+                        }
+
+                        if (ch == ',')
+                            afterComma = true;
+
+                        if (ch == ',' ? words.size() >= 3 : !afterComma && words.size() >= 2)
+                            break;
+                    }
+                    else
+                    {
+                        afterComma = false;
+                        nextWord.append(ch);
+                    }
+                }
+
+                if (nextWord.length() > 0)
+                {
+                    words.add(nextWord.toString());
+                    nextWord = new StringBuilder();
+                }
+
+                try
+                {
+                    if (words.size() >= 2)
+                    {
+                        positions.add(Position.fromDegrees(Double.valueOf(words.get(1)), Double.valueOf(words.get(0)),
+                            words.size() > 2 ? Double.valueOf(words.get(2)) : 0));
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    continue;
+                }
+            }
+
+            return new Position.PositionList(positions);
+        }
+    }
+
+    protected final List<String> names = new ArrayList<String>();
+    protected final List<byte[]> documents = new ArrayList<byte[]>();
+
+    public KMLParserBenchmark(File directory) throws IOException
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            Arrays.sort(files);
+            for (File file : files)
+            {
+                if (file.isFile() && file.getName().endsWith(".kml"))
+                {
+                    this.names.add(file.getName());
+                    this.documents.add(readFile(file));
+                }
+            }
+        }
+
+        this.names.add("synthetic");
+        this.documents.add(createDocument());
+    }
+
+    protected static byte[] readFile(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    protected static byte[] createDocument() throws IOException
+    {
+        Random random = new Random(1);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<kml xmlns=\"http://www.opengis.net/kml/2.2\"><Document>\n");
+        sb.append("<Style id=\"line\"><LineStyle><color>ff0000ff</color><width>2</width></LineStyle></Style>\n");
+
+        for (int n = 0; n < NUM_PLACEMARKS; n++)
+        {
+            sb.append("<Placemark><name>Placemark ").append(n).append("</name>");
+            sb.append("<styleUrl>#line</styleUrl>");
+            sb.append("<ExtendedData><Data name=\"id\"><value>").append(n).append("</value></Data></ExtendedData>");
+            sb.append("<LineString><tessellate>1</tessellate><coordinates>\n");
+
+            double lat = -80 + 160 * random.nextDouble();
+            double lon = -170 + 340 * random.nextDouble();
+            for (int i = 0; i < NUM_COORDINATES; i++)
+            {
+                sb.append(String.format("%.8f,%.8f,%.1f ", lon + 0.001 * i, lat + 0.001 * i,
+                    1000 * random.nextDouble()));
+            }
+
+            sb.append("\n</coordinates></LineString></Placemark>\n");
+        }
+
+        sb.append("</Document></kml>\n");
+
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    protected static KMLRoot parse(byte[] document, boolean reference) throws Exception
+    {
+        InputStream in = new ByteArrayInputStream(document);
+        KMLRoot root = reference ? new ReferenceRoot(in) : new KMLRoot(in, KMLConstants.KML_MIME_TYPE);
+        root.parse();
+        return root;
+    }
+
+    protected static void addPositions(Object o, List<Position> positions)
+    {
+        if (o instanceof KMLRoot)
+        {
+            addPositions(((KMLRoot) o).getFeature(), positions);
+        }
+        else if (o instanceof KMLAbstractContainer)
+        {
+            for (KMLAbstractFeature feature : ((KMLAbstractContainer) o).getFeatures())
+            {
+                addPositions(feature, positions);
+            }
+        }
+        else if (o instanceof KMLPlacemark)
+        {
+            addPositions(((KMLPlacemark) o).getGeometry(), positions);
+        }
+        else if (o instanceof KMLMultiGeometry)
+        {
+            for (KMLAbstractGeometry geometry : ((KMLMultiGeometry) o).getGeometries())
+            {
+                addPositions(geometry, positions);
+            }
+        }
+        else if (o instanceof KMLPolygon)
+        {
+            addPositions(((KMLPolygon) o).getOuterBoundary(), positions);
+            if (((KMLPolygon) o).getInnerBoundaries() != null)
+            {
+                for (KMLLinearRing ring : ((KMLPolygon) o).getInnerBoundaries())
+                {
+                    addPositions(ring, positions);
+                }
+            }
+        }
+        else if (o instanceof KMLLineString && ((KMLLineString) o).getCoordinates() != null)
+        {
+            positions.addAll(((KMLLineString) o).getCoordinates().list);
+        }
+        else if (o instanceof KMLPoint && ((KMLPoint) o).getCoordinates() != null)
+        {
+            positions.add(((KMLPoint) o).getCoordinates());
+        }
+    }
+
+    protected void checkPositions() throws Exception
+    {
+        for (int i = 0; i < this.documents.size(); i++)
+        {
+            List<Position> expected = new ArrayList<Position>();
+            addPositions(parse(this.documents.get(i), true), expected);
+
+            List<Position> actual = new ArrayList<Position>();
+            addPositions(parse(this.documents.get(i), false), actual);
+
+            if (!expected.equals(actual))
+                throw new IllegalStateException("Coordinate mismatch in " + this.names.get(i));
+        }
+    }
+
+    protected void run(String name, boolean reference, int index) throws Exception
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean measureAllocation = threads instanceof com.sun.management.ThreadMXBean;
+        long threadId = Thread.currentThread().getId();
+
+        long bytes = measureAllocation ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId)
+            : 0;
+        long start = System.nanoTime();
+
+        for (int n = 0; n < NUM_ITERATIONS; n++)
+        {
+            if (index >= 0)
+            {
+                parse(this.documents.get(index), reference);
+            }
+            else
+            {
+                for (byte[] document : this.documents.subList(0, this.documents.size() - 1))
+                {
+                    parse(document, reference);
+                }
+            }
+        }
+
+        long time = System.nanoTime() - start;
+
+        System.out.printf("%-10s %-12s %10.2f ms/parse", name, index >= 0 ? this.names.get(index) : "test data",
+            time / 1e6 / NUM_ITERATIONS);
+        if (measureAllocation)
+        {
+            bytes = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId) - bytes;
+            System.out.printf(" %12d bytes/parse", bytes / NUM_ITERATIONS);
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        KMLParserBenchmark benchmark = new KMLParserBenchmark(new File(args.length > 0 ? args[0] : "testData/KML"));
+        benchmark.checkPositions();
+        System.out.println("Coordinates identical for " + benchmark.documents.size() + " documents");
+
+        int synthetic = benchmark.documents.size() - 1;
+        for (int warmup = 0; warmup < 3; warmup++)
+        {
+            benchmark.run("reference", true, -1);
+            benchmark.run("factory", false, -1);
+            benchmark.run("reference", true, synthetic);
+            benchmark.run("factory", false, synthetic);
+        }
+
+        System.out.println("Measured:");
+        benchmark.run("reference", true, -1);
+        benchmark.run("factory", false, -1);
+        benchmark.run("reference", true, synthetic);
+        benchmark.run("factory", false, synthetic);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package performance;
+
+import com.sun.opengl.util.BufferUtil;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.terrain.*;
+
+import java.lang.management.*;
+import java.nio.FloatBuffer;
+import java.util.*;
+
+/**
+ * Measures the time and memory allocated by {@link RectangularTessellator} to compute tile vertices, and compares the
+ * computed vertices against a per-vertex reference implementation, which computes a <code>LatLon</code> for every
+ * vertex and converts each vertex with <code>Globe.computePointFromPosition</code>. The globe's elevations are
+ * synthetic, so the benchmark runs without network access or a display.
+ * <p/>
+ * Allocation is measured with the Sun JVM's per-thread allocation counter, and is not reported on other JVMs.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class TessellatorVertexBenchmark extends RectangularTessellator
+{
+    protected static final int NUM_TILES = 512;
+    protected static final int NUM_ITERATIONS = 20;
+
+    protected final Globe globe;
+    protected final List<RectTile> tiles = new ArrayList<RectTile>();
+    protected final FloatBuffer verts;
+
+    public TessellatorVertexBenchmark()
+    {
+        this.globe = new Earth();
+        this.globe.setElevationModel(new ZeroElevationModel()
+        {
+            @Override
+            public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+                double[] buffer)
+            {
+                int i = 0;
+                for (LatLon ll : latlons)
+                {
+                    buffer[i++] = 3000 * Math.sin(ll.getLatitude().radians * 40)
+                        * Math.cos(ll.getLongitude().radians * 30);
+                }
+                return 0;
+            }
+
+            @Override
+            public double getElevations(Sector sector, double[] latitudes, double[] longitudes,
+                double targetResolution, double[] buffer)
+            {
+                for (int i = 0; i < latitudes.length; i++)
+                {
+                    buffer[i] = 3000 * Math.sin(Angle.fromDegrees(latitudes[i]).radians * 40)
+                        * Math.cos(Angle.fromDegrees(longitudes[i]).radians * 30);
+                }
+                return 0;
+            }
+
+            @Override
+            public double getMinElevation()
+            {
+                return -3000;
+            }
+        });
+
+        // Tiles of several levels spread over the globe, including tiles on the antimeridian.
+        Random random = new Random(1);
+        for (int n = 0; n < NUM_TILES; n++)
+        {
+            int level = random.nextInt(10);
+            double size = 36d / (1 << level);
+            double lat = -90 + random.nextInt((int) (180 / size)) * size;
+            double lon = -180 + random.nextInt((int) (360 / size)) * size;
+            Sector sector = Sector.fromDegrees(lat, lat + size, lon, lon + size);
+            this.tiles.add(new RectTile(this, null, level, this.density, sector, 1));
+        }
+
+        this.verts = BufferUtil.newFloatBuffer((this.density + 3) * (this.density + 3) * 3);
+    }
+
+    protected void computeReferenceVertices(RectTile tile, FloatBuffer verts)
+    {
+        List<LatLon> latlons = this.computeLocations(tile);
+        double[] elevations = new double[latlons.size()];
+        this.globe.getElevations(tile.getSector(), latlons, tile.getResolution(), elevations);
+
+        double minElevation = this.globe.getMinElevation();
+        LatLon centroid = tile.getSector().getCentroid();
+        Vec4 refCenter = this.globe.computePointFromPosition(centroid.getLatitude(), centroid.getLongitude(), 0d);
+
+        int density = tile.getDensity();
+        int ie = 0;
+        int iv = 0;
+        Iterator<LatLon> iter = latlons.iterator();
+        for (int j = 0; j <= density + 2; j++)
+        {
+            for (int i = 0; i <= density + 2; i++)
+            {
+                LatLon latlon = iter.next();
+                double elevation = elevations[ie++];
+                if (j == 0 || j >= density + 2 || i == 0 || i >= density + 2)
+                    elevation = minElevation;
+
+                Vec4 p = this.globe.computePointFromPosition(latlon.getLatitude(), latlon.getLongitude(), elevation);
+                verts.put(iv++, (float) (p.x - refCenter.x));
+                verts.put(iv++, (float) (p.y - refCenter.y));
+                verts.put(iv++, (float) (p.z - refCenter.z));
+            }
+        }
+    }
+
+    protected void checkVertices()
+    {
+        FloatBuffer expected = BufferUtil.newFloatBuffer(this.verts.capacity());
+        for (RectTile tile : this.tiles)
+        {
+            this.computeReferenceVertices(tile, expected);
+            this.computeVertices(this.globe, tile, 1, true, this.verts);
+
+            for (int i = 0; i < expected.capacity(); i++)
+            {
+                if (Float.floatToIntBits(expected.get(i)) != Float.floatToIntBits(this.verts.get(i)))
+                {
+                    throw new IllegalStateException("Vertex mismatch at " + i + " of " + tile.getSector() + ": "
+                        + expected.get(i) + " != " + this.verts.get(i));
+                }
+            }
+        }
+    }
+
+    protected void run(String name, boolean reference)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean measureAllocation = threads instanceof com.sun.management.ThreadMXBean;
+        long threadId = Thread.currentThread().getId();
+
+        long bytes = measureAllocation ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId)
+            : 0;
+        long start = System.nanoTime();
+
+        for (int n = 0; n < NUM_ITERATIONS; n++)
+        {
+            for (RectTile tile : this.tiles)
+            {
+                if (reference)
+                    this.computeReferenceVertices(tile, this.verts);
+                else
+                    this.computeVertices(this.globe, tile, 1, true, this.verts);
+            }
+        }
+
+        long time = System.nanoTime() - start;
+        int numBuilds = NUM_ITERATIONS * this.tiles.size();
+
+        System.out.printf("%-10s %8.2f us/tile", name, time / 1e3 / numBuilds);
+        if (measureAllocation)
+        {
+            bytes = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId) - bytes;
+            System.out.printf(" %10d bytes/tile", bytes / numBuilds);
+        }
+        System.out.println();
+    }
+
+    public static void main(String[] args)
+    {
+        TessellatorVertexBenchmark benchmark = new TessellatorVertexBenchmark();
+        benchmark.checkVertices();
+        System.out.println("Vertices identical for " + benchmark.tiles.size() + " tiles at density "
+            + benchmark.density);
+
+        for (int warmup = 0; warmup < 3; warmup++)
+        {
+            benchmark.run("reference", true);
+            benchmark.run("grid", false);
+        }
+
+        System.out.println("Measured:");
+        benchmark.run("reference", true);
+        benchmark.run("grid", false);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.cache;
+
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+
+/**
+ * Tests operation of ConcurrentMemoryCache.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class ConcurrentMemoryCacheTest
+{
+    public static class Tests extends TestCase
+    {
+        @Test
+        /** Tests that hits, misses and evictions are counted. */
+        public void testCounters()
+        {
+            ConcurrentMemoryCache cache = new ConcurrentMemoryCache(6, 10);
+            cache.setAccessGranularity(0);
+
+            for (int i = 0; i < 10; i++)
+            {
+                cache.add(i, "value" + i, 1);
+            }
+
+            assertEquals("Wrong value ", "value0", cache.getObject(0));
+            assertNull("Unexpected value ", cache.getObject(20));
+            cache.add(10, "value10", 1);
+
+            assertEquals("Hit count incorrect ", 1, cache.getHitCount());
+            assertEquals("Miss count incorrect ", 1, cache.getMissCount());
+            assertEquals("Eviction count incorrect ", 4, cache.getEvictionCount());
+            assertEquals("Used capacity incorrect ", 7, cache.getUsedCapacity());
+            assertTrue("Recently used entry evicted ", cache.contains(0));
+            assertFalse("Least recently used entry not evicted ", cache.contains(1));
+        }
+
+        @Test
+        /** Tests that concurrent readers and writers keep the size accounting consistent. */
+        public void testConcurrentAccess() throws Exception
+        {
+            final ConcurrentMemoryCache cache = new ConcurrentMemoryCache(800, 1000);
+            final int numThreads = 4;
+            final int numOperations = 20000;
+
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+            for (int t = 0; t < numThreads; t++)
+            {
+                final int seed = t;
+                executor.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        for (int i = 0; i < numOperations; i++)
+                        {
+                            int key = (i * 31 + seed) % 2000;
+                            if (cache.getObject(key) == null)
+                                cache.add(key, "value" + key, 1);
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue("Threads did not finish ", executor.awaitTermination(60, TimeUnit.SECONDS));
+
+            assertEquals("Used capacity inconsistent ", cache.getNumObjects(), cache.getUsedCapacity());
+            assertTrue("Capacity exceeded ", cache.getUsedCapacity() <= cache.getCapacity());
+            assertEquals("Access count incorrect ", numThreads * numOperations,
+                cache.getHitCount() + cache.getMissCount());
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.cache;
+
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+
+/**
+ * Tests operation of FileStoreIndex.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class FileStoreIndexTest
+{
+    public static class Tests extends TestCase
+    {
+        protected File root;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            this.root = File.createTempFile("FileStoreIndexTest", "");
+            assertTrue(this.root.delete());
+            assertTrue(this.root.mkdirs());
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            delete(this.root);
+        }
+
+        @SuppressWarnings({"ResultOfMethodCallIgnored"})
+        protected static void delete(File file)
+        {
+            File[] children = file.listFiles();
+            if (children != null)
+            {
+                for (File child : children)
+                {
+                    delete(child);
+                }
+            }
+
+            file.delete();
+        }
+
+        protected File createFile(File dir, String name) throws IOException
+        {
+            File file = new File(dir, name);
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            assertTrue(file.createNewFile());
+            return file;
+        }
+
+        @Test
+        /** Tests that existing files are found and missing files are not. */
+        public void testLookup() throws IOException
+        {
+            File existing = this.createFile(this.root, "a/b/tile1.dds");
+
+            FileStoreIndex index = new FileStoreIndex();
+            assertTrue("Directory not found ", index.directoryExists(this.root));
+            assertTrue("Existing file not found ", index.containsFile(existing));
+            assertFalse("Missing file found ", index.containsFile(new File(existing.getParentFile(), "tile2.dds")));
+            assertFalse("Missing file found ", index.containsFile(new File(this.root, "x/y/tile1.dds")));
+        }
+
+        @Test
+        /** Tests that files created and removed through the index are tracked, including in new directories. */
+        public void testCreateAndRemove() throws IOException
+        {
+            FileStoreIndex index = new FileStoreIndex();
+            File file = new File(this.root, "c/d/tile1.dds");
+            assertFalse("Missing file found ", index.containsFile(file));
+
+            // Files are reported to the index after their parent directories are created, and before they're written.
+            assertTrue(file.getParentFile().mkdirs());
+            index.fileCreated(file);
+            assertFalse("Unwritten file found ", index.containsFile(file));
+            assertTrue(file.createNewFile());
+            assertTrue("New file not found ", index.containsFile(file));
+
+            assertTrue(file.delete());
+            index.fileRemoved(file);
+            assertFalse("Removed file found ", index.containsFile(file));
+        }
+
+        @Test
+        /** Tests that the bloom filter grows without losing indexed files. */
+        public void testManyFiles() throws IOException
+        {
+            FileStoreIndex index = new FileStoreIndex();
+            index.bloomFilter = new FileStoreIndex.BloomFilter(64);
+
+            File dir = new File(this.root, "many");
+            for (int i = 0; i < 200; i++)
+            {
+                this.createFile(dir, "tile" + i + ".bil");
+            }
+
+            for (int i = 0; i < 200; i++)
+            {
+                assertTrue("File not found ", index.containsFile(new File(dir, "tile" + i + ".bil")));
+            }
+            assertTrue("Filter not enlarged ", index.bloomFilter.getNumBits() >= 2000);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.cache;
+
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Tests operation of LRUMemoryCache.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class LRUMemoryCacheTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static class Listener implements MemoryCache.CacheListener
+        {
+            protected List<Object> removedKeys = new ArrayList<Object>();
+
+            public void entryRemoved(Object key, Object clientObject)
+            {
+                this.removedKeys.add(key);
+            }
+
+            public void removalException(Throwable exception, Object key, Object clientObject)
+            {
+            }
+        }
+
+        protected static class Item implements Cacheable
+        {
+            protected long size;
+
+            public Item(long size)
+            {
+                this.size = size;
+            }
+
+            public long getSizeInBytes()
+            {
+                return this.size;
+            }
+        }
+
+        protected void addEntries(MemoryCache cache, int numEntries)
+        {
+            for (int i = 0; i < numEntries; i++)
+            {
+                cache.add(i, new Item(1));
+            }
+        }
+
+        @Test
+        /** Tests that entries are evicted in least recently used order down to the low water level before the add. */
+        public void testEvictionOrder()
+        {
+            MemoryCache cache = new LRUMemoryCache(6, 10);
+            Listener listener = new Listener();
+            cache.addCacheListener(listener);
+
+            this.addEntries(cache, 10);
+            assertEquals("Used capacity incorrect ", 10, cache.getUsedCapacity());
+
+            // Touch the two oldest entries so that they're retained.
+            cache.getObject(0);
+            cache.getObject(1);
+
+            cache.add(10, new Item(1));
+
+            assertEquals("Removed entries incorrect ", Arrays.<Object>asList(2, 3, 4, 5), listener.removedKeys);
+            assertEquals("Used capacity incorrect ", 7, cache.getUsedCapacity());
+            assertEquals("Number of objects incorrect ", 7, cache.getNumObjects());
+            assertTrue("Recently used entry evicted ", cache.contains(0) && cache.contains(1));
+            assertTrue("New entry not in cache ", cache.contains(10));
+        }
+
+        @Test
+        /** Tests that replacing an entry notifies listeners and keeps the size accounting correct. */
+        public void testReplaceAndRemove()
+        {
+            MemoryCache cache = new LRUMemoryCache(80, 100);
+            Listener listener = new Listener();
+            cache.addCacheListener(listener);
+
+            cache.add("a", new Item(10));
+            cache.add("b", new Item(20));
+            cache.add("a", new Item(30));
+            assertEquals("Used capacity incorrect ", 50, cache.getUsedCapacity());
+            assertEquals("Replaced entry not reported ", Arrays.<Object>asList("a"), listener.removedKeys);
+
+            cache.remove("b");
+            assertEquals("Used capacity incorrect ", 30, cache.getUsedCapacity());
+            assertNull("Removed entry still in cache ", cache.getObject("b"));
+
+            cache.clear();
+            assertEquals("Cache not empty ", 0, cache.getNumObjects());
+            assertEquals("Used capacity incorrect ", 0, cache.getUsedCapacity());
+            assertEquals("Free capacity incorrect ", 100, cache.getFreeCapacity());
+        }
+
+        @Test
+        /** Tests that entries larger than the capacity are rejected. */
+        public void testTooLarge()
+        {
+            MemoryCache cache = new LRUMemoryCache(8, 10);
+
+            assertFalse("Oversized entry added ", cache.add("a", new Item(11)));
+            assertFalse("Empty entry added ", cache.add("a", new Item(0)));
+            assertEquals("Cache not empty ", 0, cache.getNumObjects());
+        }
+
+        @Test
+        /** Tests selection of the cache implementation per cache key. */
+        public void testCacheSetSelection()
+        {
+            BasicMemoryCacheSet cacheSet = new BasicMemoryCacheSet();
+            cacheSet.setCacheClassName("lru", LRUMemoryCache.class.getName());
+            cacheSet.setCacheClassName("bogus", "gov.nasa.worldwind.cache.NoSuchCache");
+
+            assertTrue("Wrong cache class ", cacheSet.createCache("lru", 8, 10) instanceof LRUMemoryCache);
+            assertTrue("Wrong cache class ", cacheSet.createCache("other", 8, 10) instanceof BasicMemoryCache);
+            assertTrue("Wrong cache class ", cacheSet.createCache("bogus", 8, 10) instanceof BasicMemoryCache);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.WWIO;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+
+/**
+ * Tests operation of TilePackArchive and PackedDataFileStore.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class TilePackArchiveTest
+{
+    public static class Tests extends TestCase
+    {
+        protected File root;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            this.root = File.createTempFile("TilePackArchiveTest", "");
+            assertTrue(this.root.delete());
+            assertTrue(this.root.mkdirs());
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            delete(this.root);
+        }
+
+        @SuppressWarnings({"ResultOfMethodCallIgnored"})
+        protected static void delete(File file)
+        {
+            File[] children = file.listFiles();
+            if (children != null)
+            {
+                for (File child : children)
+                {
+                    delete(child);
+                }
+            }
+
+            file.delete();
+        }
+
+        protected static ByteBuffer makeData(int seed, int length)
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            for (int i = 0; i < length; i++)
+            {
+                buffer.put((byte) (seed + i));
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        @Test
+        /** Tests that files written to the archive are read back, replaced, removed, and survive reopening. */
+        public void testReadWrite() throws IOException
+        {
+            TilePackArchive archive = new TilePackArchive(this.root);
+            for (int i = 0; i < 100; i++)
+            {
+                archive.write("Earth/Test/0/" + i + ".dds", makeData(i, 100 + i));
+            }
+            archive.write("Earth/Test/0/5.dds", makeData(50, 10));
+            assertTrue(archive.remove("Earth/Test/0/6.dds"));
+
+            assertEquals("Wrong file count ", 99, archive.getNumFiles());
+            assertEquals("Replaced file incorrect ", makeData(50, 10), archive.read("Earth/Test/0/5.dds"));
+            assertNull("Removed file found ", archive.read("Earth/Test/0/6.dds"));
+            assertFalse("Missing file found ", archive.contains("Earth/Test/1/0.dds"));
+            archive.close();
+
+            archive = new TilePackArchive(this.root);
+            assertEquals("Wrong file count after reopening ", 99, archive.getNumFiles());
+            assertEquals("File incorrect after reopening ", makeData(7, 107), archive.read("Earth/Test/0/7.dds"));
+            archive.close();
+        }
+
+        @Test
+        /** Tests that the index grows, and that trimming removes the least recently used files and compacts. */
+        public void testGrowAndTrim() throws IOException
+        {
+            TilePackArchive archive = new TilePackArchive(this.root);
+            archive.setMaxPackSize(4096);
+            int numFiles = (int) (TilePackArchive.DEFAULT_INITIAL_CAPACITY * TilePackArchive.MAX_LOAD_FACTOR) + 10;
+            for (int i = 0; i < numFiles; i++)
+            {
+                archive.write("t/" + i + ".bil", makeData(i, 10));
+            }
+            assertEquals("Wrong file count ", numFiles, archive.getNumFiles());
+            assertEquals("File lost during growth ", makeData(3, 10), archive.read("t/3.bil"));
+
+            assertEquals("Wrong number trimmed ", numFiles - 100, archive.trimToSize(1000));
+            assertEquals("Wrong file count after trim ", 100, archive.getNumFiles());
+            assertEquals("Wrong live size ", 1000, archive.getLiveSize());
+            assertTrue("Packs not compacted ", archive.getPackSize() < 4096 * 2);
+            archive.close();
+        }
+
+        @Test
+        /** Tests that the file store moves downloaded tiles into the archive and serves them through URLs. */
+        public void testFileStore() throws IOException
+        {
+            PackedDataFileStore store = new PackedDataFileStore(this.root);
+            File file = store.newFile("Earth/Test/0/0/0_0.dds");
+            WWIO.saveBuffer(makeData(1, 64), file);
+
+            URL url = store.findFile("Earth/Test/0/0/0_0.dds", false);
+            assertEquals("Wrong protocol ", PackedDataFileStore.PACK_PROTOCOL, url.getProtocol());
+            assertFalse("Loose file not removed ", file.exists());
+            assertTrue("Packed file not found ", store.containsFile("Earth/Test/0/0/0_0.dds"));
+            assertEquals("Packed file incorrect ", makeData(1, 64), WWIO.readURLContentToBuffer(url));
+
+            store.removeFile(url);
+            assertFalse("Removed file found ", store.containsFile("Earth/Test/0/0/0_0.dds"));
+            assertNull("Removed file found ", store.findFile("Earth/Test/0/0/0_0.dds", false));
+            store.getArchive().close();
+        }
+
+        @Test
+        /** Tests that modification times are kept through compaction and reopening. */
+        public void testLastModified() throws IOException
+        {
+            TilePackArchive archive = new TilePackArchive(this.root);
+            archive.write("Earth/Test/0/0.dds", makeData(0, 10), 1300000000000L);
+            archive.write("Earth/Test/0/1.dds", makeData(1, 10), 1300000000500L);
+            archive.compact();
+            archive.close();
+
+            archive = new TilePackArchive(this.root);
+            assertEquals("Wrong modification time ", 1300000000000L, archive.getLastModified("Earth/Test/0/0.dds"));
+            assertEquals("Time not rounded up ", 1300000001000L, archive.getLastModified("Earth/Test/0/1.dds"));
+            assertEquals("Missing file has time ", 0, archive.getLastModified("Earth/Test/0/2.dds"));
+            archive.close();
+        }
+
+        @Test
+        /** Tests that archived files expire according to the modification time of the file that was packed. */
+        public void testFileStoreExpiry() throws IOException
+        {
+            PackedDataFileStore store = new PackedDataFileStore(this.root);
+            File file = store.newFile("Earth/Test/0/0/0_0.dds");
+            WWIO.saveBuffer(makeData(1, 64), file);
+            assertTrue(file.setLastModified(1300000000000L));
+
+            URL url = store.findFile("Earth/Test/0/0/0_0.dds", false);
+            assertEquals("Wrong protocol ", PackedDataFileStore.PACK_PROTOCOL, url.getProtocol());
+            assertEquals("Wrong modification time ", 1300000000000L, url.openConnection().getLastModified());
+            assertTrue("File not expired ", WWIO.isFileOutOfDate(url, System.currentTimeMillis()));
+            assertFalse("File expired ", WWIO.isFileOutOfDate(url, 1300000000000L));
+            assertFalse("File expired without expiry time ", WWIO.isFileOutOfDate(url, 0));
+            store.getArchive().close();
+        }
+
+        @Test
+        /** Tests that archived files whose store paths contain spaces are read, expired and removed. */
+        public void testFileStorePathWithSpaces() throws IOException
+        {
+            String path = "Earth/USGS Digital Ortho/0/0/0_0%20.dds";
+            PackedDataFileStore store = new PackedDataFileStore(this.root);
+            File file = store.newFile(path);
+            WWIO.saveBuffer(makeData(1, 64), file);
+            assertTrue(file.setLastModified(1300000000000L));
+
+            URL url = store.findFile(path, false);
+            assertEquals("Wrong protocol ", PackedDataFileStore.PACK_PROTOCOL, url.getProtocol());
+            assertEquals("Packed file incorrect ", makeData(1, 64), WWIO.readURLContentToBuffer(url));
+            assertEquals("Wrong modification time ", 1300000000000L, url.openConnection().getLastModified());
+            assertTrue("File not expired ", WWIO.isFileOutOfDate(url, System.currentTimeMillis()));
+            assertFalse("File expired ", WWIO.isFileOutOfDate(url, 1300000000000L));
+
+            store.removeFile(url);
+            assertFalse("Removed file found ", store.containsFile(path));
+            store.getArchive().close();
+        }
+
+        @Test
+        /** Tests that a file locked by a writer is not packed until the writer releases it. */
+        public void testLockedFileNotPacked() throws IOException
+        {
+            PackedDataFileStore store = new PackedDataFileStore(this.root);
+            File file = store.newFile("Earth/Test/0/0/0_0.dds");
+            WWIO.saveBuffer(makeData(1, 64), file);
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try
+            {
+                FileLock lock = raf.getChannel().lock();
+                URL url = store.findFile("Earth/Test/0/0/0_0.dds", false);
+                assertEquals("Locked file packed ", "file", url.getProtocol());
+                assertTrue("Locked file removed ", file.exists());
+                lock.release();
+            }
+            finally
+            {
+                raf.close();
+            }
+
+            URL url = store.findFile("Earth/Test/0/0/0_0.dds", false);
+            assertEquals("Released file not packed ", PackedDataFileStore.PACK_PROTOCOL, url.getProtocol());
+            assertEquals("Packed file incorrect ", makeData(1, 64), WWIO.readURLContentToBuffer(url));
+            store.getArchive().close();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.WWXML;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Tests that a raster server selects the same data rasters through its index as by testing every raster, and that
+ * drawing onto bands of a requested raster produces the same raster as drawing onto the whole.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class BasicRasterServerTest
+{
+    public static class Tests extends TestCase
+    {
+        protected BasicRasterServer server;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            this.server = new BasicRasterServer(WWXML.openDocumentStream(
+                new ByteArrayInputStream("<RasterServer><Sources/></RasterServer>".getBytes("UTF-8"))), null);
+        }
+
+        @Test
+        public void testSelectDataRasters()
+        {
+            Random random = new Random(5);
+            for (int i = 0; i < 500; i++)
+            {
+                double lat = 40 * random.nextDouble();
+                double lon = 40 * random.nextDouble();
+                Sector sector = Sector.fromDegrees(lat, lat + random.nextDouble(), lon, lon + random.nextDouble());
+                this.server.dataRasterList.add(new BufferedImageRaster(sector,
+                    new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB)));
+            }
+
+            for (int i = 0; i < 100; i++)
+            {
+                double lat = 42 * random.nextDouble() - 1;
+                double lon = 42 * random.nextDouble() - 1;
+                double size = 5 * random.nextDouble();
+                Sector sector = Sector.fromDegrees(lat, lat + size, lon, lon + size);
+
+                List<DataRaster> expected = new ArrayList<DataRaster>();
+                for (DataRaster raster : this.server.dataRasterList)
+                {
+                    Sector overlap = sector.intersection(raster.getSector());
+                    if (overlap != null && overlap.getDeltaLatDegrees() > 0 && overlap.getDeltaLonDegrees() > 0)
+                        expected.add(raster);
+                }
+
+                assertEquals("Selection differs for " + sector, expected, this.server.selectDataRasters(sector));
+            }
+        }
+
+        @Test
+        public void testImageBands()
+        {
+            Sector sector = Sector.fromDegrees(10, 12, 20, 23);
+            List<DataRaster> sources = new ArrayList<DataRaster>();
+            sources.add(createImage(Sector.fromDegrees(9.5, 11.3, 19.7, 21.9), 300, 250, Color.RED));
+            sources.add(createImage(Sector.fromDegrees(10.9, 12.5, 21.1, 23.6), 280, 310, Color.BLUE));
+
+            BufferedImageRaster whole = new BufferedImageRaster(512, 384, Transparency.TRANSLUCENT, sector);
+            BufferedImageRaster banded = new BufferedImageRaster(512, 384, Transparency.TRANSLUCENT, sector);
+            this.draw(sources, whole, banded);
+
+            int maxDifference = 0;
+            for (int y = 0; y < whole.getHeight(); y++)
+            {
+                for (int x = 0; x < whole.getWidth(); x++)
+                {
+                    int a = whole.getBufferedImage().getRGB(x, y);
+                    int b = banded.getBufferedImage().getRGB(x, y);
+                    for (int shift = 0; shift < 32; shift += 8)
+                    {
+                        int difference = ((a >> shift) & 0xFF) - ((b >> shift) & 0xFF);
+                        maxDifference = Math.max(maxDifference, Math.abs(difference));
+                    }
+                }
+            }
+
+            assertTrue("Banded image differs by " + maxDifference, maxDifference <= 1);
+        }
+
+        @Test
+        public void testElevationBands()
+        {
+            Sector sector = Sector.fromDegrees(10, 12, 20, 23);
+            List<DataRaster> sources = new ArrayList<DataRaster>();
+            sources.add(createElevations(Sector.fromDegrees(9.5, 11.3, 19.7, 21.9), 300, 250));
+            sources.add(createElevations(Sector.fromDegrees(10.9, 12.5, 21.1, 23.6), 280, 310));
+
+            ByteBufferRaster whole = new ByteBufferRaster(512, 384, sector, createElevationParams());
+            ByteBufferRaster banded = new ByteBufferRaster(512, 384, sector, createElevationParams());
+            this.draw(sources, whole, banded);
+
+            double maxDifference = 0;
+            for (int y = 0; y < whole.getHeight(); y++)
+            {
+                for (int x = 0; x < whole.getWidth(); x++)
+                {
+                    maxDifference = Math.max(maxDifference,
+                        Math.abs(whole.getDoubleAtPosition(y, x) - banded.getDoubleAtPosition(y, x)));
+                }
+            }
+
+            assertTrue("Banded elevations differ by " + maxDifference, maxDifference <= 1);
+        }
+
+        protected void draw(List<DataRaster> sources, DataRaster whole, DataRaster banded)
+        {
+            for (DataRaster source : sources)
+            {
+                source.drawOnTo(whole);
+            }
+
+            int[] bandEdges = new int[] {0, 37, 150, 152, 300, banded.getHeight()};
+            for (int i = 0; i < bandEdges.length - 1; i++)
+            {
+                DataRaster band = this.server.createRasterBand(banded, bandEdges[i], bandEdges[i + 1] - bandEdges[i]);
+                for (DataRaster source : sources)
+                {
+                    source.drawOnTo(band);
+                }
+            }
+        }
+
+        protected static DataRaster createImage(Sector sector, int width, int height, Color color)
+        {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < height; y++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    int alpha = 128 + (int) (127 * Math.sin(x / 9.0) * Math.cos(y / 13.0));
+                    image.setRGB(x, y, (alpha << 24) | ((color.getRGB() & 0xFFFFFF) ^ ((x * y) & 0x3F)));
+                }
+            }
+
+            return new BufferedImageRaster(sector, image);
+        }
+
+        protected static AVList createElevationParams()
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+            params.setValue(AVKey.BYTE_ORDER, AVKey.BIG_ENDIAN);
+            params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+            return params;
+        }
+
+        protected static DataRaster createElevations(Sector sector, int width, int height)
+        {
+            ByteBufferRaster raster = new ByteBufferRaster(width, height, sector, createElevationParams());
+            for (int y = 0; y < height; y++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    raster.setDoubleAtPosition(y, x, 1000 * Math.sin(x / 17.0) * Math.cos(y / 23.0));
+                }
+            }
+
+            return raster;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.WWIO;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests that parallel tile production writes the same tiles as sequential production.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class TiledRasterProducerTest
+{
+    public static class Tests extends TestCase
+    {
+        protected File tempDir;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            this.tempDir = File.createTempFile("TiledRasterProducerTest", "");
+            assertTrue("Cannot delete " + this.tempDir, this.tempDir.delete());
+            assertTrue("Cannot create " + this.tempDir, this.tempDir.mkdirs());
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            WWIO.deleteDirectory(this.tempDir);
+            //noinspection ResultOfMethodCallIgnored
+            this.tempDir.delete();
+        }
+
+        protected static DataRaster createElevations()
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+            params.setValue(AVKey.BYTE_ORDER, AVKey.LITTLE_ENDIAN);
+            params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+
+            ByteBufferRaster raster = new ByteBufferRaster(1200, 900, Sector.fromDegrees(10, 13, 20, 24), params);
+            Random random = new Random(3);
+            for (int y = 0; y < raster.getHeight(); y++)
+            {
+                for (int x = 0; x < raster.getWidth(); x++)
+                {
+                    raster.setDoubleAtPosition(y, x, (7 * x + 13 * y) % 3000 + random.nextInt(5));
+                }
+            }
+
+            return raster;
+        }
+
+        protected File produce(DataRaster source, String name, int threadPoolSize, int maxInFlightRasters)
+            throws Exception
+        {
+            File dir = new File(this.tempDir, name);
+
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.FILE_STORE_LOCATION, dir.getPath());
+            params.setValue(AVKey.DATA_CACHE_NAME, "Elevations");
+            params.setValue(AVKey.DATASET_NAME, "Elevations");
+            params.setValue(AVKey.TILED_RASTER_PRODUCER_BUILD_THREAD_POOL_SIZE, threadPoolSize);
+            params.setValue(AVKey.TILED_RASTER_PRODUCER_MAX_IN_FLIGHT_RASTERS, maxInFlightRasters);
+
+            TiledElevationProducer producer = new TiledElevationProducer();
+            producer.setStoreParameters(params);
+            producer.offerDataSource(source, null);
+            producer.startProduction();
+
+            return dir;
+        }
+
+        protected static void assertSameTiles(File expected, File actual) throws IOException
+        {
+            String[] names = expected.list();
+            assertNotNull("Cannot list " + expected, names);
+            Arrays.sort(names);
+
+            String[] actualNames = actual.list();
+            assertNotNull("Missing " + actual, actualNames);
+            Arrays.sort(actualNames);
+            assertEquals("Files differ in " + actual, Arrays.asList(names), Arrays.asList(actualNames));
+
+            for (String name : names)
+            {
+                File expectedFile = new File(expected, name);
+                File actualFile = new File(actual, name);
+                if (expectedFile.isDirectory())
+                    assertSameTiles(expectedFile, actualFile);
+                else if (name.endsWith(".bil"))
+                    assertEquals("Tile differs " + actualFile, WWIO.readFileToBuffer(expectedFile),
+                        WWIO.readFileToBuffer(actualFile));
+            }
+        }
+
+        @Test
+        /** Tests parallel production with a budget large enough to hand whole subtrees to other threads. */
+        public void testParallelProduction() throws Exception
+        {
+            DataRaster source = createElevations();
+            File sequential = this.produce(source, "sequential", 1, 0);
+            File parallel = this.produce(source, "parallel", 4, 256);
+
+            assertSameTiles(sequential, parallel);
+        }
+
+        @Test
+        /** Tests parallel production with a budget that allows only the deepest tiles to be handed off. */
+        public void testSmallRasterBudget() throws Exception
+        {
+            DataRaster source = createElevations();
+            File sequential = this.produce(source, "sequential", 1, 0);
+            File parallel = this.produce(source, "parallel", 4, 2);
+
+            assertSameTiles(sequential, parallel);
+        }
+
+        @Test
+        /** Tests that sequential production after parallel production does not use the shut down build service. */
+        public void testSequentialAfterParallel() throws Exception
+        {
+            TiledElevationProducer producer = new TiledElevationProducer();
+
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.TILED_RASTER_PRODUCER_BUILD_THREAD_POOL_SIZE, 4);
+            producer.startTileBuildService(params);
+            producer.waitForTileBuildTasks();
+
+            params.setValue(AVKey.TILED_RASTER_PRODUCER_BUILD_THREAD_POOL_SIZE, 1);
+            producer.startTileBuildService(params);
+            assertNull("Tile handed to a build thread", producer.createTileRasterLater(null, null, null, false));
+            producer.waitForTileBuildTasks();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
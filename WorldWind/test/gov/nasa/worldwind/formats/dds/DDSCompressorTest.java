@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.dds;
+
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.awt.image.*;
+import java.nio.*;
+import java.util.Random;
+
+/**
+ * @author dcollins
+ * @version $Id$
+ */
+public class DDSCompressorTest
+{
+    public static class Tests extends TestCase
+    {
+        /** Test that parallel compression produces the same DDS file as serial compression. */
+        @Test
+        public void testParallelCompressionMatchesSerial()
+        {
+            BufferedImage image = createImage(256, 128);
+            String[] compressionTypes = new String[] {
+                DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_BBOX,
+                DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE,
+                DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_LUMINANCE_DISTANCE,
+                DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT};
+
+            for (int format : new int[] {DDSConstants.D3DFMT_DXT1, DDSConstants.D3DFMT_DXT3})
+            {
+                for (String compressionType : compressionTypes)
+                {
+                    DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+                    attributes.setDXTFormat(format);
+                    attributes.setColorBlockCompressionType(compressionType);
+                    ByteBuffer serial = new DDSCompressor().compressImage(image, attributes);
+
+                    attributes.setEnableParallelCompression(true);
+                    ByteBuffer parallel = new DDSCompressor().compressImage(image, attributes);
+
+                    assertEquals("Parallel output differs for " + compressionType, serial, parallel);
+                }
+            }
+        }
+
+        /** Test that range fit compression is about as accurate as Euclidean distance compression. */
+        @Test
+        public void testRangeFitError() throws Exception
+        {
+            BufferedImage image = createImage(128, 128);
+
+            double euclideanError = computeDXT1Error(image,
+                DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE);
+            double rangeFitError = computeDXT1Error(image, DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT);
+
+            assertTrue("Range fit error " + rangeFitError + " exceeds Euclidean distance error " + euclideanError,
+                rangeFitError <= 1.1 * euclideanError);
+        }
+
+        private static BufferedImage createImage(int width, int height)
+        {
+            // Smooth color gradients with noise, which is typical of imagery.
+            Random random = new Random(1);
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < height; y++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    int r = clamp(255 * x / width + random.nextInt(32) - 16);
+                    int g = clamp(255 * y / height + random.nextInt(32) - 16);
+                    int b = clamp(128 + (int) (64 * Math.sin(x / 7.0 + y / 11.0)) + random.nextInt(32) - 16);
+                    image.setRGB(x, y, (r << 16) | (g << 8) | b);
+                }
+            }
+
+            return image;
+        }
+
+        private static int clamp(int value)
+        {
+            return Math.max(0, Math.min(255, value));
+        }
+
+        private static double computeDXT1Error(BufferedImage image, String compressionType) throws Exception
+        {
+            DXTCompressionAttributes attributes = new DXTCompressionAttributes();
+            attributes.setColorBlockCompressionType(compressionType);
+
+            DXT1Compressor compressor = new DXT1Compressor();
+            ByteBuffer buffer = ByteBuffer.allocate(compressor.getCompressedSize(image, attributes));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            compressor.compressImage(image, attributes, buffer);
+            buffer.rewind();
+
+            BufferedImage decoded = new DXT1Decompressor().decompress(buffer, image.getWidth(), image.getHeight());
+
+            double sum = 0;
+            for (int y = 0; y < image.getHeight(); y++)
+            {
+                for (int x = 0; x < image.getWidth(); x++)
+                {
+                    int a = image.getRGB(x, y);
+                    int d = decoded.getRGB(x, y);
+                    for (int shift = 0; shift < 24; shift += 8)
+                    {
+                        int diff = ((a >> shift) & 0xFF) - ((d >> shift) & 0xFF);
+                        sum += diff * diff;
+                    }
+                }
+            }
+
+            return Math.sqrt(sum / (3 * image.getWidth() * image.getHeight()));
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -14,9 +14,9 @@ import junit.textui.TestRunner;
 import org.junit.*;
 import org.junit.Test;
 
-import java.io.File;
+import java.io.*;
 import java.net.*;
-import java.util.Arrays;
+import java.util.*;
 
 /**
  * @author dcollins
@@ -35,6 +35,7 @@ public class ShapefileTest
     {
         public static final String STATE_BOUNDS_PATH = "testData/shapefiles/state_bounds.shp";
         public static final String WORLD_BORDERS_PATH = "testData/shapefiles/TM_WORLD_BORDERS-0.2.shp";
+        public static final String WORLD_BORDERS_SIMPL_PATH = "testData/shapefiles/TM_WORLD_BORDERS_SIMPL-0.2.shp";
         public static final String SPRINGFIELD_URBAN_GROWTH_URL
             = "http://worldwind.arc.nasa.gov/java/apps/springfield/SPR_UGB.shp";
 
@@ -222,10 +223,203 @@ public class ShapefileTest
             shapefile.close();
         }
 
+        //**************************************************************//
+        //********************  Test Random Access  ********************//
+        //**************************************************************//
+
+        @Test
+        public void testRandomAccess() throws Exception
+        {
+            File dir = createTempDirectory();
+            try
+            {
+                Shapefile shapefile = new Shapefile(copyShapefile(STATE_BOUNDS_PATH, dir));
+                assertTrue("Random access not supported", shapefile.isRandomAccessSupported());
+
+                List<ShapefileRecord> records = new ArrayList<ShapefileRecord>();
+                while (shapefile.hasNext())
+                {
+                    records.add(shapefile.nextRecord());
+                }
+
+                // Read the records in reverse order, then read the first again, and compare them to the records read
+                // sequentially. Records read more than once share their points.
+                for (int i = records.size() - 1; i >= 0; i--)
+                {
+                    assertSameRecord(records.get(i), shapefile.getRecord(i));
+                }
+                assertSameRecord(records.get(0), shapefile.getRecord(0));
+
+                shapefile.close();
+            }
+            finally
+            {
+                WWIO.deleteDirectory(dir);
+            }
+        }
+
+        @Test
+        public void testSelectRecords() throws Exception
+        {
+            File dir = createTempDirectory();
+            try
+            {
+                File file = copyShapefile(WORLD_BORDERS_SIMPL_PATH, dir);
+                Sector sector = Sector.fromDegrees(30, 50, -10, 20);
+
+                Shapefile shapefile = new Shapefile(file);
+                List<Sector> bounds = new ArrayList<Sector>();
+                while (shapefile.hasNext())
+                {
+                    ShapefileRecord record = shapefile.nextRecord();
+                    bounds.add(Sector.fromDegrees(((ShapefileRecordPolygon) record).getBoundingRectangle()));
+                }
+
+                // Compare the selected records to those found by comparing every record's bounds to the sector.
+                List<Integer> expected = null;
+                for (Sector s : Arrays.asList(sector, Sector.fromDegrees(-40, -39, -140, -139),
+                    Sector.fromDegrees(60, 61, -40, -39), Sector.FULL_SPHERE))
+                {
+                    List<Integer> intersecting = new ArrayList<Integer>();
+                    for (int i = 0; i < bounds.size(); i++)
+                    {
+                        if (s.intersects(bounds.get(i)))
+                            intersecting.add(i);
+                    }
+
+                    assertEquals("Selected records not as expected", intersecting, asList(shapefile.selectRecords(s)));
+                    if (expected == null)
+                        expected = intersecting;
+                }
+                assertFalse("No records in sector", expected.isEmpty());
+
+                File indexFile = new File(WWIO.replaceSuffix(file.getPath(), ShapefileSpatialIndex.INDEX_FILE_SUFFIX));
+                assertTrue("Spatial index not written", indexFile.exists());
+                shapefile.close();
+
+                // Select again from the stored index.
+                long indexModified = indexFile.lastModified();
+                shapefile = new Shapefile(file);
+                int[] selected = shapefile.selectRecords(sector);
+                assertEquals("Selected records not as expected", expected, asList(selected));
+                assertEquals("Spatial index rebuilt", indexModified, indexFile.lastModified());
+                assertEquals("Record attribute not as expected",
+                    shapefile.getRecord(selected[0]).getAttributes().getValue("NAME"),
+                    new DBaseFile(WWIO.replaceSuffix(file.getPath(), ".dbf")).getRecord(selected[0]).getValue("NAME"));
+                shapefile.close();
+            }
+            finally
+            {
+                WWIO.deleteDirectory(dir);
+            }
+        }
+
+        @Test
+        public void testReadRecords() throws Exception
+        {
+            File dir = createTempDirectory();
+            try
+            {
+                File file = copyShapefile(WORLD_BORDERS_SIMPL_PATH, dir);
+
+                Shapefile sequential = new Shapefile(file);
+                List<ShapefileRecord> expected = new ArrayList<ShapefileRecord>();
+                while (sequential.hasNext())
+                {
+                    expected.add(sequential.nextRecord());
+                }
+
+                // Read one record before the bulk read, so the bulk read both reuses and reads points.
+                Shapefile bulk = new Shapefile(file);
+                bulk.getRecord(5);
+                ShapefileRecord[] records = bulk.readRecords(3);
+
+                assertEquals("Number of records not as expected", expected.size(), records.length);
+                assertEquals("Number of parts not as expected", sequential.getPointBuffer().size(),
+                    bulk.getPointBuffer().size());
+                for (int i = 0; i < records.length; i++)
+                {
+                    ShapefileRecord record = records[i];
+                    assertEquals("Record number not as expected", expected.get(i).getRecordNumber(),
+                        record.getRecordNumber());
+                    assertEquals("Record parts not as expected", expected.get(i).getNumberOfParts(),
+                        record.getNumberOfParts());
+                    assertEquals("Record points not as expected", asList(expected.get(i).getCompoundPointBuffer()),
+                        asList(record.getCompoundPointBuffer()));
+                    assertEquals("Record attributes not as expected", expected.get(i).getAttributes().getEntries(),
+                        record.getAttributes().getEntries());
+                }
+
+                // Records read sequentially after the bulk read reuse its points.
+                assertEquals("Record first part not as expected", records[0].getFirstPartNumber(),
+                    bulk.nextRecord().getFirstPartNumber());
+
+                sequential.close();
+                bulk.close();
+            }
+            finally
+            {
+                WWIO.deleteDirectory(dir);
+            }
+        }
+
         //**************************************************************//
         //********************  Utilities  *****************************//
         //**************************************************************//
 
+        public static File createTempDirectory() throws IOException
+        {
+            File dir = File.createTempFile("ShapefileTest", "");
+            assertTrue("Cannot delete " + dir, dir.delete());
+            assertTrue("Cannot create " + dir, dir.mkdirs());
+            return dir;
+        }
+
+        public static File copyShapefile(String path, File dir) throws IOException
+        {
+            for (String suffix : new String[] {".shp", ".shx", ".dbf", ".prj"})
+            {
+                File source = new File(WWIO.replaceSuffix(path, suffix));
+                WWIO.copyFile(source, new File(dir, source.getName()));
+            }
+
+            return new File(dir, new File(path).getName());
+        }
+
+        public static List<Integer> asList(int[] array)
+        {
+            List<Integer> list = new ArrayList<Integer>(array.length);
+            for (int i : array)
+            {
+                list.add(i);
+            }
+            return list;
+        }
+
+        public static List<LatLon> asList(CompoundVecBuffer buffer)
+        {
+            List<LatLon> list = new ArrayList<LatLon>();
+            for (LatLon location : buffer.getLocations())
+            {
+                list.add(location);
+            }
+            return list;
+        }
+
+        public static void assertSameRecord(ShapefileRecord expected, ShapefileRecord actual)
+        {
+            assertEquals("Record number not as expected", expected.getRecordNumber(), actual.getRecordNumber());
+            assertEquals("Record type not as expected", expected.getShapeType(), actual.getShapeType());
+            assertEquals("Record parts not as expected", expected.getNumberOfParts(), actual.getNumberOfParts());
+            assertEquals("Record first part not as expected", expected.getFirstPartNumber(),
+                actual.getFirstPartNumber());
+            assertEquals("Record points not as expected", expected.getNumberOfPoints(), actual.getNumberOfPoints());
+            assertEquals("Record point not as expected", expected.getPointBuffer(0).getLocation(0),
+                actual.getPointBuffer(0).getLocation(0));
+            assertEquals("Record attributes not as expected", expected.getAttributes().getEntries(),
+                actual.getAttributes().getEntries());
+        }
+
         public static void assertShapefileAppearsNormal(Shapefile shapefile)
         {
             double[] rect = shapefile.getBoundingRectangle();
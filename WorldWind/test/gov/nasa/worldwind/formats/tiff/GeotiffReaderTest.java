@@ -0,0 +1,641 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.formats.tiff;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.geom.Sector;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Tests that GeotiffReader reads tiled and compressed images, and regions of images, with the same values as stripped
+ * uncompressed images. The test images are written by the test, one image per file, plus optional overviews.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class GeotiffReaderTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final Sector SECTOR = Sector.fromDegrees(30, 31, -120, -118.5);
+        protected static final int WIDTH = 150;
+        protected static final int HEIGHT = 100;
+
+        protected File tempDir;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            this.tempDir = File.createTempFile("GeotiffReaderTest", "");
+            assertTrue("Cannot delete " + this.tempDir, this.tempDir.delete());
+            assertTrue("Cannot create " + this.tempDir, this.tempDir.mkdirs());
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            File[] files = this.tempDir.listFiles();
+            if (files != null)
+            {
+                for (File file : files)
+                {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            this.tempDir.delete();
+        }
+
+        protected static short[] createElevations(int width, int height)
+        {
+            short[] samples = new short[width * height];
+            Random random = new Random(5);
+            for (int i = 0; i < samples.length; i++)
+            {
+                samples[i] = (short) ((i % width) * 13 - (i / width) * 7 + random.nextInt(50) - 300);
+            }
+            return samples;
+        }
+
+        protected static byte[] createColors(int width, int height)
+        {
+            byte[] samples = new byte[width * height * 3];
+            for (int y = 0; y < height; y++)
+            {
+                for (int x = 0; x < width; x++)
+                {
+                    int i = 3 * (y * width + x);
+                    samples[i] = (byte) (x * 3);
+                    samples[i + 1] = (byte) (y * 5);
+                    samples[i + 2] = (byte) ((x ^ y) * 7);
+                }
+            }
+            return samples;
+        }
+
+        protected File write(String name, TiffBuilder builder) throws IOException
+        {
+            File file = new File(this.tempDir, name);
+            builder.write(file);
+            return file;
+        }
+
+        protected static DataRaster readFirst(File file) throws IOException
+        {
+            GeotiffReader reader = new GeotiffReader(file.getPath());
+            try
+            {
+                DataRaster[] rasters = reader.readDataRaster();
+                assertEquals("Wrong number of rasters", 1, rasters.length);
+                return rasters[0];
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+
+        protected static void assertElevations(short[] expected, int width, BufferWrapperRaster raster)
+        {
+            assertEquals("Width differs", width, raster.getWidth());
+            assertEquals("Height differs", expected.length / width, raster.getHeight());
+            for (int i = 0; i < expected.length; i++)
+            {
+                assertEquals("Elevation differs at " + i, (double) expected[i],
+                    raster.getDoubleAtPosition(i / width, i % width));
+            }
+        }
+
+        @Test
+        /** Tests tiled, Deflate compressed elevations with a horizontal predictor against stripped elevations. */
+        public void testTiledDeflateElevations() throws Exception
+        {
+            short[] elevations = createElevations(WIDTH, HEIGHT);
+
+            File stripped = this.write("stripped.tif", new TiffBuilder(ByteOrder.BIG_ENDIAN).addElevations(WIDTH,
+                HEIGHT, elevations, 0, Tiff.Compression.NONE, Tiff.Predictor.NONE));
+            File tiled = this.write("tiled.tif", new TiffBuilder(ByteOrder.BIG_ENDIAN).addElevations(WIDTH, HEIGHT,
+                elevations, 64, Tiff.Compression.DEFLATE, Tiff.Predictor.HORIZONTAL));
+
+            DataRaster strippedRaster = readFirst(stripped);
+            DataRaster tiledRaster = readFirst(tiled);
+            assertEquals("Sector differs", strippedRaster.getSector(), tiledRaster.getSector());
+            assertElevations(elevations, WIDTH, (BufferWrapperRaster) strippedRaster);
+            assertElevations(elevations, WIDTH, (BufferWrapperRaster) tiledRaster);
+        }
+
+        @Test
+        /** Tests stripped, PackBits compressed, little endian elevations. */
+        public void testStrippedPackBitsElevations() throws Exception
+        {
+            short[] elevations = createElevations(WIDTH, HEIGHT);
+            File file = this.write("packbits.tif", new TiffBuilder(ByteOrder.LITTLE_ENDIAN).addElevations(WIDTH,
+                HEIGHT, elevations, 0, Tiff.Compression.PACKBITS, Tiff.Predictor.NONE));
+
+            assertElevations(elevations, WIDTH, (BufferWrapperRaster) readFirst(file));
+        }
+
+        @Test
+        /** Tests that Deflate data needing a preset dictionary, or ending early, fail rather than never ending. */
+        public void testMalformedDeflate() throws Exception
+        {
+            byte[] data = new byte[4096];
+            new Random(7).nextBytes(data);
+            byte[] segment = new byte[data.length];
+
+            Deflater deflater = new Deflater();
+            deflater.setDictionary(new byte[] {1, 2, 3, 4});
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[2 * data.length];
+            int length = deflater.deflate(buffer);
+            deflater.end();
+
+            try
+            {
+                TIFFImageDecoder.inflate(ByteBuffer.wrap(buffer, 0, length), segment, segment.length);
+                fail("Data needing a dictionary did not fail");
+            }
+            catch (DataFormatException e)
+            {
+                // Expected.
+            }
+
+            byte[] compressed = TiffBuilder.deflate(data);
+            try
+            {
+                TIFFImageDecoder.inflate(ByteBuffer.wrap(compressed, 0, compressed.length / 2), segment,
+                    segment.length);
+                fail("Truncated data did not fail");
+            }
+            catch (DataFormatException e)
+            {
+                // Expected.
+            }
+
+            assertEquals("Length decoded", data.length,
+                TIFFImageDecoder.inflate(ByteBuffer.wrap(compressed), segment, segment.length));
+            assertTrue("Data differs", Arrays.equals(data, segment));
+        }
+
+        @Test
+        /** Tests a tiled, Deflate compressed RGB image. */
+        public void testTiledDeflateImage() throws Exception
+        {
+            byte[] colors = createColors(WIDTH, HEIGHT);
+            File file = this.write("image.tif", new TiffBuilder(ByteOrder.LITTLE_ENDIAN).addImage(WIDTH, HEIGHT,
+                colors, 32, Tiff.Compression.DEFLATE, Tiff.Predictor.HORIZONTAL));
+
+            BufferedImage image = ((BufferedImageRaster) readFirst(file)).getBufferedImage();
+            assertEquals("Width differs", WIDTH, image.getWidth());
+            assertEquals("Height differs", HEIGHT, image.getHeight());
+            for (int y = 0; y < HEIGHT; y++)
+            {
+                for (int x = 0; x < WIDTH; x++)
+                {
+                    int i = 3 * (y * WIDTH + x);
+                    int expected = ((colors[i] & 0xFF) << 16) | ((colors[i + 1] & 0xFF) << 8) | (colors[i + 2] & 0xFF);
+                    assertEquals("Color differs at " + x + "," + y, expected, image.getRGB(x, y) & 0xFFFFFF);
+                }
+            }
+        }
+
+        @Test
+        /** Tests that a region read decodes the expected pixels, and selects the overview matching its resolution. */
+        public void testRegionRead() throws Exception
+        {
+            short[] elevations = createElevations(WIDTH, HEIGHT);
+            short[] overview = new short[(WIDTH / 2) * (HEIGHT / 2)];
+            Arrays.fill(overview, (short) 77);
+
+            TiffBuilder builder = new TiffBuilder(ByteOrder.LITTLE_ENDIAN);
+            builder.addElevations(WIDTH, HEIGHT, elevations, 32, Tiff.Compression.DEFLATE, Tiff.Predictor.HORIZONTAL);
+            builder.addOverview(WIDTH / 2, HEIGHT / 2, overview, 16);
+            File file = this.write("region.tif", builder);
+
+            GeotiffReader reader = new GeotiffReader(file.getPath());
+            try
+            {
+                assertFalse("Full resolution image is an overview", reader.isReducedResolution(0));
+                assertTrue("Overview is not reduced resolution", reader.isReducedResolution(1));
+                assertEquals("Overviews read as images", 1, reader.readDataRaster().length);
+
+                // Elevation rasters treat pixels as points, so the sector spans the centers of the edge pixels.
+                double pixelWidth = SECTOR.getDeltaLonDegrees() / (WIDTH - 1);
+                double pixelHeight = SECTOR.getDeltaLatDegrees() / (HEIGHT - 1);
+                Sector sector = Sector.fromDegrees(30.3, 30.55, -119.6, -119.3);
+                BufferWrapperRaster region = (BufferWrapperRaster) reader.readDataRaster(sector,
+                    SECTOR.getDeltaLatRadians() / HEIGHT);
+                assertTrue("Region does not contain sector", region.getSector().contains(sector));
+
+                // The region is aligned to pixels, so it maps directly onto the image.
+                int x0 = (int) Math.round((region.getSector().getMinLongitude().degrees + 120) / pixelWidth);
+                int y0 = (int) Math.round((31 - region.getSector().getMaxLatitude().degrees) / pixelHeight);
+                int height = (int) Math.round(region.getSector().getDeltaLatDegrees() / pixelHeight) + 1;
+                assertEquals("Region height", height, region.getHeight());
+                for (int y = 0; y < region.getHeight(); y++)
+                {
+                    for (int x = 0; x < region.getWidth(); x++)
+                    {
+                        assertEquals("Elevation differs at " + x + "," + y,
+                            (double) elevations[(y0 + y) * WIDTH + x0 + x], region.getDoubleAtPosition(y, x));
+                    }
+                }
+
+                DataRaster coarse = reader.readDataRaster(sector, 3 * SECTOR.getDeltaLatRadians() / HEIGHT);
+                assertEquals("Overview not used", 77d, ((BufferWrapperRaster) coarse).getDoubleAtPosition(0, 0));
+
+                assertNull("Disjoint sector read", reader.readDataRaster(Sector.fromDegrees(0, 1, 0, 1), 0.001));
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+
+        @Test
+        /** Tests that GeotiffRasterReader reads tiled images as windowed rasters that draw like the whole image. */
+        public void testWindowedRaster() throws Exception
+        {
+            short[] elevations = createElevations(WIDTH, HEIGHT);
+            File file = this.write("windowed.tif", new TiffBuilder(ByteOrder.LITTLE_ENDIAN).addElevations(WIDTH,
+                HEIGHT, elevations, 32, Tiff.Compression.DEFLATE, Tiff.Predictor.HORIZONTAL));
+
+            DataRaster[] rasters = new GeotiffRasterReader().read(file, null);
+            assertEquals("Wrong number of rasters", 1, rasters.length);
+            assertTrue("Not windowed", rasters[0] instanceof WindowedGeotiffRaster);
+
+            try
+            {
+                AVList params = new AVListImpl();
+                params.setValue(AVKey.DATA_TYPE, AVKey.INT16);
+                params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+                Sector sector = Sector.fromDegrees(30.5033, 30.9871, -119.4962, -118.7517);
+                ByteBufferRaster expected = new ByteBufferRaster(WIDTH / 2, HEIGHT / 2, sector, params);
+                readFirst(file).drawOnTo(expected);
+                ByteBufferRaster actual = new ByteBufferRaster(WIDTH / 2, HEIGHT / 2, sector, params);
+                rasters[0].drawOnTo(actual);
+
+                for (int y = 0; y < actual.getHeight(); y++)
+                {
+                    for (int x = 0; x < actual.getWidth(); x++)
+                    {
+                        assertEquals("Elevation differs at " + x + "," + y, expected.getDoubleAtPosition(y, x),
+                            actual.getDoubleAtPosition(y, x));
+                    }
+                }
+            }
+            finally
+            {
+                rasters[0].dispose();
+            }
+        }
+    }
+
+    /** Writes single sample elevation and RGB images as GeoTIFFs, optionally tiled and compressed. */
+    protected static class TiffBuilder
+    {
+        protected final ByteOrder byteOrder;
+        protected final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        protected final List<Integer> ifdOffsetPositions = new ArrayList<Integer>();
+
+        public TiffBuilder(ByteOrder byteOrder) throws IOException
+        {
+            this.byteOrder = byteOrder;
+            this.out.write(byteOrder == ByteOrder.BIG_ENDIAN ? new byte[] {'M', 'M', 0, 42}
+                : new byte[] {'I', 'I', 42, 0});
+            this.ifdOffsetPositions.add(this.out.size());
+            this.out.write(new byte[4]);
+        }
+
+        public TiffBuilder addElevations(int width, int height, short[] samples, int tileSize, int compression,
+            int predictor) throws IOException
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(this.byteOrder);
+            buffer.asShortBuffer().put(samples);
+            this.addImage(width, height, 1, 16, Tiff.SampleFormat.SIGNED, Tiff.Photometric.Grayscale_BlackIsZero,
+                buffer.array(), tileSize, compression, predictor, false);
+            return this;
+        }
+
+        public TiffBuilder addOverview(int width, int height, short[] samples, int tileSize) throws IOException
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(this.byteOrder);
+            buffer.asShortBuffer().put(samples);
+            this.addImage(width, height, 1, 16, Tiff.SampleFormat.SIGNED, Tiff.Photometric.Grayscale_BlackIsZero,
+                buffer.array(), tileSize, Tiff.Compression.DEFLATE, Tiff.Predictor.NONE, true);
+            return this;
+        }
+
+        public TiffBuilder addImage(int width, int height, byte[] samples, int tileSize, int compression,
+            int predictor) throws IOException
+        {
+            this.addImage(width, height, 3, 8, Tiff.SampleFormat.UNSIGNED, Tiff.Photometric.Color_RGB, samples,
+                tileSize, compression, predictor, false);
+            return this;
+        }
+
+        public void write(File file) throws IOException
+        {
+            FileOutputStream stream = new FileOutputStream(file);
+            try
+            {
+                stream.write(this.out.toByteArray());
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+
+        protected void addImage(int width, int height, int samplesPerPixel, int bitsPerSample, int sampleFormat,
+            int photometric, byte[] samples, int tileSize, int compression, int predictor, boolean overview)
+            throws IOException
+        {
+            int pixelSize = samplesPerPixel * bitsPerSample / 8;
+            int segmentWidth = tileSize > 0 ? tileSize : width;
+            int segmentHeight = tileSize > 0 ? tileSize : 16;
+            int across = (width + segmentWidth - 1) / segmentWidth;
+            int down = (height + segmentHeight - 1) / segmentHeight;
+
+            long[] offsets = new long[across * down];
+            long[] counts = new long[across * down];
+            for (int row = 0; row < down; row++)
+            {
+                for (int col = 0; col < across; col++)
+                {
+                    // Strips end at the image's last row. Tiles are always whole, padded with zeros.
+                    int rows = tileSize > 0 ? segmentHeight : Math.min(segmentHeight, height - row * segmentHeight);
+                    byte[] segment = new byte[segmentWidth * rows * pixelSize];
+                    for (int y = 0; y < rows && row * segmentHeight + y < height; y++)
+                    {
+                        int x0 = col * segmentWidth;
+                        int n = Math.min(segmentWidth, width - x0);
+                        System.arraycopy(samples, ((row * segmentHeight + y) * width + x0) * pixelSize, segment,
+                            y * segmentWidth * pixelSize, n * pixelSize);
+                    }
+
+                    if (predictor == Tiff.Predictor.HORIZONTAL)
+                        this.applyHorizontalPredictor(segment, segmentWidth, samplesPerPixel, bitsPerSample / 8);
+
+                    byte[] encoded = compression == Tiff.Compression.DEFLATE ? deflate(segment)
+                        : compression == Tiff.Compression.PACKBITS ? packBits(segment) : segment;
+                    offsets[row * across + col] = this.out.size();
+                    counts[row * across + col] = encoded.length;
+                    this.out.write(encoded);
+                }
+            }
+
+            List<long[]> entries = new ArrayList<long[]>();
+            List<Object> values = new ArrayList<Object>();
+            this.addEntry(entries, values, Tiff.Tag.NEW_SUBFILE_TYPE, Tiff.Type.LONG, overview ? 1 : 0);
+            this.addEntry(entries, values, Tiff.Tag.IMAGE_WIDTH, Tiff.Type.LONG, width);
+            this.addEntry(entries, values, Tiff.Tag.IMAGE_LENGTH, Tiff.Type.LONG, height);
+            short[] bits = new short[samplesPerPixel];
+            Arrays.fill(bits, (short) bitsPerSample);
+            this.addEntry(entries, values, Tiff.Tag.BITS_PER_SAMPLE, Tiff.Type.SHORT, bits);
+            this.addEntry(entries, values, Tiff.Tag.COMPRESSION, Tiff.Type.SHORT, compression);
+            this.addEntry(entries, values, Tiff.Tag.PHOTO_INTERPRETATION, Tiff.Type.SHORT, photometric);
+            if (tileSize == 0)
+                this.addEntry(entries, values, Tiff.Tag.STRIP_OFFSETS, Tiff.Type.LONG, offsets);
+            this.addEntry(entries, values, Tiff.Tag.SAMPLES_PER_PIXEL, Tiff.Type.SHORT, samplesPerPixel);
+            if (tileSize == 0)
+            {
+                this.addEntry(entries, values, Tiff.Tag.ROWS_PER_STRIP, Tiff.Type.LONG, segmentHeight);
+                this.addEntry(entries, values, Tiff.Tag.STRIP_BYTE_COUNTS, Tiff.Type.LONG, counts);
+            }
+            this.addEntry(entries, values, Tiff.Tag.PLANAR_CONFIGURATION, Tiff.Type.SHORT,
+                Tiff.PlanarConfiguration.CHUNKY);
+            this.addEntry(entries, values, Tiff.Tag.TIFF_PREDICTOR, Tiff.Type.SHORT, predictor);
+            if (tileSize > 0)
+            {
+                this.addEntry(entries, values, Tiff.Tag.TILE_WIDTH, Tiff.Type.LONG, tileSize);
+                this.addEntry(entries, values, Tiff.Tag.TILE_LENGTH, Tiff.Type.LONG, tileSize);
+                this.addEntry(entries, values, Tiff.Tag.TILE_OFFSETS, Tiff.Type.LONG, offsets);
+                this.addEntry(entries, values, Tiff.Tag.TILE_COUNTS, Tiff.Type.LONG, counts);
+            }
+            short[] formats = new short[samplesPerPixel];
+            Arrays.fill(formats, (short) sampleFormat);
+            this.addEntry(entries, values, Tiff.Tag.SAMPLE_FORMAT, Tiff.Type.SHORT, formats);
+            if (!overview)
+            {
+                double pixelWidth = SECTOR_DELTA_LON / width;
+                double pixelHeight = SECTOR_DELTA_LAT / height;
+                this.addEntry(entries, values, GeoTiff.Tag.MODEL_PIXELSCALE, Tiff.Type.DOUBLE,
+                    new double[] {pixelWidth, pixelHeight, 0});
+                this.addEntry(entries, values, GeoTiff.Tag.MODEL_TIEPOINT, Tiff.Type.DOUBLE,
+                    new double[] {0, 0, 0, Tests.SECTOR.getMinLongitude().degrees,
+                        Tests.SECTOR.getMaxLatitude().degrees, 0});
+                this.addEntry(entries, values, GeoTiff.Tag.GEO_KEY_DIRECTORY, Tiff.Type.SHORT, new short[] {
+                    1, 1, 0, 3,
+                    GeoTiff.GeoKey.ModelType, 0, 1, GeoTiff.ModelType.Geographic,
+                    GeoTiff.GeoKey.RasterType, 0, 1, (short) GeoTiff.RasterType.RasterPixelIsArea,
+                    GeoTiff.GeoKey.GeographicType, 0, 1, 4326});
+            }
+
+            this.writeIFD(entries, values);
+        }
+
+        protected static final double SECTOR_DELTA_LON = Tests.SECTOR.getDeltaLonDegrees();
+        protected static final double SECTOR_DELTA_LAT = Tests.SECTOR.getDeltaLatDegrees();
+
+        protected void addEntry(List<long[]> entries, List<Object> values, int tag, int type, Object value)
+        {
+            entries.add(new long[] {tag, type});
+            values.add(value);
+        }
+
+        protected void writeIFD(List<long[]> entries, List<Object> values) throws IOException
+        {
+            // Write the values that don't fit in an entry, then the IFD itself.
+            long[] offsets = new long[entries.size()];
+            byte[][] data = new byte[entries.size()][];
+            int[] counts = new int[entries.size()];
+            for (int i = 0; i < entries.size(); i++)
+            {
+                data[i] = this.encode((int) entries.get(i)[1], values.get(i));
+                counts[i] = this.count(values.get(i));
+                if (data[i].length > 4)
+                {
+                    if (this.out.size() % 2 != 0)
+                        this.out.write(0);
+                    offsets[i] = this.out.size();
+                    this.out.write(data[i]);
+                }
+            }
+
+            if (this.out.size() % 2 != 0)
+                this.out.write(0);
+            this.patchIFDOffset(this.out.size());
+
+            ByteBuffer ifd = ByteBuffer.allocate(2 + entries.size() * 12 + 4).order(this.byteOrder);
+            ifd.putShort((short) entries.size());
+            for (int i = 0; i < entries.size(); i++)
+            {
+                ifd.putShort((short) entries.get(i)[0]);
+                ifd.putShort((short) entries.get(i)[1]);
+                ifd.putInt(counts[i]);
+                if (data[i].length > 4)
+                {
+                    ifd.putInt((int) offsets[i]);
+                }
+                else
+                {
+                    byte[] inline = Arrays.copyOf(data[i], 4);
+                    ifd.put(inline);
+                }
+            }
+
+            this.ifdOffsetPositions.add(this.out.size() + ifd.position());
+            ifd.putInt(0);
+            this.out.write(ifd.array());
+        }
+
+        protected void patchIFDOffset(int ifdOffset)
+        {
+            // ByteArrayOutputStream can't be modified in place, so rebuild it with the offset patched.
+            byte[] bytes = this.out.toByteArray();
+            ByteBuffer.wrap(bytes).order(this.byteOrder).putInt(
+                this.ifdOffsetPositions.get(this.ifdOffsetPositions.size() - 1), ifdOffset);
+            this.out.reset();
+            this.out.write(bytes, 0, bytes.length);
+        }
+
+        protected int count(Object value)
+        {
+            if (value instanceof short[])
+                return ((short[]) value).length;
+            else if (value instanceof long[])
+                return ((long[]) value).length;
+            else if (value instanceof double[])
+                return ((double[]) value).length;
+            return 1;
+        }
+
+        protected byte[] encode(int type, Object value)
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(8 * Math.max(1, this.count(value))).order(this.byteOrder);
+            if (value instanceof short[])
+            {
+                for (short s : (short[]) value)
+                {
+                    buffer.putShort(s);
+                }
+            }
+            else if (value instanceof long[])
+            {
+                for (long l : (long[]) value)
+                {
+                    buffer.putInt((int) l);
+                }
+            }
+            else if (value instanceof double[])
+            {
+                for (double d : (double[]) value)
+                {
+                    buffer.putDouble(d);
+                }
+            }
+            else if (type == Tiff.Type.SHORT)
+            {
+                buffer.putShort((short) (int) (Integer) value);
+            }
+            else
+            {
+                buffer.putInt((Integer) value);
+            }
+
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        protected void applyHorizontalPredictor(byte[] segment, int width, int samplesPerPixel, int bytesPerSample)
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(segment).order(this.byteOrder);
+            int rowSamples = width * samplesPerPixel;
+            for (int row = 0; row < segment.length / (rowSamples * bytesPerSample); row++)
+            {
+                // Difference from the end of the row backwards, so each difference uses an original value.
+                for (int i = rowSamples - 1; i >= samplesPerPixel; i--)
+                {
+                    int index = row * rowSamples + i;
+                    if (bytesPerSample == 1)
+                        segment[index] = (byte) (segment[index] - segment[index - samplesPerPixel]);
+                    else
+                        buffer.putShort(2 * index, (short) (buffer.getShort(2 * index)
+                            - buffer.getShort(2 * (index - samplesPerPixel))));
+                }
+            }
+        }
+
+        protected static byte[] deflate(byte[] data)
+        {
+            Deflater deflater = new Deflater();
+            deflater.setInput(data);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished())
+            {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            deflater.end();
+
+            return out.toByteArray();
+        }
+
+        protected static byte[] packBits(byte[] data)
+        {
+            // Encode runs of three or more equal bytes as repeats, and everything else as literals.
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int i = 0;
+            while (i < data.length)
+            {
+                int run = 1;
+                while (i + run < data.length && run < 128 && data[i + run] == data[i])
+                {
+                    run++;
+                }
+
+                if (run >= 3)
+                {
+                    out.write(1 - run);
+                    out.write(data[i]);
+                    i += run;
+                    continue;
+                }
+
+                int start = i;
+                while (i < data.length && i - start < 128
+                    && !(i + 2 < data.length && data[i] == data[i + 1] && data[i] == data[i + 2]))
+                {
+                    i++;
+                }
+                out.write(i - start - 1);
+                out.write(data, start, i - start);
+            }
+
+            return out.toByteArray();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -0,0 +1,360 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.formats.tiff;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.geom.Sector;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Tests that GeotiffWriter writes tiled, compressed images with overviews that GeotiffReader reads back with the
+ * values that were written, and that it refuses to write offsets beyond the 4 GiB limit of a TIFF file.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class GeotiffWriterTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final Sector SECTOR = Sector.fromDegrees(30, 31, -120, -118.5);
+        protected static final int WIDTH = 300;
+        protected static final int HEIGHT = 200;
+
+        protected File tempDir;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            this.tempDir = File.createTempFile("GeotiffWriterTest", "");
+            assertTrue("Cannot delete " + this.tempDir, this.tempDir.delete());
+            assertTrue("Cannot create " + this.tempDir, this.tempDir.mkdirs());
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            File[] files = this.tempDir.listFiles();
+            if (files != null)
+            {
+                for (File file : files)
+                {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            this.tempDir.delete();
+        }
+
+        protected static BufferWrapperRaster createElevations(String dataType)
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+            params.setValue(AVKey.DATA_TYPE, dataType);
+            params.setValue(AVKey.BYTE_ORDER, AVKey.BIG_ENDIAN);
+
+            BufferWrapperRaster raster = new ByteBufferRaster(WIDTH, HEIGHT, SECTOR, params);
+            for (int row = 0; row < HEIGHT; row++)
+            {
+                for (int col = 0; col < WIDTH; col++)
+                {
+                    double value = col * 13 - row * 7 + (col * row) % 50 - 300;
+                    raster.setDoubleAtPosition(row, col, AVKey.FLOAT32.equals(dataType) ? value / 8 : value);
+                }
+            }
+            return raster;
+        }
+
+        protected static BufferedImage createImage(int type)
+        {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+            for (int y = 0; y < HEIGHT; y++)
+            {
+                for (int x = 0; x < WIDTH; x++)
+                {
+                    int alpha = type == BufferedImage.TYPE_INT_ARGB ? (x + y) % 256 : 255;
+                    image.setRGB(x, y, (alpha << 24) | ((x * 3) & 0xFF) << 16 | ((y * 5) & 0xFF) << 8 | (x ^ y) & 0xFF);
+                }
+            }
+            return image;
+        }
+
+        protected File write(String name, GeotiffWriter writer, DataRaster raster) throws IOException
+        {
+            try
+            {
+                writer.write(raster);
+            }
+            finally
+            {
+                writer.close();
+            }
+            return new File(this.tempDir, name);
+        }
+
+        protected GeotiffWriter createWriter(String name, int compression, int tileSize, boolean overviews)
+            throws IOException
+        {
+            GeotiffWriter writer = new GeotiffWriter(new File(this.tempDir, name));
+            writer.setCompression(compression);
+            writer.setTileSize(tileSize);
+            writer.setPredictorEnabled(true);
+            writer.setOverviewsEnabled(overviews);
+            return writer;
+        }
+
+        protected static DataRaster read(File file, int expectedOverviews) throws IOException
+        {
+            GeotiffReader reader = new GeotiffReader(file.getPath());
+            try
+            {
+                assertEquals("Wrong number of images", 1 + expectedOverviews, reader.getNumImages());
+                for (int i = 1; i < reader.getNumImages(); i++)
+                {
+                    assertTrue("Image " + i + " is not an overview", reader.isReducedResolution(i));
+                    assertEquals("Overview width differs", (reader.getWidth(i - 1) + 1) / 2, reader.getWidth(i));
+                }
+
+                DataRaster[] rasters = reader.readDataRaster();
+                assertEquals("Wrong number of rasters", 1, rasters.length);
+                assertEquals("Sector differs", SECTOR, rasters[0].getSector());
+                return rasters[0];
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+
+        protected static void assertSameElevations(BufferWrapperRaster expected, DataRaster actual)
+        {
+            assertEquals("Width differs", expected.getWidth(), actual.getWidth());
+            assertEquals("Height differs", expected.getHeight(), actual.getHeight());
+            for (int row = 0; row < expected.getHeight(); row++)
+            {
+                for (int col = 0; col < expected.getWidth(); col++)
+                {
+                    assertEquals("Elevation differs at " + row + ", " + col, expected.getDoubleAtPosition(row, col),
+                        ((BufferWrapperRaster) actual).getDoubleAtPosition(row, col));
+                }
+            }
+        }
+
+        protected static void assertSameImage(BufferedImage expected, DataRaster actual)
+        {
+            BufferedImage image = ((BufferedImageRaster) actual).getBufferedImage();
+            assertEquals("Width differs", expected.getWidth(), image.getWidth());
+            assertEquals("Height differs", expected.getHeight(), image.getHeight());
+            for (int y = 0; y < expected.getHeight(); y++)
+            {
+                for (int x = 0; x < expected.getWidth(); x++)
+                {
+                    assertEquals("Pixel differs at " + x + ", " + y, expected.getRGB(x, y), image.getRGB(x, y));
+                }
+            }
+        }
+
+        @Test
+        /** Tests tiled elevations with overviews in each supported compression. */
+        public void testTiledElevations() throws Exception
+        {
+            BufferWrapperRaster elevations = createElevations(AVKey.INT16);
+            int[] compressions = new int[] {Tiff.Compression.NONE, Tiff.Compression.LZW, Tiff.Compression.DEFLATE,
+                Tiff.Compression.PACKBITS};
+
+            for (int compression : compressions)
+            {
+                String name = "elevations" + compression + ".tif";
+                File file = this.write(name, this.createWriter(name, compression, 64, true), elevations);
+                // 300 x 200 halves to 150 x 100, 75 x 50 and 38 x 25, which fits in a tile.
+                assertSameElevations(elevations, read(file, 3));
+            }
+        }
+
+        @Test
+        /** Tests stripped, Deflate compressed floating point elevations. */
+        public void testStrippedFloatElevations() throws Exception
+        {
+            BufferWrapperRaster elevations = createElevations(AVKey.FLOAT32);
+
+            File file = this.write("float.tif", this.createWriter("float.tif", Tiff.Compression.DEFLATE, 0, false),
+                elevations);
+            assertSameElevations(elevations, read(file, 0));
+        }
+
+        @Test
+        /** Tests a tiled, LZW compressed color image with overviews. */
+        public void testTiledColorImage() throws Exception
+        {
+            BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB);
+
+            File file = this.write("color.tif", this.createWriter("color.tif", Tiff.Compression.LZW, 128, true),
+                new BufferedImageRaster(SECTOR, image));
+            assertSameImage(image, read(file, 2));
+        }
+
+        @Test
+        /** Tests a stripped, PackBits compressed image with an alpha channel. */
+        public void testStrippedTransparentImage() throws Exception
+        {
+            BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB);
+
+            File file = this.write("alpha.tif", this.createWriter("alpha.tif", Tiff.Compression.PACKBITS, 0, false),
+                new BufferedImageRaster(SECTOR, image));
+            assertSameImage(image, read(file, 0));
+        }
+
+        @Test
+        /** Tests that offsets that do not fit in a TIFF LONG fail the write instead of being truncated. */
+        public void testOffsetBeyondLimit() throws Exception
+        {
+            GeotiffWriter writer = this.createWriter("large.tif", Tiff.Compression.NONE, 64, true);
+            writer.theChannel = new OffsetFileChannel(writer.theChannel);
+            try
+            {
+                this.write("large.tif", writer, createElevations(AVKey.INT16));
+                fail("Offset beyond 4 GiB written");
+            }
+            catch (IOException e)
+            {
+                assertTrue("Unexpected exception " + e, e.getMessage().contains("BigTIFF"));
+            }
+        }
+    }
+
+    /**
+     * A file channel that reports every position after the TIFF header as 4 GiB further into the file than it is, so
+     * that a small image appears to be written beyond the 32-bit offsets of a TIFF file.
+     */
+    protected static class OffsetFileChannel extends FileChannel
+    {
+        protected static final long HEADER_SIZE = 8;
+        protected static final long OFFSET = 1L << 32;
+
+        protected final FileChannel channel;
+
+        public OffsetFileChannel(FileChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        protected static long toVirtual(long position)
+        {
+            return position < HEADER_SIZE ? position : position + OFFSET;
+        }
+
+        protected static long toReal(long position)
+        {
+            if (position >= HEADER_SIZE && position < HEADER_SIZE + OFFSET)
+                throw new IllegalArgumentException("Position " + position + " is not in the file");
+
+            return position < HEADER_SIZE ? position : position - OFFSET;
+        }
+
+        public long position() throws IOException
+        {
+            return toVirtual(this.channel.position());
+        }
+
+        public FileChannel position(long newPosition) throws IOException
+        {
+            this.channel.position(toReal(newPosition));
+            return this;
+        }
+
+        public long size() throws IOException
+        {
+            return toVirtual(this.channel.size());
+        }
+
+        public int read(ByteBuffer dst) throws IOException
+        {
+            return this.channel.read(dst);
+        }
+
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException
+        {
+            return this.channel.read(dsts, offset, length);
+        }
+
+        public int read(ByteBuffer dst, long position) throws IOException
+        {
+            return this.channel.read(dst, toReal(position));
+        }
+
+        public int write(ByteBuffer src) throws IOException
+        {
+            return this.channel.write(src);
+        }
+
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+        {
+            return this.channel.write(srcs, offset, length);
+        }
+
+        public int write(ByteBuffer src, long position) throws IOException
+        {
+            return this.channel.write(src, toReal(position));
+        }
+
+        public FileChannel truncate(long size) throws IOException
+        {
+            this.channel.truncate(toReal(size));
+            return this;
+        }
+
+        public void force(boolean metaData) throws IOException
+        {
+            this.channel.force(metaData);
+        }
+
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException
+        {
+            return this.channel.transferTo(toReal(position), count, target);
+        }
+
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException
+        {
+            return this.channel.transferFrom(src, toReal(position), count);
+        }
+
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException
+        {
+            return this.channel.map(mode, toReal(position), size);
+        }
+
+        public FileLock lock(long position, long size, boolean shared) throws IOException
+        {
+            return this.channel.lock(toReal(position), size, shared);
+        }
+
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException
+        {
+            return this.channel.tryLock(toReal(position), size, shared);
+        }
+
+        protected void implCloseChannel() throws IOException
+        {
+            this.channel.close();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -7,12 +7,16 @@ All Rights Reserved.
 package gov.nasa.worldwind.globes;
 
 import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.terrain.ZeroElevationModel;
 import junit.framework.*;
 import junit.textui.TestRunner;
 import org.junit.*;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.FloatBuffer;
+import java.util.Random;
+
 /**
  * @author tag
  * @version $Id$
@@ -351,9 +355,148 @@ public class EllipsoidalGlobeTest
         }
     }
 
+    public static class BulkConversionTests extends TestCase
+    {
+        /** A globe whose single point conversion differs from the ellipsoid's, to test that bulk conversions use it. */
+        protected static class OffsetGlobe extends EllipsoidalGlobe
+        {
+            public OffsetGlobe()
+            {
+                super(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS, Earth.WGS84_ES,
+                    new ZeroElevationModel());
+            }
+
+            @Override
+            protected Vec4 geodeticToCartesian(Angle latitude, Angle longitude, double metersElevation)
+            {
+                return super.geodeticToCartesian(latitude, longitude, metersElevation).add3(new Vec4(1, 2, 3));
+            }
+        }
+
+        protected static double[] createPositions(int numPositions)
+        {
+            Random random = new Random(3);
+            double[] positions = new double[3 * numPositions];
+            for (int i = 0; i < positions.length; i += 3)
+            {
+                positions[i] = 180 * random.nextDouble() - 90;
+                positions[i + 1] = 360 * random.nextDouble() - 180;
+                positions[i + 2] = 10000 * random.nextDouble() - 1000;
+            }
+
+            return positions;
+        }
+
+        protected static void assertBulkMatchesSinglePoint(EllipsoidalGlobe globe)
+        {
+            double[] positions = createPositions(200);
+            Vec4 referencePoint = new Vec4(1000, -2000, 3000);
+
+            double[] points = new double[positions.length];
+            globe.computePointsFromPositions(positions, 200, referencePoint, points);
+            FloatBuffer buffer = FloatBuffer.allocate(positions.length);
+            globe.computePointsFromPositions(positions, 200, referencePoint, buffer);
+            assertEquals("Buffer position", positions.length, buffer.position());
+
+            for (int i = 0; i < positions.length; i += 3)
+            {
+                Vec4 expected = globe.computePointFromPosition(Angle.fromDegrees(positions[i]),
+                    Angle.fromDegrees(positions[i + 1]), positions[i + 2]).subtract3(referencePoint);
+                assertEquals("X", expected.x, points[i], 1e-6);
+                assertEquals("Y", expected.y, points[i + 1], 1e-6);
+                assertEquals("Z", expected.z, points[i + 2], 1e-6);
+                assertEquals("Buffer X", (float) expected.x, buffer.get(i), 0);
+                assertEquals("Buffer Y", (float) expected.y, buffer.get(i + 1), 0);
+                assertEquals("Buffer Z", (float) expected.z, buffer.get(i + 2), 0);
+            }
+
+            // Convert the points back in place.
+            globe.computePositionsFromPoints(points, 200, referencePoint, points);
+            for (int i = 0; i < positions.length; i += 3)
+            {
+                Position expected = globe.computePositionFromPoint(globe.computePointFromPosition(
+                    Angle.fromDegrees(positions[i]), Angle.fromDegrees(positions[i + 1]), positions[i + 2]));
+                assertEquals("Latitude", expected.getLatitude().degrees, points[i], 1e-9);
+                assertEquals("Longitude", expected.getLongitude().degrees, points[i + 1], 1e-9);
+                assertEquals("Elevation", expected.getElevation(), points[i + 2], 1e-6);
+            }
+        }
+
+        protected static void assertGridMatchesSinglePoint(EllipsoidalGlobe globe)
+        {
+            double[] latitudes = new double[] {-89, -30.5, 0, 12.25, 45, 90};
+            double[] longitudes = new double[] {-180, -97.5, 0, 0.001, 179.9};
+            double[] elevations = new double[latitudes.length * longitudes.length];
+            for (int i = 0; i < elevations.length; i++)
+            {
+                elevations[i] = 100 * i - 500;
+            }
+
+            Vec4 referencePoint = globe.computePointFromPosition(Angle.fromDegrees(10), Angle.fromDegrees(20), 0);
+            double[] latitudeRadians = new double[latitudes.length];
+            for (int j = 0; j < latitudes.length; j++)
+            {
+                latitudeRadians[j] = Angle.fromDegrees(latitudes[j]).radians;
+            }
+            double[] longitudeRadians = new double[longitudes.length];
+            for (int i = 0; i < longitudes.length; i++)
+            {
+                longitudeRadians[i] = Angle.fromDegrees(longitudes[i]).radians;
+            }
+
+            FloatBuffer points = FloatBuffer.allocate(3 * elevations.length);
+            globe.computePointsFromGrid(latitudeRadians, longitudeRadians, latitudes.length, longitudes.length,
+                elevations, referencePoint, points);
+
+            int k = 0;
+            for (double latitude : latitudes)
+            {
+                for (double longitude : longitudes)
+                {
+                    Vec4 expected = globe.computePointFromPosition(Angle.fromDegrees(latitude),
+                        Angle.fromDegrees(longitude), elevations[k / 3]).subtract3(referencePoint);
+                    assertEquals("X", (float) expected.x, points.get(k++), 0);
+                    assertEquals("Y", (float) expected.y, points.get(k++), 0);
+                    assertEquals("Z", (float) expected.z, points.get(k++), 0);
+                }
+            }
+        }
+
+        @Test
+        public void testEllipsoid()
+        {
+            EllipsoidalGlobe globe = new EllipsoidalGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS,
+                Earth.WGS84_ES, new ZeroElevationModel());
+            assertBulkMatchesSinglePoint(globe);
+            assertGridMatchesSinglePoint(globe);
+        }
+
+        @Test
+        public void testFlatProjections()
+        {
+            FlatGlobe globe = new FlatGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS, Earth.WGS84_ES,
+                new ZeroElevationModel());
+            for (String projection : new String[] {FlatGlobe.PROJECTION_LAT_LON, FlatGlobe.PROJECTION_MERCATOR,
+                FlatGlobe.PROJECTION_SINUSOIDAL, FlatGlobe.PROJECTION_MODIFIED_SINUSOIDAL})
+            {
+                globe.setProjection(projection);
+                assertBulkMatchesSinglePoint(globe);
+                assertGridMatchesSinglePoint(globe);
+            }
+        }
+
+        @Test
+        public void testOverriddenConversion()
+        {
+            assertBulkMatchesSinglePoint(new OffsetGlobe());
+            assertGridMatchesSinglePoint(new OffsetGlobe());
+        }
+    }
+
     public static void main(String[] args)
     {
         new TestRunner().doRun(new TestSuite(Tests.class));
         new TestRunner().doRun(new TestSuite(CoordinateConversionTests.class));
+        new TestRunner().doRun(new TestSuite(BulkConversionTests.class));
     }
 }
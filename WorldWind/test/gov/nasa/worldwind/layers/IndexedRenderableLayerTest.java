@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.layers;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.render.*;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Tests that IndexedRenderableLayer finds every renderable inside a frustum, and that its index follows renderables
+ * that move or are removed.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class IndexedRenderableLayerTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final double FRUSTUM_SIZE = 200e3;
+
+        /** Test that the renderables found in a frustum include every renderable inside the frustum. */
+        @Test
+        public void testVisibleRenderables()
+        {
+            Globe globe = new Earth();
+            IndexedRenderableLayer layer = new IndexedRenderableLayer(8, 16);
+            List<PointPlacemark> placemarks = createPlacemarks(20000);
+            layer.addRenderables(placemarks);
+
+            assertVisibleRenderables(globe, layer, placemarks);
+        }
+
+        /** Test that the index follows renderables that are moved or removed. */
+        @Test
+        public void testMoveAndRemoveRenderables()
+        {
+            Globe globe = new Earth();
+            IndexedRenderableLayer layer = new IndexedRenderableLayer(8, 16);
+            List<PointPlacemark> placemarks = createPlacemarks(5000);
+            layer.addRenderables(placemarks);
+
+            // Move every third placemark, which notifies the layer, and remove every fifth.
+            Random random = new Random(2);
+            List<PointPlacemark> remaining = new ArrayList<PointPlacemark>();
+            for (int i = 0; i < placemarks.size(); i++)
+            {
+                if (i % 3 == 0)
+                {
+                    placemarks.get(i).moveTo(
+                        Position.fromDegrees(30 + 4 * random.nextDouble(), 10 * random.nextDouble()));
+                }
+
+                if (i % 5 == 0)
+                    layer.removeRenderable(placemarks.get(i));
+                else
+                    remaining.add(placemarks.get(i));
+            }
+
+            assertVisibleRenderables(globe, layer, remaining);
+
+            layer.removeAllRenderables();
+            assertEquals("Index not empty", 0, layer.root.count);
+        }
+
+        protected static List<PointPlacemark> createPlacemarks(int count)
+        {
+            // Half the placemarks are clustered near a few locations, and half are spread over the globe.
+            Random random = new Random(1);
+            List<PointPlacemark> placemarks = new ArrayList<PointPlacemark>(count);
+            for (int i = 0; i < count; i++)
+            {
+                double lat = i % 2 == 0 ? 30 + 4 * random.nextDouble() : -90 + 180 * random.nextDouble();
+                double lon = i % 2 == 0 ? 10 * random.nextDouble() : -180 + 360 * random.nextDouble();
+                placemarks.add(new PointPlacemark(Position.fromDegrees(lat, lon, 1000 * random.nextDouble())));
+            }
+
+            return placemarks;
+        }
+
+        protected static void assertVisibleRenderables(Globe globe, IndexedRenderableLayer layer,
+            List<PointPlacemark> placemarks)
+        {
+            for (LatLon center : Arrays.asList(LatLon.fromDegrees(32, 5), LatLon.fromDegrees(-45, 170),
+                LatLon.fromDegrees(0, 0), LatLon.fromDegrees(85, -120)))
+            {
+                Vec4 point = globe.computePointFromPosition(center, 0);
+                Frustum frustum = createBoxFrustum(point, FRUSTUM_SIZE);
+
+                layer.visibleRenderables.clear();
+                layer.numNodesVisited = 0;
+                layer.addVisibleRenderables(globe, 1, globe.getGlobeStateKey(), frustum, layer.root);
+                Set<Renderable> visible = new HashSet<Renderable>(layer.visibleRenderables);
+
+                int numInside = 0;
+                for (PointPlacemark placemark : placemarks)
+                {
+                    Vec4 p = globe.computePointFromPosition(placemark.getPosition());
+                    if (frustum.contains(p))
+                    {
+                        numInside++;
+                        assertTrue("Placemark inside frustum not found at " + center, visible.contains(placemark));
+                    }
+                }
+
+                assertTrue("Found placemarks not in layer", placemarks.containsAll(visible));
+                assertTrue("Too many placemarks found at " + center, visible.size() <= Math.max(4 * numInside, 200));
+                assertTrue("Too many cells visited at " + center, layer.numNodesVisited <= visible.size() + 100);
+            }
+        }
+
+        protected static Frustum createBoxFrustum(Vec4 center, double size)
+        {
+            return new Frustum(
+                new Plane(1, 0, 0, -(center.x - size)), new Plane(-1, 0, 0, center.x + size),
+                new Plane(0, 1, 0, -(center.y - size)), new Plane(0, -1, 0, center.y + size),
+                new Plane(0, 0, 1, -(center.z - size)), new Plane(0, 0, -1, center.z + size));
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -19,6 +19,7 @@ import junit.textui.TestRunner;
 import org.junit.*;
 import org.junit.Test;
 
+import javax.xml.namespace.QName;
 import java.io.*;
 import java.net.URL;
 import java.util.*;
@@ -766,6 +767,153 @@ public class KMLTest
             assertEquals("Coordinates not as expected", coords, positions);
         }
 
+        /** A point parser subclass, which the parser context must create rather than its superclass. */
+        public static class TestPoint extends KMLPoint
+        {
+            public TestPoint(String namespaceURI)
+            {
+                super(namespaceURI);
+            }
+        }
+
+        /** A point parser that creates its own instances, which the parser context must not bypass. */
+        public static class TestFactoryPoint extends KMLPoint
+        {
+            protected final int generation;
+
+            public TestFactoryPoint(String namespaceURI, int generation)
+            {
+                super(namespaceURI);
+                this.generation = generation;
+            }
+
+            @Override
+            public XMLEventParser newInstance() throws Exception
+            {
+                return new TestFactoryPoint(this.getNamespaceURI(), this.generation + 1);
+            }
+        }
+
+        /** Test that parser contexts and their copies create new parsers of the registered classes and namespaces. */
+        @Test
+        public void testParserCreation()
+        {
+            String namespace = KMLConstants.KML_NAMESPACE;
+            QName testName = new QName(namespace, "TestPoint");
+            QName factoryName = new QName(namespace, "TestFactoryPoint");
+
+            KMLParserContext ctx = new KMLParserContext(namespace);
+            ctx.registerParser(testName, new TestPoint(namespace));
+            ctx.registerParser(factoryName, new TestFactoryPoint(namespace, 0));
+
+            for (KMLParserContext c : new KMLParserContext[] {ctx, new KMLParserContext(ctx), ctx})
+            {
+                XMLEventParser point = c.getParser(new QName(namespace, "Point"));
+                assertEquals("Point class not as expected", KMLPoint.class, point.getClass());
+                assertEquals("Namespace not as expected", namespace, ((KMLPoint) point).getNamespaceURI());
+
+                XMLEventParser testPoint = c.getParser(testName);
+                assertEquals("Subclass not as expected", TestPoint.class, testPoint.getClass());
+                assertNotSame("Parser reused", testPoint, c.getParser(testName));
+
+                XMLEventParser factoryPoint = c.getParser(factoryName);
+                assertEquals("Factory parser not used", 1, ((TestFactoryPoint) factoryPoint).generation);
+            }
+        }
+
+        /** A parser context that exposes its parser tables. */
+        public static class TestParserContext extends KMLParserContext
+        {
+            public TestParserContext(String namespaceURI)
+            {
+                super(namespaceURI);
+            }
+
+            public Map<QName, XMLEventParser> getParsers()
+            {
+                return this.parsers;
+            }
+
+            public Map<QName, XMLEventParserFactory> getParserFactories()
+            {
+                return this.parserFactories;
+            }
+        }
+
+        /**
+         * Test that every registered factory creates parsers of the same class and namespace as the parser registered
+         * for its element, and that registering a parser replaces the element's factory.
+         */
+        @Test
+        public void testParserFactories() throws Exception
+        {
+            TestParserContext ctx = new TestParserContext(KMLConstants.KML_NAMESPACE);
+            assertFalse("No factories registered", ctx.getParserFactories().isEmpty());
+
+            for (Map.Entry<QName, XMLEventParserFactory> entry : ctx.getParserFactories().entrySet())
+            {
+                XMLEventParser prototype = ctx.getParsers().get(entry.getKey());
+                assertNotNull("No parser for " + entry.getKey(), prototype);
+
+                XMLEventParser parser = entry.getValue().create();
+                assertEquals("Class not as expected for " + entry.getKey(), prototype.getClass(), parser.getClass());
+                assertEquals("Namespace not as expected for " + entry.getKey(),
+                    ((AbstractXMLEventParser) prototype).getNamespaceURI(),
+                    ((AbstractXMLEventParser) parser).getNamespaceURI());
+                assertNotSame("Parser reused for " + entry.getKey(), parser, ctx.getParser(entry.getKey()));
+            }
+
+            QName pointName = new QName(KMLConstants.KML_NAMESPACE, "Point");
+            ctx.registerParser(pointName, new TestPoint(KMLConstants.KML_NAMESPACE));
+            assertEquals("Registered parser not used", TestPoint.class, ctx.getParser(pointName).getClass());
+        }
+
+        /**
+         * Test that the coordinate tokenizer reads the same values as Double.parseDouble, and that a malformed value
+         * fails only the coordinate containing it.
+         */
+        @Test
+        public void testCoordinatesTokenizerValues()
+        {
+            String[] words = {"0", "-0", "+1.5", "0.1", "-179.99999999999997", "89.123456789012345678",
+                "1234567890123456789", ".5", "7.", "1e3", "-2.5E-3", "0.0000000000000000000000012"};
+
+            StringBuilder sb = new StringBuilder();
+            for (String word : words)
+            {
+                sb.append(word).append(",").append(word).append(",").append(word).append(" ");
+            }
+            sb.append("1.0,x,3 4,5");
+
+            KMLCoordinateTokenizer tokenizer = new KMLCoordinateTokenizer(sb.toString());
+            double[] coords = new double[3];
+
+            for (String word : words)
+            {
+                assertEquals("Coordinate size not as expected", 3, tokenizer.nextCoordinate(coords, 0));
+                for (double value : coords)
+                {
+                    assertEquals("Value not as expected for " + word,
+                        Double.doubleToLongBits(Double.parseDouble(word)), Double.doubleToLongBits(value));
+                }
+            }
+
+            try
+            {
+                tokenizer.nextCoordinate(coords, 0);
+                fail("Malformed coordinate did not fail");
+            }
+            catch (NumberFormatException e)
+            {
+                // Expected.
+            }
+
+            assertEquals("Coordinate size not as expected", 2, tokenizer.nextCoordinate(coords, 0));
+            assertEquals("Coordinate not as expected", Position.fromDegrees(5, 4, 0),
+                Position.fromDegrees(coords[1], coords[0], coords[2]));
+            assertFalse("Tokenizer has more tokens", tokenizer.hasMoreTokens());
+        }
+
         @org.junit.Test
         public void testNestedUnrecognizedElement()
         {
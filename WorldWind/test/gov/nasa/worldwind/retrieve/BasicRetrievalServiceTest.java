@@ -0,0 +1,417 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.retrieve;
+
+import com.sun.net.httpserver.*;
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests per-host connection limits and statistics of BasicRetrievalService against a local HTTP server that serves
+ * tiles after an injected delay. Also tests the coalescing of requests by name, the cancellation of retrievals that are
+ * no longer requested, and the displacement of low priority retrievals when the queue is full.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class BasicRetrievalServiceTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final int TILE_SIZE = 1000;
+        protected static final long TIMEOUT = 10000; // milliseconds
+
+        protected HttpServer server;
+        protected final Map<String, AtomicInteger> activeRequests = new ConcurrentHashMap<String, AtomicInteger>();
+        protected final Map<String, AtomicInteger> maxActiveRequests = new ConcurrentHashMap<String, AtomicInteger>();
+        protected volatile long delay = 200;
+        protected BasicRetrievalService service;
+        protected CountDownLatch release = new CountDownLatch(1);
+
+        /** A post-processor that counts its calls and records the state of the retriever it was called with. */
+        protected static class CountingPostProcessor implements RetrievalPostProcessor
+        {
+            protected final AtomicInteger count = new AtomicInteger();
+            protected volatile String state;
+
+            public ByteBuffer run(Retriever retriever)
+            {
+                this.state = retriever.getState();
+                this.count.incrementAndGet();
+                return retriever.getBuffer();
+            }
+        }
+
+        /** A retriever that reads nothing from its URL, and blocks until released. */
+        protected static class TestRetriever extends URLRetriever
+        {
+            protected final CountDownLatch started = new CountDownLatch(1);
+            protected final CountDownLatch release;
+
+            public TestRetriever(String name, RetrievalPostProcessor postProcessor, CountDownLatch release)
+                throws MalformedURLException
+            {
+                super(new File(name).toURI().toURL(), postProcessor);
+                this.release = release;
+            }
+
+            @Override
+            protected ByteBuffer doRead(URLConnection connection) throws Exception
+            {
+                this.started.countDown();
+                this.release.await();
+                return ByteBuffer.allocate(4);
+            }
+        }
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            WorldWind.getNetworkStatus(); // initialize World Wind before timing retrievals
+
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            this.server.setExecutor(Executors.newCachedThreadPool());
+            this.server.createContext("/", new HttpHandler()
+            {
+                public void handle(HttpExchange exchange) throws IOException
+                {
+                    String host = exchange.getRequestHeaders().getFirst("Host").split(":")[0];
+                    int active = counter(activeRequests, host).incrementAndGet();
+                    AtomicInteger max = counter(maxActiveRequests, host);
+                    while (active > max.get() && !max.compareAndSet(max.get(), active))
+                    {
+                    }
+
+                    try
+                    {
+                        Thread.sleep(delay);
+                        exchange.sendResponseHeaders(200, TILE_SIZE);
+                        exchange.getResponseBody().write(new byte[TILE_SIZE]);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        exchange.sendResponseHeaders(500, -1);
+                    }
+                    finally
+                    {
+                        counter(activeRequests, host).decrementAndGet();
+                        exchange.close();
+                    }
+                }
+            });
+            this.server.start();
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            this.release.countDown();
+            if (this.service != null)
+                this.service.shutdown(false);
+
+            this.server.stop(0);
+        }
+
+        /** Creates a service with a single retrieval thread and a short queue, so the order of retrievals is known. */
+        protected void createService()
+        {
+            Configuration.setValue(AVKey.RETRIEVAL_POOL_SIZE, 1);
+            Configuration.setValue(AVKey.RETRIEVAL_QUEUE_SIZE, 2);
+            try
+            {
+                this.service = new BasicRetrievalService();
+            }
+            finally
+            {
+                Configuration.removeKey(AVKey.RETRIEVAL_POOL_SIZE);
+                Configuration.removeKey(AVKey.RETRIEVAL_QUEUE_SIZE);
+            }
+        }
+
+        protected static AtomicInteger counter(Map<String, AtomicInteger> map, String key)
+        {
+            synchronized (map)
+            {
+                AtomicInteger counter = map.get(key);
+                if (counter == null)
+                    map.put(key, counter = new AtomicInteger());
+                return counter;
+            }
+        }
+
+        protected URL makeURL(String host, int i) throws MalformedURLException
+        {
+            return new URL("http://" + host + ":" + this.server.getAddress().getPort() + "/tile" + i + ".png");
+        }
+
+        protected static void awaitAll(List<RetrievalFuture> futures) throws Exception
+        {
+            for (RetrievalFuture future : futures)
+            {
+                ((Future) future).get(30, TimeUnit.SECONDS);
+            }
+        }
+
+        @Test
+        /** Tests that retrievals from a host are limited, and that a slow host does not starve other hosts. */
+        public void testHostConnectionLimit() throws Exception
+        {
+            BasicRetrievalService service = new BasicRetrievalService();
+            service.setRetrieverPoolSize(4);
+            service.setHostConnectionLimit(2);
+
+            List<RetrievalFuture> slowFutures = new ArrayList<RetrievalFuture>();
+            for (int i = 0; i < 8; i++)
+            {
+                slowFutures.add(service.runRetriever(new HTTPRetriever(this.makeURL("localhost", i), null), 1));
+            }
+
+            long startTime = System.currentTimeMillis();
+            List<RetrievalFuture> fastFutures = new ArrayList<RetrievalFuture>();
+            for (int i = 0; i < 2; i++)
+            {
+                fastFutures.add(service.runRetriever(new HTTPRetriever(this.makeURL("127.0.0.1", i), null), 2));
+            }
+            awaitAll(fastFutures);
+            long fastTime = System.currentTimeMillis() - startTime;
+            awaitAll(slowFutures);
+
+            assertEquals("Host limit exceeded ", 2, counter(this.maxActiveRequests, "localhost").get());
+            assertTrue("Other host starved " + fastTime, fastTime < 3 * this.delay);
+
+            HostStatistics stats = service.getHostStatistics("localhost");
+            assertEquals("Request count incorrect ", 8, stats.getRequestCount());
+            assertEquals("Failure count incorrect ", 0, stats.getFailureCount());
+            assertEquals("Byte count incorrect ", 8 * TILE_SIZE, stats.getBytesRead());
+            // Futures complete just before the service releases their hosts.
+            for (int i = 0; i < 100 && stats.getActiveCount() > 0; i++)
+            {
+                Thread.sleep(10);
+            }
+            assertEquals("Active count incorrect ", 0, stats.getActiveCount());
+            assertTrue("Latency not observed ", stats.getLatency() >= this.delay);
+            assertEquals("Hosts not distinguished ", 2, service.getHostStatistics().size());
+
+            service.shutdown(true);
+        }
+
+        @Test
+        /** Tests that adaptive timeouts follow the observed latency within their limits. */
+        public void testAdaptiveTimeout()
+        {
+            HostStatistics stats = new HostStatistics("host");
+            assertEquals("Configured timeout not used ", 5000, stats.computeTimeout(5000));
+
+            for (int i = 0; i < 10; i++)
+            {
+                stats.addLatency(300);
+            }
+            assertEquals("Timeout not adapted ", 1000, stats.computeTimeout(5000));
+
+            for (int i = 0; i < 20; i++)
+            {
+                stats.addLatency(i % 2 == 0 ? 2000 : 4000);
+            }
+            int timeout = stats.computeTimeout(5000);
+            assertTrue("Timeout not lengthened " + timeout, timeout > 5000 && timeout <= 10000);
+        }
+
+        @Test
+        /** Tests that timeouts back off while a host is slower than its timeout, and adapt again when it recovers. */
+        public void testAdaptiveTimeoutBackoff()
+        {
+            HostStatistics stats = new HostStatistics("host");
+            for (int i = 0; i < 10; i++)
+            {
+                stats.addLatency(300);
+            }
+            assertEquals("Timeout not adapted ", 1000, stats.computeTimeout(5000));
+
+            // The host slows to 6 seconds, so every retrieval times out and no latency is observed.
+            int[] expected = {2000, 4000, 8000, 10000, 10000};
+            for (int timeout : expected)
+            {
+                stats.addTimeout();
+                assertEquals("Timeout not backed off ", timeout, stats.computeTimeout(5000));
+            }
+
+            // The longer timeout lets a response through, and its latency replaces the backoff.
+            stats.addLatency(6000);
+            int timeout = stats.computeTimeout(5000);
+            assertTrue("Timeout shorter than latency " + timeout, timeout > 6000 && timeout <= 10000);
+
+            // The host recovers.
+            for (int i = 0; i < 50; i++)
+            {
+                stats.addLatency(300);
+            }
+            assertEquals("Timeout not recovered ", 1000, stats.computeTimeout(5000));
+        }
+
+        /** Occupies the service's only retrieval thread until the test's latch is released. */
+        protected RetrievalFuture occupyRetrievalThread() throws Exception
+        {
+            TestRetriever retriever = new TestRetriever("busy", null, this.release);
+            RetrievalFuture future = this.service.runRetriever(retriever, 0);
+            assertTrue("Retriever not started", retriever.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+            return future;
+        }
+
+        protected RetrievalFuture runRetriever(String name, double priority) throws Exception
+        {
+            return this.service.runRetriever(new TestRetriever(name, null, this.release), priority);
+        }
+
+        @Test
+        public void testCoalescedPostProcessors() throws Exception
+        {
+            this.createService();
+            CountingPostProcessor first = new CountingPostProcessor();
+            CountingPostProcessor second = new CountingPostProcessor();
+            CountingPostProcessor third = new CountingPostProcessor();
+
+            TestRetriever retriever = new TestRetriever("tile", first, this.release);
+            RetrievalFuture future = this.service.runRetriever(retriever, 0);
+            assertTrue("Retriever not started", retriever.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+            // A bulk request is coalesced, and its post-processor chained. A display request is coalesced and dropped.
+            assertSame("Bulk request not coalesced", future,
+                this.service.runBulkRetriever(new TestRetriever("tile", second, this.release), 0));
+            assertSame("Request not coalesced", future,
+                this.service.runRetriever(new TestRetriever("tile", third, this.release), 0));
+
+            this.release.countDown();
+            future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            waitForCount(second, 1);
+
+            assertEquals("First post-processor calls", 1, first.count.get());
+            assertEquals("Chained post-processor calls", 1, second.count.get());
+            assertEquals("Chained post-processor state", Retriever.RETRIEVER_STATE_SUCCESSFUL, second.state);
+            assertEquals("Dropped post-processor calls", 0, third.count.get());
+            assertFalse("Retrieval still pending", this.service.contains(retriever));
+        }
+
+        @Test
+        public void testStaleRetrievalCancelled() throws Exception
+        {
+            this.createService();
+            this.occupyRetrievalThread();
+            this.service.setStaleGenerationLimit(3);
+
+            RetrievalFuture future = this.runRetriever("tile", 0);
+            for (int i = 0; i < 3; i++)
+            {
+                this.service.beginGeneration();
+            }
+            assertFalse("Retrieval cancelled too soon", future.isCancelled());
+
+            this.service.beginGeneration();
+            assertTrue("Stale retrieval not cancelled", future.isCancelled());
+        }
+
+        @Test
+        public void testRenewedRetrievalNotCancelled() throws Exception
+        {
+            this.createService();
+            this.occupyRetrievalThread();
+            this.service.setStaleGenerationLimit(3);
+
+            RetrievalFuture future = this.runRetriever("tile", 0);
+            CountingPostProcessor bulk = new CountingPostProcessor();
+            RetrievalFuture bulkFuture = this.service.runBulkRetriever(
+                new TestRetriever("bulk", bulk, this.release), 0);
+
+            for (int i = 0; i < 20; i++)
+            {
+                this.service.beginGeneration();
+                assertSame("Request not coalesced", future, this.runRetriever("tile", 0));
+            }
+            assertFalse("Renewed retrieval cancelled", future.isCancelled());
+            assertFalse("Bulk retrieval cancelled", bulkFuture.isCancelled());
+
+            this.release.countDown();
+            future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            bulkFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertEquals("Bulk post-processor calls", 1, bulk.count.get());
+        }
+
+        @Test
+        public void testStaleCancellationOffByDefault() throws Exception
+        {
+            this.createService();
+            assertEquals("Stale generation limit", 0, this.service.getStaleGenerationLimit());
+
+            this.occupyRetrievalThread();
+            RetrievalFuture future = this.runRetriever("tile", 0);
+            for (int i = 0; i < 1000; i++)
+            {
+                this.service.beginGeneration();
+            }
+
+            assertFalse("Retrieval cancelled", future.isCancelled());
+        }
+
+        @Test
+        public void testQueueDisplacement() throws Exception
+        {
+            this.createService();
+            this.occupyRetrievalThread();
+
+            // Negative priorities are compared without regard to submit time. Lower values run first.
+            RetrievalFuture low = this.runRetriever("low", -1);
+            RetrievalFuture middle = this.runRetriever("middle", -2);
+            CountingPostProcessor bulk = new CountingPostProcessor();
+            RetrievalFuture displacedBulk = this.service.runBulkRetriever(
+                new TestRetriever("bulk", bulk, this.release), -1.5);
+            assertTrue("Lowest priority retrieval not displaced", low.isCancelled());
+            assertFalse("Retrieval displaced", middle.isCancelled());
+
+            // The queue is full, so a higher priority retrieval displaces the bulk retrieval, whose post-processor
+            // then reports the failure.
+            RetrievalFuture high = this.runRetriever("high", -3);
+            assertTrue("Bulk retrieval not displaced", displacedBulk.isCancelled());
+            assertEquals("Displaced bulk post-processor calls", 1, bulk.count.get());
+            assertEquals("Displaced bulk retriever state", Retriever.RETRIEVER_STATE_NOT_STARTED, bulk.state);
+
+            // A retrieval with lower priority than every queued retrieval is rejected.
+            RetrievalFuture rejected = this.runRetriever("rejected", 0);
+            assertTrue("Low priority retrieval not rejected", rejected.isCancelled());
+            assertFalse("Retrieval displaced", middle.isCancelled());
+            assertFalse("Retrieval displaced", high.isCancelled());
+
+            this.release.countDown();
+            high.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            middle.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        protected static void waitForCount(CountingPostProcessor postProcessor, int count) throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while (postProcessor.count.get() < count && System.currentTimeMillis() < end)
+            {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -0,0 +1,241 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.retrieve;
+
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+
+/**
+ * Tests that a bulk retrieval manifest survives writing and reading, and that a journal resumes with the completions
+ * recorded before it was abandoned.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class BulkRetrievalJournalTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final String KEY = "Earth/Test|10|20|30|40|5";
+
+        protected File root;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            this.root = File.createTempFile("BulkRetrievalJournalTest", "");
+            assertTrue(this.root.delete());
+            assertTrue(this.root.mkdirs());
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            File[] children = this.root.listFiles();
+            if (children != null)
+            {
+                for (File child : children)
+                {
+                    child.delete();
+                }
+            }
+
+            this.root.delete();
+        }
+
+        protected static BulkRetrievalManifest createManifest(Random random)
+        {
+            BulkRetrievalManifest manifest = new BulkRetrievalManifest(KEY);
+            manifest.addLevel(0, 3, 5, 2, 3);
+            manifest.addLevel(2, 40, 70, 37, 53);
+
+            for (int row = 40; row < 77; row++)
+            {
+                for (int col = 70; col < 123; col++)
+                {
+                    manifest.setPending(2, row, col, random.nextBoolean());
+                }
+            }
+            manifest.setPending(0, 4, 7, true);
+
+            return manifest;
+        }
+
+        protected static void assertSamePending(BulkRetrievalManifest expected, BulkRetrievalManifest actual)
+        {
+            assertEquals("Key", expected.getKey(), actual.getKey());
+            assertEquals("Number of levels", expected.getNumLevels(), actual.getNumLevels());
+            assertEquals("Pending count", expected.getPendingCount(), actual.getPendingCount());
+
+            for (int i = 0; i < expected.getNumLevels(); i++)
+            {
+                int levelNumber = expected.getLevelNumber(i);
+                assertEquals("Level number", levelNumber, actual.getLevelNumber(i));
+
+                int position = expected.nextPending(levelNumber, 0);
+                while (position >= 0)
+                {
+                    assertTrue("Tile not pending", actual.isPending(levelNumber,
+                        expected.getRow(levelNumber, position), expected.getColumn(levelNumber, position)));
+                    position = expected.nextPending(levelNumber, position + 1);
+                }
+            }
+        }
+
+        @Test
+        public void testManifestReadWrite() throws IOException
+        {
+            BulkRetrievalManifest manifest = createManifest(new Random(3));
+            File file = new File(this.root, "test.manifest");
+            manifest.write(file);
+
+            assertSamePending(manifest, BulkRetrievalManifest.read(file));
+            assertTrue("Tile not pending", manifest.isPending(0, 4, 7));
+            assertFalse("Tile outside level is pending", manifest.isPending(0, 5, 7));
+        }
+
+        @Test
+        public void testJournalResume() throws IOException
+        {
+            File file = new File(this.root, "test.manifest");
+            BulkRetrievalManifest expected = createManifest(new Random(9));
+
+            // Record completions across several checkpoints, then abandon the journal without closing it.
+            BulkRetrievalJournal journal = new BulkRetrievalJournal(file, 10);
+            journal.create(createManifest(new Random(9)));
+            int numCompleted = 0;
+            for (int position = expected.nextPending(2, 0); position >= 0 && numCompleted < 125;
+                position = expected.nextPending(2, position + 1))
+            {
+                int row = expected.getRow(2, position);
+                int col = expected.getColumn(2, position);
+                assertTrue("Tile not recorded", journal.recordCompleted(2, row, col));
+                journal.checkpointIfDue();
+                expected.setPending(2, row, col, false);
+                numCompleted++;
+            }
+            assertTrue("Tile not recorded", journal.recordCompleted(0, 4, 7));
+            assertFalse("Tile recorded twice", journal.recordCompleted(0, 4, 7));
+            expected.setPending(0, 4, 7, false);
+
+            // A record partly written by a crash is ignored.
+            FileOutputStream out = new FileOutputStream(journal.getJournalFile(), true);
+            out.write(new byte[] {0, 0, 0, 2, 0});
+            out.close();
+
+            assertNull("Manifest with another key", new BulkRetrievalJournal(file, 10).open("another key"));
+
+            BulkRetrievalJournal resumed = new BulkRetrievalJournal(file, 10);
+            assertSamePending(expected, resumed.open(KEY));
+            assertEquals("Journal not emptied", 0, resumed.getJournalFile().length());
+
+            resumed.delete();
+            assertFalse("Manifest not deleted", file.exists());
+            assertFalse("Journal not deleted", resumed.getJournalFile().exists());
+        }
+
+        @Test
+        public void testCheckpointRatio() throws IOException
+        {
+            File file = new File(this.root, "test.manifest");
+            BulkRetrievalManifest manifest = new BulkRetrievalManifest(KEY);
+            manifest.addLevel(5, 0, 0, 1000, 1000);
+            for (int col = 0; col < 1000; col++)
+            {
+                manifest.setPending(5, 0, col, true);
+                manifest.setPending(5, 1, col, true);
+            }
+
+            BulkRetrievalJournal journal = new BulkRetrievalJournal(file, 10);
+            journal.create(manifest);
+            long manifestSize = file.length();
+            int numRecords = (int) Math.ceil(manifestSize * 0.1 / 12);
+
+            // No checkpoint until the journal reaches a tenth of the manifest's size.
+            for (int i = 0; i < numRecords - 1; i++)
+            {
+                assertTrue("Tile not recorded", journal.recordCompleted(5, i / 1000, i % 1000));
+                assertFalse("Early checkpoint after " + (i + 1), journal.checkpointIfDue());
+            }
+            assertEquals("Journal length", (numRecords - 1) * 12L, journal.getJournalFile().length());
+
+            assertTrue("Tile not recorded", journal.recordCompleted(5, 1, 999));
+            assertTrue("No checkpoint", journal.checkpointIfDue());
+            assertEquals("Journal not emptied", 0, journal.getJournalFile().length());
+            assertEquals("Pending count", 2000 - numRecords,
+                new BulkRetrievalJournal(file, 10).read(KEY).getPendingCount());
+            journal.close();
+        }
+
+        @Test
+        public void testInterruptedCheckpoint() throws IOException
+        {
+            File file = new File(this.root, "test.manifest");
+            BulkRetrievalManifest expected = createManifest(new Random(5));
+
+            BulkRetrievalJournal journal = new BulkRetrievalJournal(file, 1000);
+            journal.create(createManifest(new Random(5)));
+            int position = expected.nextPending(2, 0);
+            for (int i = 0; i < 20; i++)
+            {
+                int row = expected.getRow(2, position);
+                int col = expected.getColumn(2, position);
+                assertTrue("Tile not recorded", journal.recordCompleted(2, row, col));
+                expected.setPending(2, row, col, false);
+                position = expected.nextPending(2, position + 1);
+
+                // Stop as if during a checkpoint, after the journal is retired and while the manifest is replaced.
+                if (i == 9)
+                {
+                    journal.closeJournal();
+                    assertTrue(journal.getJournalFile().renameTo(journal.previousJournalFile));
+                    journal = new BulkRetrievalJournal(file, 1000);
+                    journal.open(KEY);
+                }
+            }
+            journal.closeJournal();
+            assertTrue(journal.getJournalFile().renameTo(journal.previousJournalFile));
+            assertTrue(file.renameTo(new File(file.getPath() + ".tmp")));
+
+            // Completions recorded after the journal was retired, and a partial record left in the retired journal.
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(journal.getJournalFile()));
+            for (int i = 0; i < 5; i++)
+            {
+                int row = expected.getRow(2, position);
+                int col = expected.getColumn(2, position);
+                out.writeInt(2);
+                out.writeInt(row);
+                out.writeInt(col);
+                expected.setPending(2, row, col, false);
+                position = expected.nextPending(2, position + 1);
+            }
+            out.close();
+            out = new DataOutputStream(new FileOutputStream(journal.previousJournalFile, true));
+            out.write(new byte[] {0, 0, 0, 2, 0});
+            out.close();
+
+            assertTrue("Manifest not found", BulkRetrievalManifest.exists(file));
+            BulkRetrievalJournal resumed = new BulkRetrievalJournal(file, 1000);
+            assertSamePending(expected, resumed.open(KEY));
+            assertFalse("Previous journal not deleted", resumed.previousJournalFile.exists());
+            assertSamePending(expected, new BulkRetrievalJournal(file, 1000).read(KEY));
+
+            resumed.delete();
+            assertFalse("Manifest not deleted", BulkRetrievalManifest.exists(file));
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
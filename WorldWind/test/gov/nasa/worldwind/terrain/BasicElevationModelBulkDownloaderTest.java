@@ -0,0 +1,165 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.terrain;
+
+import com.sun.net.httpserver.*;
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.BasicDataFileStore;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.retrieve.*;
+import gov.nasa.worldwind.util.*;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests that a bulk download of elevations from a local HTTP server completes while the frames advance the retrieval
+ * service's request generation, and while the display requests the same tiles, so that the display's retrievals are
+ * cancelled as stale and the bulk retrievals are coalesced onto them.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class BasicElevationModelBulkDownloaderTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final int TILE_SIZE = 16;
+        protected static final long TIMEOUT = 20000; // milliseconds, less than the bulk request timeout
+
+        protected HttpServer server;
+        protected File cacheDir;
+        protected BasicElevationModel model;
+        protected volatile boolean advancing = true;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            // Recreate the retrieval service with a single thread, so retrievals queue, and with stale cancellation.
+            Configuration.setValue(AVKey.RETRIEVAL_POOL_SIZE, 1);
+            Configuration.setValue(AVKey.RETRIEVAL_QUEUE_STALE_GENERATION_LIMIT, 1);
+            WorldWind.shutDown();
+
+            this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            this.server.setExecutor(Executors.newCachedThreadPool());
+            this.server.createContext("/", new HttpHandler()
+            {
+                public void handle(HttpExchange exchange) throws IOException
+                {
+                    try
+                    {
+                        Thread.sleep(20);
+                        exchange.getResponseHeaders().set("Content-Type", "application/bil16");
+                        exchange.sendResponseHeaders(200, TILE_SIZE * TILE_SIZE * 2);
+                        exchange.getResponseBody().write(new byte[TILE_SIZE * TILE_SIZE * 2]);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        exchange.sendResponseHeaders(500, -1);
+                    }
+                    finally
+                    {
+                        exchange.close();
+                    }
+                }
+            });
+            this.server.start();
+
+            final int port = this.server.getAddress().getPort();
+            this.cacheDir = WWIO.makeTempDir();
+
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.DATA_CACHE_NAME, "Test/BasicElevationModelBulkDownloaderTest");
+            params.setValue(AVKey.DATASET_NAME, "test");
+            params.setValue(AVKey.FORMAT_SUFFIX, ".bil");
+            params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+            params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+            params.setValue(AVKey.NUM_LEVELS, 2);
+            params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(20, 20));
+            params.setValue(AVKey.SECTOR, Sector.fromDegrees(-40, 40, -60, 60));
+            params.setValue(AVKey.TILE_URL_BUILDER, new TileUrlBuilder()
+            {
+                public URL getURL(Tile tile, String imageFormat) throws MalformedURLException
+                {
+                    return new URL("http", "127.0.0.1", port, "/" + tile.getPath());
+                }
+            });
+            this.model = new BasicElevationModel(params);
+            this.model.setDataFileStore(new BasicDataFileStore(this.cacheDir));
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            this.advancing = false;
+            this.server.stop(0);
+
+            Configuration.removeKey(AVKey.RETRIEVAL_POOL_SIZE);
+            Configuration.removeKey(AVKey.RETRIEVAL_QUEUE_STALE_GENERATION_LIMIT);
+            WorldWind.shutDown();
+
+            WWIO.deleteDirectory(this.cacheDir);
+        }
+
+        @Test
+        public void testBulkDownloadWhileFramesAdvance() throws Exception
+        {
+            final BasicRetrievalService service = (BasicRetrievalService) WorldWind.getRetrievalService();
+            Thread frames = new Thread()
+            {
+                public void run()
+                {
+                    while (advancing)
+                    {
+                        service.beginGeneration();
+                        try
+                        {
+                            Thread.sleep(5);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+                }
+            };
+            frames.start();
+
+            Sector sector = Sector.fromDegrees(0, 39, 0, 39);
+            double resolution = this.model.getLevels().getLastLevel().getTexelSize();
+            BasicElevationModelBulkDownloader downloader = new BasicElevationModelBulkDownloader(this.model, sector,
+                resolution, this.model.getDataFileStore(), null)
+            {
+                @Override
+                protected void retrieveTile(Tile tile)
+                {
+                    // The display requests the tile first, so the bulk retrieval is coalesced onto its retrieval.
+                    this.elevationModel.downloadElevations(tile);
+                    super.retrieveTile(tile);
+                }
+            };
+            downloader.start();
+            downloader.join(TIMEOUT);
+
+            assertFalse("Bulk download waited for lost retrievals", downloader.isAlive());
+            assertTrue("No tiles retrieved", downloader.getProgress().getCurrentCount() > 0);
+            assertEquals("Missing data", 0,
+                this.model.getEstimatedMissingDataSize(sector, resolution, this.model.getDataFileStore()));
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
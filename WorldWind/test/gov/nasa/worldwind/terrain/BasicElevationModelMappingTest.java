@@ -0,0 +1,189 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.BasicDataFileStore;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Tests that BasicElevationModel reads the same elevations from a memory mapped file as from a file read into the
+ * heap, for each elevation data type and byte order, that mapped tiles are charged less of the memory cache, and that
+ * the elevations of a mapped tile don't change when its file is downloaded again.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class BasicElevationModelMappingTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final int TILE_SIZE = 16;
+
+        protected BasicElevationModel model;
+        protected List<File> files = new ArrayList<File>();
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.DATA_CACHE_NAME, "Test/BasicElevationModelMappingTest");
+            params.setValue(AVKey.DATASET_NAME, "test");
+            params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+            params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+            params.setValue(AVKey.NUM_LEVELS, 2);
+            params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(20, 20));
+            params.setValue(AVKey.SECTOR, Sector.fromDegrees(-40, 40, -60, 60));
+            params.setValue(AVKey.NETWORK_RETRIEVAL_ENABLED, false);
+            params.setValue(AVKey.ELEVATION_TILE_MEMORY_MAPPING, true);
+            this.model = new BasicElevationModel(params);
+        }
+
+        @Override
+        protected void tearDown() throws Exception
+        {
+            // Some platforms refuse to delete a file while it's mapped.
+            for (File file : this.files)
+            {
+                if (!file.delete())
+                    file.deleteOnExit();
+            }
+        }
+
+        protected ByteBuffer makeElevations(String dataType, String byteOrder, int offset)
+        {
+            int size = WWBufferUtil.sizeOfPrimitiveType(dataType);
+            ByteBuffer buffer = ByteBuffer.allocate(TILE_SIZE * TILE_SIZE * size);
+            buffer.order(AVKey.LITTLE_ENDIAN.equals(byteOrder) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            for (int i = 0; i < TILE_SIZE * TILE_SIZE; i++)
+            {
+                if (AVKey.INT16.equals(dataType))
+                    buffer.putShort((short) (i * 37 - 4000 + offset));
+                else
+                    buffer.putFloat(i * 37.25f - 4000 + offset);
+            }
+            buffer.flip();
+
+            return buffer;
+        }
+
+        /** Writes elevations to a new file, since rewriting a file that's mapped would change the mapped elevations. */
+        protected URL writeElevations(String dataType, String byteOrder) throws IOException
+        {
+            File file = File.createTempFile("BasicElevationModelMappingTest", ".bil");
+            this.files.add(file);
+            WWIO.saveBuffer(this.makeElevations(dataType, byteOrder, 0), file);
+
+            this.model.setElevationDataType(dataType);
+            this.model.setByteOrder(byteOrder);
+
+            return file.toURI().toURL();
+        }
+
+        protected void assertSameElevations(String dataType, String byteOrder) throws IOException
+        {
+            URL url = this.writeElevations(dataType, byteOrder);
+
+            BufferWrapper expected = this.model.readElevations(url);
+            BufferWrapper actual = this.model.mapElevations(url);
+            assertNotNull("Elevations not mapped", actual);
+            assertEquals("Number of elevations", expected.length(), actual.length());
+            for (int i = 0; i < expected.length(); i++)
+            {
+                assertEquals("Elevation " + i + " " + dataType + " " + byteOrder, expected.getDouble(i),
+                    actual.getDouble(i));
+            }
+        }
+
+        @Test
+        public void testMappedElevations() throws IOException
+        {
+            assertTrue("Mapping not enabled", this.model.isMemoryMapping());
+
+            assertSameElevations(AVKey.INT16, AVKey.LITTLE_ENDIAN);
+            assertSameElevations(AVKey.INT16, AVKey.BIG_ENDIAN);
+            assertSameElevations(AVKey.FLOAT32, AVKey.LITTLE_ENDIAN);
+            assertSameElevations(AVKey.FLOAT32, AVKey.BIG_ENDIAN);
+        }
+
+        @Test
+        public void testMappedCacheSize() throws IOException
+        {
+            URL url = this.writeElevations(AVKey.FLOAT32, AVKey.LITTLE_ENDIAN);
+            Level level = this.model.getLevels().getLevel(1);
+
+            BasicElevationModel.ElevationTile tile = this.model.createTile(new TileKey(1, 0, 0, level.getCacheName()));
+            assertTrue("Elevations not loaded", this.model.loadElevations(tile, url));
+            assertTrue("Elevations not mapped", tile.isElevationsMapped());
+
+            BufferWrapper elevations = tile.getElevations();
+            long size = this.model.computeCacheSize(tile, elevations);
+            assertTrue("Mapped tile charged " + size, size > 0 && size < elevations.getSizeInBytes());
+        }
+
+        @Test
+        public void testResavePreservesMappedElevations() throws IOException
+        {
+            File dir = WWIO.makeTempDir();
+            try
+            {
+                this.model.setDataFileStore(new BasicDataFileStore(dir));
+                this.model.setElevationDataType(AVKey.INT16);
+                this.model.setByteOrder(AVKey.LITTLE_ENDIAN);
+
+                Level level = this.model.getLevels().getLevel(1);
+                BasicElevationModel.ElevationTile tile = this.model.createTile(
+                    new TileKey(1, 0, 0, level.getCacheName()));
+                BasicElevationModel.DownloadPostProcessor postProcessor =
+                    new BasicElevationModel.DownloadPostProcessor(tile, this.model);
+
+                // Save and map the tile's file, then save it again as a download of an expired tile would.
+                assertTrue("Elevations not saved",
+                    postProcessor.saveBuffer(this.makeElevations(AVKey.INT16, AVKey.LITTLE_ENDIAN, 0)));
+                URL url = this.model.getDataFileStore().findFile(tile.getPath(), false);
+                assertTrue("Elevations not loaded", this.model.loadElevations(tile, url));
+                assertTrue("Elevations not mapped", tile.isElevationsMapped());
+
+                BufferWrapper mapped = tile.getElevations();
+                double[] expected = new double[mapped.length()];
+                mapped.getDouble(0, expected, 0, expected.length);
+
+                boolean replaced = postProcessor.saveBuffer(this.makeElevations(AVKey.INT16, AVKey.LITTLE_ENDIAN, 1));
+                for (int i = 0; i < expected.length; i++)
+                {
+                    assertEquals("Mapped elevation " + i, expected[i], mapped.getDouble(i));
+                }
+
+                // Platforms that can't replace a mapped file keep the previous file.
+                if (replaced)
+                {
+                    BufferWrapper saved = this.model.readElevations(url);
+                    assertEquals("Saved elevation", expected[0] + 1, saved.getDouble(0));
+                }
+            }
+            finally
+            {
+                WWIO.deleteDirectory(dir);
+            }
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
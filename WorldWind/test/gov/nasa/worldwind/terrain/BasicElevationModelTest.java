@@ -0,0 +1,192 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.*;
+
+/**
+ * Tests that the array form of BasicElevationModel's elevation query matches the list form.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class BasicElevationModelTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final int TILE_SIZE = 16;
+        protected static final double UNSET = 12345;
+
+        protected BasicElevationModel model;
+
+        @Override
+        protected void setUp() throws Exception
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.DATA_CACHE_NAME, "Test/BasicElevationModelTest");
+            params.setValue(AVKey.DATASET_NAME, "test");
+            params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+            params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+            params.setValue(AVKey.NUM_LEVELS, 2);
+            params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(20, 20));
+            params.setValue(AVKey.SECTOR, Sector.fromDegrees(-40, 40, -60, 60));
+            params.setValue(AVKey.MISSING_DATA_SIGNAL, -9999d);
+            params.setValue(AVKey.NETWORK_RETRIEVAL_ENABLED, false);
+            this.model = new BasicElevationModel(params);
+
+            // Load every level 0 tile, and level 1 tiles in the western half of the model's sector, so that lookups
+            // draw from both levels.
+            LevelSet levels = this.model.getLevels();
+            for (int levelNum = 0; levelNum < 2; levelNum++)
+            {
+                Level level = levels.getLevel(levelNum);
+                double delta = level.getTileDelta().getLatitude().degrees;
+                for (int row = (int) (50 / delta); row < (int) (130 / delta); row++)
+                {
+                    for (int col = (int) (120 / delta); col < (int) (240 / delta); col++)
+                    {
+                        if (levelNum == 1 && col >= 180 / delta)
+                            continue;
+
+                        this.loadTile(new TileKey(levelNum, row, col, level.getCacheName()), levelNum);
+                    }
+                }
+            }
+        }
+
+        protected void loadTile(TileKey key, int levelNum)
+        {
+            BasicElevationModel.ElevationTile tile = this.model.createTile(key);
+            FloatBuffer buffer = FloatBuffer.allocate(TILE_SIZE * TILE_SIZE);
+            for (int i = 0; i < TILE_SIZE * TILE_SIZE; i++)
+            {
+                // Mark one sample in each tile as missing data.
+                buffer.put(i == 17 ? -9999f : (float) (1000 * levelNum + (key.getRow() * 31 + key.getColumn()) + i));
+            }
+            buffer.rewind();
+
+            BufferWrapper elevations = new BufferWrapper.FloatBufferWrapper(buffer);
+            tile.setElevations(elevations);
+            this.model.addTileToCache(tile, elevations);
+        }
+
+        protected void assertSameElevations(Sector sector, double[] latitudes, double[] longitudes, double resolution,
+            boolean mapped)
+        {
+            List<LatLon> latlons = new ArrayList<LatLon>();
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                latlons.add(LatLon.fromDegrees(latitudes[i], longitudes[i]));
+            }
+
+            double[] expected = new double[latitudes.length];
+            double[] actual = new double[latitudes.length];
+            Arrays.fill(expected, UNSET);
+            Arrays.fill(actual, UNSET);
+
+            double expectedResolution = mapped ? this.model.getElevations(sector, latlons, resolution, expected)
+                : this.model.getUnmappedElevations(sector, latlons, resolution, expected);
+            double actualResolution = mapped ? this.model.getElevations(sector, latitudes, longitudes, resolution,
+                actual) : this.model.getUnmappedElevations(sector, latitudes, longitudes, resolution, actual);
+
+            assertEquals("Resolution differs ", expectedResolution, actualResolution);
+            for (int i = 0; i < expected.length; i++)
+            {
+                assertEquals("Elevation differs at " + latlons.get(i), expected[i], actual[i]);
+            }
+        }
+
+        @Test
+        /** Tests random locations inside and outside the model's coverage, at both levels. */
+        public void testRandomLocations()
+        {
+            Random random = new Random(7);
+            double[] latitudes = new double[2000];
+            double[] longitudes = new double[2000];
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                latitudes[i] = -50 + 100 * random.nextDouble();
+                longitudes[i] = -70 + 140 * random.nextDouble();
+            }
+
+            Sector sector = Sector.fromDegrees(-50, 50, -70, 70);
+            for (int levelNum = 0; levelNum < 2; levelNum++)
+            {
+                double resolution = this.model.getLevels().getLevel(levelNum).getTexelSize();
+                this.assertSameElevations(sector, latitudes, longitudes, resolution, true);
+                this.assertSameElevations(sector, latitudes, longitudes, resolution, false);
+            }
+        }
+
+        @Test
+        /** Tests locations on tile edges and corners, which lie in more than one tile. */
+        public void testTileEdges()
+        {
+            List<Double> lats = new ArrayList<Double>();
+            List<Double> lons = new ArrayList<Double>();
+            for (double lat = -40; lat <= 40; lat += 5)
+            {
+                for (double lon = -60; lon <= 60; lon += 5)
+                {
+                    lats.add(lat);
+                    lons.add(lon);
+                }
+            }
+
+            double[] latitudes = new double[lats.size()];
+            double[] longitudes = new double[lons.size()];
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                latitudes[i] = lats.get(i);
+                longitudes[i] = lons.get(i);
+            }
+
+            double resolution = this.model.getLevels().getLevel(1).getTexelSize();
+            this.assertSameElevations(Sector.fromDegrees(-40, 40, -60, 60), latitudes, longitudes, resolution, true);
+        }
+
+        @Test
+        /** Tests that a compound model gives the same elevations as its single constituent. */
+        public void testCompoundModel()
+        {
+            CompoundElevationModel compound = new CompoundElevationModel();
+            compound.addElevationModel(this.model);
+
+            double[] latitudes = {-10.5, 0, 12.25, 39.9, 45};
+            double[] longitudes = {-55.5, 0, 33.3, 59.9, 0};
+            double[] expected = new double[latitudes.length];
+            double[] actual = new double[latitudes.length];
+            Arrays.fill(expected, UNSET);
+            Arrays.fill(actual, UNSET);
+
+            Sector sector = Sector.fromDegrees(-40, 50, -60, 60);
+            double resolution = this.model.getLevels().getLevel(1).getTexelSize();
+            this.model.getElevations(sector, latitudes, longitudes, resolution, expected);
+            compound.getElevations(sector, latitudes, longitudes, resolution, actual);
+
+            for (int i = 0; i < expected.length; i++)
+            {
+                assertEquals("Elevation differs at " + i, expected[i], actual[i]);
+            }
+            assertEquals("Location outside coverage modified ", UNSET, actual[4]);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
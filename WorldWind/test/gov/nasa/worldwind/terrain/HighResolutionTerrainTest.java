@@ -0,0 +1,315 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Tests HighResolutionTerrain's viewshed computation against terrain whose visibility is known, and its line
+ * intersection and visibility queries against a test of every triangle of the intersected tiles.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class HighResolutionTerrainTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final Sector SECTOR = Sector.fromDegrees(0, 1, 0, 1);
+
+        /** An elevation model that is flat except for a north-south wall 100 meters high. */
+        protected static class WallElevationModel extends ZeroElevationModel
+        {
+            @Override
+            public double getElevations(Sector sector, double[] latitudes, double[] longitudes,
+                double targetResolution, double[] buffer)
+            {
+                for (int i = 0; i < latitudes.length; i++)
+                {
+                    buffer[i] = longitudes[i] >= 0.55 && longitudes[i] <= 0.56 ? 100 : 0;
+                }
+
+                return 0;
+            }
+        }
+
+        /** An elevation model of rolling hills up to 500 meters high. */
+        protected static class HillElevationModel extends ZeroElevationModel
+        {
+            @Override
+            public double getMaxElevation()
+            {
+                return 500;
+            }
+
+            @Override
+            public double[] getExtremeElevations(Angle latitude, Angle longitude)
+            {
+                return new double[] {0, 500};
+            }
+
+            @Override
+            public double[] getExtremeElevations(Sector sector)
+            {
+                return new double[] {0, 500};
+            }
+
+            @Override
+            public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+                double[] buffer)
+            {
+                for (int i = 0; i < latlons.size(); i++)
+                {
+                    LatLon ll = latlons.get(i);
+                    buffer[i] = computeElevation(ll.getLatitude().degrees, ll.getLongitude().degrees);
+                }
+
+                return 0;
+            }
+
+            @Override
+            public double getElevations(Sector sector, double[] latitudes, double[] longitudes,
+                double targetResolution, double[] buffer)
+            {
+                for (int i = 0; i < latitudes.length; i++)
+                {
+                    buffer[i] = computeElevation(latitudes[i], longitudes[i]);
+                }
+
+                return 0;
+            }
+
+            protected static double computeElevation(double latitude, double longitude)
+            {
+                return 250 + 250 * Math.sin(latitude * 300) * Math.cos(longitude * 250);
+            }
+        }
+
+        protected static HighResolutionTerrain createTerrain(ElevationModel elevationModel)
+        {
+            Globe globe = new EllipsoidalGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS, Earth.WGS84_ES,
+                elevationModel);
+            return new HighResolutionTerrain(globe, SECTOR, null, null);
+        }
+
+        /** Test that an observer above flat terrain sees the terrain out to the horizon and no further. */
+        @Test
+        public void testHorizon()
+        {
+            HighResolutionTerrain terrain = createTerrain(new ZeroElevationModel());
+            Position observer = Position.fromDegrees(0.5, 0.5, 10);
+            double radius = 20e3;
+
+            Viewshed viewshed = terrain.computeViewshed(Arrays.asList(observer), radius, 100);
+            assertNotNull("Viewshed is null", viewshed);
+            assertEquals("Number of observers", 1, viewshed.getNumObservers());
+
+            double horizon = Math.sqrt(2 * terrain.getGlobe().getRadius() * observer.getAltitude());
+            int numVisible = 0;
+            for (int row = 0; row < viewshed.getHeight(); row++)
+            {
+                for (int col = 0; col < viewshed.getWidth(); col++)
+                {
+                    double distance = LatLon.greatCircleDistance(observer, viewshed.getLocation(row, col)).radians
+                        * terrain.getGlobe().getRadius();
+
+                    if (distance < 0.95 * horizon)
+                        assertTrue("Not visible at " + distance + " meters", viewshed.isVisible(row, col));
+                    else if (distance > 1.05 * horizon)
+                        assertFalse("Visible at " + distance + " meters", viewshed.isVisible(row, col));
+
+                    if (viewshed.isVisible(row, col))
+                        numVisible++;
+                }
+            }
+
+            assertTrue("Too few visible points " + numVisible, numVisible > 0.9 * Math.PI * horizon * horizon / 1e4);
+        }
+
+        /** Test that a wall hides the terrain behind it, and that each observer is counted. */
+        @Test
+        public void testWall()
+        {
+            HighResolutionTerrain terrain = createTerrain(new WallElevationModel());
+            Position observer = Position.fromDegrees(0.5, 0.5, 2);
+
+            Viewshed viewshed = terrain.computeViewshed(Arrays.asList(observer, observer), 4e3, 50);
+            assertNotNull("Viewshed is null", viewshed);
+
+            int row = viewshed.getHeight() / 2;
+            for (int col = 0; col < viewshed.getWidth(); col++)
+            {
+                double lon = viewshed.getLocation(row, col).getLongitude().degrees;
+                double distance = Math.abs(lon - 0.5) * Math.PI / 180 * terrain.getGlobe().getRadius();
+                if (distance > 3.9e3)
+                    continue;
+
+                if (lon < 0.55)
+                    assertEquals("Count west of the wall at " + lon, 2, viewshed.getVisibilityCount(row, col));
+                else if (lon > 0.565)
+                    assertEquals("Count east of the wall at " + lon, 0, viewshed.getVisibilityCount(row, col));
+            }
+        }
+
+        /** Test that observers far apart allocate only the grid near each observer. */
+        @Test
+        public void testDistantObservers()
+        {
+            HighResolutionTerrain terrain = createTerrain(new ZeroElevationModel());
+            terrain.setViewshedMemoryLimit((long) 64e6); // an eighth of the grid covering both observers
+            Position a = Position.fromDegrees(0.05, 0.05, 10);
+            Position b = Position.fromDegrees(0.95, 0.95, 10);
+
+            Viewshed viewshed = terrain.computeViewshed(Arrays.asList(a, b), 2e3, 5);
+            assertNotNull("Viewshed is null", viewshed);
+            assertTrue("Grid doesn't cover both observers", viewshed.getSector().contains(a)
+                && viewshed.getSector().contains(b));
+
+            Sector sector = viewshed.getSector();
+            double dLat = sector.getDeltaLatDegrees() / (viewshed.getHeight() - 1);
+            double dLon = sector.getDeltaLonDegrees() / (viewshed.getWidth() - 1);
+            for (Position observer : Arrays.asList(a, b))
+            {
+                int row = (int) Math.round((sector.getMaxLatitude().degrees - observer.getLatitude().degrees) / dLat);
+                int col = (int) Math.round((observer.getLongitude().degrees - sector.getMinLongitude().degrees) / dLon);
+                assertEquals("Count at observer " + observer, 1, viewshed.getVisibilityCount(row, col));
+                assertEquals("Count near observer " + observer, 1, viewshed.getVisibilityCount(row + 100, col));
+            }
+
+            assertFalse("Visible between observers",
+                viewshed.isVisible(viewshed.getHeight() / 2, viewshed.getWidth() / 2));
+        }
+
+        /** Test that a viewshed needing more memory than the limit fails before allocating its grid. */
+        @Test
+        public void testViewshedMemoryLimit()
+        {
+            HighResolutionTerrain terrain = createTerrain(new ZeroElevationModel());
+            terrain.setViewshedMemoryLimit((long) 1e6);
+
+            try
+            {
+                terrain.computeViewshed(Arrays.asList(Position.fromDegrees(0.5, 0.5, 10)), 20e3, 10);
+                fail("Memory limit not applied");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Expected.
+            }
+        }
+
+        /** Test that observers outside the terrain's sector are ignored. */
+        @Test
+        public void testObserverOutsideSector()
+        {
+            HighResolutionTerrain terrain = createTerrain(new ZeroElevationModel());
+
+            assertNull("Viewshed is not null",
+                terrain.computeViewshed(Arrays.asList(Position.fromDegrees(2, 2, 10)), 1e3, 100));
+        }
+
+        /** Test that the intersection and visibility queries agree with a test of every triangle of every tile. */
+        @Test
+        public void testIntersect() throws InterruptedException
+        {
+            HighResolutionTerrain terrain = createTerrain(new HillElevationModel());
+            Random random = new Random(7);
+
+            // The end points are above the terrain, so isVisible does not ignore any intersections.
+            double[] segments = new double[6 * 200];
+            for (int i = 0; i < segments.length; i += 6)
+            {
+                segments[i] = 0.1 + 0.8 * random.nextDouble();
+                segments[i + 1] = 0.1 + 0.8 * random.nextDouble();
+                segments[i + 2] = 1 + 50 * random.nextDouble();
+                segments[i + 3] = segments[i] + 0.02 * random.nextDouble() - 0.01;
+                segments[i + 4] = segments[i + 1] + 0.02 * random.nextDouble() - 0.01;
+                segments[i + 5] = 1 + 50 * random.nextDouble();
+            }
+
+            int numHits = 0;
+            double[] points = terrain.intersect(segments);
+            for (int i = 0; i < segments.length; i += 6)
+            {
+                Position pA = Position.fromDegrees(segments[i], segments[i + 1], segments[i + 2]);
+                Position pB = Position.fromDegrees(segments[i + 3], segments[i + 4], segments[i + 5]);
+
+                List<Vec4> expected = this.intersectEveryTriangle(terrain, pA, pB);
+                Intersection[] hits = terrain.intersect(pA, pB);
+                assertEquals("Number of intersections", expected.size(), hits != null ? hits.length : 0);
+                for (int j = 0; j < expected.size(); j++)
+                {
+                    Vec4 point = hits[j].getIntersectionPoint();
+                    assertTrue("Intersection differs", expected.get(j).distanceTo3(point) < 1e-3);
+                }
+
+                Vec4 nearest = new Vec4(points[i / 2], points[i / 2 + 1], points[i / 2 + 2]);
+                if (expected.size() == 0)
+                    assertTrue("Nearest intersection is not NaN", Double.isNaN(nearest.x));
+                else
+                    assertTrue("Nearest intersection differs", expected.get(0).distanceTo3(nearest) < 1e-3);
+
+                // Intersections continue past the second position, but only those between the positions hide it.
+                Vec4 ptA = terrain.getSurfacePoint(pA.getLatitude(), pA.getLongitude(), pA.getAltitude());
+                Vec4 ptB = terrain.getSurfacePoint(pB.getLatitude(), pB.getLongitude(), pB.getAltitude());
+                boolean visible = expected.size() == 0 || ptA.distanceTo3(expected.get(0)) > ptA.distanceTo3(ptB);
+                assertEquals("Visibility differs", visible, terrain.isVisible(pA, pB));
+                if (!visible)
+                    numHits++;
+            }
+
+            assertTrue("Too few intersecting lines " + numHits, numHits > 10);
+        }
+
+        protected List<Vec4> intersectEveryTriangle(HighResolutionTerrain terrain, Position pA, Position pB)
+            throws InterruptedException
+        {
+            Vec4 ptA = terrain.getSurfacePoint(pA.getLatitude(), pA.getLongitude(), pA.getAltitude());
+            Vec4 ptB = terrain.getSurfacePoint(pB.getLatitude(), pB.getLongitude(), pB.getAltitude());
+            Line line = new Line(ptA, ptB.subtract3(ptA).normalize3());
+
+            // Each tile is tested once, and the hits are kept in order of distance from the first position.
+            Set<HighResolutionTerrain.RectTile> tiles = new HashSet<HighResolutionTerrain.RectTile>(
+                terrain.getIntersectingTiles(pA, pB));
+            List<Vec4> points = new ArrayList<Vec4>();
+            for (HighResolutionTerrain.RectTile tile : tiles)
+            {
+                Intersection[] hits = terrain.intersect(tile, line);
+                if (hits != null)
+                {
+                    for (Intersection hit : hits)
+                    {
+                        points.add(hit.getIntersectionPoint());
+                    }
+                }
+            }
+
+            final Vec4 origin = ptA;
+            Collections.sort(points, new Comparator<Vec4>()
+            {
+                public int compare(Vec4 a, Vec4 b)
+                {
+                    return Double.compare(origin.distanceTo3(a), origin.distanceTo3(b));
+                }
+            });
+
+            return points;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}
@@ -0,0 +1,253 @@
+/*
+Copyright (C) 2001, 2011 United States Government
+as represented by the Administrator of the
+National Aeronautics and Space Administration.
+All Rights Reserved.
+*/
+
+package gov.nasa.worldwind.terrain;
+
+import com.sun.opengl.util.BufferUtil;
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.cache.*;
+import gov.nasa.worldwind.geom.Vec4;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.layers.LayerList;
+import gov.nasa.worldwind.render.*;
+import junit.framework.*;
+import junit.textui.TestRunner;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.*;
+
+/**
+ * Tests RectangularTessellator's background building: the build queue, the substitution of ancestors for tiles whose
+ * vertices are not ready, the frame build budget, and the in-place refresh of expired vertices.
+ *
+ * @author tag
+ * @version $Id$
+ */
+public class RectangularTessellatorTest
+{
+    public static class Tests extends TestCase
+    {
+        protected static final long TIMEOUT = 10000; // milliseconds
+
+        protected DrawContext dc;
+        protected RectangularTessellator tessellator;
+        protected MemoryCache cache;
+        protected RectangularTessellator.RectTile topTile;
+
+        @Override
+        public void setUp()
+        {
+            this.dc = new DrawContextImpl();
+            Globe globe = new EllipsoidalGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS,
+                Earth.WGS84_ES, new ZeroElevationModel());
+            this.dc.setModel(new BasicModel(globe, new LayerList()));
+            this.dc.setGLRuntimeCapabilities(new GLRuntimeCapabilities());
+
+            if (!WorldWind.getMemoryCacheSet().containsCache(RectangularTessellator.CACHE_ID))
+            {
+                WorldWind.getMemoryCacheSet().addCache(RectangularTessellator.CACHE_ID,
+                    BasicMemoryCacheSet.newMemoryCache(RectangularTessellator.CACHE_ID, 8500000L, 10000000L));
+            }
+            this.cache = WorldWind.getMemoryCache(RectangularTessellator.CACHE_ID);
+            this.cache.clear();
+
+            this.tessellator = new RectangularTessellator();
+            this.tessellator.setBuildInBackground(true);
+            this.tessellator.setFrameBuildBudget(TIMEOUT);
+            this.topTile = this.tessellator.createTopLevelTiles(this.dc).get(0);
+        }
+
+        @Override
+        public void tearDown()
+        {
+            this.cache.clear();
+        }
+
+        /** Test that a tile with no cached ancestor is built on the render thread while the budget lasts. */
+        @Test
+        public void testSynchronousBuild()
+        {
+            RectangularTessellator.RectTile[] children = this.tessellator.split(this.dc, this.topTile);
+            this.makeVerts(children);
+
+            assertEquals("Tiles not as expected", Arrays.asList(children), this.getCurrentTiles());
+            for (RectangularTessellator.RectTile child : children)
+            {
+                assertNotNull("Vertices not cached", this.getCachedVertices(child));
+            }
+            assertEquals("Builds queued", 0, this.tessellator.pendingBuilds.size());
+        }
+
+        /** Test that once the budget is spent, a top-level tile is built in place of its descendants. */
+        @Test
+        public void testBudgetFallback()
+        {
+            this.tessellator.setFrameBuildBudget(0);
+
+            RectangularTessellator.RectTile[] children = this.tessellator.split(this.dc, this.topTile);
+            RectangularTessellator.RectTile[] grandchildren = this.tessellator.split(this.dc, children[0]);
+            List<RectangularTessellator.RectTile> tiles = new ArrayList<RectangularTessellator.RectTile>();
+            tiles.addAll(Arrays.asList(grandchildren));
+            tiles.addAll(Arrays.asList(children).subList(1, children.length));
+            this.makeVerts(tiles.toArray(new RectangularTessellator.RectTile[tiles.size()]));
+
+            assertEquals("Tiles not as expected", Arrays.asList(this.topTile), this.getCurrentTiles());
+            assertNotNull("Top-level vertices not cached", this.getCachedVertices(this.topTile));
+            assertEquals("Builds not queued", tiles.size(), this.tessellator.pendingBuilds.size());
+            for (RectangularTessellator.RectTile tile : tiles)
+            {
+                assertNull("Tile built on render thread", this.getCachedVertices(tile));
+            }
+        }
+
+        /** Test that tiles waiting for their vertices are replaced by their nearest ancestor with cached vertices. */
+        @Test
+        public void testAncestorSubstitution()
+        {
+            this.makeVerts(this.topTile);
+
+            RectangularTessellator.RectTile[] children = this.tessellator.split(this.dc, this.topTile);
+            RectangularTessellator.RectTile[] grandchildren = this.tessellator.split(this.dc, children[0]);
+            this.makeVerts(children);
+            this.waitForBuilds(children.length);
+
+            // The first child's vertices are installed, so it replaces its children. The other children are drawn
+            // themselves.
+            this.makeVerts(grandchildren[0], grandchildren[1], children[1]);
+            assertEquals("Tiles not as expected", new HashSet<Object>(Arrays.asList(children[0], children[1])),
+                new HashSet<Object>(this.getCurrentTiles()));
+            assertEquals("Builds not queued", 2, this.tessellator.pendingBuilds.size());
+        }
+
+        /** Test that queued builds are installed in the cache, and that a tile is queued only once. */
+        @Test
+        public void testBuildQueue()
+        {
+            this.makeVerts(this.topTile);
+
+            RectangularTessellator.RectTile[] children = this.tessellator.split(this.dc, this.topTile);
+            this.makeVerts(children);
+            assertEquals("Tiles not as expected", Arrays.asList(this.topTile), this.getCurrentTiles());
+            assertEquals("Builds not queued", children.length, this.tessellator.pendingBuilds.size());
+
+            // Requesting a queued tile again keeps its queued build.
+            Map<RectangularTessellator.CacheKey, RectangularTessellator.BuildTask> queued =
+                new HashMap<RectangularTessellator.CacheKey, RectangularTessellator.BuildTask>(
+                    this.tessellator.pendingBuilds);
+            for (RectangularTessellator.RectTile child : children)
+            {
+                this.tessellator.requestBuild(this.dc, child, this.tessellator.createCacheKey(this.dc, child));
+            }
+            assertEquals("Builds queued twice", queued, this.tessellator.pendingBuilds);
+
+            this.waitForBuilds(children.length);
+            this.makeVerts(children);
+
+            assertEquals("Tiles not as expected", Arrays.asList(children), this.getCurrentTiles());
+            assertEquals("Builds not removed", 0, this.tessellator.pendingBuilds.size());
+            for (RectangularTessellator.RectTile child : children)
+            {
+                this.assertVertices(child, this.getCachedVertices(child));
+            }
+        }
+
+        /** Test that expired vertices are drawn while they are rebuilt, and are then refreshed in place. */
+        @Test
+        public void testRefreshInPlace()
+        {
+            this.makeVerts(this.topTile);
+            RectangularTessellator.RenderInfo ri = this.getCachedVertices(this.topTile);
+            assertNotNull("Vertices not cached", ri);
+
+            // Expire and clear the cached vertices.
+            ri.time = 0;
+            for (int i = 0; i < ri.vertices.limit(); i++)
+            {
+                ri.vertices.put(i, 0);
+            }
+
+            this.makeVerts(this.topTile);
+            assertEquals("Tiles not as expected", Arrays.asList(this.topTile), this.getCurrentTiles());
+            assertEquals("Build not queued", 1, this.tessellator.pendingBuilds.size());
+
+            this.waitForBuilds(1);
+            this.makeVerts(this.topTile);
+
+            assertSame("Vertices replaced", ri, this.getCachedVertices(this.topTile));
+            assertTrue("Vertices not updated", ri.time > 0);
+            this.assertVertices(this.topTile, ri);
+        }
+
+        protected void makeVerts(RectangularTessellator.RectTile... tiles)
+        {
+            this.tessellator.currentTiles.clear();
+            this.tessellator.currentCoverage = null;
+            for (RectangularTessellator.RectTile tile : tiles)
+            {
+                this.tessellator.currentTiles.add(tile);
+                this.tessellator.currentCoverage = tile.getSector().union(this.tessellator.currentCoverage);
+            }
+            this.tessellator.currentTiles.setSector(this.tessellator.currentCoverage);
+
+            this.tessellator.makeVertsInBackground(this.dc);
+        }
+
+        protected List<SectorGeometry> getCurrentTiles()
+        {
+            List<SectorGeometry> tiles = new ArrayList<SectorGeometry>();
+            for (SectorGeometry tile : this.tessellator.currentTiles)
+            {
+                tiles.add(tile);
+            }
+            return tiles;
+        }
+
+        protected RectangularTessellator.RenderInfo getCachedVertices(RectangularTessellator.RectTile tile)
+        {
+            return (RectangularTessellator.RenderInfo) this.cache.getObject(
+                this.tessellator.createCacheKey(this.dc, tile));
+        }
+
+        protected void waitForBuilds(int numBuilds)
+        {
+            long start = System.currentTimeMillis();
+            while (this.tessellator.completedBuilds.size() < numBuilds)
+            {
+                assertTrue("Builds did not complete", System.currentTimeMillis() - start < TIMEOUT);
+                try
+                {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException e)
+                {
+                    fail("Interrupted");
+                }
+            }
+        }
+
+        protected void assertVertices(RectangularTessellator.RectTile tile, RectangularTessellator.RenderInfo ri)
+        {
+            assertNotNull("Vertices not cached", ri);
+
+            FloatBuffer expected = BufferUtil.newFloatBuffer(ri.vertices.limit());
+            Vec4 referenceCenter = this.tessellator.computeVertices(this.dc.getGlobe(), tile,
+                this.dc.getVerticalExaggeration(), this.tessellator.isMakeTileSkirts(), expected);
+
+            assertEquals("Reference center not as expected", referenceCenter, ri.referenceCenter);
+            for (int i = 0; i < expected.limit(); i++)
+            {
+                assertEquals("Vertex not as expected", expected.get(i), ri.vertices.get(i), 0);
+            }
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        new TestRunner().doRun(new TestSuite(Tests.class));
+    }
+}